@@ -19,26 +19,31 @@
 
 package org.openscada.hsdb.backend.file;
 
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.zip.CRC32;
 
+import org.openscada.hsdb.BatchStorageChannel;
 import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.ValueCursor;
 import org.openscada.hsdb.backend.BackEnd;
-import org.openscada.hsdb.calculation.CalculationMethod;
-import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.backend.file.internal.CompressedBlockCodec;
+import org.openscada.hsdb.backend.file.internal.CompressedBlockIndex;
+import org.openscada.hsdb.backend.file.internal.FileHeader;
+import org.openscada.hsdb.backend.file.internal.MeteredRandomAccessFile;
+import org.openscada.hsdb.backend.file.internal.RewriteJournal;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.metrics.Counter;
+import org.openscada.hsdb.metrics.MetricRegistry;
+import org.openscada.hsdb.metrics.Metrics;
+import org.openscada.hsdb.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,34 +51,46 @@ import org.slf4j.LoggerFactory;
  * This class provides methods for storing and retrieving data in a file using java.io.RandomAccessFile.
  * @author Ludwig Straub
  */
-public class FileBackEnd implements BackEnd
+public class FileBackEnd implements BackEnd, BatchStorageChannel
 {
     /** The default logger. */
     private final static Logger logger = LoggerFactory.getLogger ( FileBackEnd.class );
 
-    /** Empty byte array. */
-    private final static byte[] emptyByteArray = new byte[0];
-
     /** Seed value for the parity calculation logic of data records. */
     private final static byte LRC_SEED = 0x5a;
 
-    /** Unique marker identifying file types that can be handled via this class. */
-    private final static long FILE_MARKER = 0x0a2d04b20b580ca9L;
-
     /** Size of one data record in the file. */
     private final static int RECORD_BLOCK_SIZE = 8 + 8 + 8 + 8 + 8 + 1;
 
-    /** Maximum size of buffer when copying data within a file. */
-    private final static int MAX_COPY_BUFFER_FILL_SIZE = 1024 * 1024;
+    /** Count of records that are read with the first file operation when reading a sequence of records. */
+    private final static int MIN_RECORD_BUFFER_SIZE = 64;
+
+    /** Maximum count of records that are read or written with one file operation. */
+    private final static int MAX_RECORD_BUFFER_SIZE = 4096;
+
+    /** Version of file format storing each record uncompressed. */
+    public final static long UNCOMPRESSED_FILE_VERSION = 1L;
+
+    /** Version of file format storing the records in compressed blocks. */
+    public final static long COMPRESSED_FILE_VERSION = 2L;
+
+    /** Version of file format that is used when creating new files. It can be changed via a system property in order to create files that can be read by older versions. */
+    private final static long FILE_VERSION = Long.getLong ( "org.openscada.hsdb.backend.file.fileVersion", COMPRESSED_FILE_VERSION );
+
+    /** Version of header format storing all numeric values as long values. */
+    public final static int LEGACY_HEADER_VERSION = FileHeader.LEGACY_HEADER_VERSION;
+
+    /** Version of header format storing the values in compact form and the configuration id as length prefixed utf-8 bytes. */
+    public final static int COMPACT_HEADER_VERSION = FileHeader.COMPACT_HEADER_VERSION;
 
-    /** Version of file format. */
-    private final static long FILE_VERSION = 1L;
+    /** Version of header format that is used when creating new files. It can be changed via a system property in order to create files that can be read by older versions. */
+    private final static int HEADER_VERSION = Integer.getInteger ( "org.openscada.hsdb.backend.file.headerVersion", COMPACT_HEADER_VERSION );
 
-    /** Encoder that will be used to store the configuration id within the file header. */
-    private final CharsetEncoder charEncoder = Charset.forName ( "utf-8" ).newEncoder ();
+    /** Size of the information at the beginning of the data section of compressed files that specifies the end of the compressed blocks and the generation of the blocks. */
+    private final static int COMPRESSED_SECTION_INFO_SIZE = 8 + 8;
 
-    /** Decoder that will be used to extract the configuration id from the file header. */
-    private final CharsetDecoder charDecoder = Charset.forName ( "utf-8" ).newDecoder ();
+    /** Count of records that are stored within one compressed block. */
+    private final static int COMPRESSED_BLOCK_RECORD_COUNT = 256;
 
     /** Name of the file that is used to store data. */
     private final String fileName;
@@ -81,9 +98,39 @@ public class FileBackEnd implements BackEnd
     /** File that is used to store data. */
     private final File file;
 
+    /** Journal that is used to rewrite the compressed blocks and the uncompressed records without risking the consistency of the file. */
+    private final RewriteJournal journal;
+
     /** Flag indicating whether the file connection should be kept open while the state of the instance is initialized or not. */
     private final boolean keepUpenWhileInitialized;
 
+    /** Manager that limits the count of open files of all back end objects. */
+    private final FileHandleManager fileHandleManager;
+
+    /** Version of file format that is used when a new file is created. */
+    private final long newFileVersion;
+
+    /** Version of header format that is used when a new file is created. */
+    private final int newHeaderVersion;
+
+    /** Cache of the headers of the files of all file back end objects. */
+    private final FileHeaderCache fileHeaderCache;
+
+    /** Counter of the bytes that have been read from the files of all file back end objects. */
+    private final Counter readBytesCounter;
+
+    /** Counter of the calls of primitive read methods on the files of all file back end objects. */
+    private final Counter readCallCounter;
+
+    /** Counter of the bytes that have been written to the files of all file back end objects. */
+    private final Counter writeBytesCounter;
+
+    /** Counter of the calls of primitive write methods on the files of all file back end objects. */
+    private final Counter writeCallCounter;
+
+    /** Timer recording the duration of forcing written data of the files of all file back end objects to the storage device. */
+    private final Timer fsyncTimer;
+
     /** Metadata of the storage channel. */
     private StorageChannelMetaData metaData;
 
@@ -96,6 +143,18 @@ public class FileBackEnd implements BackEnd
     /** Offset within the file where the header has ended and real data starts. */
     private long dataOffset;
 
+    /** Version of file format of the currently initialized file. */
+    private long fileVersion;
+
+    /** Offset within the file where the uncompressed records start. For compressed files, the uncompressed records follow the compressed blocks. */
+    private long recordOffset;
+
+    /** Index of the compressed blocks of the file. */
+    private final CompressedBlockIndex blockIndex;
+
+    /** Generation of the compressed blocks that is reflected by the block index. The generation is changed whenever existing blocks are modified. */
+    private long blockIndexGeneration;
+
     /** Flag indicating whether the instance has been initialized or not. */
     private volatile boolean initialized;
 
@@ -110,14 +169,52 @@ public class FileBackEnd implements BackEnd
 
     /**
      * Constructor expecting the configuration of the file backend.
+     * If the {@link FileHandleManager} is enabled, the file connection is kept open until it is closed by the manager, independent of the passed flag.
+     * The manager is enabled by default, so the passed flag only applies if the caching of open files has been disabled.
      * @param fileName name of the existing file that is used to store data
      * @param keepOpenWhileInitialized true, if the file connection should be kept open while the state of the instance is initialized, otherwise false
      */
     public FileBackEnd ( final String fileName, final boolean keepOpenWhileInitialized )
+    {
+        this ( fileName, keepOpenWhileInitialized, FILE_VERSION );
+    }
+
+    /**
+     * Constructor expecting the configuration of the file backend.
+     * @param fileName name of the existing file that is used to store data
+     * @param keepOpenWhileInitialized true, if the file connection should be kept open while the state of the instance is initialized, otherwise false
+     * @param newFileVersion version of file format that is used when a new file is created via method {@link #create(StorageChannelMetaData)}
+     */
+    public FileBackEnd ( final String fileName, final boolean keepOpenWhileInitialized, final long newFileVersion )
+    {
+        this ( fileName, keepOpenWhileInitialized, newFileVersion, HEADER_VERSION );
+    }
+
+    /**
+     * Constructor expecting the configuration of the file backend.
+     * @param fileName name of the existing file that is used to store data
+     * @param keepOpenWhileInitialized true, if the file connection should be kept open while the state of the instance is initialized, otherwise false
+     * @param newFileVersion version of file format that is used when a new file is created via method {@link #create(StorageChannelMetaData)}
+     * @param newHeaderVersion version of header format that is used when a new file is created via method {@link #create(StorageChannelMetaData)}
+     */
+    public FileBackEnd ( final String fileName, final boolean keepOpenWhileInitialized, final long newFileVersion, final int newHeaderVersion )
     {
         this.fileName = fileName;
         this.file = new File ( fileName );
+        this.journal = new RewriteJournal ( this.file );
         this.keepUpenWhileInitialized = keepOpenWhileInitialized;
+        this.fileHandleManager = FileHandleManager.getInstance ();
+        this.newFileVersion = newFileVersion;
+        this.newHeaderVersion = newHeaderVersion;
+        this.fileHeaderCache = FileHeaderCache.getInstance ();
+        final MetricRegistry metricRegistry = Metrics.getRegistry ();
+        this.readBytesCounter = metricRegistry.counter ( Metrics.name ( "file", "read", "bytes" ) );
+        this.readCallCounter = metricRegistry.counter ( Metrics.name ( "file", "read", "calls" ) );
+        this.writeBytesCounter = metricRegistry.counter ( Metrics.name ( "file", "write", "bytes" ) );
+        this.writeCallCounter = metricRegistry.counter ( Metrics.name ( "file", "write", "calls" ) );
+        this.fsyncTimer = metricRegistry.timer ( Metrics.name ( "file", "fsync" ) );
+        this.blockIndex = new CompressedBlockIndex ( 0 );
+        this.blockIndexGeneration = 0;
         this.metaData = null;
         this.openInWriteMode = false;
         this.initialized = false;
@@ -128,6 +225,14 @@ public class FileBackEnd implements BackEnd
         {
             throw new IllegalArgumentException ( "invalid filename passed via configuration" );
         }
+        if ( newFileVersion != UNCOMPRESSED_FILE_VERSION && newFileVersion != COMPRESSED_FILE_VERSION )
+        {
+            throw new IllegalArgumentException ( String.format ( "invalid file version %s passed via configuration", newFileVersion ) );
+        }
+        if ( newHeaderVersion != LEGACY_HEADER_VERSION && newHeaderVersion != COMPACT_HEADER_VERSION )
+        {
+            throw new IllegalArgumentException ( String.format ( "invalid header version %s passed via configuration", newHeaderVersion ) );
+        }
     }
 
     /**
@@ -194,31 +299,31 @@ public class FileBackEnd implements BackEnd
             throw new Exception ( message );
         }
 
-        // extract configuration values
-        final String configurationId = storageChannelMetaData.getConfigurationId ();
-        final byte[] configurationIdBytes = encodeToBytes ( configurationId );
-        final long calculationMethodId = CalculationMethod.convertCalculationMethodToLong ( storageChannelMetaData.getCalculationMethod () );
-        final long[] calculationMethodParameters = storageChannelMetaData.getCalculationMethodParameters ();
-        final long detailLevelId = storageChannelMetaData.getDetailLevelId ();
-        final long startTime = storageChannelMetaData.getStartTime ();
-        final long endTime = storageChannelMetaData.getEndTime ();
-        final long proposedDataAge = storageChannelMetaData.getProposedDataAge ();
-        final long acceptedTimeDelta = storageChannelMetaData.getAcceptedTimeDelta ();
-        final long dataType = DataType.convertDataTypeToLong ( storageChannelMetaData.getDataType () );
-
         // validate input data
-        if ( configurationId == null )
+        if ( storageChannelMetaData.getConfigurationId () == null )
         {
             final String message = String.format ( "invalid configuration id specified for file '%s'!", this.fileName );
             logger.error ( message );
             throw new Exception ( message );
         }
-        if ( startTime >= endTime )
+        if ( storageChannelMetaData.getStartTime () >= storageChannelMetaData.getEndTime () )
         {
             final String message = String.format ( "invalid timespan specified for file '%s'! (startTime >= endTime)", this.fileName );
             logger.error ( message );
             throw new Exception ( message );
         }
+        final byte[] header;
+        try
+        {
+            header = FileHeader.encode ( storageChannelMetaData, this.newFileVersion, this.newHeaderVersion );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            final String message = String.format ( "header of file '%s' could not be created! (%s)", this.fileName, e.getMessage () );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        final long dataOffset = header.length;
 
         // create new file including folder
         final File parent = this.file.getParentFile ();
@@ -227,6 +332,12 @@ public class FileBackEnd implements BackEnd
             parent.mkdirs ();
         }
         logger.info ( String.format ( "creating file '%s'", this.fileName ) );
+        if ( !this.journal.delete () )
+        {
+            final String message = String.format ( "outdated journal of file '%s' could not be deleted", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
         if ( !this.file.createNewFile () )
         {
             final String message = String.format ( "file '%s' could not be created. please verify the access rights and make sure that no file with the given name already exists. (file exists=%s)", this.fileName, this.file.exists () );
@@ -234,29 +345,6 @@ public class FileBackEnd implements BackEnd
             throw new Exception ( message );
         }
 
-        // calculate parity
-        final long dataOffset = ( 11 + calculationMethodParameters.length ) * 8 + configurationIdBytes.length + 4;
-        final CRC32 crc32 = new CRC32 ();
-        final ByteBuffer byteBuffer = ByteBuffer.allocate ( (int)dataOffset - 12 );
-        byteBuffer.putLong ( dataOffset );
-        byteBuffer.putLong ( FILE_VERSION );
-        byteBuffer.putLong ( detailLevelId );
-        byteBuffer.putLong ( startTime );
-        byteBuffer.putLong ( endTime );
-        byteBuffer.putLong ( proposedDataAge );
-        byteBuffer.putLong ( acceptedTimeDelta );
-        byteBuffer.putLong ( dataType );
-        byteBuffer.putLong ( calculationMethodId );
-        byteBuffer.putInt ( calculationMethodParameters.length );
-        byteBuffer.putInt ( configurationIdBytes.length );
-        for ( int i = 0; i < calculationMethodParameters.length; i++ )
-        {
-            byteBuffer.putLong ( calculationMethodParameters[i] );
-        }
-        byteBuffer.put ( configurationIdBytes );
-        crc32.update ( byteBuffer.array () );
-        final int parity = (int)crc32.getValue ();
-
         // write standardized file header to file
         if ( this.lock != null )
         {
@@ -266,37 +354,27 @@ public class FileBackEnd implements BackEnd
         {
             openConnection ( true );
             this.randomAccessFile.seek ( 0L );
-            this.randomAccessFile.writeLong ( FILE_MARKER );
-            this.randomAccessFile.writeLong ( dataOffset );
-            this.randomAccessFile.writeLong ( FILE_VERSION );
-            this.randomAccessFile.writeLong ( detailLevelId );
-            this.randomAccessFile.writeLong ( startTime );
-            this.randomAccessFile.writeLong ( endTime );
-            this.randomAccessFile.writeLong ( proposedDataAge );
-            this.randomAccessFile.writeLong ( acceptedTimeDelta );
-            this.randomAccessFile.writeLong ( dataType );
-            this.randomAccessFile.writeLong ( calculationMethodId );
-            this.randomAccessFile.writeInt ( calculationMethodParameters.length );
-            this.randomAccessFile.writeInt ( configurationIdBytes.length );
-            for ( int i = 0; i < calculationMethodParameters.length; i++ )
+            this.randomAccessFile.write ( header );
+            if ( this.newFileVersion == COMPRESSED_FILE_VERSION )
             {
-                this.randomAccessFile.writeLong ( calculationMethodParameters[i] );
+                // no compressed blocks exist yet
+                this.randomAccessFile.writeLong ( dataOffset + COMPRESSED_SECTION_INFO_SIZE );
+                this.randomAccessFile.writeLong ( 0L );
             }
-            this.randomAccessFile.write ( configurationIdBytes );
-            this.randomAccessFile.writeInt ( parity );
             if ( this.lock != null )
             {
-                this.randomAccessFile.getChannel ().force ( false );
+                force ( false );
             }
         }
         finally
         {
             if ( this.lock != null )
             {
-                this.randomAccessFile.getChannel ().force ( false );
+                force ( false );
                 this.lock.writeLock ().unlock ();
             }
         }
+        this.fileHeaderCache.put ( this.file, new FileHeader ( storageChannelMetaData, this.newFileVersion, this.newHeaderVersion, dataOffset ) );
         closeIfRequired ();
     }
 
@@ -305,10 +383,15 @@ public class FileBackEnd implements BackEnd
      */
     public void delete ()
     {
+        synchronized ( this )
+        {
+            closeConnection ();
+        }
         if ( this.lock != null )
         {
             this.lock.writeLock ().lock ();
         }
+        this.fileHeaderCache.remove ( this.file );
         if ( this.file.exists () )
         {
             logger.info ( String.format ( "deleting existing file '%s'...", this.fileName ) );
@@ -321,6 +404,10 @@ public class FileBackEnd implements BackEnd
                 logger.warn ( String.format ( "deletion of file '%s' failed", this.fileName ) );
             }
         }
+        if ( !this.journal.delete () )
+        {
+            logger.warn ( String.format ( "deletion of journal of file '%s' failed", this.fileName ) );
+        }
         if ( this.lock != null )
         {
             this.lock.writeLock ().unlock ();
@@ -357,7 +444,7 @@ public class FileBackEnd implements BackEnd
     /**
      * @see org.openscada.hsdb.backend.BackEnd#getMetaData
      */
-    public StorageChannelMetaData getMetaData () throws Exception
+    public synchronized StorageChannelMetaData getMetaData () throws Exception
     {
         assureInitialized ();
         if ( !this.file.exists () )
@@ -411,6 +498,7 @@ public class FileBackEnd implements BackEnd
 
     /**
      * This method extracts the metadata from the file.
+     * The header of the file is only read if it is not available via the header cache.
      * It is assumed that the file is already open.
      * @return extracted metadata
      * @throws Exception if the file cannot be read or if the file version or format is invalid
@@ -423,105 +511,31 @@ public class FileBackEnd implements BackEnd
         }
         try
         {
-            this.randomAccessFile.seek ( 0L );
-            final long fileSize = this.randomAccessFile.length ();
-            if ( fileSize < 16 )
-            {
-                final String message = String.format ( "file '%s' is of invalid format! (too small)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            final long fileMarker = this.randomAccessFile.readLong ();
-            if ( fileMarker != FILE_MARKER )
-            {
-                final String message = String.format ( "file '%s' is of invalid format! (invalid marker)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            this.dataOffset = this.randomAccessFile.readLong ();
-            if ( fileSize < this.dataOffset )
-            {
-                final String message = String.format ( "file '%s' is of invalid format! (invalid header)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            final long version = this.randomAccessFile.readLong ();
-            if ( version != FILE_VERSION )
-            {
-                final String message = String.format ( "file '%s' is of invalid format! (wrong version)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            final long detailLevelId = this.randomAccessFile.readLong ();
-            final long startTime = this.randomAccessFile.readLong ();
-            final long endTime = this.randomAccessFile.readLong ();
-            if ( startTime >= endTime )
-            {
-                final String message = String.format ( "file '%s' has invalid timespan specified! (startTime >= endTime)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            final long proposedDataAge = this.randomAccessFile.readLong ();
-            final long acceptedTimeDelta = this.randomAccessFile.readLong ();
-            final long dataType = this.randomAccessFile.readLong ();
-            final long calculationMethodId = this.randomAccessFile.readLong ();
-            final int calculationMethodParameterCountSize = this.randomAccessFile.readInt ();
-            final int configurationIdSize = this.randomAccessFile.readInt ();
-            if ( this.dataOffset - this.randomAccessFile.getFilePointer () - 4 - configurationIdSize != calculationMethodParameterCountSize * 8 )
-            {
-                final String message = String.format ( "file '%s' is of invalid format! (invalid count of calculation method parameters)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            final long[] calculationMethodParameters = new long[calculationMethodParameterCountSize];
-            for ( int i = 0; i < calculationMethodParameters.length; i++ )
-            {
-                calculationMethodParameters[i] = this.randomAccessFile.readLong ();
-            }
-            if ( this.dataOffset - this.randomAccessFile.getFilePointer () - 4 != configurationIdSize )
-            {
-                final String message = String.format ( "file '%s' is of invalid format! (invalid configuration id)", this.fileName );
-                logger.error ( message );
-                throw new Exception ( message );
-            }
-            final byte[] configurationIdBytes = new byte[configurationIdSize];
-            this.randomAccessFile.readFully ( configurationIdBytes );
-            final String configurationId = decodeStringFromBytes ( configurationIdBytes );
-            final CRC32 crc32 = new CRC32 ();
-            final ByteBuffer byteBuffer = ByteBuffer.allocate ( (int)this.dataOffset - 12 );
-            byteBuffer.putLong ( this.dataOffset );
-            byteBuffer.putLong ( version );
-            byteBuffer.putLong ( detailLevelId );
-            byteBuffer.putLong ( startTime );
-            byteBuffer.putLong ( endTime );
-            byteBuffer.putLong ( proposedDataAge );
-            byteBuffer.putLong ( acceptedTimeDelta );
-            byteBuffer.putLong ( dataType );
-            byteBuffer.putLong ( calculationMethodId );
-            byteBuffer.putInt ( calculationMethodParameters.length );
-            byteBuffer.putInt ( configurationIdSize );
-            for ( int i = 0; i < calculationMethodParameters.length; i++ )
+            FileHeader header = this.fileHeaderCache.get ( this.file );
+            if ( header == null )
             {
-                byteBuffer.putLong ( calculationMethodParameters[i] );
+                header = readHeader ();
+                this.fileHeaderCache.put ( this.file, header );
             }
-            byteBuffer.put ( configurationIdBytes );
-            crc32.update ( byteBuffer.array () );
-            final int checksum = (int)crc32.getValue ();
-            final int fileChecksum = this.randomAccessFile.readInt ();
-            if ( fileChecksum != checksum )
+            this.dataOffset = header.getDataOffset ();
+            this.fileVersion = header.getFileVersion ();
+
+            // locate the uncompressed records
+            this.recordOffset = this.dataOffset;
+            this.blockIndex.clear ( this.dataOffset + COMPRESSED_SECTION_INFO_SIZE );
+            if ( this.fileVersion == COMPRESSED_FILE_VERSION )
             {
-                final String message = String.format ( "file '%s' has a corrupt header! (expected: %s, actual: %s)", this.fileName, checksum, fileChecksum );
-                logger.error ( message );
-                throw new Exception ( message );
+                this.blockIndexGeneration = 0;
+                refreshBlockIndex ();
             }
 
             // create a wrapper object for returning the retrieved data
-            this.isEmpty = this.dataOffset + RECORD_BLOCK_SIZE + 1 >= this.randomAccessFile.length ();
+            this.isEmpty = this.blockIndex.isEmpty () && this.recordOffset + RECORD_BLOCK_SIZE + 1 >= this.randomAccessFile.length ();
             if ( !this.isEmpty )
             {
-                this.firstValueTime = readLongValue ( this.dataOffset ).getTime ();
+                this.firstValueTime = this.blockIndex.isEmpty () ? readLongValue ( this.recordOffset ).getTime () : this.blockIndex.getFirstTime ( 0 );
             }
-            return new StorageChannelMetaData ( configurationId, CalculationMethod.convertLongToCalculationMethod ( calculationMethodId ), calculationMethodParameters, detailLevelId, startTime, endTime, proposedDataAge, acceptedTimeDelta, DataType.convertLongToDataType ( dataType ) );
+            return header.getMetaData ();
         }
         finally
         {
@@ -532,6 +546,64 @@ public class FileBackEnd implements BackEnd
         }
     }
 
+    /**
+     * This method reads and decodes the header of the file.
+     * It is assumed that the file is already open and that the lock is held.
+     * @return decoded header
+     * @throws Exception if the file cannot be read or if the file version or format is invalid
+     */
+    private FileHeader readHeader () throws Exception
+    {
+        final long fileSize = this.randomAccessFile.length ();
+        if ( fileSize < FileHeader.PREFIX_SIZE )
+        {
+            final String message = String.format ( "file '%s' is of invalid format! (too small)", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+
+        // read the complete header with as few file operations as possible
+        final byte[] prefix = new byte[FileHeader.PREFIX_SIZE];
+        this.randomAccessFile.seek ( 0L );
+        this.randomAccessFile.readFully ( prefix );
+        final ByteBuffer prefixBuffer = ByteBuffer.wrap ( prefix );
+        if ( FileHeader.getHeaderVersion ( prefixBuffer.getLong () ) == 0 )
+        {
+            final String message = String.format ( "file '%s' is of invalid format! (invalid marker)", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        final long dataOffset = prefixBuffer.getLong ();
+        if ( dataOffset < FileHeader.PREFIX_SIZE || fileSize < dataOffset )
+        {
+            final String message = String.format ( "file '%s' is of invalid format! (invalid header)", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        final byte[] headerBytes = Arrays.copyOf ( prefix, (int)dataOffset );
+        this.randomAccessFile.readFully ( headerBytes, FileHeader.PREFIX_SIZE, headerBytes.length - FileHeader.PREFIX_SIZE );
+
+        // decode the header
+        final FileHeader header;
+        try
+        {
+            header = FileHeader.decode ( headerBytes );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            final String message = String.format ( "file '%s' %s", this.fileName, e.getMessage () );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        if ( header.getFileVersion () != UNCOMPRESSED_FILE_VERSION && header.getFileVersion () != COMPRESSED_FILE_VERSION )
+        {
+            final String message = String.format ( "file '%s' is of invalid format! (wrong version)", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        return header;
+    }
+
     /**
      * This method assures that a valid connection to the file exists.
      * The position of the file pointer is not defined.
@@ -547,13 +619,15 @@ public class FileBackEnd implements BackEnd
         }
 
         // if file already is open, nothing has to be done
-        if ( this.randomAccessFile == null )
+        final boolean opened = this.randomAccessFile == null;
+        if ( opened )
         {
+            recoverJournal ();
             try
             {
                 // open new connection
                 logger.debug ( String.format ( "opening file '%s' successful", this.fileName ) );
-                this.randomAccessFile = new RandomAccessFile ( this.file, allowWrite ? "rw" : "r" );
+                this.randomAccessFile = new MeteredRandomAccessFile ( this.file, allowWrite ? "rw" : "r", this.readBytesCounter, this.readCallCounter, this.writeBytesCounter, this.writeCallCounter );
                 this.openInWriteMode = allowWrite;
             }
             catch ( final IOException e )
@@ -565,6 +639,86 @@ public class FileBackEnd implements BackEnd
                 throw new Exception ( message, e );
             }
         }
+        if ( this.fileHandleManager.isEnabled () )
+        {
+            this.fileHandleManager.accessed ( this, opened, isPinned () );
+        }
+    }
+
+    /**
+     * This method applies a journal that has been left by an interrupted rewrite of the file.
+     * A journal that has not been completely written is discarded, since the file has not been modified in this case.
+     * It is assumed that no connection to the file exists.
+     * @throws Exception if the journal could not be applied
+     */
+    private void recoverJournal () throws Exception
+    {
+        if ( !this.journal.exists () || !this.file.exists () )
+        {
+            return;
+        }
+        try
+        {
+            final RandomAccessFile randomAccessFile = new MeteredRandomAccessFile ( this.file, "rw", this.readBytesCounter, this.readCallCounter, this.writeBytesCounter, this.writeCallCounter );
+            try
+            {
+                if ( this.journal.apply ( randomAccessFile ) )
+                {
+                    logger.warn ( String.format ( "interrupted rewrite of file '%s' has been completed using the journal", this.fileName ) );
+                    randomAccessFile.getChannel ().force ( true );
+                }
+                else
+                {
+                    logger.warn ( String.format ( "incomplete journal of file '%s' has been discarded", this.fileName ) );
+                }
+            }
+            finally
+            {
+                randomAccessFile.close ();
+            }
+        }
+        catch ( final IOException e )
+        {
+            final String message = String.format ( "journal of file '%s' could not be applied", this.fileName );
+            logger.error ( message, e );
+            throw new Exception ( message, e );
+        }
+        if ( !this.journal.delete () )
+        {
+            final String message = String.format ( "journal of file '%s' could not be deleted", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+    }
+
+    /**
+     * This method returns whether the file connection must not be closed by the file handle manager.
+     * This is the case for files that are open in write mode and whose time span contains the current time, since new values are expected to be written to them.
+     * @return true, if the file connection must not be closed by the file handle manager, otherwise false
+     */
+    private boolean isPinned ()
+    {
+        if ( !this.openInWriteMode || this.metaData == null )
+        {
+            return false;
+        }
+        final long now = System.currentTimeMillis ();
+        return this.metaData.getStartTime () <= now && now < this.metaData.getEndTime ();
+    }
+
+    /**
+     * This method closes the connection to the file on behalf of the file handle manager.
+     * The connection may have been accessed again since the manager selected it. Closing it anyway is safe, since it is reopened by the next access.
+     * @return true, if the connection has been closed, otherwise false
+     */
+    synchronized boolean closeEvictedConnection ()
+    {
+        if ( this.randomAccessFile == null )
+        {
+            return false;
+        }
+        closeConnection ();
+        return true;
     }
 
     /**
@@ -584,6 +738,7 @@ public class FileBackEnd implements BackEnd
                 logger.warn ( String.format ( "file '%s' could not be closed", this.fileName ) );
             }
             this.randomAccessFile = null;
+            this.fileHandleManager.closed ( this );
         }
     }
 
@@ -651,38 +806,124 @@ public class FileBackEnd implements BackEnd
     }
 
     /**
-     * This method returns the offset within the file where the new data should be stored.
+     * This method reads consecutive long values from the file and appends them to the passed batch.
+     * Reading stops at the end of the file, at the first value with a time stamp that is equal to or after the specified end time or if the maximum count of values has been read.
      * It is assumed that an open connection exists.
-     * Since the data most likely has to be appended to the file, the search will be performed starting at the end of the file.
-     * @param time time for which the perfect storing position has to be retrieved
-     * @return perfect storing position of the passed long value
+     * @param position position within the file where the first value has to be read
+     * @param fileSize size of the file that has to be considered
+     * @param endTime time stamp of the first value that will not be read anymore
+     * @param maxCount maximum count of values that will be read
+     * @param longValues batch to which the read values will be appended
+     * @return true, if reading stopped since the maximum count of values has been read, otherwise false
      * @throws Exception in case of read problems or file corruption
      */
-    private long getInsertionPoint ( final long time ) throws Exception
+    private boolean readLongValues ( final long position, final long fileSize, final long endTime, final int maxCount, final LongValueBatch longValues ) throws Exception
     {
-        long endSearch = this.randomAccessFile.length () - RECORD_BLOCK_SIZE;
-        final long incompleteData = ( endSearch - this.dataOffset ) % RECORD_BLOCK_SIZE;
-        if ( incompleteData != 0 )
+        // start with a small buffer since most requests only cover a small part of the file
+        int recordsPerBlock = Math.min ( MIN_RECORD_BUFFER_SIZE, maxCount );
+        int remainingCount = maxCount;
+        byte[] buffer = null;
+        ByteBuffer byteBuffer = null;
+        long currentPosition = position;
+        while ( currentPosition + RECORD_BLOCK_SIZE <= fileSize )
         {
-            endSearch -= incompleteData;
-            endSearch = Math.max ( endSearch, this.dataOffset );
-            logger.warn ( String.format ( "skipping last entry when reading file '%s' since it is not complete", this.fileName ) );
+            // read next block of records
+            if ( remainingCount <= 0 )
+            {
+                return true;
+            }
+            final int bufferFillSize = (int)Math.min ( Math.min ( recordsPerBlock, remainingCount ), ( fileSize - currentPosition ) / RECORD_BLOCK_SIZE ) * RECORD_BLOCK_SIZE;
+            if ( buffer == null || buffer.length < bufferFillSize )
+            {
+                buffer = new byte[bufferFillSize];
+                byteBuffer = ByteBuffer.wrap ( buffer );
+            }
+            recordsPerBlock = Math.min ( MAX_RECORD_BUFFER_SIZE, recordsPerBlock * 2 );
+            if ( this.lock != null )
+            {
+                this.lock.readLock ().lock ();
+            }
+            try
+            {
+                if ( this.randomAccessFile.getFilePointer () != currentPosition )
+                {
+                    this.randomAccessFile.seek ( currentPosition );
+                }
+                this.randomAccessFile.readFully ( buffer, 0, bufferFillSize );
+            }
+            finally
+            {
+                if ( this.lock != null )
+                {
+                    this.lock.readLock ().unlock ();
+                }
+            }
+
+            // decode records
+            for ( int offset = 0; offset < bufferFillSize; offset += RECORD_BLOCK_SIZE )
+            {
+                byteBuffer.position ( offset );
+                final long time = byteBuffer.getLong ();
+                final long qualityIndicatorAsLong = byteBuffer.getLong ();
+                final long manualIndicatorAsLong = byteBuffer.getLong ();
+                final long baseValueCount = byteBuffer.getLong ();
+                final long value = byteBuffer.getLong ();
+                final byte fileChecksum = byteBuffer.get ();
+                final byte checksum = calculateLrcParity ( buffer, offset, RECORD_BLOCK_SIZE - 1 );
+                if ( fileChecksum != checksum )
+                {
+                    final String message = String.format ( "file '%s' is corrupt! invalid checksum (expected: %s, actual: %s)", this.fileName, checksum, fileChecksum );
+                    logger.error ( message );
+                    throw new Exception ( message );
+                }
+                if ( time >= endTime )
+                {
+                    return false;
+                }
+                if ( this.metaData != null && ( time < this.metaData.getStartTime () || time >= this.metaData.getEndTime () ) )
+                {
+                    logger.warn ( String.format ( "valid entry within file '%s' has an invalid time specified! please check file! (metadata: '%s*, time: '%s')", this.fileName, this.metaData, time ) );
+                }
+                longValues.add ( time, Double.longBitsToDouble ( qualityIndicatorAsLong ), Double.longBitsToDouble ( manualIndicatorAsLong ), baseValueCount, value );
+            }
+            currentPosition += bufferFillSize;
+            remainingCount -= bufferFillSize / RECORD_BLOCK_SIZE;
+        }
+        return false;
+    }
+
+    /**
+     * This method returns the offset of the first uncompressed record with a time stamp that is equal to or after the passed time.
+     * It is assumed that an open connection exists.
+     * A binary search is applied in order to find the correct position within the file.
+     * @param time time for which the position has to be retrieved
+     * @param fileSize size of the file without incomplete data at the end
+     * @return offset of the first record with a time stamp that is equal to or after the passed time or the passed file size if no such record exists
+     * @throws Exception in case of read problems or file corruption
+     */
+    private long getInsertionPoint ( final long time, final long fileSize ) throws Exception
+    {
+        long startSearch = 0;
+        long endSearch = ( fileSize - this.recordOffset ) / RECORD_BLOCK_SIZE;
+
+        // data is most likely appended, so the last record is checked first
+        if ( endSearch == 0 || readLongValue ( fileSize - RECORD_BLOCK_SIZE ).getTime () < time )
+        {
+            return fileSize;
         }
-        while ( endSearch >= this.dataOffset )
+        while ( startSearch < endSearch )
         {
-            final LongValue existingLongValue = readLongValue ( endSearch );
-            final long existingTime = existingLongValue.getTime ();
-            if ( time > existingTime )
+            final long midSearch = ( startSearch + endSearch ) / 2;
+            if ( readLongValue ( midSearch * RECORD_BLOCK_SIZE + this.recordOffset ).getTime () < time )
             {
-                return endSearch + RECORD_BLOCK_SIZE;
+                startSearch = midSearch + 1;
             }
-            else if ( time == existingTime )
+            else
             {
-                return endSearch;
+                endSearch = midSearch;
             }
-            endSearch -= RECORD_BLOCK_SIZE;
         }
-        return this.dataOffset;
+        return startSearch * RECORD_BLOCK_SIZE + this.recordOffset;
     }
 
     /**
@@ -698,7 +939,7 @@ public class FileBackEnd implements BackEnd
     {
         // ignore incomplete data at file end
         long fileSize = this.randomAccessFile.length ();
-        final long incompleteData = ( fileSize - this.dataOffset ) % RECORD_BLOCK_SIZE;
+        final long incompleteData = ( fileSize - this.recordOffset ) % RECORD_BLOCK_SIZE;
         if ( incompleteData > 0 )
         {
             fileSize -= incompleteData;
@@ -707,29 +948,29 @@ public class FileBackEnd implements BackEnd
         // check for bounds to optimize search
         if ( this.metaData.getEndTime () < startTime )
         {
-            return fileSize > this.dataOffset ? fileSize - RECORD_BLOCK_SIZE : fileSize;
+            return fileSize > this.recordOffset ? fileSize - RECORD_BLOCK_SIZE : fileSize;
         }
         if ( this.metaData.getStartTime () > startTime )
         {
-            return this.dataOffset;
+            return this.recordOffset;
         }
 
         // prepare data for real binary search
         long startSearch = 0;
-        long endSearch = ( fileSize - this.dataOffset ) / RECORD_BLOCK_SIZE;
+        long endSearch = ( fileSize - this.recordOffset ) / RECORD_BLOCK_SIZE;
         if ( startSearch == endSearch )
         {
-            return this.dataOffset;
+            return this.recordOffset;
         }
 
         // perform real binary search
         long midTime = startSearch;
         long midSearch = startSearch;
-        long filePointer = this.dataOffset;
+        long filePointer = this.recordOffset;
         while ( startSearch < endSearch )
         {
             midSearch = ( startSearch + endSearch ) / 2;
-            filePointer = midSearch * RECORD_BLOCK_SIZE + this.dataOffset;
+            filePointer = midSearch * RECORD_BLOCK_SIZE + this.recordOffset;
             midTime = readLongValue ( filePointer ).getTime ();
             if ( midTime < startTime )
             {
@@ -745,7 +986,7 @@ public class FileBackEnd implements BackEnd
             }
         }
         long resultIndex = Math.max ( 0, Math.min ( startSearch, endSearch ) );
-        filePointer = resultIndex * RECORD_BLOCK_SIZE + this.dataOffset;
+        filePointer = resultIndex * RECORD_BLOCK_SIZE + this.recordOffset;
         if ( filePointer < fileSize )
         {
             midTime = readLongValue ( filePointer ).getTime ();
@@ -754,8 +995,8 @@ public class FileBackEnd implements BackEnd
                 resultIndex--;
             }
         }
-        final long result = Math.max ( 0, resultIndex ) * RECORD_BLOCK_SIZE + this.dataOffset;
-        return result > this.dataOffset && result == fileSize ? result - RECORD_BLOCK_SIZE : result;
+        final long result = Math.max ( 0, resultIndex ) * RECORD_BLOCK_SIZE + this.recordOffset;
+        return result > this.recordOffset && result == fileSize ? result - RECORD_BLOCK_SIZE : result;
     }
 
     /**
@@ -765,13 +1006,14 @@ public class FileBackEnd implements BackEnd
      * @param longValues data that has to be stored.
      * @throws Exception in case of problems
      */
-    private void writeLongValues ( final LongValue[] longValues ) throws Exception
+    private void writeLongValues ( final LongValueBatch longValues ) throws Exception
     {
         // assure that the passed value matches the timespan of the metadata
-        if ( longValues == null || longValues.length == 0 )
+        if ( longValues == null || longValues.isEmpty () )
         {
             return;
         }
+        final int size = longValues.getSize ();
         int index = 0;
         final long startTime = this.metaData.getStartTime ();
         final long endTime = this.metaData.getEndTime ();
@@ -781,76 +1023,34 @@ public class FileBackEnd implements BackEnd
         }
         try
         {
-            while ( index < longValues.length )
+            // values within the time span of the compressed blocks are merged into the blocks
+            if ( this.fileVersion == COMPRESSED_FILE_VERSION )
             {
-                // get current value
-                long time = longValues[index].getTime ();
-                if ( time < startTime )
-                {
-                    index++;
-                    continue;
-                }
-                if ( time >= endTime )
-                {
-                    return;
-                }
-
-                // calculate insertion point of new data
-                final long insertionPoint = getInsertionPoint ( time );
-                long endCopy = this.randomAccessFile.length ();
-
-                // make room for new data if data cannot be appended at the end or existing data has to be overwritten
-                final boolean addAll = insertionPoint == endCopy;
-                if ( !addAll && readLongValue ( insertionPoint ).getTime () != time )
-                {
-                    // move file content to create cap for new data
-                    final byte[] buffer = new byte[(int)Math.min ( MAX_COPY_BUFFER_FILL_SIZE, endCopy - insertionPoint )];
-                    long startCopy = Math.max ( endCopy - buffer.length, insertionPoint );
-                    while ( startCopy < endCopy )
-                    {
-                        final int bufferFillSize = (int) ( endCopy - startCopy );
-                        this.randomAccessFile.seek ( startCopy );
-                        this.randomAccessFile.read ( buffer, 0, bufferFillSize );
-                        this.randomAccessFile.seek ( startCopy + RECORD_BLOCK_SIZE );
-                        this.randomAccessFile.write ( buffer, 0, bufferFillSize );
-                        endCopy = startCopy;
-                        startCopy = Math.max ( insertionPoint, startCopy - bufferFillSize );
-                    }
-                }
-
-                // set file pointer to correct insertion position
-                this.randomAccessFile.seek ( insertionPoint );
+                refreshBlockIndex ();
+                index = mergeCompressedLongValues ( longValues );
+            }
 
-                // write data
-                do
-                {
-                    // prepare values to write
-                    final LongValue longValue = longValues[index];
-                    time = longValue.getTime ();
-                    final long qualityIndicator = Double.doubleToLongBits ( longValue.getQualityIndicator () );
-                    final long manualIndicator = Double.doubleToLongBits ( longValue.getManualIndicator () );
-                    final long baseValueCount = longValue.getBaseValueCount ();
-                    final long value = longValue.getValue ();
-                    final ByteBuffer byteBuffer = ByteBuffer.allocate ( RECORD_BLOCK_SIZE - 1 );
-                    byteBuffer.putLong ( time );
-                    byteBuffer.putLong ( qualityIndicator );
-                    byteBuffer.putLong ( manualIndicator );
-                    byteBuffer.putLong ( baseValueCount );
-                    byteBuffer.putLong ( value );
-
-                    // write values
-                    this.randomAccessFile.writeLong ( time );
-                    this.randomAccessFile.writeLong ( qualityIndicator );
-                    this.randomAccessFile.writeLong ( manualIndicator );
-                    this.randomAccessFile.writeLong ( baseValueCount );
-                    this.randomAccessFile.writeLong ( value );
-                    this.randomAccessFile.writeByte ( calculateLrcParity ( byteBuffer.array () ) );
-                    index++;
-                } while ( addAll && index < longValues.length );
+            // the remaining values within the time span of the meta data are merged into the uncompressed records
+            while ( index < size && longValues.getTime ( index ) < startTime )
+            {
+                index++;
+            }
+            int toIndex = index;
+            while ( toIndex < size && longValues.getTime ( toIndex ) < endTime )
+            {
+                toIndex++;
+            }
+            if ( index < toIndex )
+            {
+                mergeUncompressedLongValues ( longValues, index, toIndex );
+            }
+            if ( this.fileVersion == COMPRESSED_FILE_VERSION )
+            {
+                compactUncompressedRecords ();
             }
             if ( this.lock != null )
             {
-                this.randomAccessFile.getChannel ().force ( false );
+                force ( false );
             }
         }
         finally
@@ -863,20 +1063,475 @@ public class FileBackEnd implements BackEnd
     }
 
     /**
-     * @see org.openscada.hsdb.StorageChannel#updateLong
+     * This method stores the specified values in the uncompressed records.
+     * Values that follow all stored records are appended. Otherwise all records following the first value are read, merged with the values and written back in one pass.
+     * The merged records are written starting at the end of the file, so that a record is only overwritten after it has been written to its new position.
+     * It is assumed that a valid connection exists and that the write lock is held.
+     * @param longValues batch containing the values that have to be stored sorted by time
+     * @param fromIndex index of the first value that has to be stored
+     * @param toIndex index after the last value that has to be stored
+     * @throws Exception in case of problems
      */
-    public synchronized void updateLong ( final LongValue longValue ) throws Exception
+    private void mergeUncompressedLongValues ( final LongValueBatch longValues, final int fromIndex, final int toIndex ) throws Exception
     {
-        assureInitialized ();
-        if ( longValue != null )
+        // ignore incomplete data at file end
+        long fileSize = this.randomAccessFile.length ();
+        final long incompleteData = ( fileSize - this.recordOffset ) % RECORD_BLOCK_SIZE;
+        if ( incompleteData != 0 )
         {
-            try
-            {
-                // assure that write operation can be performed
-                openConnection ( true );
+            fileSize -= incompleteData;
+            logger.warn ( String.format ( "skipping last entry when reading file '%s' since it is not complete", this.fileName ) );
+        }
 
-                // write data to file
-                writeLongValues ( new LongValue[] { longValue } );
+        // append the values if they follow all stored records
+        final long insertionPoint = getInsertionPoint ( longValues.getTime ( fromIndex ), fileSize );
+        if ( insertionPoint == fileSize )
+        {
+            this.randomAccessFile.seek ( insertionPoint );
+            writeRecords ( this.randomAccessFile, longValues, fromIndex, toIndex );
+            return;
+        }
+
+        // merge the values with the following records and write the result from back to front
+        final int existingCount = (int) ( ( fileSize - insertionPoint ) / RECORD_BLOCK_SIZE );
+        final LongValueBatch existingValues = new LongValueBatch ( existingCount );
+        readLongValues ( insertionPoint, fileSize, Long.MAX_VALUE, existingCount, existingValues );
+        final LongValueBatch mergedValues = mergeLongValues ( existingValues, longValues, fromIndex, toIndex );
+        int endIndex = mergedValues.getSize ();
+        while ( endIndex > 0 )
+        {
+            final int beginIndex = Math.max ( 0, endIndex - MAX_RECORD_BUFFER_SIZE );
+            this.randomAccessFile.seek ( insertionPoint + (long)beginIndex * RECORD_BLOCK_SIZE );
+            writeRecords ( this.randomAccessFile, mergedValues, beginIndex, endIndex );
+            endIndex = beginIndex;
+        }
+    }
+
+    /**
+     * This method updates the index of the compressed blocks and the offset of the uncompressed records.
+     * Blocks that have been appended since the last call are added to the index. If existing blocks have been modified since the last call, the index is rebuilt completely.
+     * It is assumed that an open connection exists and that the lock is held.
+     * @throws Exception in case of read problems or file corruption
+     */
+    private void refreshBlockIndex () throws Exception
+    {
+        final long blockStart = this.dataOffset + COMPRESSED_SECTION_INFO_SIZE;
+        final long fileSize = this.randomAccessFile.length ();
+        if ( fileSize < blockStart )
+        {
+            final String message = String.format ( "file '%s' is of invalid format! (missing compressed section information)", this.fileName );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        this.randomAccessFile.seek ( this.dataOffset );
+        final long blockEnd = this.randomAccessFile.readLong ();
+        final long generation = this.randomAccessFile.readLong ();
+        if ( blockEnd < blockStart || blockEnd > fileSize )
+        {
+            final String message = String.format ( "file '%s' is of invalid format! (invalid end of compressed blocks: %s)", this.fileName, blockEnd );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        if ( generation != this.blockIndexGeneration || blockEnd < this.blockIndex.getEndPosition () )
+        {
+            this.blockIndex.clear ( blockStart );
+            this.blockIndexGeneration = generation;
+        }
+        final byte[] header = new byte[CompressedBlockCodec.HEADER_SIZE];
+        while ( this.blockIndex.getEndPosition () < blockEnd )
+        {
+            final long position = this.blockIndex.getEndPosition ();
+            this.randomAccessFile.seek ( position );
+            this.randomAccessFile.readFully ( header );
+            if ( !CompressedBlockCodec.addToIndex ( header, this.blockIndex, blockEnd ) )
+            {
+                this.blockIndex.clear ( blockStart );
+                final String message = String.format ( "file '%s' is corrupt! invalid compressed block header at position %s", this.fileName, position );
+                logger.error ( message );
+                throw new Exception ( message );
+            }
+        }
+        this.recordOffset = blockEnd;
+    }
+
+    /**
+     * This method reads the specified compressed block and appends the contained values to the passed batch.
+     * It is assumed that an open connection exists and that the lock is held.
+     * @param block index of the block that has to be read
+     * @param longValues batch to which the read values will be appended
+     * @throws Exception in case of read problems or file corruption
+     */
+    private void readBlock ( final int block, final LongValueBatch longValues ) throws Exception
+    {
+        final long position = this.blockIndex.getPosition ( block );
+        final byte[] buffer = new byte[this.blockIndex.getLength ( block )];
+        this.randomAccessFile.seek ( position );
+        this.randomAccessFile.readFully ( buffer );
+        if ( !CompressedBlockCodec.decode ( buffer, longValues ) )
+        {
+            final String message = String.format ( "file '%s' is corrupt! invalid compressed block at position %s", this.fileName, position );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+    }
+
+    /**
+     * This method reads consecutive long values from a compressed file and appends them to the passed batch.
+     * The compressed blocks are located via the block index, so that only the blocks covering the requested time span have to be decoded.
+     * Reading stops at the end of the file, at the first value with a time stamp that is equal to or after the specified end time or if the maximum count of values has been read.
+     * It is assumed that an open connection exists.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param includePreviousValue true, if reading should start with the last value at or before the start time, otherwise false if reading should start with the first value after the start time
+     * @param endTime time stamp of the first value that will not be read anymore
+     * @param maxCount maximum count of values that will be read
+     * @param longValues batch to which the read values will be appended
+     * @return true, if reading stopped since the maximum count of values has been read, otherwise false
+     * @throws Exception in case of read problems or file corruption
+     */
+    private boolean readCompressedValues ( final long startTime, final boolean includePreviousValue, final long endTime, final int maxCount, final LongValueBatch longValues ) throws Exception
+    {
+        if ( this.lock != null )
+        {
+            this.lock.readLock ().lock ();
+        }
+        try
+        {
+            refreshBlockIndex ();
+            final long fileSize = this.randomAccessFile.length ();
+            final int blockCount = this.blockIndex.getSize ();
+            int block = Math.max ( 0, this.blockIndex.findBlock ( startTime ) );
+
+            // skip the compressed blocks if reading has to start within the uncompressed records
+            if ( block == blockCount - 1 && this.blockIndex.getLastTime ( block ) <= startTime )
+            {
+                if ( !includePreviousValue || ( this.recordOffset + RECORD_BLOCK_SIZE <= fileSize && readLongValue ( this.recordOffset ).getTime () <= startTime ) )
+                {
+                    block = blockCount;
+                }
+            }
+
+            // read values from compressed blocks
+            final int startBlock = block;
+            final LongValueBatch blockValues = new LongValueBatch ( COMPRESSED_BLOCK_RECORD_COUNT );
+            int remainingCount = maxCount;
+            for ( ; block < blockCount; block++ )
+            {
+                blockValues.clear ();
+                readBlock ( block, blockValues );
+                final int size = blockValues.getSize ();
+                int index = 0;
+                if ( block == startBlock )
+                {
+                    while ( index < size && blockValues.getTime ( index ) <= startTime )
+                    {
+                        index++;
+                    }
+                    if ( includePreviousValue )
+                    {
+                        index = Math.max ( 0, index - 1 );
+                    }
+                }
+                int endIndex = index;
+                while ( endIndex < size && endIndex - index < remainingCount && blockValues.getTime ( endIndex ) < endTime )
+                {
+                    endIndex++;
+                }
+                longValues.addAll ( blockValues, index, endIndex );
+                remainingCount -= endIndex - index;
+                if ( endIndex < size )
+                {
+                    return blockValues.getTime ( endIndex ) < endTime;
+                }
+            }
+
+            // read values from uncompressed records
+            long position = this.recordOffset;
+            if ( startBlock == blockCount )
+            {
+                position = getStartingPosition ( startTime );
+                if ( !includePreviousValue && position + RECORD_BLOCK_SIZE <= fileSize && readLongValue ( position ).getTime () <= startTime )
+                {
+                    position += RECORD_BLOCK_SIZE;
+                }
+            }
+            return readLongValues ( position, fileSize, endTime, remainingCount, longValues );
+        }
+        finally
+        {
+            if ( this.lock != null )
+            {
+                this.lock.readLock ().unlock ();
+            }
+        }
+    }
+
+    /**
+     * This method merges all values of the passed batch that are located within the time span of the compressed blocks into the affected blocks.
+     * It is assumed that a valid connection exists, that the write lock is held and that the block index is up to date.
+     * @param longValues data that has to be stored sorted by time
+     * @return index of the first value of the passed batch that has to be stored in the uncompressed records
+     * @throws Exception in case of problems
+     */
+    private int mergeCompressedLongValues ( final LongValueBatch longValues ) throws Exception
+    {
+        // determine the values that are located within the time span of the compressed blocks
+        final int size = longValues.getSize ();
+        final int blockCount = this.blockIndex.getSize ();
+        final long startTime = this.metaData.getStartTime ();
+        int fromIndex = 0;
+        while ( fromIndex < size && longValues.getTime ( fromIndex ) < startTime )
+        {
+            fromIndex++;
+        }
+        if ( blockCount == 0 )
+        {
+            return fromIndex;
+        }
+        final long compressedEndTime = this.blockIndex.getLastTime ( blockCount - 1 );
+        int toIndex = fromIndex;
+        while ( toIndex < size && longValues.getTime ( toIndex ) <= compressedEndTime )
+        {
+            toIndex++;
+        }
+        if ( fromIndex == toIndex )
+        {
+            return toIndex;
+        }
+
+        // merge the values into the affected blocks starting with the last one
+        final List<Integer> blocks = new ArrayList<Integer> ();
+        final List<byte[][]> encodedBlocks = new ArrayList<byte[][]> ();
+        long shift = 0;
+        int endIndex = toIndex;
+        while ( endIndex > fromIndex )
+        {
+            final int block = Math.max ( 0, this.blockIndex.findBlock ( longValues.getTime ( endIndex - 1 ) ) );
+            int beginIndex = endIndex - 1;
+            while ( beginIndex > fromIndex && ( block == 0 || longValues.getTime ( beginIndex - 1 ) >= this.blockIndex.getFirstTime ( block ) ) )
+            {
+                beginIndex--;
+            }
+            final byte[][] encodedBlock = mergeBlock ( block, longValues, beginIndex, endIndex );
+            for ( final byte[] bytes : encodedBlock )
+            {
+                shift += bytes.length;
+            }
+            shift -= this.blockIndex.getLength ( block );
+            blocks.add ( 0, block );
+            encodedBlocks.add ( 0, encodedBlock );
+            endIndex = beginIndex;
+        }
+
+        // replace the affected blocks and move the following data, whereby the new end of the compressed blocks is stored and it is marked that existing blocks have been modified
+        long sourcePosition = this.blockIndex.getPosition ( blocks.get ( 0 ) );
+        this.journal.begin ( this.dataOffset, this.recordOffset + shift, this.blockIndexGeneration + 1, sourcePosition );
+        try
+        {
+            for ( int i = 0; i < blocks.size (); i++ )
+            {
+                final int block = blocks.get ( i );
+                final long position = this.blockIndex.getPosition ( block );
+                this.journal.copy ( this.randomAccessFile, sourcePosition, position );
+                for ( final byte[] encodedBlock : encodedBlocks.get ( i ) )
+                {
+                    this.journal.getOutput ().write ( encodedBlock );
+                }
+                sourcePosition = position + this.blockIndex.getLength ( block );
+            }
+            this.journal.copy ( this.randomAccessFile, sourcePosition, this.randomAccessFile.length () );
+        }
+        catch ( final Exception e )
+        {
+            this.journal.abort ();
+            throw e;
+        }
+        commitJournal ();
+        return toIndex;
+    }
+
+    /**
+     * This method merges the specified values into a compressed block and encodes the result.
+     * If the merged block becomes too large, it is split into several blocks.
+     * It is assumed that a valid connection exists and that the write lock is held.
+     * @param block index of the block into which the values have to be merged
+     * @param longValues batch containing the values that have to be merged sorted by time
+     * @param fromIndex index of the first value that has to be merged
+     * @param toIndex index after the last value that has to be merged
+     * @return encoded blocks that replace the existing block
+     * @throws Exception in case of problems
+     */
+    private byte[][] mergeBlock ( final int block, final LongValueBatch longValues, final int fromIndex, final int toIndex ) throws Exception
+    {
+        // merge existing and new values
+        final LongValueBatch existingValues = new LongValueBatch ( this.blockIndex.getRecordCount ( block ) );
+        readBlock ( block, existingValues );
+        final LongValueBatch mergedValues = mergeLongValues ( existingValues, longValues, fromIndex, toIndex );
+
+        // encode merged values
+        final int mergedSize = mergedValues.getSize ();
+        final int blockCount = Math.max ( 1, mergedSize / COMPRESSED_BLOCK_RECORD_COUNT );
+        final byte[][] blocks = new byte[blockCount][];
+        for ( int i = 0; i < blockCount; i++ )
+        {
+            blocks[i] = CompressedBlockCodec.encode ( mergedValues, (int) ( (long)mergedSize * i / blockCount ), (int) ( (long)mergedSize * ( i + 1 ) / blockCount ) );
+        }
+        return blocks;
+    }
+
+    /**
+     * This method merges the specified values into the passed existing values whereby new values replace existing values with the same time stamp.
+     * If several new values have the same time stamp, the last one is kept.
+     * @param existingValues existing values sorted by time
+     * @param longValues batch containing the new values sorted by time
+     * @param fromIndex index of the first new value
+     * @param toIndex index after the last new value
+     * @return merged values sorted by time
+     */
+    private static LongValueBatch mergeLongValues ( final LongValueBatch existingValues, final LongValueBatch longValues, final int fromIndex, final int toIndex )
+    {
+        final int existingSize = existingValues.getSize ();
+        final LongValueBatch mergedValues = new LongValueBatch ( existingSize + toIndex - fromIndex );
+        int existingIndex = 0;
+        int newIndex = fromIndex;
+        while ( existingIndex < existingSize || newIndex < toIndex )
+        {
+            if ( newIndex == toIndex || ( existingIndex < existingSize && existingValues.getTime ( existingIndex ) < longValues.getTime ( newIndex ) ) )
+            {
+                mergedValues.add ( existingValues, existingIndex++ );
+                continue;
+            }
+            final long time = longValues.getTime ( newIndex );
+            if ( existingIndex < existingSize && existingValues.getTime ( existingIndex ) == time )
+            {
+                existingIndex++;
+            }
+            if ( newIndex + 1 == toIndex || longValues.getTime ( newIndex + 1 ) != time )
+            {
+                mergedValues.add ( longValues, newIndex );
+            }
+            newIndex++;
+        }
+        return mergedValues;
+    }
+
+    /**
+     * This method compresses the uncompressed records of a compressed file as soon as enough records for a complete block exist.
+     * Remaining records that do not fill a complete block stay uncompressed.
+     * It is assumed that a valid connection exists, that the write lock is held and that the block index is up to date.
+     * @throws Exception in case of problems
+     */
+    private void compactUncompressedRecords () throws Exception
+    {
+        final long fileSize = this.randomAccessFile.length ();
+        final long recordCount = ( fileSize - this.recordOffset ) / RECORD_BLOCK_SIZE;
+        if ( recordCount < COMPRESSED_BLOCK_RECORD_COUNT )
+        {
+            return;
+        }
+        final LongValueBatch records = new LongValueBatch ( (int)recordCount );
+        readLongValues ( this.recordOffset, fileSize, Long.MAX_VALUE, (int)recordCount, records );
+        final int compressedCount = records.getSize () / COMPRESSED_BLOCK_RECORD_COUNT * COMPRESSED_BLOCK_RECORD_COUNT;
+        final byte[][] blocks = new byte[compressedCount / COMPRESSED_BLOCK_RECORD_COUNT][];
+        long blockEnd = this.recordOffset;
+        for ( int i = 0; i < blocks.length; i++ )
+        {
+            blocks[i] = CompressedBlockCodec.encode ( records, i * COMPRESSED_BLOCK_RECORD_COUNT, ( i + 1 ) * COMPRESSED_BLOCK_RECORD_COUNT );
+            blockEnd += blocks[i].length;
+        }
+
+        // the new blocks and the remaining records replace the uncompressed records, whereby the existing blocks remain unchanged
+        this.journal.begin ( this.dataOffset, blockEnd, this.blockIndexGeneration, this.recordOffset );
+        try
+        {
+            for ( final byte[] block : blocks )
+            {
+                this.journal.getOutput ().write ( block );
+            }
+            writeRecords ( this.journal.getOutput (), records, compressedCount, records.getSize () );
+        }
+        catch ( final Exception e )
+        {
+            this.journal.abort ();
+            throw e;
+        }
+        commitJournal ();
+    }
+
+    /**
+     * This method commits the journal that has been written and applies it to the file.
+     * The file is only modified after the journal has been forced to the storage device, so that an interrupted modification can be completed when the file is opened the next time.
+     * If the modification fails, the connection is closed so that the journal is applied when the file is opened again.
+     * It is assumed that a valid connection exists and that the write lock is held.
+     * @throws Exception in case of problems
+     */
+    private void commitJournal () throws Exception
+    {
+        this.journal.commit ();
+        try
+        {
+            this.journal.apply ( this.randomAccessFile );
+            force ( true );
+        }
+        catch ( final IOException e )
+        {
+            closeConnection ();
+            throw e;
+        }
+        if ( !this.journal.delete () )
+        {
+            logger.warn ( String.format ( "journal of file '%s' could not be deleted", this.fileName ) );
+        }
+        refreshBlockIndex ();
+    }
+
+    /**
+     * This method writes the specified values to the passed output. If the file is passed, the values are written at the current position of the file.
+     * The records are encoded in blocks so that only few write operations are required.
+     * It is assumed that a valid connection exists and that the write lock is held.
+     * @param output output to which the values have to be written
+     * @param longValues batch containing the values that have to be written
+     * @param fromIndex index of the first value that has to be written
+     * @param toIndex index after the last value that has to be written
+     * @throws Exception in case of problems
+     */
+    private void writeRecords ( final DataOutput output, final LongValueBatch longValues, final int fromIndex, final int toIndex ) throws Exception
+    {
+        final byte[] buffer = new byte[Math.min ( MAX_RECORD_BUFFER_SIZE, toIndex - fromIndex ) * RECORD_BLOCK_SIZE];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap ( buffer );
+        int index = fromIndex;
+        while ( index < toIndex )
+        {
+            byteBuffer.clear ();
+            final int blockEndIndex = Math.min ( toIndex, index + MAX_RECORD_BUFFER_SIZE );
+            for ( ; index < blockEndIndex; index++ )
+            {
+                final int offset = byteBuffer.position ();
+                byteBuffer.putLong ( longValues.getTime ( index ) );
+                byteBuffer.putLong ( Double.doubleToLongBits ( longValues.getQualityIndicator ( index ) ) );
+                byteBuffer.putLong ( Double.doubleToLongBits ( longValues.getManualIndicator ( index ) ) );
+                byteBuffer.putLong ( longValues.getBaseValueCount ( index ) );
+                byteBuffer.putLong ( longValues.getValue ( index ) );
+                byteBuffer.put ( calculateLrcParity ( buffer, offset, RECORD_BLOCK_SIZE - 1 ) );
+            }
+            output.write ( buffer, 0, byteBuffer.position () );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLong
+     */
+    public synchronized void updateLong ( final LongValue longValue ) throws Exception
+    {
+        assureInitialized ();
+        if ( longValue != null )
+        {
+            try
+            {
+                // assure that write operation can be performed
+                openConnection ( true );
+
+                // write data to file
+                writeLongValues ( LongValueBatch.fromValues ( new LongValue[] { longValue } ) );
             }
             finally
             {
@@ -900,7 +1555,39 @@ public class FileBackEnd implements BackEnd
 
                 // write data to file
                 Arrays.sort ( longValues );
-                writeLongValues ( longValues );
+                writeLongValues ( LongValueBatch.fromValues ( longValues ) );
+            }
+            finally
+            {
+                closeIfRequired ();
+            }
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
+     */
+    public synchronized void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
+    {
+        assureInitialized ();
+        if ( longValues != null )
+        {
+            try
+            {
+                // assure that write operation can be performed
+                openConnection ( true );
+
+                // write data to file
+                if ( longValues.isSortedByTime () )
+                {
+                    writeLongValues ( longValues );
+                }
+                else
+                {
+                    final LongValue[] sortedValues = longValues.toLongValues ();
+                    Arrays.sort ( sortedValues );
+                    writeLongValues ( LongValueBatch.fromValues ( sortedValues ) );
+                }
             }
             finally
             {
@@ -913,14 +1600,23 @@ public class FileBackEnd implements BackEnd
      * @see org.openscada.hsdb.StorageChannel#getLongValues
      */
     public synchronized LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
+    {
+        return getLongValueBatch ( startTime, endTime ).toLongValues ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public synchronized LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
     {
         // assure that the current state is valid
         assureInitialized ();
 
         // assure that a valid timespan is passed
+        final LongValueBatch longValues = new LongValueBatch ( 0 );
         if ( startTime >= endTime )
         {
-            return EMPTY_LONGVALUE_ARRAY;
+            return longValues;
         }
 
         // perform search
@@ -930,27 +1626,15 @@ public class FileBackEnd implements BackEnd
             openConnection ( false );
 
             // get data from file
-            final long fileSize = this.randomAccessFile.length ();
-            long startingPosition = getFirstEntryPosition ( startTime );
-            final long incompleteData = ( startingPosition - this.dataOffset ) % RECORD_BLOCK_SIZE;
-            if ( incompleteData != 0 )
+            if ( this.fileVersion == COMPRESSED_FILE_VERSION )
             {
-                startingPosition -= incompleteData;
-                startingPosition = Math.max ( startingPosition, this.dataOffset );
-                logger.warn ( String.format ( "skipping last entry when reading file '%s' since it is not complete", this.fileName ) );
+                readCompressedValues ( startTime, true, endTime, Integer.MAX_VALUE, longValues );
             }
-            final List<LongValue> longValues = new ArrayList<LongValue> ();
-            while ( startingPosition + RECORD_BLOCK_SIZE <= fileSize )
+            else
             {
-                final LongValue longValue = readLongValue ( startingPosition );
-                if ( longValue.getTime () >= endTime )
-                {
-                    break;
-                }
-                longValues.add ( longValue );
-                startingPosition += RECORD_BLOCK_SIZE;
+                readLongValues ( getStartingPosition ( startTime ), this.randomAccessFile.length (), endTime, Integer.MAX_VALUE, longValues );
             }
-            return longValues.toArray ( EMPTY_LONGVALUE_ARRAY );
+            return longValues;
         }
         finally
         {
@@ -959,72 +1643,206 @@ public class FileBackEnd implements BackEnd
     }
 
     /**
-     * This method encodes text so that it can be stored within a file.
-     * @param data text to be encoded
-     * @return encoded text as byte array
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
      */
-    private byte[] encodeToBytes ( final String data )
+    public synchronized ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
     {
-        if ( data == null )
-        {
-            return emptyByteArray;
-        }
-        synchronized ( this.charEncoder )
+        assureInitialized ();
+        return new LongValueCursor ( startTime, endTime );
+    }
+
+    /**
+     * This method reads the next values for a cursor.
+     * If values have already been read, reading continues after the last value that has been read.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param lastTime time of the last value that has already been read or null if no value has been read yet
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @param longValues batch to which the read values will be appended
+     * @return true, if further values might be available, otherwise false
+     * @throws Exception in case of read problems or file corruption
+     */
+    private synchronized boolean readCursorValues ( final long startTime, final Long lastTime, final long endTime, final LongValueBatch longValues ) throws Exception
+    {
+        assureInitialized ();
+        try
         {
-            try
+            // assure that read operation can be performed
+            openConnection ( false );
+
+            // get data from file
+            if ( this.fileVersion == COMPRESSED_FILE_VERSION )
             {
-                return this.charEncoder.encode ( CharBuffer.wrap ( data ) ).array ();
+                return lastTime == null ? readCompressedValues ( startTime, true, endTime, MAX_RECORD_BUFFER_SIZE, longValues ) : readCompressedValues ( lastTime, false, endTime, MAX_RECORD_BUFFER_SIZE, longValues );
             }
-            catch ( final CharacterCodingException e )
+            final long fileSize = this.randomAccessFile.length ();
+            long startingPosition;
+            if ( lastTime == null )
+            {
+                startingPosition = getStartingPosition ( startTime );
+            }
+            else
             {
-                return data.getBytes ();
+                startingPosition = getStartingPosition ( lastTime );
+                if ( startingPosition + RECORD_BLOCK_SIZE <= fileSize && readLongValue ( startingPosition ).getTime () <= lastTime )
+                {
+                    startingPosition += RECORD_BLOCK_SIZE;
+                }
             }
+            return readLongValues ( startingPosition, fileSize, endTime, MAX_RECORD_BUFFER_SIZE, longValues );
+        }
+        finally
+        {
+            closeIfRequired ();
+        }
+    }
+
+    /**
+     * This method returns the position of the first complete record that has to be read when retrieving values starting at the passed time.
+     * It is assumed that an open connection exists.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @return position of the first record that has to be read
+     * @throws Exception in case of read problems or file corruption
+     */
+    private long getStartingPosition ( final long startTime ) throws Exception
+    {
+        long startingPosition = getFirstEntryPosition ( startTime );
+        final long incompleteData = ( startingPosition - this.recordOffset ) % RECORD_BLOCK_SIZE;
+        if ( incompleteData != 0 )
+        {
+            startingPosition -= incompleteData;
+            startingPosition = Math.max ( startingPosition, this.recordOffset );
+            logger.warn ( String.format ( "skipping last entry when reading file '%s' since it is not complete", this.fileName ) );
         }
+        return startingPosition;
     }
 
     /**
-     * This method decodes previously encoded text.
-     * @param bytes text to be decoded
-     * @return decoded text
+     * This class provides sequential access to the values of the file.
+     * The file is accessed again for each batch so that no resources are held between the calls.
      */
-    private String decodeStringFromBytes ( final byte[] bytes )
+    private class LongValueCursor implements ValueCursor<LongValueBatch>
     {
-        if ( bytes == null )
+        /** Start of the time span for which the values have to be retrieved. */
+        private final long startTime;
+
+        /** End of the time span for which the values have to be retrieved. */
+        private final long endTime;
+
+        /** Time of the last value that has been read or null if no value has been read yet. */
+        private Long lastTime;
+
+        /** Flag indicating whether all values have been read. */
+        private boolean finished;
+
+        /** Values that have been read but not yet returned or null if the next values have not yet been read. */
+        private LongValueBatch nextValues;
+
+        /**
+         * Constructor.
+         * @param startTime start of the time span for which the values have to be retrieved
+         * @param endTime end of the time span for which the values have to be retrieved
+         */
+        public LongValueCursor ( final long startTime, final long endTime )
         {
-            return "";
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.lastTime = null;
+            this.finished = startTime >= endTime;
+            this.nextValues = null;
         }
 
-        try
+        /**
+         * @see org.openscada.hsdb.ValueCursor#hasNext()
+         */
+        public boolean hasNext () throws Exception
         {
-            return this.charDecoder.decode ( ByteBuffer.wrap ( bytes ) ).toString ().replaceAll ( "\u0000", "" );
+            if ( this.nextValues == null )
+            {
+                this.nextValues = new LongValueBatch ( 0 );
+                if ( !this.finished )
+                {
+                    this.finished = !readCursorValues ( this.startTime, this.lastTime, this.endTime, this.nextValues );
+                    if ( !this.nextValues.isEmpty () )
+                    {
+                        this.lastTime = this.nextValues.getTime ( this.nextValues.getSize () - 1 );
+                    }
+                }
+            }
+            return !this.nextValues.isEmpty ();
         }
-        catch ( final CharacterCodingException e )
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#next()
+         */
+        public LongValueBatch next () throws Exception
+        {
+            hasNext ();
+            final LongValueBatch result = this.nextValues;
+            this.nextValues = null;
+            return result;
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#close()
+         */
+        public void close ()
         {
-            return new String ( bytes );
+            this.finished = true;
+            this.nextValues = null;
         }
     }
 
     /**
-     * This method closes the connection to the file if the connection should not be kept open until the instance is deinitialized.
+     * This method is called after each access to the file.
+     * If the file handle manager is enabled, the connection is kept open and the manager closes the least recently used files if the maximum count of open files is exceeded.
+     * Otherwise the connection is closed unless it should be kept open until the instance is deinitialized.
      */
     private void closeIfRequired ()
     {
-        if ( !this.keepUpenWhileInitialized )
+        if ( this.fileHandleManager.isEnabled () )
+        {
+            this.fileHandleManager.released ( this );
+        }
+        else if ( !this.keepUpenWhileInitialized )
         {
             closeConnection ();
         }
     }
 
+    /**
+     * This method forces all written data of the file to the storage device and records the time that is required for this action.
+     * @param metaData true, if the metadata of the file such as its size has to be forced as well, otherwise false
+     * @throws IOException if the data could not be forced to the storage device
+     */
+    private void force ( final boolean metaData ) throws IOException
+    {
+        final long startTime = System.nanoTime ();
+        this.randomAccessFile.getChannel ().force ( metaData );
+        this.fsyncTimer.update ( System.nanoTime () - startTime );
+    }
+
     /**
      * This method calculates a parity value for the passed bytes.
      * @param bytes array of bytes for which a parity value has to be calculated
      * @return calculated parity value
      */
     private static Byte calculateLrcParity ( final byte[] bytes )
+    {
+        return calculateLrcParity ( bytes, 0, bytes.length );
+    }
+
+    /**
+     * This method calculates a parity value for the specified range of the passed bytes.
+     * @param bytes array of bytes containing the range for which a parity value has to be calculated
+     * @param offset index of the first byte of the range
+     * @param length count of bytes of the range
+     * @return calculated parity value
+     */
+    private static byte calculateLrcParity ( final byte[] bytes, final int offset, final int length )
     {
         byte result = LRC_SEED;
-        final int size = bytes.length;
-        for ( int i = 0; i < size; i++ )
+        final int end = offset + length;
+        for ( int i = offset; i < end; i++ )
         {
             result ^= bytes[i];
         }
@@ -25,6 +25,9 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +37,7 @@ import org.openscada.hsdb.backend.BackEndFactory;
 import org.openscada.hsdb.backend.file.internal.DirectoryFileFilter;
 import org.openscada.hsdb.backend.file.internal.FileFileFilter;
 import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,6 +95,15 @@ public class FileBackEndFactory implements BackEndFactory
     /** Precompiled regular expression pattern for extracting the detail level id from a filename. */
     private final Pattern detailLevelIdPattern;
 
+    /** Precompiled regular expression pattern for extracting the start time from a filename. */
+    private final Pattern startTimePattern;
+
+    /** Precompiled regular expression pattern for extracting the end time from a filename. */
+    private final Pattern endTimePattern;
+
+    /** Meta data that has been derived from file names mapped by the path of the file. */
+    private final ConcurrentMap<String, StorageChannelMetaData> fileNameMetaDataCache;
+
     /**
      * Constructor
      * @param fileRoot root folder within the storage files are located and new ones have to be created
@@ -103,6 +116,9 @@ public class FileBackEndFactory implements BackEndFactory
         this.configurationIdPattern = Pattern.compile ( String.format ( FILE_MASK, "(" + CONFIGURATION_ID_REGEX_PATTERN + ")", CALCULATION_METHOD_REGEX_PATTERN, DETAIL_LEVEL_ID_REGEX_PATTERN, START_TIME_REGEX_PATTERN, END_TIME_REGEX_PATTERN ), Pattern.CASE_INSENSITIVE );
         this.calculationMethodPattern = Pattern.compile ( String.format ( FILE_MASK, CONFIGURATION_ID_REGEX_PATTERN, "(" + CALCULATION_METHOD_REGEX_PATTERN + ")", DETAIL_LEVEL_ID_REGEX_PATTERN, START_TIME_REGEX_PATTERN, END_TIME_REGEX_PATTERN ), Pattern.CASE_INSENSITIVE );
         this.detailLevelIdPattern = Pattern.compile ( String.format ( FILE_MASK, CONFIGURATION_ID_REGEX_PATTERN, CALCULATION_METHOD_REGEX_PATTERN, "(" + DETAIL_LEVEL_ID_REGEX_PATTERN + ")", START_TIME_REGEX_PATTERN, END_TIME_REGEX_PATTERN ), Pattern.CASE_INSENSITIVE );
+        this.startTimePattern = Pattern.compile ( String.format ( FILE_MASK, CONFIGURATION_ID_REGEX_PATTERN, CALCULATION_METHOD_REGEX_PATTERN, DETAIL_LEVEL_ID_REGEX_PATTERN, "(" + START_TIME_REGEX_PATTERN + ")", END_TIME_REGEX_PATTERN ), Pattern.CASE_INSENSITIVE );
+        this.endTimePattern = Pattern.compile ( String.format ( FILE_MASK, CONFIGURATION_ID_REGEX_PATTERN, CALCULATION_METHOD_REGEX_PATTERN, DETAIL_LEVEL_ID_REGEX_PATTERN, START_TIME_REGEX_PATTERN, "(" + END_TIME_REGEX_PATTERN + ")" ), Pattern.CASE_INSENSITIVE );
+        this.fileNameMetaDataCache = new ConcurrentHashMap<String, StorageChannelMetaData> ();
     }
 
     /**
@@ -128,6 +144,53 @@ public class FileBackEndFactory implements BackEndFactory
         return String.format ( TIME_FORMAT, calendar.get ( Calendar.YEAR ), calendar.get ( Calendar.MONTH ) + 1, calendar.get ( Calendar.DAY_OF_MONTH ), calendar.get ( Calendar.HOUR_OF_DAY ), calendar.get ( Calendar.MINUTE ), calendar.get ( Calendar.SECOND ), calendar.get ( Calendar.MILLISECOND ), calendar.get ( Calendar.DST_OFFSET ) );
     }
 
+    /**
+     * This method converts a part of a file name that has been created via the method {@link #encodeFileNamePart(long)} back to the time.
+     * Since the conversion is not unique for all times, the result is only returned if it is converted to the passed text again.
+     * @param fileNamePart text to be converted
+     * @return converted time or null if the text could not be converted
+     */
+    public static Long decodeTimeFileNamePart ( final String fileNamePart )
+    {
+        if ( fileNamePart == null )
+        {
+            return null;
+        }
+        final String[] parts = fileNamePart.split ( "\\." );
+        if ( parts.length != 4 || parts[0].length () != 8 || parts[1].length () != 6 )
+        {
+            return null;
+        }
+        try
+        {
+            final Calendar calendar = Calendar.getInstance ( TimeZone.getTimeZone ( "UTC" ) );
+            calendar.clear ();
+            calendar.set ( Integer.parseInt ( parts[0].substring ( 0, 4 ) ), Integer.parseInt ( parts[0].substring ( 4, 6 ) ) - 1, Integer.parseInt ( parts[0].substring ( 6, 8 ) ), Integer.parseInt ( parts[1].substring ( 0, 2 ) ), Integer.parseInt ( parts[1].substring ( 2, 4 ) ), Integer.parseInt ( parts[1].substring ( 4, 6 ) ) );
+            calendar.set ( Calendar.MILLISECOND, Integer.parseInt ( parts[2] ) );
+            // the encoded fields equal the universal time unless a daylight saving time offset applies.
+            // around the switch of the daylight saving time two different times can result in the same text. such texts are not converted
+            final long time = calendar.getTimeInMillis ();
+            final long daylightSavingTimeOffset = Math.max ( Integer.parseInt ( parts[3] ), TimeZone.getDefault ().getDSTSavings () );
+            Long result = null;
+            for ( final long candidate : new long[] { time, time + daylightSavingTimeOffset, time - daylightSavingTimeOffset } )
+            {
+                if ( ( result == null || result != candidate ) && encodeFileNamePart ( candidate ).equals ( fileNamePart ) )
+                {
+                    if ( result != null )
+                    {
+                        return null;
+                    }
+                    result = candidate;
+                }
+            }
+            return result;
+        }
+        catch ( final NumberFormatException e )
+        {
+            return null;
+        }
+    }
+
     /**
      * This method converts the passed text to a valid part of a file name.
      * @param rawFileNamePart text to be converted
@@ -356,6 +419,89 @@ public class FileBackEndFactory implements BackEndFactory
         return getExistingBackEndsMetaDataInDirectory ( encodeFileNamePart ( configurationId ), merge );
     }
 
+    /**
+     * This method returns the metadata objects of all existing back end objects of the specified configuration.
+     * In contrast to the method {@link #getExistingBackEndsMetaData(String, boolean)} the information is derived from the file names, so that the files do not have to be opened.
+     * Only the configuration id, calculation method, detail level id, start time and end time are set.
+     * Files whose names cannot be converted unambiguously are opened to read the information.
+     * @param configurationId id of the configuration
+     * @return metadata objects of all existing back end objects of the specified configuration
+     */
+    public StorageChannelMetaData[] getExistingBackEndsMetaDataFromFileNames ( final String configurationId )
+    {
+        // check if the directory of the configuration exists
+        final File root = new File ( this.fileRoot );
+        if ( configurationId == null || !root.exists () || !root.isDirectory () )
+        {
+            return emptyMetaDataArray;
+        }
+        final String configurationIdFileName = encodeFileNamePart ( configurationId );
+        final List<StorageChannelMetaData> metaDatas = new ArrayList<StorageChannelMetaData> ();
+        for ( final File configurationDirectory : root.listFiles ( new DirectoryFileFilter ( configurationIdFileName ) ) )
+        {
+            for ( final File file : configurationDirectory.listFiles ( new FileFileFilter ( String.format ( FILE_MASK, configurationDirectory.getName (), CALCULATION_METHOD_REGEX_PATTERN, DETAIL_LEVEL_ID_REGEX_PATTERN, START_TIME_REGEX_PATTERN, END_TIME_REGEX_PATTERN ) ) ) )
+            {
+                StorageChannelMetaData metaData = getMetaDataFromFileName ( configurationId, file );
+                if ( metaData == null )
+                {
+                    final BackEnd backEnd = getBackEnd ( file, false );
+                    if ( backEnd == null )
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        metaData = new StorageChannelMetaData ( backEnd.getMetaData () );
+                        backEnd.deinitialize ();
+                    }
+                    catch ( final Exception e )
+                    {
+                        logger.warn ( String.format ( "metadata of file '%s' could not be retrieved. file will be ignored", file.getPath () ), e );
+                        continue;
+                    }
+                }
+                metaDatas.add ( metaData );
+            }
+        }
+        return metaDatas.toArray ( emptyMetaDataArray );
+    }
+
+    /**
+     * This method returns the meta data that can be derived from the name of the passed file.
+     * The results are cached, since the information only depends on the path of the file.
+     * @param configurationId id of the configuration the file belongs to
+     * @param file file whose name has to be evaluated
+     * @return derived meta data or null if the name of the file cannot be converted unambiguously
+     */
+    private StorageChannelMetaData getMetaDataFromFileName ( final String configurationId, final File file )
+    {
+        final String path = file.getPath ();
+        StorageChannelMetaData metaData = this.fileNameMetaDataCache.get ( path );
+        if ( metaData == null )
+        {
+            final String fileName = file.getName ();
+            final CalculationMethod calculationMethod = CalculationMethod.convertShortStringToCalculationMethod ( extractDataFromFileName ( this.calculationMethodPattern, fileName, "" ) );
+            final Long startTime = decodeTimeFileNamePart ( extractDataFromFileName ( this.startTimePattern, fileName, null ) );
+            final Long endTime = decodeTimeFileNamePart ( extractDataFromFileName ( this.endTimePattern, fileName, null ) );
+            final long detailLevelId;
+            try
+            {
+                detailLevelId = extractDataFromFileName ( this.detailLevelIdPattern, fileName, -1 );
+            }
+            catch ( final NumberFormatException e )
+            {
+                return null;
+            }
+            if ( calculationMethod == CalculationMethod.UNKNOWN || detailLevelId < 0 || startTime == null || endTime == null || startTime >= endTime )
+            {
+                return null;
+            }
+            metaData = new StorageChannelMetaData ( configurationId, calculationMethod, new long[0], detailLevelId, startTime, endTime, 0, 0, DataType.UNKNOWN );
+            this.fileNameMetaDataCache.putIfAbsent ( path, metaData );
+        }
+        return new StorageChannelMetaData ( metaData );
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndFactory#getExistingBackEnds
      */
@@ -461,6 +607,8 @@ public class FileBackEndFactory implements BackEndFactory
             // delete existing back end files
             for ( final File file : directory.listFiles ( new FileFileFilter ( String.format ( FILE_MASK, configurationIdFileName, CALCULATION_METHOD_REGEX_PATTERN, DETAIL_LEVEL_ID_REGEX_PATTERN, START_TIME_REGEX_PATTERN, END_TIME_REGEX_PATTERN ) ) ) )
             {
+                this.fileNameMetaDataCache.remove ( file.getPath () );
+                FileHeaderCache.getInstance ().remove ( file );
                 file.delete ();
             }
 
@@ -23,11 +23,12 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEndFragmentCatalog;
 import org.openscada.hsdb.backend.BackEndFragmentInformation;
 import org.openscada.hsdb.backend.BackEndManagerBase;
+import org.openscada.hsdb.backend.file.internal.FileBackEndFragmentCatalog;
 import org.openscada.hsdb.calculation.CalculationMethod;
 import org.openscada.hsdb.configuration.Configuration;
 import org.openscada.hsdb.configuration.Conversions;
@@ -61,22 +62,16 @@ public class FileBackEndManager extends BackEndManagerBase<FileBackEnd>
     @Override
     public void initialize () throws Exception
     {
-        final Configuration configuration = getConfiguration ();
-        final Map<String, String> data = configuration.getData ();
-        if ( data == null )
-        {
-            throw new Exception ( "configuration is not initialized!" );
-        }
-        final long fragmentCount = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT ), 0 );
-        final String configurationId = configuration.getId ();
-        if ( fragmentCount == 0 )
+        super.initialize ();
+        final String configurationId = getConfiguration ().getId ();
+        if ( getBackEndFragmentCount () == 0 )
         {
             // search for files in the folder
-            logger.info ( "no fragment information could be located in the configuration file for configuration with id '{}'. existing fragments will be evaluated and combined to a new configuration", configurationId );
+            logger.info ( "no fragment information could be located for configuration with id '{}'. existing fragments will be evaluated and combined to a new configuration", configurationId );
             try
             {
                 final FileBackEndFactory backEndFactory = (FileBackEndFactory)getBackEndFactory ();
-                final StorageChannelMetaData[] metaDatas = backEndFactory.getExistingBackEndsMetaData ( configurationId, false );
+                final StorageChannelMetaData[] metaDatas = backEndFactory.getExistingBackEndsMetaDataFromFileNames ( configurationId );
                 if ( metaDatas != null && metaDatas.length > 0 )
                 {
                     final List<BackEndFragmentInformation> fragmentInformations = new ArrayList<BackEndFragmentInformation> ();
@@ -84,7 +79,7 @@ public class FileBackEndManager extends BackEndManagerBase<FileBackEnd>
                     {
                         final BackEndFragmentInformation backEndFragmentInformation = new BackEndFragmentInformation ();
                         backEndFragmentInformation.setConfigurationId ( configurationId );
-                        backEndFragmentInformation.setLock ( new ReentrantReadWriteLock () );
+                        backEndFragmentInformation.setLock ( createFragmentLock () );
                         backEndFragmentInformation.setCalculationMethod ( metaData.getCalculationMethod () );
                         backEndFragmentInformation.setDetailLevelId ( metaData.getDetailLevelId () );
                         backEndFragmentInformation.setStartTime ( metaData.getStartTime () );
@@ -93,9 +88,9 @@ public class FileBackEndManager extends BackEndManagerBase<FileBackEnd>
                         backEndFragmentInformation.setIsCorrupt ( false );
                         fragmentInformations.add ( backEndFragmentInformation );
                     }
-                    for ( int i = 0; i < fragmentInformations.size (); i++ )
+                    for ( final BackEndFragmentInformation backEndFragmentInformation : fragmentInformations )
                     {
-                        addBackEndFragmentInformation ( fragmentInformations.get ( i ), i == fragmentInformations.size () - 1 );
+                        addBackEndFragmentInformation ( backEndFragmentInformation );
                     }
                     flushConfiguration ();
                 }
@@ -104,14 +99,20 @@ public class FileBackEndManager extends BackEndManagerBase<FileBackEnd>
             {
                 logger.error ( String.format ( "could not retrieve meta data information of existing back end fragments for configuration with id '%s'", configurationId ), e );
             }
-            this.initialized = true;
-        }
-        else
-        {
-            super.initialize ();
         }
     }
 
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#createBackEndFragmentCatalog()
+     */
+    @Override
+    protected BackEndFragmentCatalog createBackEndFragmentCatalog ()
+    {
+        final FileBackEndManagerFactory backEndManagerFactory = (FileBackEndManagerFactory)getBackEndManagerFactory ();
+        final String encodedConfigurationId = FileBackEndFactory.encodeFileNamePart ( getConfiguration ().getId () );
+        return new FileBackEndFragmentCatalog ( backEndManagerFactory.getFragmentCatalogFileName ( encodedConfigurationId ), backEndManagerFactory.getFragmentCatalogLogFileName ( encodedConfigurationId ) );
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndManagerBase#delete()
      */
@@ -186,6 +187,7 @@ public class FileBackEndManager extends BackEndManagerBase<FileBackEnd>
     {
         final String fileName = backEndInformation.getFragmentName ();
         final File file = new File ( fileName );
+        FileHeaderCache.getInstance ().remove ( file );
         if ( file.exists () )
         {
             logger.info ( "deleting file '{}'", fileName );
@@ -232,16 +234,17 @@ public class FileBackEndManager extends BackEndManagerBase<FileBackEnd>
             {
                 // the file does not exist but it should be there.
                 // since no check can be performed, assume that the file contains invalid data
-                backEndInformation.setIsEmpty ( false );
-                backEndInformation.setSupposedEarliestValueTime ( null );
+                return backEndInformation.initializeState ( false, null );
+            }
+            final FileBackEnd backEnd = new FileBackEnd ( backEndInformation.getFragmentName (), true );
+            backEnd.setLock ( backEndInformation.getLock () );
+            backEnd.initialize ( null );
+            try
+            {
+                return backEndInformation.initializeState ( backEnd.isEmpty (), backEnd.getFirstEntryTime () );
             }
-            else
+            finally
             {
-                final FileBackEnd backEnd = new FileBackEnd ( backEndInformation.getFragmentName (), true );
-                backEnd.setLock ( backEndInformation.getLock () );
-                backEnd.initialize ( null );
-                backEndInformation.setIsEmpty ( backEnd.isEmpty () );
-                backEndInformation.setSupposedEarliestValueTime ( backEnd.getFirstEntryTime () );
                 backEnd.deinitialize ();
             }
         }
@@ -29,10 +29,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.openscada.hsdb.backend.BackEndManagerFactory;
+import org.openscada.hsdb.backend.file.internal.FileBackEndFragmentCatalog;
 import org.openscada.hsdb.configuration.Configuration;
 import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +55,15 @@ public class FileBackEndManagerFactory implements BackEndManagerFactory
     /** Suffix of files containing meta information of back end files. */
     private final static String CONTROL_FILE_SUFFIX = ".va_ctrl";
 
+    /** Suffix of files containing the snapshot of the fragment catalog. */
+    private final static String FRAGMENT_CATALOG_FILE_SUFFIX = ".va_catalog";
+
+    /** Suffix of files containing the log of the fragment catalog. */
+    private final static String FRAGMENT_CATALOG_LOG_FILE_SUFFIX = ".va_catalog_log";
+
+    /** Id of the threads that are used to load the back end managers. */
+    private final static String MANAGER_LOADER_THREAD_ID = "FileBackEndManagerLoader";
+
     /** Empty array of file back end manager objects. */
     private final static FileBackEndManager[] EMPTY_FILE_BACKEND_MANAGER_ARRAY = new FileBackEndManager[0];
 
@@ -73,6 +89,26 @@ public class FileBackEndManagerFactory implements BackEndManagerFactory
         return new File ( new File ( this.fileBackEndFactory.getFileRoot (), encodedConfigurationId ), encodedConfigurationId + CONTROL_FILE_SUFFIX ).getPath ();
     }
 
+    /**
+     * This method returns the name of the file containing the snapshot of the fragment catalog with the specified encoded id.
+     * @param encodedConfigurationId encoded configuration id
+     * @return name of the file containing the snapshot of the fragment catalog with the specified encoded id
+     */
+    public String getFragmentCatalogFileName ( final String encodedConfigurationId )
+    {
+        return new File ( new File ( this.fileBackEndFactory.getFileRoot (), encodedConfigurationId ), encodedConfigurationId + FRAGMENT_CATALOG_FILE_SUFFIX ).getPath ();
+    }
+
+    /**
+     * This method returns the name of the file containing the log of the fragment catalog with the specified encoded id.
+     * @param encodedConfigurationId encoded configuration id
+     * @return name of the file containing the log of the fragment catalog with the specified encoded id
+     */
+    public String getFragmentCatalogLogFileName ( final String encodedConfigurationId )
+    {
+        return new File ( new File ( this.fileBackEndFactory.getFileRoot (), encodedConfigurationId ), encodedConfigurationId + FRAGMENT_CATALOG_LOG_FILE_SUFFIX ).getPath ();
+    }
+
     /**
      * This method loads the configuration data from the configuration file.
      * @param encodedConfigurationId folder name and prefix of file name for configuration control files
@@ -158,40 +194,101 @@ public class FileBackEndManagerFactory implements BackEndManagerFactory
      * @see org.openscada.hsdb.backend.BackEndManagerFactory#getBackEndManagers()
      */
     public FileBackEndManager[] getBackEndManagers ()
+    {
+        return getBackEndManagers ( false );
+    }
+
+    /**
+     * This method returns the back end managers of all existing configurations.
+     * The managers are loaded in parallel using one thread per available processor.
+     * Managers that cannot be loaded or initialized are omitted.
+     * @param initialize flag indicating whether the managers should be initialized before they are returned
+     * @return back end managers of all existing configurations in the order of the directories
+     */
+    public FileBackEndManager[] getBackEndManagers ( final boolean initialize )
     {
         final File root = new File ( this.fileBackEndFactory.getFileRoot () );
         if ( !root.exists () )
         {
             return EMPTY_FILE_BACKEND_MANAGER_ARRAY;
         }
-        final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+        final List<File> directories = new ArrayList<File> ();
         for ( final File file : root.listFiles () )
         {
             if ( file.exists () && file.isDirectory () )
             {
-                try
-                {
-                    final Configuration configuration = loadConfiguration ( file.getName () );
-                    if ( configuration != null )
+                directories.add ( file );
+            }
+        }
+        if ( directories.isEmpty () )
+        {
+            return EMPTY_FILE_BACKEND_MANAGER_ARRAY;
+        }
+        final int threadCount = Math.min ( directories.size (), Runtime.getRuntime ().availableProcessors () );
+        final ExecutorService executor = Executors.newFixedThreadPool ( threadCount, new NamedThreadFactory ( MANAGER_LOADER_THREAD_ID, true ) );
+        try
+        {
+            final List<Future<FileBackEndManager>> futures = new ArrayList<Future<FileBackEndManager>> ();
+            for ( final File directory : directories )
+            {
+                futures.add ( executor.submit ( new Callable<FileBackEndManager> () {
+                    public FileBackEndManager call () throws Exception
                     {
-                        final FileBackEndManager manager = new FileBackEndManager ( configuration, this, this.fileBackEndFactory );
-                        if ( manager != null )
-                        {
-                            managers.add ( manager );
-                        }
+                        return loadBackEndManager ( directory, initialize );
                     }
-                    else
+                } ) );
+            }
+            final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+            for ( int i = 0; i < futures.size (); i++ )
+            {
+                try
+                {
+                    final FileBackEndManager manager = futures.get ( i ).get ();
+                    if ( manager != null )
                     {
-                        logger.error ( "Failed to load archive from: " + file );
+                        managers.add ( manager );
                     }
                 }
-                catch ( final Exception e )
+                catch ( final InterruptedException e )
+                {
+                    logger.error ( "loading of file backend managers was interrupted", e );
+                    Thread.currentThread ().interrupt ();
+                    break;
+                }
+                catch ( final ExecutionException e )
                 {
-                    logger.error ( String.format ( "could not create file backend manager for folder '%s'", file.getPath () ), e );
+                    logger.error ( String.format ( "could not create file backend manager for folder '%s'", directories.get ( i ).getPath () ), e.getCause () );
                 }
             }
+            return managers.toArray ( EMPTY_FILE_BACKEND_MANAGER_ARRAY );
+        }
+        finally
+        {
+            executor.shutdownNow ();
+        }
+    }
+
+    /**
+     * This method loads the back end manager of the configuration stored in the specified directory.
+     * @param directory directory containing the configuration
+     * @param initialize flag indicating whether the manager should be initialized
+     * @return loaded back end manager or null if no configuration could be found
+     * @throws Exception in case of problems
+     */
+    private FileBackEndManager loadBackEndManager ( final File directory, final boolean initialize ) throws Exception
+    {
+        final Configuration configuration = loadConfiguration ( directory.getName () );
+        if ( configuration == null )
+        {
+            logger.error ( "Failed to load archive from: " + directory );
+            return null;
+        }
+        final FileBackEndManager manager = new FileBackEndManager ( configuration, this, this.fileBackEndFactory );
+        if ( initialize )
+        {
+            manager.initialize ();
         }
-        return managers.toArray ( EMPTY_FILE_BACKEND_MANAGER_ARRAY );
+        return manager;
     }
 
     /**
@@ -231,7 +328,9 @@ public class FileBackEndManagerFactory implements BackEndManagerFactory
      */
     public void delete ( final Configuration configuration )
     {
-        new File ( getConfigurationFileName ( FileBackEndFactory.encodeFileNamePart ( configuration.getId () ) ) ).delete ();
+        final String encodedConfigurationId = FileBackEndFactory.encodeFileNamePart ( configuration.getId () );
+        new File ( getConfigurationFileName ( encodedConfigurationId ) ).delete ();
+        new FileBackEndFragmentCatalog ( getFragmentCatalogFileName ( encodedConfigurationId ), getFragmentCatalogLogFileName ( encodedConfigurationId ) ).delete ();
     }
 
     /**
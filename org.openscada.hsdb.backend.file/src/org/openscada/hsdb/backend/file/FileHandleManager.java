@@ -0,0 +1,339 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class limits the count of files that are kept open by all file back end objects of the process.
+ * Open files are tracked in least recently used order. If the maximum count of open files is exceeded, the least recently used files are closed.
+ * Files of back end objects that are pinned are never closed by this class, but they count towards the maximum count of open files.
+ * Files are closed synchronously by the thread whose access exceeded the maximum count, after the access has been completed.
+ * Only one thread closes files at a time. Other threads do not wait for it, since the closing thread may wait for the back end objects they are using.
+ * The maximum count of open files can be changed via the system property {@link #MAXIMUM_OPEN_FILES_PROPERTY} or via method {@link #setMaximumOpenFiles(int)}.
+ */
+public class FileHandleManager
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( FileHandleManager.class );
+
+    /** Name of the system property that specifies the maximum count of open files. A value less or equal than 0 disables the caching of open files. */
+    public final static String MAXIMUM_OPEN_FILES_PROPERTY = "org.openscada.hsdb.backend.file.maximumOpenFiles";
+
+    /** Default maximum count of open files. The value stays well below the usual per process descriptor limit of 1024. */
+    public final static int DEFAULT_MAXIMUM_OPEN_FILES = 512;
+
+    /** Instance that is shared by all file back end objects of the process. */
+    private final static FileHandleManager instance = new FileHandleManager ( Integer.getInteger ( MAXIMUM_OPEN_FILES_PROPERTY, DEFAULT_MAXIMUM_OPEN_FILES ) );
+
+    /** Lock that is used to synchronize access to the open back end objects. The lock is never held while a file is closed. */
+    private final Lock lock;
+
+    /** Lock that is held by the thread that closes files. */
+    private final Lock evictionLock;
+
+    /** Back end objects with open files in least recently used order. The value indicates whether the back end object is pinned or not. */
+    private final LinkedHashMap<FileBackEnd, Boolean> openBackEnds;
+
+    /** Count of accesses that could use an already open file. */
+    private final AtomicLong hitCount;
+
+    /** Count of accesses that required a file to be opened. */
+    private final AtomicLong missCount;
+
+    /** Count of files that have been closed because the maximum count of open files was exceeded. */
+    private final AtomicLong evictionCount;
+
+    /** Maximum count of open files. */
+    private volatile int maximumOpenFiles;
+
+    /**
+     * Constructor.
+     * @param maximumOpenFiles maximum count of open files
+     */
+    FileHandleManager ( final int maximumOpenFiles )
+    {
+        this.lock = new ReentrantLock ();
+        this.evictionLock = new ReentrantLock ();
+        this.openBackEnds = new LinkedHashMap<FileBackEnd, Boolean> ( 16, 0.75f, true );
+        this.hitCount = new AtomicLong ();
+        this.missCount = new AtomicLong ();
+        this.evictionCount = new AtomicLong ();
+        this.maximumOpenFiles = maximumOpenFiles;
+    }
+
+    /**
+     * This method returns the instance that is shared by all file back end objects of the process.
+     * @return instance that is shared by all file back end objects of the process
+     */
+    public static FileHandleManager getInstance ()
+    {
+        return instance;
+    }
+
+    /**
+     * This method returns whether open files are cached or not.
+     * @return true, if open files are cached, otherwise false
+     */
+    public boolean isEnabled ()
+    {
+        return this.maximumOpenFiles > 0;
+    }
+
+    /**
+     * This method returns the maximum count of open files.
+     * @return maximum count of open files
+     */
+    public int getMaximumOpenFiles ()
+    {
+        return this.maximumOpenFiles;
+    }
+
+    /**
+     * This method sets the maximum count of open files.
+     * Files that exceed the new maximum count will be closed before this method returns, unless they are pinned or another thread is currently closing files.
+     * A value less or equal than 0 disables the caching of open files for accesses that are performed afterwards.
+     * @param maximumOpenFiles maximum count of open files
+     */
+    public void setMaximumOpenFiles ( final int maximumOpenFiles )
+    {
+        this.maximumOpenFiles = maximumOpenFiles;
+        evictIfRequired ();
+    }
+
+    /**
+     * This method returns the current count of open files that are tracked.
+     * @return current count of open files that are tracked
+     */
+    public int getOpenFileCount ()
+    {
+        this.lock.lock ();
+        try
+        {
+            return this.openBackEnds.size ();
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method returns the current count of open files that are tracked and that must not be closed, since they are written within their current time span.
+     * @return current count of open files that are pinned
+     */
+    public int getPinnedFileCount ()
+    {
+        this.lock.lock ();
+        try
+        {
+            int pinnedFileCount = 0;
+            for ( final Boolean pinned : this.openBackEnds.values () )
+            {
+                if ( pinned )
+                {
+                    pinnedFileCount++;
+                }
+            }
+            return pinnedFileCount;
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method returns the count of accesses that could use an already open file.
+     * @return count of accesses that could use an already open file
+     */
+    public long getHitCount ()
+    {
+        return this.hitCount.get ();
+    }
+
+    /**
+     * This method returns the count of accesses that required a file to be opened.
+     * @return count of accesses that required a file to be opened
+     */
+    public long getMissCount ()
+    {
+        return this.missCount.get ();
+    }
+
+    /**
+     * This method returns the count of files that have been closed because the maximum count of open files was exceeded.
+     * @return count of files that have been closed because the maximum count of open files was exceeded
+     */
+    public long getEvictionCount ()
+    {
+        return this.evictionCount.get ();
+    }
+
+    /**
+     * This method has to be called when a back end object accesses its file.
+     * @param backEnd back end object that accesses its file
+     * @param opened true, if the file has been opened for the access, otherwise false
+     * @param pinned true, if the file must not be closed by this class, otherwise false
+     */
+    void accessed ( final FileBackEnd backEnd, final boolean opened, final boolean pinned )
+    {
+        if ( opened )
+        {
+            this.missCount.incrementAndGet ();
+        }
+        else
+        {
+            this.hitCount.incrementAndGet ();
+        }
+        this.lock.lock ();
+        try
+        {
+            this.openBackEnds.put ( backEnd, pinned );
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method has to be called when a back end object has completed the access to its file.
+     * The calling thread must not hold any lock except the monitor of the back end object.
+     * @param backEnd back end object that has completed the access to its file
+     */
+    void released ( final FileBackEnd backEnd )
+    {
+        evictIfRequired ();
+    }
+
+    /**
+     * This method has to be called when a back end object has closed its file.
+     * @param backEnd back end object that has closed its file
+     */
+    void closed ( final FileBackEnd backEnd )
+    {
+        this.lock.lock ();
+        try
+        {
+            this.openBackEnds.remove ( backEnd );
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method closes the least recently used files until the maximum count of open files is no longer exceeded or until only pinned files are left.
+     * Nothing is done if another thread is already closing files.
+     */
+    private void evictIfRequired ()
+    {
+        while ( isEvictionRequired () && this.evictionLock.tryLock () )
+        {
+            try
+            {
+                if ( !evict () )
+                {
+                    return;
+                }
+            }
+            finally
+            {
+                this.evictionLock.unlock ();
+            }
+        }
+    }
+
+    /**
+     * This method returns whether the maximum count of open files is exceeded or not.
+     * @return true, if the maximum count of open files is exceeded, otherwise false
+     */
+    private boolean isEvictionRequired ()
+    {
+        this.lock.lock ();
+        try
+        {
+            return this.openBackEnds.size () > Math.max ( 0, this.maximumOpenFiles );
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method closes the least recently used files that are not pinned until the maximum count of open files is no longer exceeded.
+     * It is assumed that the eviction lock is held.
+     * @return true, if at least one file has been selected for closing, otherwise false
+     */
+    private boolean evict ()
+    {
+        final List<FileBackEnd> backEnds = new ArrayList<FileBackEnd> ();
+        this.lock.lock ();
+        try
+        {
+            int excess = this.openBackEnds.size () - Math.max ( 0, this.maximumOpenFiles );
+            final Iterator<Entry<FileBackEnd, Boolean>> iterator = this.openBackEnds.entrySet ().iterator ();
+            while ( excess > 0 && iterator.hasNext () )
+            {
+                final Entry<FileBackEnd, Boolean> entry = iterator.next ();
+                if ( !entry.getValue () )
+                {
+                    backEnds.add ( entry.getKey () );
+                    iterator.remove ();
+                    excess--;
+                }
+            }
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+
+        // close the files without holding the lock
+        for ( final FileBackEnd backEnd : backEnds )
+        {
+            try
+            {
+                if ( backEnd.closeEvictedConnection () )
+                {
+                    this.evictionCount.incrementAndGet ();
+                }
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( String.format ( "file '%s' could not be closed", backEnd.getFileName () ), e );
+            }
+        }
+        return !backEnds.isEmpty ();
+    }
+}
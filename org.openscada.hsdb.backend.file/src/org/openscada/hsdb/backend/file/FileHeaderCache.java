@@ -0,0 +1,210 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscada.hsdb.backend.file.internal.FileHeader;
+
+/**
+ * This class caches the decoded headers of the files of all file back end objects of the process.
+ * Since the header of a file is only written when the file is created, the cached header remains valid until the file is deleted.
+ * Opening a file whose header is cached therefore requires no header to be read and decoded.
+ * The cache is limited to a maximum count of headers. The least recently used headers are removed if the limit is exceeded.
+ */
+public class FileHeaderCache
+{
+    /** Name of the system property that specifies the maximum count of cached headers. A value less or equal than 0 disables the cache. */
+    public final static String MAXIMUM_SIZE_PROPERTY = "org.openscada.hsdb.backend.file.headerCacheSize";
+
+    /** Default maximum count of cached headers. */
+    private final static int DEFAULT_MAXIMUM_SIZE = 16384;
+
+    /** Instance that is shared by all file back end objects of the process. */
+    private final static FileHeaderCache instance = new FileHeaderCache ( Integer.getInteger ( MAXIMUM_SIZE_PROPERTY, DEFAULT_MAXIMUM_SIZE ) );
+
+    /** Cached headers in least recently used order mapped by the absolute path of the file. */
+    private final LinkedHashMap<String, FileHeader> headers;
+
+    /** Count of requests that could be answered from the cache. */
+    private final AtomicLong hitCount;
+
+    /** Count of requests that required a header to be read from the file. */
+    private final AtomicLong missCount;
+
+    /** Maximum count of cached headers. */
+    private volatile int maximumSize;
+
+    /**
+     * Constructor.
+     * @param maximumSize maximum count of cached headers
+     */
+    FileHeaderCache ( final int maximumSize )
+    {
+        this.headers = new LinkedHashMap<String, FileHeader> ( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry ( final Map.Entry<String, FileHeader> eldest )
+            {
+                return size () > FileHeaderCache.this.maximumSize;
+            }
+        };
+        this.hitCount = new AtomicLong ();
+        this.missCount = new AtomicLong ();
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * This method returns the instance that is shared by all file back end objects of the process.
+     * @return instance that is shared by all file back end objects of the process
+     */
+    public static FileHeaderCache getInstance ()
+    {
+        return instance;
+    }
+
+    /**
+     * This method returns the maximum count of cached headers.
+     * @return maximum count of cached headers
+     */
+    public int getMaximumSize ()
+    {
+        return this.maximumSize;
+    }
+
+    /**
+     * This method sets the maximum count of cached headers.
+     * Headers that exceed the new maximum count will be removed. A value less or equal than 0 disables the cache.
+     * @param maximumSize maximum count of cached headers
+     */
+    public void setMaximumSize ( final int maximumSize )
+    {
+        this.maximumSize = maximumSize;
+        synchronized ( this.headers )
+        {
+            if ( maximumSize <= 0 )
+            {
+                this.headers.clear ();
+            }
+            while ( this.headers.size () > maximumSize )
+            {
+                this.headers.remove ( this.headers.keySet ().iterator ().next () );
+            }
+        }
+    }
+
+    /**
+     * This method returns the current count of cached headers.
+     * @return current count of cached headers
+     */
+    public int getSize ()
+    {
+        synchronized ( this.headers )
+        {
+            return this.headers.size ();
+        }
+    }
+
+    /**
+     * This method returns the count of requests that could be answered from the cache.
+     * @return count of requests that could be answered from the cache
+     */
+    public long getHitCount ()
+    {
+        return this.hitCount.get ();
+    }
+
+    /**
+     * This method returns the count of requests that required a header to be read from the file.
+     * @return count of requests that required a header to be read from the file
+     */
+    public long getMissCount ()
+    {
+        return this.missCount.get ();
+    }
+
+    /**
+     * This method removes all cached headers.
+     */
+    public void clear ()
+    {
+        synchronized ( this.headers )
+        {
+            this.headers.clear ();
+        }
+    }
+
+    /**
+     * This method returns the cached header of the passed file.
+     * @param file file whose header is requested
+     * @return cached header or null if the header of the file is not cached
+     */
+    FileHeader get ( final File file )
+    {
+        final FileHeader header;
+        synchronized ( this.headers )
+        {
+            header = this.headers.get ( file.getAbsolutePath () );
+        }
+        if ( header != null )
+        {
+            this.hitCount.incrementAndGet ();
+        }
+        else
+        {
+            this.missCount.incrementAndGet ();
+        }
+        return header;
+    }
+
+    /**
+     * This method caches the header of the passed file.
+     * @param file file whose header has to be cached
+     * @param header header of the file
+     */
+    void put ( final File file, final FileHeader header )
+    {
+        if ( this.maximumSize <= 0 )
+        {
+            return;
+        }
+        synchronized ( this.headers )
+        {
+            this.headers.put ( file.getAbsolutePath (), header );
+        }
+    }
+
+    /**
+     * This method removes the cached header of the passed file.
+     * It has to be called whenever the file is deleted.
+     * @param file file whose header has to be removed
+     */
+    void remove ( final File file )
+    {
+        synchronized ( this.headers )
+        {
+            this.headers.remove ( file.getAbsolutePath () );
+        }
+    }
+}
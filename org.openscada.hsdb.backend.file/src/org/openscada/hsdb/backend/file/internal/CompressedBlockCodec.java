@@ -0,0 +1,280 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file.internal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This class encodes and decodes blocks of compressed data records.
+ * Each block starts with a header containing the size of the payload, the count of records and the time stamps of the first and the last record.
+ * The header is followed by the payload and a CRC32 checksum that covers the header and the payload.
+ * Within the payload each record starts with a flag byte that marks which of the quality indicator, the manual indicator and the base value count differ from the previous record.
+ * Only differing values are stored, so that runs of identical values need no further space.
+ * The time stamp is stored as variable length delta to the previous record and the value is stored as variable length zig zag encoded delta to the previous value.
+ */
+public class CompressedBlockCodec
+{
+    /** Size of the header of a block in bytes. */
+    public final static int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    /** Size of the trailer of a block in bytes. */
+    public final static int TRAILER_SIZE = 4;
+
+    /** Flag marking that the quality indicator differs from the previous record. */
+    private final static int QUALITY_INDICATOR_FLAG = 0x01;
+
+    /** Flag marking that the manual indicator differs from the previous record. */
+    private final static int MANUAL_INDICATOR_FLAG = 0x02;
+
+    /** Flag marking that the base value count differs from the previous record. */
+    private final static int BASE_VALUE_COUNT_FLAG = 0x04;
+
+    /** Maximum size of one encoded record in bytes. */
+    private final static int MAX_RECORD_SIZE = 1 + 8 + 8 + 10 + 10 + 10;
+
+    /**
+     * This method encodes the specified values as one block.
+     * The values are expected to be sorted by time.
+     * @param values batch containing the values that have to be encoded
+     * @param fromIndex index of the first value that has to be encoded
+     * @param toIndex index after the last value that has to be encoded
+     * @return complete block including header and trailer
+     */
+    public static byte[] encode ( final LongValueBatch values, final int fromIndex, final int toIndex )
+    {
+        final int recordCount = toIndex - fromIndex;
+        final ByteBuffer byteBuffer = ByteBuffer.allocate ( HEADER_SIZE + recordCount * MAX_RECORD_SIZE + TRAILER_SIZE );
+        byteBuffer.position ( HEADER_SIZE );
+        long previousTime = values.getTime ( fromIndex );
+        long previousQualityIndicator = 0;
+        long previousManualIndicator = 0;
+        long previousBaseValueCount = 0;
+        long previousValue = 0;
+        for ( int i = fromIndex; i < toIndex; i++ )
+        {
+            final long time = values.getTime ( i );
+            final long qualityIndicator = Double.doubleToLongBits ( values.getQualityIndicator ( i ) );
+            final long manualIndicator = Double.doubleToLongBits ( values.getManualIndicator ( i ) );
+            final long baseValueCount = values.getBaseValueCount ( i );
+            final long value = values.getValue ( i );
+            int flags = 0;
+            if ( qualityIndicator != previousQualityIndicator )
+            {
+                flags |= QUALITY_INDICATOR_FLAG;
+            }
+            if ( manualIndicator != previousManualIndicator )
+            {
+                flags |= MANUAL_INDICATOR_FLAG;
+            }
+            if ( baseValueCount != previousBaseValueCount )
+            {
+                flags |= BASE_VALUE_COUNT_FLAG;
+            }
+            byteBuffer.put ( (byte)flags );
+            if ( ( flags & QUALITY_INDICATOR_FLAG ) != 0 )
+            {
+                byteBuffer.putLong ( qualityIndicator );
+            }
+            if ( ( flags & MANUAL_INDICATOR_FLAG ) != 0 )
+            {
+                byteBuffer.putLong ( manualIndicator );
+            }
+            if ( ( flags & BASE_VALUE_COUNT_FLAG ) != 0 )
+            {
+                putVariableLength ( byteBuffer, zigZagEncode ( baseValueCount ) );
+            }
+            putVariableLength ( byteBuffer, time - previousTime );
+            putVariableLength ( byteBuffer, zigZagEncode ( value - previousValue ) );
+            previousTime = time;
+            previousQualityIndicator = qualityIndicator;
+            previousManualIndicator = manualIndicator;
+            previousBaseValueCount = baseValueCount;
+            previousValue = value;
+        }
+        final int payloadLength = byteBuffer.position () - HEADER_SIZE;
+        byteBuffer.putInt ( 0, payloadLength );
+        byteBuffer.putInt ( 4, recordCount );
+        byteBuffer.putLong ( 8, values.getTime ( fromIndex ) );
+        byteBuffer.putLong ( 16, values.getTime ( toIndex - 1 ) );
+        final CRC32 crc32 = new CRC32 ();
+        crc32.update ( byteBuffer.array (), 0, HEADER_SIZE + payloadLength );
+        byteBuffer.putInt ( (int)crc32.getValue () );
+        final byte[] result = new byte[byteBuffer.position ()];
+        System.arraycopy ( byteBuffer.array (), 0, result, 0, result.length );
+        return result;
+    }
+
+    /**
+     * This method decodes a complete block and appends the contained values to the passed batch.
+     * @param block complete block including header and trailer
+     * @param values batch to which the decoded values will be appended
+     * @return true, if the block could be decoded, otherwise false if the block is corrupt
+     */
+    public static boolean decode ( final byte[] block, final LongValueBatch values )
+    {
+        if ( block.length < HEADER_SIZE + TRAILER_SIZE )
+        {
+            return false;
+        }
+        final ByteBuffer byteBuffer = ByteBuffer.wrap ( block );
+        final int payloadLength = byteBuffer.getInt ();
+        final int recordCount = byteBuffer.getInt ();
+        final long firstTime = byteBuffer.getLong ();
+        final long lastTime = byteBuffer.getLong ();
+        if ( payloadLength != block.length - HEADER_SIZE - TRAILER_SIZE || recordCount <= 0 )
+        {
+            return false;
+        }
+        final CRC32 crc32 = new CRC32 ();
+        crc32.update ( block, 0, HEADER_SIZE + payloadLength );
+        if ( byteBuffer.getInt ( HEADER_SIZE + payloadLength ) != (int)crc32.getValue () )
+        {
+            return false;
+        }
+        values.ensureCapacity ( values.getSize () + recordCount );
+        long time = firstTime;
+        long qualityIndicator = 0;
+        long manualIndicator = 0;
+        long baseValueCount = 0;
+        long value = 0;
+        try
+        {
+            for ( int i = 0; i < recordCount; i++ )
+            {
+                final int flags = byteBuffer.get ();
+                if ( ( flags & QUALITY_INDICATOR_FLAG ) != 0 )
+                {
+                    qualityIndicator = byteBuffer.getLong ();
+                }
+                if ( ( flags & MANUAL_INDICATOR_FLAG ) != 0 )
+                {
+                    manualIndicator = byteBuffer.getLong ();
+                }
+                if ( ( flags & BASE_VALUE_COUNT_FLAG ) != 0 )
+                {
+                    baseValueCount = zigZagDecode ( getVariableLength ( byteBuffer ) );
+                }
+                final long timeDelta = getVariableLength ( byteBuffer );
+                if ( timeDelta < 0 )
+                {
+                    return false;
+                }
+                time += timeDelta;
+                value += zigZagDecode ( getVariableLength ( byteBuffer ) );
+                values.add ( time, Double.longBitsToDouble ( qualityIndicator ), Double.longBitsToDouble ( manualIndicator ), baseValueCount, value );
+            }
+        }
+        catch ( final BufferUnderflowException e )
+        {
+            return false;
+        }
+        return time == lastTime && byteBuffer.position () == HEADER_SIZE + payloadLength;
+    }
+
+    /**
+     * This method validates the passed block header and adds the block to the passed index.
+     * The block is expected to be located directly after the last block of the index.
+     * @param header header of the block
+     * @param index index to which the block has to be added
+     * @param endPosition position within the file that must not be exceeded by the block
+     * @return true, if the header is valid and the block has been added, otherwise false
+     */
+    public static boolean addToIndex ( final byte[] header, final CompressedBlockIndex index, final long endPosition )
+    {
+        final ByteBuffer byteBuffer = ByteBuffer.wrap ( header, 0, HEADER_SIZE );
+        final int payloadLength = byteBuffer.getInt ();
+        final int recordCount = byteBuffer.getInt ();
+        final long firstTime = byteBuffer.getLong ();
+        final long lastTime = byteBuffer.getLong ();
+        final long length = (long)HEADER_SIZE + payloadLength + TRAILER_SIZE;
+        if ( payloadLength < 0 || recordCount <= 0 || firstTime > lastTime || index.getEndPosition () + length > endPosition )
+        {
+            return false;
+        }
+        if ( !index.isEmpty () && index.getLastTime ( index.getSize () - 1 ) > firstTime )
+        {
+            return false;
+        }
+        index.add ( (int)length, recordCount, firstTime, lastTime );
+        return true;
+    }
+
+    /**
+     * This method writes the passed value using a variable count of bytes.
+     * Each byte holds 7 bits of the value and the highest bit marks whether further bytes follow.
+     * @param byteBuffer buffer to which the value has to be written
+     * @param value value that has to be written
+     */
+    private static void putVariableLength ( final ByteBuffer byteBuffer, final long value )
+    {
+        long remaining = value;
+        while ( ( remaining & ~0x7FL ) != 0 )
+        {
+            byteBuffer.put ( (byte) ( ( remaining & 0x7F ) | 0x80 ) );
+            remaining >>>= 7;
+        }
+        byteBuffer.put ( (byte)remaining );
+    }
+
+    /**
+     * This method reads a value that has been written via method {@link #putVariableLength(ByteBuffer, long)}.
+     * @param byteBuffer buffer from which the value has to be read
+     * @return read value
+     */
+    private static long getVariableLength ( final ByteBuffer byteBuffer )
+    {
+        long result = 0;
+        int shift = 0;
+        while ( true )
+        {
+            final byte b = byteBuffer.get ();
+            result |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 || shift >= 63 )
+            {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    /**
+     * This method maps signed values to unsigned values so that values with a small magnitude result in small unsigned values.
+     * @param value signed value
+     * @return unsigned value
+     */
+    private static long zigZagEncode ( final long value )
+    {
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    /**
+     * This method reverts the mapping of method {@link #zigZagEncode(long)}.
+     * @param value unsigned value
+     * @return signed value
+     */
+    private static long zigZagDecode ( final long value )
+    {
+        return ( value >>> 1 ) ^ - ( value & 1 );
+    }
+}
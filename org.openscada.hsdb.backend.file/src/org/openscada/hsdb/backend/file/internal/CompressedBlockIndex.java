@@ -0,0 +1,214 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file.internal;
+
+/**
+ * This class holds the position and the time span of all compressed blocks of a file.
+ * The blocks are expected to be stored consecutively and in ascending order of time.
+ */
+public class CompressedBlockIndex
+{
+    /** Initial count of blocks for which space is reserved. */
+    private final static int INITIAL_CAPACITY = 16;
+
+    /** Positions of the blocks within the file. */
+    private long[] positions;
+
+    /** Complete sizes of the blocks in bytes. */
+    private int[] lengths;
+
+    /** Count of records that are stored within the blocks. */
+    private int[] recordCounts;
+
+    /** Time stamps of the first record of the blocks. */
+    private long[] firstTimes;
+
+    /** Time stamps of the last record of the blocks. */
+    private long[] lastTimes;
+
+    /** Count of blocks that are currently indexed. */
+    private int size;
+
+    /** Position within the file directly after the last indexed block. */
+    private long endPosition;
+
+    /**
+     * Constructor.
+     * @param startPosition position within the file where the first block is located
+     */
+    public CompressedBlockIndex ( final long startPosition )
+    {
+        this.positions = new long[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+        this.recordCounts = new int[INITIAL_CAPACITY];
+        this.firstTimes = new long[INITIAL_CAPACITY];
+        this.lastTimes = new long[INITIAL_CAPACITY];
+        clear ( startPosition );
+    }
+
+    /**
+     * This method removes all blocks from the index.
+     * @param startPosition position within the file where the first block is located
+     */
+    public void clear ( final long startPosition )
+    {
+        this.size = 0;
+        this.endPosition = startPosition;
+    }
+
+    /**
+     * This method adds a block that is located directly after the last indexed block.
+     * @param length complete size of the block in bytes
+     * @param recordCount count of records that are stored within the block
+     * @param firstTime time stamp of the first record of the block
+     * @param lastTime time stamp of the last record of the block
+     */
+    public void add ( final int length, final int recordCount, final long firstTime, final long lastTime )
+    {
+        if ( this.size == this.positions.length )
+        {
+            final int capacity = this.size * 2;
+            final long[] positions = new long[capacity];
+            final int[] lengths = new int[capacity];
+            final int[] recordCounts = new int[capacity];
+            final long[] firstTimes = new long[capacity];
+            final long[] lastTimes = new long[capacity];
+            System.arraycopy ( this.positions, 0, positions, 0, this.size );
+            System.arraycopy ( this.lengths, 0, lengths, 0, this.size );
+            System.arraycopy ( this.recordCounts, 0, recordCounts, 0, this.size );
+            System.arraycopy ( this.firstTimes, 0, firstTimes, 0, this.size );
+            System.arraycopy ( this.lastTimes, 0, lastTimes, 0, this.size );
+            this.positions = positions;
+            this.lengths = lengths;
+            this.recordCounts = recordCounts;
+            this.firstTimes = firstTimes;
+            this.lastTimes = lastTimes;
+        }
+        this.positions[this.size] = this.endPosition;
+        this.lengths[this.size] = length;
+        this.recordCounts[this.size] = recordCount;
+        this.firstTimes[this.size] = firstTime;
+        this.lastTimes[this.size] = lastTime;
+        this.size++;
+        this.endPosition += length;
+    }
+
+    /**
+     * This method returns the index of the last block whose first record is not after the passed time.
+     * A binary search is applied in order to find the block.
+     * @param time time for which the block has to be retrieved
+     * @return index of the block or -1 if the passed time is before the first record of the first block or if no blocks are indexed
+     */
+    public int findBlock ( final long time )
+    {
+        int low = 0;
+        int high = this.size - 1;
+        while ( low <= high )
+        {
+            final int mid = ( low + high ) >>> 1;
+            if ( this.firstTimes[mid] <= time )
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * This method returns the count of blocks that are currently indexed.
+     * @return count of blocks that are currently indexed
+     */
+    public int getSize ()
+    {
+        return this.size;
+    }
+
+    /**
+     * This method returns whether blocks are indexed or not.
+     * @return true, if no blocks are indexed, otherwise false
+     */
+    public boolean isEmpty ()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * This method returns the position within the file directly after the last indexed block.
+     * @return position within the file directly after the last indexed block
+     */
+    public long getEndPosition ()
+    {
+        return this.endPosition;
+    }
+
+    /**
+     * This method returns the position of the specified block within the file.
+     * @param index index of the block
+     * @return position of the block within the file
+     */
+    public long getPosition ( final int index )
+    {
+        return this.positions[index];
+    }
+
+    /**
+     * This method returns the complete size of the specified block in bytes.
+     * @param index index of the block
+     * @return complete size of the block in bytes
+     */
+    public int getLength ( final int index )
+    {
+        return this.lengths[index];
+    }
+
+    /**
+     * This method returns the count of records that are stored within the specified block.
+     * @param index index of the block
+     * @return count of records that are stored within the block
+     */
+    public int getRecordCount ( final int index )
+    {
+        return this.recordCounts[index];
+    }
+
+    /**
+     * This method returns the time stamp of the first record of the specified block.
+     * @param index index of the block
+     * @return time stamp of the first record of the block
+     */
+    public long getFirstTime ( final int index )
+    {
+        return this.firstTimes[index];
+    }
+
+    /**
+     * This method returns the time stamp of the last record of the specified block.
+     * @param index index of the block
+     * @return time stamp of the last record of the block
+     */
+    public long getLastTime ( final int index )
+    {
+        return this.lastTimes[index];
+    }
+}
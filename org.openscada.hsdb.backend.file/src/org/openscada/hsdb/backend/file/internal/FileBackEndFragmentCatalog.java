@@ -0,0 +1,527 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.openscada.hsdb.backend.BackEndFragmentCatalog;
+import org.openscada.hsdb.backend.BackEndFragmentInformation;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class implements the BackEndFragmentCatalog interface using a snapshot file and an append-only log file.
+ * Each transition is appended to the log file as a single record that is protected by a checksum.
+ * As soon as the log file contains more records than the snapshot contains back end fragments, both files are compacted into a new snapshot.
+ * Replaying the log file is idempotent, so that an interrupted compaction does not cause any loss of information.
+ */
+public class FileBackEndFragmentCatalog implements BackEndFragmentCatalog
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( FileBackEndFragmentCatalog.class );
+
+    /** Marker at the beginning of a snapshot file. */
+    private final static int SNAPSHOT_MARKER = 0x56414643;
+
+    /** Version of the snapshot file format. */
+    private final static int SNAPSHOT_VERSION = 1;
+
+    /** Suffix of the temporary file that is used while a snapshot is written. */
+    private final static String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    /** Type of log records for added back end fragments. */
+    private final static byte RECORD_ADDED = 1;
+
+    /** Type of log records for removed back end fragments. */
+    private final static byte RECORD_REMOVED = 2;
+
+    /** Type of log records for changed corrupt states. */
+    private final static byte RECORD_CORRUPT_STATUS = 3;
+
+    /** Minimum count of log records before the log file is compacted. */
+    private final static int MINIMUM_COMPACTION_SIZE = 1000;
+
+    /** File containing the latest snapshot. */
+    private final File snapshotFile;
+
+    /** File that is used while a new snapshot is written. */
+    private final File temporarySnapshotFile;
+
+    /** File containing the transitions since the latest snapshot. */
+    private final File logFile;
+
+    /** Recorded back end fragments mapped by fragment name. */
+    private final Map<String, BackEndFragmentInformation> entries;
+
+    /** Stream that is used to append records to the log file or null if the log file is currently not open. */
+    private OutputStream logStream;
+
+    /** Count of records within the log file. */
+    private int logRecordCount;
+
+    /** Flag indicating whether the content of the catalog has been loaded. */
+    private boolean loaded;
+
+    /**
+     * Constructor.
+     * @param snapshotFileName name of the file containing the latest snapshot
+     * @param logFileName name of the file containing the transitions since the latest snapshot
+     */
+    public FileBackEndFragmentCatalog ( final String snapshotFileName, final String logFileName )
+    {
+        this.snapshotFile = new File ( snapshotFileName );
+        this.temporarySnapshotFile = new File ( snapshotFileName + TEMPORARY_FILE_SUFFIX );
+        this.logFile = new File ( logFileName );
+        this.entries = new LinkedHashMap<String, BackEndFragmentInformation> ();
+        this.logStream = null;
+        this.logRecordCount = 0;
+        this.loaded = false;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#load()
+     */
+    public synchronized List<BackEndFragmentInformation> load () throws Exception
+    {
+        close ();
+        this.entries.clear ();
+        this.logRecordCount = 0;
+        this.loaded = false;
+
+        // a snapshot that has been written completely but could not be renamed is used as latest snapshot
+        if ( !this.snapshotFile.exists () && this.temporarySnapshotFile.exists () )
+        {
+            this.temporarySnapshotFile.renameTo ( this.snapshotFile );
+        }
+        this.temporarySnapshotFile.delete ();
+        if ( !this.snapshotFile.exists () && !this.logFile.exists () )
+        {
+            this.loaded = true;
+            return null;
+        }
+        try
+        {
+            if ( this.snapshotFile.exists () )
+            {
+                readSnapshot ();
+            }
+            if ( this.logFile.exists () )
+            {
+                readLog ();
+            }
+        }
+        catch ( final IOException e )
+        {
+            final String message = String.format ( "could not load fragment catalog '%s'", this.snapshotFile.getPath () );
+            logger.error ( message, e );
+            throw new Exception ( message, e );
+        }
+        this.loaded = true;
+        final List<BackEndFragmentInformation> result = new ArrayList<BackEndFragmentInformation> ( this.entries.size () );
+        for ( final BackEndFragmentInformation entry : this.entries.values () )
+        {
+            result.add ( copy ( entry ) );
+        }
+        return result;
+    }
+
+    /**
+     * This method reads the snapshot file.
+     * @throws IOException if the file could not be read or has an invalid format
+     */
+    private void readSnapshot () throws IOException
+    {
+        final DataInputStream inputStream = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( this.snapshotFile ) ) );
+        try
+        {
+            if ( inputStream.readInt () != SNAPSHOT_MARKER || inputStream.readInt () != SNAPSHOT_VERSION )
+            {
+                throw new IOException ( String.format ( "invalid format of fragment catalog snapshot '%s'", this.snapshotFile.getPath () ) );
+            }
+            final int count = inputStream.readInt ();
+            for ( int i = 0; i < count; i++ )
+            {
+                final BackEndFragmentInformation entry = readEntry ( inputStream );
+                this.entries.put ( entry.getFragmentName (), entry );
+            }
+        }
+        finally
+        {
+            inputStream.close ();
+        }
+    }
+
+    /**
+     * This method replays all valid records of the log file.
+     * Records that have not been written completely are removed from the log file.
+     * @throws IOException if the file could not be read
+     */
+    private void readLog () throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile ( this.logFile, "rw" );
+        try
+        {
+            final DataInputStream inputStream = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( file.getFD () ) ) );
+            final CRC32 checksum = new CRC32 ();
+            long validLength = 0;
+            while ( true )
+            {
+                final byte[] record;
+                try
+                {
+                    final int length = inputStream.readInt ();
+                    if ( length <= 0 || validLength + length + 12 > file.length () )
+                    {
+                        break;
+                    }
+                    record = new byte[length];
+                    inputStream.readFully ( record );
+                    checksum.reset ();
+                    checksum.update ( record );
+                    if ( inputStream.readLong () != checksum.getValue () )
+                    {
+                        break;
+                    }
+                }
+                catch ( final EOFException e )
+                {
+                    break;
+                }
+                applyRecord ( record );
+                validLength += record.length + 12;
+                this.logRecordCount++;
+            }
+            if ( validLength < file.length () )
+            {
+                logger.warn ( String.format ( "removing incomplete records from fragment catalog log '%s'", this.logFile.getPath () ) );
+                file.setLength ( validLength );
+            }
+        }
+        finally
+        {
+            file.close ();
+        }
+    }
+
+    /**
+     * This method applies the passed log record to the recorded back end fragments.
+     * @param record content of the log record
+     * @throws IOException if the record could not be processed
+     */
+    private void applyRecord ( final byte[] record ) throws IOException
+    {
+        final DataInputStream inputStream = new DataInputStream ( new ByteArrayInputStream ( record ) );
+        final byte type = inputStream.readByte ();
+        switch ( type )
+        {
+        case RECORD_ADDED:
+        {
+            final BackEndFragmentInformation entry = readEntry ( inputStream );
+            this.entries.put ( entry.getFragmentName (), entry );
+            break;
+        }
+        case RECORD_REMOVED:
+        {
+            this.entries.remove ( inputStream.readUTF () );
+            break;
+        }
+        case RECORD_CORRUPT_STATUS:
+        {
+            final BackEndFragmentInformation entry = this.entries.get ( inputStream.readUTF () );
+            final boolean isCorrupt = inputStream.readBoolean ();
+            if ( entry != null )
+            {
+                entry.setIsCorrupt ( isCorrupt );
+            }
+            break;
+        }
+        default:
+        {
+            logger.warn ( String.format ( "ignoring record of unknown type %s in fragment catalog log '%s'", type, this.logFile.getPath () ) );
+        }
+        }
+    }
+
+    /**
+     * This method reads the information of a single back end fragment.
+     * @param inputStream stream from which the information is read
+     * @return read information
+     * @throws IOException if the information could not be read
+     */
+    private static BackEndFragmentInformation readEntry ( final DataInputStream inputStream ) throws IOException
+    {
+        final BackEndFragmentInformation entry = new BackEndFragmentInformation ();
+        entry.setFragmentName ( inputStream.readUTF () );
+        entry.setCalculationMethod ( CalculationMethod.convertShortStringToCalculationMethod ( inputStream.readUTF () ) );
+        entry.setDetailLevelId ( inputStream.readLong () );
+        entry.setStartTime ( inputStream.readLong () );
+        entry.setEndTime ( inputStream.readLong () );
+        entry.setIsCorrupt ( inputStream.readBoolean () );
+        return entry;
+    }
+
+    /**
+     * This method writes the information of a single back end fragment.
+     * @param outputStream stream to which the information is written
+     * @param entry information that has to be written
+     * @throws IOException if the information could not be written
+     */
+    private static void writeEntry ( final DataOutputStream outputStream, final BackEndFragmentInformation entry ) throws IOException
+    {
+        outputStream.writeUTF ( entry.getFragmentName () );
+        outputStream.writeUTF ( CalculationMethod.convertCalculationMethodToShortString ( entry.getCalculationMethod () ) );
+        outputStream.writeLong ( entry.getDetailLevelId () );
+        outputStream.writeLong ( entry.getStartTime () );
+        outputStream.writeLong ( entry.getEndTime () );
+        outputStream.writeBoolean ( entry.getIsCorrupt () );
+    }
+
+    /**
+     * This method creates a copy of the persistent information of the passed back end fragment.
+     * @param backEndFragmentInformation information that has to be copied
+     * @return copy of the persistent information
+     */
+    private static BackEndFragmentInformation copy ( final BackEndFragmentInformation backEndFragmentInformation )
+    {
+        final BackEndFragmentInformation entry = new BackEndFragmentInformation ();
+        entry.setFragmentName ( backEndFragmentInformation.getFragmentName () );
+        entry.setCalculationMethod ( backEndFragmentInformation.getCalculationMethod () );
+        entry.setDetailLevelId ( backEndFragmentInformation.getDetailLevelId () );
+        entry.setStartTime ( backEndFragmentInformation.getStartTime () );
+        entry.setEndTime ( backEndFragmentInformation.getEndTime () );
+        entry.setIsCorrupt ( backEndFragmentInformation.getIsCorrupt () );
+        return entry;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#addBackEndFragment(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    public synchronized void addBackEndFragment ( final BackEndFragmentInformation backEndFragmentInformation ) throws Exception
+    {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream ();
+        final DataOutputStream outputStream = new DataOutputStream ( record );
+        outputStream.writeByte ( RECORD_ADDED );
+        writeEntry ( outputStream, backEndFragmentInformation );
+        appendRecord ( record.toByteArray () );
+        this.entries.put ( backEndFragmentInformation.getFragmentName (), copy ( backEndFragmentInformation ) );
+        compactIfRequired ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#removeBackEndFragment(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    public synchronized void removeBackEndFragment ( final BackEndFragmentInformation backEndFragmentInformation ) throws Exception
+    {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream ();
+        final DataOutputStream outputStream = new DataOutputStream ( record );
+        outputStream.writeByte ( RECORD_REMOVED );
+        outputStream.writeUTF ( backEndFragmentInformation.getFragmentName () );
+        appendRecord ( record.toByteArray () );
+        this.entries.remove ( backEndFragmentInformation.getFragmentName () );
+        compactIfRequired ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#updateCorruptStatus(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    public synchronized void updateCorruptStatus ( final BackEndFragmentInformation backEndFragmentInformation ) throws Exception
+    {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream ();
+        final DataOutputStream outputStream = new DataOutputStream ( record );
+        outputStream.writeByte ( RECORD_CORRUPT_STATUS );
+        outputStream.writeUTF ( backEndFragmentInformation.getFragmentName () );
+        outputStream.writeBoolean ( backEndFragmentInformation.getIsCorrupt () );
+        appendRecord ( record.toByteArray () );
+        final BackEndFragmentInformation entry = this.entries.get ( backEndFragmentInformation.getFragmentName () );
+        if ( entry != null )
+        {
+            entry.setIsCorrupt ( backEndFragmentInformation.getIsCorrupt () );
+        }
+        compactIfRequired ();
+    }
+
+    /**
+     * This method appends the passed record including its length and checksum to the log file using a single write operation.
+     * @param record content of the record
+     * @throws Exception if the record could not be written
+     */
+    private void appendRecord ( final byte[] record ) throws Exception
+    {
+        if ( !this.loaded )
+        {
+            final String message = String.format ( "fragment catalog '%s' has to be loaded before transitions can be recorded", this.snapshotFile.getPath () );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        final CRC32 checksum = new CRC32 ();
+        checksum.update ( record );
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream ( record.length + 12 );
+        final DataOutputStream outputStream = new DataOutputStream ( buffer );
+        outputStream.writeInt ( record.length );
+        outputStream.write ( record );
+        outputStream.writeLong ( checksum.getValue () );
+        try
+        {
+            if ( this.logStream == null )
+            {
+                this.logStream = new FileOutputStream ( this.logFile, true );
+            }
+            this.logStream.write ( buffer.toByteArray () );
+            this.logStream.flush ();
+        }
+        catch ( final IOException e )
+        {
+            close ();
+            final String message = String.format ( "could not append record to fragment catalog log '%s'", this.logFile.getPath () );
+            logger.error ( message, e );
+            throw new Exception ( message, e );
+        }
+        this.logRecordCount++;
+    }
+
+    /**
+     * This method writes a new snapshot if the log file contains more records than the snapshot would contain.
+     * @throws Exception if the snapshot could not be written
+     */
+    private void compactIfRequired () throws Exception
+    {
+        if ( this.logRecordCount >= Math.max ( MINIMUM_COMPACTION_SIZE, this.entries.size () ) )
+        {
+            writeSnapshotFile ();
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#writeSnapshot(java.util.Collection)
+     */
+    public synchronized void writeSnapshot ( final Collection<BackEndFragmentInformation> backEndFragmentInformations ) throws Exception
+    {
+        this.entries.clear ();
+        for ( final BackEndFragmentInformation backEndFragmentInformation : backEndFragmentInformations )
+        {
+            this.entries.put ( backEndFragmentInformation.getFragmentName (), copy ( backEndFragmentInformation ) );
+        }
+        this.loaded = true;
+        writeSnapshotFile ();
+    }
+
+    /**
+     * This method writes all recorded back end fragments to a new snapshot file and clears the log file.
+     * The snapshot is written to a temporary file first, so that a valid snapshot exists at any time.
+     * @throws Exception if the snapshot could not be written
+     */
+    private void writeSnapshotFile () throws Exception
+    {
+        try
+        {
+            final File parent = this.snapshotFile.getParentFile ();
+            if ( parent != null && !parent.exists () )
+            {
+                parent.mkdirs ();
+            }
+            final DataOutputStream outputStream = new DataOutputStream ( new BufferedOutputStream ( new FileOutputStream ( this.temporarySnapshotFile ) ) );
+            try
+            {
+                outputStream.writeInt ( SNAPSHOT_MARKER );
+                outputStream.writeInt ( SNAPSHOT_VERSION );
+                outputStream.writeInt ( this.entries.size () );
+                for ( final BackEndFragmentInformation entry : this.entries.values () )
+                {
+                    writeEntry ( outputStream, entry );
+                }
+            }
+            finally
+            {
+                outputStream.close ();
+            }
+            this.snapshotFile.delete ();
+            if ( !this.temporarySnapshotFile.renameTo ( this.snapshotFile ) )
+            {
+                throw new IOException ( String.format ( "could not rename file '%s'", this.temporarySnapshotFile.getPath () ) );
+            }
+
+            // the log file is only cleared after the new snapshot is available
+            close ();
+            if ( this.logFile.exists () && !this.logFile.delete () )
+            {
+                throw new IOException ( String.format ( "could not delete file '%s'", this.logFile.getPath () ) );
+            }
+            this.logRecordCount = 0;
+        }
+        catch ( final IOException e )
+        {
+            final String message = String.format ( "could not write fragment catalog snapshot '%s'", this.snapshotFile.getPath () );
+            logger.error ( message, e );
+            throw new Exception ( message, e );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#close()
+     */
+    public synchronized void close ()
+    {
+        if ( this.logStream != null )
+        {
+            try
+            {
+                this.logStream.close ();
+            }
+            catch ( final IOException e )
+            {
+                logger.warn ( String.format ( "could not close fragment catalog log '%s'", this.logFile.getPath () ), e );
+            }
+            this.logStream = null;
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFragmentCatalog#delete()
+     */
+    public synchronized void delete ()
+    {
+        close ();
+        this.entries.clear ();
+        this.logRecordCount = 0;
+        this.loaded = false;
+        this.temporarySnapshotFile.delete ();
+        this.snapshotFile.delete ();
+        this.logFile.delete ();
+    }
+}
@@ -21,6 +21,7 @@ package org.openscada.hsdb.backend.file.internal;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.util.regex.Pattern;
 
 /**
  * This file filter searches for files matching files with the specified name.
@@ -28,8 +29,8 @@ import java.io.FileFilter;
  */
 public class FileFileFilter implements FileFilter
 {
-    /** Case insensitive name of the files that have to be searched. If null is set then all files are accepted. */
-    private final String fileNamePattern;
+    /** Precompiled pattern of the names of the files that have to be searched. If null is set then all files are accepted. */
+    private final Pattern fileNamePattern;
 
     /**
      * Constructor
@@ -37,7 +38,7 @@ public class FileFileFilter implements FileFilter
      */
     public FileFileFilter ( final String fileNamePattern )
     {
-        this.fileNamePattern = fileNamePattern;
+        this.fileNamePattern = fileNamePattern == null ? null : Pattern.compile ( fileNamePattern );
     }
 
     /**
@@ -45,6 +46,6 @@ public class FileFileFilter implements FileFilter
      */
     public boolean accept ( final File file )
     {
-        return file.isFile () && ( this.fileNamePattern == null || file.getName ().matches ( this.fileNamePattern ) );
+        return ( this.fileNamePattern == null || this.fileNamePattern.matcher ( file.getName () ).matches () ) && file.isFile ();
     }
 }
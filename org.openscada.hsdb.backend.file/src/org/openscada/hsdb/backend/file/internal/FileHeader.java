@@ -0,0 +1,346 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file.internal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
+
+/**
+ * This class encodes and decodes the header of files that are handled by file back end objects.
+ * Each header starts with a marker identifying the header version and the offset of the data section within the file.
+ * The legacy header version stores all numeric values as long values and the configuration id as utf-8 bytes that may be padded with zero bytes.
+ * The compact header version stores the calculation method, the data type and the file version as single bytes and the configuration id as length prefixed utf-8 bytes.
+ * Both versions end with a CRC32 checksum that covers the header without the marker.
+ * Instances of this class are immutable and contain the decoded information of a header.
+ */
+public class FileHeader
+{
+    /** Size of the marker and the data offset at the beginning of each header in bytes. */
+    public final static int PREFIX_SIZE = 8 + 8;
+
+    /** Version of header format storing all numeric values as long values. */
+    public final static int LEGACY_HEADER_VERSION = 1;
+
+    /** Version of header format storing the values in compact form and the configuration id as length prefixed utf-8 bytes. */
+    public final static int COMPACT_HEADER_VERSION = 2;
+
+    /** Unique marker identifying files with a header of the legacy format. */
+    private final static long LEGACY_FILE_MARKER = 0x0a2d04b20b580ca9L;
+
+    /** Unique marker identifying files with a header of the compact format. */
+    private final static long COMPACT_FILE_MARKER = 0x0a2d04b20b580caaL;
+
+    /** Maximum count of bytes of the configuration id and maximum count of calculation method parameters within a compact header. */
+    private final static int MAX_COMPACT_LENGTH = 0xffff;
+
+    /** Charset that is used to encode the configuration id. */
+    private final static Charset CHARSET = Charset.forName ( "utf-8" );
+
+    /** Meta data that is stored within the header. */
+    private final StorageChannelMetaData metaData;
+
+    /** Version of file format of the data section. */
+    private final long fileVersion;
+
+    /** Version of header format. */
+    private final int headerVersion;
+
+    /** Offset within the file where the header has ended and real data starts. */
+    private final long dataOffset;
+
+    /**
+     * Fully initializing constructor.
+     * @param metaData meta data that is stored within the header
+     * @param fileVersion version of file format of the data section
+     * @param headerVersion version of header format
+     * @param dataOffset offset within the file where the header has ended and real data starts
+     */
+    public FileHeader ( final StorageChannelMetaData metaData, final long fileVersion, final int headerVersion, final long dataOffset )
+    {
+        this.metaData = new StorageChannelMetaData ( metaData );
+        this.metaData.setCalculationMethodParameters ( metaData.getCalculationMethodParameters ().clone () );
+        this.fileVersion = fileVersion;
+        this.headerVersion = headerVersion;
+        this.dataOffset = dataOffset;
+    }
+
+    /**
+     * This method returns a copy of the meta data that is stored within the header.
+     * @return copy of the meta data that is stored within the header
+     */
+    public StorageChannelMetaData getMetaData ()
+    {
+        final StorageChannelMetaData result = new StorageChannelMetaData ( this.metaData );
+        result.setCalculationMethodParameters ( this.metaData.getCalculationMethodParameters ().clone () );
+        return result;
+    }
+
+    /**
+     * This method returns the version of file format of the data section.
+     * @return version of file format of the data section
+     */
+    public long getFileVersion ()
+    {
+        return this.fileVersion;
+    }
+
+    /**
+     * This method returns the version of header format.
+     * @return version of header format
+     */
+    public int getHeaderVersion ()
+    {
+        return this.headerVersion;
+    }
+
+    /**
+     * This method returns the offset within the file where the header has ended and real data starts.
+     * @return offset within the file where the header has ended and real data starts
+     */
+    public long getDataOffset ()
+    {
+        return this.dataOffset;
+    }
+
+    /**
+     * This method encodes the passed information as complete header.
+     * @param metaData meta data that has to be stored within the header
+     * @param fileVersion version of file format of the data section
+     * @param headerVersion version of header format that has to be used
+     * @return complete header including marker and checksum
+     * @throws IllegalArgumentException if the header version is unknown or the meta data cannot be stored with the header version
+     */
+    public static byte[] encode ( final StorageChannelMetaData metaData, final long fileVersion, final int headerVersion )
+    {
+        final byte[] configurationIdBytes = metaData.getConfigurationId ().getBytes ( CHARSET );
+        final long[] calculationMethodParameters = metaData.getCalculationMethodParameters ();
+        final ByteBuffer byteBuffer;
+        if ( headerVersion == LEGACY_HEADER_VERSION )
+        {
+            byteBuffer = ByteBuffer.allocate ( PREFIX_SIZE + 8 * 8 + 4 + 4 + calculationMethodParameters.length * 8 + configurationIdBytes.length + 4 );
+            byteBuffer.putLong ( LEGACY_FILE_MARKER );
+            byteBuffer.putLong ( byteBuffer.capacity () );
+            byteBuffer.putLong ( fileVersion );
+            byteBuffer.putLong ( metaData.getDetailLevelId () );
+            byteBuffer.putLong ( metaData.getStartTime () );
+            byteBuffer.putLong ( metaData.getEndTime () );
+            byteBuffer.putLong ( metaData.getProposedDataAge () );
+            byteBuffer.putLong ( metaData.getAcceptedTimeDelta () );
+            byteBuffer.putLong ( DataType.convertDataTypeToLong ( metaData.getDataType () ) );
+            byteBuffer.putLong ( CalculationMethod.convertCalculationMethodToLong ( metaData.getCalculationMethod () ) );
+            byteBuffer.putInt ( calculationMethodParameters.length );
+            byteBuffer.putInt ( configurationIdBytes.length );
+        }
+        else if ( headerVersion == COMPACT_HEADER_VERSION )
+        {
+            if ( configurationIdBytes.length > MAX_COMPACT_LENGTH || calculationMethodParameters.length > MAX_COMPACT_LENGTH )
+            {
+                throw new IllegalArgumentException ( String.format ( "configuration id or calculation method parameters of '%s' are too long for a compact header", metaData ) );
+            }
+            byteBuffer = ByteBuffer.allocate ( PREFIX_SIZE + 1 + 1 + 1 + 5 * 8 + 2 + calculationMethodParameters.length * 8 + 2 + configurationIdBytes.length + 4 );
+            byteBuffer.putLong ( COMPACT_FILE_MARKER );
+            byteBuffer.putLong ( byteBuffer.capacity () );
+            byteBuffer.put ( (byte)fileVersion );
+            byteBuffer.put ( (byte)DataType.convertDataTypeToLong ( metaData.getDataType () ) );
+            byteBuffer.put ( (byte)CalculationMethod.convertCalculationMethodToLong ( metaData.getCalculationMethod () ) );
+            byteBuffer.putLong ( metaData.getDetailLevelId () );
+            byteBuffer.putLong ( metaData.getStartTime () );
+            byteBuffer.putLong ( metaData.getEndTime () );
+            byteBuffer.putLong ( metaData.getProposedDataAge () );
+            byteBuffer.putLong ( metaData.getAcceptedTimeDelta () );
+            byteBuffer.putShort ( (short)calculationMethodParameters.length );
+        }
+        else
+        {
+            throw new IllegalArgumentException ( String.format ( "invalid header version %s", headerVersion ) );
+        }
+        for ( int i = 0; i < calculationMethodParameters.length; i++ )
+        {
+            byteBuffer.putLong ( calculationMethodParameters[i] );
+        }
+        if ( headerVersion == COMPACT_HEADER_VERSION )
+        {
+            byteBuffer.putShort ( (short)configurationIdBytes.length );
+        }
+        byteBuffer.put ( configurationIdBytes );
+        byteBuffer.putInt ( calculateChecksum ( byteBuffer.array (), byteBuffer.position () ) );
+        return byteBuffer.array ();
+    }
+
+    /**
+     * This method returns the version of header format that is identified by the passed marker.
+     * @param marker marker at the beginning of the file
+     * @return version of header format or 0 if the marker is unknown
+     */
+    public static int getHeaderVersion ( final long marker )
+    {
+        if ( marker == LEGACY_FILE_MARKER )
+        {
+            return LEGACY_HEADER_VERSION;
+        }
+        if ( marker == COMPACT_FILE_MARKER )
+        {
+            return COMPACT_HEADER_VERSION;
+        }
+        return 0;
+    }
+
+    /**
+     * This method decodes a complete header.
+     * @param header bytes of the complete header including marker and checksum
+     * @return decoded header
+     * @throws IllegalArgumentException if the header is invalid. The message describes the problem and can be appended to the name of the file.
+     */
+    public static FileHeader decode ( final byte[] header )
+    {
+        final ByteBuffer byteBuffer = ByteBuffer.wrap ( header );
+        try
+        {
+            final int headerVersion = getHeaderVersion ( byteBuffer.getLong () );
+            if ( headerVersion == 0 )
+            {
+                throw new IllegalArgumentException ( "is of invalid format! (invalid marker)" );
+            }
+            final long dataOffset = byteBuffer.getLong ();
+            if ( dataOffset != header.length )
+            {
+                throw new IllegalArgumentException ( "is of invalid format! (invalid header)" );
+            }
+            final long fileVersion;
+            final long dataType;
+            final long calculationMethodId;
+            final long detailLevelId;
+            final long startTime;
+            final long endTime;
+            final long proposedDataAge;
+            final long acceptedTimeDelta;
+            final int calculationMethodParameterCount;
+            int configurationIdSize = 0;
+            if ( headerVersion == LEGACY_HEADER_VERSION )
+            {
+                fileVersion = byteBuffer.getLong ();
+                detailLevelId = byteBuffer.getLong ();
+                startTime = byteBuffer.getLong ();
+                endTime = byteBuffer.getLong ();
+                proposedDataAge = byteBuffer.getLong ();
+                acceptedTimeDelta = byteBuffer.getLong ();
+                dataType = byteBuffer.getLong ();
+                calculationMethodId = byteBuffer.getLong ();
+                calculationMethodParameterCount = byteBuffer.getInt ();
+                configurationIdSize = byteBuffer.getInt ();
+                if ( calculationMethodParameterCount < 0 || configurationIdSize < 0 || byteBuffer.remaining () - 4 - configurationIdSize != calculationMethodParameterCount * 8L )
+                {
+                    throw new IllegalArgumentException ( "is of invalid format! (invalid count of calculation method parameters)" );
+                }
+            }
+            else
+            {
+                fileVersion = byteBuffer.get ();
+                dataType = byteBuffer.get ();
+                calculationMethodId = byteBuffer.get ();
+                detailLevelId = byteBuffer.getLong ();
+                startTime = byteBuffer.getLong ();
+                endTime = byteBuffer.getLong ();
+                proposedDataAge = byteBuffer.getLong ();
+                acceptedTimeDelta = byteBuffer.getLong ();
+                calculationMethodParameterCount = byteBuffer.getShort () & MAX_COMPACT_LENGTH;
+                if ( byteBuffer.remaining () < calculationMethodParameterCount * 8 + 2 + 4 )
+                {
+                    throw new IllegalArgumentException ( "is of invalid format! (invalid count of calculation method parameters)" );
+                }
+            }
+            final long[] calculationMethodParameters = new long[calculationMethodParameterCount];
+            for ( int i = 0; i < calculationMethodParameters.length; i++ )
+            {
+                calculationMethodParameters[i] = byteBuffer.getLong ();
+            }
+            if ( headerVersion == COMPACT_HEADER_VERSION )
+            {
+                configurationIdSize = byteBuffer.getShort () & MAX_COMPACT_LENGTH;
+            }
+            if ( byteBuffer.remaining () - 4 != configurationIdSize )
+            {
+                throw new IllegalArgumentException ( "is of invalid format! (invalid configuration id)" );
+            }
+            final int configurationIdOffset = byteBuffer.position ();
+            byteBuffer.position ( configurationIdOffset + configurationIdSize );
+            final int checksum = calculateChecksum ( header, byteBuffer.position () );
+            final int fileChecksum = byteBuffer.getInt ();
+            if ( fileChecksum != checksum )
+            {
+                throw new IllegalArgumentException ( String.format ( "has a corrupt header! (expected: %s, actual: %s)", checksum, fileChecksum ) );
+            }
+            if ( startTime >= endTime )
+            {
+                throw new IllegalArgumentException ( "has invalid timespan specified! (startTime >= endTime)" );
+            }
+            String configurationId = new String ( header, configurationIdOffset, configurationIdSize, CHARSET );
+            if ( headerVersion == LEGACY_HEADER_VERSION && configurationId.indexOf ( '\u0000' ) >= 0 )
+            {
+                // older versions stored the configuration id padded with zero bytes
+                configurationId = removeZeroCharacters ( configurationId );
+            }
+            return new FileHeader ( new StorageChannelMetaData ( configurationId, CalculationMethod.convertLongToCalculationMethod ( calculationMethodId ), calculationMethodParameters, detailLevelId, startTime, endTime, proposedDataAge, acceptedTimeDelta, DataType.convertLongToDataType ( dataType ) ), fileVersion, headerVersion, dataOffset );
+        }
+        catch ( final BufferUnderflowException e )
+        {
+            throw new IllegalArgumentException ( "is of invalid format! (invalid header)" );
+        }
+    }
+
+    /**
+     * This method calculates the checksum of a header.
+     * The checksum covers all bytes after the marker up to the passed end.
+     * @param header bytes of the header
+     * @param end index after the last byte that is covered by the checksum
+     * @return calculated checksum
+     */
+    private static int calculateChecksum ( final byte[] header, final int end )
+    {
+        final CRC32 crc32 = new CRC32 ();
+        crc32.update ( header, 8, end - 8 );
+        return (int)crc32.getValue ();
+    }
+
+    /**
+     * This method removes all zero characters from the passed text.
+     * @param text text that has to be processed
+     * @return text without zero characters
+     */
+    private static String removeZeroCharacters ( final String text )
+    {
+        final StringBuilder result = new StringBuilder ( text.length () );
+        for ( int i = 0; i < text.length (); i++ )
+        {
+            final char c = text.charAt ( i );
+            if ( c != '\u0000' )
+            {
+                result.append ( c );
+            }
+        }
+        return result.toString ();
+    }
+}
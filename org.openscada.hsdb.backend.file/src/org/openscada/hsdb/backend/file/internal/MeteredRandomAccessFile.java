@@ -0,0 +1,148 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file.internal;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.openscada.hsdb.metrics.Counter;
+
+/**
+ * This class extends RandomAccessFile by counting the calls and the transferred bytes of the primitive read and write methods.
+ * Each call of a primitive method results in one call of the operating system, so the counted calls reflect the system calls that are caused by the file access.
+ */
+public class MeteredRandomAccessFile extends RandomAccessFile
+{
+    /** Counter of the bytes that have been read. */
+    private final Counter readBytesCounter;
+
+    /** Counter of the calls of primitive read methods. */
+    private final Counter readCallCounter;
+
+    /** Counter of the bytes that have been written. */
+    private final Counter writeBytesCounter;
+
+    /** Counter of the calls of primitive write methods. */
+    private final Counter writeCallCounter;
+
+    /**
+     * Constructor.
+     * @param file file that has to be accessed
+     * @param mode access mode as specified by class RandomAccessFile
+     * @param readBytesCounter counter of the bytes that have been read
+     * @param readCallCounter counter of the calls of primitive read methods
+     * @param writeBytesCounter counter of the bytes that have been written
+     * @param writeCallCounter counter of the calls of primitive write methods
+     * @throws FileNotFoundException if the file cannot be opened
+     */
+    public MeteredRandomAccessFile ( final File file, final String mode, final Counter readBytesCounter, final Counter readCallCounter, final Counter writeBytesCounter, final Counter writeCallCounter ) throws FileNotFoundException
+    {
+        super ( file, mode );
+        this.readBytesCounter = readBytesCounter;
+        this.readCallCounter = readCallCounter;
+        this.writeBytesCounter = writeBytesCounter;
+        this.writeCallCounter = writeCallCounter;
+    }
+
+    /**
+     * This method records a completed read call.
+     * @param result count of read bytes or -1 if the end of the file has been reached
+     */
+    private void recordRead ( final int result )
+    {
+        this.readCallCounter.add ( 1 );
+        if ( result > 0 )
+        {
+            this.readBytesCounter.add ( result );
+        }
+    }
+
+    /**
+     * This method records a completed write call.
+     * @param length count of written bytes
+     */
+    private void recordWrite ( final int length )
+    {
+        this.writeCallCounter.add ( 1 );
+        this.writeBytesCounter.add ( length );
+    }
+
+    /**
+     * @see java.io.RandomAccessFile#read()
+     */
+    @Override
+    public int read () throws IOException
+    {
+        final int result = super.read ();
+        recordRead ( result < 0 ? -1 : 1 );
+        return result;
+    }
+
+    /**
+     * @see java.io.RandomAccessFile#read(byte[])
+     */
+    @Override
+    public int read ( final byte[] b ) throws IOException
+    {
+        return read ( b, 0, b.length );
+    }
+
+    /**
+     * @see java.io.RandomAccessFile#read(byte[], int, int)
+     */
+    @Override
+    public int read ( final byte[] b, final int off, final int len ) throws IOException
+    {
+        final int result = super.read ( b, off, len );
+        recordRead ( result );
+        return result;
+    }
+
+    /**
+     * @see java.io.RandomAccessFile#write(int)
+     */
+    @Override
+    public void write ( final int b ) throws IOException
+    {
+        super.write ( b );
+        recordWrite ( 1 );
+    }
+
+    /**
+     * @see java.io.RandomAccessFile#write(byte[])
+     */
+    @Override
+    public void write ( final byte[] b ) throws IOException
+    {
+        write ( b, 0, b.length );
+    }
+
+    /**
+     * @see java.io.RandomAccessFile#write(byte[], int, int)
+     */
+    @Override
+    public void write ( final byte[] b, final int off, final int len ) throws IOException
+    {
+        super.write ( b, off, len );
+        recordWrite ( len );
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.file.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class provides a redo journal for rewriting the end of a compressed file together with its compressed section information.
+ * The new content is first written to a separate journal file that is forced to the storage device before the data file is modified.
+ * If the modification of the data file is interrupted, the journal is applied again when the data file is opened the next time.
+ * A journal that has not been completely written is discarded, since the data file has not been modified in this case.
+ * The journal file contains the following data:
+ * <ul>
+ * <li>marker</li>
+ * <li>position of the compressed section information within the data file</li>
+ * <li>new end of the compressed blocks</li>
+ * <li>new generation of the compressed blocks</li>
+ * <li>position within the data file where the new content starts</li>
+ * <li>new content up to the end of the data file</li>
+ * <li>checksum of all preceding data</li>
+ * </ul>
+ */
+public class RewriteJournal
+{
+    /** Suffix that is appended to the name of the data file to get the name of the journal file. */
+    public final static String FILE_NAME_SUFFIX = ".journal";
+
+    /** Marker at the beginning of each journal file. */
+    private final static long MARKER = 0x0a1b2c3d4e5f6071L;
+
+    /** Size of the data in front of the new content. */
+    private final static int HEADER_SIZE = 8 + 8 + 8 + 8 + 8;
+
+    /** Size of the data after the new content. */
+    private final static int TRAILER_SIZE = 8;
+
+    /** Maximum size of buffer when copying data. */
+    private final static int MAX_COPY_BUFFER_FILL_SIZE = 1024 * 1024;
+
+    /** Journal file. */
+    private final File file;
+
+    /** Stream of the journal file that is currently written or null if no journal is currently written. */
+    private FileOutputStream fileOutputStream;
+
+    /** Checksum calculating stream of the journal file that is currently written or null if no journal is currently written. */
+    private CheckedOutputStream checkedOutputStream;
+
+    /** Data output of the journal file that is currently written or null if no journal is currently written. */
+    private DataOutputStream output;
+
+    /**
+     * Constructor.
+     * @param dataFile data file whose modifications are recorded by the journal
+     */
+    public RewriteJournal ( final File dataFile )
+    {
+        this.file = new File ( dataFile.getPath () + FILE_NAME_SUFFIX );
+    }
+
+    /**
+     * This method returns the journal file.
+     * @return journal file
+     */
+    public File getFile ()
+    {
+        return this.file;
+    }
+
+    /**
+     * This method returns whether a journal file exists.
+     * @return true, if a journal file exists, otherwise false
+     */
+    public boolean exists ()
+    {
+        return this.file.exists ();
+    }
+
+    /**
+     * This method starts writing a new journal. Any existing journal file is replaced.
+     * The new content has to be written via the data output provided by {@link #getOutput()}.
+     * @param sectionInfoPosition position of the compressed section information within the data file
+     * @param blockEnd new end of the compressed blocks
+     * @param generation new generation of the compressed blocks
+     * @param position position within the data file where the new content starts
+     * @throws IOException if the journal file cannot be written
+     */
+    public void begin ( final long sectionInfoPosition, final long blockEnd, final long generation, final long position ) throws IOException
+    {
+        abort ();
+        this.fileOutputStream = new FileOutputStream ( this.file );
+        this.checkedOutputStream = new CheckedOutputStream ( new BufferedOutputStream ( this.fileOutputStream, MAX_COPY_BUFFER_FILL_SIZE ), new CRC32 () );
+        this.output = new DataOutputStream ( this.checkedOutputStream );
+        this.output.writeLong ( MARKER );
+        this.output.writeLong ( sectionInfoPosition );
+        this.output.writeLong ( blockEnd );
+        this.output.writeLong ( generation );
+        this.output.writeLong ( position );
+    }
+
+    /**
+     * This method returns the data output to which the new content of the journal that is currently written has to be written.
+     * @return data output of the journal
+     */
+    public DataOutput getOutput ()
+    {
+        return this.output;
+    }
+
+    /**
+     * This method copies the specified range of the passed file to the new content of the journal that is currently written.
+     * @param source file from which the data has to be copied
+     * @param startPosition position of the first byte that has to be copied
+     * @param endPosition position after the last byte that has to be copied
+     * @throws IOException in case of read or write problems
+     */
+    public void copy ( final RandomAccessFile source, final long startPosition, final long endPosition ) throws IOException
+    {
+        final byte[] buffer = new byte[(int)Math.max ( 1, Math.min ( MAX_COPY_BUFFER_FILL_SIZE, endPosition - startPosition ) )];
+        long position = startPosition;
+        source.seek ( position );
+        while ( position < endPosition )
+        {
+            final int bufferFillSize = (int)Math.min ( buffer.length, endPosition - position );
+            source.readFully ( buffer, 0, bufferFillSize );
+            this.output.write ( buffer, 0, bufferFillSize );
+            position += bufferFillSize;
+        }
+    }
+
+    /**
+     * This method completes the journal that is currently written and forces it to the storage device.
+     * After this method has returned, the journal will be applied to the data file even if the application of the journal is interrupted.
+     * @throws IOException if the journal file cannot be written
+     */
+    public void commit () throws IOException
+    {
+        try
+        {
+            this.output.writeLong ( this.checkedOutputStream.getChecksum ().getValue () );
+            this.output.flush ();
+            this.fileOutputStream.getChannel ().force ( true );
+        }
+        finally
+        {
+            close ();
+        }
+    }
+
+    /**
+     * This method discards the journal that is currently written and deletes the journal file.
+     */
+    public void abort ()
+    {
+        close ();
+        delete ();
+    }
+
+    /**
+     * This method deletes the journal file.
+     * @return true, if no journal file exists anymore, otherwise false
+     */
+    public boolean delete ()
+    {
+        return !this.file.exists () || this.file.delete ();
+    }
+
+    /**
+     * This method closes the streams of the journal that is currently written.
+     */
+    private void close ()
+    {
+        if ( this.fileOutputStream != null )
+        {
+            try
+            {
+                this.fileOutputStream.close ();
+            }
+            catch ( final IOException e )
+            {
+                // nothing can be done here
+            }
+        }
+        this.fileOutputStream = null;
+        this.checkedOutputStream = null;
+        this.output = null;
+    }
+
+    /**
+     * This method verifies the journal file and applies it to the passed data file.
+     * The new content is written to the data file, the data file is truncated after the new content and the compressed section information is updated.
+     * The data file is not forced to the storage device and the journal file is not deleted by this method.
+     * @param dataFile data file to which the journal has to be applied
+     * @return true, if the journal has been applied, otherwise false if the journal file does not exist or has not been completely written
+     * @throws IOException in case of read or write problems
+     */
+    public boolean apply ( final RandomAccessFile dataFile ) throws IOException
+    {
+        if ( !isValid () )
+        {
+            return false;
+        }
+        final DataInputStream input = new DataInputStream ( new BufferedInputStream ( new FileInputStream ( this.file ), MAX_COPY_BUFFER_FILL_SIZE ) );
+        try
+        {
+            input.readLong ();
+            final long sectionInfoPosition = input.readLong ();
+            final long blockEnd = input.readLong ();
+            final long generation = input.readLong ();
+            final long position = input.readLong ();
+            final long length = this.file.length () - HEADER_SIZE - TRAILER_SIZE;
+            final byte[] buffer = new byte[(int)Math.max ( 1, Math.min ( MAX_COPY_BUFFER_FILL_SIZE, length ) )];
+            dataFile.seek ( position );
+            long remaining = length;
+            while ( remaining > 0 )
+            {
+                final int bufferFillSize = (int)Math.min ( buffer.length, remaining );
+                input.readFully ( buffer, 0, bufferFillSize );
+                dataFile.write ( buffer, 0, bufferFillSize );
+                remaining -= bufferFillSize;
+            }
+            dataFile.setLength ( position + length );
+            dataFile.seek ( sectionInfoPosition );
+            dataFile.writeLong ( blockEnd );
+            dataFile.writeLong ( generation );
+            return true;
+        }
+        finally
+        {
+            input.close ();
+        }
+    }
+
+    /**
+     * This method verifies that the journal file exists and has been completely written.
+     * @return true, if the journal file can be applied, otherwise false
+     * @throws IOException in case of read problems
+     */
+    private boolean isValid () throws IOException
+    {
+        final long fileSize = this.file.exists () ? this.file.length () : 0;
+        if ( fileSize < HEADER_SIZE + TRAILER_SIZE )
+        {
+            return false;
+        }
+        final CheckedInputStream checkedInputStream = new CheckedInputStream ( new BufferedInputStream ( new FileInputStream ( this.file ), MAX_COPY_BUFFER_FILL_SIZE ), new CRC32 () );
+        final DataInputStream input = new DataInputStream ( checkedInputStream );
+        try
+        {
+            if ( input.readLong () != MARKER )
+            {
+                return false;
+            }
+            final byte[] buffer = new byte[(int)Math.min ( MAX_COPY_BUFFER_FILL_SIZE, fileSize )];
+            long remaining = fileSize - 8 - TRAILER_SIZE;
+            while ( remaining > 0 )
+            {
+                final int bufferFillSize = (int)Math.min ( buffer.length, remaining );
+                input.readFully ( buffer, 0, bufferFillSize );
+                remaining -= bufferFillSize;
+            }
+            final long checksum = checkedInputStream.getChecksum ().getValue ();
+            return input.readLong () == checksum;
+        }
+        catch ( final EOFException e )
+        {
+            return false;
+        }
+        finally
+        {
+            input.close ();
+        }
+    }
+}
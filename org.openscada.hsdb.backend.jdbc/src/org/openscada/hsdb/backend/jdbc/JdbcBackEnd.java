@@ -0,0 +1,733 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openscada.hsdb.BatchStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.ValueCursor;
+import org.openscada.hsdb.backend.BackEnd;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.utils.osgi.jdbc.task.ConnectionTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is an implementation of the BackEnd interface that stores the values of one back end fragment in a relational database.
+ * The values are stored in the table of the detail level of the fragment and are identified by configuration, calculation method and time.
+ * Values are written via batched prepared statements and read via range scans over the primary key of the table.
+ */
+public class JdbcBackEnd implements BackEnd, BatchStorageChannel
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( JdbcBackEnd.class );
+
+    /** Maximum count of values that are written with one batch statement. */
+    private final static int MAX_BATCH_SIZE = 1000;
+
+    /** Count of values that are read with one query when reading values via a cursor. */
+    private final static int CURSOR_FETCH_SIZE = 4096;
+
+    /** Columns of the value table that hold the data of one value. */
+    private final static String VALUE_COLUMNS = "value_time, quality_indicator, manual_indicator, base_value_count, long_value";
+
+    /** Factory that has been used to create the back end and provides access to the database. */
+    private final JdbcBackEndFactory backEndFactory;
+
+    /** Id of the configuration of the back end fragment. */
+    private final String configurationId;
+
+    /** Detail level of the back end fragment. */
+    private final long detailLevelId;
+
+    /** Calculation method of the back end fragment. */
+    private final CalculationMethod calculationMethod;
+
+    /** Calculation method of the back end fragment as it is stored in the database. */
+    private final String calculationMethodString;
+
+    /** Start time of the back end fragment. */
+    private final long startTime;
+
+    /** Name of the table containing the values of the back end fragment. */
+    private final String valueTableName;
+
+    /** Metadata of the storage channel. */
+    private StorageChannelMetaData metaData;
+
+    /** Flag indicating whether the instance has been initialized or not. */
+    private volatile boolean initialized;
+
+    /** Synchronization object that should be used when reading or writing data. */
+    private ReentrantReadWriteLock lock;
+
+    /**
+     * Constructor expecting the identity of the back end fragment.
+     * @param backEndFactory factory that provides access to the database
+     * @param configurationId id of the configuration of the back end fragment
+     * @param detailLevelId detail level of the back end fragment
+     * @param calculationMethod calculation method of the back end fragment
+     * @param startTime start time of the back end fragment
+     */
+    public JdbcBackEnd ( final JdbcBackEndFactory backEndFactory, final String configurationId, final long detailLevelId, final CalculationMethod calculationMethod, final long startTime )
+    {
+        if ( backEndFactory == null )
+        {
+            throw new IllegalArgumentException ( "'backEndFactory' must not be null" );
+        }
+        if ( configurationId == null )
+        {
+            throw new IllegalArgumentException ( "'configurationId' must not be null" );
+        }
+        this.backEndFactory = backEndFactory;
+        this.configurationId = configurationId;
+        this.detailLevelId = detailLevelId;
+        this.calculationMethod = calculationMethod;
+        this.calculationMethodString = CalculationMethod.convertCalculationMethodToShortString ( calculationMethod );
+        this.startTime = startTime;
+        this.valueTableName = backEndFactory.getValueTableName ( detailLevelId );
+        this.metaData = null;
+        this.initialized = false;
+        this.lock = null;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#setLock(ReentrantReadWriteLock)
+     */
+    public void setLock ( final ReentrantReadWriteLock lock )
+    {
+        this.lock = lock;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#getLock()
+     */
+    public ReentrantReadWriteLock getLock ()
+    {
+        return this.lock;
+    }
+
+    /**
+     * This method returns the information whether the back end fragment contains any data or not.
+     * @return true if the back end fragment contains any data otherwise false
+     * @throws Exception if the instance is not initialized or the database could not be accessed
+     */
+    public boolean isEmpty () throws Exception
+    {
+        return getFirstEntryTime () == null;
+    }
+
+    /**
+     * This method returns the time of the first entry within the back end fragment.
+     * If the back end fragment is empty, null is returned.
+     * @return time of the first entry within the back end fragment or null if no entry exists
+     * @throws Exception if the instance is not initialized or the database could not be accessed
+     */
+    public Long getFirstEntryTime () throws Exception
+    {
+        final StorageChannelMetaData metaData = getMetaData ();
+        return this.backEndFactory.getConnectionAccessor ().doWithConnection ( new ConnectionTask<Long> () {
+            public Long performTask ( final Connection connection ) throws Exception
+            {
+                return queryTime ( connection, "MIN", metaData.getEndTime () );
+            }
+        } );
+    }
+
+    /**
+     * This method creates the back end fragment using the passed meta data.
+     * @param storageChannelMetaData meta data of the back end fragment
+     * @throws Exception if the meta data does not match the identity of the back end fragment or the back end fragment could not be created
+     */
+    public synchronized void create ( final StorageChannelMetaData storageChannelMetaData ) throws Exception
+    {
+        // assure that a valid object has been passed
+        if ( storageChannelMetaData == null )
+        {
+            final String message = "invalid StorageChannelMetaData object passed to JdbcBackEnd!";
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        if ( !this.configurationId.equals ( storageChannelMetaData.getConfigurationId () ) || this.detailLevelId != storageChannelMetaData.getDetailLevelId () || this.calculationMethod != storageChannelMetaData.getCalculationMethod () || this.startTime != storageChannelMetaData.getStartTime () )
+        {
+            final String message = String.format ( "meta data (%s) does not match the back end fragment", storageChannelMetaData );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        this.backEndFactory.createBackEnd ( storageChannelMetaData );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#initialize
+     */
+    public synchronized void initialize ( final StorageChannelMetaData storageChannelMetaData ) throws Exception
+    {
+        this.metaData = null;
+        this.initialized = true;
+        try
+        {
+            getMetaData ();
+        }
+        catch ( final Exception e )
+        {
+            this.initialized = false;
+            throw new Exception ( e.getMessage (), e );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#cleanupRelicts
+     */
+    public synchronized void cleanupRelicts () throws Exception
+    {
+        assureInitialized ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#getMetaData
+     */
+    public synchronized StorageChannelMetaData getMetaData () throws Exception
+    {
+        assureInitialized ();
+        if ( this.metaData == null )
+        {
+            final StorageChannelMetaData metaData = this.backEndFactory.getBackEndMetaData ( this.configurationId, this.detailLevelId, this.calculationMethod, this.startTime );
+            if ( metaData == null )
+            {
+                final String message = String.format ( "back end fragment of configuration '%s' with detail level %s, calculation method %s and start time %s does not exist!", this.configurationId, this.detailLevelId, this.calculationMethodString, this.startTime );
+                logger.error ( message );
+                throw new Exception ( message );
+            }
+            this.metaData = metaData;
+        }
+        return this.metaData;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#isTimeSpanConstant
+     */
+    public boolean isTimeSpanConstant ()
+    {
+        return true;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEnd#deinitialize
+     */
+    public synchronized void deinitialize () throws Exception
+    {
+        this.initialized = false;
+        this.metaData = null;
+    }
+
+    /**
+     * This method assures that the instance is initialized.
+     * @throws Exception if the instance is not initialized
+     */
+    private void assureInitialized () throws Exception
+    {
+        if ( !this.initialized )
+        {
+            final String message = String.format ( "back end (%s) is not properly initialized!", this.metaData );
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+    }
+
+    /**
+     * This method returns the minimum or maximum time of the values of the back end fragment.
+     * @param connection connection to the database
+     * @param function aggregate function that is applied to the times
+     * @param endTime end time of the back end fragment
+     * @return minimum or maximum time or null if the back end fragment contains no values
+     * @throws Exception in case of problems
+     */
+    private Long queryTime ( final Connection connection, final String function, final long endTime ) throws Exception
+    {
+        final PreparedStatement statement = connection.prepareStatement ( String.format ( "SELECT %s(value_time) FROM %s WHERE configuration_id = ? AND calculation_method = ? AND value_time >= ? AND value_time < ?", function, this.valueTableName ) );
+        try
+        {
+            statement.setString ( 1, this.configurationId );
+            statement.setString ( 2, this.calculationMethodString );
+            statement.setLong ( 3, this.startTime );
+            statement.setLong ( 4, endTime );
+            final ResultSet resultSet = statement.executeQuery ();
+            try
+            {
+                if ( resultSet.next () )
+                {
+                    final long time = resultSet.getLong ( 1 );
+                    if ( !resultSet.wasNull () )
+                    {
+                        return time;
+                    }
+                }
+                return null;
+            }
+            finally
+            {
+                resultSet.close ();
+            }
+        }
+        finally
+        {
+            statement.close ();
+        }
+    }
+
+    /**
+     * This method stores the passed data in the database.
+     * Only data that matches the time span of the back end fragment will be processed.
+     * Values that are newer than all stored values are inserted directly. Otherwise, existing values with the same time are replaced.
+     * @param longValues data that has to be stored ordered by time
+     * @throws Exception in case of problems
+     */
+    private void writeLongValues ( final LongValueBatch longValues ) throws Exception
+    {
+        // assure that the passed value matches the timespan of the metadata
+        if ( longValues == null || longValues.isEmpty () )
+        {
+            return;
+        }
+        final long endTime = this.metaData.getEndTime ();
+        final int size = longValues.getSize ();
+        int startIndex = 0;
+        while ( startIndex < size && longValues.getTime ( startIndex ) < this.startTime )
+        {
+            startIndex++;
+        }
+        int endIndex = startIndex;
+        while ( endIndex < size && longValues.getTime ( endIndex ) < endTime )
+        {
+            endIndex++;
+        }
+        if ( startIndex == endIndex )
+        {
+            return;
+        }
+        final int firstIndex = startIndex;
+        final int lastIndex = endIndex;
+        if ( this.lock != null )
+        {
+            this.lock.writeLock ().lock ();
+        }
+        try
+        {
+            this.backEndFactory.getConnectionAccessor ().doWithConnection ( new ConnectionTask<Object> () {
+                public Object performTask ( final Connection connection ) throws Exception
+                {
+                    JdbcBackEnd.this.backEndFactory.assureValueTable ( connection, JdbcBackEnd.this.detailLevelId );
+                    connection.setAutoCommit ( false );
+                    try
+                    {
+                        // existing values have to be removed if the values are not appended at the end
+                        final Long lastTime = queryTime ( connection, "MAX", endTime );
+                        if ( lastTime != null && longValues.getTime ( firstIndex ) <= lastTime )
+                        {
+                            deleteLongValues ( connection, longValues, firstIndex, lastIndex, lastTime );
+                        }
+                        insertLongValues ( connection, longValues, firstIndex, lastIndex );
+                        connection.commit ();
+                    }
+                    catch ( final Exception e )
+                    {
+                        connection.rollback ();
+                        throw e;
+                    }
+                    finally
+                    {
+                        connection.setAutoCommit ( true );
+                    }
+                    return null;
+                }
+            } );
+        }
+        finally
+        {
+            if ( this.lock != null )
+            {
+                this.lock.writeLock ().unlock ();
+            }
+        }
+    }
+
+    /**
+     * This method deletes the stored values that have the same time as one of the passed values.
+     * @param connection connection to the database
+     * @param longValues values ordered by time
+     * @param startIndex index of the first value that has to be processed
+     * @param endIndex index after the last value that has to be processed
+     * @param lastTime time of the newest stored value
+     * @throws Exception in case of problems
+     */
+    private void deleteLongValues ( final Connection connection, final LongValueBatch longValues, final int startIndex, final int endIndex, final long lastTime ) throws Exception
+    {
+        final PreparedStatement statement = connection.prepareStatement ( String.format ( "DELETE FROM %s WHERE configuration_id = ? AND calculation_method = ? AND value_time = ?", this.valueTableName ) );
+        try
+        {
+            int batchSize = 0;
+            for ( int i = startIndex; i < endIndex && longValues.getTime ( i ) <= lastTime; i++ )
+            {
+                statement.setString ( 1, this.configurationId );
+                statement.setString ( 2, this.calculationMethodString );
+                statement.setLong ( 3, longValues.getTime ( i ) );
+                statement.addBatch ();
+                if ( ++batchSize == MAX_BATCH_SIZE )
+                {
+                    statement.executeBatch ();
+                    batchSize = 0;
+                }
+            }
+            if ( batchSize > 0 )
+            {
+                statement.executeBatch ();
+            }
+        }
+        finally
+        {
+            statement.close ();
+        }
+    }
+
+    /**
+     * This method inserts the passed values.
+     * If several values have the same time, only the last one is inserted.
+     * @param connection connection to the database
+     * @param longValues values ordered by time
+     * @param startIndex index of the first value that has to be processed
+     * @param endIndex index after the last value that has to be processed
+     * @throws Exception in case of problems
+     */
+    private void insertLongValues ( final Connection connection, final LongValueBatch longValues, final int startIndex, final int endIndex ) throws Exception
+    {
+        final PreparedStatement statement = connection.prepareStatement ( String.format ( "INSERT INTO %s ( configuration_id, calculation_method, %s ) VALUES ( ?, ?, ?, ?, ?, ?, ? )", this.valueTableName, VALUE_COLUMNS ) );
+        try
+        {
+            int batchSize = 0;
+            for ( int i = startIndex; i < endIndex; i++ )
+            {
+                final long time = longValues.getTime ( i );
+                if ( i + 1 < endIndex && longValues.getTime ( i + 1 ) == time )
+                {
+                    continue;
+                }
+                statement.setString ( 1, this.configurationId );
+                statement.setString ( 2, this.calculationMethodString );
+                statement.setLong ( 3, time );
+                statement.setDouble ( 4, longValues.getQualityIndicator ( i ) );
+                statement.setDouble ( 5, longValues.getManualIndicator ( i ) );
+                statement.setLong ( 6, longValues.getBaseValueCount ( i ) );
+                statement.setLong ( 7, longValues.getValue ( i ) );
+                statement.addBatch ();
+                if ( ++batchSize == MAX_BATCH_SIZE )
+                {
+                    statement.executeBatch ();
+                    batchSize = 0;
+                }
+            }
+            if ( batchSize > 0 )
+            {
+                statement.executeBatch ();
+            }
+        }
+        finally
+        {
+            statement.close ();
+        }
+    }
+
+    /**
+     * This method reads values of the back end fragment and appends them to the passed batch.
+     * @param time time after which the values have to be read
+     * @param includePrevious flag indicating whether the value with exactly the specified time or the last value before has to be read as well
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @param maxCount maximum count of values that are read after the specified time
+     * @param longValues batch to which the read values will be appended
+     * @return true, if further values might be available, otherwise false
+     * @throws Exception in case of problems
+     */
+    private boolean readLongValues ( final long time, final boolean includePrevious, final long endTime, final int maxCount, final LongValueBatch longValues ) throws Exception
+    {
+        final long upperTime = Math.min ( endTime, this.metaData.getEndTime () );
+        if ( this.lock != null )
+        {
+            this.lock.readLock ().lock ();
+        }
+        try
+        {
+            return this.backEndFactory.getConnectionAccessor ().doWithConnection ( new ConnectionTask<Boolean> () {
+                public Boolean performTask ( final Connection connection ) throws Exception
+                {
+                    if ( includePrevious )
+                    {
+                        final PreparedStatement statement = connection.prepareStatement ( String.format ( "SELECT %s FROM %s WHERE configuration_id = ? AND calculation_method = ? AND value_time >= ? AND value_time <= ? ORDER BY value_time DESC", VALUE_COLUMNS, JdbcBackEnd.this.valueTableName ) );
+                        try
+                        {
+                            statement.setMaxRows ( 1 );
+                            statement.setString ( 1, JdbcBackEnd.this.configurationId );
+                            statement.setString ( 2, JdbcBackEnd.this.calculationMethodString );
+                            statement.setLong ( 3, JdbcBackEnd.this.startTime );
+                            statement.setLong ( 4, Math.min ( time, upperTime - 1 ) );
+                            readLongValues ( statement, longValues );
+                        }
+                        finally
+                        {
+                            statement.close ();
+                        }
+                    }
+                    final PreparedStatement statement = connection.prepareStatement ( String.format ( "SELECT %s FROM %s WHERE configuration_id = ? AND calculation_method = ? AND value_time >= ? AND value_time > ? AND value_time < ? ORDER BY value_time", VALUE_COLUMNS, JdbcBackEnd.this.valueTableName ) );
+                    try
+                    {
+                        if ( maxCount < Integer.MAX_VALUE )
+                        {
+                            statement.setMaxRows ( maxCount );
+                        }
+                        statement.setFetchSize ( CURSOR_FETCH_SIZE );
+                        statement.setString ( 1, JdbcBackEnd.this.configurationId );
+                        statement.setString ( 2, JdbcBackEnd.this.calculationMethodString );
+                        statement.setLong ( 3, JdbcBackEnd.this.startTime );
+                        statement.setLong ( 4, time );
+                        statement.setLong ( 5, upperTime );
+                        return readLongValues ( statement, longValues ) >= maxCount;
+                    }
+                    finally
+                    {
+                        statement.close ();
+                    }
+                }
+            } );
+        }
+        finally
+        {
+            if ( this.lock != null )
+            {
+                this.lock.readLock ().unlock ();
+            }
+        }
+    }
+
+    /**
+     * This method executes the passed query and appends the read values to the passed batch.
+     * @param statement query returning the value columns
+     * @param longValues batch to which the read values will be appended
+     * @return count of read values
+     * @throws Exception in case of problems
+     */
+    private static int readLongValues ( final PreparedStatement statement, final LongValueBatch longValues ) throws Exception
+    {
+        int count = 0;
+        final ResultSet resultSet = statement.executeQuery ();
+        try
+        {
+            while ( resultSet.next () )
+            {
+                longValues.add ( resultSet.getLong ( 1 ), resultSet.getDouble ( 2 ), resultSet.getDouble ( 3 ), resultSet.getLong ( 4 ), resultSet.getLong ( 5 ) );
+                count++;
+            }
+        }
+        finally
+        {
+            resultSet.close ();
+        }
+        return count;
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLong
+     */
+    public synchronized void updateLong ( final LongValue longValue ) throws Exception
+    {
+        assureInitialized ();
+        if ( longValue != null )
+        {
+            writeLongValues ( LongValueBatch.fromValues ( new LongValue[] { longValue } ) );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLongs
+     */
+    public synchronized void updateLongs ( final LongValue[] longValues ) throws Exception
+    {
+        assureInitialized ();
+        if ( longValues != null )
+        {
+            Arrays.sort ( longValues );
+            writeLongValues ( LongValueBatch.fromValues ( longValues ) );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
+     */
+    public synchronized void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
+    {
+        assureInitialized ();
+        if ( longValues != null )
+        {
+            if ( longValues.isSortedByTime () )
+            {
+                writeLongValues ( longValues );
+            }
+            else
+            {
+                final LongValue[] sortedValues = longValues.toLongValues ();
+                Arrays.sort ( sortedValues );
+                writeLongValues ( LongValueBatch.fromValues ( sortedValues ) );
+            }
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#getLongValues
+     */
+    public synchronized LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
+    {
+        return getLongValueBatch ( startTime, endTime ).toLongValues ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public synchronized LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        // assure that the current state is valid
+        assureInitialized ();
+
+        // assure that a valid timespan is passed
+        final LongValueBatch longValues = new LongValueBatch ( 0 );
+        if ( startTime >= endTime )
+        {
+            return longValues;
+        }
+
+        // get data from the database
+        readLongValues ( startTime, true, endTime, Integer.MAX_VALUE, longValues );
+        return longValues;
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
+     */
+    public synchronized ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        assureInitialized ();
+        return new LongValueCursor ( startTime, endTime );
+    }
+
+    /**
+     * This method reads the next values for a cursor.
+     * If values have already been read, reading continues after the last value that has been read.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param lastTime time of the last value that has already been read or null if no value has been read yet
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @param longValues batch to which the read values will be appended
+     * @return true, if further values might be available, otherwise false
+     * @throws Exception in case of problems
+     */
+    private synchronized boolean readCursorValues ( final long startTime, final Long lastTime, final long endTime, final LongValueBatch longValues ) throws Exception
+    {
+        assureInitialized ();
+        return lastTime == null ? readLongValues ( startTime, true, endTime, CURSOR_FETCH_SIZE, longValues ) : readLongValues ( lastTime, false, endTime, CURSOR_FETCH_SIZE, longValues );
+    }
+
+    /**
+     * This class provides sequential access to the values of the back end fragment.
+     * The database is queried again for each batch so that no connection is held between the calls.
+     */
+    private class LongValueCursor implements ValueCursor<LongValueBatch>
+    {
+        /** Start of the time span for which the values have to be retrieved. */
+        private final long startTime;
+
+        /** End of the time span for which the values have to be retrieved. */
+        private final long endTime;
+
+        /** Time of the last value that has been read or null if no value has been read yet. */
+        private Long lastTime;
+
+        /** Flag indicating whether all values have been read. */
+        private boolean finished;
+
+        /** Values that have been read but not yet returned or null if the next values have not yet been read. */
+        private LongValueBatch nextValues;
+
+        /**
+         * Constructor.
+         * @param startTime start of the time span for which the values have to be retrieved
+         * @param endTime end of the time span for which the values have to be retrieved
+         */
+        public LongValueCursor ( final long startTime, final long endTime )
+        {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.lastTime = null;
+            this.finished = startTime >= endTime;
+            this.nextValues = null;
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#hasNext()
+         */
+        public boolean hasNext () throws Exception
+        {
+            if ( this.nextValues == null )
+            {
+                this.nextValues = new LongValueBatch ( 0 );
+                if ( !this.finished )
+                {
+                    this.finished = !readCursorValues ( this.startTime, this.lastTime, this.endTime, this.nextValues );
+                    if ( !this.nextValues.isEmpty () )
+                    {
+                        this.lastTime = this.nextValues.getTime ( this.nextValues.getSize () - 1 );
+                    }
+                }
+            }
+            return !this.nextValues.isEmpty ();
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#next()
+         */
+        public LongValueBatch next () throws Exception
+        {
+            hasNext ();
+            final LongValueBatch result = this.nextValues;
+            this.nextValues = null;
+            return result;
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#close()
+         */
+        public void close ()
+        {
+            this.finished = true;
+            this.nextValues = null;
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEnd;
+import org.openscada.hsdb.backend.BackEndFactory;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.utils.osgi.jdbc.ConnectionAccessor;
+import org.openscada.utils.osgi.jdbc.task.ConnectionTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is an implementation of the BackEndFactory interface for JdbcBackEnd objects.
+ * The meta data of all back end fragments is stored in one fragment table.
+ * The values are partitioned into one table per detail level, so that the raw values of detail level 0 do not slow down the access to the calculated values.
+ * All tables are created on demand.
+ */
+public class JdbcBackEndFactory implements BackEndFactory
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( JdbcBackEndFactory.class );
+
+    /** Name of the system property that specifies the prefix of the names of all tables. */
+    public final static String TABLE_PREFIX_PROPERTY = "org.openscada.hsdb.backend.jdbc.tablePrefix";
+
+    /** Default prefix of the names of all tables. */
+    public final static String DEFAULT_TABLE_PREFIX = "hsdb";
+
+    /** Mask of the names of the back end fragments. */
+    private final static String FRAGMENT_NAME_MASK = "%1$s/%2$s/%3$s/%4$s/%5$s";
+
+    /** Columns of the fragment table. */
+    private final static String FRAGMENT_COLUMNS = "configuration_id, detail_level_id, calculation_method, start_time, end_time, calculation_method_parameters, proposed_data_age, accepted_time_delta, data_type";
+
+    /** Order in which the rows of the fragment table are read. */
+    private final static String FRAGMENT_ORDER = " ORDER BY configuration_id, detail_level_id, calculation_method, end_time";
+
+    /** Empty meta data array. */
+    private final static StorageChannelMetaData[] EMPTY_METADATA_ARRAY = new StorageChannelMetaData[0];
+
+    /** Empty back end array. */
+    private final static BackEnd[] EMPTY_BACKEND_ARRAY = new BackEnd[0];
+
+    /** Accessor that is used to retrieve the database connections. */
+    private final ConnectionAccessor connectionAccessor;
+
+    /** Prefix of the names of all tables. */
+    private final String tablePrefix;
+
+    /** Name of the table containing the meta data of the back end fragments. */
+    private final String fragmentTableName;
+
+    /** Names of the tables that are known to exist. */
+    private final Set<String> existingTables;
+
+    /**
+     * Constructor using the table prefix that is specified via the system property {@link #TABLE_PREFIX_PROPERTY}.
+     * @param connectionAccessor accessor that is used to retrieve the database connections
+     */
+    public JdbcBackEndFactory ( final ConnectionAccessor connectionAccessor )
+    {
+        this ( connectionAccessor, System.getProperty ( TABLE_PREFIX_PROPERTY, DEFAULT_TABLE_PREFIX ) );
+    }
+
+    /**
+     * Constructor.
+     * @param connectionAccessor accessor that is used to retrieve the database connections
+     * @param tablePrefix prefix of the names of all tables
+     */
+    public JdbcBackEndFactory ( final ConnectionAccessor connectionAccessor, final String tablePrefix )
+    {
+        if ( connectionAccessor == null )
+        {
+            throw new IllegalArgumentException ( "'connectionAccessor' must not be null" );
+        }
+        if ( tablePrefix == null || !tablePrefix.matches ( "[A-Za-z][A-Za-z0-9_]*" ) )
+        {
+            throw new IllegalArgumentException ( String.format ( "invalid table prefix '%s' passed via configuration", tablePrefix ) );
+        }
+        this.connectionAccessor = connectionAccessor;
+        this.tablePrefix = tablePrefix;
+        this.fragmentTableName = tablePrefix + "_fragments";
+        this.existingTables = Collections.newSetFromMap ( new ConcurrentHashMap<String, Boolean> () );
+    }
+
+    /**
+     * This method returns the accessor that is used to retrieve the database connections.
+     * @return accessor that is used to retrieve the database connections
+     */
+    public ConnectionAccessor getConnectionAccessor ()
+    {
+        return this.connectionAccessor;
+    }
+
+    /**
+     * This method returns the prefix of the names of all tables.
+     * @return prefix of the names of all tables
+     */
+    public String getTablePrefix ()
+    {
+        return this.tablePrefix;
+    }
+
+    /**
+     * This method returns the name of the table containing the values of the specified detail level.
+     * @param detailLevelId detail level of the values
+     * @return name of the table containing the values of the specified detail level
+     */
+    public String getValueTableName ( final long detailLevelId )
+    {
+        return String.format ( "%s_values_%s", this.tablePrefix, detailLevelId );
+    }
+
+    /**
+     * This method returns the name of the back end fragment that matches the passed meta data information.
+     * @param storageChannelMetaData meta data information for which a fragment name has to be generated
+     * @return name of the back end fragment that matches the passed meta data information
+     */
+    public String generateFragmentName ( final StorageChannelMetaData storageChannelMetaData )
+    {
+        return String.format ( FRAGMENT_NAME_MASK, storageChannelMetaData.getConfigurationId (), CalculationMethod.convertCalculationMethodToShortString ( storageChannelMetaData.getCalculationMethod () ), storageChannelMetaData.getDetailLevelId (), storageChannelMetaData.getStartTime (), storageChannelMetaData.getEndTime () );
+    }
+
+    /**
+     * This method assures that the specified table exists.
+     * The table is created if it does not exist yet. Tables that are known to exist are not checked again.
+     * The method has to be called while the connection is in auto commit mode.
+     * @param connection connection to the database
+     * @param tableName name of the table
+     * @param createStatement statement that is used to create the table
+     * @throws SQLException if the table does not exist and could not be created
+     */
+    void assureTable ( final Connection connection, final String tableName, final String createStatement ) throws SQLException
+    {
+        if ( this.existingTables.contains ( tableName ) )
+        {
+            return;
+        }
+        if ( !tableExists ( connection, tableName ) )
+        {
+            logger.info ( "creating table '{}'", tableName );
+            final Statement statement = connection.createStatement ();
+            try
+            {
+                statement.execute ( createStatement );
+            }
+            catch ( final SQLException e )
+            {
+                // the table might have been created concurrently
+                if ( !tableExists ( connection, tableName ) )
+                {
+                    throw e;
+                }
+            }
+            finally
+            {
+                statement.close ();
+            }
+        }
+        this.existingTables.add ( tableName );
+    }
+
+    /**
+     * This method returns whether the specified table exists or not.
+     * @param connection connection to the database
+     * @param tableName name of the table
+     * @return true, if the table exists, otherwise false
+     * @throws SQLException if the meta data of the database could not be retrieved
+     */
+    private static boolean tableExists ( final Connection connection, final String tableName ) throws SQLException
+    {
+        final DatabaseMetaData metaData = connection.getMetaData ();
+        String name = tableName;
+        if ( metaData.storesUpperCaseIdentifiers () )
+        {
+            name = name.toUpperCase ();
+        }
+        else if ( metaData.storesLowerCaseIdentifiers () )
+        {
+            name = name.toLowerCase ();
+        }
+        final String escape = metaData.getSearchStringEscape ();
+        if ( escape != null )
+        {
+            name = name.replace ( "_", escape + "_" );
+        }
+        final ResultSet resultSet = metaData.getTables ( null, null, name, null );
+        try
+        {
+            return resultSet.next ();
+        }
+        finally
+        {
+            resultSet.close ();
+        }
+    }
+
+    /**
+     * This method assures that the fragment table exists.
+     * @param connection connection to the database
+     * @throws SQLException if the table does not exist and could not be created
+     */
+    private void assureFragmentTable ( final Connection connection ) throws SQLException
+    {
+        assureTable ( connection, this.fragmentTableName, String.format ( "CREATE TABLE %s ( configuration_id VARCHAR(255) NOT NULL, detail_level_id BIGINT NOT NULL, calculation_method VARCHAR(16) NOT NULL, start_time BIGINT NOT NULL, end_time BIGINT NOT NULL, calculation_method_parameters VARCHAR(255), proposed_data_age BIGINT NOT NULL, accepted_time_delta BIGINT NOT NULL, data_type VARCHAR(16) NOT NULL, PRIMARY KEY ( configuration_id, detail_level_id, calculation_method, start_time ) )", this.fragmentTableName ) );
+    }
+
+    /**
+     * This method assures that the table containing the values of the specified detail level exists.
+     * The primary key of the table provides the index that is used for the range scans when reading values.
+     * @param connection connection to the database
+     * @param detailLevelId detail level of the values
+     * @throws SQLException if the table does not exist and could not be created
+     */
+    void assureValueTable ( final Connection connection, final long detailLevelId ) throws SQLException
+    {
+        final String tableName = getValueTableName ( detailLevelId );
+        assureTable ( connection, tableName, String.format ( "CREATE TABLE %s ( configuration_id VARCHAR(255) NOT NULL, calculation_method VARCHAR(16) NOT NULL, value_time BIGINT NOT NULL, quality_indicator DOUBLE PRECISION NOT NULL, manual_indicator DOUBLE PRECISION NOT NULL, base_value_count BIGINT NOT NULL, long_value BIGINT NOT NULL, PRIMARY KEY ( configuration_id, calculation_method, value_time ) )", tableName ) );
+    }
+
+    /**
+     * This method converts the passed calculation method parameters to a string that can be stored in the fragment table.
+     * @param calculationMethodParameters calculation method parameters
+     * @return converted calculation method parameters
+     */
+    private static String encodeCalculationMethodParameters ( final long[] calculationMethodParameters )
+    {
+        final StringBuilder result = new StringBuilder ();
+        if ( calculationMethodParameters != null )
+        {
+            for ( final long calculationMethodParameter : calculationMethodParameters )
+            {
+                if ( result.length () > 0 )
+                {
+                    result.append ( ',' );
+                }
+                result.append ( calculationMethodParameter );
+            }
+        }
+        return result.toString ();
+    }
+
+    /**
+     * This method converts the string that is stored in the fragment table to calculation method parameters.
+     * @param calculationMethodParameters string that is stored in the fragment table
+     * @return converted calculation method parameters
+     */
+    private static long[] decodeCalculationMethodParameters ( final String calculationMethodParameters )
+    {
+        if ( calculationMethodParameters == null || calculationMethodParameters.length () == 0 )
+        {
+            return new long[0];
+        }
+        final String[] parts = calculationMethodParameters.split ( "," );
+        final long[] result = new long[parts.length];
+        for ( int i = 0; i < parts.length; i++ )
+        {
+            result[i] = Long.parseLong ( parts[i] );
+        }
+        return result;
+    }
+
+    /**
+     * This method creates a meta data object from the current row of the passed result set.
+     * @param resultSet result set containing the columns of the fragment table
+     * @return created meta data object
+     * @throws SQLException if the data could not be read
+     */
+    private static StorageChannelMetaData readFragment ( final ResultSet resultSet ) throws SQLException
+    {
+        final String configurationId = resultSet.getString ( 1 );
+        final long detailLevelId = resultSet.getLong ( 2 );
+        final CalculationMethod calculationMethod = CalculationMethod.convertShortStringToCalculationMethod ( resultSet.getString ( 3 ) );
+        final long startTime = resultSet.getLong ( 4 );
+        final long endTime = resultSet.getLong ( 5 );
+        final long[] calculationMethodParameters = decodeCalculationMethodParameters ( resultSet.getString ( 6 ) );
+        final long proposedDataAge = resultSet.getLong ( 7 );
+        final long acceptedTimeDelta = resultSet.getLong ( 8 );
+        final DataType dataType = DataType.convertShortStringToDataType ( resultSet.getString ( 9 ) );
+        return new StorageChannelMetaData ( configurationId, calculationMethod, calculationMethodParameters, detailLevelId, startTime, endTime, proposedDataAge, acceptedTimeDelta, dataType );
+    }
+
+    /**
+     * This method reads the meta data of all back end fragments matching the passed condition.
+     * @param condition condition that is appended to the query or an empty string if all back end fragments have to be read
+     * @param parameters parameters of the condition
+     * @return meta data of all back end fragments matching the passed condition ordered by configuration, detail level, calculation method and end time
+     * @throws Exception in case of problems
+     */
+    private List<StorageChannelMetaData> queryFragments ( final String condition, final Object... parameters ) throws Exception
+    {
+        return this.connectionAccessor.doWithConnection ( new ConnectionTask<List<StorageChannelMetaData>> () {
+            public List<StorageChannelMetaData> performTask ( final Connection connection ) throws Exception
+            {
+                assureFragmentTable ( connection );
+                final List<StorageChannelMetaData> metaDatas = new ArrayList<StorageChannelMetaData> ();
+                final PreparedStatement statement = connection.prepareStatement ( String.format ( "SELECT %s FROM %s %s %s", FRAGMENT_COLUMNS, JdbcBackEndFactory.this.fragmentTableName, condition, FRAGMENT_ORDER ) );
+                try
+                {
+                    for ( int i = 0; i < parameters.length; i++ )
+                    {
+                        statement.setObject ( i + 1, parameters[i] );
+                    }
+                    final ResultSet resultSet = statement.executeQuery ();
+                    try
+                    {
+                        while ( resultSet.next () )
+                        {
+                            metaDatas.add ( readFragment ( resultSet ) );
+                        }
+                    }
+                    finally
+                    {
+                        resultSet.close ();
+                    }
+                }
+                finally
+                {
+                    statement.close ();
+                }
+                return metaDatas;
+            }
+        } );
+    }
+
+    /**
+     * This method returns the meta data of the back end fragment with the specified identity.
+     * @param configurationId id of the configuration
+     * @param detailLevelId detail level of the back end fragment
+     * @param calculationMethod calculation method of the back end fragment
+     * @param startTime start time of the back end fragment
+     * @return meta data of the back end fragment or null if the back end fragment does not exist
+     * @throws Exception in case of problems
+     */
+    public StorageChannelMetaData getBackEndMetaData ( final String configurationId, final long detailLevelId, final CalculationMethod calculationMethod, final long startTime ) throws Exception
+    {
+        final List<StorageChannelMetaData> metaDatas = queryFragments ( "WHERE configuration_id = ? AND detail_level_id = ? AND calculation_method = ? AND start_time = ?", configurationId, detailLevelId, CalculationMethod.convertCalculationMethodToShortString ( calculationMethod ), startTime );
+        return metaDatas.isEmpty () ? null : metaDatas.get ( 0 );
+    }
+
+    /**
+     * This method stores the meta data of a new back end fragment and assures that the table for its values exists.
+     * @param storageChannelMetaData meta data of the new back end fragment
+     * @throws Exception if the back end fragment already exists or if the meta data could not be stored
+     */
+    void createBackEnd ( final StorageChannelMetaData storageChannelMetaData ) throws Exception
+    {
+        this.connectionAccessor.doWithConnection ( new ConnectionTask<Object> () {
+            public Object performTask ( final Connection connection ) throws Exception
+            {
+                assureFragmentTable ( connection );
+                assureValueTable ( connection, storageChannelMetaData.getDetailLevelId () );
+                final PreparedStatement statement = connection.prepareStatement ( String.format ( "INSERT INTO %s ( %s ) VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ? )", JdbcBackEndFactory.this.fragmentTableName, FRAGMENT_COLUMNS ) );
+                try
+                {
+                    statement.setString ( 1, storageChannelMetaData.getConfigurationId () );
+                    statement.setLong ( 2, storageChannelMetaData.getDetailLevelId () );
+                    statement.setString ( 3, CalculationMethod.convertCalculationMethodToShortString ( storageChannelMetaData.getCalculationMethod () ) );
+                    statement.setLong ( 4, storageChannelMetaData.getStartTime () );
+                    statement.setLong ( 5, storageChannelMetaData.getEndTime () );
+                    statement.setString ( 6, encodeCalculationMethodParameters ( storageChannelMetaData.getCalculationMethodParameters () ) );
+                    statement.setLong ( 7, storageChannelMetaData.getProposedDataAge () );
+                    statement.setLong ( 8, storageChannelMetaData.getAcceptedTimeDelta () );
+                    statement.setString ( 9, DataType.convertDataTypeToShortString ( storageChannelMetaData.getDataType () ) );
+                    statement.executeUpdate ();
+                }
+                finally
+                {
+                    statement.close ();
+                }
+                return null;
+            }
+        } );
+    }
+
+    /**
+     * This method deletes the back end fragment with the specified identity including all of its values.
+     * @param configurationId id of the configuration
+     * @param detailLevelId detail level of the back end fragment
+     * @param calculationMethod calculation method of the back end fragment
+     * @param startTime start time of the back end fragment
+     * @param endTime end time of the back end fragment
+     * @throws Exception in case of problems
+     */
+    public void deleteBackEnd ( final String configurationId, final long detailLevelId, final CalculationMethod calculationMethod, final long startTime, final long endTime ) throws Exception
+    {
+        final String calculationMethodString = CalculationMethod.convertCalculationMethodToShortString ( calculationMethod );
+        this.connectionAccessor.doWithConnection ( new ConnectionTask<Object> () {
+            public Object performTask ( final Connection connection ) throws Exception
+            {
+                assureFragmentTable ( connection );
+                assureValueTable ( connection, detailLevelId );
+                connection.setAutoCommit ( false );
+                try
+                {
+                    executeUpdate ( connection, String.format ( "DELETE FROM %s WHERE configuration_id = ? AND calculation_method = ? AND value_time >= ? AND value_time < ?", getValueTableName ( detailLevelId ) ), configurationId, calculationMethodString, startTime, endTime );
+                    executeUpdate ( connection, String.format ( "DELETE FROM %s WHERE configuration_id = ? AND detail_level_id = ? AND calculation_method = ? AND start_time = ?", JdbcBackEndFactory.this.fragmentTableName ), configurationId, detailLevelId, calculationMethodString, startTime );
+                    connection.commit ();
+                }
+                catch ( final Exception e )
+                {
+                    connection.rollback ();
+                    throw e;
+                }
+                finally
+                {
+                    connection.setAutoCommit ( true );
+                }
+                return null;
+            }
+        } );
+    }
+
+    /**
+     * This method executes the passed update statement.
+     * @param connection connection to the database
+     * @param sql update statement
+     * @param parameters parameters of the update statement
+     * @return count of affected rows
+     * @throws SQLException in case of problems
+     */
+    private static int executeUpdate ( final Connection connection, final String sql, final Object... parameters ) throws SQLException
+    {
+        final PreparedStatement statement = connection.prepareStatement ( sql );
+        try
+        {
+            for ( int i = 0; i < parameters.length; i++ )
+            {
+                statement.setObject ( i + 1, parameters[i] );
+            }
+            return statement.executeUpdate ();
+        }
+        finally
+        {
+            statement.close ();
+        }
+    }
+
+    /**
+     * This method merges the passed meta data objects if merge mode is specified.
+     * If more than one metadata object exists for the same configuration, calculation method and detail level then the additional information is merged into one single meta data object.
+     * The time span is hereby widened so that the earliest start time is used and the latest end time.
+     * All other information is taken from the sub meta data object with the latest end time.
+     * @param metaDatas meta data objects ordered by configuration, detail level, calculation method and end time
+     * @param merge flag indicating whether the result object should be merged or not
+     * @return merged meta data objects
+     */
+    private static StorageChannelMetaData[] mergeMetaData ( final List<StorageChannelMetaData> metaDatas, final boolean merge )
+    {
+        if ( !merge )
+        {
+            return metaDatas.toArray ( EMPTY_METADATA_ARRAY );
+        }
+        final List<StorageChannelMetaData> result = new ArrayList<StorageChannelMetaData> ();
+        StorageChannelMetaData entry = null;
+        for ( final StorageChannelMetaData metaData : metaDatas )
+        {
+            if ( entry != null && entry.getConfigurationId ().equals ( metaData.getConfigurationId () ) && entry.getDetailLevelId () == metaData.getDetailLevelId () && entry.getCalculationMethod () == metaData.getCalculationMethod () )
+            {
+                // the entries are ordered by end time, so that the current entry provides the latest information
+                final long startTime = Math.min ( entry.getStartTime (), metaData.getStartTime () );
+                entry = new StorageChannelMetaData ( metaData );
+                entry.setStartTime ( startTime );
+                result.set ( result.size () - 1, entry );
+            }
+            else
+            {
+                entry = new StorageChannelMetaData ( metaData );
+                result.add ( entry );
+            }
+        }
+        return result.toArray ( EMPTY_METADATA_ARRAY );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFactory#getExistingBackEndsMetaData(boolean)
+     */
+    public StorageChannelMetaData[] getExistingBackEndsMetaData ( final boolean merge ) throws Exception
+    {
+        return mergeMetaData ( queryFragments ( "" ), merge );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFactory#getExistingBackEndsMetaData(String,boolean)
+     */
+    public StorageChannelMetaData[] getExistingBackEndsMetaData ( final String configurationId, final boolean merge ) throws Exception
+    {
+        if ( configurationId == null )
+        {
+            return EMPTY_METADATA_ARRAY;
+        }
+        return mergeMetaData ( queryFragments ( "WHERE configuration_id = ?", configurationId ), merge );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFactory#getExistingBackEnds
+     */
+    public BackEnd[] getExistingBackEnds ( final String configurationId, final long detailLevelId, final CalculationMethod calculationMethod ) throws Exception
+    {
+        if ( configurationId == null )
+        {
+            return EMPTY_BACKEND_ARRAY;
+        }
+        final List<BackEnd> backEnds = new ArrayList<BackEnd> ();
+        for ( final StorageChannelMetaData metaData : queryFragments ( "WHERE configuration_id = ? AND detail_level_id = ? AND calculation_method = ?", configurationId, detailLevelId, CalculationMethod.convertCalculationMethodToShortString ( calculationMethod ) ) )
+        {
+            backEnds.add ( new JdbcBackEnd ( this, configurationId, detailLevelId, calculationMethod, metaData.getStartTime () ) );
+        }
+        return backEnds.toArray ( EMPTY_BACKEND_ARRAY );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFactory#createNewBackEnd
+     */
+    public BackEnd createNewBackEnd ( final StorageChannelMetaData storageChannelMetaData ) throws Exception
+    {
+        // check input
+        if ( storageChannelMetaData == null )
+        {
+            final String message = "invalid StorageChannelMetaData object passed to JdbcBackEndFactory!";
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        return new JdbcBackEnd ( this, storageChannelMetaData.getConfigurationId (), storageChannelMetaData.getDetailLevelId (), storageChannelMetaData.getCalculationMethod (), storageChannelMetaData.getStartTime () );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndFactory#deleteBackEnds
+     */
+    public void deleteBackEnds ( final String configurationId )
+    {
+        // check input
+        if ( configurationId == null )
+        {
+            return;
+        }
+        try
+        {
+            this.connectionAccessor.doWithConnection ( new ConnectionTask<Object> () {
+                public Object performTask ( final Connection connection ) throws Exception
+                {
+                    assureFragmentTable ( connection );
+
+                    // get the detail levels for which values are stored
+                    final List<Long> detailLevelIds = new ArrayList<Long> ();
+                    final PreparedStatement statement = connection.prepareStatement ( String.format ( "SELECT DISTINCT detail_level_id FROM %s WHERE configuration_id = ?", JdbcBackEndFactory.this.fragmentTableName ) );
+                    try
+                    {
+                        statement.setString ( 1, configurationId );
+                        final ResultSet resultSet = statement.executeQuery ();
+                        try
+                        {
+                            while ( resultSet.next () )
+                            {
+                                detailLevelIds.add ( resultSet.getLong ( 1 ) );
+                            }
+                        }
+                        finally
+                        {
+                            resultSet.close ();
+                        }
+                    }
+                    finally
+                    {
+                        statement.close ();
+                    }
+                    for ( final Long detailLevelId : detailLevelIds )
+                    {
+                        assureValueTable ( connection, detailLevelId );
+                    }
+
+                    // delete the values and the fragments
+                    connection.setAutoCommit ( false );
+                    try
+                    {
+                        for ( final Long detailLevelId : detailLevelIds )
+                        {
+                            executeUpdate ( connection, String.format ( "DELETE FROM %s WHERE configuration_id = ?", getValueTableName ( detailLevelId ) ), configurationId );
+                        }
+                        executeUpdate ( connection, String.format ( "DELETE FROM %s WHERE configuration_id = ?", JdbcBackEndFactory.this.fragmentTableName ), configurationId );
+                        connection.commit ();
+                    }
+                    catch ( final Exception e )
+                    {
+                        connection.rollback ();
+                        throw e;
+                    }
+                    finally
+                    {
+                        connection.setAutoCommit ( true );
+                    }
+                    return null;
+                }
+            } );
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( String.format ( "could not delete back ends of configuration with id '%s'", configurationId ), e );
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.jdbc;
+
+import java.util.Map;
+
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEndFragmentInformation;
+import org.openscada.hsdb.backend.BackEndManagerBase;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class provides functionality for managing back end objects concerning JdbcBackEnd objects.
+ */
+public class JdbcBackEndManager extends BackEndManagerBase<JdbcBackEnd>
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( JdbcBackEndManager.class );
+
+    /**
+     * Constructor.
+     * @param configuration configuration of the manager instance
+     * @param jdbcBackEndManagerFactory factory that has been used to create this instance
+     * @param jdbcBackEndFactory factory that will be used to create new JdbcBackEnd objects
+     */
+    public JdbcBackEndManager ( final Configuration configuration, final JdbcBackEndManagerFactory jdbcBackEndManagerFactory, final JdbcBackEndFactory jdbcBackEndFactory )
+    {
+        super ( configuration, jdbcBackEndManagerFactory, jdbcBackEndFactory, new JdbcBackEnd[0] );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#delete()
+     */
+    @Override
+    public void delete ()
+    {
+        // delete configuration
+        super.delete ();
+
+        // delete back end fragments
+        ( (JdbcBackEndFactory)getBackEndFactory () ).deleteBackEnds ( getConfiguration ().getId () );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#createBackEnd(org.openscada.hsdb.backend.BackEndFragmentInformation, boolean, boolean)
+     */
+    @Override
+    protected JdbcBackEnd createBackEnd ( final BackEndFragmentInformation backEndInformation, final boolean initialize, final boolean keepOpen ) throws Exception
+    {
+        final Map<String, String> data = getConfiguration ().getData ();
+        final String configurationId = backEndInformation.getConfigurationId ();
+        final CalculationMethod calculationMethod = backEndInformation.getCalculationMethod ();
+        final long detailLevelId = backEndInformation.getDetailLevelId ();
+        final long startTime = backEndInformation.getStartTime ();
+        final long endTime = backEndInformation.getEndTime ();
+        long proposedDataAge = Conversions.parseLong ( data.get ( Configuration.PROPOSED_DATA_AGE_KEY_PREFIX + detailLevelId ), 1 );
+        if ( proposedDataAge < 0 )
+        {
+            proposedDataAge = 1;
+        }
+        long acceptedTimeDelta = Conversions.parseLong ( data.get ( Configuration.ACCEPTED_TIME_DELTA_KEY ), 1 );
+        if ( acceptedTimeDelta < 0 )
+        {
+            acceptedTimeDelta = 1;
+        }
+        final DataType dataType = DataType.convertShortStringToDataType ( data.get ( Configuration.DATA_TYPE_KEY ) );
+        if ( dataType == DataType.UNKNOWN )
+        {
+            throw new Exception ( "invalid data type specified in configuration" );
+        }
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( configurationId, calculationMethod, new long[0], detailLevelId, startTime, endTime, proposedDataAge, acceptedTimeDelta, dataType );
+        final JdbcBackEndFactory backEndFactory = (JdbcBackEndFactory)getBackEndFactory ();
+        final JdbcBackEnd result = new JdbcBackEnd ( backEndFactory, configurationId, detailLevelId, calculationMethod, startTime );
+        result.setLock ( backEndInformation.getLock () );
+        if ( backEndFactory.getBackEndMetaData ( configurationId, detailLevelId, calculationMethod, startTime ) == null )
+        {
+            logger.debug ( "creating back end fragment {}", backEndInformation.getFragmentName () );
+            result.create ( metaData );
+        }
+        if ( initialize )
+        {
+            result.initialize ( metaData );
+        }
+        return result;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#getFragmentName(long, org.openscada.hsdb.calculation.CalculationMethod, long, long)
+     */
+    @Override
+    protected String getFragmentName ( final long detailLevelId, final CalculationMethod calculationMethod, final long startTime, final long endTime )
+    {
+        return ( (JdbcBackEndFactory)getBackEndFactory () ).generateFragmentName ( new StorageChannelMetaData ( getConfiguration ().getId (), calculationMethod, new long[0], detailLevelId, startTime, endTime, 0, 0, DataType.LONG_VALUE ) );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#deleteBackEnd(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    @Override
+    protected void deleteBackEnd ( final BackEndFragmentInformation backEndInformation )
+    {
+        logger.info ( "deleting back end fragment '{}'", backEndInformation.getFragmentName () );
+        try
+        {
+            ( (JdbcBackEndFactory)getBackEndFactory () ).deleteBackEnd ( backEndInformation.getConfigurationId (), backEndInformation.getDetailLevelId (), backEndInformation.getCalculationMethod (), backEndInformation.getStartTime (), backEndInformation.getEndTime () );
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( String.format ( "could not delete back end fragment '%s'", backEndInformation.getFragmentName () ), e );
+        }
+    }
+
+    /**
+     * This method returns whether the back end fragment exists in the database or not.
+     * @param backEndInformation information of the back end fragment
+     * @return true, if the back end fragment exists, otherwise false
+     */
+    private boolean existsBackEnd ( final BackEndFragmentInformation backEndInformation )
+    {
+        try
+        {
+            return ( (JdbcBackEndFactory)getBackEndFactory () ).getBackEndMetaData ( backEndInformation.getConfigurationId (), backEndInformation.getDetailLevelId (), backEndInformation.getCalculationMethod (), backEndInformation.getStartTime () ) != null;
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( String.format ( "could not check existence of back end fragment '%s'", backEndInformation.getFragmentName () ), e );
+            return false;
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#checkIsBackEndCorrupt(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    @Override
+    protected boolean checkIsBackEndCorrupt ( final BackEndFragmentInformation backEndInformation )
+    {
+        return !existsBackEnd ( backEndInformation );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#readyForRepair(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    @Override
+    protected boolean readyForRepair ( final BackEndFragmentInformation backEndInformation )
+    {
+        return !existsBackEnd ( backEndInformation );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#updateBackEndEmptyInformation(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    @Override
+    protected boolean updateBackEndEmptyInformation ( final BackEndFragmentInformation backEndInformation ) throws Exception
+    {
+        if ( backEndInformation.getIsCorrupt () )
+        {
+            return false;
+        }
+        if ( backEndInformation.getIsEmpty () == null )
+        {
+            if ( !existsBackEnd ( backEndInformation ) )
+            {
+                // the fragment does not exist but it should be there.
+                // since no check can be performed, assume that the fragment contains invalid data
+                return backEndInformation.initializeState ( false, null );
+            }
+            final JdbcBackEnd backEnd = new JdbcBackEnd ( (JdbcBackEndFactory)getBackEndFactory (), backEndInformation.getConfigurationId (), backEndInformation.getDetailLevelId (), backEndInformation.getCalculationMethod (), backEndInformation.getStartTime () );
+            backEnd.setLock ( backEndInformation.getLock () );
+            backEnd.initialize ( null );
+            try
+            {
+                final Long firstEntryTime = backEnd.getFirstEntryTime ();
+                return backEndInformation.initializeState ( firstEntryTime == null, firstEntryTime );
+            }
+            finally
+            {
+                backEnd.deinitialize ();
+            }
+        }
+        return backEndInformation.getIsEmpty ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerBase#updateBackEndEarliestTimeInformation(org.openscada.hsdb.backend.BackEndFragmentInformation)
+     */
+    @Override
+    protected Long updateBackEndEarliestTimeInformation ( final BackEndFragmentInformation backEndInformation ) throws Exception
+    {
+        if ( backEndInformation.getIsCorrupt () || updateBackEndEmptyInformation ( backEndInformation ) )
+        {
+            return null;
+        }
+        return backEndInformation.getSupposedEarliestValueTime ();
+    }
+}
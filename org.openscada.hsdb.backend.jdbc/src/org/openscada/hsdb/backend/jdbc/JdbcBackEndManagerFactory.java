@@ -0,0 +1,320 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.openscada.hsdb.backend.BackEndManagerFactory;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.utils.osgi.jdbc.task.ConnectionTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class implements the BackEndManagerFactory interface for JdbcBackEnd objects.
+ * The configurations of the back end managers are stored as key value pairs in a separate table.
+ */
+public class JdbcBackEndManagerFactory implements BackEndManagerFactory
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( JdbcBackEndManagerFactory.class );
+
+    /** Empty array of jdbc back end manager objects. */
+    private final static JdbcBackEndManager[] EMPTY_JDBC_BACKEND_MANAGER_ARRAY = new JdbcBackEndManager[0];
+
+    /** Factory that will be used to create new back end objects. */
+    private final JdbcBackEndFactory jdbcBackEndFactory;
+
+    /** Name of the table containing the configurations. */
+    private final String configurationTableName;
+
+    /**
+     * Constructor.
+     * @param jdbcBackEndFactory factory that will be used to create new back end objects
+     */
+    public JdbcBackEndManagerFactory ( final JdbcBackEndFactory jdbcBackEndFactory )
+    {
+        this.jdbcBackEndFactory = jdbcBackEndFactory;
+        this.configurationTableName = jdbcBackEndFactory.getTablePrefix () + "_configurations";
+    }
+
+    /**
+     * This method assures that the configuration table exists.
+     * @param connection connection to the database
+     * @throws Exception if the table does not exist and could not be created
+     */
+    private void assureConfigurationTable ( final Connection connection ) throws Exception
+    {
+        this.jdbcBackEndFactory.assureTable ( connection, this.configurationTableName, String.format ( "CREATE TABLE %s ( configuration_id VARCHAR(255) NOT NULL, configuration_key VARCHAR(255) NOT NULL, configuration_value VARCHAR(4000), PRIMARY KEY ( configuration_id, configuration_key ) )", this.configurationTableName ) );
+    }
+
+    /**
+     * This method loads the configurations from the configuration table.
+     * @param configurationId id of the configuration that has to be loaded or null if all configurations have to be loaded
+     * @return loaded configuration objects
+     * @throws Exception in case of problems
+     */
+    private List<Configuration> loadConfigurations ( final String configurationId ) throws Exception
+    {
+        final Map<String, Map<String, String>> datas = this.jdbcBackEndFactory.getConnectionAccessor ().doWithConnection ( new ConnectionTask<Map<String, Map<String, String>>> () {
+            public Map<String, Map<String, String>> performTask ( final Connection connection ) throws Exception
+            {
+                assureConfigurationTable ( connection );
+                final Map<String, Map<String, String>> datas = new LinkedHashMap<String, Map<String, String>> ();
+                final String condition = configurationId == null ? "" : "WHERE configuration_id = ?";
+                final PreparedStatement statement = connection.prepareStatement ( String.format ( "SELECT configuration_id, configuration_key, configuration_value FROM %s %s ORDER BY configuration_id", JdbcBackEndManagerFactory.this.configurationTableName, condition ) );
+                try
+                {
+                    if ( configurationId != null )
+                    {
+                        statement.setString ( 1, configurationId );
+                    }
+                    final ResultSet resultSet = statement.executeQuery ();
+                    try
+                    {
+                        while ( resultSet.next () )
+                        {
+                            final String id = resultSet.getString ( 1 );
+                            Map<String, String> data = datas.get ( id );
+                            if ( data == null )
+                            {
+                                data = new HashMap<String, String> ();
+                                datas.put ( id, data );
+                            }
+                            data.put ( resultSet.getString ( 2 ), resultSet.getString ( 3 ) );
+                        }
+                    }
+                    finally
+                    {
+                        resultSet.close ();
+                    }
+                }
+                finally
+                {
+                    statement.close ();
+                }
+                return datas;
+            }
+        } );
+        final List<Configuration> configurations = new ArrayList<Configuration> ();
+        for ( final Entry<String, Map<String, String>> entry : datas.entrySet () )
+        {
+            final String id = entry.getKey ();
+            final Map<String, String> data = entry.getValue ();
+            if ( !data.containsKey ( Configuration.DATA_TYPE_KEY ) )
+            {
+                logger.error ( String.format ( "could not retrieve data type information for configuration '%s' from table '%s'. please check table!", id, this.configurationTableName ) );
+                data.put ( Configuration.DATA_TYPE_KEY, DataType.convertDataTypeToShortString ( DataType.DOUBLE_VALUE ) );
+            }
+            data.put ( Configuration.MANAGER_CONFIGURATION_ID, id );
+            final Configuration configuration = new Configuration ();
+            configuration.setId ( id );
+            configuration.setData ( data );
+            configurations.add ( configuration );
+        }
+        return configurations;
+    }
+
+    /**
+     * This method loads the configuration data from the configuration table.
+     * @param configurationId id of the configuration
+     * @return loaded configuration object or null if the configuration does not exist
+     * @throws Exception in case of problems
+     */
+    public Configuration loadConfiguration ( final String configurationId ) throws Exception
+    {
+        final List<Configuration> configurations = loadConfigurations ( configurationId );
+        return configurations.isEmpty () ? null : configurations.get ( 0 );
+    }
+
+    /**
+     * This method saves the configuration data to the configuration table.
+     * All existing data of the configuration is replaced within one transaction.
+     * @param configuration configuration object that has to be saved
+     * @throws Exception in case of problems
+     */
+    public void saveConfiguration ( final Configuration configuration ) throws Exception
+    {
+        if ( configuration == null )
+        {
+            return;
+        }
+        final Map<String, String> data = new HashMap<String, String> ();
+        if ( configuration.getData () != null )
+        {
+            data.putAll ( configuration.getData () );
+        }
+        data.put ( Configuration.MANAGER_CONFIGURATION_ID, configuration.getId () );
+        this.jdbcBackEndFactory.getConnectionAccessor ().doWithConnection ( new ConnectionTask<Object> () {
+            public Object performTask ( final Connection connection ) throws Exception
+            {
+                assureConfigurationTable ( connection );
+                connection.setAutoCommit ( false );
+                try
+                {
+                    final PreparedStatement deleteStatement = connection.prepareStatement ( String.format ( "DELETE FROM %s WHERE configuration_id = ?", JdbcBackEndManagerFactory.this.configurationTableName ) );
+                    try
+                    {
+                        deleteStatement.setString ( 1, configuration.getId () );
+                        deleteStatement.executeUpdate ();
+                    }
+                    finally
+                    {
+                        deleteStatement.close ();
+                    }
+                    final PreparedStatement insertStatement = connection.prepareStatement ( String.format ( "INSERT INTO %s ( configuration_id, configuration_key, configuration_value ) VALUES ( ?, ?, ? )", JdbcBackEndManagerFactory.this.configurationTableName ) );
+                    try
+                    {
+                        for ( final Entry<String, String> entry : data.entrySet () )
+                        {
+                            insertStatement.setString ( 1, configuration.getId () );
+                            insertStatement.setString ( 2, entry.getKey () );
+                            insertStatement.setString ( 3, entry.getValue () );
+                            insertStatement.addBatch ();
+                        }
+                        insertStatement.executeBatch ();
+                    }
+                    finally
+                    {
+                        insertStatement.close ();
+                    }
+                    connection.commit ();
+                }
+                catch ( final Exception e )
+                {
+                    connection.rollback ();
+                    throw e;
+                }
+                finally
+                {
+                    connection.setAutoCommit ( true );
+                }
+                return null;
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerFactory#getBackEndManagers()
+     */
+    public JdbcBackEndManager[] getBackEndManagers ()
+    {
+        final List<JdbcBackEndManager> managers = new ArrayList<JdbcBackEndManager> ();
+        try
+        {
+            for ( final Configuration configuration : loadConfigurations ( null ) )
+            {
+                managers.add ( new JdbcBackEndManager ( configuration, this, this.jdbcBackEndFactory ) );
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( "could not load configurations of jdbc backend managers", e );
+        }
+        return managers.toArray ( EMPTY_JDBC_BACKEND_MANAGER_ARRAY );
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerFactory#getBackEndManager(Configuration,boolean)
+     */
+    public JdbcBackEndManager getBackEndManager ( final Configuration configuration, final boolean createIfNotExists )
+    {
+        if ( configuration == null )
+        {
+            throw new IllegalArgumentException ( "'configuration' must not be null" );
+        }
+        try
+        {
+            Configuration loadedConfiguration = loadConfiguration ( configuration.getId () );
+            if ( loadedConfiguration == null )
+            {
+                if ( createIfNotExists )
+                {
+                    saveConfiguration ( configuration );
+                    loadedConfiguration = configuration;
+                }
+            }
+            if ( loadedConfiguration != null )
+            {
+                return new JdbcBackEndManager ( loadedConfiguration, this, this.jdbcBackEndFactory );
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( String.format ( "could not create jdbc backend manager for configuration '%s'", configuration.getId () ), e );
+        }
+        return null;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerFactory#delete(org.openscada.hsdb.configuration.Configuration)
+     */
+    public void delete ( final Configuration configuration )
+    {
+        try
+        {
+            this.jdbcBackEndFactory.getConnectionAccessor ().doWithConnection ( new ConnectionTask<Object> () {
+                public Object performTask ( final Connection connection ) throws Exception
+                {
+                    assureConfigurationTable ( connection );
+                    final PreparedStatement statement = connection.prepareStatement ( String.format ( "DELETE FROM %s WHERE configuration_id = ?", JdbcBackEndManagerFactory.this.configurationTableName ) );
+                    try
+                    {
+                        statement.setString ( 1, configuration.getId () );
+                        statement.executeUpdate ();
+                    }
+                    finally
+                    {
+                        statement.close ();
+                    }
+                    return null;
+                }
+            } );
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( String.format ( "could not delete configuration '%s'", configuration.getId () ), e );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManagerFactory#save(org.openscada.hsdb.configuration.Configuration)
+     */
+    public void save ( final Configuration configuration )
+    {
+        try
+        {
+            saveConfiguration ( configuration );
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( "could not save configuration", e );
+        }
+    }
+}
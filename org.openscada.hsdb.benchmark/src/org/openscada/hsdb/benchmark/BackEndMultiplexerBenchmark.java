@@ -0,0 +1,141 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.ValueCursor;
+import org.openscada.hsdb.backend.BackEndMultiplexer;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This class measures the time that BackEndMultiplexer requires to read all stored values depending on the count of back end fragments the values are distributed across.
+ * The count of stored values is the same for each fragment count.
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MILLISECONDS )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class BackEndMultiplexerBenchmark
+{
+    /** Count of values that are stored. */
+    public final static int VALUE_COUNT = 100000;
+
+    /** Id of the configuration that is used for the benchmark. */
+    private final static String CONFIGURATION_ID = "multiplexer";
+
+    /** Count of back end fragments the values are distributed across. */
+    @Param ( { "1", "4", "16" } )
+    public int fragmentCount;
+
+    /** Manager of the back end fragments. */
+    private FileBackEndManager manager;
+
+    /** Back end object that is used for the benchmark. */
+    private BackEndMultiplexer backEnd;
+
+    /**
+     * This method creates the back end fragments and stores the values.
+     * @throws Exception in case of problems
+     */
+    @Setup ( Level.Trial )
+    public void createBackEnd () throws Exception
+    {
+        final StorageChannelMetaData metaData = BenchmarkSupport.createMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0 );
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( new StorageChannelMetaData[] { metaData } );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 0, VALUE_COUNT * ValueGenerator.TIME_STEP / this.fragmentCount + Conversions.MILLISECOND_SPAN_SUFFIX );
+        final FileBackEndFactory backEndFactory = new FileBackEndFactory ( BenchmarkSupport.ROOT, 0 );
+        backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        this.manager = new FileBackEndManagerFactory ( backEndFactory ).getBackEndManager ( configuration, true );
+        this.manager.initialize ();
+        this.backEnd = new BackEndMultiplexer ( this.manager );
+        this.backEnd.initialize ( metaData );
+        this.backEnd.updateLongValueBatch ( new ValueGenerator ().createLongValueBatch ( 0, VALUE_COUNT ) );
+    }
+
+    /**
+     * This method deletes the back end fragments.
+     * @throws Exception in case of problems
+     */
+    @TearDown ( Level.Trial )
+    public void deleteBackEnd () throws Exception
+    {
+        this.backEnd.deinitialize ();
+        this.manager.deinitialize ();
+        this.manager.delete ();
+    }
+
+    /**
+     * This method reads all values as one batch.
+     * @return read values
+     * @throws Exception in case of problems
+     */
+    @Benchmark
+    public LongValueBatch getLongValueBatch () throws Exception
+    {
+        return this.backEnd.getLongValueBatch ( 0, VALUE_COUNT * ValueGenerator.TIME_STEP );
+    }
+
+    /**
+     * This method reads all values via a cursor.
+     * @return count of read values
+     * @throws Exception in case of problems
+     */
+    @Benchmark
+    public int getLongValueCursor () throws Exception
+    {
+        final ValueCursor<LongValueBatch> cursor = this.backEnd.getLongValueCursor ( 0, VALUE_COUNT * ValueGenerator.TIME_STEP );
+        try
+        {
+            int count = 0;
+            while ( cursor.hasNext () )
+            {
+                count += cursor.next ().getSize ();
+            }
+            return count;
+        }
+        finally
+        {
+            cursor.close ();
+        }
+    }
+}
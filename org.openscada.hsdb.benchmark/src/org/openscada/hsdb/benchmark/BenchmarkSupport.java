@@ -0,0 +1,88 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.io.File;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
+
+/**
+ * This class provides the back end objects and meta data that are shared by the benchmarks.
+ */
+public class BenchmarkSupport
+{
+    /** Name of the system property that specifies the directory in which the benchmarks create their files. */
+    public final static String ROOT_PROPERTY = "org.openscada.hsdb.benchmark.root";
+
+    /** Directory in which the benchmarks create their files. */
+    public final static String ROOT = System.getProperty ( ROOT_PROPERTY, new File ( System.getProperty ( "java.io.tmpdir" ), "hsdb_benchmark" ).getPath () );
+
+    /**
+     * This method creates meta data for a storage channel that accepts values of any time.
+     * @param configurationId id of the configuration
+     * @param calculationMethod calculation method of the storage channel
+     * @param calculationMethodParameters parameters of the calculation method
+     * @param detailLevelId detail level of the storage channel
+     * @return created meta data
+     */
+    public static StorageChannelMetaData createMetaData ( final String configurationId, final CalculationMethod calculationMethod, final long[] calculationMethodParameters, final long detailLevelId )
+    {
+        return new StorageChannelMetaData ( configurationId, calculationMethod, calculationMethodParameters, detailLevelId, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.LONG_VALUE );
+    }
+
+    /**
+     * This method creates and initializes a new file back end object.
+     * An existing file with the same name will be replaced.
+     * @param name name of the file within the benchmark directory
+     * @param metaData meta data of the back end object
+     * @return created and initialized back end object
+     * @throws Exception in case of problems
+     */
+    public static FileBackEnd createFileBackEnd ( final String name, final StorageChannelMetaData metaData ) throws Exception
+    {
+        final File root = new File ( ROOT );
+        root.mkdirs ();
+        final File file = new File ( root, name );
+        file.delete ();
+        final FileBackEnd backEnd = new FileBackEnd ( file.getPath (), true );
+        backEnd.setLock ( new ReentrantReadWriteLock () );
+        backEnd.create ( metaData );
+        backEnd.initialize ( metaData );
+        return backEnd;
+    }
+
+    /**
+     * This method deinitializes the passed file back end object and deletes its file.
+     * @param backEnd back end object that has to be deleted or null
+     * @throws Exception in case of problems
+     */
+    public static void deleteFileBackEnd ( final FileBackEnd backEnd ) throws Exception
+    {
+        if ( backEnd != null )
+        {
+            backEnd.deinitialize ();
+            backEnd.delete ();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannelAdapter;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationLogicProviderFactoryImpl;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.utils.HsdbHelper;
+
+/**
+ * This class measures the cost of CalculatingStorageChannel.notifyNewValues for each compression level.
+ * Each call notifies the channel of one changed input value within the already processed time, so that the affected time span and its successor are calculated again.
+ * The compression levels calculate averages over one minute, one hour and one day of the native values that are stored with a time step of one second.
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class CalculatingStorageChannelBenchmark
+{
+    /** Time spans in milliseconds of the values of the compression levels. */
+    private final static long[] LEVEL_TIME_SPANS = new long[] { ValueGenerator.TIME_STEP, 60 * 1000L, 60 * 60 * 1000L, 24 * 60 * 60 * 1000L };
+
+    /** Time span in milliseconds that is covered by the native values. */
+    private final static long DATA_TIME_SPAN = 4 * LEVEL_TIME_SPANS[3];
+
+    /** Count of prepared notification times that are used cyclically. */
+    private final static int TIME_COUNT = 1024;
+
+    /** Compression level whose channel is notified. */
+    @Param ( { "1", "2", "3" } )
+    public int level;
+
+    /** Back end objects of all levels up to the notified level. */
+    private FileBackEnd[] backEnds;
+
+    /** Channel that is notified. */
+    private CalculatingStorageChannel storageChannel;
+
+    /** Times of the changed input values. */
+    private long[] times;
+
+    /** Index of the next notification time. */
+    private int index;
+
+    /**
+     * This method creates the back end objects of all levels up to the notified level and calculates their values.
+     * @throws Exception in case of problems
+     */
+    @Setup ( Level.Trial )
+    public void createStorageChannels () throws Exception
+    {
+        final CalculationLogicProviderFactoryImpl calculationLogicProviderFactory = new CalculationLogicProviderFactoryImpl ();
+        final ValueGenerator generator = new ValueGenerator ();
+        this.backEnds = new FileBackEnd[this.level + 1];
+        final ExtendedStorageChannel[] storageChannels = new ExtendedStorageChannel[this.level + 1];
+        final CalculationLogicProvider[] calculationLogicProviders = new CalculationLogicProvider[this.level + 1];
+        for ( int i = 0; i <= this.level; i++ )
+        {
+            final StorageChannelMetaData metaData = i == 0 ? BenchmarkSupport.createMetaData ( "calculation", CalculationMethod.NATIVE, new long[0], 0 ) : BenchmarkSupport.createMetaData ( "calculation", CalculationMethod.AVERAGE, new long[] { LEVEL_TIME_SPANS[i] }, i );
+            this.backEnds[i] = BenchmarkSupport.createFileBackEnd ( "calculation_" + i + ".va", metaData );
+            storageChannels[i] = new ExtendedStorageChannelAdapter ( this.backEnds[i] );
+            calculationLogicProviders[i] = calculationLogicProviderFactory.getCalculationLogicProvider ( metaData );
+            if ( i == 0 )
+            {
+                this.backEnds[i].updateLongValueBatch ( generator.createLongValueBatch ( 0, (int) ( DATA_TIME_SPAN / ValueGenerator.TIME_STEP ) ) );
+            }
+            else
+            {
+                HsdbHelper.processData ( storageChannels[i - 1], storageChannels[i], calculationLogicProviders[i - 1], calculationLogicProviders[i], 0, DATA_TIME_SPAN );
+            }
+        }
+        this.storageChannel = new CalculatingStorageChannel ( storageChannels[this.level], storageChannels[this.level - 1], calculationLogicProviders[this.level] );
+
+        // the changed values are located before the latest processed time span
+        this.times = generator.createStartTimes ( 0, DATA_TIME_SPAN - 2 * LEVEL_TIME_SPANS[this.level], TIME_COUNT );
+        this.index = 0;
+    }
+
+    /**
+     * This method deletes the back end objects.
+     * @throws Exception in case of problems
+     */
+    @TearDown ( Level.Trial )
+    public void deleteStorageChannels () throws Exception
+    {
+        for ( final FileBackEnd backEnd : this.backEnds )
+        {
+            BenchmarkSupport.deleteFileBackEnd ( backEnd );
+        }
+        this.backEnds = null;
+    }
+
+    /**
+     * This method notifies the channel of the next changed input value.
+     * @throws Exception in case of problems
+     */
+    @Benchmark
+    public void notifyNewValues () throws Exception
+    {
+        this.storageChannel.notifyNewValues ( new long[] { this.times[this.index] } );
+        this.index = ( this.index + 1 ) % TIME_COUNT;
+    }
+}
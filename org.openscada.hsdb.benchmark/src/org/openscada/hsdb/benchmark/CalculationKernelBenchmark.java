@@ -0,0 +1,111 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.hsdb.calculation.AverageCalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationKernel;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+
+/**
+ * This class compares the time that is required to calculate the average of one time span directly via CalculationKernel with the time that is required via the calculation logic provider.
+ * The provider is measured with a batch as input and with an array of value objects as input, which has to be converted to a batch first.
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.NANOSECONDS )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class CalculationKernelBenchmark
+{
+    /** Count of values within the time span. */
+    @Param ( { "60", "3600" } )
+    public int size;
+
+    /** Values of the time span as batch. */
+    private DoubleValueBatch batch;
+
+    /** Values of the time span as array of value objects. */
+    private DoubleValue[] values;
+
+    /** Provider calculating the average. */
+    private CalculationLogicProvider calculationLogicProvider;
+
+    /**
+     * This method generates the values of the time span.
+     */
+    @Setup ( Level.Trial )
+    public void createValues ()
+    {
+        this.batch = new ValueGenerator ().createDoubleValueBatch ( 0, this.size );
+        this.values = this.batch.toDoubleValues ();
+        this.calculationLogicProvider = new AverageCalculationLogicProvider ( DataType.DOUBLE_VALUE, DataType.DOUBLE_VALUE, new long[] { this.size * ValueGenerator.TIME_STEP } );
+    }
+
+    /**
+     * This method calculates the average directly via the kernel.
+     * @return calculated average
+     */
+    @Benchmark
+    public double kernel ()
+    {
+        final CalculationKernel kernel = new CalculationKernel ();
+        kernel.calculate ( this.batch );
+        return kernel.getDoubleAverage ();
+    }
+
+    /**
+     * This method calculates the average via the provider using the batch as input.
+     * @return calculated value
+     */
+    @Benchmark
+    public BaseValue providerBatch ()
+    {
+        return this.calculationLogicProvider.generateValue ( this.batch );
+    }
+
+    /**
+     * This method calculates the average via the provider using the array of value objects as input.
+     * @return calculated value
+     */
+    @Benchmark
+    public BaseValue providerArray ()
+    {
+        return this.calculationLogicProvider.generateValue ( this.values );
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.LongValue;
+
+/**
+ * This class measures the latency of FileBackEnd.getLongValues depending on the count of values within the requested time span.
+ * The start times of the requests are uniformly distributed over the stored values.
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.AverageTime )
+@OutputTimeUnit ( TimeUnit.MICROSECONDS )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class FileBackEndReadBenchmark
+{
+    /** Count of values that are stored in the back end object. */
+    public final static int VALUE_COUNT = 200000;
+
+    /** Count of prepared start times that are used cyclically. */
+    private final static int START_TIME_COUNT = 1024;
+
+    /** Count of values within the requested time span. */
+    @Param ( { "10", "1000", "100000" } )
+    public int rangeSize;
+
+    /** Back end object that is used for the benchmark. */
+    private FileBackEnd backEnd;
+
+    /** Start times of the requests. */
+    private long[] startTimes;
+
+    /** Index of the start time of the next request. */
+    private int index;
+
+    /**
+     * This method creates the back end object and stores the values.
+     * @throws Exception in case of problems
+     */
+    @Setup ( Level.Trial )
+    public void createBackEnd () throws Exception
+    {
+        final ValueGenerator generator = new ValueGenerator ();
+        this.backEnd = BenchmarkSupport.createFileBackEnd ( "read.va", BenchmarkSupport.createMetaData ( "read", CalculationMethod.NATIVE, new long[0], 0 ) );
+        this.backEnd.updateLongValueBatch ( generator.createLongValueBatch ( 0, VALUE_COUNT ) );
+        this.startTimes = generator.createStartTimes ( 0, ( VALUE_COUNT - this.rangeSize ) * ValueGenerator.TIME_STEP, START_TIME_COUNT );
+        this.index = 0;
+    }
+
+    /**
+     * This method deletes the back end object.
+     * @throws Exception in case of problems
+     */
+    @TearDown ( Level.Trial )
+    public void deleteBackEnd () throws Exception
+    {
+        BenchmarkSupport.deleteFileBackEnd ( this.backEnd );
+        this.backEnd = null;
+    }
+
+    /**
+     * This method reads the values of the next time span.
+     * @return read values
+     * @throws Exception in case of problems
+     */
+    @Benchmark
+    public LongValue[] getLongValues () throws Exception
+    {
+        final long startTime = this.startTimes[this.index];
+        this.index = ( this.index + 1 ) % START_TIME_COUNT;
+        return this.backEnd.getLongValues ( startTime, startTime + this.rangeSize * ValueGenerator.TIME_STEP );
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.LongValue;
+
+/**
+ * This class measures the throughput of FileBackEnd.updateLongs in values per second.
+ * In order mode each call appends values after all stored values.
+ * Out of order mode writes the odd time slots of the previous window together with the even time slots of the next window, so that half of the values of each call precede values that are already stored.
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.Throughput )
+@OutputTimeUnit ( TimeUnit.SECONDS )
+@OperationsPerInvocation ( FileBackEndWriteBenchmark.BATCH_SIZE )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class FileBackEndWriteBenchmark
+{
+    /** Count of values that are written per call. */
+    public final static int BATCH_SIZE = 1000;
+
+    /** Order in which the values are written. */
+    @Param ( { "inOrder", "outOfOrder" } )
+    public String order;
+
+    /** Back end object that is used for the benchmark. */
+    private FileBackEnd backEnd;
+
+    /** Generator of the values. */
+    private ValueGenerator generator;
+
+    /** Index of the next window of time slots. */
+    private long window;
+
+    /** Values that are written by the next call. */
+    private LongValue[] values;
+
+    /**
+     * This method creates an empty back end object before each iteration.
+     * @throws Exception in case of problems
+     */
+    @Setup ( Level.Iteration )
+    public void createBackEnd () throws Exception
+    {
+        this.backEnd = BenchmarkSupport.createFileBackEnd ( "write_" + this.order + ".va", BenchmarkSupport.createMetaData ( "write", CalculationMethod.NATIVE, new long[0], 0 ) );
+        this.generator = new ValueGenerator ();
+        this.window = 0;
+        if ( isOutOfOrder () )
+        {
+            // the even time slots of the first window are written in advance
+            this.backEnd.updateLongs ( selectSlots ( this.generator.createLongValues ( 0, BATCH_SIZE ), 0 ) );
+        }
+    }
+
+    /**
+     * This method deletes the back end object after each iteration.
+     * @throws Exception in case of problems
+     */
+    @TearDown ( Level.Iteration )
+    public void deleteBackEnd () throws Exception
+    {
+        BenchmarkSupport.deleteFileBackEnd ( this.backEnd );
+        this.backEnd = null;
+    }
+
+    /**
+     * This method generates the values of the next call, so that the generation is not part of the measurement.
+     */
+    @Setup ( Level.Invocation )
+    public void prepareValues ()
+    {
+        final long windowSpan = BATCH_SIZE * ValueGenerator.TIME_STEP;
+        if ( isOutOfOrder () )
+        {
+            final LongValue[] previousOddSlots = selectSlots ( this.generator.createLongValues ( this.window * windowSpan, BATCH_SIZE ), 1 );
+            final LongValue[] nextEvenSlots = selectSlots ( this.generator.createLongValues ( ( this.window + 1 ) * windowSpan, BATCH_SIZE ), 0 );
+            this.values = new LongValue[previousOddSlots.length + nextEvenSlots.length];
+            System.arraycopy ( previousOddSlots, 0, this.values, 0, previousOddSlots.length );
+            System.arraycopy ( nextEvenSlots, 0, this.values, previousOddSlots.length, nextEvenSlots.length );
+        }
+        else
+        {
+            this.values = this.generator.createLongValues ( this.window * windowSpan, BATCH_SIZE );
+        }
+        this.window++;
+    }
+
+    /**
+     * This method returns whether the values are written out of order.
+     * @return true, if the values are written out of order, otherwise false
+     */
+    private boolean isOutOfOrder ()
+    {
+        return "outOfOrder".equals ( this.order );
+    }
+
+    /**
+     * This method selects every second value of the passed array.
+     * @param values values from which has to be selected
+     * @param offset 0 to select the values at even indices, 1 to select the values at odd indices
+     * @return selected values
+     */
+    private static LongValue[] selectSlots ( final LongValue[] values, final int offset )
+    {
+        final LongValue[] result = new LongValue[values.length / 2];
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result[i] = values[i * 2 + offset];
+        }
+        return result;
+    }
+
+    /**
+     * This method writes the prepared values.
+     * @throws Exception in case of problems
+     */
+    @Benchmark
+    public void updateLongs () throws Exception
+    {
+        this.backEnd.updateLongs ( this.values );
+    }
+}
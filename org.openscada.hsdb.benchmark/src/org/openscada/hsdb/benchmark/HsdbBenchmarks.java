@@ -0,0 +1,205 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class runs all benchmarks of the package and records their results as baseline or compares their results with the recorded baseline.
+ * The benchmark classes have to be compiled with the JMH annotation processor on the class path.
+ * Usage: HsdbBenchmarks [record|compare] [benchmark name pattern].
+ * The result of a benchmark is a regression if it is worse than the baseline by more than the tolerance.
+ * In that case the process exits with status 1.
+ * The baseline records the JVM it has been measured with. Results that are measured with a different JVM are still compared, but a warning is printed since they are not comparable.
+ */
+public class HsdbBenchmarks
+{
+    /** Name of the system property that specifies the baseline file. */
+    public final static String BASELINE_PROPERTY = "org.openscada.hsdb.benchmark.baseline";
+
+    /** Name of the system property that specifies the tolerated relative deviation from the baseline. */
+    public final static String TOLERANCE_PROPERTY = "org.openscada.hsdb.benchmark.tolerance";
+
+    /** Baseline file that is used if none is specified. */
+    public final static String DEFAULT_BASELINE = "baseline/hsdb-benchmark.properties";
+
+    /** Tolerated relative deviation from the baseline that is used if none is specified. */
+    public final static double DEFAULT_TOLERANCE = 0.25;
+
+    /** Key of the JVM description within the baseline file. */
+    public final static String JVM_KEY = "jvm";
+
+    /**
+     * This method runs the benchmarks.
+     * @param args mode and optional name pattern of the benchmarks that have to be run
+     * @throws Exception in case of problems
+     */
+    public static void main ( final String[] args ) throws Exception
+    {
+        final boolean record = args.length > 0 && "record".equals ( args[0] );
+        final String include = args.length > 1 ? args[1] : HsdbBenchmarks.class.getPackage ().getName () + ".*Benchmark";
+        final File baselineFile = new File ( System.getProperty ( BASELINE_PROPERTY, DEFAULT_BASELINE ) );
+        final double tolerance = Double.parseDouble ( System.getProperty ( TOLERANCE_PROPERTY, "" + DEFAULT_TOLERANCE ) );
+
+        final Options options = new OptionsBuilder ().include ( include ).build ();
+        final Collection<RunResult> results = new Runner ( options ).run ();
+        if ( record )
+        {
+            recordBaseline ( baselineFile, results );
+        }
+        else if ( !compareWithBaseline ( baselineFile, results, tolerance ) )
+        {
+            System.exit ( 1 );
+        }
+    }
+
+    /**
+     * This method creates the key that identifies the passed benchmark including its parameters within the baseline file.
+     * @param params parameters of the benchmark
+     * @return key of the benchmark
+     */
+    private static String getKey ( final BenchmarkParams params )
+    {
+        final String benchmark = params.getBenchmark ();
+        final StringBuilder key = new StringBuilder ( benchmark.substring ( benchmark.lastIndexOf ( '.', benchmark.lastIndexOf ( '.' ) - 1 ) + 1 ) );
+        for ( final String paramKey : params.getParamsKeys () )
+        {
+            key.append ( '.' );
+            key.append ( paramKey );
+            key.append ( '-' );
+            key.append ( params.getParam ( paramKey ) );
+        }
+        return key.toString ();
+    }
+
+    /**
+     * This method returns a description of the running JVM.
+     * @return name and version of the JVM and the architecture
+     */
+    private static String getJvm ()
+    {
+        return String.format ( "%s %s, %s", System.getProperty ( "java.vm.name" ), System.getProperty ( "java.version" ), System.getProperty ( "os.arch" ) );
+    }
+
+    /**
+     * This method writes the results of the benchmarks to the baseline file.
+     * @param baselineFile file to which the results have to be written
+     * @param results results of the benchmarks
+     * @throws Exception if the file could not be written
+     */
+    private static void recordBaseline ( final File baselineFile, final Collection<RunResult> results ) throws Exception
+    {
+        final Properties baseline = new Properties ();
+        for ( final RunResult result : results )
+        {
+            final String key = getKey ( result.getParams () );
+            baseline.setProperty ( key, String.format ( Locale.ENGLISH, "%.3f", result.getPrimaryResult ().getScore () ) );
+            baseline.setProperty ( key + ".unit", result.getPrimaryResult ().getScoreUnit () );
+        }
+        baseline.setProperty ( JVM_KEY, getJvm () );
+        final File parent = baselineFile.getAbsoluteFile ().getParentFile ();
+        if ( parent != null )
+        {
+            parent.mkdirs ();
+        }
+        final OutputStream stream = new FileOutputStream ( baselineFile );
+        try
+        {
+            baseline.store ( stream, String.format ( "hsdb benchmark baseline (%s)", getJvm () ) );
+        }
+        finally
+        {
+            stream.close ();
+        }
+        System.out.println ( String.format ( "baseline written to '%s'", baselineFile.getPath () ) );
+    }
+
+    /**
+     * This method compares the results of the benchmarks with the baseline file.
+     * Results for which no baseline is recorded are reported, but are not treated as regression.
+     * @param baselineFile file containing the baseline
+     * @param results results of the benchmarks
+     * @param tolerance tolerated relative deviation from the baseline
+     * @return true, if no result is worse than the baseline by more than the tolerance, otherwise false
+     * @throws Exception if the baseline file could not be read
+     */
+    private static boolean compareWithBaseline ( final File baselineFile, final Collection<RunResult> results, final double tolerance ) throws Exception
+    {
+        final Properties baseline = new Properties ();
+        final InputStream stream = new FileInputStream ( baselineFile );
+        try
+        {
+            baseline.load ( stream );
+        }
+        finally
+        {
+            stream.close ();
+        }
+        final String baselineJvm = baseline.getProperty ( JVM_KEY );
+        if ( !getJvm ().equals ( baselineJvm ) )
+        {
+            System.out.println ( String.format ( "WARNING: the baseline has been recorded with '%s', but the benchmarks run with '%s'", baselineJvm, getJvm () ) );
+        }
+        final List<String> regressions = new ArrayList<String> ();
+        for ( final RunResult result : results )
+        {
+            final String key = getKey ( result.getParams () );
+            final double score = result.getPrimaryResult ().getScore ();
+            final String unit = result.getPrimaryResult ().getScoreUnit ();
+            final String baselineScore = baseline.getProperty ( key );
+            if ( baselineScore == null || !unit.equals ( baseline.getProperty ( key + ".unit" ) ) )
+            {
+                System.out.println ( String.format ( Locale.ENGLISH, "%-80s %12.3f %s (no baseline)", key, score, unit ) );
+                continue;
+            }
+            final double expectedScore = Double.parseDouble ( baselineScore );
+
+            // higher is better for throughput, lower is better for all time based modes
+            final double change = result.getParams ().getMode () == Mode.Throughput ? expectedScore / score - 1 : score / expectedScore - 1;
+            final boolean regression = change > tolerance;
+            System.out.println ( String.format ( Locale.ENGLISH, "%-80s %12.3f %s (baseline %.3f, %+.1f%% worse)%s", key, score, unit, expectedScore, change * 100, regression ? " REGRESSION" : "" ) );
+            if ( regression )
+            {
+                regressions.add ( key );
+            }
+        }
+        if ( !regressions.isEmpty () )
+        {
+            System.out.println ( String.format ( "%s benchmark(s) are worse than the baseline by more than %.0f%%: %s", regressions.size (), tolerance * 100, regressions ) );
+        }
+        return regressions.isEmpty ();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannelAdapter;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationLogicProviderFactoryImpl;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.utils.HsdbHelper;
+
+/**
+ * This class measures the throughput of HsdbHelper.processData in processed input values per second.
+ * Each call calculates the averages over one minute of one day of native values that are stored with a time step of one second.
+ */
+@State ( Scope.Thread )
+@BenchmarkMode ( Mode.Throughput )
+@OutputTimeUnit ( TimeUnit.SECONDS )
+@OperationsPerInvocation ( HsdbHelperBenchmark.VALUE_COUNT )
+@Warmup ( iterations = 3, time = 1 )
+@Measurement ( iterations = 5, time = 1 )
+@Fork ( 1 )
+public class HsdbHelperBenchmark
+{
+    /** Count of input values that are processed per call. */
+    public final static int VALUE_COUNT = 24 * 60 * 60;
+
+    /** Time span in milliseconds of the calculated values. */
+    private final static long OUTPUT_TIME_SPAN = 60 * 1000L;
+
+    /** Back end object containing the input values. */
+    private FileBackEnd inputBackEnd;
+
+    /** Back end object receiving the calculated values. */
+    private FileBackEnd outputBackEnd;
+
+    /** Channel providing the input values. */
+    private ExtendedStorageChannel inputChannel;
+
+    /** Channel receiving the calculated values. */
+    private ExtendedStorageChannel outputChannel;
+
+    /** Logic provider of the input values. */
+    private CalculationLogicProvider inputCalculationLogicProvider;
+
+    /** Logic provider of the calculated values. */
+    private CalculationLogicProvider outputCalculationLogicProvider;
+
+    /**
+     * This method creates the back end objects and stores the input values.
+     * @throws Exception in case of problems
+     */
+    @Setup ( Level.Trial )
+    public void createBackEnds () throws Exception
+    {
+        final CalculationLogicProviderFactoryImpl calculationLogicProviderFactory = new CalculationLogicProviderFactoryImpl ();
+        final StorageChannelMetaData inputMetaData = BenchmarkSupport.createMetaData ( "process", CalculationMethod.NATIVE, new long[0], 0 );
+        final StorageChannelMetaData outputMetaData = BenchmarkSupport.createMetaData ( "process", CalculationMethod.AVERAGE, new long[] { OUTPUT_TIME_SPAN }, 1 );
+        this.inputBackEnd = BenchmarkSupport.createFileBackEnd ( "process_0.va", inputMetaData );
+        this.outputBackEnd = BenchmarkSupport.createFileBackEnd ( "process_1.va", outputMetaData );
+        this.inputBackEnd.updateLongValueBatch ( new ValueGenerator ().createLongValueBatch ( 0, VALUE_COUNT ) );
+        this.inputChannel = new ExtendedStorageChannelAdapter ( this.inputBackEnd );
+        this.outputChannel = new ExtendedStorageChannelAdapter ( this.outputBackEnd );
+        this.inputCalculationLogicProvider = calculationLogicProviderFactory.getCalculationLogicProvider ( inputMetaData );
+        this.outputCalculationLogicProvider = calculationLogicProviderFactory.getCalculationLogicProvider ( outputMetaData );
+    }
+
+    /**
+     * This method deletes the back end objects.
+     * @throws Exception in case of problems
+     */
+    @TearDown ( Level.Trial )
+    public void deleteBackEnds () throws Exception
+    {
+        BenchmarkSupport.deleteFileBackEnd ( this.inputBackEnd );
+        BenchmarkSupport.deleteFileBackEnd ( this.outputBackEnd );
+    }
+
+    /**
+     * This method calculates the values of the complete day.
+     * Values that have been calculated by previous calls are replaced.
+     * @throws Exception in case of problems
+     */
+    @Benchmark
+    public void processData () throws Exception
+    {
+        HsdbHelper.processData ( this.inputChannel, this.outputChannel, this.inputCalculationLogicProvider, this.outputCalculationLogicProvider, 0, VALUE_COUNT * ValueGenerator.TIME_STEP );
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.benchmark;
+
+import java.util.Random;
+
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This class generates the values that are used by the benchmarks.
+ * All values are derived from a fixed seed, so that each run of a benchmark processes exactly the same data.
+ */
+public class ValueGenerator
+{
+    /** Seed that is used for all generated values. */
+    public final static long SEED = 0x4853444242454e43L;
+
+    /** Time span in milliseconds between two consecutive values. */
+    public final static long TIME_STEP = 1000;
+
+    /** Random number generator providing the values and the order of the time stamps. */
+    private final Random random;
+
+    /**
+     * Constructor.
+     */
+    public ValueGenerator ()
+    {
+        this.random = new Random ( SEED );
+    }
+
+    /**
+     * This method returns the next value of a random walk.
+     * @param previousValue previous value of the random walk
+     * @return next value of the random walk
+     */
+    private long nextValue ( final long previousValue )
+    {
+        return previousValue + this.random.nextInt ( 201 ) - 100;
+    }
+
+    /**
+     * This method generates values with consecutive time stamps.
+     * @param startTime time stamp of the first value
+     * @param count count of values that have to be generated
+     * @return generated values sorted by time stamp
+     */
+    public LongValue[] createLongValues ( final long startTime, final int count )
+    {
+        final LongValue[] values = new LongValue[count];
+        long value = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            value = nextValue ( value );
+            values[i] = new LongValue ( startTime + i * TIME_STEP, 1, 0, 1, value );
+        }
+        return values;
+    }
+
+    /**
+     * This method generates values with consecutive time stamps and shuffles their order.
+     * @param startTime time stamp of the earliest value
+     * @param count count of values that have to be generated
+     * @return generated values in random order
+     */
+    public LongValue[] createShuffledLongValues ( final long startTime, final int count )
+    {
+        final LongValue[] values = createLongValues ( startTime, count );
+        for ( int i = count - 1; i > 0; i-- )
+        {
+            final int j = this.random.nextInt ( i + 1 );
+            final LongValue value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+        return values;
+    }
+
+    /**
+     * This method generates a batch of values with consecutive time stamps.
+     * @param startTime time stamp of the first value
+     * @param count count of values that have to be generated
+     * @return generated values sorted by time stamp
+     */
+    public LongValueBatch createLongValueBatch ( final long startTime, final int count )
+    {
+        final LongValueBatch values = new LongValueBatch ( count );
+        long value = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            value = nextValue ( value );
+            values.add ( startTime + i * TIME_STEP, 1, 0, 1, value );
+        }
+        return values;
+    }
+
+    /**
+     * This method generates a batch of values with consecutive time stamps.
+     * Some values have a reduced quality so that the calculation of the quality indicator is part of the measured work.
+     * @param startTime time stamp of the first value
+     * @param count count of values that have to be generated
+     * @return generated values sorted by time stamp
+     */
+    public DoubleValueBatch createDoubleValueBatch ( final long startTime, final int count )
+    {
+        final DoubleValueBatch values = new DoubleValueBatch ( count );
+        double value = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+            value += this.random.nextGaussian ();
+            values.add ( startTime + i * TIME_STEP, this.random.nextInt ( 100 ) == 0 ? 0 : 1, 0, 1, value );
+        }
+        return values;
+    }
+
+    /**
+     * This method generates start times for read requests that are uniformly distributed over the passed time span.
+     * @param startTime earliest start time
+     * @param endTime latest start time
+     * @param count count of start times that have to be generated
+     * @return generated start times as multiples of {@link #TIME_STEP}
+     */
+    public long[] createStartTimes ( final long startTime, final long endTime, final int count )
+    {
+        final long[] startTimes = new long[count];
+        final int slots = (int)Math.max ( 1, ( endTime - startTime ) / TIME_STEP );
+        for ( int i = 0; i < count; i++ )
+        {
+            startTimes[i] = startTime + this.random.nextInt ( slots ) * TIME_STEP;
+        }
+        return startTimes;
+    }
+}
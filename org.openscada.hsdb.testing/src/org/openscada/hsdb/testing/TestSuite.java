@@ -21,14 +21,20 @@ package org.openscada.hsdb.testing;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import org.openscada.hsdb.testing.calculation.CalculationKernelTest;
+import org.openscada.hsdb.testing.calculation.SliceBatchTest;
+import org.openscada.hsdb.testing.compression.BoundedSerialExecutorTest;
 import org.openscada.hsdb.testing.compression.CalculatingStorageChannelTest;
+import org.openscada.hsdb.testing.compression.IncrementalCalculationTest;
+import org.openscada.hsdb.testing.compression.ParallelFanOutTest;
+import org.openscada.hsdb.testing.compression.RecentValueCacheTest;
 
 /**
  * This class can be used as test entry point to perform all available tests for service classes.
  * @author Ludwig Straub
  */
 @RunWith ( Suite.class )
-@Suite.SuiteClasses ( { CalculatingStorageChannelTest.class } )
+@Suite.SuiteClasses ( { CalculatingStorageChannelTest.class, IncrementalCalculationTest.class, RecentValueCacheTest.class, ParallelFanOutTest.class, BoundedSerialExecutorTest.class, CalculationKernelTest.class, SliceBatchTest.class } )
 public class TestSuite
 {
 }
@@ -24,10 +24,13 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.ValueCursor;
 import org.openscada.hsdb.backend.BackEnd;
 import org.openscada.hsdb.calculation.CalculationMethod;
 import org.openscada.hsdb.datatypes.DataType;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.utils.HsdbHelper;
 
 /**
  * Test class provides methods for testing implementations of interface org.openscada.hsdb.testing.backend.BackEnd.
@@ -122,6 +125,71 @@ public abstract class BackEndTestBase
         Assert.assertEquals ( MAX_COUNT, this.backEnd.getLongValues ( 0, MAX_COUNT + 1 ).length );
     }
 
+    /**
+     * Test for adding and selecting lots of long values as batch using the storage channel backend.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRapidLong1DataBatchInsert () throws Exception
+    {
+        final LongValueBatch valuesToInsert = new LongValueBatch ( MAX_COUNT );
+        for ( int i = MAX_COUNT - 1; i >= 0; i-- )
+        {
+            valuesToInsert.add ( i, 100, 0, 1, i * 2 );
+        }
+        HsdbHelper.updateLongValueBatch ( this.backEnd, valuesToInsert );
+        final LongValueBatch values = HsdbHelper.getLongValueBatch ( this.backEnd, 0, MAX_COUNT + 1 );
+        Assert.assertEquals ( MAX_COUNT, values.getSize () );
+        Assert.assertTrue ( values.isSortedByTime () );
+        for ( int i = 0; i < MAX_COUNT; i++ )
+        {
+            Assert.assertEquals ( i, values.getTime ( i ) );
+            Assert.assertEquals ( i * 2, values.getValue ( i ) );
+        }
+        Assert.assertEquals ( 4, HsdbHelper.getLongValueBatch ( this.backEnd, 201, 205 ).getSize () );
+    }
+
+    /**
+     * Test for reading long values via a cursor from the storage channel backend.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testLongValueCursor () throws Exception
+    {
+        final LongValueBatch valuesToInsert = new LongValueBatch ( MAX_COUNT );
+        for ( int i = 0; i < MAX_COUNT; i++ )
+        {
+            valuesToInsert.add ( i * 2, 100, 0, 1, i );
+        }
+        HsdbHelper.updateLongValueBatch ( this.backEnd, valuesToInsert );
+        final long[][] timeSpans = new long[][] { { 0, MAX_COUNT * 2 }, { 201, 401 }, { MAX_COUNT * 4, MAX_COUNT * 5 }, { 300, 300 } };
+        for ( final long[] timeSpan : timeSpans )
+        {
+            final LongValueBatch expectedValues = HsdbHelper.getLongValueBatch ( this.backEnd, timeSpan[0], timeSpan[1] );
+            final LongValueBatch values = new LongValueBatch ( 0 );
+            final ValueCursor<LongValueBatch> cursor = HsdbHelper.getLongValueCursor ( this.backEnd, timeSpan[0], timeSpan[1] );
+            try
+            {
+                while ( cursor.hasNext () )
+                {
+                    values.addAll ( cursor.next () );
+                }
+                Assert.assertTrue ( cursor.next ().isEmpty () );
+            }
+            finally
+            {
+                cursor.close ();
+            }
+            Assert.assertEquals ( expectedValues.getSize (), values.getSize () );
+            for ( int i = 0; i < values.getSize (); i++ )
+            {
+                Assert.assertEquals ( expectedValues.getTime ( i ), values.getTime ( i ) );
+                Assert.assertEquals ( expectedValues.getValue ( i ), values.getValue ( i ) );
+            }
+        }
+        Assert.assertEquals ( 101, HsdbHelper.getLongValueBatch ( this.backEnd, 201, 401 ).getSize () );
+    }
+
     /**
      * This method deletes the created data after the test.
      * @throws Exception in case of problems
@@ -0,0 +1,163 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
+
+/**
+ * Test class for the bulk import of method org.openscada.hsdb.backend.BackEndManagerBase#importValues.
+ * The results of the import are compared with the results of storing the same values via the storage channel tree.
+ */
+public class BulkImportTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_import_test";
+
+    /** Calculation methods that are used for the compressed levels. */
+    private final static CalculationMethod[] CALCULATION_METHODS = new CalculationMethod[] { CalculationMethod.AVERAGE, CalculationMethod.MINIMUM, CalculationMethod.MAXIMUM };
+
+    /** Count of values that are imported. */
+    private final static int VALUE_COUNT = 20000;
+
+    /** Managers that have been created during the test. */
+    private final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        for ( final FileBackEndManager manager : this.managers )
+        {
+            manager.deinitialize ();
+            manager.delete ();
+        }
+        this.managers.clear ();
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method creates a new manager for a configuration with two compressed levels.
+     * @param configurationId id of the configuration
+     * @return initialized manager
+     * @throws Exception in case of problems
+     */
+    private FileBackEndManager createManager ( final String configurationId ) throws Exception
+    {
+        final List<StorageChannelMetaData> metaDatas = new ArrayList<StorageChannelMetaData> ();
+        metaDatas.add ( new StorageChannelMetaData ( configurationId, CalculationMethod.NATIVE, new long[0], 0, 0, 200000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) );
+        for ( final CalculationMethod calculationMethod : CALCULATION_METHODS )
+        {
+            metaDatas.add ( new StorageChannelMetaData ( configurationId, calculationMethod, new long[] { 1000 }, 1, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) );
+            metaDatas.add ( new StorageChannelMetaData ( configurationId, calculationMethod, new long[] { 10000 }, 2, 0, 10000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) );
+        }
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( metaDatas.toArray ( new StorageChannelMetaData[metaDatas.size ()] ) );
+        final FileBackEndFactory backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        final FileBackEndManagerFactory backEndManagerFactory = new FileBackEndManagerFactory ( backEndFactory );
+        backEndFactory.deleteBackEnds ( configurationId );
+        final FileBackEndManager manager = backEndManagerFactory.getBackEndManager ( configuration, true );
+        manager.initialize ();
+        this.managers.add ( manager );
+        return manager;
+    }
+
+    /**
+     * This method compares the values that have been imported in bulk with the values that have been stored via the storage channel tree.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testImport () throws Exception
+    {
+        // create input data spanning several fragments of each level
+        final Random random = new Random ( 4711 );
+        final DoubleValueBatch values = new DoubleValueBatch ( VALUE_COUNT );
+        long time = 1000000;
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            time += 1 + random.nextInt ( 400 );
+            values.add ( time, i % 7 == 0 ? 0.0 : 1.0, 0, 1, random.nextInt ( 1000 ) / 10.0 );
+        }
+
+        // store the values via the storage channel tree
+        final FileBackEndManager liveManager = createManager ( "BulkImportTestLive" );
+        final CalculatingStorageChannel rootStorageChannel = liveManager.buildStorageChannelTree ();
+        final DoubleValue[] doubleValues = values.toDoubleValues ();
+        for ( int i = 0; i < doubleValues.length; i += 1000 )
+        {
+            final DoubleValue[] chunk = new DoubleValue[Math.min ( 1000, doubleValues.length - i )];
+            System.arraycopy ( doubleValues, i, chunk, 0, chunk.length );
+            rootStorageChannel.updateDoubles ( chunk );
+        }
+        liveManager.releaseStorageChannelTree ();
+
+        // import the values
+        final FileBackEndManager importManager = createManager ( "BulkImportTestImport" );
+        Assert.assertEquals ( VALUE_COUNT, importManager.importValues ( new SingleBatchValueCursor<DoubleValueBatch> ( values, new DoubleValueBatch ( 0 ) ) ) );
+        Assert.assertTrue ( Conversions.parseLong ( importManager.getConfiguration ().getData ().get ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT ), 0 ) > 1 );
+
+        // compare the results
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> expectedStructure = liveManager.buildStorageChannelStructure ();
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> actualStructure = importManager.buildStorageChannelStructure ();
+        Assert.assertEquals ( 3, actualStructure.size () );
+        for ( final Map.Entry<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> levelEntry : expectedStructure.entrySet () )
+        {
+            for ( final Map.Entry<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>> methodEntry : levelEntry.getValue ().entrySet () )
+            {
+                final ExtendedStorageChannel expectedChannel = methodEntry.getValue ().keySet ().iterator ().next ();
+                final ExtendedStorageChannel actualChannel = actualStructure.get ( levelEntry.getKey () ).get ( methodEntry.getKey () ).keySet ().iterator ().next ();
+                final DoubleValue[] expected = expectedChannel.getDoubleValues ( 0, Long.MAX_VALUE );
+                final DoubleValue[] actual = actualChannel.getDoubleValues ( 0, Long.MAX_VALUE );
+                Assert.assertTrue ( expected.length > 1 );
+                Assert.assertEquals ( String.format ( "level %s, method %s", levelEntry.getKey (), methodEntry.getKey () ), expected.length, actual.length );
+                for ( int i = 0; i < expected.length; i++ )
+                {
+                    Assert.assertEquals ( expected[i].getTime (), actual[i].getTime () );
+                    Assert.assertEquals ( expected[i].getValue (), actual[i].getValue (), 1e-9 );
+                    Assert.assertEquals ( expected[i].getQualityIndicator (), actual[i].getQualityIndicator (), 1e-9 );
+                    Assert.assertEquals ( expected[i].getBaseValueCount (), actual[i].getBaseValueCount () );
+                }
+            }
+        }
+    }
+}
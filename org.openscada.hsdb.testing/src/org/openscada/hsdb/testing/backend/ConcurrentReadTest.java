@@ -0,0 +1,352 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEndMultiplexer;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.concurrent.SharedThreadPool;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * Test class for reading several back end fragments concurrently.
+ */
+public class ConcurrentReadTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_concurrent_read_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "ConcurrentReadTest";
+
+    /** Time span in milliseconds that is covered by each back end fragment. */
+    private final static long FRAGMENT_TIMESPAN = 1000;
+
+    /** Count of back end fragments that contain values. */
+    private final static int FRAGMENT_COUNT = 16;
+
+    /** Time span in milliseconds between two stored values. */
+    private final static long TIME_STEP = 10;
+
+    /** Count of threads that read concurrently. */
+    private final static int READER_COUNT = 8;
+
+    /** Count of read operations per thread. */
+    private final static int READ_COUNT = 20;
+
+    /** Count of values that are inserted while other threads read. */
+    private final static int INSERT_COUNT = 200;
+
+    /** Maximum time in seconds to wait for tasks to complete. */
+    private final static long TIMEOUT = 30;
+
+    /** Meta data of the storage channel that is used for the test. */
+    private StorageChannelMetaData metaData;
+
+    /** Factory that is used to create back end objects. */
+    private FileBackEndFactory backEndFactory;
+
+    /** Manager that is used for the test. */
+    private FileBackEndManager manager;
+
+    /**
+     * This method creates a manager and stores values within several back end fragments.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        this.metaData = new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.LONG_VALUE );
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( new StorageChannelMetaData[] { this.metaData } );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 0, FRAGMENT_TIMESPAN + Conversions.MILLISECOND_SPAN_SUFFIX );
+        this.backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        this.backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        this.manager = new FileBackEndManagerFactory ( this.backEndFactory ).getBackEndManager ( configuration, true );
+        this.manager.initialize ();
+        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( this.manager );
+        backEnd.initialize ( this.metaData );
+        final LongValue[] values = new LongValue[(int) ( FRAGMENT_COUNT * FRAGMENT_TIMESPAN / TIME_STEP )];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[i] = new LongValue ( i * TIME_STEP, 1.0, 0, 1, i );
+        }
+        backEnd.updateLongs ( values );
+        backEnd.deinitialize ();
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        this.manager.deinitialize ();
+        this.manager.delete ();
+        this.backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method asserts that the passed batch contains the values of the specified time span in ascending order.
+     * @param values batch that has to be checked
+     * @param startTime start of the time span that has been read
+     * @param endTime end of the time span that has been read
+     */
+    private static void assertValues ( final LongValueBatch values, final long startTime, final long endTime )
+    {
+        Assert.assertEquals ( ( endTime - startTime ) / TIME_STEP, values.getSize () );
+        for ( int i = 0; i < values.getSize (); i++ )
+        {
+            Assert.assertEquals ( startTime + i * TIME_STEP, values.getTime ( i ) );
+            Assert.assertEquals ( startTime / TIME_STEP + i, values.getValue ( i ) );
+        }
+    }
+
+    /**
+     * This method tests that several threads that read all back end fragments at the same time get complete results in ascending time order.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testConcurrentReads () throws Exception
+    {
+        Assert.assertNotNull ( this.manager.getReadExecutor () );
+        final ExecutorService readers = Executors.newFixedThreadPool ( READER_COUNT );
+        try
+        {
+            final List<Future<Object>> futures = new ArrayList<Future<Object>> ();
+            for ( int i = 0; i < READER_COUNT; i++ )
+            {
+                final long startTime = i * TIME_STEP;
+                futures.add ( readers.submit ( new Callable<Object> () {
+                    public Object call () throws Exception
+                    {
+                        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( ConcurrentReadTest.this.manager );
+                        backEnd.initialize ( ConcurrentReadTest.this.metaData );
+                        try
+                        {
+                            for ( int j = 0; j < READ_COUNT; j++ )
+                            {
+                                assertValues ( backEnd.getLongValueBatch ( startTime, FRAGMENT_COUNT * FRAGMENT_TIMESPAN ), startTime, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+                            }
+                        }
+                        finally
+                        {
+                            backEnd.deinitialize ();
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+            for ( final Future<Object> future : futures )
+            {
+                future.get ( TIMEOUT, TimeUnit.SECONDS );
+            }
+        }
+        finally
+        {
+            readers.shutdownNow ();
+        }
+    }
+
+    /**
+     * This method tests that inserted values are visible to queries while other threads query the same back end fragments concurrently.
+     * The state of the new back end fragments is determined lazily by the queries, so it must never hide a value that has already been inserted.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testConcurrentInsertAndQuery () throws Exception
+    {
+        final long insertStartTime = FRAGMENT_COUNT * FRAGMENT_TIMESPAN;
+        final AtomicBoolean running = new AtomicBoolean ( true );
+        final ExecutorService readers = Executors.newFixedThreadPool ( READER_COUNT );
+        try
+        {
+            final List<Future<Object>> futures = new ArrayList<Future<Object>> ();
+            for ( int i = 0; i < READER_COUNT; i++ )
+            {
+                futures.add ( readers.submit ( new Callable<Object> () {
+                    public Object call () throws Exception
+                    {
+                        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( ConcurrentReadTest.this.manager );
+                        backEnd.initialize ( ConcurrentReadTest.this.metaData );
+                        try
+                        {
+                            while ( running.get () )
+                            {
+                                backEnd.getLongValues ( insertStartTime, Long.MAX_VALUE );
+                            }
+                        }
+                        finally
+                        {
+                            backEnd.deinitialize ();
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+
+            // each value is written to a new back end fragment and has to be visible as soon as it has been written
+            final BackEndMultiplexer writer = new BackEndMultiplexer ( this.manager );
+            writer.initialize ( this.metaData );
+            final BackEndMultiplexer reader = new BackEndMultiplexer ( this.manager );
+            reader.initialize ( this.metaData );
+            try
+            {
+                for ( int i = 0; i < INSERT_COUNT; i++ )
+                {
+                    final long time = insertStartTime + i * FRAGMENT_TIMESPAN + TIME_STEP;
+                    writer.updateLong ( new LongValue ( time, 1.0, 0, 1, i ) );
+                    final LongValue[] values = reader.getLongValues ( time, time + 1 );
+                    Assert.assertEquals ( 1, values.length );
+                    Assert.assertEquals ( time, values[0].getTime () );
+                    Assert.assertEquals ( i, values[0].getValue () );
+                }
+            }
+            finally
+            {
+                running.set ( false );
+                writer.deinitialize ();
+                reader.deinitialize ();
+            }
+            for ( final Future<Object> future : futures )
+            {
+                future.get ( TIMEOUT, TimeUnit.SECONDS );
+            }
+        }
+        finally
+        {
+            readers.shutdownNow ();
+        }
+    }
+
+    /**
+     * This method tests that the manager only provides a read executor while it is initialized.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testReadExecutorLifecycle () throws Exception
+    {
+        this.manager.deinitialize ();
+        Assert.assertNull ( this.manager.getReadExecutor () );
+        this.manager.initialize ();
+        Assert.assertNotNull ( this.manager.getReadExecutor () );
+        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( this.manager );
+        backEnd.initialize ( this.metaData );
+        assertValues ( backEnd.getLongValueBatch ( 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN ), 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+        backEnd.deinitialize ();
+    }
+
+    /**
+     * This method tests that tasks that cannot be queued are executed within the calling thread and that the pool is shut down when it is released by the last user.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testSharedThreadPool () throws Exception
+    {
+        final SharedThreadPool pool = new SharedThreadPool ( "ConcurrentReadTest", 1, 1 );
+        pool.acquire ();
+        pool.acquire ();
+        Assert.assertTrue ( pool.isRunning () );
+
+        // the only thread of the pool is blocked and a second task fills the queue
+        final CountDownLatch started = new CountDownLatch ( 1 );
+        final CountDownLatch blocker = new CountDownLatch ( 1 );
+        final CountDownLatch completed = new CountDownLatch ( 2 );
+        pool.execute ( new Runnable () {
+            public void run ()
+            {
+                started.countDown ();
+                try
+                {
+                    blocker.await ();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+                completed.countDown ();
+            }
+        } );
+        Assert.assertTrue ( started.await ( TIMEOUT, TimeUnit.SECONDS ) );
+        pool.execute ( new Runnable () {
+            public void run ()
+            {
+                completed.countDown ();
+            }
+        } );
+
+        // further tasks are executed within the calling thread
+        final AtomicReference<Thread> thread = new AtomicReference<Thread> ();
+        pool.execute ( new Runnable () {
+            public void run ()
+            {
+                thread.set ( Thread.currentThread () );
+            }
+        } );
+        Assert.assertSame ( Thread.currentThread (), thread.get () );
+        Assert.assertEquals ( 1, pool.getCallerRunsCount () );
+        blocker.countDown ();
+        Assert.assertTrue ( completed.await ( TIMEOUT, TimeUnit.SECONDS ) );
+
+        // the pool keeps running until it has been released by all users
+        pool.release ();
+        Assert.assertTrue ( pool.isRunning () );
+        pool.release ();
+        Assert.assertFalse ( pool.isRunning () );
+        thread.set ( null );
+        pool.execute ( new Runnable () {
+            public void run ()
+            {
+                thread.set ( Thread.currentThread () );
+            }
+        } );
+        Assert.assertSame ( Thread.currentThread (), thread.get () );
+        Assert.assertEquals ( 2, pool.getCallerRunsCount () );
+
+        // the pool is started again if it is acquired again
+        pool.acquire ();
+        Assert.assertTrue ( pool.isRunning () );
+        pool.release ();
+    }
+}
@@ -20,7 +20,10 @@
 package org.openscada.hsdb.testing.backend;
 
 import java.io.File;
+import java.io.RandomAccessFile;
 
+import org.junit.Assert;
+import org.junit.Test;
 import org.openscada.hsdb.StorageChannelMetaData;
 import org.openscada.hsdb.backend.BackEnd;
 import org.openscada.hsdb.backend.BackEndMultiplexer;
@@ -29,6 +32,11 @@ import org.openscada.hsdb.backend.file.FileBackEndManager;
 import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
 import org.openscada.hsdb.configuration.Configuration;
 import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.metrics.Counter;
+import org.openscada.hsdb.metrics.Metrics;
+import org.openscada.hsdb.utils.HsdbHelper;
 
 /**
  * Test class for following classes:
@@ -70,6 +78,94 @@ public class FileBackEndMultiplexorTest extends BackEndTestBase
         return backEnd;
     }
 
+    /**
+     * Test for adding unsorted values that span several back end fragments as batch and as array.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testMultiFragmentInsert () throws Exception
+    {
+        final int fragmentCount = 4;
+        final LongValueBatch valuesToInsert = new LongValueBatch ( MAX_COUNT * fragmentCount / 2 );
+        final LongValue[] arrayValuesToInsert = new LongValue[MAX_COUNT * fragmentCount / 2];
+        for ( int i = 0; i < MAX_COUNT * fragmentCount / 2; i++ )
+        {
+            // interleave the values of the different fragments
+            final long time = ( i % fragmentCount ) * MAX_COUNT + ( i / fragmentCount ) * 2;
+            valuesToInsert.add ( time, 100, 0, 1, time );
+            arrayValuesToInsert[i] = new LongValue ( time + 1, 100, 0, 1, time + 1 );
+        }
+        HsdbHelper.updateLongValueBatch ( this.backEnd, valuesToInsert );
+        this.backEnd.updateLongs ( arrayValuesToInsert );
+        final LongValueBatch values = HsdbHelper.getLongValueBatch ( this.backEnd, 0, MAX_COUNT * fragmentCount );
+        Assert.assertEquals ( MAX_COUNT * fragmentCount, values.getSize () );
+        for ( int i = 0; i < values.getSize (); i++ )
+        {
+            Assert.assertEquals ( i, values.getTime ( i ) );
+            Assert.assertEquals ( i, values.getValue ( i ) );
+        }
+    }
+
+    /**
+     * Test for adding values that span several back end fragments whereby one of the fragments cannot be written.
+     * Only the values of the failing fragment are dropped and the values of all other fragments are written exactly once.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testMultiFragmentInsertWithFailingFragment () throws Exception
+    {
+        final int fragmentCount = 4;
+        for ( int i = 0; i < fragmentCount; i++ )
+        {
+            this.backEnd.updateLong ( new LongValue ( i * MAX_COUNT, 100, 0, 1, i * MAX_COUNT ) );
+        }
+        this.manager.freeRelatedResourced ( this.backEnd );
+
+        // destroy the second fragment
+        final FileBackEndFactory backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        String fileName = null;
+        for ( final StorageChannelMetaData metaData : backEndFactory.getExistingBackEndsMetaData ( this.manager.getConfiguration ().getId (), false ) )
+        {
+            if ( metaData.getStartTime () == MAX_COUNT )
+            {
+                fileName = backEndFactory.generateFileName ( metaData );
+            }
+        }
+        Assert.assertNotNull ( fileName );
+        final RandomAccessFile file = new RandomAccessFile ( fileName, "rw" );
+        try
+        {
+            file.setLength ( 3 );
+        }
+        finally
+        {
+            file.close ();
+        }
+
+        // insert the remaining values of all fragments as one batch. each fragment is looked up once, even the one that fails
+        final Counter lookupCounter = Metrics.getRegistry ().counter ( Metrics.name ( this.manager.getConfiguration ().getId (), "fragment", "lookups" ) );
+        final long lookupCount = lookupCounter.getCount ();
+        final LongValueBatch valuesToInsert = new LongValueBatch ( MAX_COUNT * fragmentCount );
+        for ( int i = 0; i < MAX_COUNT * fragmentCount; i++ )
+        {
+            if ( i % MAX_COUNT != 0 )
+            {
+                valuesToInsert.add ( i, 100, 0, 1, i );
+            }
+        }
+        HsdbHelper.updateLongValueBatch ( this.backEnd, valuesToInsert );
+        Assert.assertEquals ( lookupCount + fragmentCount, lookupCounter.getCount () );
+        for ( final int fragment : new int[] { 0, 2, 3 } )
+        {
+            final LongValueBatch values = HsdbHelper.getLongValueBatch ( this.backEnd, fragment * MAX_COUNT, ( fragment + 1 ) * MAX_COUNT );
+            Assert.assertEquals ( MAX_COUNT, values.getSize () );
+            for ( int i = 0; i < values.getSize (); i++ )
+            {
+                Assert.assertEquals ( fragment * MAX_COUNT + i, values.getTime ( i ) );
+            }
+        }
+    }
+
     /**
      * This method cleans all artefacts that have been created during a test run.
      * @throws Exception in case of problems
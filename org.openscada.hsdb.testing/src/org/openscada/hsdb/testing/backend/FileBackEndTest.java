@@ -22,6 +22,8 @@ package org.openscada.hsdb.testing.backend;
 import java.io.File;
 import java.io.RandomAccessFile;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.junit.Assert;
@@ -29,7 +31,12 @@ import org.junit.Test;
 import org.openscada.hsdb.StorageChannelMetaData;
 import org.openscada.hsdb.backend.BackEnd;
 import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.backend.file.FileHeaderCache;
+import org.openscada.hsdb.backend.file.internal.RewriteJournal;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
 
 /**
  * Test class for class org.openscada.hsdb.testing.backend.FileBackEnd.
@@ -47,7 +54,7 @@ public class FileBackEndTest extends BackEndTestBase
     @Override
     protected BackEnd createBackEnd ( final StorageChannelMetaData metaData ) throws Exception
     {
-        final FileBackEnd backEnd = new FileBackEnd ( URLEncoder.encode ( metaData.getConfigurationId (), "utf-8" ) + ".va", false );
+        final FileBackEnd backEnd = new FileBackEnd ( URLEncoder.encode ( metaData.getConfigurationId (), "utf-8" ) + ".va", false, getFileVersion () );
         new File ( backEnd.getFileName () ).delete ();
         backEnd.setLock ( new ReentrantReadWriteLock () );
         backEnd.create ( metaData );
@@ -55,6 +62,15 @@ public class FileBackEndTest extends BackEndTestBase
         return backEnd;
     }
 
+    /**
+     * This method returns the version of file format that is used when creating the back end that has to be tested.
+     * @return version of file format that is used when creating the back end
+     */
+    protected long getFileVersion ()
+    {
+        return FileBackEnd.COMPRESSED_FILE_VERSION;
+    }
+
     /**
      * This method tests if a file that is currently opened for writing can be read in parallel.
      * @throws Exception in case of problems
@@ -100,6 +116,335 @@ public class FileBackEndTest extends BackEndTestBase
         Assert.assertEquals ( 1, result3[0].getValue () );
     }
 
+    /**
+     * Test for storing data in compressed blocks and merging late data into existing blocks.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testCompressedLateInsert () throws Exception
+    {
+        final FileBackEnd fileBackEnd = (FileBackEnd)this.backEnd;
+        for ( int i = 0; i < MAX_COUNT; i++ )
+        {
+            if ( i % 7 != 0 )
+            {
+                this.backEnd.updateLong ( new LongValue ( i, 100, 0, 1, i ) );
+            }
+        }
+        final LongValueBatch lateValues = new LongValueBatch ( MAX_COUNT );
+        for ( int i = 0; i < MAX_COUNT; i += 7 )
+        {
+            lateValues.add ( i, 100, 0, 1, i );
+        }
+        lateValues.add ( 100, 50, 0, 1, -100 );
+        lateValues.add ( 400, 50, 0, 1, -400 );
+        fileBackEnd.updateLongValueBatch ( lateValues );
+
+        // verify data and its persistence
+        final FileBackEnd readBackEnd = new FileBackEnd ( fileBackEnd.getFileName (), false );
+        readBackEnd.setLock ( fileBackEnd.getLock () );
+        readBackEnd.initialize ( null );
+        try
+        {
+            for ( final BackEnd backEnd : new BackEnd[] { this.backEnd, readBackEnd } )
+            {
+                final LongValue[] values = backEnd.getLongValues ( 0, MAX_COUNT );
+                Assert.assertEquals ( MAX_COUNT, values.length );
+                for ( int i = 0; i < MAX_COUNT; i++ )
+                {
+                    Assert.assertEquals ( i, values[i].getTime () );
+                    Assert.assertEquals ( i == 100 || i == 400 ? -i : i, values[i].getValue () );
+                }
+                Assert.assertEquals ( 199, backEnd.getLongValues ( 199, 200 )[0].getTime () );
+            }
+        }
+        finally
+        {
+            readBackEnd.deinitialize ();
+        }
+        if ( getFileVersion () == FileBackEnd.COMPRESSED_FILE_VERSION )
+        {
+            Assert.assertTrue ( new File ( fileBackEnd.getFileName () ).length () < MAX_COUNT * 41 );
+        }
+    }
+
+    /**
+     * Test for merging late data into the uncompressed records whereby existing values are replaced and the last of several new values with the same time stamp is kept.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testUncompressedLateInsert () throws Exception
+    {
+        final FileBackEnd fileBackEnd = (FileBackEnd)this.backEnd;
+        final int count = 400;
+        final LongValueBatch values = new LongValueBatch ( count / 2 );
+        for ( int i = 0; i < count; i += 2 )
+        {
+            values.add ( i, 100, 0, 1, i );
+        }
+        fileBackEnd.updateLongValueBatch ( values );
+        final LongValueBatch lateValues = new LongValueBatch ( count / 2 + 3 );
+        for ( int i = 1; i < count; i += 2 )
+        {
+            if ( i == 101 )
+            {
+                lateValues.add ( 100, 50, 0, 1, -100 );
+            }
+            if ( i == 201 )
+            {
+                lateValues.add ( i, 50, 0, 1, 0 );
+                lateValues.add ( i, 50, 0, 1, -i );
+                continue;
+            }
+            lateValues.add ( i, 100, 0, 1, i );
+        }
+        fileBackEnd.updateLongValueBatch ( lateValues );
+
+        // verify data and its persistence
+        final FileBackEnd readBackEnd = new FileBackEnd ( fileBackEnd.getFileName (), false );
+        readBackEnd.setLock ( fileBackEnd.getLock () );
+        readBackEnd.initialize ( null );
+        try
+        {
+            for ( final BackEnd backEnd : new BackEnd[] { this.backEnd, readBackEnd } )
+            {
+                final LongValue[] result = backEnd.getLongValues ( 0, MAX_COUNT );
+                Assert.assertEquals ( count, result.length );
+                for ( int i = 0; i < count; i++ )
+                {
+                    Assert.assertEquals ( i, result[i].getTime () );
+                    Assert.assertEquals ( i == 100 || i == 201 ? -i : i, result[i].getValue () );
+                }
+            }
+        }
+        finally
+        {
+            readBackEnd.deinitialize ();
+        }
+    }
+
+    /**
+     * Test for storing values in order whereby the batch crosses the end time of the meta data.
+     * Only the values before the end time are stored. Values at or after the end time are dropped, even if they could be appended to the file.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testAppendAcrossEndTime () throws Exception
+    {
+        final FileBackEnd fileBackEnd = (FileBackEnd)this.backEnd;
+        final LongValueBatch values = new LongValueBatch ( MAX_COUNT - 3 );
+        for ( int i = 0; i < MAX_COUNT - 3; i++ )
+        {
+            values.add ( i, 100, 0, 1, i );
+        }
+        fileBackEnd.updateLongValueBatch ( values );
+        final LongValueBatch crossingValues = new LongValueBatch ( 6 );
+        for ( int i = MAX_COUNT - 3; i < MAX_COUNT + 3; i++ )
+        {
+            crossingValues.add ( i, 100, 0, 1, i );
+        }
+        fileBackEnd.updateLongValueBatch ( crossingValues );
+
+        // verify data and its persistence
+        final FileBackEnd readBackEnd = new FileBackEnd ( fileBackEnd.getFileName (), false );
+        readBackEnd.setLock ( fileBackEnd.getLock () );
+        readBackEnd.initialize ( null );
+        try
+        {
+            for ( final BackEnd backEnd : new BackEnd[] { this.backEnd, readBackEnd } )
+            {
+                final LongValue[] result = backEnd.getLongValues ( 0, MAX_COUNT + 10 );
+                Assert.assertEquals ( MAX_COUNT, result.length );
+                for ( int i = 0; i < MAX_COUNT; i++ )
+                {
+                    Assert.assertEquals ( i, result[i].getTime () );
+                    Assert.assertEquals ( i, result[i].getValue () );
+                }
+            }
+        }
+        finally
+        {
+            readBackEnd.deinitialize ();
+        }
+    }
+
+    /**
+     * This method writes the passed content to the specified file.
+     * @param fileName name of the file that has to be written
+     * @param content new content of the file
+     * @throws Exception in case of problems
+     */
+    private static void writeFile ( final String fileName, final byte[] content ) throws Exception
+    {
+        final RandomAccessFile file = new RandomAccessFile ( fileName, "rw" );
+        try
+        {
+            file.setLength ( 0 );
+            file.write ( content );
+        }
+        finally
+        {
+            file.close ();
+        }
+    }
+
+    /**
+     * This method reads the complete content of the specified file.
+     * @param fileName name of the file that has to be read
+     * @return content of the file
+     * @throws Exception in case of problems
+     */
+    private static byte[] readFile ( final String fileName ) throws Exception
+    {
+        final RandomAccessFile file = new RandomAccessFile ( fileName, "r" );
+        try
+        {
+            final byte[] content = new byte[(int)file.length ()];
+            file.readFully ( content );
+            return content;
+        }
+        finally
+        {
+            file.close ();
+        }
+    }
+
+    /**
+     * This method opens the specified file with a new back end object and asserts that it contains the specified count of consecutive values.
+     * @param fileName name of the file that has to be checked
+     * @param count expected count of values
+     * @throws Exception in case of problems
+     */
+    private static void assertFileValues ( final String fileName, final int count ) throws Exception
+    {
+        final FileBackEnd readBackEnd = new FileBackEnd ( fileName, false );
+        readBackEnd.setLock ( new ReentrantReadWriteLock () );
+        readBackEnd.initialize ( null );
+        try
+        {
+            final LongValue[] values = readBackEnd.getLongValues ( 0, MAX_COUNT );
+            Assert.assertEquals ( count, values.length );
+            for ( int i = 0; i < count; i++ )
+            {
+                Assert.assertEquals ( i, values[i].getTime () );
+                Assert.assertEquals ( i, values[i].getValue () );
+            }
+        }
+        finally
+        {
+            readBackEnd.deinitialize ();
+        }
+    }
+
+    /**
+     * Test for completing an interrupted compaction of uncompressed records when the file is opened again and for discarding an incomplete journal.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testInterruptedCompaction () throws Exception
+    {
+        if ( getFileVersion () != FileBackEnd.COMPRESSED_FILE_VERSION )
+        {
+            return;
+        }
+        final String fileName = ( (FileBackEnd)this.backEnd ).getFileName ();
+        final RewriteJournal journal = new RewriteJournal ( new File ( fileName ) );
+
+        // create the states of the file before and after compacting the uncompressed records
+        for ( int i = 0; i < 200; i++ )
+        {
+            this.backEnd.updateLong ( new LongValue ( i, 100, 0, 1, i ) );
+        }
+        final byte[] before = readFile ( fileName );
+        for ( int i = 200; i < 300; i++ )
+        {
+            this.backEnd.updateLong ( new LongValue ( i, 100, 0, 1, i ) );
+        }
+        final byte[] after = readFile ( fileName );
+        this.backEnd.deinitialize ();
+        Assert.assertFalse ( journal.exists () );
+        final long dataOffset = ByteBuffer.wrap ( before ).getLong ( 8 );
+        final int position = (int)ByteBuffer.wrap ( before ).getLong ( (int)dataOffset );
+        final long blockEnd = ByteBuffer.wrap ( after ).getLong ( (int)dataOffset );
+        final long generation = ByteBuffer.wrap ( after ).getLong ( (int)dataOffset + 8 );
+        Assert.assertTrue ( blockEnd > position );
+        Assert.assertTrue ( after.length < before.length );
+
+        // the compaction has been interrupted while the compressed block was written
+        final byte[] interrupted = Arrays.copyOf ( before, before.length );
+        System.arraycopy ( after, position, interrupted, position, ( after.length - position ) / 2 );
+        writeFile ( fileName, interrupted );
+        journal.begin ( dataOffset, blockEnd, generation, position );
+        journal.getOutput ().write ( after, position, after.length - position );
+        journal.commit ();
+        assertFileValues ( fileName, 300 );
+        Assert.assertFalse ( journal.exists () );
+        Assert.assertTrue ( Arrays.equals ( after, readFile ( fileName ) ) );
+
+        // the compaction has been interrupted while the journal was written
+        writeFile ( fileName, before );
+        journal.begin ( dataOffset, blockEnd, generation, position );
+        journal.getOutput ().write ( after, position, after.length - position );
+        journal.commit ();
+        final RandomAccessFile journalFile = new RandomAccessFile ( journal.getFile (), "rw" );
+        journalFile.setLength ( journalFile.length () - 4 );
+        journalFile.close ();
+        assertFileValues ( fileName, 200 );
+        Assert.assertFalse ( journal.exists () );
+        Assert.assertTrue ( Arrays.equals ( before, readFile ( fileName ) ) );
+    }
+
+    /**
+     * Test for writing and reading the supported header versions with and without using the header cache.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testHeaderVersions () throws Exception
+    {
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( "header\u00e4\u00f6\u00fc\u20ac", CalculationMethod.AVERAGE, new long[] { 1000, -1 }, 2, 1000, 2000, 3000, 4000, DataType.DOUBLE_VALUE );
+        final long[] fileSizes = new long[2];
+        final int[] headerVersions = new int[] { FileBackEnd.LEGACY_HEADER_VERSION, FileBackEnd.COMPACT_HEADER_VERSION };
+        for ( int i = 0; i < headerVersions.length; i++ )
+        {
+            final String fileName = String.format ( "header%s.va", headerVersions[i] );
+            new File ( fileName ).delete ();
+            final FileBackEnd backEnd = new FileBackEnd ( fileName, false, getFileVersion (), headerVersions[i] );
+            try
+            {
+                backEnd.create ( metaData );
+                backEnd.initialize ( metaData );
+                backEnd.updateLong ( new LongValue ( 1500, 100, 0, 1, 42 ) );
+                fileSizes[i] = new File ( fileName ).length ();
+                for ( final boolean useCache : new boolean[] { true, false } )
+                {
+                    if ( !useCache )
+                    {
+                        FileHeaderCache.getInstance ().clear ();
+                    }
+                    final long hitCount = FileHeaderCache.getInstance ().getHitCount ();
+                    final FileBackEnd readBackEnd = new FileBackEnd ( fileName, false );
+                    readBackEnd.initialize ( null );
+                    try
+                    {
+                        Assert.assertEquals ( metaData.toString (), readBackEnd.getMetaData ().toString () );
+                        Assert.assertEquals ( 42, readBackEnd.getLongValues ( 1500, 1501 )[0].getValue () );
+                    }
+                    finally
+                    {
+                        readBackEnd.deinitialize ();
+                    }
+                    Assert.assertEquals ( useCache, FileHeaderCache.getInstance ().getHitCount () > hitCount );
+                }
+            }
+            finally
+            {
+                backEnd.deinitialize ();
+                backEnd.delete ();
+            }
+        }
+        Assert.assertTrue ( fileSizes[1] < fileSizes[0] );
+    }
+
     /**
      * This method cleans all artifacts that have been created during a test run.
      * @throws Exception in case of problems
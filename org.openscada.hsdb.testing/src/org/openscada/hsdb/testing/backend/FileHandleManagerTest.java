@@ -0,0 +1,176 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.backend.file.FileHandleManager;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.LongValue;
+
+/**
+ * Test class for limiting the count of open files of all file back end objects.
+ */
+public class FileHandleManagerTest
+{
+    /** Count of back end objects that contain historical data. */
+    private final static int BACK_END_COUNT = 4;
+
+    /** Manager that is tested. */
+    private final FileHandleManager manager = FileHandleManager.getInstance ();
+
+    /** Maximum count of open files before the test was started. */
+    private int maximumOpenFiles;
+
+    /** Back end objects that have been created during the test. */
+    private final List<FileBackEnd> backEnds = new ArrayList<FileBackEnd> ();
+
+    /**
+     * This method stores the configuration of the manager.
+     */
+    @Before
+    public void setUp ()
+    {
+        this.maximumOpenFiles = this.manager.getMaximumOpenFiles ();
+    }
+
+    /**
+     * This method deletes all data that has been created during the test and restores the configuration of the manager.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        for ( final FileBackEnd backEnd : this.backEnds )
+        {
+            backEnd.deinitialize ();
+            backEnd.delete ();
+        }
+        this.backEnds.clear ();
+        this.manager.setMaximumOpenFiles ( this.maximumOpenFiles );
+    }
+
+    /**
+     * This method creates and initializes a back end object.
+     * @param index index that is used to create a unique file name
+     * @param startTime start time of the back end object
+     * @param endTime end time of the back end object
+     * @return created back end object
+     * @throws Exception in case of problems
+     */
+    private FileBackEnd createBackEnd ( final int index, final long startTime, final long endTime ) throws Exception
+    {
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( "FileHandleManagerTest" + index, CalculationMethod.NATIVE, new long[0], 0, startTime, endTime, Long.MAX_VALUE, Long.MAX_VALUE, DataType.LONG_VALUE );
+        final FileBackEnd backEnd = new FileBackEnd ( "FileHandleManagerTest" + index + ".va", false );
+        new File ( backEnd.getFileName () ).delete ();
+        backEnd.setLock ( new ReentrantReadWriteLock () );
+        backEnd.create ( metaData );
+        backEnd.initialize ( metaData );
+        this.backEnds.add ( backEnd );
+        return backEnd;
+    }
+
+    /**
+     * This method tests that least recently used files are closed if the maximum count of open files is exceeded and that closed files are reopened transparently.
+     * The file of the back end object whose time span contains the current time must stay open while it is written.
+     * Files are closed synchronously, so the maximum count of open files is never exceeded after an access has been completed.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testEviction () throws Exception
+    {
+        this.manager.setMaximumOpenFiles ( 1 );
+        final long now = System.currentTimeMillis ();
+        final FileBackEnd activeBackEnd = createBackEnd ( 0, now - 3600000, now + 3600000 );
+        final List<FileBackEnd> historicalBackEnds = new ArrayList<FileBackEnd> ();
+        for ( int i = 1; i <= BACK_END_COUNT; i++ )
+        {
+            historicalBackEnds.add ( createBackEnd ( i, 0, 1000000 ) );
+        }
+        activeBackEnd.updateLong ( new LongValue ( now, 1.0, 0, 1, 0 ) );
+        final long evictionCount = this.manager.getEvictionCount ();
+        for ( int i = 0; i < historicalBackEnds.size (); i++ )
+        {
+            historicalBackEnds.get ( i ).updateLong ( new LongValue ( 1000 + i, 1.0, 0, 1, i ) );
+        }
+
+        // the files are closed by the accesses that exceeded the maximum count of open files. the pinned file counts towards the maximum count
+        Assert.assertEquals ( 1, this.manager.getOpenFileCount () );
+        Assert.assertEquals ( 1, this.manager.getPinnedFileCount () );
+        Assert.assertEquals ( evictionCount + BACK_END_COUNT, this.manager.getEvictionCount () );
+
+        // the file of the active back end object is still open
+        final long hitCount = this.manager.getHitCount ();
+        final long missCount = this.manager.getMissCount ();
+        activeBackEnd.updateLong ( new LongValue ( now + 1, 1.0, 0, 1, 1 ) );
+        Assert.assertEquals ( hitCount + 1, this.manager.getHitCount () );
+        Assert.assertEquals ( missCount, this.manager.getMissCount () );
+        Assert.assertEquals ( 2, activeBackEnd.getLongValues ( now, now + 2 ).length );
+
+        // closed files are reopened when they are accessed again
+        for ( int i = 0; i < historicalBackEnds.size (); i++ )
+        {
+            final LongValue[] values = historicalBackEnds.get ( i ).getLongValues ( 0, 1000000 );
+            Assert.assertEquals ( 1, values.length );
+            Assert.assertEquals ( i, values[0].getValue () );
+        }
+        Assert.assertTrue ( this.manager.getMissCount () >= missCount + BACK_END_COUNT );
+    }
+
+    /**
+     * This method tests that the count of open files is limited by default, unless another maximum count has been configured via the system property.
+     */
+    @Test
+    public void testEnabledByDefault ()
+    {
+        Assert.assertEquals ( Integer.getInteger ( FileHandleManager.MAXIMUM_OPEN_FILES_PROPERTY, FileHandleManager.DEFAULT_MAXIMUM_OPEN_FILES ).intValue (), this.maximumOpenFiles );
+        if ( System.getProperty ( FileHandleManager.MAXIMUM_OPEN_FILES_PROPERTY ) == null )
+        {
+            Assert.assertTrue ( this.manager.isEnabled () );
+        }
+    }
+
+    /**
+     * This method tests that files are closed after each access if the manager is disabled.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testDisabled () throws Exception
+    {
+        final FileBackEnd backEnd = createBackEnd ( 0, 0, 1000000 );
+        this.manager.setMaximumOpenFiles ( 0 );
+        final long hitCount = this.manager.getHitCount ();
+        final long missCount = this.manager.getMissCount ();
+        backEnd.updateLong ( new LongValue ( 1000, 1.0, 0, 1, 0 ) );
+        Assert.assertEquals ( 1, backEnd.getLongValues ( 0, 1000000 ).length );
+        Assert.assertEquals ( hitCount, this.manager.getHitCount () );
+        Assert.assertEquals ( missCount, this.manager.getMissCount () );
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
+
+/**
+ * Test class for recording back end fragments in the fragment catalog instead of the configuration file.
+ */
+public class FragmentCatalogTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_catalog_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "FragmentCatalogTest";
+
+    /** Count of values that are stored. */
+    private final static int VALUE_COUNT = 5000;
+
+    /** Factory that is used to create back end objects. */
+    private FileBackEndFactory backEndFactory;
+
+    /** Factory that is used to create managers. */
+    private FileBackEndManagerFactory backEndManagerFactory;
+
+    /** Managers that have been created during the test. */
+    private final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+
+    /**
+     * This method prepares the factories.
+     */
+    @Before
+    public void setUp ()
+    {
+        this.backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        this.backEndManagerFactory = new FileBackEndManagerFactory ( this.backEndFactory );
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        for ( final FileBackEndManager manager : this.managers )
+        {
+            manager.deinitialize ();
+        }
+        if ( !this.managers.isEmpty () )
+        {
+            this.managers.get ( 0 ).delete ();
+        }
+        this.managers.clear ();
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method creates the configuration that is used for the test.
+     * @param useFragmentCatalog flag indicating whether the fragment catalog should be used
+     * @return created configuration
+     * @throws Exception in case of problems
+     */
+    private Configuration createConfiguration ( final boolean useFragmentCatalog ) throws Exception
+    {
+        final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[] { new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, 100000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 1000 }, 1, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) };
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( metaDatas );
+        if ( !useFragmentCatalog )
+        {
+            final Map<String, String> data = configuration.getData ();
+            data.put ( Configuration.MANAGER_FRAGMENT_CATALOG, "false" );
+            configuration.setData ( data );
+        }
+        return configuration;
+    }
+
+    /**
+     * This method creates and initializes a manager for the passed configuration.
+     * @param configuration configuration of the manager
+     * @return initialized manager
+     * @throws Exception in case of problems
+     */
+    private FileBackEndManager createManager ( final Configuration configuration ) throws Exception
+    {
+        final FileBackEndManager manager = this.backEndManagerFactory.getBackEndManager ( configuration, true );
+        manager.initialize ();
+        this.managers.add ( manager );
+        return manager;
+    }
+
+    /**
+     * This method stores test values via bulk import and via the storage channel tree.
+     * @param manager manager that is used to store the values
+     * @return stored values
+     * @throws Exception in case of problems
+     */
+    private DoubleValueBatch storeValues ( final FileBackEndManager manager ) throws Exception
+    {
+        final DoubleValueBatch values = new DoubleValueBatch ( VALUE_COUNT );
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            values.add ( 1000000 + i * 250L, 1.0, 0, 1, i % 100 );
+        }
+
+        // the first half is imported in bulk, the second half creates back end fragments one by one
+        final int half = VALUE_COUNT / 2;
+        final DoubleValueBatch importedValues = new DoubleValueBatch ( half );
+        importedValues.addAll ( values, 0, half );
+        manager.importValues ( new SingleBatchValueCursor<DoubleValueBatch> ( importedValues, new DoubleValueBatch ( 0 ) ) );
+        final CalculatingStorageChannel rootStorageChannel = manager.buildStorageChannelTree ();
+        final DoubleValue[] doubleValues = values.toDoubleValues ();
+        for ( int i = half; i < VALUE_COUNT; i += 100 )
+        {
+            final DoubleValue[] chunk = new DoubleValue[Math.min ( 100, VALUE_COUNT - i )];
+            System.arraycopy ( doubleValues, i, chunk, 0, chunk.length );
+            rootStorageChannel.updateDoubles ( chunk );
+        }
+        manager.releaseStorageChannelTree ();
+        return values;
+    }
+
+    /**
+     * This method asserts that the passed manager provides the passed native values.
+     * @param manager manager that has to be checked
+     * @param values expected native values
+     * @throws Exception in case of problems
+     */
+    private void assertValues ( final FileBackEndManager manager, final DoubleValueBatch values ) throws Exception
+    {
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = manager.buildStorageChannelStructure ();
+        final ExtendedStorageChannel nativeChannel = structure.get ( 0L ).get ( CalculationMethod.NATIVE ).keySet ().iterator ().next ();
+        final DoubleValue[] actual = nativeChannel.getDoubleValues ( 0, Long.MAX_VALUE );
+        Assert.assertEquals ( values.getSize (), actual.length );
+        for ( int i = 0; i < actual.length; i++ )
+        {
+            Assert.assertEquals ( values.getTime ( i ), actual[i].getTime () );
+            Assert.assertEquals ( values.getValue ( i ), actual[i].getValue (), 1e-9 );
+        }
+    }
+
+    /**
+     * This method loads the content of the configuration file.
+     * @return content of the configuration file
+     * @throws Exception in case of problems
+     */
+    private Properties loadConfigurationFile () throws Exception
+    {
+        final Properties properties = new Properties ();
+        final FileInputStream inputStream = new FileInputStream ( this.backEndManagerFactory.getConfigurationFileName ( FileBackEndFactory.encodeFileNamePart ( CONFIGURATION_ID ) ) );
+        try
+        {
+            properties.load ( inputStream );
+        }
+        finally
+        {
+            inputStream.close ();
+        }
+        return properties;
+    }
+
+    /**
+     * This method checks whether the configuration file contains information of back end fragments.
+     * @return true, if the configuration file contains information of back end fragments, otherwise false
+     * @throws Exception in case of problems
+     */
+    private boolean configurationFileContainsFragments () throws Exception
+    {
+        for ( final Object key : loadConfigurationFile ().keySet () )
+        {
+            if ( key.toString ().startsWith ( Configuration.MANAGER_KNOWN_FRAGMENT_NAME_PREFIX ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method tests that back end fragments are restored from the fragment catalog.
+     * An incomplete record at the end of the log file has to be ignored.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testReload () throws Exception
+    {
+        final FileBackEndManager manager = createManager ( createConfiguration ( true ) );
+        final DoubleValueBatch values = storeValues ( manager );
+        final String fragmentCount = manager.getConfiguration ().getData ().get ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT );
+        Assert.assertTrue ( Conversions.parseLong ( fragmentCount, 0 ) > 10 );
+        manager.deinitialize ();
+        Assert.assertFalse ( configurationFileContainsFragments () );
+        final File logFile = new File ( this.backEndManagerFactory.getFragmentCatalogLogFileName ( FileBackEndFactory.encodeFileNamePart ( CONFIGURATION_ID ) ) );
+        Assert.assertTrue ( logFile.length () > 0 );
+
+        // simulate an interrupted write operation
+        final FileOutputStream outputStream = new FileOutputStream ( logFile, true );
+        outputStream.write ( new byte[] { 0, 0, 0, 100, 1, 2, 3 } );
+        outputStream.close ();
+
+        final FileBackEndManager reloadedManager = createManager ( createConfiguration ( true ) );
+        Assert.assertEquals ( fragmentCount, reloadedManager.getConfiguration ().getData ().get ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT ) );
+        assertValues ( reloadedManager, values );
+    }
+
+    /**
+     * This method tests that back end fragments that are recorded in the configuration file are moved to the fragment catalog.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testMigration () throws Exception
+    {
+        final FileBackEndManager manager = createManager ( createConfiguration ( false ) );
+        final DoubleValueBatch values = storeValues ( manager );
+        manager.deinitialize ();
+        Assert.assertTrue ( configurationFileContainsFragments () );
+
+        // enable the fragment catalog for the existing configuration
+        final Properties properties = loadConfigurationFile ();
+        properties.remove ( Configuration.MANAGER_FRAGMENT_CATALOG );
+        final FileOutputStream outputStream = new FileOutputStream ( this.backEndManagerFactory.getConfigurationFileName ( FileBackEndFactory.encodeFileNamePart ( CONFIGURATION_ID ) ) );
+        properties.store ( outputStream, null );
+        outputStream.close ();
+
+        final FileBackEndManager migratedManager = createManager ( createConfiguration ( true ) );
+        Assert.assertFalse ( configurationFileContainsFragments () );
+        Assert.assertTrue ( new File ( this.backEndManagerFactory.getFragmentCatalogFileName ( FileBackEndFactory.encodeFileNamePart ( CONFIGURATION_ID ) ) ).exists () );
+        assertValues ( migratedManager, values );
+    }
+}
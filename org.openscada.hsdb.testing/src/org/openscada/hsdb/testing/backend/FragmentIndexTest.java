@@ -0,0 +1,327 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEndFragmentInformation;
+import org.openscada.hsdb.backend.BackEndMultiplexer;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.backend.internal.BackEndFragmentIndex;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.LongValue;
+
+/**
+ * Test class for the index of back end fragments and for the access of the fragment information while only the read lock is held.
+ */
+public class FragmentIndexTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_fragment_index_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "FragmentIndexTest";
+
+    /** Time span in milliseconds that is covered by each back end fragment. */
+    private final static long FRAGMENT_TIMESPAN = 1000;
+
+    /** Count of back end fragments that contain values. */
+    private final static int FRAGMENT_COUNT = 8;
+
+    /** Time span in milliseconds between two stored values. */
+    private final static long TIME_STEP = 10;
+
+    /** Count of threads that read concurrently. */
+    private final static int READER_COUNT = 4;
+
+    /** Count of read operations per thread. */
+    private final static int READ_COUNT = 50;
+
+    /** Maximum time in seconds to wait for tasks to complete. */
+    private final static long TIMEOUT = 30;
+
+    /** Meta data of the storage channel that is used for the test. */
+    private StorageChannelMetaData metaData;
+
+    /** Factory that is used to create back end objects. */
+    private FileBackEndFactory backEndFactory;
+
+    /** Manager that is used for the test. */
+    private FileBackEndManager manager;
+
+    /**
+     * This method creates a manager and stores values within several back end fragments.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        this.metaData = new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.LONG_VALUE );
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( new StorageChannelMetaData[] { this.metaData } );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 0, FRAGMENT_TIMESPAN + Conversions.MILLISECOND_SPAN_SUFFIX );
+        this.backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        this.backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        this.manager = new FileBackEndManagerFactory ( this.backEndFactory ).getBackEndManager ( configuration, true );
+        this.manager.initialize ();
+        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( this.manager );
+        backEnd.initialize ( this.metaData );
+        final LongValue[] values = new LongValue[(int) ( FRAGMENT_COUNT * FRAGMENT_TIMESPAN / TIME_STEP )];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[i] = new LongValue ( i * TIME_STEP, 1.0, 0, 1, i );
+        }
+        backEnd.updateLongs ( values );
+        backEnd.deinitialize ();
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        this.manager.deinitialize ();
+        this.manager.delete ();
+        this.backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method creates the information of a back end fragment.
+     * @param startTime start time of the back end fragment
+     * @param fragmentName name of the back end fragment
+     * @return created information
+     */
+    private static BackEndFragmentInformation createInformation ( final long startTime, final String fragmentName )
+    {
+        final BackEndFragmentInformation backEndFragmentInformation = new BackEndFragmentInformation ();
+        backEndFragmentInformation.setStartTime ( startTime );
+        backEndFragmentInformation.setEndTime ( startTime + FRAGMENT_TIMESPAN );
+        backEndFragmentInformation.setFragmentName ( fragmentName );
+        return backEndFragmentInformation;
+    }
+
+    /**
+     * This method tests the order of the index and the lookup of fragments by time and name.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testIndex () throws Exception
+    {
+        final BackEndFragmentIndex index = new BackEndFragmentIndex ();
+        final BackEndFragmentInformation fragment0 = createInformation ( 0, "f0" );
+        final BackEndFragmentInformation fragment1 = createInformation ( 1000, "f1" );
+        final BackEndFragmentInformation fragment2 = createInformation ( 2000, "f2" );
+        Assert.assertTrue ( index.add ( fragment1 ) );
+        Assert.assertTrue ( index.add ( fragment2 ) );
+        Assert.assertTrue ( index.add ( fragment0 ) );
+        Assert.assertFalse ( index.add ( createInformation ( 3000, "f1" ) ) );
+        Assert.assertEquals ( 3, index.size () );
+        Assert.assertSame ( fragment1, index.get ( "f1" ) );
+
+        // the newest fragment is returned first
+        Assert.assertEquals ( Arrays.asList ( fragment2, fragment1, fragment0 ), new ArrayList<BackEndFragmentInformation> ( index.getAll () ) );
+        Assert.assertEquals ( Arrays.asList ( fragment1, fragment0 ), new ArrayList<BackEndFragmentInformation> ( index.getStartingBefore ( 2000 ) ) );
+        Assert.assertEquals ( Arrays.asList ( fragment2, fragment1, fragment0 ), new ArrayList<BackEndFragmentInformation> ( index.getStartingBefore ( 2001 ) ) );
+        Assert.assertTrue ( index.getStartingBefore ( 0 ).isEmpty () );
+        Assert.assertTrue ( index.getStartingBefore ( Long.MIN_VALUE ).isEmpty () );
+        Assert.assertSame ( fragment1, index.getLatestStartingAtOrBefore ( 1000 ) );
+        Assert.assertSame ( fragment1, index.getLatestStartingAtOrBefore ( 1999 ) );
+        Assert.assertSame ( fragment2, index.getLatestStartingAtOrBefore ( Long.MAX_VALUE ) );
+        Assert.assertNull ( index.getLatestStartingAtOrBefore ( -1 ) );
+
+        // only the indexed object is removed for a name
+        index.removeAll ( Arrays.asList ( createInformation ( 1000, "f1" ) ) );
+        Assert.assertEquals ( 3, index.size () );
+        index.removeAll ( Arrays.asList ( fragment1 ) );
+        Assert.assertEquals ( 2, index.size () );
+        Assert.assertNull ( index.get ( "f1" ) );
+        Assert.assertSame ( fragment0, index.getLatestStartingAtOrBefore ( 1999 ) );
+    }
+
+    /**
+     * This method tests that a state determined by reading a back end fragment does not overwrite a state that has been set in the meantime.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testInitializeState () throws Exception
+    {
+        final BackEndFragmentInformation backEndFragmentInformation = createInformation ( 0, "f0" );
+        Assert.assertNull ( backEndFragmentInformation.getIsEmpty () );
+        backEndFragmentInformation.setIsEmpty ( false );
+        backEndFragmentInformation.setSupposedEarliestValueTime ( 10L );
+        Assert.assertFalse ( backEndFragmentInformation.initializeState ( true, null ) );
+        Assert.assertEquals ( Long.valueOf ( 10 ), backEndFragmentInformation.getSupposedEarliestValueTime () );
+
+        final BackEndFragmentInformation unknownBackEndFragmentInformation = createInformation ( 0, "f1" );
+        Assert.assertTrue ( unknownBackEndFragmentInformation.initializeState ( true, null ) );
+        Assert.assertTrue ( unknownBackEndFragmentInformation.initializeState ( false, 20L ) );
+        Assert.assertTrue ( unknownBackEndFragmentInformation.getIsEmpty () );
+    }
+
+    /**
+     * This method destroys the file of the back end fragment starting at the passed time.
+     * The manager has to be reinitialized afterwards, so that the state of the fragment is unknown.
+     * @param startTime start time of the back end fragment
+     * @throws Exception in case of problems
+     */
+    private void destroyFragment ( final long startTime ) throws Exception
+    {
+        String fileName = null;
+        for ( final StorageChannelMetaData existingMetaData : this.backEndFactory.getExistingBackEndsMetaData ( CONFIGURATION_ID, false ) )
+        {
+            if ( existingMetaData.getStartTime () == startTime )
+            {
+                fileName = this.backEndFactory.generateFileName ( existingMetaData );
+            }
+        }
+        Assert.assertNotNull ( fileName );
+        final RandomAccessFile file = new RandomAccessFile ( fileName, "rw" );
+        try
+        {
+            file.setLength ( 3 );
+        }
+        finally
+        {
+            file.close ();
+        }
+    }
+
+    /**
+     * This method returns whether the values of the specified time span can be read.
+     * @param backEnd back end that is used for reading
+     * @param startTime start of the time span
+     * @param endTime end of the time span
+     * @return true, if the values can be read, otherwise false
+     */
+    private static boolean canRead ( final BackEndMultiplexer backEnd, final long startTime, final long endTime )
+    {
+        try
+        {
+            backEnd.getLongValues ( startTime, endTime );
+            return true;
+        }
+        catch ( final Exception e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * This method tests that back end fragments that cannot be read are marked as corrupt after the read lock has been released.
+     * The read that detects the problem skips the fragment, all later reads report the corrupt fragment.
+     * Other threads read and insert values concurrently, so the threads holding the read lock must not wait for the write lock.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testUnreadableFragment () throws Exception
+    {
+        this.manager.deinitialize ();
+        destroyFragment ( 3 * FRAGMENT_TIMESPAN );
+        destroyFragment ( 5 * FRAGMENT_TIMESPAN );
+
+        // a new manager does not know the state of the fragments, so it is determined when the fragments are accessed for the first time
+        this.manager = new FileBackEndManagerFactory ( this.backEndFactory ).getBackEndManager ( this.manager.getConfiguration (), false );
+        this.manager.initialize ();
+        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( this.manager );
+        backEnd.initialize ( this.metaData );
+        try
+        {
+            Assert.assertTrue ( canRead ( backEnd, 3 * FRAGMENT_TIMESPAN + 500, 4 * FRAGMENT_TIMESPAN ) );
+            Assert.assertFalse ( canRead ( backEnd, 3 * FRAGMENT_TIMESPAN + 500, 4 * FRAGMENT_TIMESPAN ) );
+
+            // the second fragment is detected while several threads access the manager
+            final ExecutorService executor = Executors.newFixedThreadPool ( READER_COUNT + 1 );
+            try
+            {
+                final List<Future<Object>> futures = new ArrayList<Future<Object>> ();
+                for ( int i = 0; i < READER_COUNT; i++ )
+                {
+                    futures.add ( executor.submit ( new Callable<Object> ()
+                    {
+                        public Object call () throws Exception
+                        {
+                            final BackEndMultiplexer readBackEnd = new BackEndMultiplexer ( FragmentIndexTest.this.manager );
+                            readBackEnd.initialize ( FragmentIndexTest.this.metaData );
+                            for ( int j = 0; j < READ_COUNT; j++ )
+                            {
+                                Assert.assertEquals ( 3 * FRAGMENT_TIMESPAN / TIME_STEP, readBackEnd.getLongValues ( 0, 3 * FRAGMENT_TIMESPAN ).length );
+                                canRead ( readBackEnd, 4 * FRAGMENT_TIMESPAN, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+                            }
+                            readBackEnd.deinitialize ();
+                            return null;
+                        }
+                    } ) );
+                }
+                futures.add ( executor.submit ( new Callable<Object> ()
+                {
+                    public Object call () throws Exception
+                    {
+                        final BackEndMultiplexer writeBackEnd = new BackEndMultiplexer ( FragmentIndexTest.this.manager );
+                        writeBackEnd.initialize ( FragmentIndexTest.this.metaData );
+                        for ( int i = 0; i < READ_COUNT; i++ )
+                        {
+                            writeBackEnd.updateLong ( new LongValue ( ( FRAGMENT_COUNT + i ) * FRAGMENT_TIMESPAN, 1.0, 0, 1, i ) );
+                        }
+                        writeBackEnd.deinitialize ();
+                        return null;
+                    }
+                } ) );
+                for ( final Future<Object> future : futures )
+                {
+                    future.get ( TIMEOUT, TimeUnit.SECONDS );
+                }
+            }
+            finally
+            {
+                executor.shutdownNow ();
+            }
+
+            // the broken fragment has been marked as corrupt, while all other fragments are still available
+            Assert.assertFalse ( canRead ( backEnd, 5 * FRAGMENT_TIMESPAN + 500, 6 * FRAGMENT_TIMESPAN ) );
+            Assert.assertEquals ( 2 * FRAGMENT_TIMESPAN / TIME_STEP, backEnd.getLongValues ( 6 * FRAGMENT_TIMESPAN, FRAGMENT_COUNT * FRAGMENT_TIMESPAN ).length );
+            Assert.assertEquals ( READ_COUNT, backEnd.getLongValues ( FRAGMENT_COUNT * FRAGMENT_TIMESPAN, Long.MAX_VALUE ).length );
+        }
+        finally
+        {
+            backEnd.deinitialize ();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEnd;
+import org.openscada.hsdb.backend.jdbc.JdbcBackEnd;
+import org.openscada.hsdb.backend.jdbc.JdbcBackEndFactory;
+import org.openscada.hsdb.backend.jdbc.JdbcBackEndManager;
+import org.openscada.hsdb.backend.jdbc.JdbcBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
+import org.openscada.utils.osgi.jdbc.CommonConnectionAccessor;
+
+/**
+ * Test class for class org.openscada.hsdb.backend.jdbc.JdbcBackEnd and the corresponding factories using an embedded database.
+ */
+public class JdbcBackEndTest extends BackEndTestBase
+{
+    /** Url of the embedded database that is used for the tests. */
+    private final static String DATABASE_URL = "jdbc:h2:mem:hsdb_test;DB_CLOSE_DELAY=-1";
+
+    /** Prefix of the tables that are used for the tests. */
+    private final static String TABLE_PREFIX = "hsdb_test";
+
+    /** Data source of the embedded database. */
+    private final JdbcDataSource dataSource = new JdbcDataSource ();
+
+    /** Factory that is used to create the back end objects. */
+    private JdbcBackEndFactory backEndFactory;
+
+    /**
+     * This method creates, initializes and returns the backend that has to be tested.
+     * If a backend with the same meta data already exists, the old back end will be deleted.
+     * @param metaData metadata that should be used when creating a back end
+     * @return backend that has to be tested
+     * @throws Exception in case of problems
+     */
+    @Override
+    protected BackEnd createBackEnd ( final StorageChannelMetaData metaData ) throws Exception
+    {
+        this.dataSource.setURL ( DATABASE_URL );
+        this.backEndFactory = new JdbcBackEndFactory ( new CommonConnectionAccessor () {
+            @Override
+            public Connection getConnection () throws SQLException
+            {
+                return JdbcBackEndTest.this.dataSource.getConnection ();
+            }
+        }, TABLE_PREFIX );
+        this.backEndFactory.deleteBackEnds ( metaData.getConfigurationId () );
+        final JdbcBackEnd backEnd = (JdbcBackEnd)this.backEndFactory.createNewBackEnd ( metaData );
+        backEnd.setLock ( new ReentrantReadWriteLock () );
+        backEnd.create ( metaData );
+        backEnd.initialize ( metaData );
+        return backEnd;
+    }
+
+    /**
+     * Test for replacing existing values and appending new values.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testReplaceValues () throws Exception
+    {
+        final LongValue[] valuesToInsert = new LongValue[10];
+        for ( int i = 0; i < valuesToInsert.length; i++ )
+        {
+            valuesToInsert[i] = new LongValue ( i * 10, 100, 0, 1, i );
+        }
+        this.backEnd.updateLongs ( valuesToInsert );
+        this.backEnd.updateLongs ( new LongValue[] { new LongValue ( 200, 100, 0, 1, 20 ), new LongValue ( 30, 50, 0, 1, 42 ), new LongValue ( 35, 100, 0, 1, 43 ) } );
+        this.backEnd.updateLong ( new LongValue ( MAX_COUNT, 100, 0, 1, 44 ) );
+        final LongValue[] values = this.backEnd.getLongValues ( 0, MAX_COUNT + 1 );
+        Assert.assertEquals ( 12, values.length );
+        Assert.assertEquals ( 30, values[3].getTime () );
+        Assert.assertEquals ( 42, values[3].getValue () );
+        Assert.assertEquals ( 50, values[3].getQualityIndicator (), 0.0 );
+        Assert.assertEquals ( 35, values[4].getTime () );
+        Assert.assertEquals ( 200, values[11].getTime () );
+        final LongValue[] previousValues = this.backEnd.getLongValues ( 36, 41 );
+        Assert.assertEquals ( 2, previousValues.length );
+        Assert.assertEquals ( 35, previousValues[0].getTime () );
+    }
+
+    /**
+     * Test for accessing the stored values and meta data via a new back end object.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testReopen () throws Exception
+    {
+        testRapidLong1DataBulkInsert ();
+        final StorageChannelMetaData metaData = this.backEnd.getMetaData ();
+        final BackEnd[] backEnds = this.backEndFactory.getExistingBackEnds ( metaData.getConfigurationId (), metaData.getDetailLevelId (), metaData.getCalculationMethod () );
+        Assert.assertEquals ( 1, backEnds.length );
+        final JdbcBackEnd backEnd = (JdbcBackEnd)backEnds[0];
+        backEnd.initialize ( null );
+        try
+        {
+            Assert.assertEquals ( metaData.toString (), backEnd.getMetaData ().toString () );
+            Assert.assertEquals ( Long.valueOf ( 0 ), backEnd.getFirstEntryTime () );
+            Assert.assertEquals ( MAX_COUNT, backEnd.getLongValues ( 0, MAX_COUNT ).length );
+        }
+        finally
+        {
+            backEnd.deinitialize ();
+        }
+        Assert.assertEquals ( 1, this.backEndFactory.getExistingBackEndsMetaData ( metaData.getConfigurationId (), true ).length );
+    }
+
+    /**
+     * Test for importing values via a back end manager that stores native and calculated values in the database.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testManager () throws Exception
+    {
+        final String configurationId = "JdbcBackEndManagerTest";
+        final long lastValueTime = 500000;
+        final JdbcBackEndManagerFactory backEndManagerFactory = new JdbcBackEndManagerFactory ( this.backEndFactory );
+        final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[] { new StorageChannelMetaData ( configurationId, CalculationMethod.NATIVE, new long[0], 0, 0, 100000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( configurationId, CalculationMethod.AVERAGE, new long[] { 10000 }, 1, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) };
+        final JdbcBackEndManager manager = backEndManagerFactory.getBackEndManager ( Conversions.convertMetaDatasToConfiguration ( metaDatas ), true );
+        manager.initialize ();
+        try
+        {
+            final DoubleValueBatch values = new DoubleValueBatch ( 0 );
+            for ( long time = 0; time < lastValueTime; time += 1000 )
+            {
+                values.add ( time, 1.0, 0, 1, time );
+            }
+            manager.importValues ( new SingleBatchValueCursor<DoubleValueBatch> ( values, new DoubleValueBatch ( 0 ) ) );
+            final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = manager.buildStorageChannelStructure ();
+            final DoubleValue[] nativeValues = structure.get ( 0L ).get ( CalculationMethod.NATIVE ).keySet ().iterator ().next ().getDoubleValues ( 0, lastValueTime );
+            Assert.assertEquals ( lastValueTime / 1000, nativeValues.length );
+            final DoubleValue[] calculatedValues = structure.get ( 1L ).get ( CalculationMethod.AVERAGE ).keySet ().iterator ().next ().getDoubleValues ( 0, lastValueTime );
+            Assert.assertTrue ( calculatedValues.length > 0 );
+            boolean found = false;
+            for ( final JdbcBackEndManager loadedManager : backEndManagerFactory.getBackEndManagers () )
+            {
+                found |= configurationId.equals ( loadedManager.getConfiguration ().getId () );
+            }
+            Assert.assertTrue ( found );
+        }
+        finally
+        {
+            manager.deinitialize ();
+            manager.delete ();
+        }
+        Assert.assertEquals ( 0, this.backEndFactory.getExistingBackEndsMetaData ( configurationId, false ).length );
+        Assert.assertNull ( backEndManagerFactory.getBackEndManager ( Conversions.convertMetaDatasToConfiguration ( metaDatas ), false ) );
+    }
+
+    /**
+     * This method deletes all tables that have been created during the test.
+     * @throws Exception in case of problems
+     */
+    @Override
+    @After
+    public void cleanup () throws Exception
+    {
+        super.cleanup ();
+        if ( PERFORM_CLEANUP )
+        {
+            final Connection connection = this.dataSource.getConnection ();
+            try
+            {
+                final Statement statement = connection.createStatement ();
+                try
+                {
+                    statement.execute ( "DROP ALL OBJECTS" );
+                }
+                finally
+                {
+                    statement.close ();
+                }
+            }
+            finally
+            {
+                connection.close ();
+            }
+        }
+    }
+}
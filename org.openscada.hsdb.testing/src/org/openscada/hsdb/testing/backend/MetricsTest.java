@@ -0,0 +1,263 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.metrics.Counter;
+import org.openscada.hsdb.metrics.DefaultMetricRegistry;
+import org.openscada.hsdb.metrics.Gauge;
+import org.openscada.hsdb.metrics.Metric;
+import org.openscada.hsdb.metrics.MetricRegistry;
+import org.openscada.hsdb.metrics.MetricRegistryMBean;
+import org.openscada.hsdb.metrics.Metrics;
+import org.openscada.hsdb.metrics.TimedReentrantReadWriteLock;
+import org.openscada.hsdb.metrics.Timer;
+
+/**
+ * Test class for the metrics that are recorded while values are stored.
+ */
+public class MetricsTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_metrics_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "MetricsTest";
+
+    /** Count of values that are inserted. */
+    private final static int VALUE_COUNT = 100;
+
+    /** Count of threads that update the same metrics concurrently. */
+    private final static int THREAD_COUNT = 8;
+
+    /** Count of updates per thread. */
+    private final static int UPDATE_COUNT = 100000;
+
+    /** Registry that was used before the test. */
+    private MetricRegistry previousRegistry;
+
+    /** Registry that is used for the test. */
+    private MetricRegistry registry;
+
+    /** Manager that is used for the test. */
+    private FileBackEndManager manager;
+
+    /**
+     * This method sets a new registry and creates the manager afterwards, so that the manager records its metrics in the new registry.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        this.previousRegistry = Metrics.getRegistry ();
+        this.registry = new DefaultMetricRegistry ();
+        Metrics.setRegistry ( this.registry );
+        final FileBackEndManagerFactory backEndManagerFactory = new FileBackEndManagerFactory ( new FileBackEndFactory ( ROOT, 0 ) );
+        final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[] { new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 1000 }, 1, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) };
+        this.manager = backEndManagerFactory.getBackEndManager ( Conversions.convertMetaDatasToConfiguration ( metaDatas ), true );
+        this.manager.initialize ();
+    }
+
+    /**
+     * This method deletes all data that has been created during the test and restores the previous registry.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        this.manager.releaseStorageChannelTree ();
+        this.manager.deinitialize ();
+        this.manager.delete ();
+        new File ( ROOT ).delete ();
+        Metrics.setRegistry ( this.previousRegistry );
+    }
+
+    /**
+     * This method tests that inserting values updates the counters, timers and gauges of the configuration and of the file back end.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testInsertMetrics () throws Exception
+    {
+        final CalculatingStorageChannel rootStorageChannel = this.manager.buildStorageChannelTree ();
+        final long startTime = System.currentTimeMillis () - VALUE_COUNT * 1000;
+        final DoubleValue[] values = new DoubleValue[VALUE_COUNT];
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            values[i] = new DoubleValue ( startTime + i * 1000, 1.0, 0, 1, i );
+        }
+        rootStorageChannel.updateDoubles ( values );
+
+        final Map<String, Metric> metrics = this.registry.getMetrics ();
+        Assert.assertEquals ( VALUE_COUNT, ( (Counter)metrics.get ( Metrics.name ( CONFIGURATION_ID, "insert", "values" ) ) ).getCount () );
+        Assert.assertEquals ( 1, ( (Timer)metrics.get ( Metrics.name ( CONFIGURATION_ID, "insert", "time" ) ) ).getCount () );
+        Assert.assertTrue ( ( (Counter)metrics.get ( Metrics.name ( CONFIGURATION_ID, "fragment", "lookups" ) ) ).getCount () > 0 );
+        Assert.assertTrue ( ( (Counter)metrics.get ( Metrics.name ( CONFIGURATION_ID, "fragment", "creations" ) ) ).getCount () > 0 );
+        Assert.assertNotNull ( metrics.get ( Metrics.name ( CONFIGURATION_ID, "lock", "manager", "writeWait" ) ) );
+        Assert.assertTrue ( ( (Counter)metrics.get ( Metrics.name ( "file", "write", "calls" ) ) ).getCount () > 0 );
+        Assert.assertTrue ( ( (Counter)metrics.get ( Metrics.name ( "file", "write", "bytes" ) ) ).getCount () > 0 );
+        Assert.assertEquals ( 0, ( (Gauge)metrics.get ( Metrics.name ( CONFIGURATION_ID, "repair", "pending" ) ) ).getValue () );
+        Assert.assertNotNull ( metrics.get ( Metrics.name ( CONFIGURATION_ID, "calculation", CalculationMethod.convertCalculationMethodToShortString ( CalculationMethod.AVERAGE ), 1, "lag" ) ) );
+
+        // the gauges of the storage channel tree are removed when the tree is released
+        this.manager.releaseStorageChannelTree ();
+        Assert.assertNull ( this.registry.getMetrics ().get ( Metrics.name ( CONFIGURATION_ID, "calculation", CalculationMethod.convertCalculationMethodToShortString ( CalculationMethod.AVERAGE ), 1, "lag" ) ) );
+    }
+
+    /**
+     * This method tests that the metrics are provided as attributes of an MBean.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testMBean () throws Exception
+    {
+        this.manager.buildStorageChannelTree ().updateDouble ( new DoubleValue ( System.currentTimeMillis (), 1.0, 0, 1, 1.0 ) );
+        Metrics.registerMBean ();
+        final ObjectName objectName = new ObjectName ( Metrics.OBJECT_NAME );
+        Assert.assertEquals ( 1L, ManagementFactory.getPlatformMBeanServer ().getAttribute ( objectName, Metrics.name ( CONFIGURATION_ID, "insert", "values" ) ) );
+        Assert.assertEquals ( 1L, ManagementFactory.getPlatformMBeanServer ().getAttribute ( objectName, Metrics.name ( CONFIGURATION_ID, "insert", "time" ) + MetricRegistryMBean.COUNT_SUFFIX ) );
+    }
+
+    /**
+     * This method tests that counters and timers that are updated by several threads concurrently do not lose updates.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testConcurrentUpdates () throws Exception
+    {
+        final Counter counter = this.registry.counter ( Metrics.name ( CONFIGURATION_ID, "test", "counter" ) );
+        final Timer timer = this.registry.timer ( Metrics.name ( CONFIGURATION_ID, "test", "timer" ) );
+        final List<Thread> threads = new ArrayList<Thread> ();
+        for ( int i = 0; i < THREAD_COUNT; i++ )
+        {
+            final int threadIndex = i;
+            threads.add ( new Thread ()
+            {
+                @Override
+                public void run ()
+                {
+                    for ( int j = 0; j < UPDATE_COUNT; j++ )
+                    {
+                        counter.add ( 2 );
+                        timer.update ( j % 10 + threadIndex );
+                    }
+                }
+            } );
+        }
+        for ( final Thread thread : threads )
+        {
+            thread.start ();
+        }
+        for ( final Thread thread : threads )
+        {
+            thread.join ();
+        }
+        long expectedTotalTime = 0;
+        for ( int i = 0; i < THREAD_COUNT; i++ )
+        {
+            expectedTotalTime += ( UPDATE_COUNT / 10 ) * ( 45 + 10 * i );
+        }
+        Assert.assertEquals ( 2L * THREAD_COUNT * UPDATE_COUNT, counter.getCount () );
+        Assert.assertEquals ( (long)THREAD_COUNT * UPDATE_COUNT, timer.getCount () );
+        Assert.assertEquals ( expectedTotalTime, timer.getTotalTime () );
+        Assert.assertEquals ( 9 + THREAD_COUNT - 1, timer.getMaximumTime () );
+    }
+
+    /**
+     * This method tests that only acquisitions of locks that have to wait are recorded and that recording can be disabled.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testLockWaitTime () throws Exception
+    {
+        final Timer readWaitTimer = this.registry.timer ( Metrics.name ( CONFIGURATION_ID, "test", "readWait" ) );
+        final Timer writeWaitTimer = this.registry.timer ( Metrics.name ( CONFIGURATION_ID, "test", "writeWait" ) );
+        final ReentrantReadWriteLock lock = TimedReentrantReadWriteLock.create ( readWaitTimer, writeWaitTimer );
+        Assert.assertTrue ( lock instanceof TimedReentrantReadWriteLock );
+
+        // acquisitions that do not have to wait are not recorded
+        lock.readLock ().lock ();
+        lock.readLock ().unlock ();
+        lock.writeLock ().lock ();
+        lock.writeLock ().unlock ();
+        Assert.assertEquals ( 0, readWaitTimer.getCount () );
+        Assert.assertEquals ( 0, writeWaitTimer.getCount () );
+
+        // an acquisition that has to wait for another thread is recorded
+        lock.writeLock ().lock ();
+        final Thread reader = new Thread ()
+        {
+            @Override
+            public void run ()
+            {
+                lock.readLock ().lock ();
+                lock.readLock ().unlock ();
+            }
+        };
+        try
+        {
+            reader.start ();
+            while ( !lock.hasQueuedThread ( reader ) )
+            {
+                Thread.sleep ( 1 );
+            }
+        }
+        finally
+        {
+            lock.writeLock ().unlock ();
+        }
+        reader.join ();
+        Assert.assertEquals ( 1, readWaitTimer.getCount () );
+        Assert.assertTrue ( readWaitTimer.getTotalTime () > 0 );
+        Assert.assertEquals ( 0, writeWaitTimer.getCount () );
+
+        // locks that are created while recording is disabled are plain locks
+        Metrics.setLockTimingEnabled ( false );
+        try
+        {
+            Assert.assertFalse ( TimedReentrantReadWriteLock.create ( readWaitTimer, writeWaitTimer ) instanceof TimedReentrantReadWriteLock );
+        }
+        finally
+        {
+            Metrics.setLockTimingEnabled ( true );
+        }
+    }
+}
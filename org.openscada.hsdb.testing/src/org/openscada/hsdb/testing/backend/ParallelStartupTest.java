@@ -0,0 +1,207 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+
+/**
+ * Test class for the parallel startup of file back end managers.
+ */
+public class ParallelStartupTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_startup_test";
+
+    /** Prefix of the ids of the configurations that are used for the test. */
+    private final static String CONFIGURATION_ID_PREFIX = "ParallelStartupTest";
+
+    /** Count of configurations that are created. */
+    private final static int CONFIGURATION_COUNT = 4;
+
+    /** Count of values that are stored per configuration. */
+    private final static int VALUE_COUNT = 2000;
+
+    /** Factory that is used to create back end objects. */
+    private FileBackEndFactory backEndFactory;
+
+    /** Factory that is used to create managers. */
+    private FileBackEndManagerFactory backEndManagerFactory;
+
+    /** Managers that have been created during the test. */
+    private final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+
+    /**
+     * This method prepares the factories and stores test values for several configurations.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        this.backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        this.backEndManagerFactory = new FileBackEndManagerFactory ( this.backEndFactory );
+        for ( int i = 0; i < CONFIGURATION_COUNT; i++ )
+        {
+            final String configurationId = CONFIGURATION_ID_PREFIX + i;
+            final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[] { new StorageChannelMetaData ( configurationId, CalculationMethod.NATIVE, new long[0], 0, 0, 100000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( configurationId, CalculationMethod.AVERAGE, new long[] { 1000 }, 1, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) };
+            final FileBackEndManager manager = this.backEndManagerFactory.getBackEndManager ( Conversions.convertMetaDatasToConfiguration ( metaDatas ), true );
+            manager.initialize ();
+            final CalculatingStorageChannel rootStorageChannel = manager.buildStorageChannelTree ();
+            final DoubleValue[] values = new DoubleValue[VALUE_COUNT];
+            for ( int j = 0; j < VALUE_COUNT; j++ )
+            {
+                values[j] = new DoubleValue ( 1000000 + j * 250L, 1.0, 0, 1, i * VALUE_COUNT + j );
+            }
+            rootStorageChannel.updateDoubles ( values );
+            manager.releaseStorageChannelTree ();
+            manager.deinitialize ();
+        }
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        for ( final FileBackEndManager manager : this.managers )
+        {
+            manager.deinitialize ();
+        }
+        this.managers.clear ();
+        for ( final FileBackEndManager manager : this.backEndManagerFactory.getBackEndManagers () )
+        {
+            manager.delete ();
+        }
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method asserts that the passed manager provides the values that have been stored during the setup.
+     * @param manager manager that has to be checked
+     * @throws Exception in case of problems
+     */
+    private void assertValues ( final FileBackEndManager manager ) throws Exception
+    {
+        final int index = Integer.parseInt ( manager.getConfiguration ().getId ().substring ( CONFIGURATION_ID_PREFIX.length () ) );
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = manager.buildStorageChannelStructure ();
+        final ExtendedStorageChannel nativeChannel = structure.get ( 0L ).get ( CalculationMethod.NATIVE ).keySet ().iterator ().next ();
+        final DoubleValue[] actual = nativeChannel.getDoubleValues ( 0, Long.MAX_VALUE );
+        Assert.assertEquals ( VALUE_COUNT, actual.length );
+        for ( int i = 0; i < actual.length; i++ )
+        {
+            Assert.assertEquals ( 1000000 + i * 250L, actual[i].getTime () );
+            Assert.assertEquals ( index * VALUE_COUNT + i, actual[i].getValue (), 1e-9 );
+        }
+    }
+
+    /**
+     * This method tests that all managers are loaded and initialized in parallel.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testParallelLoading () throws Exception
+    {
+        final FileBackEndManager[] loadedManagers = this.backEndManagerFactory.getBackEndManagers ( true );
+        for ( final FileBackEndManager manager : loadedManagers )
+        {
+            this.managers.add ( manager );
+        }
+        Assert.assertEquals ( CONFIGURATION_COUNT, loadedManagers.length );
+        final Set<String> configurationIds = new HashSet<String> ();
+        for ( final FileBackEndManager manager : loadedManagers )
+        {
+            configurationIds.add ( manager.getConfiguration ().getId () );
+            assertValues ( manager );
+        }
+        Assert.assertEquals ( CONFIGURATION_COUNT, configurationIds.size () );
+    }
+
+    /**
+     * This method tests that the meta data derived from the file names matches the meta data stored in the files.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testFileNameMetaData () throws Exception
+    {
+        for ( int i = 0; i < CONFIGURATION_COUNT; i++ )
+        {
+            final String configurationId = CONFIGURATION_ID_PREFIX + i;
+            final Set<String> expected = new HashSet<String> ();
+            for ( final StorageChannelMetaData metaData : this.backEndFactory.getExistingBackEndsMetaData ( configurationId, false ) )
+            {
+                expected.add ( String.format ( "%s/%s/%s/%s", metaData.getCalculationMethod (), metaData.getDetailLevelId (), metaData.getStartTime (), metaData.getEndTime () ) );
+            }
+            final Set<String> actual = new HashSet<String> ();
+            for ( final StorageChannelMetaData metaData : this.backEndFactory.getExistingBackEndsMetaDataFromFileNames ( configurationId ) )
+            {
+                Assert.assertEquals ( configurationId, metaData.getConfigurationId () );
+                actual.add ( String.format ( "%s/%s/%s/%s", metaData.getCalculationMethod (), metaData.getDetailLevelId (), metaData.getStartTime (), metaData.getEndTime () ) );
+            }
+            Assert.assertFalse ( expected.isEmpty () );
+            Assert.assertEquals ( expected, actual );
+        }
+    }
+
+    /**
+     * This method tests that the back end fragments are restored from the file names if the fragment catalog is lost.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testRecoveryFromFileNames () throws Exception
+    {
+        final String configurationId = CONFIGURATION_ID_PREFIX + 0;
+        final String configurationIdFileName = FileBackEndFactory.encodeFileNamePart ( configurationId );
+        Assert.assertTrue ( new File ( this.backEndManagerFactory.getFragmentCatalogFileName ( configurationIdFileName ) ).delete () | new File ( this.backEndManagerFactory.getFragmentCatalogLogFileName ( configurationIdFileName ) ).delete () );
+        FileBackEndManager manager = null;
+        for ( final FileBackEndManager loadedManager : this.backEndManagerFactory.getBackEndManagers () )
+        {
+            if ( configurationId.equals ( loadedManager.getConfiguration ().getId () ) )
+            {
+                manager = loadedManager;
+            }
+        }
+        Assert.assertNotNull ( manager );
+        manager.initialize ();
+        this.managers.add ( manager );
+        assertValues ( manager );
+    }
+}
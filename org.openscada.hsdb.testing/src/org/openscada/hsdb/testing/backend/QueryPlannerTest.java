@@ -0,0 +1,189 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.StorageChannelQueryPlanner;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
+
+/**
+ * Test class for the selection of compression levels by class org.openscada.hsdb.StorageChannelQueryPlanner.
+ */
+public class QueryPlannerTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_query_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "QueryPlannerTest";
+
+    /** Count of values that are stored. */
+    private final static int VALUE_COUNT = 20000;
+
+    /** Time of the first stored value. */
+    private final static long START_TIME = 1000000;
+
+    /** Manager that is used for the test. */
+    private FileBackEndManager manager;
+
+    /** Time of the latest stored value. */
+    private long latestTime;
+
+    /**
+     * This method creates a manager with two compressed levels and imports test data.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        final List<StorageChannelMetaData> metaDatas = new ArrayList<StorageChannelMetaData> ();
+        metaDatas.add ( new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, 200000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) );
+        metaDatas.add ( new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 1000 }, 1, 0, 1000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) );
+        metaDatas.add ( new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 10000 }, 2, 0, 10000000, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) );
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( metaDatas.toArray ( new StorageChannelMetaData[metaDatas.size ()] ) );
+        final FileBackEndFactory backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        this.manager = new FileBackEndManagerFactory ( backEndFactory ).getBackEndManager ( configuration, true );
+        this.manager.initialize ();
+
+        // import values with changing content so that each compressed time span gets its own value
+        final Random random = new Random ( 4711 );
+        final DoubleValueBatch values = new DoubleValueBatch ( VALUE_COUNT );
+        long time = START_TIME;
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            time += 1 + random.nextInt ( 400 );
+            values.add ( time, 1.0, 0, 1, random.nextInt ( 1000 ) / 10.0 );
+        }
+        this.latestTime = time;
+        this.manager.importValues ( new SingleBatchValueCursor<DoubleValueBatch> ( values, new DoubleValueBatch ( 0 ) ) );
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        this.manager.deinitialize ();
+        this.manager.delete ();
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method tests the selection of the detail level depending on the requested count of values.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testLevelSelection () throws Exception
+    {
+        final StorageChannelQueryPlanner planner = new StorageChannelQueryPlanner ( this.manager.buildStorageChannelStructure () );
+        Assert.assertEquals ( 0, planner.selectDetailLevel ( START_TIME, START_TIME + 5000, 1000, CalculationMethod.AVERAGE ) );
+        Assert.assertEquals ( 1, planner.selectDetailLevel ( START_TIME, START_TIME + 500000, 1000, CalculationMethod.AVERAGE ) );
+        Assert.assertEquals ( 2, planner.selectDetailLevel ( START_TIME, this.latestTime, 1000, CalculationMethod.AVERAGE ) );
+        Assert.assertEquals ( 2, planner.selectDetailLevel ( START_TIME, this.latestTime, 1, CalculationMethod.AVERAGE ) );
+        Assert.assertEquals ( 0, planner.selectDetailLevel ( START_TIME, this.latestTime, 1000, CalculationMethod.MAXIMUM ) );
+    }
+
+    /**
+     * This method tests that values of the coarsest level are completed by values of finer levels for time spans that have not yet been calculated.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testStitchedQuery () throws Exception
+    {
+        final long endTime = this.latestTime + 1;
+        final BaseValueBatch result = this.manager.queryValues ( START_TIME, endTime, 1000, CalculationMethod.AVERAGE );
+        Assert.assertEquals ( DataType.DOUBLE_VALUE, result.getDataType () );
+        Assert.assertTrue ( result.isSortedByTime () );
+        Assert.assertTrue ( result.getSize () < 1000 );
+
+        // each part of the result has to match the values of the level that provides it
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = this.manager.buildStorageChannelStructure ();
+        final long level2EndTime = Conversions.getFragmentStartTime ( this.latestTime, 10000 );
+        final long level1EndTime = Conversions.getFragmentStartTime ( this.latestTime, 1000 );
+        final List<DoubleValue> expected = new ArrayList<DoubleValue> ();
+        addValues ( expected, getChannel ( structure, 2, CalculationMethod.AVERAGE ).getDoubleValues ( START_TIME, level2EndTime ), Long.MIN_VALUE, level2EndTime );
+        addValues ( expected, getChannel ( structure, 1, CalculationMethod.AVERAGE ).getDoubleValues ( level2EndTime, level1EndTime ), level2EndTime, level1EndTime );
+        addValues ( expected, getChannel ( structure, 0, CalculationMethod.NATIVE ).getDoubleValues ( level1EndTime, endTime ), level1EndTime, endTime );
+        Assert.assertTrue ( level2EndTime < level1EndTime );
+        Assert.assertEquals ( expected.size (), result.getSize () );
+        final DoubleValueBatch doubleResult = (DoubleValueBatch)result;
+        for ( int i = 0; i < expected.size (); i++ )
+        {
+            Assert.assertEquals ( expected.get ( i ).getTime (), doubleResult.getTime ( i ) );
+            Assert.assertEquals ( expected.get ( i ).getValue (), doubleResult.getValue ( i ), 1e-9 );
+        }
+        Assert.assertEquals ( this.latestTime, doubleResult.getTime ( doubleResult.getSize () - 1 ) );
+    }
+
+    /**
+     * This method returns the storage channel of the specified level.
+     * @param structure storage channels mapped by detail level id and calculation method
+     * @param detailLevelId detail level id of the requested storage channel
+     * @param calculationMethod calculation method of the requested storage channel
+     * @return storage channel of the specified level
+     */
+    private static ExtendedStorageChannel getChannel ( final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure, final long detailLevelId, final CalculationMethod calculationMethod )
+    {
+        return structure.get ( detailLevelId ).get ( calculationMethod ).keySet ().iterator ().next ();
+    }
+
+    /**
+     * This method adds all passed values that lie within the specified time span to the passed list.
+     * @param target list to which the values are added
+     * @param values values to be added
+     * @param startTime start of the time span (inclusive)
+     * @param endTime end of the time span (exclusive)
+     */
+    private static void addValues ( final List<DoubleValue> target, final DoubleValue[] values, final long startTime, final long endTime )
+    {
+        for ( final DoubleValue value : values )
+        {
+            if ( value.getTime () >= startTime && value.getTime () < endTime )
+            {
+                target.add ( value );
+            }
+        }
+    }
+}
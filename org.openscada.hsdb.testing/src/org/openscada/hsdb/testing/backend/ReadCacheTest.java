@@ -0,0 +1,377 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.BackEnd;
+import org.openscada.hsdb.backend.BackEndMultiplexer;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.backend.file.FileHandleManager;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.LongValue;
+
+/**
+ * Test class for the shared cache of back end objects that are used for reading.
+ */
+public class ReadCacheTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_read_cache_test";
+
+    /** Prefix of the ids of the configurations that are used for the test. */
+    private final static String CONFIGURATION_ID_PREFIX = "ReadCacheTest";
+
+    /** Time span in milliseconds that is covered by each back end fragment. */
+    private final static long FRAGMENT_TIMESPAN = 1000;
+
+    /** Count of back end fragments that contain values. */
+    private final static int FRAGMENT_COUNT = 4;
+
+    /** Time span in milliseconds between two stored values. */
+    private final static long TIME_STEP = 10;
+
+    /** Count of managers that are used to check the count of open files. */
+    private final static int MANAGER_COUNT = 16;
+
+    /** Directory that contains one entry for each open file descriptor of the process. It is only available on Linux. */
+    private final static File FILE_DESCRIPTOR_DIRECTORY = new File ( "/proc/self/fd" );
+
+    /** Manager of the open files of all file back end objects. */
+    private final FileHandleManager fileHandleManager = FileHandleManager.getInstance ();
+
+    /** Maximum count of open files before the test was started. */
+    private int maximumOpenFiles;
+
+    /** Factory that is used to create back end objects. */
+    private FileBackEndFactory backEndFactory;
+
+    /** Factory that is used to create managers. */
+    private FileBackEndManagerFactory backEndManagerFactory;
+
+    /** Managers that have been created during the test. */
+    private final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+
+    /**
+     * This method prepares the factories.
+     */
+    @Before
+    public void setUp ()
+    {
+        this.backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        this.backEndManagerFactory = new FileBackEndManagerFactory ( this.backEndFactory );
+        this.maximumOpenFiles = this.fileHandleManager.getMaximumOpenFiles ();
+    }
+
+    /**
+     * This method deletes all data that has been created during the test and restores the configuration of the file handle manager.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        for ( final FileBackEndManager manager : this.managers )
+        {
+            manager.deinitialize ();
+            manager.delete ();
+            this.backEndFactory.deleteBackEnds ( manager.getConfiguration ().getId () );
+        }
+        this.managers.clear ();
+        new File ( ROOT ).delete ();
+        this.fileHandleManager.setMaximumOpenFiles ( this.maximumOpenFiles );
+    }
+
+    /**
+     * This method creates a manager with the passed size of the read cache and stores values within several back end fragments.
+     * @param readCacheSize count of back end objects that are kept initialized for reading
+     * @return created manager
+     * @throws Exception in case of problems
+     */
+    private FileBackEndManager createManager ( final int readCacheSize ) throws Exception
+    {
+        return createManager ( "" + readCacheSize, readCacheSize );
+    }
+
+    /**
+     * This method creates a manager with the passed size of the read cache and stores values within several back end fragments.
+     * @param idSuffix suffix that is used to create a unique configuration id
+     * @param readCacheSize count of back end objects that are kept initialized for reading
+     * @return created manager
+     * @throws Exception in case of problems
+     */
+    private FileBackEndManager createManager ( final String idSuffix, final int readCacheSize ) throws Exception
+    {
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( CONFIGURATION_ID_PREFIX + idSuffix, CalculationMethod.NATIVE, new long[0], 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.LONG_VALUE );
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( new StorageChannelMetaData[] { metaData } );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 0, FRAGMENT_TIMESPAN + Conversions.MILLISECOND_SPAN_SUFFIX );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_READ_CACHE_SIZE, "" + readCacheSize );
+        this.backEndFactory.deleteBackEnds ( metaData.getConfigurationId () );
+        final FileBackEndManager manager = this.backEndManagerFactory.getBackEndManager ( configuration, true );
+        this.managers.add ( manager );
+        manager.initialize ();
+        final BackEndMultiplexer backEnd = new BackEndMultiplexer ( manager );
+        backEnd.initialize ( metaData );
+        final LongValue[] values = new LongValue[(int) ( FRAGMENT_COUNT * FRAGMENT_TIMESPAN / TIME_STEP )];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[i] = new LongValue ( i * TIME_STEP, 1.0, 0, 1, i );
+        }
+        backEnd.updateLongs ( values );
+        backEnd.deinitialize ();
+        return manager;
+    }
+
+    /**
+     * This method releases the passed back end objects that have been acquired by the passed user.
+     * @param manager manager from which the back end objects have been acquired
+     * @param user user that has acquired the back end objects
+     * @param backEnds back end objects that have to be released
+     */
+    private static void release ( final FileBackEndManager manager, final Object user, final BackEnd[] backEnds )
+    {
+        for ( final BackEnd backEnd : backEnds )
+        {
+            manager.deinitializeBackEnd ( user, backEnd );
+        }
+    }
+
+    /**
+     * This method reads all back end fragments of the passed managers and releases the back end objects afterwards, so that they stay in the read caches.
+     * @param managers managers whose back end fragments have to be read
+     * @throws Exception in case of problems
+     */
+    private static void readAll ( final List<FileBackEndManager> managers ) throws Exception
+    {
+        final Object user = new Object ();
+        for ( final FileBackEndManager manager : managers )
+        {
+            final BackEnd[] backEnds = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+            Assert.assertEquals ( FRAGMENT_COUNT, backEnds.length );
+            for ( int i = 0; i < FRAGMENT_COUNT; i++ )
+            {
+                assertFragmentValues ( backEnds[i], FRAGMENT_COUNT - 1 - i );
+            }
+            release ( manager, user, backEnds );
+        }
+    }
+
+    /**
+     * This method returns the count of file descriptors that are currently open within the process.
+     * @return count of open file descriptors or -1, if the count cannot be determined on this platform
+     */
+    private static int getOpenFileDescriptorCount ()
+    {
+        final String[] entries = FILE_DESCRIPTOR_DIRECTORY.list ();
+        return entries == null ? -1 : entries.length;
+    }
+
+    /**
+     * This method asserts that the passed count of file descriptors has not been exceeded by more than the passed count.
+     * Nothing is checked if the count of open file descriptors cannot be determined on this platform.
+     * @param initialCount count of open file descriptors before the back end fragments were read
+     * @param maximumIncrease maximum count of additional open file descriptors
+     */
+    private static void assertOpenFileDescriptorIncrease ( final int initialCount, final int maximumIncrease )
+    {
+        final int count = getOpenFileDescriptorCount ();
+        if ( initialCount >= 0 && count >= 0 )
+        {
+            Assert.assertTrue ( String.format ( "%d file descriptors open, at most %d expected", count, initialCount + maximumIncrease ), count <= initialCount + maximumIncrease );
+        }
+    }
+
+    /**
+     * This method asserts that the passed back end object provides the values of the specified back end fragment.
+     * @param backEnd back end object that has to be checked
+     * @param fragmentIndex index of the back end fragment
+     * @throws Exception in case of problems
+     */
+    private static void assertFragmentValues ( final BackEnd backEnd, final int fragmentIndex ) throws Exception
+    {
+        final long startTime = fragmentIndex * FRAGMENT_TIMESPAN;
+        final LongValue[] values = backEnd.getLongValues ( startTime, startTime + FRAGMENT_TIMESPAN );
+        Assert.assertEquals ( FRAGMENT_TIMESPAN / TIME_STEP, values.length );
+        Assert.assertEquals ( startTime, values[0].getTime () );
+        Assert.assertEquals ( startTime / TIME_STEP, values[0].getValue () );
+    }
+
+    /**
+     * This method tests that all users share the same initialized back end objects for reading and that released objects stay initialized.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testSharedBackEnds () throws Exception
+    {
+        final FileBackEndManager manager = createManager ( FRAGMENT_COUNT );
+        final Object user1 = new Object ();
+        final Object user2 = new Object ();
+        final long missCount = manager.getReadCache ().getMissCount ();
+        final BackEnd[] backEnds1 = manager.getExistingBackEnds ( user1, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+        final BackEnd[] backEnds2 = manager.getExistingBackEnds ( user2, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+        Assert.assertEquals ( FRAGMENT_COUNT, backEnds1.length );
+        Assert.assertEquals ( FRAGMENT_COUNT, backEnds2.length );
+        for ( int i = 0; i < FRAGMENT_COUNT; i++ )
+        {
+            Assert.assertSame ( backEnds1[i], backEnds2[i] );
+        }
+        Assert.assertEquals ( missCount + FRAGMENT_COUNT, manager.getReadCache ().getMissCount () );
+        release ( manager, user1, backEnds1 );
+
+        // the objects are still in use by the second user
+        for ( int i = 0; i < FRAGMENT_COUNT; i++ )
+        {
+            assertFragmentValues ( backEnds2[i], FRAGMENT_COUNT - 1 - i );
+        }
+        release ( manager, user2, backEnds2 );
+
+        // released objects stay initialized and are returned again
+        final long hitCount = manager.getReadCache ().getHitCount ();
+        final BackEnd[] backEnds3 = manager.getExistingBackEnds ( user1, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+        for ( int i = 0; i < FRAGMENT_COUNT; i++ )
+        {
+            Assert.assertSame ( backEnds1[i], backEnds3[i] );
+            assertFragmentValues ( backEnds3[i], FRAGMENT_COUNT - 1 - i );
+        }
+        Assert.assertEquals ( hitCount + FRAGMENT_COUNT, manager.getReadCache ().getHitCount () );
+        release ( manager, user1, backEnds3 );
+        Assert.assertEquals ( FRAGMENT_COUNT, manager.getReadCache ().getSize () );
+    }
+
+    /**
+     * This method tests that unreferenced back end objects are evicted in least recently used order if the cache is full.
+     * Referenced objects are never evicted.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testEviction () throws Exception
+    {
+        final FileBackEndManager manager = createManager ( 1 );
+        final Object user = new Object ();
+        final BackEnd[] oldestBackEnds = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, 0, FRAGMENT_TIMESPAN - 1 );
+        Assert.assertEquals ( 1, oldestBackEnds.length );
+        final BackEnd[] allBackEnds = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+
+        // all objects are referenced, so the cache exceeds its size until they are released
+        Assert.assertEquals ( FRAGMENT_COUNT, manager.getReadCache ().getSize () );
+        final long evictionCount = manager.getReadCache ().getEvictionCount ();
+        release ( manager, user, allBackEnds );
+        Assert.assertEquals ( 1, manager.getReadCache ().getSize () );
+        Assert.assertEquals ( evictionCount + FRAGMENT_COUNT - 1, manager.getReadCache ().getEvictionCount () );
+
+        // the object that is still referenced is the one that is kept
+        assertFragmentValues ( oldestBackEnds[0], 0 );
+        release ( manager, user, oldestBackEnds );
+        final BackEnd[] backEnds = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, 0, FRAGMENT_TIMESPAN - 1 );
+        Assert.assertSame ( oldestBackEnds[0], backEnds[0] );
+        release ( manager, user, backEnds );
+    }
+
+    /**
+     * This method tests that a back end object is no longer returned after its fragment has been marked as corrupt.
+     * An object that is still referenced at that time remains usable until it is released.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testInvalidation () throws Exception
+    {
+        final FileBackEndManager manager = createManager ( FRAGMENT_COUNT );
+        final Object user = new Object ();
+        final long startTime = FRAGMENT_TIMESPAN;
+        final BackEnd[] backEnds1 = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, startTime, startTime + FRAGMENT_TIMESPAN );
+        Assert.assertEquals ( 1, backEnds1.length );
+        manager.markBackEndAsCorrupt ( 0, CalculationMethod.NATIVE, startTime );
+        assertFragmentValues ( backEnds1[0], 1 );
+
+        // the previous fragment is returned as well, since the earliest value of a corrupt fragment is unknown
+        final BackEnd[] backEnds2 = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, startTime, startTime + FRAGMENT_TIMESPAN );
+        Assert.assertEquals ( 2, backEnds2.length );
+        Assert.assertNotSame ( backEnds1[0], backEnds2[0] );
+        release ( manager, user, backEnds1 );
+        assertFragmentValues ( backEnds2[0], 1 );
+        release ( manager, user, backEnds2 );
+    }
+
+    /**
+     * This method tests that a new back end object is created for each request if the cache is disabled.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testDisabled () throws Exception
+    {
+        final FileBackEndManager manager = createManager ( 0 );
+        final Object user = new Object ();
+        final BackEnd[] backEnds1 = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+        final BackEnd[] backEnds2 = manager.getExistingBackEnds ( user, 0, CalculationMethod.NATIVE, 0, FRAGMENT_COUNT * FRAGMENT_TIMESPAN );
+        Assert.assertEquals ( FRAGMENT_COUNT, backEnds1.length );
+        for ( int i = 0; i < FRAGMENT_COUNT; i++ )
+        {
+            Assert.assertNotSame ( backEnds1[i], backEnds2[i] );
+        }
+        release ( manager, user, backEnds1 );
+        release ( manager, user, backEnds2 );
+        Assert.assertEquals ( 0, manager.getReadCache ().getSize () );
+    }
+
+    /**
+     * This method tests that the back end objects in the read caches of many managers do not keep their files open beyond the limit of the process.
+     * If the file handle manager is disabled, the files are closed after each access.
+     * Otherwise the count of open files of all managers together is limited by the file handle manager.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testOpenFilesOfManyManagers () throws Exception
+    {
+        final List<FileBackEndManager> managers = new ArrayList<FileBackEndManager> ();
+        for ( int i = 0; i < MANAGER_COUNT; i++ )
+        {
+            managers.add ( createManager ( "Manager" + i, FRAGMENT_COUNT ) );
+        }
+
+        // without a process wide limit, cached back end objects must not keep their files open
+        this.fileHandleManager.setMaximumOpenFiles ( 0 );
+        final int initialCount = getOpenFileDescriptorCount ();
+        readAll ( managers );
+        for ( final FileBackEndManager manager : managers )
+        {
+            Assert.assertEquals ( FRAGMENT_COUNT, manager.getReadCache ().getSize () );
+        }
+        Assert.assertEquals ( 0, this.fileHandleManager.getOpenFileCount () );
+        assertOpenFileDescriptorIncrease ( initialCount, 0 );
+
+        // with a process wide limit, the files of all managers together stay within that limit
+        this.fileHandleManager.setMaximumOpenFiles ( FRAGMENT_COUNT );
+        readAll ( managers );
+        readAll ( managers );
+        Assert.assertTrue ( this.fileHandleManager.getOpenFileCount () <= FRAGMENT_COUNT );
+        assertOpenFileDescriptorIncrease ( initialCount, FRAGMENT_COUNT );
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+
+/**
+ * Test class for repairing corrupt back end fragments of several detail levels in parallel.
+ */
+public class RepairTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_repair_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "RepairTest";
+
+    /** Time span in milliseconds between two stored values. */
+    private final static long TIME_STEP = 250;
+
+    /** Count of values that are stored before the back end fragments are corrupted. */
+    private final static int VALUE_COUNT = 2000;
+
+    /** Count of values that are inserted while the back end fragments are repaired. */
+    private final static int CONCURRENT_VALUE_COUNT = 400;
+
+    /** Maximum time in seconds to wait for tasks to complete. */
+    private final static long TIMEOUT = 60;
+
+    /** Factory that is used to create back end objects. */
+    private FileBackEndFactory backEndFactory;
+
+    /** Manager that is used for the test. */
+    private FileBackEndManager manager;
+
+    /**
+     * This method creates a manager with two calculated detail levels that are split into several back end fragments and stores values.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[] { new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 1000 }, 1, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 5000 }, 2, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) };
+        final Configuration configuration = Conversions.convertMetaDatasToConfiguration ( metaDatas );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 0, "100000" + Conversions.MILLISECOND_SPAN_SUFFIX );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 1, "50000" + Conversions.MILLISECOND_SPAN_SUFFIX );
+        configuration.getData ().put ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + 2, "100000" + Conversions.MILLISECOND_SPAN_SUFFIX );
+        configuration.getData ().put ( Configuration.MANAGER_REPAIR_THREAD_COUNT, "4" );
+        this.backEndFactory = new FileBackEndFactory ( ROOT, 0 );
+        this.backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        this.manager = new FileBackEndManagerFactory ( this.backEndFactory ).getBackEndManager ( configuration, true );
+        this.manager.initialize ();
+        final CalculatingStorageChannel rootStorageChannel = this.manager.buildStorageChannelTree ();
+        final DoubleValue[] values = new DoubleValue[VALUE_COUNT];
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            values[i] = new DoubleValue ( i * TIME_STEP, 1.0, 0, 1, i % 37 );
+        }
+        rootStorageChannel.updateDoubles ( values );
+        this.manager.releaseStorageChannelTree ();
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        this.manager.deinitialize ();
+        this.manager.delete ();
+        this.backEndFactory.deleteBackEnds ( CONFIGURATION_ID );
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method returns the storage channel of the specified detail level.
+     * @param detailLevelId detail level id of the storage channel
+     * @return storage channel of the specified detail level
+     */
+    private ExtendedStorageChannel getStorageChannel ( final long detailLevelId )
+    {
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = this.manager.buildStorageChannelStructure ();
+        return structure.get ( detailLevelId ).get ( detailLevelId == 0 ? CalculationMethod.NATIVE : CalculationMethod.AVERAGE ).keySet ().iterator ().next ();
+    }
+
+    /**
+     * This method returns the values of the specified detail level that are located before the passed time.
+     * @param detailLevelId detail level id of the values
+     * @param endTime end of the time span that has to be read
+     * @return values of the specified detail level
+     * @throws Exception in case of problems
+     */
+    private DoubleValue[] getValues ( final long detailLevelId, final long endTime ) throws Exception
+    {
+        return getStorageChannel ( detailLevelId ).getDoubleValues ( 0, endTime );
+    }
+
+    /**
+     * This method asserts that the passed arrays contain the same values.
+     * @param expected expected values
+     * @param actual values that have to be checked
+     */
+    private static void assertValues ( final DoubleValue[] expected, final DoubleValue[] actual )
+    {
+        Assert.assertEquals ( expected.length, actual.length );
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            Assert.assertEquals ( expected[i].getTime (), actual[i].getTime () );
+            Assert.assertEquals ( expected[i].getValue (), actual[i].getValue (), 1e-9 );
+            Assert.assertEquals ( expected[i].getQualityIndicator (), actual[i].getQualityIndicator (), 1e-9 );
+        }
+    }
+
+    /**
+     * This method tests that corrupt back end fragments of dependent detail levels are repaired in parallel in the order of their dependencies while values are inserted and queried concurrently.
+     * Each fragment of the second detail level depends on two fragments of the first detail level, so it can only be repaired correctly after both of them have been repaired.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testDependentParallelRepair () throws Exception
+    {
+        final long endTime = VALUE_COUNT * TIME_STEP - 5000;
+        final DoubleValue[] expectedLevel1Values = getValues ( 1, endTime );
+        final DoubleValue[] expectedLevel2Values = getValues ( 2, endTime );
+        Assert.assertTrue ( expectedLevel1Values.length > 0 );
+        Assert.assertTrue ( expectedLevel2Values.length > 0 );
+
+        // remove all files of the calculated detail levels
+        this.manager.deinitialize ();
+        int deletedFileCount = 0;
+        for ( final StorageChannelMetaData metaData : this.backEndFactory.getExistingBackEndsMetaData ( CONFIGURATION_ID, false ) )
+        {
+            if ( metaData.getDetailLevelId () > 0 )
+            {
+                Assert.assertTrue ( new File ( this.backEndFactory.generateFileName ( metaData ) ).delete () );
+                deletedFileCount++;
+            }
+        }
+        Assert.assertTrue ( deletedFileCount > 3 );
+        this.manager.initialize ();
+
+        // insert and query values while the fragments are repaired in the background
+        final ExecutorService executor = Executors.newFixedThreadPool ( 2 );
+        try
+        {
+            this.manager.repairBackEndFragmentsIfRequired ( null );
+            final CalculatingStorageChannel rootStorageChannel = this.manager.buildStorageChannelTree ();
+            final Future<?> writer = executor.submit ( new Callable<Object> ()
+            {
+                public Object call () throws Exception
+                {
+                    for ( int i = 0; i < CONCURRENT_VALUE_COUNT; i++ )
+                    {
+                        rootStorageChannel.updateDouble ( new DoubleValue ( ( VALUE_COUNT + i ) * TIME_STEP, 1.0, 0, 1, i % 37 ) );
+                    }
+                    return null;
+                }
+            } );
+            final Future<?> reader = executor.submit ( new Callable<Object> ()
+            {
+                public Object call () throws Exception
+                {
+                    for ( int i = 0; i < 50; i++ )
+                    {
+                        Assert.assertTrue ( getValues ( 0, Long.MAX_VALUE ).length >= VALUE_COUNT );
+                        getValues ( 1, Long.MAX_VALUE );
+                        getValues ( 2, Long.MAX_VALUE );
+                    }
+                    return null;
+                }
+            } );
+            writer.get ( TIMEOUT, TimeUnit.SECONDS );
+            reader.get ( TIMEOUT, TimeUnit.SECONDS );
+            final long timeout = System.currentTimeMillis () + TIMEOUT * 1000;
+            while ( this.manager.getPendingRepairCount () > 0 && System.currentTimeMillis () < timeout )
+            {
+                Thread.sleep ( 10 );
+            }
+            Assert.assertEquals ( 0, this.manager.getPendingRepairCount () );
+            this.manager.releaseStorageChannelTree ();
+        }
+        finally
+        {
+            executor.shutdownNow ();
+        }
+
+        // the repaired fragments contain the same values as before
+        assertValues ( expectedLevel1Values, getValues ( 1, endTime ) );
+        assertValues ( expectedLevel2Values, getValues ( 2, endTime ) );
+        Assert.assertEquals ( VALUE_COUNT + CONCURRENT_VALUE_COUNT, getValues ( 0, Long.MAX_VALUE ).length );
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.backend;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEndFactory;
+import org.openscada.hsdb.backend.file.FileBackEndManager;
+import org.openscada.hsdb.backend.file.FileBackEndManagerFactory;
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.relict.RetentionService;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
+
+/**
+ * Test class for the deletion of old data based on the known back end fragments.
+ */
+public class RetentionTest
+{
+    /** Base directory for test files. */
+    private final static String ROOT = "va_retention_test";
+
+    /** Id of the configuration that is used for the test. */
+    private final static String CONFIGURATION_ID = "RetentionTest";
+
+    /** Time span of the native back end fragments. */
+    private final static long FRAGMENT_TIMESPAN = 100000;
+
+    /** Proposed data age of the native data. */
+    private final static long PROPOSED_DATA_AGE = 1000000;
+
+    /** Time of the last value that is stored. */
+    private final static long LAST_VALUE_TIME = 5000000;
+
+    /** Count of native back end fragments that are expected to be deleted. Fragments starting at the cut-off time and the fragment before are kept. */
+    private final static int EXPECTED_DELETED_COUNT = (int) ( ( LAST_VALUE_TIME - PROPOSED_DATA_AGE ) / FRAGMENT_TIMESPAN ) - 1;
+
+    /** Maximum time in milliseconds to wait for the retention service. */
+    private final static long RETENTION_TIMEOUT = 5000;
+
+    /** Manager that is used for the test. */
+    private FileBackEndManager manager;
+
+    /**
+     * This method creates the manager and stores values that span several back end fragments.
+     * @throws Exception in case of problems
+     */
+    @Before
+    public void setUp () throws Exception
+    {
+        final FileBackEndManagerFactory backEndManagerFactory = new FileBackEndManagerFactory ( new FileBackEndFactory ( ROOT, 0 ) );
+        final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[] { new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.NATIVE, new long[0], 0, 0, FRAGMENT_TIMESPAN, PROPOSED_DATA_AGE, Long.MAX_VALUE, DataType.DOUBLE_VALUE ), new StorageChannelMetaData ( CONFIGURATION_ID, CalculationMethod.AVERAGE, new long[] { 1000 }, 1, 0, 1000000, 10 * LAST_VALUE_TIME, Long.MAX_VALUE, DataType.DOUBLE_VALUE ) };
+        this.manager = backEndManagerFactory.getBackEndManager ( Conversions.convertMetaDatasToConfiguration ( metaDatas ), true );
+        this.manager.initialize ();
+        final DoubleValueBatch values = new DoubleValueBatch ( 0 );
+        for ( long time = 0; time < LAST_VALUE_TIME; time += 1000 )
+        {
+            values.add ( time, 1.0, 0, 1, time );
+        }
+        this.manager.importValues ( new SingleBatchValueCursor<DoubleValueBatch> ( values, new DoubleValueBatch ( 0 ) ) );
+    }
+
+    /**
+     * This method deletes all data that has been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void cleanup () throws Exception
+    {
+        this.manager.deinitialize ();
+        this.manager.delete ();
+        new File ( ROOT ).delete ();
+    }
+
+    /**
+     * This method returns the time of the first native value that is available.
+     * @return time of the first native value that is available
+     * @throws Exception in case of problems
+     */
+    private long getFirstValueTime () throws Exception
+    {
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = this.manager.buildStorageChannelStructure ();
+        final ExtendedStorageChannel nativeChannel = structure.get ( 0L ).get ( CalculationMethod.NATIVE ).keySet ().iterator ().next ();
+        final DoubleValue[] values = nativeChannel.getDoubleValues ( Long.MIN_VALUE, Long.MAX_VALUE );
+        Assert.assertTrue ( values.length > 0 );
+        Assert.assertEquals ( LAST_VALUE_TIME - 1000, values[values.length - 1].getTime () );
+        return values[0].getTime ();
+    }
+
+    /**
+     * This method tests that old back end fragments are deleted in batches of limited size.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testBatchDeletion () throws Exception
+    {
+        final long now = System.currentTimeMillis ();
+        Assert.assertEquals ( 0, getFirstValueTime () );
+        int deletedCount = 0;
+        int batchCount = 0;
+        int count;
+        while ( ( count = this.manager.deleteExpiredBackEnds ( now, 5 ) ) > 0 )
+        {
+            Assert.assertTrue ( count <= 5 );
+            deletedCount += count;
+            batchCount++;
+        }
+        Assert.assertEquals ( EXPECTED_DELETED_COUNT, deletedCount );
+        Assert.assertEquals ( ( EXPECTED_DELETED_COUNT + 4 ) / 5, batchCount );
+        Assert.assertEquals ( EXPECTED_DELETED_COUNT * FRAGMENT_TIMESPAN, getFirstValueTime () );
+    }
+
+    /**
+     * This method tests that the retention service deletes old back end fragments periodically.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testRetentionService () throws Exception
+    {
+        final RetentionService retentionService = new RetentionService ( 50, 4, 1 );
+        retentionService.addBackEndManager ( this.manager );
+        try
+        {
+            final long end = System.currentTimeMillis () + RETENTION_TIMEOUT;
+            while ( getFirstValueTime () < EXPECTED_DELETED_COUNT * FRAGMENT_TIMESPAN && System.currentTimeMillis () < end )
+            {
+                Thread.sleep ( 20 );
+            }
+            Assert.assertEquals ( EXPECTED_DELETED_COUNT * FRAGMENT_TIMESPAN, getFirstValueTime () );
+        }
+        finally
+        {
+            retentionService.shutdown ();
+        }
+    }
+
+    /**
+     * This method tests that the relict cleanup of the storage channels of a manager is performed by the shared retention service.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testStorageChannelCleanup () throws Exception
+    {
+        this.manager.buildStorageChannelTree ().cleanupRelicts ();
+        this.manager.releaseStorageChannelTree ();
+        final long end = System.currentTimeMillis () + RETENTION_TIMEOUT;
+        while ( getFirstValueTime () < EXPECTED_DELETED_COUNT * FRAGMENT_TIMESPAN && System.currentTimeMillis () < end )
+        {
+            Thread.sleep ( 20 );
+        }
+        Assert.assertEquals ( EXPECTED_DELETED_COUNT * FRAGMENT_TIMESPAN, getFirstValueTime () );
+    }
+}
@@ -27,7 +27,7 @@ import org.junit.runners.Suite;
  * @author Ludwig Straub
  */
 @RunWith ( Suite.class )
-@Suite.SuiteClasses ( { FileBackEndTest.class, FileBackEndMultiplexorTest.class } )
+@Suite.SuiteClasses ( { FileBackEndTest.class, UncompressedFileBackEndTest.class, FileBackEndMultiplexorTest.class, ReadCacheTest.class, ConcurrentReadTest.class, BulkImportTest.class, QueryPlannerTest.class, FragmentCatalogTest.class, ParallelStartupTest.class, FileHandleManagerTest.class, RetentionTest.class, JdbcBackEndTest.class, MetricsTest.class, RepairTest.class, FragmentIndexTest.class } )
 public class StorageBackEndTestSuite
 {
 }
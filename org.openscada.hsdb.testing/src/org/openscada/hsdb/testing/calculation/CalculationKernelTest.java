@@ -0,0 +1,259 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.calculation;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.calculation.CalculationKernel;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * Test class for class org.openscada.hsdb.calculation.CalculationKernel.
+ * The results of the single pass calculation are compared with expected values and with a straightforward calculation of copied values.
+ */
+public class CalculationKernelTest
+{
+    /** Tolerance when comparing double values. */
+    private final static double DELTA = 1e-9;
+
+    /** Count of random views that are checked per data type. */
+    private final static int RANDOM_RUN_COUNT = 500;
+
+    /**
+     * This method returns the value at the specified index of the passed batch as double value.
+     * @param batch batch containing the value
+     * @param index index of the value
+     * @return value as double value
+     */
+    private static double getValue ( final BaseValueBatch batch, final int index )
+    {
+        return batch instanceof LongValueBatch ? ( (LongValueBatch)batch ).getValue ( index ) : ( (DoubleValueBatch)batch ).getValue ( index );
+    }
+
+    /**
+     * This method asserts that the results of the kernel match the results of a straightforward calculation of the entries of the passed batch.
+     * @param kernel kernel containing the results that have to be checked
+     * @param batch batch with at least one value containing all entries that have been processed by the kernel
+     */
+    private static void assertResults ( final CalculationKernel kernel, final BaseValueBatch batch )
+    {
+        final int size = batch.getSize ();
+        double quality = 0;
+        double manual = 0;
+        long baseValueCount = 0;
+        boolean validValue = false;
+        double weightedSum = 0;
+        double weightedTimeSpan = 0;
+        double minimum = Double.POSITIVE_INFINITY;
+        double maximum = Double.NEGATIVE_INFINITY;
+        for ( int i = 0; i < size; i++ )
+        {
+            final double qualityIndicator = batch.getQualityIndicator ( i );
+            baseValueCount += batch.getBaseValueCount ( i );
+            if ( qualityIndicator > 0 )
+            {
+                validValue = true;
+                minimum = Math.min ( minimum, getValue ( batch, i ) );
+                maximum = Math.max ( maximum, getValue ( batch, i ) );
+            }
+            if ( i + 1 < size )
+            {
+                final long timeSpan = batch.getTime ( i + 1 ) - batch.getTime ( i );
+                quality += qualityIndicator * timeSpan;
+                manual += batch.getManualIndicator ( i ) * timeSpan;
+                if ( qualityIndicator > 0 )
+                {
+                    weightedSum += getValue ( batch, i ) * timeSpan;
+                    weightedTimeSpan += timeSpan;
+                }
+            }
+        }
+        final long timeSpanSize = batch.getTime ( size - 1 ) - batch.getTime ( 0 );
+        Assert.assertEquals ( size, kernel.getSize () );
+        Assert.assertEquals ( batch instanceof LongValueBatch, kernel.isLongInput () );
+        Assert.assertEquals ( Math.min ( size == 1 ? batch.getQualityIndicator ( 0 ) : quality / timeSpanSize, 1.0 ), kernel.getQuality (), DELTA );
+        Assert.assertEquals ( Math.min ( size == 1 ? batch.getManualIndicator ( 0 ) : manual / timeSpanSize, 1.0 ), kernel.getManual (), DELTA );
+        Assert.assertEquals ( baseValueCount, kernel.getBaseValueCount () );
+        Assert.assertEquals ( validValue, kernel.isValidValue () );
+        if ( validValue )
+        {
+            Assert.assertEquals ( minimum, kernel.getDoubleMinimum (), DELTA );
+            Assert.assertEquals ( maximum, kernel.getDoubleMaximum (), DELTA );
+            Assert.assertEquals ( Math.round ( minimum ), kernel.getLongMinimum () );
+            Assert.assertEquals ( Math.round ( maximum ), kernel.getLongMaximum () );
+            if ( size == 1 )
+            {
+                Assert.assertEquals ( getValue ( batch, 0 ), kernel.getDoubleAverage (), DELTA );
+            }
+            else if ( weightedTimeSpan > 0 )
+            {
+                Assert.assertEquals ( weightedSum / weightedTimeSpan, kernel.getDoubleAverage (), DELTA );
+                Assert.assertEquals ( Math.round ( weightedSum / weightedTimeSpan ), kernel.getLongAverage () );
+            }
+        }
+    }
+
+    /**
+     * Test for a single value and for a single value without valid quality.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testSingleValue () throws Exception
+    {
+        final CalculationKernel kernel = new CalculationKernel ();
+        final LongValueBatch values = new LongValueBatch ( 1 );
+        values.add ( 100, 0.5, 2.0, 3, 42 );
+        kernel.calculate ( values );
+        Assert.assertEquals ( 1, kernel.getSize () );
+        Assert.assertEquals ( 0.5, kernel.getQuality (), DELTA );
+        Assert.assertEquals ( 1.0, kernel.getManual (), DELTA );
+        Assert.assertEquals ( 3, kernel.getBaseValueCount () );
+        Assert.assertTrue ( kernel.isValidValue () );
+        Assert.assertEquals ( 42, kernel.getLongAverage () );
+        Assert.assertEquals ( 42, kernel.getLongMinimum () );
+        Assert.assertEquals ( 42, kernel.getLongMaximum () );
+
+        // the results of a previous calculation are replaced completely
+        final DoubleValueBatch invalidValues = new DoubleValueBatch ( 1 );
+        invalidValues.add ( 100, 0, 0, 1, 4.2 );
+        kernel.calculate ( invalidValues );
+        Assert.assertFalse ( kernel.isLongInput () );
+        Assert.assertFalse ( kernel.isValidValue () );
+        Assert.assertEquals ( 0, kernel.getQuality (), DELTA );
+        Assert.assertEquals ( 4.2, kernel.getDoubleAverage (), DELTA );
+        Assert.assertEquals ( Double.POSITIVE_INFINITY, kernel.getDoubleMinimum (), DELTA );
+        Assert.assertEquals ( Double.NEGATIVE_INFINITY, kernel.getDoubleMaximum (), DELTA );
+    }
+
+    /**
+     * Test for weighting the values with their time spans whereby values without valid quality are ignored for the aggregates.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testTimeWeighting () throws Exception
+    {
+        final LongValueBatch values = new LongValueBatch ( 3 );
+        values.add ( 0, 1, 0, 1, 10 );
+        values.add ( 10, 0, 1, 1, 1000 );
+        values.add ( 30, 1, 0, 1, 40 );
+        final CalculationKernel kernel = new CalculationKernel ();
+        kernel.calculate ( new BaseValueBatchRange ( values, 0, 3, false, 0, -1, true, 40 ) );
+        Assert.assertEquals ( 4, kernel.getSize () );
+        Assert.assertEquals ( 0.5, kernel.getQuality (), DELTA );
+        Assert.assertEquals ( 0.5, kernel.getManual (), DELTA );
+        Assert.assertEquals ( 3, kernel.getBaseValueCount () );
+        Assert.assertEquals ( 25, kernel.getLongAverage () );
+        Assert.assertEquals ( 10, kernel.getLongMinimum () );
+        Assert.assertEquals ( 40, kernel.getLongMaximum () );
+    }
+
+    /**
+     * Test for views starting with an empty virtual entry and with a virtual entry that is derived from a value before the view.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testVirtualStartEntry () throws Exception
+    {
+        final DoubleValueBatch values = new DoubleValueBatch ( 3 );
+        values.add ( 0, 1, 0, 2, 1.4 );
+        values.add ( 20, 1, 0, 1, 2.6 );
+        values.add ( 40, 1, 0, 1, 5.0 );
+        final CalculationKernel kernel = new CalculationKernel ();
+
+        // the empty start entry has no valid quality and no base values
+        kernel.calculate ( new BaseValueBatchRange ( values, 1, 2, true, 10, -1, true, 30 ) );
+        Assert.assertEquals ( 3, kernel.getSize () );
+        Assert.assertEquals ( 0.5, kernel.getQuality (), DELTA );
+        Assert.assertEquals ( 1, kernel.getBaseValueCount () );
+        Assert.assertEquals ( 2.6, kernel.getDoubleAverage (), DELTA );
+        Assert.assertEquals ( 3, kernel.getLongMinimum () );
+        Assert.assertEquals ( 3, kernel.getLongMaximum () );
+
+        // the derived start entry repeats the value before the view
+        kernel.calculate ( new BaseValueBatchRange ( values, 1, 2, true, 10, 0, true, 30 ) );
+        Assert.assertEquals ( 1.0, kernel.getQuality (), DELTA );
+        Assert.assertEquals ( 3, kernel.getBaseValueCount () );
+        Assert.assertEquals ( 2.0, kernel.getDoubleAverage (), DELTA );
+        Assert.assertEquals ( 2, kernel.getLongAverage () );
+        Assert.assertEquals ( 1.4, kernel.getDoubleMinimum (), DELTA );
+        Assert.assertEquals ( 1, kernel.getLongMinimum () );
+        Assert.assertEquals ( 2.6, kernel.getDoubleMaximum (), DELTA );
+    }
+
+    /**
+     * Test for random views of long and double values whose results have to match the results of the copied entries.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRandomViews () throws Exception
+    {
+        final Random random = new Random ( 4711 );
+        final CalculationKernel kernel = new CalculationKernel ();
+        final CalculationKernel copyKernel = new CalculationKernel ();
+        for ( final boolean longValues : new boolean[] { true, false } )
+        {
+            for ( int run = 0; run < RANDOM_RUN_COUNT; run++ )
+            {
+                // create random values with some gaps in quality
+                final int size = 1 + random.nextInt ( 20 );
+                final BaseValueBatch values = longValues ? new LongValueBatch ( size ) : new DoubleValueBatch ( size );
+                long time = 1000;
+                for ( int i = 0; i < size; i++ )
+                {
+                    time += 1 + random.nextInt ( 100 );
+                    final double quality = random.nextInt ( 4 ) == 0 ? 0 : random.nextDouble ();
+                    final double manual = random.nextInt ( 4 ) == 0 ? random.nextDouble () : 0;
+                    if ( longValues )
+                    {
+                        ( (LongValueBatch)values ).add ( time, quality, manual, 1 + random.nextInt ( 3 ), random.nextInt ( 2000 ) - 1000 );
+                    }
+                    else
+                    {
+                        ( (DoubleValueBatch)values ).add ( time, quality, manual, 1 + random.nextInt ( 3 ), random.nextDouble () * 2000 - 1000 );
+                    }
+                }
+
+                // create a random view with optional virtual entries
+                final int fromIndex = random.nextInt ( size );
+                final int toIndex = fromIndex + random.nextInt ( size - fromIndex + 1 );
+                final boolean startEntry = fromIndex == toIndex || random.nextBoolean ();
+                final long firstTime = fromIndex < toIndex ? values.getTime ( fromIndex ) : time + 100;
+                final long startTime = firstTime - 1 - random.nextInt ( 50 );
+                final int startSourceIndex = fromIndex > 0 && random.nextBoolean () ? fromIndex - 1 : -1;
+                final long lastTime = toIndex > fromIndex ? values.getTime ( toIndex - 1 ) : startTime;
+                final boolean endEntry = random.nextBoolean ();
+                final long endTime = lastTime + 1 + random.nextInt ( 50 );
+                final BaseValueBatchRange range = new BaseValueBatchRange ( values, fromIndex, toIndex, startEntry, startTime, startSourceIndex, endEntry, endTime );
+
+                // compare the results of the view with the results of the copied entries
+                final BaseValueBatch copy = range.toBatch ();
+                kernel.calculate ( range );
+                copyKernel.calculate ( copy );
+                assertResults ( kernel, copy );
+                assertResults ( copyKernel, copy );
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.calculation;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.utils.HsdbHelper;
+
+/**
+ * Test class for slicing batches of values via binary search into views as provided by class org.openscada.hsdb.utils.HsdbHelper.
+ * The results are compared with a linear search that copies the values.
+ */
+public class SliceBatchTest
+{
+    /** Count of random time spans that are checked per data type. */
+    private final static int RANDOM_RUN_COUNT = 2000;
+
+    /** Empty array that is used as template when extracting long values. */
+    private final static LongValue[] EMPTY_LONG_VALUE_ARRAY = new LongValue[0];
+
+    /** Empty array that is used as template when extracting double values. */
+    private final static DoubleValue[] EMPTY_DOUBLE_VALUE_ARRAY = new DoubleValue[0];
+
+    /**
+     * This method extracts the values of the specified time span using a linear search.
+     * @param values values to be processed
+     * @param startTime start time for extracting
+     * @param endTime end time for extracting
+     * @param startIndex index where to start the search
+     * @return normalized batch
+     */
+    private static BaseValueBatch extractLinear ( final BaseValueBatch values, final long startTime, final long endTime, final int startIndex )
+    {
+        final BaseValueBatch result = values.createEmptyBatch ( 0 );
+        if ( startTime >= endTime )
+        {
+            return result;
+        }
+        final int size = values.getSize ();
+        if ( size == 0 || startIndex >= size )
+        {
+            result.addEmpty ( startTime );
+            result.addEmpty ( endTime );
+            return result;
+        }
+        int firstRelevantEntryIndex = startIndex;
+        int lastRelevantEntryIndex = size;
+        for ( int i = startIndex; i < size; i++ )
+        {
+            if ( values.getTime ( i ) <= startTime )
+            {
+                firstRelevantEntryIndex = i;
+            }
+            if ( values.getTime ( i ) >= endTime )
+            {
+                lastRelevantEntryIndex = i;
+                break;
+            }
+        }
+        final long firstStartTime = values.getTime ( firstRelevantEntryIndex );
+        if ( firstStartTime < startTime )
+        {
+            result.addDerived ( startTime, values, firstRelevantEntryIndex, values.getBaseValueCount ( firstRelevantEntryIndex ) );
+        }
+        else if ( firstStartTime > startTime )
+        {
+            result.addEmpty ( startTime );
+        }
+        result.addAll ( values, firstRelevantEntryIndex + ( firstStartTime < startTime ? 1 : 0 ), lastRelevantEntryIndex );
+        if ( result.getTime ( result.getSize () - 1 ) != endTime )
+        {
+            result.addDerived ( endTime, result, result.getSize () - 1, 0 );
+        }
+        return result;
+    }
+
+    /**
+     * This method asserts that the passed batch contains the same entries as the passed array.
+     * @param expected expected entries
+     * @param actual batch that has to be checked
+     */
+    private static void assertEntries ( final BaseValue[] expected, final BaseValueBatch actual )
+    {
+        final BaseValue[] actualValues = actual.toValues ();
+        Assert.assertEquals ( expected.length, actualValues.length );
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            Assert.assertEquals ( expected[i].toString (), actualValues[i].toString () );
+        }
+    }
+
+    /**
+     * This method creates a batch with random values whereby several values may have the same time stamp.
+     * @param random random number generator
+     * @param longValues true, if a batch of long values has to be created, otherwise false
+     * @return created batch
+     */
+    private static BaseValueBatch createBatch ( final Random random, final boolean longValues )
+    {
+        final int size = random.nextInt ( 30 );
+        final BaseValueBatch values = longValues ? new LongValueBatch ( size ) : new DoubleValueBatch ( size );
+        long time = random.nextInt ( 10 );
+        for ( int i = 0; i < size; i++ )
+        {
+            time += random.nextInt ( 4 ) == 0 ? 0 : random.nextInt ( 20 );
+            if ( longValues )
+            {
+                ( (LongValueBatch)values ).add ( time, random.nextDouble (), random.nextDouble (), 1 + random.nextInt ( 5 ), random.nextInt ( 1000 ) );
+            }
+            else
+            {
+                ( (DoubleValueBatch)values ).add ( time, random.nextDouble (), random.nextDouble (), 1 + random.nextInt ( 5 ), random.nextDouble () * 1000 );
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Test for the binary search of the first time stamp after a specified time.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testFindFirstIndexAfter () throws Exception
+    {
+        final long[] times = new long[] { 10, 20, 20, 20, 30, 40 };
+        Assert.assertEquals ( 0, HsdbHelper.findFirstIndexAfter ( times, 0, times.length, 5 ) );
+        Assert.assertEquals ( 1, HsdbHelper.findFirstIndexAfter ( times, 0, times.length, 10 ) );
+        Assert.assertEquals ( 1, HsdbHelper.findFirstIndexAfter ( times, 0, times.length, 19 ) );
+        Assert.assertEquals ( 4, HsdbHelper.findFirstIndexAfter ( times, 0, times.length, 20 ) );
+        Assert.assertEquals ( 6, HsdbHelper.findFirstIndexAfter ( times, 0, times.length, 40 ) );
+        Assert.assertEquals ( 6, HsdbHelper.findFirstIndexAfter ( times, 0, times.length, Long.MAX_VALUE ) );
+
+        // only the specified range is searched
+        Assert.assertEquals ( 3, HsdbHelper.findFirstIndexAfter ( times, 3, times.length, 5 ) );
+        Assert.assertEquals ( 3, HsdbHelper.findFirstIndexAfter ( times, 0, 3, 30 ) );
+        Assert.assertEquals ( 2, HsdbHelper.findFirstIndexAfter ( times, 2, 2, 0 ) );
+        Assert.assertEquals ( 0, HsdbHelper.findFirstIndexAfter ( new long[0], 0, 0, 0 ) );
+    }
+
+    /**
+     * Test for the views of special time spans.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testSpecialTimeSpans () throws Exception
+    {
+        final LongValueBatch values = new LongValueBatch ( 3 );
+        values.add ( 10, 1, 0, 1, 1 );
+        values.add ( 20, 1, 0, 1, 2 );
+        values.add ( 30, 1, 0, 1, 3 );
+
+        // an empty time span results in an empty view
+        Assert.assertTrue ( HsdbHelper.sliceBatch ( values, 20, 20, 0 ).isEmpty () );
+        Assert.assertTrue ( HsdbHelper.sliceBatch ( values, 30, 20, 0 ).isEmpty () );
+
+        // a time span without preceding values starts with an empty entry
+        BaseValueBatchRange range = HsdbHelper.sliceBatch ( values, 0, 15, 0 );
+        Assert.assertTrue ( range.hasStartEntry () );
+        Assert.assertEquals ( -1, range.getStartSourceIndex () );
+        Assert.assertEquals ( 0, range.getFromIndex () );
+        Assert.assertEquals ( 1, range.getToIndex () );
+        Assert.assertEquals ( 3, range.getSize () );
+
+        // a value at the start time is part of the view
+        range = HsdbHelper.sliceBatch ( values, 20, 25, 0 );
+        Assert.assertFalse ( range.hasStartEntry () );
+        Assert.assertEquals ( 1, range.getFromIndex () );
+        Assert.assertEquals ( 2, range.getToIndex () );
+        Assert.assertEquals ( 20, range.getFirstTime () );
+
+        // a value before the start time is repeated by the start entry and values at the end time are excluded
+        range = HsdbHelper.sliceBatch ( values, 25, 30, 0 );
+        Assert.assertTrue ( range.hasStartEntry () );
+        Assert.assertEquals ( 1, range.getStartSourceIndex () );
+        Assert.assertEquals ( 2, range.getFromIndex () );
+        Assert.assertEquals ( 2, range.getToIndex () );
+        Assert.assertTrue ( range.hasEndEntry () );
+        Assert.assertEquals ( 2, range.getSize () );
+
+        // a start index after the last value results in empty entries at the start and at the end
+        range = HsdbHelper.sliceBatch ( values, 40, 50, 3 );
+        Assert.assertEquals ( 2, range.getSize () );
+        Assert.assertEquals ( 40, range.getFirstTime () );
+        Assert.assertEquals ( 0, range.toBatch ().getQualityIndicator ( 1 ), 0 );
+
+        // views do not copy the values, so modifications of the values are visible
+        range = HsdbHelper.sliceBatch ( values, 10, 40, 0 );
+        Assert.assertSame ( values, range.getValues () );
+        values.getValues ()[1] = 42;
+        Assert.assertEquals ( 42, ( (LongValueBatch)range.toBatch () ).getValue ( 1 ) );
+    }
+
+    /**
+     * Test for random batches and time spans whose views have to contain the same entries as the linear search, the extracted batches and the extracted arrays.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRandomTimeSpans () throws Exception
+    {
+        final Random random = new Random ( 4711 );
+        for ( final boolean longValues : new boolean[] { true, false } )
+        {
+            for ( int run = 0; run < RANDOM_RUN_COUNT; run++ )
+            {
+                final BaseValueBatch values = createBatch ( random, longValues );
+                final int size = values.getSize ();
+                final long startTime = random.nextInt ( 300 ) - 10;
+                final long endTime = startTime + random.nextInt ( 100 ) - 5;
+
+                // the start index has to be located before the first value of the time span
+                int maxStartIndex = 0;
+                while ( maxStartIndex + 1 < size && values.getTime ( maxStartIndex + 1 ) <= startTime )
+                {
+                    maxStartIndex++;
+                }
+                final int startIndex = size == 0 ? 0 : random.nextInt ( maxStartIndex + 1 );
+                final BaseValueBatch expected = extractLinear ( values, startTime, endTime, startIndex );
+                final BaseValueBatchRange range = HsdbHelper.sliceBatch ( values, startTime, endTime, startIndex );
+                Assert.assertEquals ( expected.getSize (), range.getSize () );
+                if ( !expected.isEmpty () )
+                {
+                    Assert.assertEquals ( expected.getTime ( 0 ), range.getFirstTime () );
+                }
+                assertEntries ( expected.toValues (), range.toBatch () );
+                assertEntries ( expected.toValues (), HsdbHelper.extractSubBatch ( values, startTime, endTime, startIndex ) );
+                if ( startTime < endTime )
+                {
+                    assertEntries ( HsdbHelper.extractSubArray ( values.toValues (), startTime, endTime, startIndex, longValues ? EMPTY_LONG_VALUE_ARRAY : EMPTY_DOUBLE_VALUE_ARRAY ), range.toBatch () );
+                }
+            }
+        }
+    }
+}
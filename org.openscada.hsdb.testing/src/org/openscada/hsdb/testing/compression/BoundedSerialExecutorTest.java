@@ -0,0 +1,167 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.compression;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.AsyncStorageChannel;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannelAdapter;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationLogicProviderFactoryImpl;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.concurrent.BoundedSerialExecutor;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+
+/**
+ * Test class for class org.openscada.hsdb.concurrent.BoundedSerialExecutor and the error handling of class org.openscada.hsdb.AsyncStorageChannel.
+ */
+public class BoundedSerialExecutorTest
+{
+    /** Count of tasks that are submitted per test. */
+    private final static int TASK_COUNT = 200;
+
+    /** Maximum count of pending tasks of each executor. */
+    private final static int CAPACITY = 2;
+
+    /**
+     * Test for limiting the count of pending tasks of an executor whose tasks are submitted by tasks of another executor using the same shared threads.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testChainedCapacity () throws Exception
+    {
+        final ExecutorService sharedExecutor = Executors.newFixedThreadPool ( 2 );
+        try
+        {
+            final BoundedSerialExecutor firstLevel = new BoundedSerialExecutor ( sharedExecutor, CAPACITY );
+            final BoundedSerialExecutor secondLevel = new BoundedSerialExecutor ( sharedExecutor, CAPACITY );
+            final AtomicInteger maxQueueSize = new AtomicInteger ();
+            final AtomicInteger failureCount = new AtomicInteger ();
+            final List<Integer> processed = Collections.synchronizedList ( new ArrayList<Integer> () );
+            for ( int i = 0; i < TASK_COUNT; i++ )
+            {
+                final int index = i;
+                firstLevel.submit ( new Runnable ()
+                {
+                    public void run ()
+                    {
+                        try
+                        {
+                            secondLevel.submit ( new Runnable ()
+                            {
+                                public void run ()
+                                {
+                                    try
+                                    {
+                                        Thread.sleep ( 1 );
+                                    }
+                                    catch ( final InterruptedException e )
+                                    {
+                                        Thread.currentThread ().interrupt ();
+                                    }
+                                    processed.add ( index );
+                                }
+                            } );
+                        }
+                        catch ( final InterruptedException e )
+                        {
+                            failureCount.incrementAndGet ();
+                        }
+                        final int queueSize = secondLevel.getQueueSize ();
+                        if ( queueSize > maxQueueSize.get () )
+                        {
+                            maxQueueSize.set ( queueSize );
+                        }
+                    }
+                } );
+                Assert.assertTrue ( firstLevel.getQueueSize () <= CAPACITY );
+            }
+            firstLevel.flush ();
+            secondLevel.flush ();
+            Assert.assertEquals ( 0, failureCount.get () );
+            Assert.assertTrue ( maxQueueSize.get () <= CAPACITY );
+            Assert.assertEquals ( TASK_COUNT, processed.size () );
+            for ( int i = 0; i < TASK_COUNT; i++ )
+            {
+                Assert.assertEquals ( i, processed.get ( i ).intValue () );
+            }
+        }
+        finally
+        {
+            sharedExecutor.shutdownNow ();
+        }
+    }
+
+    /**
+     * Test for reporting errors of asynchronously processed updates to the caller.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testAsyncFailure () throws Exception
+    {
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( "BoundedSerialExecutorTest", CalculationMethod.NATIVE, new long[0], 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE );
+        final FileBackEnd backEnd = new FileBackEnd ( "async_failure.va", false );
+        new File ( backEnd.getFileName () ).delete ();
+        backEnd.create ( metaData );
+        backEnd.initialize ( metaData );
+        try
+        {
+            final CalculatingStorageChannel channel = new CalculatingStorageChannel ( new ExtendedStorageChannelAdapter ( backEnd ), null, new CalculationLogicProviderFactoryImpl ().getCalculationLogicProvider ( metaData ) );
+            final AsyncStorageChannel asyncChannel = new AsyncStorageChannel ( channel, CAPACITY );
+            asyncChannel.updateDouble ( new DoubleValue ( 1, 1, 0, 1, 1.0 ) );
+            asyncChannel.flush ();
+            Assert.assertEquals ( 1, backEnd.getLongValues ( 0, Long.MAX_VALUE ).length );
+
+            // updates of a deinitialized back end fail and the error is reported once
+            backEnd.deinitialize ();
+            asyncChannel.updateDouble ( new DoubleValue ( 2, 1, 0, 1, 2.0 ) );
+            try
+            {
+                asyncChannel.flush ();
+                Assert.fail ( "error of asynchronous update has not been reported" );
+            }
+            catch ( final InterruptedException e )
+            {
+                throw e;
+            }
+            catch ( final Exception e )
+            {
+                Assert.assertNotNull ( e.getCause () );
+            }
+            asyncChannel.flush ();
+        }
+        finally
+        {
+            backEnd.deinitialize ();
+            backEnd.delete ();
+        }
+    }
+}
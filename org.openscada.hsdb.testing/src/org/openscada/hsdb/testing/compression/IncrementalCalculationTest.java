@@ -0,0 +1,183 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.compression;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.AsyncStorageChannel;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannelAdapter;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationLogicProviderFactoryImpl;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+
+/**
+ * Test class for the incremental calculation mode of class org.openscada.hsdb.CalculatingStorageChannel.
+ * The results of the incremental calculation are compared with the results of the calculation that re-reads the input values.
+ * Additionally the asynchronous processing of updates by class org.openscada.hsdb.AsyncStorageChannel is tested.
+ */
+public class IncrementalCalculationTest
+{
+    /** Time span of one calculated value. */
+    private final static long TIME_SPAN = 1000;
+
+    /** Count of values that are processed per test. */
+    private final static int VALUE_COUNT = 5000;
+
+    /** Back end objects that have been created during the test. */
+    private final List<FileBackEnd> backEnds = new ArrayList<FileBackEnd> ();
+
+    /** Factory that is used to create the calculation logic providers. */
+    private final CalculationLogicProviderFactoryImpl calculationLogicProviderFactory = new CalculationLogicProviderFactoryImpl ();
+
+    /**
+     * This method deinitializes and deletes all back end objects that have been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void tearDown () throws Exception
+    {
+        for ( final FileBackEnd backEnd : this.backEnds )
+        {
+            backEnd.deinitialize ();
+            new File ( backEnd.getFileName () ).delete ();
+        }
+        this.backEnds.clear ();
+    }
+
+    /**
+     * This method creates and initializes a new file back end with the passed settings.
+     * @param fileName name of the file that will be used
+     * @param calculationMethod calculation method of the back end
+     * @param detailLevelId detail level of the back end
+     * @return storage channel that provides access to the back end
+     * @throws Exception in case of problems
+     */
+    private ExtendedStorageChannel createStorageChannel ( final String fileName, final CalculationMethod calculationMethod, final long detailLevelId ) throws Exception
+    {
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( "IncrementalCalculationTest", calculationMethod, detailLevelId == 0 ? new long[0] : new long[] { TIME_SPAN }, detailLevelId, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE );
+        final FileBackEnd backEnd = new FileBackEnd ( fileName, false );
+        new File ( fileName ).delete ();
+        backEnd.setLock ( new ReentrantReadWriteLock () );
+        backEnd.create ( metaData );
+        backEnd.initialize ( metaData );
+        this.backEnds.add ( backEnd );
+        return new ExtendedStorageChannelAdapter ( backEnd );
+    }
+
+    /**
+     * This method feeds the same random input values to a calculating storage channel with and without incremental calculation and compares the results.
+     * Some of the values arrive late in order to force recalculations of already completed time spans.
+     * @param calculationMethod calculation method that has to be tested
+     * @param queueSize maximum count of pending updates of the channel with incremental calculation or 0 if the updates have to be processed synchronously
+     * @throws Exception in case of problems
+     */
+    private void compareCalculation ( final CalculationMethod calculationMethod, final int queueSize ) throws Exception
+    {
+        final ExtendedStorageChannel nativeStorageChannel = createStorageChannel ( "incremental_native.va", CalculationMethod.NATIVE, 0 );
+        final ExtendedStorageChannel legacyStorageChannel = createStorageChannel ( "incremental_legacy.va", calculationMethod, 1 );
+        final ExtendedStorageChannel incrementalStorageChannel = createStorageChannel ( "incremental_incremental.va", calculationMethod, 1 );
+        final CalculatingStorageChannel nativeChannel = new CalculatingStorageChannel ( nativeStorageChannel, null, this.calculationLogicProviderFactory.getCalculationLogicProvider ( nativeStorageChannel.getMetaData () ) );
+        final CalculatingStorageChannel legacyChannel = new CalculatingStorageChannel ( legacyStorageChannel, nativeChannel, this.calculationLogicProviderFactory.getCalculationLogicProvider ( legacyStorageChannel.getMetaData () ), false );
+        final CalculatingStorageChannel incrementalChannel = new CalculatingStorageChannel ( incrementalStorageChannel, nativeChannel, this.calculationLogicProviderFactory.getCalculationLogicProvider ( incrementalStorageChannel.getMetaData () ), true );
+        nativeChannel.registerStorageChannel ( legacyChannel );
+        final AsyncStorageChannel asyncChannel = queueSize > 0 ? new AsyncStorageChannel ( incrementalChannel, queueSize ) : null;
+        nativeChannel.registerStorageChannel ( asyncChannel != null ? asyncChannel : incrementalChannel );
+        final Random random = new Random ( 4711 );
+        long time = 1000000;
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            time += random.nextInt ( 400 );
+            final long valueTime = i % 50 == 49 ? time - random.nextInt ( 3 * (int)TIME_SPAN ) : time;
+            final double quality = i % 7 == 0 ? 0.0 : 1.0;
+            nativeChannel.updateDouble ( new DoubleValue ( valueTime, quality, 0, 1, random.nextInt ( 1000 ) / 10.0 ) );
+        }
+        nativeChannel.cleanupRelicts ();
+        if ( asyncChannel != null )
+        {
+            asyncChannel.flush ();
+            Assert.assertEquals ( 0, asyncChannel.getQueueSize () );
+        }
+        final DoubleValue[] expected = legacyStorageChannel.getDoubleValues ( 0, Long.MAX_VALUE );
+        final DoubleValue[] actual = incrementalStorageChannel.getDoubleValues ( 0, Long.MAX_VALUE );
+        Assert.assertTrue ( expected.length > VALUE_COUNT / 10 );
+        Assert.assertEquals ( expected.length, actual.length );
+        for ( int i = 0; i < expected.length; i++ )
+        {
+            Assert.assertEquals ( expected[i].getTime (), actual[i].getTime () );
+            Assert.assertEquals ( expected[i].getValue (), actual[i].getValue (), 1e-9 );
+            Assert.assertEquals ( expected[i].getQualityIndicator (), actual[i].getQualityIndicator (), 1e-9 );
+            Assert.assertEquals ( expected[i].getManualIndicator (), actual[i].getManualIndicator (), 1e-9 );
+            Assert.assertEquals ( expected[i].getBaseValueCount (), actual[i].getBaseValueCount () );
+        }
+    }
+
+    /**
+     * Test for incremental calculation of average values.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testAverage () throws Exception
+    {
+        compareCalculation ( CalculationMethod.AVERAGE, 0 );
+    }
+
+    /**
+     * Test for incremental calculation of minimum values.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testMinimum () throws Exception
+    {
+        compareCalculation ( CalculationMethod.MINIMUM, 0 );
+    }
+
+    /**
+     * Test for incremental calculation of maximum values.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testMaximum () throws Exception
+    {
+        compareCalculation ( CalculationMethod.MAXIMUM, 0 );
+    }
+
+    /**
+     * Test for incremental calculation of average values with asynchronous processing of the updates.
+     * The small queue forces the ingestion to wait for the calculation.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testAsynchronousAverage () throws Exception
+    {
+        compareCalculation ( CalculationMethod.AVERAGE, 4 );
+    }
+}
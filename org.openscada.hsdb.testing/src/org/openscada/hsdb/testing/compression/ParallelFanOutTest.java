@@ -0,0 +1,170 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.compression;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.SimpleStorageChannelManager;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.datatypes.LongValue;
+
+/**
+ * Test class for the parallel fan-out mode of class org.openscada.hsdb.SimpleStorageChannelManager.
+ */
+public class ParallelFanOutTest
+{
+    /** Count of sub storage channels that are registered per test. One update is performed within the calling thread, so that a single fan-out thread suffices for overlapping updates. */
+    private final static int CHANNEL_COUNT = 2;
+
+    /** Maximum time in milliseconds that is waited for all sub storage channels to be updated concurrently. */
+    private final static long TIMEOUT = 10000;
+
+    /**
+     * Storage channel that waits within each update until a configurable count of updates is processed concurrently.
+     */
+    private static class BlockingStorageChannel extends SimpleStorageChannelManager
+    {
+        /** Latch that is released when the expected count of concurrent updates has been reached. */
+        private final CountDownLatch latch;
+
+        /** Flag indicating whether the update should fail or not. */
+        private final boolean fail;
+
+        /** Counter for the updates that have been processed. */
+        private final AtomicInteger updateCount;
+
+        /**
+         * Constructor.
+         * @param latch latch that is released when the expected count of concurrent updates has been reached
+         * @param fail flag indicating whether the update should fail or not
+         * @param updateCount counter for the updates that have been processed
+         */
+        public BlockingStorageChannel ( final CountDownLatch latch, final boolean fail, final AtomicInteger updateCount )
+        {
+            this.latch = latch;
+            this.fail = fail;
+            this.updateCount = updateCount;
+        }
+
+        /**
+         * @see org.openscada.hsdb.StorageChannel#getMetaData
+         */
+        public StorageChannelMetaData getMetaData () throws Exception
+        {
+            return null;
+        }
+
+        /**
+         * @see org.openscada.hsdb.SimpleStorageChannelManager#updateLong
+         */
+        @Override
+        public void updateLong ( final LongValue longValue ) throws Exception
+        {
+            this.latch.countDown ();
+            final boolean concurrent = this.latch.await ( TIMEOUT, TimeUnit.MILLISECONDS );
+            this.updateCount.incrementAndGet ();
+            if ( this.fail )
+            {
+                throw new Exception ( "update failed" );
+            }
+            if ( !concurrent )
+            {
+                throw new Exception ( "updates were not processed concurrently" );
+            }
+        }
+    }
+
+    /**
+     * This method creates a storage channel manager with the specified count of failing sub storage channels.
+     * @param parallelFanOut flag indicating whether the parallel fan-out mode is used or not
+     * @param latch latch that is passed to all sub storage channels
+     * @param failCount count of sub storage channels whose updates fail
+     * @param updateCount counter for the updates that have been processed
+     * @return created storage channel manager
+     */
+    private SimpleStorageChannelManager createManager ( final boolean parallelFanOut, final CountDownLatch latch, final int failCount, final AtomicInteger updateCount )
+    {
+        final SimpleStorageChannelManager manager = new SimpleStorageChannelManager () {
+            public StorageChannelMetaData getMetaData () throws Exception
+            {
+                return null;
+            }
+        };
+        manager.setParallelFanOut ( parallelFanOut );
+        for ( int i = 0; i < CHANNEL_COUNT; i++ )
+        {
+            manager.registerStorageChannel ( new BlockingStorageChannel ( latch, i < failCount, updateCount ) );
+        }
+        return manager;
+    }
+
+    /**
+     * This method verifies that the sub storage channels are updated concurrently in parallel fan-out mode.
+     * Each sub storage channel waits until all sub storage channels have been called, which can only succeed if the updates overlap.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testConcurrentUpdates () throws Exception
+    {
+        final AtomicInteger updateCount = new AtomicInteger ();
+        final SimpleStorageChannelManager manager = createManager ( true, new CountDownLatch ( CHANNEL_COUNT ), 0, updateCount );
+        manager.updateLong ( new LongValue ( 0, 1, 0, 1, 0 ) );
+        Assert.assertEquals ( CHANNEL_COUNT, updateCount.get () );
+    }
+
+    /**
+     * This method verifies that all sub storage channels are updated in parallel fan-out mode even if some updates fail and that the failure is reported afterwards.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testFailingUpdates () throws Exception
+    {
+        final AtomicInteger updateCount = new AtomicInteger ();
+        final SimpleStorageChannelManager manager = createManager ( true, new CountDownLatch ( CHANNEL_COUNT ), 1, updateCount );
+        try
+        {
+            manager.updateLong ( new LongValue ( 0, 1, 0, 1, 0 ) );
+            Assert.fail ( "failed update was not reported" );
+        }
+        catch ( final Exception e )
+        {
+            Assert.assertNotNull ( e.getCause () );
+            Assert.assertEquals ( "update failed", e.getCause ().getMessage () );
+        }
+        Assert.assertEquals ( CHANNEL_COUNT, updateCount.get () );
+    }
+
+    /**
+     * This method verifies that the sub storage channels are updated one after another if the parallel fan-out mode is disabled.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testSequentialUpdates () throws Exception
+    {
+        final AtomicInteger updateCount = new AtomicInteger ();
+        final SimpleStorageChannelManager manager = createManager ( false, new CountDownLatch ( 1 ), 0, updateCount );
+        manager.updateLong ( new LongValue ( 0, 1, 0, 1, 0 ) );
+        Assert.assertEquals ( CHANNEL_COUNT, updateCount.get () );
+    }
+}
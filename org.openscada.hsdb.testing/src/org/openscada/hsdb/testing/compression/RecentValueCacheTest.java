@@ -0,0 +1,193 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.testing.compression;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscada.hsdb.CalculatingStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.ExtendedStorageChannelAdapter;
+import org.openscada.hsdb.RecentValueCache;
+import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.backend.file.FileBackEnd;
+import org.openscada.hsdb.calculation.CalculationLogicProviderFactoryImpl;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * Test class for the cache of recent values of class org.openscada.hsdb.CalculatingStorageChannel.
+ * The values provided by the cache are compared with the values that are read from the back ends.
+ */
+public class RecentValueCacheTest
+{
+    /** Time span of one calculated value. */
+    private final static long TIME_SPAN = 1000;
+
+    /** Count of values that are processed per test. */
+    private final static int VALUE_COUNT = 5000;
+
+    /** Back end objects that have been created during the test. */
+    private final List<FileBackEnd> backEnds = new ArrayList<FileBackEnd> ();
+
+    /** Factory that is used to create the calculation logic providers. */
+    private final CalculationLogicProviderFactoryImpl calculationLogicProviderFactory = new CalculationLogicProviderFactoryImpl ();
+
+    /**
+     * This method deinitializes and deletes all back end objects that have been created during the test.
+     * @throws Exception in case of problems
+     */
+    @After
+    public void tearDown () throws Exception
+    {
+        for ( final FileBackEnd backEnd : this.backEnds )
+        {
+            backEnd.deinitialize ();
+            new File ( backEnd.getFileName () ).delete ();
+        }
+        this.backEnds.clear ();
+    }
+
+    /**
+     * This method creates and initializes a new file back end with the passed settings.
+     * @param fileName name of the file that will be used
+     * @param calculationMethod calculation method of the back end
+     * @param detailLevelId detail level of the back end
+     * @return storage channel that provides access to the back end
+     * @throws Exception in case of problems
+     */
+    private ExtendedStorageChannel createStorageChannel ( final String fileName, final CalculationMethod calculationMethod, final long detailLevelId ) throws Exception
+    {
+        final StorageChannelMetaData metaData = new StorageChannelMetaData ( "RecentValueCacheTest", calculationMethod, detailLevelId == 0 ? new long[0] : new long[] { TIME_SPAN }, detailLevelId, 0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, DataType.DOUBLE_VALUE );
+        final FileBackEnd backEnd = new FileBackEnd ( fileName, false );
+        new File ( fileName ).delete ();
+        backEnd.setLock ( new ReentrantReadWriteLock () );
+        backEnd.create ( metaData );
+        backEnd.initialize ( metaData );
+        this.backEnds.add ( backEnd );
+        return new ExtendedStorageChannelAdapter ( backEnd );
+    }
+
+    /**
+     * This method compares the values provided by the passed calculating storage channel with the values of its base storage channel for random time spans.
+     * @param channel calculating storage channel using a cache
+     * @param startTime earliest start time of the compared time spans
+     * @param endTime latest end time of the compared time spans
+     * @param random random generator
+     * @throws Exception in case of problems
+     */
+    private void compareValues ( final CalculatingStorageChannel channel, final long startTime, final long endTime, final Random random ) throws Exception
+    {
+        for ( int i = 0; i < 200; i++ )
+        {
+            final long from = startTime + (long) ( random.nextDouble () * ( endTime - startTime ) );
+            final long to = from + random.nextInt ( 20 * (int)TIME_SPAN );
+            final DoubleValue[] expected = channel.getBaseStorageChannel ().getDoubleValues ( from, to );
+            final DoubleValue[] actual = channel.getDoubleValues ( from, to );
+            Assert.assertEquals ( expected.length, actual.length );
+            for ( int j = 0; j < expected.length; j++ )
+            {
+                Assert.assertEquals ( expected[j].getTime (), actual[j].getTime () );
+                Assert.assertEquals ( expected[j].getValue (), actual[j].getValue (), 0 );
+                Assert.assertEquals ( expected[j].getQualityIndicator (), actual[j].getQualityIndicator (), 0 );
+                Assert.assertEquals ( expected[j].getManualIndicator (), actual[j].getManualIndicator (), 0 );
+                Assert.assertEquals ( expected[j].getBaseValueCount (), actual[j].getBaseValueCount () );
+            }
+        }
+    }
+
+    /**
+     * This method feeds random values to a native and a calculating storage channel that use caches and compares the provided values with the values of the back ends.
+     * Some of the values arrive late in order to force the caches to be cleared.
+     * @throws Exception in case of problems
+     */
+    @Test
+    public void testCachedValues () throws Exception
+    {
+        final ExtendedStorageChannel nativeStorageChannel = createStorageChannel ( "recent_native.va", CalculationMethod.NATIVE, 0 );
+        final ExtendedStorageChannel averageStorageChannel = createStorageChannel ( "recent_average.va", CalculationMethod.AVERAGE, 1 );
+        final CalculatingStorageChannel nativeChannel = new CalculatingStorageChannel ( nativeStorageChannel, null, this.calculationLogicProviderFactory.getCalculationLogicProvider ( nativeStorageChannel.getMetaData () ) );
+        final CalculatingStorageChannel averageChannel = new CalculatingStorageChannel ( averageStorageChannel, nativeChannel, this.calculationLogicProviderFactory.getCalculationLogicProvider ( averageStorageChannel.getMetaData () ) );
+        nativeChannel.registerStorageChannel ( averageChannel );
+
+        // values that are stored before the caches are used must not be provided by the caches
+        nativeChannel.updateDouble ( new DoubleValue ( 500000, 1.0, 0, 1, 1.0 ) );
+        nativeChannel.setRecentValueCache ( new RecentValueCache ( 1000, Long.MAX_VALUE ) );
+        averageChannel.setRecentValueCache ( new RecentValueCache ( 1000, Long.MAX_VALUE ) );
+
+        final Random random = new Random ( 4711 );
+        long time = 1000000;
+        for ( int i = 0; i < VALUE_COUNT; i++ )
+        {
+            time += 1 + random.nextInt ( 400 );
+            final long valueTime = i < VALUE_COUNT / 2 && i % 500 == 250 ? time - random.nextInt ( 3 * (int)TIME_SPAN ) : time;
+            final double quality = i % 7 == 0 ? 0.0 : 1.0;
+            nativeChannel.updateDouble ( new DoubleValue ( valueTime, quality, 0, 1, random.nextInt ( 1000 ) / 10.0 ) );
+        }
+        Assert.assertEquals ( 1000, nativeChannel.getRecentValueCache ().getSize () );
+        Assert.assertTrue ( averageChannel.getRecentValueCache ().getSize () > 0 );
+        compareValues ( nativeChannel, 400000, time + TIME_SPAN, random );
+        compareValues ( averageChannel, 400000, time + TIME_SPAN, random );
+        Assert.assertTrue ( nativeChannel.getRecentValueCache ().getHitCount () > 0 );
+        Assert.assertTrue ( nativeChannel.getRecentValueCache ().getMissCount () > 0 );
+        Assert.assertTrue ( averageChannel.getRecentValueCache ().getHitCount () > 0 );
+    }
+
+    /**
+     * This method tests that the oldest records are removed if the capacity or the maximum age is exceeded.
+     */
+    @Test
+    public void testEviction ()
+    {
+        final RecentValueCache cache = new RecentValueCache ( 10, 1000 );
+        cache.clear ( Long.MIN_VALUE );
+        for ( int i = 0; i < 25; i++ )
+        {
+            cache.add ( i * 10, i, 1.0, 0, 1 );
+        }
+        Assert.assertEquals ( 10, cache.getSize () );
+        Assert.assertNull ( cache.getLongValueBatch ( 149, 1000 ) );
+        final LongValueBatch values = cache.getLongValueBatch ( 155, 1000 );
+        Assert.assertEquals ( 10, values.getSize () );
+        Assert.assertEquals ( 150, values.getTime ( 0 ) );
+        Assert.assertEquals ( 24, values.getValue ( values.getSize () - 1 ) );
+
+        // records that are older than the maximum age are removed
+        cache.add ( 1200, 25, 1.0, 0, 1 );
+        Assert.assertEquals ( 6, cache.getSize () );
+        Assert.assertEquals ( 200, cache.getLongValueBatch ( 200, 201 ).getTime ( 0 ) );
+
+        // a value that is older than the newest value clears the cache
+        cache.add ( 1100, 26, 1.0, 0, 1 );
+        Assert.assertEquals ( 0, cache.getSize () );
+        cache.add ( 1300, 27, 1.0, 0, 1 );
+        Assert.assertEquals ( 1, cache.getSize () );
+        Assert.assertNull ( cache.getLongValueBatch ( 1250, 1400 ) );
+        Assert.assertEquals ( 1, cache.getLongValueBatch ( 1300, 1400 ).getSize () );
+    }
+}
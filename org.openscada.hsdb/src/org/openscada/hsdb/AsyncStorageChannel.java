@@ -0,0 +1,348 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openscada.hsdb.concurrent.BoundedSerialExecutor;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This storage channel implementation forwards all updates asynchronously to another storage channel.
+ * The updates are processed in the order they have been passed using a thread pool that is shared by all instances.
+ * Each instance has its own bounded queue. If the queue is full, the caller is blocked until free capacity is available.
+ * If an update fails, the error is reported to the caller by the next update or flush.
+ * Retrieving data is directly forwarded to the other storage channel and therefore only contains updates that have already been processed.
+ */
+public class AsyncStorageChannel implements ExtendedBatchStorageChannel
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( AsyncStorageChannel.class );
+
+    /** Id of the threads that are used for processing the updates. */
+    private final static String CALCULATION_THREAD_ID = "hsdb.CalculationThread";
+
+    /** Name of the system property that specifies the maximum count of threads that are used for processing the updates. */
+    public final static String CALCULATION_THREAD_COUNT_PROPERTY = "org.openscada.hsdb.calculationThreadCount";
+
+    /** Executor that is shared by all instances for processing the updates. */
+    private final static ThreadPoolExecutor calculationExecutor;
+
+    static
+    {
+        final int threadCount = Math.max ( 1, Integer.getInteger ( CALCULATION_THREAD_COUNT_PROPERTY, Runtime.getRuntime ().availableProcessors () ) );
+        calculationExecutor = new ThreadPoolExecutor ( threadCount, threadCount, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable> (), new NamedThreadFactory ( CALCULATION_THREAD_ID, true ) );
+        calculationExecutor.allowCoreThreadTimeOut ( true );
+    }
+
+    /**
+     * This class is the base class for all updates that are forwarded to the other storage channel.
+     */
+    private abstract class UpdateTask implements Runnable
+    {
+        /**
+         * This method forwards the update to the other storage channel.
+         * @throws Exception in case of problems
+         */
+        protected abstract void update () throws Exception;
+
+        /**
+         * @see java.lang.Runnable#run
+         */
+        public void run ()
+        {
+            try
+            {
+                update ();
+            }
+            catch ( final Exception e )
+            {
+                logger.error ( "could not process update asynchronously", e );
+                AsyncStorageChannel.this.failure.compareAndSet ( null, e );
+            }
+        }
+    }
+
+    /** Storage channel to which the updates are forwarded. */
+    private final ExtendedBatchStorageChannel storageChannel;
+
+    /** Executor that processes the updates of this instance in the order they have been passed. */
+    private final BoundedSerialExecutor executor;
+
+    /** First error that occurred while processing an update and that has not been reported yet. */
+    private final AtomicReference<Exception> failure;
+
+    /**
+     * Constructor.
+     * @param storageChannel storage channel to which the updates are forwarded
+     * @param queueCapacity maximum count of updates that are pending before callers are blocked
+     */
+    public AsyncStorageChannel ( final ExtendedBatchStorageChannel storageChannel, final int queueCapacity )
+    {
+        this.storageChannel = storageChannel;
+        this.executor = new BoundedSerialExecutor ( calculationExecutor, queueCapacity );
+        this.failure = new AtomicReference<Exception> ();
+    }
+
+    /**
+     * This method returns the storage channel to which the updates are forwarded.
+     * @return storage channel to which the updates are forwarded
+     */
+    public ExtendedBatchStorageChannel getStorageChannel ()
+    {
+        return this.storageChannel;
+    }
+
+    /**
+     * This method returns the count of updates that are currently pending.
+     * @return count of updates that are currently pending
+     */
+    public int getQueueSize ()
+    {
+        return this.executor.getQueueSize ();
+    }
+
+    /**
+     * This method blocks until all updates that have been passed before have been processed.
+     * @throws InterruptedException if the thread has been interrupted while waiting
+     * @throws Exception if processing an update failed since the last update or flush
+     */
+    public void flush () throws Exception
+    {
+        this.executor.flush ();
+        checkFailure ();
+    }
+
+    /**
+     * This method reports an error that occurred while processing an update and that has not been reported yet.
+     * @throws Exception if processing an update failed since the last check
+     */
+    private void checkFailure () throws Exception
+    {
+        final Exception e = this.failure.getAndSet ( null );
+        if ( e != null )
+        {
+            throw new Exception ( String.format ( "asynchronous update of storage channel failed (%s)", e.getMessage () ), e );
+        }
+    }
+
+    /**
+     * This method reports pending errors and adds the passed update to the queue of pending updates.
+     * @param task update that has to be processed
+     * @throws Exception if processing a previous update failed or if the thread has been interrupted while waiting for free capacity
+     */
+    private void submit ( final UpdateTask task ) throws Exception
+    {
+        checkFailure ();
+        this.executor.submit ( task );
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#getMetaData
+     */
+    public StorageChannelMetaData getMetaData () throws Exception
+    {
+        return this.storageChannel.getMetaData ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLong
+     */
+    public void updateLong ( final LongValue longValue ) throws Exception
+    {
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.updateLong ( longValue );
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLongs
+     */
+    public void updateLongs ( final LongValue[] longValues ) throws Exception
+    {
+        if ( longValues == null )
+        {
+            return;
+        }
+        final LongValue[] values = longValues.clone ();
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.updateLongs ( values );
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
+     */
+    public void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
+    {
+        if ( longValues == null )
+        {
+            return;
+        }
+        final LongValueBatch values = longValues.createEmptyBatch ( longValues.getSize () );
+        values.addAll ( longValues );
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.updateLongValueBatch ( values );
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedStorageChannel#updateDouble
+     */
+    public void updateDouble ( final DoubleValue doubleValue ) throws Exception
+    {
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.updateDouble ( doubleValue );
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedStorageChannel#updateDoubles
+     */
+    public void updateDoubles ( final DoubleValue[] doubleValues ) throws Exception
+    {
+        if ( doubleValues == null )
+        {
+            return;
+        }
+        final DoubleValue[] values = doubleValues.clone ();
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.updateDoubles ( values );
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#updateDoubleValueBatch
+     */
+    public void updateDoubleValueBatch ( final DoubleValueBatch doubleValues ) throws Exception
+    {
+        if ( doubleValues == null )
+        {
+            return;
+        }
+        final DoubleValueBatch values = doubleValues.createEmptyBatch ( doubleValues.getSize () );
+        values.addAll ( doubleValues );
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.updateDoubleValueBatch ( values );
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#cleanupRelicts
+     */
+    public void cleanupRelicts () throws Exception
+    {
+        submit ( new UpdateTask ()
+        {
+            @Override
+            protected void update () throws Exception
+            {
+                AsyncStorageChannel.this.storageChannel.cleanupRelicts ();
+            }
+        } );
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#getLongValues
+     */
+    public LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel.getLongValues ( startTime, endTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel.getLongValueBatch ( startTime, endTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
+     */
+    public ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel.getLongValueCursor ( startTime, endTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedStorageChannel#getDoubleValues
+     */
+    public DoubleValue[] getDoubleValues ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel.getDoubleValues ( startTime, endTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueBatch
+     */
+    public DoubleValueBatch getDoubleValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel.getDoubleValueBatch ( startTime, endTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueCursor
+     */
+    public ValueCursor<DoubleValueBatch> getDoubleValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel.getDoubleValueCursor ( startTime, endTime );
+    }
+}
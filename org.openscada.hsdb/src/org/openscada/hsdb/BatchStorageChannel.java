@@ -0,0 +1,61 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb;
+
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This interface extends the storage channel interface with methods for storing and retrieving batches of long values.
+ * Batches store the data of many values within arrays of primitive types and therefore avoid the creation of one object per value.
+ * Implementations that do not support this interface can be accessed via the adapter methods of the class {@link org.openscada.hsdb.utils.HsdbHelper}.
+ */
+public interface BatchStorageChannel extends StorageChannel
+{
+    /**
+     * This method updates the passed long values.
+     * If a value with the same time stamp already exists, the previous value will be replaced.
+     * The implementation decides whether the data is processed or not.
+     * See the documentation of the different implementations for more details.
+     * @param longValues values that have to be updated
+     * @throws Exception in case of read/write problems or file corruption
+     */
+    public abstract void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception;
+
+    /**
+     * This method retrieves all long values that match the specified time span and returns them as batch sorted by time.
+     * If the lower bound cannot be satisfied by an exact value, the previous value that lies outside the time span will also be returned.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return long values that match the specified time span
+     * @throws Exception in case of read/write problems or file corruption
+     */
+    public abstract LongValueBatch getLongValueBatch ( long startTime, long endTime ) throws Exception;
+
+    /**
+     * This method opens a cursor that provides sequential access to all long values that match the specified time span.
+     * The cursor returns the same values as the method {@link #getLongValueBatch(long, long)}, but splits them into batches of limited size.
+     * The returned cursor has to be closed after usage.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return cursor providing the long values that match the specified time span
+     * @throws Exception in case of read/write problems or file corruption
+     */
+    public abstract ValueCursor<LongValueBatch> getLongValueCursor ( long startTime, long endTime ) throws Exception;
+}
@@ -23,12 +23,20 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.openscada.hsdb.calculation.CalculationAccumulator;
 import org.openscada.hsdb.calculation.CalculationLogicProvider;
 import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
 import org.openscada.hsdb.datatypes.DataType;
 import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.metrics.Counter;
+import org.openscada.hsdb.metrics.Timer;
 import org.openscada.hsdb.utils.HsdbHelper;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +59,7 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     private final CalculationLogicProvider calculationLogicProvider;
 
     /** The start time of the latest processed time span. */
-    private long latestProcessedTime;
+    private volatile long latestProcessedTime;
 
     /** The latest value in the storage channel. */
     private BaseValue lastValue;
@@ -59,6 +67,24 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     /** Time span of a block. */
     private final long blockTimeSpan;
 
+    /** Flag indicating whether the value of the open time span is calculated incrementally while its input values arrive. */
+    private final boolean incrementalCalculation;
+
+    /** Accumulator holding the state of the open time span or null if the state has to be rebuilt from the input storage channel. */
+    private CalculationAccumulator accumulator;
+
+    /** Lock object that keeps the order of passed through values while the registered storage channels are notified without holding the lock of the instance. */
+    private final Object passThroughLock;
+
+    /** Cache of the most recent values of the base storage channel or null if no cache is used. */
+    private RecentValueCache recentValueCache;
+
+    /** Counter of the values that are inserted via the channel or null if insertions are not measured. */
+    private volatile Counter insertValueCounter;
+
+    /** Timer recording the duration of insertions via the channel or null if insertions are not measured. */
+    private volatile Timer insertTimer;
+
     /**
      * Fully initializing constructor.
      * @param baseStorageChannel storage channel that is used as main channel when writing results of calculations
@@ -66,12 +92,30 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
      * @param calculationLogicProvider logic provider for calculation of values for storage channel
      */
     public CalculatingStorageChannel ( final ExtendedStorageChannel baseStorageChannel, final ExtendedStorageChannel inputStorageChannel, final CalculationLogicProvider calculationLogicProvider )
+    {
+        this ( baseStorageChannel, inputStorageChannel, calculationLogicProvider, false );
+    }
+
+    /**
+     * Fully initializing constructor.
+     * @param baseStorageChannel storage channel that is used as main channel when writing results of calculations
+     * @param inputStorageChannel storage channel that is used to request input data
+     * @param calculationLogicProvider logic provider for calculation of values for storage channel
+     * @param incrementalCalculation true, if the value of the open time span should be calculated incrementally while its input values arrive, otherwise false if each time span should be read again from the input storage channel when it is completed
+     */
+    public CalculatingStorageChannel ( final ExtendedStorageChannel baseStorageChannel, final ExtendedStorageChannel inputStorageChannel, final CalculationLogicProvider calculationLogicProvider, final boolean incrementalCalculation )
     {
         // initialize data
         this.baseStorageChannel = baseStorageChannel;
         this.inputStorageChannel = inputStorageChannel;
         this.calculationLogicProvider = calculationLogicProvider;
         this.blockTimeSpan = calculationLogicProvider.getRequiredTimespanForCalculation ();
+        this.incrementalCalculation = incrementalCalculation;
+        this.accumulator = null;
+        this.passThroughLock = new Object ();
+        this.recentValueCache = null;
+        this.insertValueCounter = null;
+        this.insertTimer = null;
 
         // calculate values of the past
         this.latestProcessedTime = getLatestProcessedValueTime ();
@@ -95,6 +139,52 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         return this.inputStorageChannel;
     }
 
+    /**
+     * This method returns the cache of the most recent values of the base storage channel.
+     * @return cache of the most recent values of the base storage channel or null if no cache is used
+     */
+    public synchronized RecentValueCache getRecentValueCache ()
+    {
+        return this.recentValueCache;
+    }
+
+    /**
+     * This method sets the cache of the most recent values of the base storage channel.
+     * The cache is filled with the values that are stored afterwards and is used to answer requests that it fully covers.
+     * @param recentValueCache cache of the most recent values of the base storage channel or null if no cache should be used
+     */
+    public synchronized void setRecentValueCache ( final RecentValueCache recentValueCache )
+    {
+        this.recentValueCache = recentValueCache;
+        resetRecentValueCache ();
+    }
+
+    /**
+     * This method clears the cache of the most recent values.
+     * The method has to be called if values have been written to the base storage channel without using this instance.
+     */
+    public synchronized void resetRecentValueCache ()
+    {
+        if ( this.recentValueCache == null )
+        {
+            return;
+        }
+        long latestTime = Long.MAX_VALUE;
+        if ( this.baseStorageChannel != null )
+        {
+            try
+            {
+                final LongValueBatch values = HsdbHelper.getLongValueBatch ( this.baseStorageChannel, Long.MAX_VALUE - 1, Long.MAX_VALUE );
+                latestTime = values.isEmpty () ? Long.MIN_VALUE : values.getTime ( values.getSize () - 1 );
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( "could not retrieve latest value. cache of recent values will not be used", e );
+            }
+        }
+        this.recentValueCache.clear ( latestTime );
+    }
+
     /**
      * This method returns the logic provider for calculation of values for storage channel.
      * @return logic provider for calculation of values for storage channel
@@ -105,24 +195,43 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     }
 
     /**
-     * This method returns an empty array of the data type that is requested.
-     * @param dataType data type of the requested array
-     * @return array of the data type that is requested
+     * This method returns the start time of the latest processed time span.
+     * @return start time of the latest processed time span or Long.MIN_VALUE if no time span has been processed yet
      */
-    private BaseValue[] getEmptyArray ( final DataType dataType )
+    public long getLatestProcessedTime ()
     {
-        switch ( dataType )
-        {
-        case LONG_VALUE:
+        return this.latestProcessedTime;
+    }
+
+    /**
+     * This method sets the metrics that record the insertions via the channel.
+     * Insertions that are passed from super storage channels are measured by the channel that received them first.
+     * @param insertValueCounter counter of the values that are inserted via the channel or null if insertions should not be measured
+     * @param insertTimer timer recording the duration of insertions via the channel or null if insertions should not be measured
+     */
+    public void setInsertMetrics ( final Counter insertValueCounter, final Timer insertTimer )
+    {
+        this.insertValueCounter = insertValueCounter;
+        this.insertTimer = insertTimer;
+    }
+
+    /**
+     * This method records a completed insertion if insertions are measured.
+     * @param valueCount count of the inserted values
+     * @param startTime value of System.nanoTime () when the insertion started
+     */
+    private void recordInsert ( final int valueCount, final long startTime )
+    {
+        final Timer insertTimer = this.insertTimer;
+        if ( insertTimer != null )
         {
-            return ExtendedStorageChannel.EMPTY_LONGVALUE_ARRAY;
+            insertTimer.update ( System.nanoTime () - startTime );
         }
-        case DOUBLE_VALUE:
+        final Counter insertValueCounter = this.insertValueCounter;
+        if ( insertValueCounter != null )
         {
-            return ExtendedStorageChannel.EMPTY_DOUBLEVALUE_ARRAY;
-        }
+            insertValueCounter.add ( valueCount );
         }
-        return null;
     }
 
     /**
@@ -133,23 +242,37 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
      * @param endTime end time of time span
      * @return retrieved values
      */
-    private BaseValue[] getValues ( final ExtendedStorageChannel storageChannel, final DataType dataType, final long startTime, final long endTime )
+    private BaseValueBatch getValues ( final ExtendedStorageChannel storageChannel, final DataType dataType, final long startTime, final long endTime )
     {
         if ( storageChannel != null )
         {
             try
             {
-                switch ( dataType )
-                {
-                case LONG_VALUE:
-                {
-                    return storageChannel.getLongValues ( startTime, endTime );
-                }
-                case DOUBLE_VALUE:
-                {
-                    return storageChannel.getDoubleValues ( startTime, endTime );
-                }
-                }
+                return HsdbHelper.getValueBatch ( storageChannel, dataType, startTime, endTime );
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( "could not retrieve values!", e );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method opens a cursor for the values of the passed storage channel matching the specified time span.
+     * @param storageChannel storage channel to be used
+     * @param dataType data type that has to be retrieved
+     * @param startTime start time of time span
+     * @param endTime end time of time span
+     * @return opened cursor or null if no cursor could be opened
+     */
+    private ValueCursor<? extends BaseValueBatch> getValueCursor ( final ExtendedStorageChannel storageChannel, final DataType dataType, final long startTime, final long endTime )
+    {
+        if ( storageChannel != null )
+        {
+            try
+            {
+                return HsdbHelper.getValueCursor ( storageChannel, dataType, startTime, endTime );
             }
             catch ( final Exception e )
             {
@@ -179,8 +302,8 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         this.lastValue = null;
         if ( this.baseStorageChannel != null )
         {
-            final BaseValue[] values = getValues ( this.baseStorageChannel, this.calculationLogicProvider.getOutputType (), Long.MAX_VALUE - 1, Long.MAX_VALUE );
-            this.lastValue = values != null && values.length > 0 ? values[0] : null;
+            final BaseValueBatch values = getValues ( this.baseStorageChannel, this.calculationLogicProvider.getOutputType (), Long.MAX_VALUE - 1, Long.MAX_VALUE );
+            this.lastValue = values != null && !values.isEmpty () ? values.createValue ( 0 ) : null;
         }
         return this.lastValue == null ? Long.MIN_VALUE : this.lastValue.getTime ();
     }
@@ -188,6 +311,7 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     /**
      * This method calculates all values that should have been calculated in the past, but are not available in the storage channel.
      * This is the case if the system was shut down or if a new storage channel with a new calculation method has been added.
+     * The input values are read via a cursor. Time spans are processed as soon as all of their values have been read.
      * @param startTime start time of the time span for which a calculation has to be made
      * @param endTime end time of the time span for which a calculation has to be made
      * @throws Exception in case of any problems
@@ -197,14 +321,73 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         if ( this.inputStorageChannel != null )
         {
             final DataType inputType = this.calculationLogicProvider.getInputType ();
-            final BaseValue[] values = getValues ( this.inputStorageChannel, inputType, startTime, endTime );
-            if ( values != null && values.length > 0 )
+            final ValueCursor<? extends BaseValueBatch> cursor = getValueCursor ( this.inputStorageChannel, inputType, startTime, endTime );
+            if ( cursor == null )
             {
-                processValues ( values, startTime, endTime );
+                return;
+            }
+            try
+            {
+                BaseValueBatch values = null;
+                long processedTime = startTime;
+                while ( cursor.hasNext () )
+                {
+                    // append the next values to the values that have not yet been processed completely
+                    final BaseValueBatch nextValues = cursor.next ();
+                    if ( values == null )
+                    {
+                        values = nextValues;
+                    }
+                    else
+                    {
+                        values.addAll ( nextValues );
+                    }
+
+                    // process all time spans for which newer values are available
+                    final long completedTime = Math.min ( getTimeSpanStart ( values.getTime ( values.getSize () - 1 ) ), endTime );
+                    if ( completedTime > processedTime )
+                    {
+                        processValues ( values, processedTime, completedTime );
+                        values = removeProcessedValues ( values, completedTime );
+                        processedTime = completedTime;
+                    }
+                }
+                if ( values != null && !values.isEmpty () && processedTime < endTime )
+                {
+                    processValues ( values, processedTime, endTime );
+                }
+            }
+            finally
+            {
+                cursor.close ();
             }
         }
     }
 
+    /**
+     * This method returns a batch containing only the values that are still required for processing time spans starting at the passed time.
+     * These are the last value before or at the passed time and all following values.
+     * @param values values that have been processed until the passed time
+     * @param processedTime time until which all time spans have been processed
+     * @return values that are still required
+     */
+    private static BaseValueBatch removeProcessedValues ( final BaseValueBatch values, final long processedTime )
+    {
+        final int size = values.getSize ();
+        int firstIndex = 0;
+        while ( firstIndex + 1 < size && values.getTime ( firstIndex + 1 ) <= processedTime )
+        {
+            firstIndex++;
+        }
+        if ( firstIndex == 0 )
+        {
+            return values;
+        }
+        final BaseValueBatch result = values.createEmptyBatch ( size - firstIndex );
+        result.addAll ( values, firstIndex, size );
+        return result;
+    }
+
     /**
      * This method triggers the functionality that retrieves old values from the input storage channel and calculates values for the base storage channel.
      * The method should not be called outside of this package.
@@ -218,6 +401,14 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         {
             return;
         }
+        if ( this.incrementalCalculation )
+        {
+            if ( values.length > 0 )
+            {
+                notifyNewValuesIncrementally ( BaseValueBatch.fromValues ( values ) );
+            }
+            return;
+        }
 
         // extract and process times
         final long[] times = new long[values.length];
@@ -228,6 +419,188 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         notifyNewValues ( times );
     }
 
+    /**
+     * This method triggers the functionality that retrieves old values from the input storage channel and calculates values for the base storage channel.
+     * @param values values that have to be processed
+     * @throws Exception in case of any problems
+     */
+    private void notifyNewValues ( final BaseValueBatch values ) throws Exception
+    {
+        if ( values != null )
+        {
+            if ( this.incrementalCalculation )
+            {
+                notifyNewValuesIncrementally ( values );
+            }
+            else
+            {
+                notifyNewValues ( values.toTimeArray () );
+            }
+        }
+    }
+
+    /**
+     * This method processes new values by updating the state of the open time span.
+     * Completed time spans are calculated using this state, so that their values do not have to be read again from the input storage channel.
+     * Only values that belong to already completed time spans or that do not arrive in ascending order of time cause the affected time spans to be read again.
+     * @param values values that have to be processed
+     * @throws Exception in case of any problems
+     */
+    private void notifyNewValuesIncrementally ( final BaseValueBatch values ) throws Exception
+    {
+        if ( values.isEmpty () )
+        {
+            return;
+        }
+
+        // values that cannot be processed directly are handled by reading the affected time spans
+        if ( values.getDataType () != this.calculationLogicProvider.getInputType () || this.inputStorageChannel == null )
+        {
+            this.accumulator = null;
+            notifyNewValues ( values.toTimeArray () );
+            return;
+        }
+        BaseValueBatch sortedValues = values;
+        if ( !values.isSortedByTime () )
+        {
+            final BaseValue[] valueArray = values.toValues ();
+            Arrays.sort ( valueArray );
+            sortedValues = BaseValueBatch.fromValues ( valueArray );
+        }
+
+        // assure that at least one value exists
+        if ( this.latestProcessedTime == Long.MIN_VALUE )
+        {
+            this.latestProcessedTime = getTimeSpanStart ( sortedValues.getTime ( 0 ) );
+        }
+
+        // values of time spans that have already been completed are processed by reading the affected time spans again
+        final int size = sortedValues.getSize ();
+        int index = 0;
+        while ( index < size && sortedValues.getTime ( index ) < this.latestProcessedTime )
+        {
+            index++;
+        }
+        if ( index > 0 )
+        {
+            final long[] times = new long[index];
+            System.arraycopy ( sortedValues.getTimes (), 0, times, 0, index );
+            notifyNewValues ( times );
+            this.accumulator = null;
+        }
+
+        // process remaining values incrementally
+        while ( index < size )
+        {
+            if ( this.accumulator == null )
+            {
+                if ( !rebuildAccumulator () )
+                {
+                    final long[] times = new long[size - index];
+                    System.arraycopy ( sortedValues.getTimes (), index, times, 0, times.length );
+                    notifyNewValues ( times );
+                    return;
+                }
+
+                // the values of the open time span have already been read from the input storage channel
+                final long endTime = this.latestProcessedTime + this.blockTimeSpan;
+                while ( index < size && sortedValues.getTime ( index ) < endTime )
+                {
+                    index++;
+                }
+                continue;
+            }
+            final long time = sortedValues.getTime ( index );
+            final long timeSpanStart = getTimeSpanStart ( time );
+            if ( timeSpanStart > this.latestProcessedTime )
+            {
+                completeTimeSpans ( timeSpanStart );
+            }
+            if ( time <= this.accumulator.getLastTime () )
+            {
+                // the value replaces or precedes a value of the open time span
+                this.accumulator = null;
+                continue;
+            }
+            this.accumulator.add ( sortedValues, index );
+            index++;
+        }
+    }
+
+    /**
+     * This method rebuilds the state of the open time span by reading its values from the input storage channel.
+     * @return true, if the state could be rebuilt, otherwise false
+     */
+    private boolean rebuildAccumulator ()
+    {
+        final long startTime = this.latestProcessedTime;
+        final BaseValueBatch values = getValues ( this.inputStorageChannel, this.calculationLogicProvider.getInputType (), startTime, startTime + this.blockTimeSpan );
+        if ( values == null )
+        {
+            return false;
+        }
+        final CalculationAccumulator accumulator = this.calculationLogicProvider.createAccumulator ();
+        final int size = values.getSize ();
+        int index = 0;
+        if ( size > 0 && values.getTime ( 0 ) < startTime )
+        {
+            // the last value before the time span is used as value at its start
+            accumulator.reset ( values.getTime ( 0 ) );
+            accumulator.add ( values, 0 );
+            index++;
+        }
+        accumulator.reset ( startTime );
+        for ( ; index < size; index++ )
+        {
+            accumulator.add ( values, index );
+        }
+        this.accumulator = accumulator;
+        return true;
+    }
+
+    /**
+     * This method calculates the values of the open time span and of the directly following time span using the state of the accumulator.
+     * Afterwards the time span starting at the passed time becomes the open time span.
+     * @param timeSpanStart start of the time span that becomes the open time span
+     * @throws Exception in case of any problems
+     */
+    private void completeTimeSpans ( final long timeSpanStart ) throws Exception
+    {
+        final long nextTime = this.latestProcessedTime + this.blockTimeSpan;
+        processAccumulatedValues ();
+        if ( nextTime < timeSpanStart )
+        {
+            this.accumulator.reset ( nextTime );
+            processAccumulatedValues ();
+        }
+        this.accumulator.reset ( timeSpanStart );
+        this.latestProcessedTime = timeSpanStart;
+    }
+
+    /**
+     * This method calculates the value of the current time span of the accumulator and forwards it.
+     * Time spans that have not yet been completed according to the current time are not processed.
+     * @throws Exception if the value could not be processed
+     */
+    private void processAccumulatedValues () throws Exception
+    {
+        final long startTime = this.accumulator.getStartTime ();
+        if ( startTime >= getTimeSpanStart ( System.currentTimeMillis () ) )
+        {
+            return;
+        }
+        try
+        {
+            storeCalculatedValue ( this.accumulator.generateValue ( startTime + this.blockTimeSpan ) );
+        }
+        catch ( final Exception e )
+        {
+            final String message = "could not process values!";
+            logger.error ( message, e );
+            throw new Exception ( message, e );
+        }
+    }
+
     /**
      * This method checks whether the passed value has to be processed or not.
      * @param newValue the value that has to be checked
@@ -304,6 +677,7 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
                 startTimes.add ( nextTime );
             }
             this.latestProcessedTime = futureLatestProcessedTime;
+            this.accumulator = null;
         }
 
         // process time spans
@@ -330,53 +704,40 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     {
         if ( values != null && values.length > 0 )
         {
-            final BaseValue[] emptyArray = getEmptyArray ( this.calculationLogicProvider.getInputType () );
-            final long blockMid = Math.max ( minStartTime, values[0].getTime () );
+            processValues ( BaseValueBatch.fromValues ( values ), minStartTime, maxEndTime );
+        }
+    }
+
+    /**
+     * This method forwards the passed values to the correct processing method.
+     * @param values values that have to be processed
+     * @param minStartTime minimum start time of the time spans that will be processed
+     * @param maxEndTime maximum end of the time spans that will be processed
+     * @throws Exception if values could not be processed
+     */
+    public synchronized void processValues ( final BaseValueBatch values, final long minStartTime, final long maxEndTime ) throws Exception
+    {
+        if ( values != null && !values.isEmpty () )
+        {
+            final long blockMid = Math.max ( minStartTime, values.getTime ( 0 ) );
             if ( blockMid >= getTimeSpanStart ( System.currentTimeMillis () ) )
             {
                 return;
             }
             long blockStart = getTimeSpanStart ( blockMid );
+            int startIndex = 0;
             while ( blockStart < maxEndTime )
             {
                 final long blockEnd = blockStart + this.blockTimeSpan;
-                final BaseValue[] valueBlock = HsdbHelper.extractSubArray ( values, blockStart, blockEnd, 0, emptyArray );
-                if ( valueBlock.length == 0 )
+                final BaseValueBatchRange valueBlock = HsdbHelper.sliceBatch ( values, blockStart, blockEnd, startIndex );
+                if ( valueBlock.isEmpty () )
                 {
                     break;
                 }
+                startIndex = Math.max ( 0, valueBlock.getToIndex () - 1 );
                 try
                 {
-                    final DataType dt = this.calculationLogicProvider.getOutputType ();
-                    switch ( dt )
-                    {
-                    case LONG_VALUE:
-                    {
-                        final LongValue newValue = (LongValue)this.calculationLogicProvider.generateValue ( valueBlock );
-                        if ( this.baseStorageChannel != null )
-                        {
-                            if ( processNewValue ( newValue ) )
-                            {
-                                this.baseStorageChannel.updateLong ( newValue );
-                            }
-                        }
-                        super.updateLong ( newValue );
-                        break;
-                    }
-                    case DOUBLE_VALUE:
-                    {
-                        final DoubleValue newValue = (DoubleValue)this.calculationLogicProvider.generateValue ( valueBlock );
-                        if ( this.baseStorageChannel != null )
-                        {
-                            if ( processNewValue ( newValue ) )
-                            {
-                                this.baseStorageChannel.updateDouble ( newValue );
-                            }
-                        }
-                        super.updateDouble ( newValue );
-                        break;
-                    }
-                    }
+                    storeCalculatedValue ( this.calculationLogicProvider.generateValue ( valueBlock ) );
                 }
                 catch ( final Exception e )
                 {
@@ -389,6 +750,53 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         }
     }
 
+    /**
+     * This method stores the passed calculated value in the base storage channel and forwards it to the registered storage channels.
+     * @param newValue calculated value
+     * @throws Exception if the value could not be stored
+     */
+    private void storeCalculatedValue ( final BaseValue newValue ) throws Exception
+    {
+        final DataType dt = this.calculationLogicProvider.getOutputType ();
+        switch ( dt )
+        {
+        case LONG_VALUE:
+        {
+            final LongValue longValue = (LongValue)newValue;
+            if ( this.baseStorageChannel != null )
+            {
+                if ( processNewValue ( longValue ) )
+                {
+                    this.baseStorageChannel.updateLong ( longValue );
+                    if ( this.recentValueCache != null )
+                    {
+                        this.recentValueCache.add ( longValue.getTime (), longValue.getValue (), longValue.getQualityIndicator (), longValue.getManualIndicator (), longValue.getBaseValueCount () );
+                    }
+                }
+            }
+            super.updateLong ( longValue );
+            break;
+        }
+        case DOUBLE_VALUE:
+        {
+            final DoubleValue doubleValue = (DoubleValue)newValue;
+            if ( this.baseStorageChannel != null )
+            {
+                if ( processNewValue ( doubleValue ) )
+                {
+                    this.baseStorageChannel.updateDouble ( doubleValue );
+                    if ( this.recentValueCache != null )
+                    {
+                        this.recentValueCache.add ( doubleValue.getTime (), Double.doubleToLongBits ( doubleValue.getValue () ), doubleValue.getQualityIndicator (), doubleValue.getManualIndicator (), doubleValue.getBaseValueCount () );
+                    }
+                }
+            }
+            super.updateDouble ( doubleValue );
+            break;
+        }
+        }
+    }
+
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#getMetaData
      */
@@ -406,7 +814,7 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#updateLong
      */
-    public synchronized void updateLong ( final LongValue longValue ) throws Exception
+    public void updateLong ( final LongValue longValue ) throws Exception
     {
         updateLongs ( new LongValue[] { longValue } );
     }
@@ -414,20 +822,35 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#updateLongs
      */
-    public synchronized void updateLongs ( final LongValue[] longValues ) throws Exception
+    public void updateLongs ( final LongValue[] longValues ) throws Exception
     {
+        final long startTime = this.insertTimer != null ? System.nanoTime () : 0;
         if ( this.calculationLogicProvider.getPassThroughValues () )
         {
-            if ( this.baseStorageChannel != null )
+            synchronized ( this.passThroughLock )
             {
-                this.baseStorageChannel.updateLongs ( longValues );
+                synchronized ( this )
+                {
+                    if ( this.baseStorageChannel != null )
+                    {
+                        this.baseStorageChannel.updateLongs ( longValues );
+                        if ( this.recentValueCache != null )
+                        {
+                            this.recentValueCache.addLongValues ( longValues );
+                        }
+                    }
+                }
+                super.updateLongs ( longValues );
             }
-            super.updateLongs ( longValues );
         }
         else
         {
-            notifyNewValues ( longValues );
+            synchronized ( this )
+            {
+                notifyNewValues ( longValues );
+            }
         }
+        recordInsert ( longValues.length, startTime );
     }
 
     /**
@@ -435,6 +858,11 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
      */
     public synchronized LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
     {
+        final LongValueBatch cachedValues = this.recentValueCache != null ? this.recentValueCache.getLongValueBatch ( startTime, endTime ) : null;
+        if ( cachedValues != null )
+        {
+            return cachedValues.toLongValues ();
+        }
         if ( this.baseStorageChannel != null )
         {
             return this.baseStorageChannel.getLongValues ( startTime, endTime );
@@ -442,10 +870,73 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         return EMPTY_LONGVALUE_ARRAY;
     }
 
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
+     */
+    public void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
+    {
+        final long startTime = this.insertTimer != null ? System.nanoTime () : 0;
+        if ( this.calculationLogicProvider.getPassThroughValues () )
+        {
+            synchronized ( this.passThroughLock )
+            {
+                synchronized ( this )
+                {
+                    if ( this.baseStorageChannel != null )
+                    {
+                        HsdbHelper.updateLongValueBatch ( this.baseStorageChannel, longValues );
+                        if ( this.recentValueCache != null )
+                        {
+                            this.recentValueCache.addLongValueBatch ( longValues );
+                        }
+                    }
+                }
+                super.updateLongValueBatch ( longValues );
+            }
+        }
+        else
+        {
+            synchronized ( this )
+            {
+                notifyNewValues ( longValues );
+            }
+        }
+        recordInsert ( longValues.getSize (), startTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public synchronized LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        final LongValueBatch cachedValues = this.recentValueCache != null ? this.recentValueCache.getLongValueBatch ( startTime, endTime ) : null;
+        if ( cachedValues != null )
+        {
+            return cachedValues;
+        }
+        if ( this.baseStorageChannel != null )
+        {
+            return HsdbHelper.getLongValueBatch ( this.baseStorageChannel, startTime, endTime );
+        }
+        return new LongValueBatch ( 0 );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
+     */
+    public synchronized ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        if ( this.baseStorageChannel != null )
+        {
+            return HsdbHelper.getLongValueCursor ( this.baseStorageChannel, startTime, endTime );
+        }
+        return new SingleBatchValueCursor<LongValueBatch> ( null, new LongValueBatch ( 0 ) );
+    }
+
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#updateDouble
      */
-    public synchronized void updateDouble ( final DoubleValue doubleValue ) throws Exception
+    public void updateDouble ( final DoubleValue doubleValue ) throws Exception
     {
         updateDoubles ( new DoubleValue[] { doubleValue } );
     }
@@ -453,20 +944,35 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#updateDoubles
      */
-    public synchronized void updateDoubles ( final DoubleValue[] doubleValues ) throws Exception
+    public void updateDoubles ( final DoubleValue[] doubleValues ) throws Exception
     {
+        final long startTime = this.insertTimer != null ? System.nanoTime () : 0;
         if ( this.calculationLogicProvider.getPassThroughValues () )
         {
-            if ( this.baseStorageChannel != null )
+            synchronized ( this.passThroughLock )
             {
-                this.baseStorageChannel.updateDoubles ( doubleValues );
+                synchronized ( this )
+                {
+                    if ( this.baseStorageChannel != null )
+                    {
+                        this.baseStorageChannel.updateDoubles ( doubleValues );
+                        if ( this.recentValueCache != null )
+                        {
+                            this.recentValueCache.addDoubleValues ( doubleValues );
+                        }
+                    }
+                }
+                super.updateDoubles ( doubleValues );
             }
-            super.updateDoubles ( doubleValues );
         }
         else
         {
-            notifyNewValues ( doubleValues );
+            synchronized ( this )
+            {
+                notifyNewValues ( doubleValues );
+            }
         }
+        recordInsert ( doubleValues.length, startTime );
     }
 
     /**
@@ -474,6 +980,11 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
      */
     public synchronized DoubleValue[] getDoubleValues ( final long startTime, final long endTime ) throws Exception
     {
+        final DoubleValueBatch cachedValues = this.recentValueCache != null ? this.recentValueCache.getDoubleValueBatch ( startTime, endTime ) : null;
+        if ( cachedValues != null )
+        {
+            return cachedValues.toDoubleValues ();
+        }
         if ( this.baseStorageChannel != null )
         {
             return this.baseStorageChannel.getDoubleValues ( startTime, endTime );
@@ -481,17 +992,91 @@ public class CalculatingStorageChannel extends SimpleStorageChannelManager
         return EMPTY_DOUBLEVALUE_ARRAY;
     }
 
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#updateDoubleValueBatch
+     */
+    public void updateDoubleValueBatch ( final DoubleValueBatch doubleValues ) throws Exception
+    {
+        final long startTime = this.insertTimer != null ? System.nanoTime () : 0;
+        if ( this.calculationLogicProvider.getPassThroughValues () )
+        {
+            synchronized ( this.passThroughLock )
+            {
+                synchronized ( this )
+                {
+                    if ( this.baseStorageChannel != null )
+                    {
+                        HsdbHelper.updateDoubleValueBatch ( this.baseStorageChannel, doubleValues );
+                        if ( this.recentValueCache != null )
+                        {
+                            this.recentValueCache.addDoubleValueBatch ( doubleValues );
+                        }
+                    }
+                }
+                super.updateDoubleValueBatch ( doubleValues );
+            }
+        }
+        else
+        {
+            synchronized ( this )
+            {
+                notifyNewValues ( doubleValues );
+            }
+        }
+        recordInsert ( doubleValues.getSize (), startTime );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueBatch
+     */
+    public synchronized DoubleValueBatch getDoubleValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        final DoubleValueBatch cachedValues = this.recentValueCache != null ? this.recentValueCache.getDoubleValueBatch ( startTime, endTime ) : null;
+        if ( cachedValues != null )
+        {
+            return cachedValues;
+        }
+        if ( this.baseStorageChannel != null )
+        {
+            return HsdbHelper.getDoubleValueBatch ( this.baseStorageChannel, startTime, endTime );
+        }
+        return new DoubleValueBatch ( 0 );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueCursor
+     */
+    public synchronized ValueCursor<DoubleValueBatch> getDoubleValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        if ( this.baseStorageChannel != null )
+        {
+            return HsdbHelper.getDoubleValueCursor ( this.baseStorageChannel, startTime, endTime );
+        }
+        return new SingleBatchValueCursor<DoubleValueBatch> ( null, new DoubleValueBatch ( 0 ) );
+    }
+
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#cleanupRelicts
      */
-    public synchronized void cleanupRelicts () throws Exception
+    public void cleanupRelicts () throws Exception
     {
-        if ( this.lastValue != null )
+        synchronized ( this )
         {
-            final long nextTimeSpan = getTimeSpanStart ( this.lastValue.getTime () + this.blockTimeSpan );
-            if ( nextTimeSpan <= System.currentTimeMillis () )
+            if ( this.lastValue != null )
             {
-                notifyNewValues ( new long[] { nextTimeSpan } );
+                final long nextTimeSpan = getTimeSpanStart ( this.lastValue.getTime () + this.blockTimeSpan );
+                if ( nextTimeSpan <= System.currentTimeMillis () )
+                {
+                    final long timeSpanStart = getTimeSpanStart ( nextTimeSpan );
+                    if ( this.accumulator != null && timeSpanStart > this.latestProcessedTime )
+                    {
+                        completeTimeSpans ( timeSpanStart );
+                    }
+                    else
+                    {
+                        notifyNewValues ( new long[] { nextTimeSpan } );
+                    }
+                }
             }
         }
         super.cleanupRelicts ();
@@ -0,0 +1,58 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb;
+
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+
+/**
+ * This interface extends the extended storage channel interface with methods for storing and retrieving batches of values.
+ */
+public interface ExtendedBatchStorageChannel extends ExtendedStorageChannel, BatchStorageChannel
+{
+    /**
+     * This method updates the passed double values.
+     * If a value with the same time stamp already exists, the previous value will be replaced.
+     * The implementation decides whether the data is processed or not.
+     * See the documentation of the different implementations for more details.
+     * @param doubleValues values that have to be updated
+     * @throws Exception in case of read/write problems or file corruption
+     */
+    public abstract void updateDoubleValueBatch ( final DoubleValueBatch doubleValues ) throws Exception;
+
+    /**
+     * This method retrieves all double values that match the specified time span and returns them as batch sorted by time.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return double values that match the specified time span
+     * @throws Exception in case of read/write problems or file corruption
+     */
+    public abstract DoubleValueBatch getDoubleValueBatch ( long startTime, long endTime ) throws Exception;
+
+    /**
+     * This method opens a cursor that provides sequential access to all double values that match the specified time span.
+     * The cursor returns the same values as the method {@link #getDoubleValueBatch(long, long)}, but splits them into batches of limited size.
+     * The returned cursor has to be closed after usage.
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return cursor providing the double values that match the specified time span
+     * @throws Exception in case of read/write problems or file corruption
+     */
+    public abstract ValueCursor<DoubleValueBatch> getDoubleValueCursor ( long startTime, long endTime ) throws Exception;
+}
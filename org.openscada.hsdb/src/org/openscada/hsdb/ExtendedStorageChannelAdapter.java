@@ -20,7 +20,11 @@
 package org.openscada.hsdb;
 
 import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.utils.HsdbHelper;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,7 +36,7 @@ import org.slf4j.LoggerFactory;
  * That datatype setting should not be changed during the whole storage channel's lifespan.
  * @author Ludwig Straub
  */
-public class ExtendedStorageChannelAdapter implements ExtendedStorageChannel
+public class ExtendedStorageChannelAdapter implements ExtendedBatchStorageChannel
 {
     /** The default logger. */
     private final static Logger logger = LoggerFactory.getLogger ( ExtendedStorageChannelAdapter.class );
@@ -99,13 +103,24 @@ public class ExtendedStorageChannelAdapter implements ExtendedStorageChannel
     {
         if ( this.storageChannel != null && doubleValues != null )
         {
-            final LongValue[] longValues = new LongValue[doubleValues.length];
-            for ( int i = 0; i < doubleValues.length; i++ )
+            updateDoubleValueBatch ( DoubleValueBatch.fromValues ( doubleValues ) );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#updateDoubleValueBatch
+     */
+    public synchronized void updateDoubleValueBatch ( final DoubleValueBatch doubleValues ) throws Exception
+    {
+        if ( this.storageChannel != null && doubleValues != null )
+        {
+            final int size = doubleValues.getSize ();
+            final long[] longValues = new long[size];
+            for ( int i = 0; i < size; i++ )
             {
-                final DoubleValue doubleValue = doubleValues[i];
-                longValues[i] = new LongValue ( doubleValue.getTime (), doubleValue.getQualityIndicator (), doubleValue.getManualIndicator (), doubleValue.getBaseValueCount (), Double.doubleToLongBits ( doubleValue.getValue () ) );
+                longValues[i] = Double.doubleToLongBits ( doubleValues.getValue ( i ) );
             }
-            this.storageChannel.updateLongs ( longValues );
+            HsdbHelper.updateLongValueBatch ( this.storageChannel, new LongValueBatch ( doubleValues.getTimes (), doubleValues.getQualityIndicators (), doubleValues.getManualIndicators (), doubleValues.getBaseValueCounts (), longValues, size ) );
         }
     }
 
@@ -114,14 +129,56 @@ public class ExtendedStorageChannelAdapter implements ExtendedStorageChannel
      */
     public synchronized DoubleValue[] getDoubleValues ( final long startTime, final long endTime ) throws Exception
     {
-        final LongValue[] longValues = this.storageChannel != null ? this.storageChannel.getLongValues ( startTime, endTime ) : EMPTY_LONGVALUE_ARRAY;
-        final DoubleValue[] doubleValues = new DoubleValue[longValues.length];
-        for ( int i = 0; i < longValues.length; i++ )
+        return getDoubleValueBatch ( startTime, endTime ).toDoubleValues ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueBatch
+     */
+    public synchronized DoubleValueBatch getDoubleValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        return toDoubleValueBatch ( getLongValueBatch ( startTime, endTime ) );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueCursor
+     */
+    public synchronized ValueCursor<DoubleValueBatch> getDoubleValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        final ValueCursor<LongValueBatch> longValueCursor = getLongValueCursor ( startTime, endTime );
+        return new ValueCursor<DoubleValueBatch> () {
+            public boolean hasNext () throws Exception
+            {
+                return longValueCursor.hasNext ();
+            }
+
+            public DoubleValueBatch next () throws Exception
+            {
+                return toDoubleValueBatch ( longValueCursor.next () );
+            }
+
+            public void close ()
+            {
+                longValueCursor.close ();
+            }
+        };
+    }
+
+    /**
+     * This method converts the passed long values that contain the bits of double values to double values.
+     * The returned batch shares all arrays except the value array with the passed batch.
+     * @param longValues long values containing the bits of double values
+     * @return converted double values
+     */
+    private static DoubleValueBatch toDoubleValueBatch ( final LongValueBatch longValues )
+    {
+        final int size = longValues.getSize ();
+        final double[] doubleValues = new double[size];
+        for ( int i = 0; i < size; i++ )
         {
-            final LongValue longValue = longValues[i];
-            doubleValues[i] = new DoubleValue ( longValue.getTime (), longValue.getQualityIndicator (), longValue.getManualIndicator (), longValue.getBaseValueCount (), Double.longBitsToDouble ( longValue.getValue () ) );
+            doubleValues[i] = Double.longBitsToDouble ( longValues.getValue ( i ) );
         }
-        return doubleValues;
+        return new DoubleValueBatch ( longValues.getTimes (), longValues.getQualityIndicators (), longValues.getManualIndicators (), longValues.getBaseValueCounts (), doubleValues, size );
     }
 
     /**
@@ -132,6 +189,26 @@ public class ExtendedStorageChannelAdapter implements ExtendedStorageChannel
         return this.storageChannel != null ? this.storageChannel.getLongValues ( startTime, endTime ) : EMPTY_LONGVALUE_ARRAY;
     }
 
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public synchronized LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        return this.storageChannel != null ? HsdbHelper.getLongValueBatch ( this.storageChannel, startTime, endTime ) : new LongValueBatch ( 0 );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
+     */
+    public synchronized ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        if ( this.storageChannel != null )
+        {
+            return HsdbHelper.getLongValueCursor ( this.storageChannel, startTime, endTime );
+        }
+        return new SingleBatchValueCursor<LongValueBatch> ( null, new LongValueBatch ( 0 ) );
+    }
+
     /**
      * @see org.openscada.hsdb.StorageChannel#updateLong
      */
@@ -154,6 +231,17 @@ public class ExtendedStorageChannelAdapter implements ExtendedStorageChannel
         }
     }
 
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
+     */
+    public synchronized void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
+    {
+        if ( this.storageChannel != null )
+        {
+            HsdbHelper.updateLongValueBatch ( this.storageChannel, longValues );
+        }
+    }
+
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#cleanupRelicts
      */
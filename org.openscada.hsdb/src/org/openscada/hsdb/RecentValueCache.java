@@ -0,0 +1,361 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This class keeps the most recent values of a storage channel in a ring buffer.
+ * The values are stored outside of the java heap in a direct byte buffer, so that the cache does not cause garbage collection overhead.
+ * Values are stored in the raw long format of the back ends. Double values are stored as their bit representation like in {@link ExtendedStorageChannelAdapter}.
+ * The cache only contains a continuous sequence of the newest values of the channel. A value that is not newer than all values that have been passed before clears the cache.
+ * Requests can be answered if the cache contains the value that is valid at the start of the requested time span.
+ */
+public class RecentValueCache
+{
+    /** Size of one record in bytes. Each record consists of time, value, quality indicator, manual indicator and base value count. */
+    public final static int RECORD_SIZE = 40;
+
+    /** Buffer that contains the records. */
+    private final ByteBuffer buffer;
+
+    /** Maximum count of records. */
+    private final int capacity;
+
+    /** Maximum age of records relative to the newest record. Older records are removed. */
+    private final long maximumAge;
+
+    /** Index of the slot containing the oldest record. */
+    private int head;
+
+    /** Count of records that are currently stored. */
+    private int size;
+
+    /** Time of the newest value that is stored in the storage channel or Long.MAX_VALUE if the cache is invalid. */
+    private long latestTime;
+
+    /** Count of requests that could be answered by the cache. */
+    private long hitCount;
+
+    /** Count of requests that could not be answered by the cache. */
+    private long missCount;
+
+    /**
+     * Constructor.
+     * @param capacity maximum count of records
+     * @param maximumAge maximum age of records relative to the newest record
+     */
+    public RecentValueCache ( final int capacity, final long maximumAge )
+    {
+        if ( capacity < 1 || capacity > Integer.MAX_VALUE / RECORD_SIZE || maximumAge < 1 )
+        {
+            throw new IllegalArgumentException ( String.format ( "invalid cache configuration (capacity: %s, maximum age: %s)", capacity, maximumAge ) );
+        }
+        this.buffer = ByteBuffer.allocateDirect ( capacity * RECORD_SIZE );
+        this.capacity = capacity;
+        this.maximumAge = maximumAge;
+        this.head = 0;
+        this.size = 0;
+        this.latestTime = Long.MAX_VALUE;
+        this.hitCount = 0;
+        this.missCount = 0;
+    }
+
+    /**
+     * This method returns the maximum count of records.
+     * @return maximum count of records
+     */
+    public int getCapacity ()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * This method returns the count of records that are currently stored.
+     * @return count of records that are currently stored
+     */
+    public synchronized int getSize ()
+    {
+        return this.size;
+    }
+
+    /**
+     * This method returns the count of requests that could be answered by the cache.
+     * @return count of requests that could be answered by the cache
+     */
+    public synchronized long getHitCount ()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * This method returns the count of requests that could not be answered by the cache.
+     * @return count of requests that could not be answered by the cache
+     */
+    public synchronized long getMissCount ()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * This method removes all records from the cache.
+     * Only values that are newer than the passed time will be stored afterwards.
+     * @param latestTime time of the newest value that is stored in the storage channel, Long.MIN_VALUE if the storage channel is empty or Long.MAX_VALUE if no further values should be stored
+     */
+    public synchronized void clear ( final long latestTime )
+    {
+        this.head = 0;
+        this.size = 0;
+        this.latestTime = latestTime;
+    }
+
+    /**
+     * This method adds the passed values that have been stored in the storage channel.
+     * @param longValues values that have been stored in the storage channel
+     */
+    public synchronized void addLongValues ( final LongValue[] longValues )
+    {
+        if ( longValues == null )
+        {
+            return;
+        }
+        final LongValueBatch batch = LongValueBatch.fromValues ( longValues );
+        if ( batch.isSortedByTime () )
+        {
+            addLongValueBatch ( batch );
+        }
+        else
+        {
+            final LongValue[] sortedValues = longValues.clone ();
+            Arrays.sort ( sortedValues );
+            addLongValueBatch ( LongValueBatch.fromValues ( sortedValues ) );
+        }
+    }
+
+    /**
+     * This method adds the passed values that have been stored in the storage channel.
+     * @param longValues values that have been stored in the storage channel
+     */
+    public synchronized void addLongValueBatch ( final LongValueBatch longValues )
+    {
+        if ( longValues == null )
+        {
+            return;
+        }
+        if ( !longValues.isSortedByTime () )
+        {
+            addLongValues ( longValues.toLongValues () );
+            return;
+        }
+        final int size = longValues.getSize ();
+        for ( int i = 0; i < size; i++ )
+        {
+            add ( longValues.getTime ( i ), longValues.getValue ( i ), longValues.getQualityIndicator ( i ), longValues.getManualIndicator ( i ), longValues.getBaseValueCount ( i ) );
+        }
+    }
+
+    /**
+     * This method adds the passed values that have been stored in the storage channel.
+     * @param doubleValues values that have been stored in the storage channel
+     */
+    public synchronized void addDoubleValues ( final DoubleValue[] doubleValues )
+    {
+        if ( doubleValues == null )
+        {
+            return;
+        }
+        final DoubleValueBatch batch = DoubleValueBatch.fromValues ( doubleValues );
+        if ( batch.isSortedByTime () )
+        {
+            addDoubleValueBatch ( batch );
+        }
+        else
+        {
+            final DoubleValue[] sortedValues = doubleValues.clone ();
+            Arrays.sort ( sortedValues );
+            addDoubleValueBatch ( DoubleValueBatch.fromValues ( sortedValues ) );
+        }
+    }
+
+    /**
+     * This method adds the passed values that have been stored in the storage channel.
+     * @param doubleValues values that have been stored in the storage channel
+     */
+    public synchronized void addDoubleValueBatch ( final DoubleValueBatch doubleValues )
+    {
+        if ( doubleValues == null )
+        {
+            return;
+        }
+        if ( !doubleValues.isSortedByTime () )
+        {
+            addDoubleValues ( doubleValues.toDoubleValues () );
+            return;
+        }
+        final int size = doubleValues.getSize ();
+        for ( int i = 0; i < size; i++ )
+        {
+            add ( doubleValues.getTime ( i ), Double.doubleToLongBits ( doubleValues.getValue ( i ) ), doubleValues.getQualityIndicator ( i ), doubleValues.getManualIndicator ( i ), doubleValues.getBaseValueCount ( i ) );
+        }
+    }
+
+    /**
+     * This method adds one value that has been stored in the storage channel.
+     * @param time time of the value
+     * @param value raw value
+     * @param qualityIndicator quality indicator of the value
+     * @param manualIndicator manual indicator of the value
+     * @param baseValueCount base value count of the value
+     */
+    public synchronized void add ( final long time, final long value, final double qualityIndicator, final double manualIndicator, final long baseValueCount )
+    {
+        if ( time <= this.latestTime )
+        {
+            // the sequence of values is interrupted, so that older values cannot be used anymore
+            if ( this.latestTime != Long.MAX_VALUE )
+            {
+                clear ( this.latestTime );
+            }
+            return;
+        }
+        this.latestTime = time;
+
+        // remove the oldest record if the buffer is full and all records that are too old
+        if ( this.size == this.capacity )
+        {
+            removeOldest ();
+        }
+        while ( this.size > 0 && time > Long.MIN_VALUE + this.maximumAge && getTime ( 0 ) < time - this.maximumAge )
+        {
+            removeOldest ();
+        }
+
+        // append the new record
+        final int position = ( ( this.head + this.size ) % this.capacity ) * RECORD_SIZE;
+        this.buffer.putLong ( position, time );
+        this.buffer.putLong ( position + 8, value );
+        this.buffer.putDouble ( position + 16, qualityIndicator );
+        this.buffer.putDouble ( position + 24, manualIndicator );
+        this.buffer.putLong ( position + 32, baseValueCount );
+        this.size++;
+    }
+
+    /**
+     * This method returns the values of the passed time span in the same way as a back end.
+     * The result contains the value that is valid at the start time and all values after the start time and before the end time.
+     * @param startTime start of the time span
+     * @param endTime end of the time span
+     * @return values of the time span or null if the cache does not cover the time span
+     */
+    public synchronized LongValueBatch getLongValueBatch ( final long startTime, final long endTime )
+    {
+        if ( startTime >= endTime || this.size == 0 || getTime ( 0 ) > startTime )
+        {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+
+        // locate the value that is valid at the start time
+        int low = 0;
+        int high = this.size - 1;
+        while ( low < high )
+        {
+            final int middle = ( low + high + 1 ) >>> 1;
+            if ( getTime ( middle ) <= startTime )
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        int end = low + 1;
+        while ( end < this.size && getTime ( end ) < endTime )
+        {
+            end++;
+        }
+        final LongValueBatch longValues = new LongValueBatch ( end - low );
+        for ( int i = low; i < end; i++ )
+        {
+            final int position = getPosition ( i );
+            longValues.add ( this.buffer.getLong ( position ), this.buffer.getDouble ( position + 16 ), this.buffer.getDouble ( position + 24 ), this.buffer.getLong ( position + 32 ), this.buffer.getLong ( position + 8 ) );
+        }
+        return longValues;
+    }
+
+    /**
+     * This method returns the values of the passed time span in the same way as a back end.
+     * @param startTime start of the time span
+     * @param endTime end of the time span
+     * @return values of the time span or null if the cache does not cover the time span
+     */
+    public synchronized DoubleValueBatch getDoubleValueBatch ( final long startTime, final long endTime )
+    {
+        final LongValueBatch longValues = getLongValueBatch ( startTime, endTime );
+        if ( longValues == null )
+        {
+            return null;
+        }
+        final int size = longValues.getSize ();
+        final double[] doubleValues = new double[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            doubleValues[i] = Double.longBitsToDouble ( longValues.getValue ( i ) );
+        }
+        return new DoubleValueBatch ( longValues.getTimes (), longValues.getQualityIndicators (), longValues.getManualIndicators (), longValues.getBaseValueCounts (), doubleValues, size );
+    }
+
+    /**
+     * This method removes the oldest record.
+     */
+    private void removeOldest ()
+    {
+        this.head = ( this.head + 1 ) % this.capacity;
+        this.size--;
+    }
+
+    /**
+     * This method returns the position of the record with the passed index within the buffer.
+     * @param index index of the record starting with the oldest record
+     * @return position of the record within the buffer
+     */
+    private int getPosition ( final int index )
+    {
+        return ( ( this.head + index ) % this.capacity ) * RECORD_SIZE;
+    }
+
+    /**
+     * This method returns the time of the record with the passed index.
+     * @param index index of the record starting with the oldest record
+     * @return time of the record
+     */
+    private long getTime ( final int index )
+    {
+        return this.buffer.getLong ( getPosition ( index ) );
+    }
+}
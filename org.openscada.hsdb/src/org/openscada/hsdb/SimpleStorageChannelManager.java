@@ -21,33 +21,87 @@ package org.openscada.hsdb;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.utils.HsdbHelper;
+import org.openscada.hsdb.utils.SequenceValueCursor;
+import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This StorageChannel implementation provides methods for managing StorageChannel objects.
  * This can be useful when complex storage channel structures have to be created and handled.
+ * The registered storage channels are notified without holding the lock of the instance.
+ * In parallel fan-out mode, updates are passed to the registered storage channels concurrently.
  * @author Ludwig Straub
  */
-public abstract class SimpleStorageChannelManager implements StorageChannelManager
+public abstract class SimpleStorageChannelManager implements StorageChannelManager, ExtendedBatchStorageChannel
 {
     /** The default logger. */
     private final static Logger logger = LoggerFactory.getLogger ( SimpleStorageChannelManager.class );
 
-    /** List of currently registers storage channels. */
-    private final List<ExtendedStorageChannel> storageChannels;
+    /** Id of the threads that are used for passing updates to the registered storage channels. */
+    private final static String FAN_OUT_THREAD_ID = "hsdb.FanOutThread";
+
+    /** Name of the system property that specifies the maximum count of threads that are used for passing updates to the registered storage channels. */
+    public final static String FAN_OUT_THREAD_COUNT_PROPERTY = "org.openscada.hsdb.fanOutThreadCount";
+
+    /** Empty array of storage channels. */
+    private final static ExtendedStorageChannel[] EMPTY_STORAGE_CHANNEL_ARRAY = new ExtendedStorageChannel[0];
+
+    /** Executor that is shared by all instances for passing updates to the registered storage channels concurrently. */
+    private final static ThreadPoolExecutor fanOutExecutor;
+
+    static
+    {
+        final int threadCount = Math.max ( 1, Integer.getInteger ( FAN_OUT_THREAD_COUNT_PROPERTY, Runtime.getRuntime ().availableProcessors () ) );
+        fanOutExecutor = new ThreadPoolExecutor ( threadCount, threadCount, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable> (), new NamedThreadFactory ( FAN_OUT_THREAD_ID, true ) );
+        fanOutExecutor.allowCoreThreadTimeOut ( true );
+    }
+
+    /** Currently registered storage channels. The array is replaced whenever a storage channel is registered or unregistered, so that it can be iterated without locking. */
+    private volatile ExtendedStorageChannel[] storageChannels;
+
+    /** Flag indicating whether updates are passed to the registered storage channels concurrently or not. */
+    private volatile boolean parallelFanOut;
 
     /**
      * Standard constructor.
      */
     public SimpleStorageChannelManager ()
     {
-        this.storageChannels = new LinkedList<ExtendedStorageChannel> ();
+        this.storageChannels = EMPTY_STORAGE_CHANNEL_ARRAY;
+        this.parallelFanOut = false;
+    }
+
+    /**
+     * This method returns whether updates are passed to the registered storage channels concurrently or not.
+     * @return true, if updates are passed to the registered storage channels concurrently, otherwise false
+     */
+    public boolean isParallelFanOut ()
+    {
+        return this.parallelFanOut;
+    }
+
+    /**
+     * This method sets whether updates are passed to the registered storage channels concurrently or not.
+     * The method returns not before all registered storage channels have processed an update in both modes.
+     * @param parallelFanOut true, if updates should be passed to the registered storage channels concurrently, otherwise false
+     */
+    public void setParallelFanOut ( final boolean parallelFanOut )
+    {
+        this.parallelFanOut = parallelFanOut;
     }
 
     /**
@@ -55,7 +109,9 @@ public abstract class SimpleStorageChannelManager implements StorageChannelManag
      */
     public synchronized void registerStorageChannel ( final ExtendedStorageChannel storageChannel )
     {
-        this.storageChannels.add ( storageChannel );
+        final ExtendedStorageChannel[] storageChannels = Arrays.copyOf ( this.storageChannels, this.storageChannels.length + 1 );
+        storageChannels[storageChannels.length - 1] = storageChannel;
+        this.storageChannels = storageChannels;
     }
 
     /**
@@ -63,79 +119,189 @@ public abstract class SimpleStorageChannelManager implements StorageChannelManag
      */
     public synchronized void unregisterStorageChannel ( final ExtendedStorageChannel storageChannel )
     {
-        this.storageChannels.remove ( storageChannel );
+        final List<ExtendedStorageChannel> storageChannels = new ArrayList<ExtendedStorageChannel> ( Arrays.asList ( this.storageChannels ) );
+        if ( storageChannels.remove ( storageChannel ) )
+        {
+            this.storageChannels = storageChannels.toArray ( EMPTY_STORAGE_CHANNEL_ARRAY );
+        }
     }
 
     /**
-     * @see org.openscada.hsdb.StorageChannel#updateLong
+     * This interface is used to pass one update to each registered storage channel.
+     */
+    private interface StorageChannelUpdate
+    {
+        /**
+         * This method passes the update to the specified storage channel.
+         * @param storageChannel storage channel that has to be updated
+         * @throws Exception in case of problems
+         */
+        public abstract void update ( ExtendedStorageChannel storageChannel ) throws Exception;
+    }
+
+    /**
+     * This method passes the update to all registered storage channels.
+     * All storage channels are updated even if the update of one storage channel fails.
+     * In parallel fan-out mode, the update of the last storage channel is performed within the current thread while the other updates are performed concurrently.
+     * Updates that have not been started by the executor when the current thread waits for them are performed within the current thread, so that nested updates cannot exhaust the threads of the executor.
+     * @param update update that has to be passed to the registered storage channels
+     * @param message message of the exception that is thrown if at least one storage channel could not be updated
+     * @throws Exception if at least one storage channel could not be updated
      */
-    public synchronized void updateLong ( final LongValue longValue ) throws Exception
+    private void updateStorageChannels ( final StorageChannelUpdate update, final String message ) throws Exception
     {
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
         Exception innerException = null;
-        for ( final ExtendedStorageChannel storageChannel : this.storageChannels )
+        if ( this.parallelFanOut && storageChannels.length > 1 )
         {
+            final List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>> ( storageChannels.length - 1 );
+            for ( int i = 0; i < storageChannels.length - 1; i++ )
+            {
+                final ExtendedStorageChannel storageChannel = storageChannels[i];
+                final FutureTask<Object> task = new FutureTask<Object> ( new Runnable () {
+                    public void run ()
+                    {
+                        try
+                        {
+                            update.update ( storageChannel );
+                        }
+                        catch ( final Exception e )
+                        {
+                            throw new FanOutException ( e );
+                        }
+                    }
+                }, null );
+                tasks.add ( task );
+                try
+                {
+                    fanOutExecutor.execute ( task );
+                }
+                catch ( final RejectedExecutionException e )
+                {
+                    task.run ();
+                }
+            }
             try
             {
-                storageChannel.updateLong ( longValue );
+                update.update ( storageChannels[storageChannels.length - 1] );
             }
             catch ( final Exception e )
             {
-                if ( innerException == null )
+                innerException = e;
+            }
+            for ( final FutureTask<Object> task : tasks )
+            {
+                task.run ();
+                try
+                {
+                    task.get ();
+                }
+                catch ( final ExecutionException e )
                 {
-                    innerException = e;
+                    if ( innerException == null )
+                    {
+                        final Throwable cause = e.getCause ();
+                        innerException = cause instanceof FanOutException ? ( (FanOutException)cause ).getException () : new Exception ( cause );
+                    }
+                }
+            }
+        }
+        else
+        {
+            for ( final ExtendedStorageChannel storageChannel : storageChannels )
+            {
+                try
+                {
+                    update.update ( storageChannel );
+                }
+                catch ( final Exception e )
+                {
+                    if ( innerException == null )
+                    {
+                        innerException = e;
+                    }
                 }
             }
         }
         if ( innerException != null )
         {
-            final String message = "a long value of at least one inner storage channel could not be updated";
             logger.error ( message, innerException );
             throw new Exception ( message, innerException );
         }
     }
 
     /**
-     * @see org.openscada.hsdb.StorageChannel#updateLongs
+     * This exception is used to pass an exception of a concurrently performed update to the waiting thread.
      */
-    public synchronized void updateLongs ( final LongValue[] longValues ) throws Exception
+    private static class FanOutException extends RuntimeException
     {
-        Exception innerException = null;
-        for ( final ExtendedStorageChannel storageChannel : this.storageChannels )
+        /** Serial version uid. */
+        private static final long serialVersionUID = 1L;
+
+        /** Exception that occurred while updating a storage channel. */
+        private final Exception exception;
+
+        /**
+         * Constructor.
+         * @param exception exception that occurred while updating a storage channel
+         */
+        public FanOutException ( final Exception exception )
         {
-            try
+            super ( exception );
+            this.exception = exception;
+        }
+
+        /**
+         * This method returns the exception that occurred while updating a storage channel.
+         * @return exception that occurred while updating a storage channel
+         */
+        public Exception getException ()
+        {
+            return this.exception;
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLong
+     */
+    public void updateLong ( final LongValue longValue ) throws Exception
+    {
+        updateStorageChannels ( new StorageChannelUpdate () {
+            public void update ( final ExtendedStorageChannel storageChannel ) throws Exception
             {
-                storageChannel.updateLongs ( longValues );
+                storageChannel.updateLong ( longValue );
             }
-            catch ( final Exception e )
+        }, "a long value of at least one inner storage channel could not be updated" );
+    }
+
+    /**
+     * @see org.openscada.hsdb.StorageChannel#updateLongs
+     */
+    public void updateLongs ( final LongValue[] longValues ) throws Exception
+    {
+        updateStorageChannels ( new StorageChannelUpdate () {
+            public void update ( final ExtendedStorageChannel storageChannel ) throws Exception
             {
-                if ( innerException == null )
-                {
-                    innerException = e;
-                }
+                storageChannel.updateLongs ( longValues );
             }
-        }
-        if ( innerException != null )
-        {
-            final String message = "long values of at least one inner storage channel could not be updated";
-            logger.error ( message, innerException );
-            throw new Exception ( message, innerException );
-        }
+        }, "long values of at least one inner storage channel could not be updated" );
     }
 
     /**
      * @see org.openscada.hsdb.StorageChannel#getLongValues
      */
-    public synchronized LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
+    public LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
     {
         // optimization if exactly one storage channel is currently managed
-        if ( this.storageChannels.size () == 1 )
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
+        if ( storageChannels.length == 1 )
         {
-            return this.storageChannels.get ( 0 ).getLongValues ( startTime, endTime );
+            return storageChannels[0].getLongValues ( startTime, endTime );
         }
 
         // default method logic
         final List<LongValue> longValues = new ArrayList<LongValue> ();
-        for ( final StorageChannel storageChannel : this.storageChannels )
+        for ( final StorageChannel storageChannel : storageChannels )
         {
             longValues.addAll ( Arrays.asList ( storageChannel.getLongValues ( startTime, endTime ) ) );
         }
@@ -143,85 +309,188 @@ public abstract class SimpleStorageChannelManager implements StorageChannelManag
     }
 
     /**
-     * @see org.openscada.hsdb.ExtendedStorageChannel#updateDouble
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
      */
-    public synchronized void updateDouble ( final DoubleValue doubleValue ) throws Exception
+    public void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
     {
-        Exception innerException = null;
-        for ( final ExtendedStorageChannel storageChannel : this.storageChannels )
-        {
-            try
+        updateStorageChannels ( new StorageChannelUpdate () {
+            public void update ( final ExtendedStorageChannel storageChannel ) throws Exception
             {
-                storageChannel.updateDouble ( doubleValue );
+                HsdbHelper.updateLongValueBatch ( storageChannel, longValues );
             }
-            catch ( final Exception e )
+        }, "long values of at least one inner storage channel could not be updated" );
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        // optimization if exactly one storage channel is currently managed
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
+        if ( storageChannels.length == 1 )
+        {
+            return HsdbHelper.getLongValueBatch ( storageChannels[0], startTime, endTime );
+        }
+
+        // default method logic
+        final LongValueBatch longValues = new LongValueBatch ( 0 );
+        for ( final StorageChannel storageChannel : storageChannels )
+        {
+            longValues.addAll ( HsdbHelper.getLongValueBatch ( storageChannel, startTime, endTime ) );
+        }
+        return longValues;
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
+     */
+    public ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        // optimization if exactly one storage channel is currently managed
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
+        if ( storageChannels.length == 1 )
+        {
+            return HsdbHelper.getLongValueCursor ( storageChannels[0], startTime, endTime );
+        }
+
+        // default method logic
+        final List<ValueCursor<LongValueBatch>> cursors = new ArrayList<ValueCursor<LongValueBatch>> ( storageChannels.length );
+        try
+        {
+            for ( final StorageChannel storageChannel : storageChannels )
             {
-                if ( innerException == null )
-                {
-                    innerException = e;
-                }
+                cursors.add ( HsdbHelper.getLongValueCursor ( storageChannel, startTime, endTime ) );
             }
         }
-        if ( innerException != null )
+        catch ( final Exception e )
         {
-            final String message = "a double value of at least one inner storage channel could not be updated";
-            logger.error ( message, innerException );
-            throw new Exception ( message, innerException );
+            for ( final ValueCursor<LongValueBatch> cursor : cursors )
+            {
+                cursor.close ();
+            }
+            throw e;
         }
+        return new SequenceValueCursor<LongValueBatch> ( cursors, new LongValueBatch ( 0 ) );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedStorageChannel#updateDouble
+     */
+    public void updateDouble ( final DoubleValue doubleValue ) throws Exception
+    {
+        updateStorageChannels ( new StorageChannelUpdate () {
+            public void update ( final ExtendedStorageChannel storageChannel ) throws Exception
+            {
+                storageChannel.updateDouble ( doubleValue );
+            }
+        }, "a double value of at least one inner storage channel could not be updated" );
     }
 
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#updateDoubles
      */
-    public synchronized void updateDoubles ( final DoubleValue[] doubleValues ) throws Exception
+    public void updateDoubles ( final DoubleValue[] doubleValues ) throws Exception
     {
-        Exception innerException = null;
-        for ( final ExtendedStorageChannel storageChannel : this.storageChannels )
-        {
-            try
+        updateStorageChannels ( new StorageChannelUpdate () {
+            public void update ( final ExtendedStorageChannel storageChannel ) throws Exception
             {
                 storageChannel.updateDoubles ( doubleValues );
             }
-            catch ( final Exception e )
+        }, "double values of at least one inner storage channel could not be updated" );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedStorageChannel#getDoubleValues
+     */
+    public DoubleValue[] getDoubleValues ( final long startTime, final long endTime ) throws Exception
+    {
+        // optimization if exactly one storage channel is currently managed
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
+        if ( storageChannels.length == 1 )
+        {
+            return storageChannels[0].getDoubleValues ( startTime, endTime );
+        }
+
+        // default method logic
+        final List<DoubleValue> doubleValues = new ArrayList<DoubleValue> ();
+        for ( final ExtendedStorageChannel storageChannel : storageChannels )
+        {
+            doubleValues.addAll ( Arrays.asList ( storageChannel.getDoubleValues ( startTime, endTime ) ) );
+        }
+        return doubleValues.toArray ( EMPTY_DOUBLEVALUE_ARRAY );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#updateDoubleValueBatch
+     */
+    public void updateDoubleValueBatch ( final DoubleValueBatch doubleValues ) throws Exception
+    {
+        updateStorageChannels ( new StorageChannelUpdate () {
+            public void update ( final ExtendedStorageChannel storageChannel ) throws Exception
             {
-                if ( innerException == null )
-                {
-                    innerException = e;
-                }
+                HsdbHelper.updateDoubleValueBatch ( storageChannel, doubleValues );
             }
+        }, "double values of at least one inner storage channel could not be updated" );
+    }
+
+    /**
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueBatch
+     */
+    public DoubleValueBatch getDoubleValueBatch ( final long startTime, final long endTime ) throws Exception
+    {
+        // optimization if exactly one storage channel is currently managed
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
+        if ( storageChannels.length == 1 )
+        {
+            return HsdbHelper.getDoubleValueBatch ( storageChannels[0], startTime, endTime );
         }
-        if ( innerException != null )
+
+        // default method logic
+        final DoubleValueBatch doubleValues = new DoubleValueBatch ( 0 );
+        for ( final ExtendedStorageChannel storageChannel : storageChannels )
         {
-            final String message = "double values of at least one inner storage channel could not be updated";
-            logger.error ( message, innerException );
-            throw new Exception ( message, innerException );
+            doubleValues.addAll ( HsdbHelper.getDoubleValueBatch ( storageChannel, startTime, endTime ) );
         }
+        return doubleValues;
     }
 
     /**
-     * @see org.openscada.hsdb.ExtendedStorageChannel#getDoubleValues
+     * @see org.openscada.hsdb.ExtendedBatchStorageChannel#getDoubleValueCursor
      */
-    public synchronized DoubleValue[] getDoubleValues ( final long startTime, final long endTime ) throws Exception
+    public ValueCursor<DoubleValueBatch> getDoubleValueCursor ( final long startTime, final long endTime ) throws Exception
     {
         // optimization if exactly one storage channel is currently managed
-        if ( this.storageChannels.size () == 1 )
+        final ExtendedStorageChannel[] storageChannels = this.storageChannels;
+        if ( storageChannels.length == 1 )
         {
-            return this.storageChannels.get ( 0 ).getDoubleValues ( startTime, endTime );
+            return HsdbHelper.getDoubleValueCursor ( storageChannels[0], startTime, endTime );
         }
 
         // default method logic
-        final List<DoubleValue> doubleValues = new ArrayList<DoubleValue> ();
-        for ( final ExtendedStorageChannel storageChannel : this.storageChannels )
+        final List<ValueCursor<DoubleValueBatch>> cursors = new ArrayList<ValueCursor<DoubleValueBatch>> ( storageChannels.length );
+        try
         {
-            doubleValues.addAll ( Arrays.asList ( storageChannel.getDoubleValues ( startTime, endTime ) ) );
+            for ( final ExtendedStorageChannel storageChannel : storageChannels )
+            {
+                cursors.add ( HsdbHelper.getDoubleValueCursor ( storageChannel, startTime, endTime ) );
+            }
         }
-        return doubleValues.toArray ( EMPTY_DOUBLEVALUE_ARRAY );
+        catch ( final Exception e )
+        {
+            for ( final ValueCursor<DoubleValueBatch> cursor : cursors )
+            {
+                cursor.close ();
+            }
+            throw e;
+        }
+        return new SequenceValueCursor<DoubleValueBatch> ( cursors, new DoubleValueBatch ( 0 ) );
     }
 
     /**
      * @see org.openscada.hsdb.ExtendedStorageChannel#cleanupRelicts
      */
-    public synchronized void cleanupRelicts () throws Exception
+    public void cleanupRelicts () throws Exception
     {
         for ( final StorageChannel storageChannel : this.storageChannels )
         {
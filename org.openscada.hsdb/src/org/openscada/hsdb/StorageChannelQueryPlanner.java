@@ -0,0 +1,295 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openscada.hsdb.calculation.CalculationLogicProvider;
+import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+import org.openscada.hsdb.utils.HsdbHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class answers queries for a maximum count of values by reading from the coarsest suitable compression level.
+ * The level is selected by comparing the requested time span with the time spans of the compression levels.
+ * Time spans for which the selected level has not yet calculated values are read from the next finer level.
+ * The storage channels are passed in the structure that is returned by the method org.openscada.hsdb.backend.BackEndManager#buildStorageChannelStructure.
+ */
+public class StorageChannelQueryPlanner
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( StorageChannelQueryPlanner.class );
+
+    /**
+     * This class holds the storage channel of a single detail level.
+     */
+    private static class Level
+    {
+        /** Detail level id of the level. */
+        private final long detailLevelId;
+
+        /** Storage channel that provides the values of the level. */
+        private final ExtendedStorageChannel storageChannel;
+
+        /** Time span that is compressed to one value or 0 for the level holding the native values. */
+        private final long timespan;
+
+        /** Data type of the values that are stored in the level. */
+        private final DataType dataType;
+
+        /**
+         * Constructor.
+         * @param detailLevelId detail level id of the level
+         * @param storageChannel storage channel that provides the values of the level
+         * @param calculationLogicProvider calculation logic provider of the level
+         */
+        public Level ( final long detailLevelId, final ExtendedStorageChannel storageChannel, final CalculationLogicProvider calculationLogicProvider )
+        {
+            this.detailLevelId = detailLevelId;
+            this.storageChannel = storageChannel;
+            this.timespan = detailLevelId == 0 ? 0 : calculationLogicProvider.getRequiredTimespanForCalculation ();
+            this.dataType = calculationLogicProvider.getOutputType ();
+        }
+    }
+
+    /** Storage channels mapped by detail level id and calculation method. */
+    private final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> storageChannels;
+
+    /**
+     * Constructor.
+     * @param storageChannels storage channels mapped by detail level id and calculation method
+     */
+    public StorageChannelQueryPlanner ( final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> storageChannels )
+    {
+        this.storageChannels = storageChannels;
+    }
+
+    /**
+     * This method returns the levels that can be used to answer queries for the passed calculation method ordered from the finest to the coarsest level.
+     * The first level is always the level holding the native values.
+     * @param calculationMethod calculation method of the compressed levels
+     * @return levels ordered from the finest to the coarsest level
+     * @throws Exception if no level holding native values exists
+     */
+    private List<Level> getLevels ( final CalculationMethod calculationMethod ) throws Exception
+    {
+        final TreeMap<Long, Level> levels = new TreeMap<Long, Level> ();
+        for ( final Map.Entry<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> levelEntry : this.storageChannels.entrySet () )
+        {
+            final long detailLevelId = levelEntry.getKey ();
+            final Map<ExtendedStorageChannel, CalculationLogicProvider> channels = levelEntry.getValue ().get ( detailLevelId == 0 ? CalculationMethod.NATIVE : calculationMethod );
+            if ( channels != null && !channels.isEmpty () )
+            {
+                final Map.Entry<ExtendedStorageChannel, CalculationLogicProvider> channelEntry = channels.entrySet ().iterator ().next ();
+                levels.put ( detailLevelId, new Level ( detailLevelId, channelEntry.getKey (), channelEntry.getValue () ) );
+            }
+        }
+        if ( !levels.containsKey ( 0L ) )
+        {
+            final String message = "no storage channel holding native values available";
+            logger.error ( message );
+            throw new Exception ( message );
+        }
+        return new ArrayList<Level> ( levels.values () );
+    }
+
+    /**
+     * This method returns the detail level id of the level that will be used to answer a query with the passed parameters.
+     * The finest compressed level that does not provide more than the specified count of values is selected.
+     * If even the coarsest level provides more values, then the coarsest level is selected.
+     * The level holding the native values is only selected if it does not hold more than the specified count of values within the time span.
+     * @param startTime start of the requested time span (inclusive)
+     * @param endTime end of the requested time span (exclusive)
+     * @param maxPoints maximum count of values that should be returned
+     * @param calculationMethod calculation method of the compressed levels
+     * @return detail level id of the selected level
+     * @throws Exception in case of any problems
+     */
+    public long selectDetailLevel ( final long startTime, final long endTime, final int maxPoints, final CalculationMethod calculationMethod ) throws Exception
+    {
+        final List<Level> levels = getLevels ( calculationMethod );
+        return levels.get ( selectLevel ( levels, startTime, endTime, maxPoints ) ).detailLevelId;
+    }
+
+    /**
+     * This method returns the index of the level that will be used to answer a query with the passed parameters.
+     * @param levels levels ordered from the finest to the coarsest level
+     * @param startTime start of the requested time span (inclusive)
+     * @param endTime end of the requested time span (exclusive)
+     * @param maxPoints maximum count of values that should be returned
+     * @return index of the selected level
+     * @throws Exception in case of any problems
+     */
+    private int selectLevel ( final List<Level> levels, final long startTime, final long endTime, final int maxPoints ) throws Exception
+    {
+        final long timespan = endTime - startTime;
+        int index = 1;
+        while ( index < levels.size () - 1 && timespan / levels.get ( index ).timespan > maxPoints )
+        {
+            index++;
+        }
+        if ( index >= levels.size () || index == 1 && timespan / levels.get ( index ).timespan <= maxPoints && countValues ( levels.get ( 0 ), startTime, endTime, maxPoints + 1 ) <= maxPoints )
+        {
+            return 0;
+        }
+        return index;
+    }
+
+    /**
+     * This method counts the values of the passed level within the specified time span.
+     * Counting stops as soon as the passed limit is reached.
+     * @param level level whose values have to be counted
+     * @param startTime start of the time span (inclusive)
+     * @param endTime end of the time span (exclusive)
+     * @param limit count of values after which counting stops
+     * @return count of values, but not more than the passed limit
+     * @throws Exception in case of any problems
+     */
+    private int countValues ( final Level level, final long startTime, final long endTime, final int limit ) throws Exception
+    {
+        int count = 0;
+        final ValueCursor<? extends BaseValueBatch> cursor = HsdbHelper.getValueCursor ( level.storageChannel, level.dataType, startTime, endTime );
+        try
+        {
+            while ( count < limit && cursor.hasNext () )
+            {
+                count += cursor.next ().getSize ();
+            }
+        }
+        finally
+        {
+            cursor.close ();
+        }
+        return Math.min ( count, limit );
+    }
+
+    /**
+     * This method returns the values of the specified time span using the coarsest level that does not provide more than the specified count of values.
+     * Time spans for which the selected level holds no calculated values are filled with values of the next finer level.
+     * The data type of the result is the data type of the selected level. Values of finer levels are converted if required.
+     * Like the values returned by the storage channels, the result may contain a value before the start time that is valid at the start time.
+     * @param startTime start of the requested time span (inclusive)
+     * @param endTime end of the requested time span (exclusive)
+     * @param maxPoints maximum count of values that should be returned
+     * @param calculationMethod calculation method of the compressed levels
+     * @return values of the requested time span
+     * @throws Exception in case of any problems
+     */
+    public BaseValueBatch getValueBatch ( final long startTime, final long endTime, final int maxPoints, final CalculationMethod calculationMethod ) throws Exception
+    {
+        final List<Level> levels = getLevels ( calculationMethod );
+        final int index = selectLevel ( levels, startTime, endTime, Math.max ( 1, maxPoints ) );
+        final Level level = levels.get ( index );
+        if ( index == 0 || startTime >= endTime )
+        {
+            return HsdbHelper.getValueBatch ( level.storageChannel, level.dataType, startTime, endTime );
+        }
+
+        // compressed levels contain calculated values only for time spans that have been completed by native values
+        final BaseValueBatch latestValues = HsdbHelper.getValueBatch ( levels.get ( 0 ).storageChannel, levels.get ( 0 ).dataType, endTime - 1, endTime );
+        if ( latestValues.isEmpty () )
+        {
+            return BaseValueBatch.createBatch ( level.dataType, 0 );
+        }
+        return getValueBatch ( levels, index, startTime, endTime, latestValues.getTime ( latestValues.getSize () - 1 ) );
+    }
+
+    /**
+     * This method returns the values of the specified time span of the specified level and fills gaps with values of finer levels.
+     * @param levels levels ordered from the finest to the coarsest level
+     * @param index index of the level that has to be read
+     * @param startTime start of the requested time span (inclusive)
+     * @param endTime end of the requested time span (exclusive)
+     * @param latestNativeTime time of the latest native value
+     * @return values of the requested time span using the data type of the specified level
+     * @throws Exception in case of any problems
+     */
+    private BaseValueBatch getValueBatch ( final List<Level> levels, final int index, final long startTime, final long endTime, final long latestNativeTime ) throws Exception
+    {
+        final Level level = levels.get ( index );
+        final BaseValueBatch values = HsdbHelper.getValueBatch ( level.storageChannel, level.dataType, startTime, endTime );
+        if ( index == 0 )
+        {
+            return values;
+        }
+        if ( values.isEmpty () )
+        {
+            return convert ( getValueBatch ( levels, index - 1, startTime, endTime, latestNativeTime ), level.dataType );
+        }
+
+        // determine the time span that is covered by calculated values of the level
+        final long coveredStartTime = Math.max ( startTime, values.getTime ( 0 ) );
+        final long coveredEndTime = Math.max ( coveredStartTime, Math.min ( endTime, Conversions.getFragmentStartTime ( latestNativeTime, level.timespan ) ) );
+        final BaseValueBatch result = BaseValueBatch.createBatch ( level.dataType, values.getSize () );
+        if ( coveredStartTime > startTime )
+        {
+            result.addAll ( convert ( getValueBatch ( levels, index - 1, startTime, coveredStartTime, latestNativeTime ), level.dataType ) );
+        }
+        result.addAll ( values, 0, HsdbHelper.findFirstIndexAfter ( values.getTimes (), 0, values.getSize (), coveredEndTime - 1 ) );
+        if ( coveredEndTime < endTime )
+        {
+            final BaseValueBatch finerValues = convert ( getValueBatch ( levels, index - 1, coveredEndTime, endTime, latestNativeTime ), level.dataType );
+            final int fromIndex = result.isEmpty () ? 0 : HsdbHelper.findFirstIndexAfter ( finerValues.getTimes (), 0, finerValues.getSize (), coveredEndTime - 1 );
+            result.addAll ( finerValues, fromIndex, finerValues.getSize () );
+        }
+        return result;
+    }
+
+    /**
+     * This method converts the passed values to the specified data type.
+     * @param values values that have to be converted
+     * @param dataType data type of the result
+     * @return passed values if no conversion is required, otherwise converted values
+     */
+    private static BaseValueBatch convert ( final BaseValueBatch values, final DataType dataType )
+    {
+        if ( values.getDataType () == dataType )
+        {
+            return values;
+        }
+        final int size = values.getSize ();
+        if ( dataType == DataType.DOUBLE_VALUE )
+        {
+            final LongValueBatch longValues = (LongValueBatch)values;
+            final DoubleValueBatch result = new DoubleValueBatch ( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                result.add ( longValues.getTime ( i ), longValues.getQualityIndicator ( i ), longValues.getManualIndicator ( i ), longValues.getBaseValueCount ( i ), longValues.getValue ( i ) );
+            }
+            return result;
+        }
+        final DoubleValueBatch doubleValues = (DoubleValueBatch)values;
+        final LongValueBatch result = new LongValueBatch ( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            result.add ( doubleValues.getTime ( i ), doubleValues.getQualityIndicator ( i ), doubleValues.getManualIndicator ( i ), doubleValues.getBaseValueCount ( i ), Math.round ( doubleValues.getValue ( i ) ) );
+        }
+        return result;
+    }
+}
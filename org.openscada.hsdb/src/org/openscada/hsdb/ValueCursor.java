@@ -0,0 +1,54 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb;
+
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+
+/**
+ * This interface provides sequential access to values that are retrieved from a storage channel.
+ * The values are returned as batches sorted by time. Each batch contains a limited count of values.
+ * This allows processing time spans of any size without having to keep all values in memory at once.
+ * A cursor has to be closed after usage in order to release the resources that are held by the cursor.
+ * Implementations of this interface are not thread safe.
+ * @param <B> type of the returned batches
+ */
+public interface ValueCursor<B extends BaseValueBatch>
+{
+    /**
+     * This method returns whether further values are available or not.
+     * @return true, if a call of the method {@link #next()} will return a non empty batch, otherwise false
+     * @throws Exception in case of read problems or file corruption
+     */
+    public abstract boolean hasNext () throws Exception;
+
+    /**
+     * This method returns the next batch of values.
+     * All values of the returned batch are newer than the values of previously returned batches.
+     * @return next batch of values or an empty batch if no more values are available
+     * @throws Exception in case of read problems or file corruption
+     */
+    public abstract B next () throws Exception;
+
+    /**
+     * This method releases all resources that are held by the cursor.
+     * The method can be called several times.
+     */
+    public abstract void close ();
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This interface defines methods for persisting the information about the back end fragments of a configuration.
+ * In contrast to the configuration, which has to be stored completely after each change, a catalog records single transitions of back end fragments.
+ */
+public interface BackEndFragmentCatalog
+{
+    /**
+     * This method loads the information of all back end fragments that are recorded in the catalog.
+     * The returned objects only contain the calculation method, detail level id, start time, end time, corrupt status and fragment name.
+     * @return recorded back end fragments or null if no catalog has been stored yet
+     * @throws Exception in case of problems
+     */
+    public abstract List<BackEndFragmentInformation> load () throws Exception;
+
+    /**
+     * This method records that the passed back end fragment has been added.
+     * @param backEndFragmentInformation information of the added back end fragment
+     * @throws Exception in case of problems
+     */
+    public abstract void addBackEndFragment ( BackEndFragmentInformation backEndFragmentInformation ) throws Exception;
+
+    /**
+     * This method records that the passed back end fragment has been removed.
+     * @param backEndFragmentInformation information of the removed back end fragment
+     * @throws Exception in case of problems
+     */
+    public abstract void removeBackEndFragment ( BackEndFragmentInformation backEndFragmentInformation ) throws Exception;
+
+    /**
+     * This method records the current corrupt status of the passed back end fragment.
+     * @param backEndFragmentInformation information of the back end fragment whose corrupt status has changed
+     * @throws Exception in case of problems
+     */
+    public abstract void updateCorruptStatus ( BackEndFragmentInformation backEndFragmentInformation ) throws Exception;
+
+    /**
+     * This method replaces the content of the catalog with the passed back end fragments.
+     * @param backEndFragmentInformations information of all currently existing back end fragments
+     * @throws Exception in case of problems
+     */
+    public abstract void writeSnapshot ( Collection<BackEndFragmentInformation> backEndFragmentInformations ) throws Exception;
+
+    /**
+     * This method releases all resources that are held by the catalog.
+     */
+    public abstract void close ();
+
+    /**
+     * This method deletes all data of the catalog.
+     */
+    public abstract void delete ();
+}
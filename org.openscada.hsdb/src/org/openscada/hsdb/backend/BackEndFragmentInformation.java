@@ -45,7 +45,7 @@ public class BackEndFragmentInformation implements Comparable<BackEndFragmentInf
     private long endTime;
 
     /** Flag indicating whether the back end fragment is marked as corrupt or not. */
-    private boolean isCorrupt;
+    private volatile boolean isCorrupt;
 
     /** Name of the back end fragment. */
     private String fragmentName;
@@ -54,10 +54,10 @@ public class BackEndFragmentInformation implements Comparable<BackEndFragmentInf
     private ReentrantReadWriteLock lock;
 
     /** Flag indicating whether the back end fragment is empty or not. */
-    private Boolean isEmpty;
+    private volatile Boolean isEmpty;
 
     /** Time of the first value that can be found within the back end fragment. */
-    private Long earliestValueTime;
+    private volatile Long earliestValueTime;
 
     /**
      * This method returns the id of the configuration of the back end fragment.
@@ -216,7 +216,7 @@ public class BackEndFragmentInformation implements Comparable<BackEndFragmentInf
      * This method sets the flag indicating whether the back end fragment is empty or not.
      * @param isEmpty flag indicating whether the back end fragment is empty or not
      */
-    public void setIsEmpty ( final boolean isEmpty )
+    public synchronized void setIsEmpty ( final boolean isEmpty )
     {
         this.isEmpty = isEmpty;
     }
@@ -234,11 +234,47 @@ public class BackEndFragmentInformation implements Comparable<BackEndFragmentInf
      * This method sets the time of the first value that can be found within the back end fragment.
      * @param earliestValueTime time of the first value that can be found within the back end fragment
      */
-    public void setSupposedEarliestValueTime ( final Long earliestValueTime )
+    public synchronized void setSupposedEarliestValueTime ( final Long earliestValueTime )
     {
         this.earliestValueTime = earliestValueTime;
     }
 
+    /**
+     * This method sets the state that has been determined by reading the back end fragment if the state is still unknown.
+     * Several threads holding only the read lock of the manager may determine the state concurrently.
+     * A state that has been set in the meantime, for instance because a value has been inserted, is therefore never overwritten.
+     * @param isEmpty flag indicating whether the back end fragment is empty or not
+     * @param earliestValueTime time of the first value that can be found within the back end fragment
+     * @return flag indicating whether the back end fragment is empty or not after the state has been set
+     */
+    public synchronized boolean initializeState ( final boolean isEmpty, final Long earliestValueTime )
+    {
+        if ( this.isEmpty == null )
+        {
+            this.isEmpty = isEmpty;
+            this.earliestValueTime = earliestValueTime;
+        }
+        return this.isEmpty;
+    }
+
+    /**
+     * This method updates the state of the back end fragment after a value has been inserted.
+     * The back end fragment is not empty anymore. The time of the earliest value is only maintained if the state was known before, since an unknown back end fragment may already contain earlier values.
+     * @param timestamp time stamp of the inserted value
+     */
+    public synchronized void recordInsert ( final long timestamp )
+    {
+        if ( this.isEmpty == null )
+        {
+            this.earliestValueTime = null;
+        }
+        else if ( this.isEmpty || this.earliestValueTime != null && timestamp < this.earliestValueTime )
+        {
+            this.earliestValueTime = timestamp;
+        }
+        this.isEmpty = false;
+    }
+
     /**
      * @see Comparable#compareTo(Object)
      */
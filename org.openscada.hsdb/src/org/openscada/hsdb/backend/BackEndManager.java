@@ -20,12 +20,15 @@
 package org.openscada.hsdb.backend;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.openscada.hsdb.CalculatingStorageChannel;
 import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.ValueCursor;
 import org.openscada.hsdb.calculation.CalculationLogicProvider;
 import org.openscada.hsdb.calculation.CalculationMethod;
 import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
 
 /**
  * This class provides methods for handling and distributing back end objects within an application.
@@ -76,6 +79,13 @@ public interface BackEndManager<B extends BackEnd>
      */
     public abstract long getMaximumCompressionLevel ();
 
+    /**
+     * This method returns the executor that is used to read several back end fragments concurrently.
+     * Tasks that cannot be queued by the executor are executed within the calling thread.
+     * @return executor that is used to read back end fragments or null if the back end fragments have to be read within the calling thread
+     */
+    public abstract Executor getReadExecutor ();
+
     /**
      * This method returns the backend matching the specified criteria.
      * If no back end exactly matches the criteria then a new back end will be created.
@@ -123,6 +133,29 @@ public interface BackEndManager<B extends BackEnd>
      */
     public abstract void deleteOldBackEnds ( long detailLevelId, CalculationMethod calculationMethod, long endTime );
 
+    /**
+     * This method deletes back ends of the specified detail level and calculation method whose data is older than the passed proposed data age.
+     * The retention cut-off is calculated from the known back end fragments only, so that no back end has to be read.
+     * The back end responsible for the cut-off time and its predecessor are never deleted.
+     * At most the passed count of back ends is deleted, so that the manager is locked only for a short time.
+     * @param detailLevelId detail level of the stored data
+     * @param calculationMethod method that is used to calculate the data that is stored in the channel
+     * @param proposedDataAge age of data after which the data can be deleted
+     * @param now current time
+     * @param maximumCount maximum count of back ends that are deleted
+     * @return count of deleted back ends
+     */
+    public abstract int deleteExpiredBackEnds ( long detailLevelId, CalculationMethod calculationMethod, long proposedDataAge, long now, int maximumCount );
+
+    /**
+     * This method deletes back ends of all detail levels and calculation methods whose data is older than the proposed data age of the configuration.
+     * At most the passed count of back ends is deleted, so that the manager is locked only for a short time.
+     * @param now current time
+     * @param maximumCount maximum count of back ends that are deleted
+     * @return count of deleted back ends
+     */
+    public abstract int deleteExpiredBackEnds ( long now, int maximumCount );
+
     /**
      * This method marks the back end matching the specified criteria as currupt.
      * This information is important since the manager then can try to repair the corrupt back end.
@@ -158,6 +191,30 @@ public interface BackEndManager<B extends BackEnd>
      */
     public abstract void releaseStorageChannelTree ();
 
+    /**
+     * This method imports historical values without passing them through the calculation tree.
+     * The values are written to the native storage channel as batches.
+     * After that each compression level is calculated in a single pass over the imported time span.
+     * The back end fragments that are created during the import are registered in the configuration once all data has been written.
+     * The method is intended for offline imports and must not be called while values are stored via the storage channel tree.
+     * @param values cursor providing the values that have to be imported. The cursor will not be closed by the method
+     * @return count of imported values
+     * @throws Exception in case of problems
+     */
+    public abstract long importValues ( ValueCursor<? extends BaseValueBatch> values ) throws Exception;
+
+    /**
+     * This method returns the values of the specified time span using the coarsest compression level that does not provide more than the specified count of values.
+     * Time spans for which the selected level has not yet calculated values are filled with values of finer levels.
+     * @param startTime start of the requested time span (inclusive)
+     * @param endTime end of the requested time span (exclusive)
+     * @param maxPoints maximum count of values that should be returned
+     * @param calculationMethod calculation method of the compressed levels that may be used
+     * @return values of the requested time span
+     * @throws Exception in case of problems
+     */
+    public abstract BaseValueBatch queryValues ( long startTime, long endTime, int maxPoints, CalculationMethod calculationMethod ) throws Exception;
+
     /**
      * This method deletes all files that currently exist for the current configuration including the configuration control file.
      */
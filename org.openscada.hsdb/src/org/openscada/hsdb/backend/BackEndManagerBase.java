@@ -20,25 +20,49 @@
 package org.openscada.hsdb.backend;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.openscada.hsdb.AsyncStorageChannel;
 import org.openscada.hsdb.CalculatingStorageChannel;
 import org.openscada.hsdb.ExtendedStorageChannel;
 import org.openscada.hsdb.ExtendedStorageChannelAdapter;
+import org.openscada.hsdb.RecentValueCache;
 import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.StorageChannelQueryPlanner;
+import org.openscada.hsdb.ValueCursor;
+import org.openscada.hsdb.backend.internal.BackEndCache;
+import org.openscada.hsdb.backend.internal.BackEndFragmentIndex;
+import org.openscada.hsdb.backend.internal.RepairScheduler;
 import org.openscada.hsdb.calculation.CalculationLogicProvider;
 import org.openscada.hsdb.calculation.CalculationLogicProviderFactoryImpl;
 import org.openscada.hsdb.calculation.CalculationMethod;
+import org.openscada.hsdb.concurrent.PriorityThreadFactory;
+import org.openscada.hsdb.concurrent.SharedThreadPool;
 import org.openscada.hsdb.configuration.Configuration;
 import org.openscada.hsdb.configuration.Conversions;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.metrics.Counter;
+import org.openscada.hsdb.metrics.Gauge;
+import org.openscada.hsdb.metrics.MetricRegistry;
+import org.openscada.hsdb.metrics.Metrics;
+import org.openscada.hsdb.metrics.TimedReentrantReadWriteLock;
+import org.openscada.hsdb.metrics.Timer;
+import org.openscada.hsdb.relict.RetentionService;
 import org.openscada.hsdb.utils.HsdbHelper;
 import org.openscada.utils.concurrent.NamedThreadFactory;
 import org.slf4j.Logger;
@@ -54,9 +78,88 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
     /** The default logger. */
     private final static Logger logger = LoggerFactory.getLogger ( BackEndManagerBase.class );
 
+    /**
+     * This enumeration contains the transitions of back end fragments that are recorded in the fragment catalog.
+     */
+    private static enum BackEndFragmentTransition
+    {
+        ADDED,
+        REMOVED,
+        CORRUPT_STATUS_CHANGED
+    }
+
+    /**
+     * This class holds an immutable snapshot of the back end object that is currently used for writing by a user.
+     * @param <B> type of the back end object
+     */
+    private static class WriteBackEndSnapshot<B>
+    {
+        /** Back end object that is used for writing. */
+        private final B backEnd;
+
+        /** Information of the back end fragment that is used for writing. */
+        private final BackEndFragmentInformation backEndFragmentInformation;
+
+        /** Start time of the back end fragment when the snapshot was taken. */
+        private final long startTime;
+
+        /** End time of the back end fragment when the snapshot was taken. */
+        private final long endTime;
+
+        /**
+         * Constructor.
+         * @param backEnd back end object that is used for writing
+         * @param backEndFragmentInformation information of the back end fragment that is used for writing
+         */
+        public WriteBackEndSnapshot ( final B backEnd, final BackEndFragmentInformation backEndFragmentInformation )
+        {
+            this.backEnd = backEnd;
+            this.backEndFragmentInformation = backEndFragmentInformation;
+            this.startTime = backEndFragmentInformation.getStartTime ();
+            this.endTime = backEndFragmentInformation.getEndTime ();
+        }
+
+        /**
+         * This method returns whether a value with the specified time stamp can be written via the snapshot without updating any state of the manager.
+         * @param timestamp time stamp of the value that has to be written
+         * @return true, if the value can be written via the snapshot, otherwise false
+         */
+        public boolean accepts ( final long timestamp )
+        {
+            if ( timestamp < this.startTime || timestamp >= this.endTime || this.backEndFragmentInformation.getIsCorrupt () )
+            {
+                return false;
+            }
+
+            // the insert would change the state if the state is unknown, if the fragment is empty or if the value is earlier than all other values
+            final Boolean isEmpty = this.backEndFragmentInformation.getIsEmpty ();
+            if ( isEmpty == null || isEmpty )
+            {
+                return false;
+            }
+            final Long earliestValueTime = this.backEndFragmentInformation.getSupposedEarliestValueTime ();
+            return earliestValueTime == null || earliestValueTime <= timestamp;
+        }
+    }
+
     /** Id of the repair thread. */
     private final String REPAIR_THREAD_ID = "hsdb.RepairThread";
 
+    /** Default count of back end objects that are kept initialized for reading if no other value is configured. */
+    private final static int DEFAULT_READ_CACHE_SIZE = 32;
+
+    /** Name of the system property that specifies the count of threads that are used for reading back end fragments concurrently. */
+    public final static String READ_THREAD_COUNT_PROPERTY = "org.openscada.hsdb.readThreadCount";
+
+    /** Name of the system property that specifies the maximum count of read tasks that are waiting for a free thread. */
+    public final static String READ_QUEUE_SIZE_PROPERTY = "org.openscada.hsdb.readQueueSize";
+
+    /** Count of threads that are used for reading back end fragments concurrently. */
+    private final static int READ_THREAD_COUNT = Math.max ( 1, Integer.getInteger ( READ_THREAD_COUNT_PROPERTY, Runtime.getRuntime ().availableProcessors () ) );
+
+    /** Thread pool that is shared by all initialized instances for reading back end fragments concurrently. */
+    private final static SharedThreadPool readThreadPool = new SharedThreadPool ( "hsdb.ReadThread", READ_THREAD_COUNT, Integer.getInteger ( READ_QUEUE_SIZE_PROPERTY, READ_THREAD_COUNT * 4 ) );
+
     /** Configuration of the manager instance. */
     private final Configuration configuration;
 
@@ -79,7 +182,7 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
     private final CalculationLogicProviderFactoryImpl calculationLogicProviderFactory;
 
     /** Currently available back end objects. */
-    private final Map<Long, Map<CalculationMethod, List<BackEndFragmentInformation>>> masterBackEnds;
+    private final Map<Long, Map<CalculationMethod, BackEndFragmentIndex>> masterBackEnds;
 
     /** This list contains all back end objects that have been allocated to build up a storage channel tree. */
     private final List<BackEnd> storageChannelTreeBackEnds;
@@ -93,13 +196,82 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
     /** Task that is used to perform repair jobs. */
     private final ExecutorService repairTask;
 
+    /** Time in milliseconds that a repair thread pauses after a back end fragment that is not urgently required has been repaired. */
+    private final long repairPause;
+
+    /** Lock object that is used to serialize the updates of the configuration that are performed by the repair threads. */
+    private final Object repairLock;
+
+    /** Scheduler of the currently running repair action or null if no repair action has been started yet. */
+    private volatile RepairScheduler repairScheduler;
+
     /** Lock object to avoid usage of synchronize. */
     private final ReentrantReadWriteLock lock;
 
+    /** Back end fragments that have to be marked as corrupt as soon as the write lock can be acquired. */
+    private final Queue<BackEndFragmentInformation> pendingCorruptBackEndFragmentInformations;
+
     /** Map containing back end objects that are currently in use for writing by the mapping object. */
     private final Map<Object, Map<B, BackEndFragmentInformation>> cachedBackEnds;
 
-    protected boolean initialized;
+    /** Snapshots of the back end objects that are currently in use for writing mapped by user. They allow writing without acquiring the lock. */
+    private final ConcurrentMap<Object, WriteBackEndSnapshot<B>> writeBackEndSnapshots;
+
+    /** Cache containing back end objects that are shared by all users for reading. */
+    private final BackEndCache<B> readCache;
+
+    /** Flag indicating whether compressed values are calculated incrementally while new values arrive. */
+    private final boolean incrementalCalculation;
+
+    /** Maximum count of pending updates per calculating storage channel or 0 if updates are processed synchronously. */
+    private final int calculationQueueSize;
+
+    /** Memory in bytes that is used to cache the most recent values of all storage channels of the tree. */
+    private final long recentValueCacheSize;
+
+    /** Flag indicating whether the storage channels of the tree pass updates to their sub storage channels concurrently or not. */
+    private final boolean parallelFanOut;
+
+    /** Storage channels of the tree that process updates asynchronously. */
+    private final List<AsyncStorageChannel> asyncStorageChannels;
+
+    /** Flag indicating whether a bulk import is running. During the import the configuration is not stored after each created back end fragment. */
+    private volatile boolean importActive;
+
+    /** Catalog recording the transitions of back end fragments or null if the back end fragments are recorded within the configuration. */
+    private BackEndFragmentCatalog fragmentCatalog;
+
+    /** Registry providing the metrics of the manager. */
+    private final MetricRegistry metricRegistry;
+
+    /** Counter of the lookups of back end fragments for reading and writing. */
+    private final Counter fragmentLookupCounter;
+
+    /** Counter of the created back end fragments. */
+    private final Counter fragmentCreationCounter;
+
+    /** Counter of the values that are inserted via the root storage channel of the tree. */
+    private final Counter insertValueCounter;
+
+    /** Timer recording the duration of insertions via the root storage channel of the tree. */
+    private final Timer insertTimer;
+
+    /** Timer recording the time that is spent waiting for the read locks of back end fragments. */
+    private final Timer fragmentReadWaitTimer;
+
+    /** Timer recording the time that is spent waiting for the write locks of back end fragments. */
+    private final Timer fragmentWriteWaitTimer;
+
+    /** Gauge providing the count of corrupt back end fragments that are still waiting to be repaired. */
+    private final Gauge pendingRepairGauge;
+
+    /** Gauges providing the calculation lag of the storage channels of the tree mapped by metric name. */
+    private final Map<String, Gauge> calculationLagGauges;
+
+    /** Executor that is used for reading back end fragments concurrently or null if the instance is not initialized. */
+    private volatile Executor readExecutor;
+
+    protected volatile boolean initialized;
 
     /**
      * Constructor.
@@ -116,21 +288,54 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         this.emptyBackEndArray = emptyBackEndArray;
         this.corruptFilesExist = false;
         this.storageChannels = null;
-        this.masterBackEnds = new HashMap<Long, Map<CalculationMethod, List<BackEndFragmentInformation>>> ();
+        this.masterBackEnds = new HashMap<Long, Map<CalculationMethod, BackEndFragmentIndex>> ();
         this.calculationLogicProviderFactory = new CalculationLogicProviderFactoryImpl ();
         this.calculationMethods = Conversions.getCalculationMethods ( configuration );
         this.storageChannelTreeBackEnds = new ArrayList<BackEnd> ();
         final Map<String, String> data = configuration.getData ();
         this.maximumCompressionLevel = data == null ? 0 : Conversions.parseLong ( data.get ( Configuration.MAX_COMPRESSION_LEVEL ), 0 );
-        this.repairTask = Executors.newSingleThreadExecutor ( new NamedThreadFactory ( this.REPAIR_THREAD_ID ) );
-        this.lock = new ReentrantReadWriteLock ();
+        final int repairThreadCount = data == null ? 1 : (int)Conversions.parseLong ( data.get ( Configuration.MANAGER_REPAIR_THREAD_COUNT ), Math.max ( 1, Runtime.getRuntime ().availableProcessors () / 2 ) );
+        this.repairTask = Executors.newFixedThreadPool ( Math.max ( 1, repairThreadCount ), new PriorityThreadFactory ( new NamedThreadFactory ( this.REPAIR_THREAD_ID ), Thread.MIN_PRIORITY ) );
+        this.repairPause = data == null ? 0 : Conversions.parseLong ( data.get ( Configuration.MANAGER_REPAIR_PAUSE ), 0 );
+        this.repairLock = new Object ();
+        this.repairScheduler = null;
+        final String configurationId = configuration.getId ();
+        this.metricRegistry = Metrics.getRegistry ();
+        this.lock = TimedReentrantReadWriteLock.create ( this.metricRegistry.timer ( Metrics.name ( configurationId, "lock", "manager", "readWait" ) ), this.metricRegistry.timer ( Metrics.name ( configurationId, "lock", "manager", "writeWait" ) ) );
+        this.fragmentLookupCounter = this.metricRegistry.counter ( Metrics.name ( configurationId, "fragment", "lookups" ) );
+        this.fragmentCreationCounter = this.metricRegistry.counter ( Metrics.name ( configurationId, "fragment", "creations" ) );
+        this.insertValueCounter = this.metricRegistry.counter ( Metrics.name ( configurationId, "insert", "values" ) );
+        this.insertTimer = this.metricRegistry.timer ( Metrics.name ( configurationId, "insert", "time" ) );
+        this.fragmentReadWaitTimer = this.metricRegistry.timer ( Metrics.name ( configurationId, "lock", "fragment", "readWait" ) );
+        this.fragmentWriteWaitTimer = this.metricRegistry.timer ( Metrics.name ( configurationId, "lock", "fragment", "writeWait" ) );
+        this.pendingRepairGauge = new Gauge ()
+        {
+            public long getValue ()
+            {
+                return getPendingRepairCount ();
+            }
+        };
+        this.calculationLagGauges = new HashMap<String, Gauge> ();
+        this.pendingCorruptBackEndFragmentInformations = new ConcurrentLinkedQueue<BackEndFragmentInformation> ();
         this.cachedBackEnds = new HashMap<Object, Map<B, BackEndFragmentInformation>> ();
+        this.writeBackEndSnapshots = new ConcurrentHashMap<Object, WriteBackEndSnapshot<B>> ();
+        this.readCache = new BackEndCache<B> ( data == null ? 0 : (int)Conversions.parseLong ( data.get ( Configuration.MANAGER_FRAGMENT_READ_CACHE_SIZE ), DEFAULT_READ_CACHE_SIZE ) );
+        this.incrementalCalculation = data == null ? false : Boolean.parseBoolean ( data.get ( Configuration.MANAGER_INCREMENTAL_CALCULATION ) );
+        this.calculationQueueSize = data == null ? 0 : (int)Conversions.parseLong ( data.get ( Configuration.MANAGER_CALCULATION_QUEUE_SIZE ), 0 );
+        this.recentValueCacheSize = data == null ? 0 : Conversions.parseLong ( data.get ( Configuration.MANAGER_RECENT_VALUE_CACHE_SIZE ), 0 );
+        this.parallelFanOut = data == null ? false : Boolean.parseBoolean ( data.get ( Configuration.MANAGER_PARALLEL_FAN_OUT ) );
+        this.asyncStorageChannels = new CopyOnWriteArrayList<AsyncStorageChannel> ();
+        this.importActive = false;
+        this.fragmentCatalog = null;
+        this.readExecutor = null;
         this.initialized = false;
     }
 
     /**
      * This method updates the configuration using the current internal object structure as input.
      * After that the updated configuration is stored to the configuration file.
+     * If a fragment catalog is used, then a snapshot of all back end fragments is written to the catalog instead.
+     * In that case the configuration is only stored if it still contained information about back end fragments.
      */
     protected void flushConfiguration ()
     {
@@ -196,6 +401,26 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         final int size = backEndFragmentInformations.size ();
         data.put ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT, "" + size );
         this.corruptFilesExist = false;
+        if ( this.fragmentCatalog != null )
+        {
+            for ( final BackEndFragmentInformation backendInformation : backEndFragmentInformations )
+            {
+                this.corruptFilesExist |= backendInformation.getDetailLevelId () > 0 && backendInformation.getIsCorrupt ();
+            }
+            try
+            {
+                this.fragmentCatalog.writeSnapshot ( backEndFragmentInformations );
+            }
+            catch ( final Exception e )
+            {
+                logger.error ( String.format ( "could not write fragment catalog of configuration with id '%s'", this.configuration.getId () ), e );
+            }
+            if ( !keysToRemove.isEmpty () )
+            {
+                this.backEndManagerFactory.save ( this.configuration );
+            }
+            return;
+        }
         for ( int i = 0; i < size; i++ )
         {
             final BackEndFragmentInformation backendInformation = backEndFragmentInformations.get ( i );
@@ -212,6 +437,82 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         this.backEndManagerFactory.save ( this.configuration );
     }
 
+    /**
+     * This method records a transition of the passed back end fragments.
+     * If a fragment catalog is used, then only the transition is appended to the catalog. Otherwise the complete configuration is stored.
+     * @param transition transition that has to be recorded
+     * @param backEndFragmentInformations back end fragments that are affected by the transition
+     */
+    private void recordBackEndFragmentTransition ( final BackEndFragmentTransition transition, final Collection<BackEndFragmentInformation> backEndFragmentInformations )
+    {
+        if ( this.fragmentCatalog == null )
+        {
+            flushConfiguration ();
+            return;
+        }
+        try
+        {
+            for ( final BackEndFragmentInformation backEndFragmentInformation : backEndFragmentInformations )
+            {
+                switch ( transition )
+                {
+                case ADDED:
+                {
+                    this.fragmentCatalog.addBackEndFragment ( backEndFragmentInformation );
+                    break;
+                }
+                case REMOVED:
+                {
+                    this.fragmentCatalog.removeBackEndFragment ( backEndFragmentInformation );
+                    break;
+                }
+                case CORRUPT_STATUS_CHANGED:
+                {
+                    this.fragmentCatalog.updateCorruptStatus ( backEndFragmentInformation );
+                    this.corruptFilesExist |= backEndFragmentInformation.getDetailLevelId () > 0 && backEndFragmentInformation.getIsCorrupt ();
+                    break;
+                }
+                }
+            }
+            if ( transition != BackEndFragmentTransition.CORRUPT_STATUS_CHANGED )
+            {
+                this.configuration.getData ().put ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT, "" + getBackEndFragmentCount () );
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( String.format ( "could not record back end fragment transition in fragment catalog of configuration with id '%s'. the complete catalog will be written", this.configuration.getId () ), e );
+            flushConfiguration ();
+        }
+    }
+
+    /**
+     * This method returns the count of all currently known back end fragments.
+     * @return count of all currently known back end fragments
+     */
+    protected int getBackEndFragmentCount ()
+    {
+        int count = 0;
+        for ( final Map<CalculationMethod, BackEndFragmentIndex> indexes : this.masterBackEnds.values () )
+        {
+            for ( final BackEndFragmentIndex index : indexes.values () )
+            {
+                count += index.size ();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method creates the catalog that will be used to record the transitions of back end fragments.
+     * The default implementation returns null, which means that the back end fragments are recorded within the configuration.
+     * @return catalog that will be used to record the transitions of back end fragments or null if no catalog is supported
+     */
+    protected BackEndFragmentCatalog createBackEndFragmentCatalog ()
+    {
+        return null;
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndManager#initialize()
      */
@@ -225,71 +526,145 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         final long fragmentCount = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT ), 0 );
         final String configurationId = this.configuration.getId ();
         boolean updateConfiguration = false;
-        for ( long i = 0; i < fragmentCount; i++ )
+
+        // load the back end fragments from the fragment catalog if one is available
+        final String fragmentCatalogFlag = data.get ( Configuration.MANAGER_FRAGMENT_CATALOG );
+        if ( this.fragmentCatalog == null && ( fragmentCatalogFlag == null || Boolean.parseBoolean ( fragmentCatalogFlag ) ) )
+        {
+            this.fragmentCatalog = createBackEndFragmentCatalog ();
+        }
+        List<BackEndFragmentInformation> catalogEntries = null;
+        if ( this.fragmentCatalog != null )
         {
             try
             {
-                final CalculationMethod calculationMethod = CalculationMethod.convertShortStringToCalculationMethod ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_CALCULATION_METHOD_PREFIX + i ) );
-                final long detailLevelId = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_COMPRESSION_LEVEL_PREFIX + i ), 0 );
-                final long startTime = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_START_TIME_PREFIX + i ), 0 );
-                final long endTime = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_END_TIME_PREFIX + i ), 0 );
-                final boolean isCorrupt = Boolean.parseBoolean ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_CORRUPT_STATUS_PREFIX + i ) );
-                final String fragmentName = data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_NAME_PREFIX + i );
-                if ( calculationMethod == CalculationMethod.UNKNOWN )
-                {
-                    throw new Exception ( String.format ( "invalid calculation method specified for file with index %s", i ) );
-                }
-                if ( detailLevelId < 0 )
+                catalogEntries = this.fragmentCatalog.load ();
+            }
+            catch ( final Exception e )
+            {
+                logger.error ( String.format ( "could not load fragment catalog of configuration with id '%s'. the information of the configuration will be used instead", configurationId ), e );
+            }
+        }
+        if ( catalogEntries != null )
+        {
+            long i = 0;
+            for ( final BackEndFragmentInformation entry : catalogEntries )
+            {
+                try
                 {
-                    throw new Exception ( String.format ( "invalid compression level specified for file with index %s", i ) );
+                    updateConfiguration |= addKnownBackEndFragment ( i, entry.getCalculationMethod (), entry.getDetailLevelId (), entry.getStartTime (), entry.getEndTime (), entry.getIsCorrupt (), entry.getFragmentName () );
                 }
-                if ( startTime >= endTime )
+                catch ( final Exception e )
                 {
-                    throw new Exception ( String.format ( "invalid start/end time specified for file with index %s", i ) );
+                    logger.error ( String.format ( "invalid fragment catalog entry detected - will be ignored (%s)", configurationId ), e );
                 }
-                if ( fragmentName == null || fragmentName.trim ().length () == 0 )
+                i++;
+            }
+            data.put ( Configuration.MANAGER_KNOWN_FRAGMENTS_COUNT, "" + getBackEndFragmentCount () );
+        }
+        else
+        {
+            // the back end fragments are moved from the configuration to the fragment catalog
+            updateConfiguration = this.fragmentCatalog != null && fragmentCount > 0;
+            for ( long i = 0; i < fragmentCount; i++ )
+            {
+                try
                 {
-                    throw new Exception ( String.format ( "invalid file name specified for file with index %s", i ) );
+                    final CalculationMethod calculationMethod = CalculationMethod.convertShortStringToCalculationMethod ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_CALCULATION_METHOD_PREFIX + i ) );
+                    final long detailLevelId = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_COMPRESSION_LEVEL_PREFIX + i ), 0 );
+                    final long startTime = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_START_TIME_PREFIX + i ), 0 );
+                    final long endTime = Conversions.parseLong ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_END_TIME_PREFIX + i ), 0 );
+                    final boolean isCorrupt = Boolean.parseBoolean ( data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_CORRUPT_STATUS_PREFIX + i ) );
+                    final String fragmentName = data.get ( Configuration.MANAGER_KNOWN_FRAGMENT_NAME_PREFIX + i );
+                    updateConfiguration |= addKnownBackEndFragment ( i, calculationMethod, detailLevelId, startTime, endTime, isCorrupt, fragmentName );
                 }
-                final BackEndFragmentInformation backEndFragmentInformation = new BackEndFragmentInformation ();
-                backEndFragmentInformation.setConfigurationId ( configurationId );
-                backEndFragmentInformation.setLock ( new ReentrantReadWriteLock () );
-                backEndFragmentInformation.setCalculationMethod ( calculationMethod );
-                backEndFragmentInformation.setDetailLevelId ( detailLevelId );
-                backEndFragmentInformation.setStartTime ( startTime );
-                backEndFragmentInformation.setEndTime ( endTime );
-                backEndFragmentInformation.setFragmentName ( fragmentName );
-                final boolean mergedCorruptFlag = isCorrupt || checkIsBackEndCorrupt ( backEndFragmentInformation );
-                this.corruptFilesExist |= detailLevelId > 0 && mergedCorruptFlag;
-                backEndFragmentInformation.setIsCorrupt ( mergedCorruptFlag );
-                addBackEndFragmentInformation ( backEndFragmentInformation, i == fragmentCount - 1 );
-                if ( !isCorrupt && mergedCorruptFlag )
+                catch ( final Exception e )
                 {
-                    logger.error ( String.format ( "back end fragment '%s' for configuration '%s' has been marked as corrupt", fragmentName, configurationId ) );
-                    updateConfiguration = true;
+                    logger.error ( String.format ( "invalid configuration set detected - will be ignored (%s)", configurationId ) );
                 }
             }
-            catch ( final Exception e )
-            {
-                logger.error ( String.format ( "invalid configuration set detected - will be ignored (%s)", configurationId ) );
-            }
         }
         if ( updateConfiguration )
         {
             flushConfiguration ();
         }
+        this.metricRegistry.register ( Metrics.name ( configurationId, "repair", "pending" ), this.pendingRepairGauge );
+        if ( this.readExecutor == null )
+        {
+            readThreadPool.acquire ();
+            this.readExecutor = readThreadPool;
+        }
         this.initialized = true;
     }
 
+    /**
+     * This method validates the passed information of a known back end fragment and adds the back end fragment to the internal structure.
+     * @param index index of the back end fragment that is used in error messages
+     * @param calculationMethod calculation method of the back end fragment
+     * @param detailLevelId detail level id of the back end fragment
+     * @param startTime start time of the back end fragment
+     * @param endTime end time of the back end fragment
+     * @param isCorrupt recorded corrupt status of the back end fragment
+     * @param fragmentName name of the back end fragment
+     * @return true, if the back end fragment has been detected as corrupt although it was not recorded as corrupt, otherwise false
+     * @throws Exception if the passed information is invalid
+     */
+    private boolean addKnownBackEndFragment ( final long index, final CalculationMethod calculationMethod, final long detailLevelId, final long startTime, final long endTime, final boolean isCorrupt, final String fragmentName ) throws Exception
+    {
+        final String configurationId = this.configuration.getId ();
+        if ( calculationMethod == CalculationMethod.UNKNOWN )
+        {
+            throw new Exception ( String.format ( "invalid calculation method specified for file with index %s", index ) );
+        }
+        if ( detailLevelId < 0 )
+        {
+            throw new Exception ( String.format ( "invalid compression level specified for file with index %s", index ) );
+        }
+        if ( startTime >= endTime )
+        {
+            throw new Exception ( String.format ( "invalid start/end time specified for file with index %s", index ) );
+        }
+        if ( fragmentName == null || fragmentName.trim ().length () == 0 )
+        {
+            throw new Exception ( String.format ( "invalid file name specified for file with index %s", index ) );
+        }
+        final BackEndFragmentInformation backEndFragmentInformation = new BackEndFragmentInformation ();
+        backEndFragmentInformation.setConfigurationId ( configurationId );
+        backEndFragmentInformation.setLock ( createFragmentLock () );
+        backEndFragmentInformation.setCalculationMethod ( calculationMethod );
+        backEndFragmentInformation.setDetailLevelId ( detailLevelId );
+        backEndFragmentInformation.setStartTime ( startTime );
+        backEndFragmentInformation.setEndTime ( endTime );
+        backEndFragmentInformation.setFragmentName ( fragmentName );
+        final boolean mergedCorruptFlag = isCorrupt || checkIsBackEndCorrupt ( backEndFragmentInformation );
+        this.corruptFilesExist |= detailLevelId > 0 && mergedCorruptFlag;
+        backEndFragmentInformation.setIsCorrupt ( mergedCorruptFlag );
+        addBackEndFragmentInformation ( backEndFragmentInformation );
+        if ( !isCorrupt && mergedCorruptFlag )
+        {
+            logger.error ( String.format ( "back end fragment '%s' for configuration '%s' has been marked as corrupt", fragmentName, configurationId ) );
+            return true;
+        }
+        return false;
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndManager#deinitialize()
      */
     public void deinitialize () throws Exception
     {
+        RetentionService.getInstance ().removeBackEndManager ( this );
         this.lock.writeLock ().lock ();
         this.initialized = false;
         try
         {
+            this.metricRegistry.unregister ( Metrics.name ( this.configuration.getId (), "repair", "pending" ), this.pendingRepairGauge );
+            if ( this.readExecutor != null )
+            {
+                this.readExecutor = null;
+                readThreadPool.release ();
+            }
+            this.writeBackEndSnapshots.clear ();
             for ( final Map<B, BackEndFragmentInformation> entry : this.cachedBackEnds.values () )
             {
                 for ( final B backEnd : entry.keySet () )
@@ -305,6 +680,11 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                 }
             }
             this.cachedBackEnds.clear ();
+            this.readCache.clear ();
+            if ( this.fragmentCatalog != null )
+            {
+                this.fragmentCatalog.close ();
+            }
         }
         finally
         {
@@ -312,51 +692,70 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         }
     }
 
+    /**
+     * This method creates the lock that is used to synchronize the access to a back end fragment.
+     * The created lock records the time that is spent waiting for it unless this is disabled via class org.openscada.hsdb.metrics.Metrics.
+     * @return lock that is used to synchronize the access to a back end fragment
+     */
+    protected ReentrantReadWriteLock createFragmentLock ()
+    {
+        return TimedReentrantReadWriteLock.create ( this.fragmentReadWaitTimer, this.fragmentWriteWaitTimer );
+    }
+
     /**
      * This method adds the passed object to the internal data structure.
+     * If an object with the same fragment name already exists, then the existing object will be updated instead.
      * @param backEndFragmentInformation object that has to be added
-     * @param sort flag indicating whether the sort order should be maintained. This flag may only be set to false, if another call of the method will be performed afterwards and then the flag is set to true
      */
-    protected void addBackEndFragmentInformation ( final BackEndFragmentInformation backEndFragmentInformation, final boolean sort )
+    protected void addBackEndFragmentInformation ( final BackEndFragmentInformation backEndFragmentInformation )
     {
         final long detailLevelId = backEndFragmentInformation.getDetailLevelId ();
-        Map<CalculationMethod, List<BackEndFragmentInformation>> map = this.masterBackEnds.get ( detailLevelId );
+        Map<CalculationMethod, BackEndFragmentIndex> map = this.masterBackEnds.get ( detailLevelId );
         if ( map == null )
         {
-            map = new HashMap<CalculationMethod, List<BackEndFragmentInformation>> ();
+            map = new HashMap<CalculationMethod, BackEndFragmentIndex> ();
             this.masterBackEnds.put ( detailLevelId, map );
         }
-        final CalculationMethod calculationMethod = backEndFragmentInformation.getCalculationMethod ();
-        List<BackEndFragmentInformation> list = map.get ( detailLevelId == 0 ? CalculationMethod.NATIVE : calculationMethod );
-        if ( list == null )
+        final CalculationMethod calculationMethod = detailLevelId == 0 ? CalculationMethod.NATIVE : backEndFragmentInformation.getCalculationMethod ();
+        BackEndFragmentIndex index = map.get ( calculationMethod );
+        if ( index == null )
         {
-            list = new LinkedList<BackEndFragmentInformation> ();
-            map.put ( calculationMethod, list );
+            index = new BackEndFragmentIndex ();
+            map.put ( calculationMethod, index );
         }
-        boolean add = true;
-        for ( final BackEndFragmentInformation existingBackEndFragmentInformation : list )
+        final BackEndFragmentInformation existingBackEndFragmentInformation = index.get ( backEndFragmentInformation.getFragmentName () );
+        if ( existingBackEndFragmentInformation == null )
         {
-            if ( existingBackEndFragmentInformation.getFragmentName ().equals ( backEndFragmentInformation.getFragmentName () ) )
-            {
-                backEndFragmentInformation.setLock ( existingBackEndFragmentInformation.getLock () );
-                existingBackEndFragmentInformation.setCalculationMethod ( backEndFragmentInformation.getCalculationMethod () );
-                existingBackEndFragmentInformation.setConfigurationId ( backEndFragmentInformation.getConfigurationId () );
-                existingBackEndFragmentInformation.setDetailLevelId ( backEndFragmentInformation.getDetailLevelId () );
-                existingBackEndFragmentInformation.setStartTime ( backEndFragmentInformation.getStartTime () );
-                existingBackEndFragmentInformation.setEndTime ( backEndFragmentInformation.getEndTime () );
-                existingBackEndFragmentInformation.setIsCorrupt ( existingBackEndFragmentInformation.getIsCorrupt () || backEndFragmentInformation.getIsCorrupt () );
-                add = false;
-                break;
-            }
+            index.add ( backEndFragmentInformation );
+            return;
         }
-        if ( add )
+        backEndFragmentInformation.setLock ( existingBackEndFragmentInformation.getLock () );
+        existingBackEndFragmentInformation.setCalculationMethod ( backEndFragmentInformation.getCalculationMethod () );
+        existingBackEndFragmentInformation.setConfigurationId ( backEndFragmentInformation.getConfigurationId () );
+        existingBackEndFragmentInformation.setDetailLevelId ( backEndFragmentInformation.getDetailLevelId () );
+        if ( existingBackEndFragmentInformation.getStartTime () != backEndFragmentInformation.getStartTime () )
         {
-            list.add ( backEndFragmentInformation );
-            if ( sort )
-            {
-                Collections.sort ( list );
-            }
+            // the start time is the sort key of the index, so the object has to be added again
+            final List<BackEndFragmentInformation> backEndFragmentInformationToMove = new ArrayList<BackEndFragmentInformation> ( 1 );
+            backEndFragmentInformationToMove.add ( existingBackEndFragmentInformation );
+            index.removeAll ( backEndFragmentInformationToMove );
+            existingBackEndFragmentInformation.setStartTime ( backEndFragmentInformation.getStartTime () );
+            index.add ( existingBackEndFragmentInformation );
         }
+        existingBackEndFragmentInformation.setEndTime ( backEndFragmentInformation.getEndTime () );
+        existingBackEndFragmentInformation.setIsCorrupt ( existingBackEndFragmentInformation.getIsCorrupt () || backEndFragmentInformation.getIsCorrupt () );
+    }
+
+    /**
+     * This method returns the index containing the back end information objects of the specified detail level and calculation method.
+     * @param detailLevelId detail level id of the requested index
+     * @param calculationMethod calculation method of the requested index
+     * @return index containing the back end information objects or null if no objects exist
+     */
+    private BackEndFragmentIndex getBackEndFragmentIndex ( final long detailLevelId, final CalculationMethod calculationMethod )
+    {
+        final Map<CalculationMethod, BackEndFragmentIndex> map = this.masterBackEnds.get ( detailLevelId );
+        return map == null ? null : map.get ( detailLevelId == 0 ? CalculationMethod.NATIVE : calculationMethod );
     }
 
     /**
@@ -367,6 +766,24 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         return new Configuration ( this.configuration );
     }
 
+    /**
+     * This method returns the cache containing the back end objects that are currently kept initialized for reading.
+     * The returned object can be used to retrieve statistical information about the cache.
+     * @return cache containing the back end objects that are currently kept initialized for reading
+     */
+    public BackEndCache<B> getReadCache ()
+    {
+        return this.readCache;
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManager#getReadExecutor()
+     */
+    public Executor getReadExecutor ()
+    {
+        return this.readExecutor;
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndManager#getBackEndManagerFactory()
      */
@@ -482,12 +899,34 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                             break;
                         }
                     }
-                    this.storageChannels[i] = new CalculatingStorageChannel ( new ExtendedStorageChannelAdapter ( backEnd ), superBackEndIndex >= 0 ? this.storageChannels[superBackEndIndex] : null, this.calculationLogicProviderFactory.getCalculationLogicProvider ( backEnd.getMetaData () ) );
+                    this.storageChannels[i] = new CalculatingStorageChannel ( new ExtendedStorageChannelAdapter ( backEnd ), superBackEndIndex >= 0 ? this.storageChannels[superBackEndIndex] : null, this.calculationLogicProviderFactory.getCalculationLogicProvider ( backEnd.getMetaData () ), this.incrementalCalculation );
+                    this.storageChannels[i].setParallelFanOut ( this.parallelFanOut );
                     if ( superBackEndIndex >= 0 )
                     {
-                        this.storageChannels[superBackEndIndex].registerStorageChannel ( this.storageChannels[i] );
+                        if ( this.calculationQueueSize > 0 )
+                        {
+                            final AsyncStorageChannel asyncStorageChannel = new AsyncStorageChannel ( this.storageChannels[i], this.calculationQueueSize );
+                            this.asyncStorageChannels.add ( asyncStorageChannel );
+                            this.storageChannels[superBackEndIndex].registerStorageChannel ( asyncStorageChannel );
+                        }
+                        else
+                        {
+                            this.storageChannels[superBackEndIndex].registerStorageChannel ( this.storageChannels[i] );
+                        }
                     }
                 }
+
+                // distribute the memory for caching recent values equally among all storage channels
+                final long recentValueCacheCapacity = Math.min ( this.recentValueCacheSize / RecentValueCache.RECORD_SIZE / this.storageChannels.length, Integer.MAX_VALUE / RecentValueCache.RECORD_SIZE );
+                if ( recentValueCacheCapacity > 0 )
+                {
+                    for ( final CalculatingStorageChannel storageChannel : this.storageChannels )
+                    {
+                        storageChannel.setRecentValueCache ( new RecentValueCache ( (int)recentValueCacheCapacity, storageChannel.getMetaData ().getProposedDataAge () ) );
+                    }
+                }
+                this.storageChannels[0].setInsertMetrics ( this.insertValueCounter, this.insertTimer );
+                registerCalculationLagGauges ();
                 return this.storageChannels[0];
             }
             catch ( final Exception e )
@@ -505,16 +944,86 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         }
     }
 
+    /**
+     * This method registers a gauge for each calculating storage channel of the tree providing the time in milliseconds between now and the start of the latest processed time span.
+     * It is assumed that the write lock is held.
+     * @throws Exception if the meta data of a storage channel is not available
+     */
+    private void registerCalculationLagGauges () throws Exception
+    {
+        for ( final CalculatingStorageChannel storageChannel : this.storageChannels )
+        {
+            final StorageChannelMetaData metaData = storageChannel.getMetaData ();
+            if ( metaData.getDetailLevelId () == 0 )
+            {
+                continue;
+            }
+            final String name = Metrics.name ( this.configuration.getId (), "calculation", CalculationMethod.convertCalculationMethodToShortString ( metaData.getCalculationMethod () ), metaData.getDetailLevelId (), "lag" );
+            final Gauge gauge = new Gauge ()
+            {
+                public long getValue ()
+                {
+                    final long latestProcessedTime = storageChannel.getLatestProcessedTime ();
+                    return latestProcessedTime == Long.MIN_VALUE ? 0 : Math.max ( 0, System.currentTimeMillis () - latestProcessedTime );
+                }
+            };
+            this.calculationLagGauges.put ( name, gauge );
+            this.metricRegistry.register ( name, gauge );
+        }
+    }
+
+    /**
+     * This method unregisters the gauges providing the calculation lag of the storage channels of the tree.
+     * It is assumed that the write lock is held.
+     */
+    private void unregisterCalculationLagGauges ()
+    {
+        for ( final Entry<String, Gauge> entry : this.calculationLagGauges.entrySet () )
+        {
+            this.metricRegistry.unregister ( entry.getKey (), entry.getValue () );
+        }
+        this.calculationLagGauges.clear ();
+    }
+
+    /**
+     * This method blocks until all updates that are pending for storage channels of the tree have been processed.
+     * The method must not be called while holding the lock of the instance if updates are pending.
+     */
+    public void flushStorageChannelTree ()
+    {
+        for ( final AsyncStorageChannel asyncStorageChannel : this.asyncStorageChannels )
+        {
+            try
+            {
+                asyncStorageChannel.flush ();
+            }
+            catch ( final InterruptedException e )
+            {
+                logger.warn ( "interrupted while waiting for pending updates of storage channel tree", e );
+                Thread.currentThread ().interrupt ();
+                return;
+            }
+            catch ( final Exception e )
+            {
+                logger.error ( "pending updates of storage channel tree could not be processed", e );
+            }
+        }
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndManager#releaseStorageChannelTree()
      */
     public void releaseStorageChannelTree ()
     {
+        // wait until pending updates have been processed, since their processing requires the lock
+        flushStorageChannelTree ();
         this.lock.writeLock ().lock ();
         try
         {
+            unregisterCalculationLagGauges ();
             this.storageChannelTreeBackEnds.clear ();
             this.storageChannels = null;
+            this.asyncStorageChannels.clear ();
         }
         finally
         {
@@ -527,15 +1036,15 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
      */
     public Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> buildStorageChannelStructure ()
     {
+        // build the storage channel tree structure if it does not yet exist. this requires the write lock, which cannot be acquired while holding the read lock
+        final boolean storageChannelTreeExists = this.storageChannels != null;
+        if ( !storageChannelTreeExists )
+        {
+            buildStorageChannelTree ();
+        }
         this.lock.readLock ().lock ();
         try
         {
-            // build the storage channel tree structure if it does not yet exist
-            final boolean storageChannelTreeExists = this.storageChannels != null;
-            if ( !storageChannelTreeExists )
-            {
-                buildStorageChannelTree ();
-            }
 
             // build structure
             final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> resultMap = new HashMap<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> ();
@@ -573,16 +1082,54 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                 logger.error ( "problem while building the storage channel structure", e );
             }
 
+            return resultMap;
+        }
+        finally
+        {
+            this.lock.readLock ().unlock ();
+
             // release the storage channel tree structure if did not exist before
             if ( !storageChannelTreeExists )
             {
                 releaseStorageChannelTree ();
             }
-            return resultMap;
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManager#queryValues(long, long, int, org.openscada.hsdb.calculation.CalculationMethod)
+     */
+    public BaseValueBatch queryValues ( final long startTime, final long endTime, final int maxPoints, final CalculationMethod calculationMethod ) throws Exception
+    {
+        // create storage channels for all levels that can be used to answer the query
+        final List<BackEndMultiplexer> backEnds = new ArrayList<BackEndMultiplexer> ();
+        final Map<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> structure = new HashMap<Long, Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>>> ();
+        try
+        {
+            for ( final StorageChannelMetaData metaData : Conversions.convertConfigurationToMetaDatas ( this.configuration ) )
+            {
+                final CalculationMethod method = metaData.getCalculationMethod ();
+                if ( method != CalculationMethod.NATIVE && method != calculationMethod )
+                {
+                    continue;
+                }
+                final BackEndMultiplexer backEnd = new BackEndMultiplexer ( this );
+                backEnds.add ( backEnd );
+                backEnd.initialize ( metaData );
+                final Map<ExtendedStorageChannel, CalculationLogicProvider> channels = new HashMap<ExtendedStorageChannel, CalculationLogicProvider> ();
+                channels.put ( new ExtendedStorageChannelAdapter ( backEnd ), this.calculationLogicProviderFactory.getCalculationLogicProvider ( metaData ) );
+                final Map<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>> methods = new HashMap<CalculationMethod, Map<ExtendedStorageChannel, CalculationLogicProvider>> ();
+                methods.put ( method, channels );
+                structure.put ( metaData.getDetailLevelId (), methods );
+            }
+            return new StorageChannelQueryPlanner ( structure ).getValueBatch ( startTime, endTime, maxPoints, calculationMethod );
         }
         finally
         {
-            this.lock.readLock ().unlock ();
+            for ( final BackEndMultiplexer backEnd : backEnds )
+            {
+                backEnd.deinitialize ();
+            }
         }
     }
 
@@ -595,6 +1142,10 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         try
         {
             this.backEndManagerFactory.delete ( this.configuration );
+            if ( this.fragmentCatalog != null )
+            {
+                this.fragmentCatalog.delete ();
+            }
         }
         finally
         {
@@ -606,6 +1157,7 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
      * This method returns the currently available back end information objects matching the specified criteria.
      * The newest back end information objects will be returned first.
      * If the oldest back end object fitting the the specified time span has to entries, then the next oldest object with entries will be retrieved.
+     * Back end fragments that cannot be accessed are not returned. They are marked as corrupt as soon as the write lock can be acquired, since this method is usually called while only the read lock is held.
      * @param detailLevelId detail level id for which the back end information objects have to be retrieved
      * @param calculationMethod calculation method for which the back end information objects have to be retrieved
      * @param startTime start time for which the back end information objects have to be retrieved
@@ -616,17 +1168,14 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
     protected List<BackEndFragmentInformation> getBackEndInformations ( final long detailLevelId, final CalculationMethod calculationMethod, final long startTime, final long endTime, final boolean addIfEmpty )
     {
         final List<BackEndFragmentInformation> result = new ArrayList<BackEndFragmentInformation> ();
-        final Map<CalculationMethod, List<BackEndFragmentInformation>> map = this.masterBackEnds.get ( detailLevelId );
-        if ( map == null )
-        {
-            return result;
-        }
-        final List<BackEndFragmentInformation> list = map.get ( detailLevelId == 0 ? CalculationMethod.NATIVE : calculationMethod );
-        if ( list == null )
+        final BackEndFragmentIndex index = getBackEndFragmentIndex ( detailLevelId, calculationMethod );
+        if ( index == null )
         {
             return result;
         }
-        for ( final BackEndFragmentInformation backEndFragmentInformation : list )
+
+        // fragments starting at or after the end time can never match, so the search begins with the newest fragment starting before the end time
+        for ( final BackEndFragmentInformation backEndFragmentInformation : index.getStartingBefore ( endTime ) )
         {
             final long metaDataStartTime = backEndFragmentInformation.getStartTime ();
             final long metaDataEndTime = backEndFragmentInformation.getEndTime ();
@@ -646,9 +1195,8 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                 }
                 catch ( final Exception e )
                 {
-                    logger.error ( String.format ( "marking back end fragment (%s) of configuration with id '%s' as corrupt", backEndFragmentInformation.getFragmentName (), this.configuration.getId () ) );
-                    backEndFragmentInformation.setIsCorrupt ( true );
-                    flushConfiguration ();
+                    logger.error ( String.format ( "could not access back end fragment (%s) of configuration with id '%s'", backEndFragmentInformation.getFragmentName (), this.configuration.getId () ), e );
+                    this.pendingCorruptBackEndFragmentInformations.add ( backEndFragmentInformation );
                 }
             }
             if ( startTime >= metaDataEndTime )
@@ -663,12 +1211,12 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                 }
                 catch ( final Exception e )
                 {
-                    logger.error ( String.format ( "marking back end fragment (%s) of configuration with id '%s' as corrupt", backEndFragmentInformation.getFragmentName (), this.configuration.getId () ) );
-                    backEndFragmentInformation.setIsCorrupt ( true );
-                    flushConfiguration ();
+                    logger.error ( String.format ( "could not access back end fragment (%s) of configuration with id '%s'", backEndFragmentInformation.getFragmentName (), this.configuration.getId () ), e );
+                    this.pendingCorruptBackEndFragmentInformations.add ( backEndFragmentInformation );
                 }
             }
         }
+        markPendingCorruptBackEndFragments ();
         return result;
     }
 
@@ -677,19 +1225,30 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
      */
     public B getBackEndForInsert ( final Object user, final long detailLevelId, final CalculationMethod calculationMethod, final long timestamp ) throws Exception
     {
+        this.fragmentLookupCounter.add ( 1 );
+
+        // fast path: the back end object that is currently used for writing by the user covers the time stamp
+        final WriteBackEndSnapshot<B> snapshot = this.writeBackEndSnapshots.get ( user );
+        if ( snapshot != null && snapshot.accepts ( timestamp ) )
+        {
+            return snapshot.backEnd;
+        }
+
+        // slow path: a different back end fragment has to be used or the state of the fragment has to be updated
         this.lock.writeLock ().lock ();
         try
         {
-            final List<BackEndFragmentInformation> backEndInformations = getBackEndInformations ( detailLevelId, calculationMethod, timestamp, timestamp + 1, true );
+            // only the newest fragment starting at or before the time stamp is relevant. its state is taken from the index without accessing the back end
+            final BackEndFragmentIndex index = getBackEndFragmentIndex ( detailLevelId, calculationMethod );
+            final BackEndFragmentInformation existingBackEndInformation = index == null ? null : index.getLatestStartingAtOrBefore ( timestamp );
             BackEndFragmentInformation result;
-            if ( backEndInformations.isEmpty () )
+            if ( existingBackEndInformation == null )
             {
                 // create new back end object
                 result = addNewBackEndObjects ( detailLevelId, calculationMethod, timestamp, timestamp );
             }
             else
             {
-                final BackEndFragmentInformation existingBackEndInformation = backEndInformations.get ( 0 );
                 if ( existingBackEndInformation.getStartTime () <= timestamp && existingBackEndInformation.getEndTime () > timestamp )
                 {
                     // all is good. the current back end object can be used
@@ -701,7 +1260,13 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                     result = addNewBackEndObjects ( detailLevelId, calculationMethod, existingBackEndInformation.getEndTime (), timestamp );
                 }
             }
-            result.setIsEmpty ( false );
+
+            // the state of an existing fragment has to be known before the insert is recorded, otherwise the time of its earliest value would be lost
+            if ( result.getIsEmpty () == null )
+            {
+                updateBackEndEmptyInformation ( result );
+            }
+            result.recordInsert ( timestamp );
             return checkReplaceExistingWriteBackEnd ( user, result );
         }
         finally
@@ -728,32 +1293,41 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
             timespan = 1;
         }
         final long fragmentStart = Conversions.getFragmentStartTime ( time, timespan );
+        final List<BackEndFragmentInformation> addedBackEndFragmentInformations = new ArrayList<BackEndFragmentInformation> ( 2 );
         if ( startTime < fragmentStart )
         {
             final BackEndFragmentInformation backEndFragmentInformation = new BackEndFragmentInformation ();
             backEndFragmentInformation.setCalculationMethod ( calculationMethod );
             backEndFragmentInformation.setConfigurationId ( this.configuration.getId () );
-            backEndFragmentInformation.setLock ( new ReentrantReadWriteLock () );
+            backEndFragmentInformation.setLock ( createFragmentLock () );
             backEndFragmentInformation.setDetailLevelId ( detailLevelId );
             backEndFragmentInformation.setIsCorrupt ( false );
             backEndFragmentInformation.setFragmentName ( getFragmentName ( detailLevelId, calculationMethod, startTime, fragmentStart ) );
             backEndFragmentInformation.setStartTime ( startTime );
             backEndFragmentInformation.setEndTime ( fragmentStart );
             createBackEnd ( backEndFragmentInformation, false, false );
-            addBackEndFragmentInformation ( backEndFragmentInformation, false );
+            backEndFragmentInformation.initializeState ( true, null );
+            addBackEndFragmentInformation ( backEndFragmentInformation );
+            addedBackEndFragmentInformations.add ( backEndFragmentInformation );
         }
         final BackEndFragmentInformation backEndFragmentInformation = new BackEndFragmentInformation ();
         backEndFragmentInformation.setCalculationMethod ( calculationMethod );
         backEndFragmentInformation.setConfigurationId ( this.configuration.getId () );
-        backEndFragmentInformation.setLock ( new ReentrantReadWriteLock () );
+        backEndFragmentInformation.setLock ( createFragmentLock () );
         backEndFragmentInformation.setDetailLevelId ( detailLevelId );
         backEndFragmentInformation.setIsCorrupt ( false );
         backEndFragmentInformation.setFragmentName ( getFragmentName ( detailLevelId, calculationMethod, fragmentStart, fragmentStart + timespan ) );
         backEndFragmentInformation.setStartTime ( fragmentStart );
         backEndFragmentInformation.setEndTime ( fragmentStart + timespan );
         createBackEnd ( backEndFragmentInformation, false, false );
-        addBackEndFragmentInformation ( backEndFragmentInformation, true );
-        flushConfiguration ();
+        backEndFragmentInformation.initializeState ( true, null );
+        addBackEndFragmentInformation ( backEndFragmentInformation );
+        addedBackEndFragmentInformations.add ( backEndFragmentInformation );
+        this.fragmentCreationCounter.add ( addedBackEndFragmentInformations.size () );
+        if ( !this.importActive )
+        {
+            recordBackEndFragmentTransition ( BackEndFragmentTransition.ADDED, addedBackEndFragmentInformations );
+        }
         return backEndFragmentInformation;
     }
 
@@ -762,6 +1336,7 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
      */
     public B[] getExistingBackEnds ( final Object user, final long detailLevelId, final CalculationMethod calculationMethod, final long startTime, final long endTime ) throws Exception
     {
+        this.fragmentLookupCounter.add ( 1 );
         this.lock.readLock ().lock ();
         try
         {
@@ -778,7 +1353,7 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                 }
                 else
                 {
-                    result.add ( createBackEnd ( backEndInformation, true, true ) );
+                    result.add ( acquireReadBackEnd ( backEndInformation ) );
                 }
             }
             return result.toArray ( this.emptyBackEndArray );
@@ -786,9 +1361,38 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         finally
         {
             this.lock.readLock ().unlock ();
+            markPendingCorruptBackEndFragments ();
         }
     }
 
+    /**
+     * This method returns an initialized back end object for reading the specified back end fragment.
+     * If the back end object is available in the shared read cache, the cached object will be returned.
+     * Otherwise a new object will be created and added to the cache.
+     * Cached objects do not request their storage to be kept open, since every manager of the process has its own cache.
+     * Storage implementations that limit the count of open files for the whole process may keep them open nevertheless.
+     * Each returned object has to be released via the method {@link #deinitializeBackEnd(Object, BackEnd)}.
+     * @param backEndFragmentInformation object providing the information of the back end fragment object that has to be returned
+     * @return initialized back end object
+     * @throws Exception in case of problems while creating a new back end object
+     */
+    private B acquireReadBackEnd ( final BackEndFragmentInformation backEndFragmentInformation ) throws Exception
+    {
+        final String fragmentName = backEndFragmentInformation.getFragmentName ();
+        final B cachedBackEnd = this.readCache.acquire ( fragmentName );
+        if ( cachedBackEnd != null )
+        {
+            return cachedBackEnd;
+        }
+        final B backEnd = createBackEnd ( backEndFragmentInformation, true, false );
+        final B result = this.readCache.add ( fragmentName, backEnd );
+        if ( result != backEnd )
+        {
+            backEnd.deinitialize ();
+        }
+        return result;
+    }
+
     /**
      * This method checks whether the specified back end fragment already has been cached for the specified object.
      * If this is the case, the cached object will be returned.
@@ -816,6 +1420,7 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
             final Entry<B, BackEndFragmentInformation> entry = cachedBackEnd.entrySet ().iterator ().next ();
             if ( entry.getValue ().compareTo ( backEndFragmentInformation ) == 0 )
             {
+                this.writeBackEndSnapshots.put ( user, new WriteBackEndSnapshot<B> ( entry.getKey (), entry.getValue () ) );
                 return entry.getKey ();
             }
             try
@@ -828,8 +1433,10 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
             }
         }
         cachedBackEnd.clear ();
+        this.writeBackEndSnapshots.remove ( user );
         final B backEnd = createBackEnd ( backEndFragmentInformation, true, true );
         cachedBackEnd.put ( backEnd, backEndFragmentInformation );
+        this.writeBackEndSnapshots.put ( user, new WriteBackEndSnapshot<B> ( backEnd, backEndFragmentInformation ) );
         return backEnd;
     }
 
@@ -840,8 +1447,8 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
     {
         try
         {
-            final Map<B, BackEndFragmentInformation> cachedBackEnd = this.cachedBackEnds.get ( user );
-            if ( cachedBackEnd == null || !cachedBackEnd.keySet ().contains ( backEnd ) )
+            final WriteBackEndSnapshot<B> snapshot = this.writeBackEndSnapshots.get ( user );
+            if ( ( snapshot == null || snapshot.backEnd != backEnd ) && !this.readCache.release ( backEnd ) )
             {
                 backEnd.deinitialize ();
             }
@@ -860,6 +1467,7 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         this.lock.writeLock ().lock ();
         try
         {
+            this.writeBackEndSnapshots.remove ( user );
             final Map<B, BackEndFragmentInformation> cachedBackEnd = this.cachedBackEnds.remove ( user );
             if ( cachedBackEnd != null )
             {
@@ -892,29 +1500,83 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         try
         {
             final List<BackEndFragmentInformation> backEndFragmentInformationToDelete = new ArrayList<BackEndFragmentInformation> ();
-            final Map<CalculationMethod, List<BackEndFragmentInformation>> map = this.masterBackEnds.get ( detailLevelId );
-            if ( map == null )
+            final BackEndFragmentIndex index = getBackEndFragmentIndex ( detailLevelId, calculationMethod );
+            if ( index == null )
             {
                 return;
             }
-            final List<BackEndFragmentInformation> list = map.get ( detailLevelId == 0 ? CalculationMethod.NATIVE : calculationMethod );
-            if ( list == null )
-            {
-                return;
-            }
-            for ( final BackEndFragmentInformation backEndFragmentInformation : list )
+            for ( final BackEndFragmentInformation backEndFragmentInformation : index.getStartingBefore ( endTime ) )
             {
                 if ( backEndFragmentInformation.getEndTime () <= endTime )
                 {
-                    deleteBackEnd ( backEndFragmentInformation );
                     backEndFragmentInformationToDelete.add ( backEndFragmentInformation );
                 }
             }
-            if ( !backEndFragmentInformationToDelete.isEmpty () )
+            deleteBackEnds ( index, backEndFragmentInformationToDelete );
+        }
+        finally
+        {
+            this.lock.writeLock ().unlock ();
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManager#deleteExpiredBackEnds(long, org.openscada.hsdb.calculation.CalculationMethod, long, long, int)
+     */
+    public int deleteExpiredBackEnds ( final long detailLevelId, final CalculationMethod calculationMethod, final long proposedDataAge, final long now, final int maximumCount )
+    {
+        if ( maximumCount < 1 || proposedDataAge < 1 )
+        {
+            return 0;
+        }
+        this.lock.writeLock ().lock ();
+        try
+        {
+            final BackEndFragmentIndex index = getBackEndFragmentIndex ( detailLevelId, calculationMethod );
+            if ( !this.initialized || index == null )
             {
-                list.removeAll ( backEndFragmentInformationToDelete );
-                flushConfiguration ();
+                return 0;
+            }
+
+            // the cut-off is relative to the newest data, so that old data is kept if no new data is stored
+            final BackEndFragmentInformation latestBackEndFragmentInformation = index.getLatestStartingAtOrBefore ( Long.MAX_VALUE );
+            if ( latestBackEndFragmentInformation == null )
+            {
+                return 0;
             }
+            final long referenceTime = Math.min ( now, latestBackEndFragmentInformation.getEndTime () );
+            if ( referenceTime < Long.MIN_VALUE + proposedDataAge )
+            {
+                return 0;
+            }
+            final long cutOffTime = referenceTime - proposedDataAge;
+
+            // keep the fragment that is responsible for the cut-off time and its predecessor, since it might contain the value that is valid at the cut-off time
+            final BackEndFragmentInformation boundaryBackEndFragmentInformation = index.getLatestStartingAtOrBefore ( cutOffTime );
+            if ( boundaryBackEndFragmentInformation == null )
+            {
+                return 0;
+            }
+            final BackEndFragmentInformation predecessorBackEndFragmentInformation = index.getLatestStartingAtOrBefore ( boundaryBackEndFragmentInformation.getStartTime () - 1 );
+            if ( predecessorBackEndFragmentInformation == null )
+            {
+                return 0;
+            }
+            final long endTime = predecessorBackEndFragmentInformation.getStartTime ();
+
+            // delete the oldest fragments first
+            final List<BackEndFragmentInformation> expiredBackEndFragmentInformations = new ArrayList<BackEndFragmentInformation> ();
+            for ( final BackEndFragmentInformation backEndFragmentInformation : index.getStartingBefore ( endTime ) )
+            {
+                if ( backEndFragmentInformation.getEndTime () <= endTime )
+                {
+                    expiredBackEndFragmentInformations.add ( backEndFragmentInformation );
+                }
+            }
+            final int size = expiredBackEndFragmentInformations.size ();
+            final List<BackEndFragmentInformation> backEndFragmentInformationToDelete = new ArrayList<BackEndFragmentInformation> ( expiredBackEndFragmentInformations.subList ( Math.max ( 0, size - maximumCount ), size ) );
+            deleteBackEnds ( index, backEndFragmentInformationToDelete );
+            return backEndFragmentInformationToDelete.size ();
         }
         finally
         {
@@ -922,6 +1584,57 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         }
     }
 
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManager#deleteExpiredBackEnds(long, int)
+     */
+    public int deleteExpiredBackEnds ( final long now, final int maximumCount )
+    {
+        final Map<String, String> data = this.configuration.getData ();
+        int deletedCount = 0;
+        for ( long detailLevelId = 0; detailLevelId <= this.maximumCompressionLevel && deletedCount < maximumCount; detailLevelId++ )
+        {
+            final long proposedDataAge = Conversions.decodeTimeSpan ( data.get ( Configuration.PROPOSED_DATA_AGE_KEY_PREFIX + detailLevelId ) );
+            if ( detailLevelId == 0 )
+            {
+                deletedCount += deleteExpiredBackEnds ( detailLevelId, CalculationMethod.NATIVE, proposedDataAge, now, maximumCount - deletedCount );
+                continue;
+            }
+            for ( final CalculationMethod calculationMethod : this.calculationMethods )
+            {
+                deletedCount += deleteExpiredBackEnds ( detailLevelId, calculationMethod, proposedDataAge, now, maximumCount - deletedCount );
+            }
+        }
+        return deletedCount;
+    }
+
+    /**
+     * This method deletes the passed back end fragments and removes them from the passed index.
+     * It is assumed that the write lock is held.
+     * @param index index containing the back end fragments
+     * @param backEndFragmentInformationToDelete back end fragments that have to be deleted
+     */
+    private void deleteBackEnds ( final BackEndFragmentIndex index, final List<BackEndFragmentInformation> backEndFragmentInformationToDelete )
+    {
+        if ( backEndFragmentInformationToDelete.isEmpty () )
+        {
+            return;
+        }
+        for ( final BackEndFragmentInformation backEndFragmentInformation : backEndFragmentInformationToDelete )
+        {
+            this.readCache.invalidate ( backEndFragmentInformation.getFragmentName () );
+            deleteBackEnd ( backEndFragmentInformation );
+        }
+        index.removeAll ( backEndFragmentInformationToDelete );
+        for ( final Entry<Object, WriteBackEndSnapshot<B>> entry : this.writeBackEndSnapshots.entrySet () )
+        {
+            if ( backEndFragmentInformationToDelete.contains ( entry.getValue ().backEndFragmentInformation ) )
+            {
+                this.writeBackEndSnapshots.remove ( entry.getKey (), entry.getValue () );
+            }
+        }
+        recordBackEndFragmentTransition ( BackEndFragmentTransition.REMOVED, backEndFragmentInformationToDelete );
+    }
+
     /**
      * @see org.openscada.hsdb.backend.BackEndManager#markBackEndAsCorrupt(long, org.openscada.hsdb.calculation.CalculationMethod, long)
      */
@@ -930,25 +1643,49 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         this.lock.readLock ().lock ();
         try
         {
-            final List<BackEndFragmentInformation> backEndInformations = getBackEndInformations ( detailLevelId, calculationMethod, timestamp, timestamp + 1, true );
-            boolean statusChanged = false;
-            for ( final BackEndFragmentInformation backEndInformation : backEndInformations )
+            this.pendingCorruptBackEndFragmentInformations.addAll ( getBackEndInformations ( detailLevelId, calculationMethod, timestamp, timestamp + 1, true ) );
+        }
+        finally
+        {
+            this.lock.readLock ().unlock ();
+        }
+        markPendingCorruptBackEndFragments ();
+    }
+
+    /**
+     * This method marks all back end fragments as corrupt that have been queued for being marked.
+     * The write lock is acquired for this purpose. Since the read lock cannot be upgraded, nothing is done if the current thread holds the read lock.
+     * In that case the back end fragments are marked the next time this method is called without holding the read lock.
+     */
+    private void markPendingCorruptBackEndFragments ()
+    {
+        if ( this.pendingCorruptBackEndFragmentInformations.isEmpty () || this.lock.getReadHoldCount () > 0 )
+        {
+            return;
+        }
+        this.lock.writeLock ().lock ();
+        try
+        {
+            final List<BackEndFragmentInformation> changedBackEndInformations = new ArrayList<BackEndFragmentInformation> ();
+            BackEndFragmentInformation backEndInformation;
+            while ( ( backEndInformation = this.pendingCorruptBackEndFragmentInformations.poll () ) != null )
             {
                 if ( !backEndInformation.getIsCorrupt () )
                 {
                     logger.error ( String.format ( "marking back end fragment (%s) of configuration with id '%s' as corrupt", backEndInformation.getFragmentName (), this.configuration.getId () ) );
                     backEndInformation.setIsCorrupt ( true );
-                    statusChanged = true;
+                    this.readCache.invalidate ( backEndInformation.getFragmentName () );
+                    changedBackEndInformations.add ( backEndInformation );
                 }
             }
-            if ( statusChanged )
+            if ( !changedBackEndInformations.isEmpty () )
             {
-                flushConfiguration ();
+                recordBackEndFragmentTransition ( BackEndFragmentTransition.CORRUPT_STATUS_CHANGED, changedBackEndInformations );
             }
         }
         finally
         {
-            this.lock.readLock ().unlock ();
+            this.lock.writeLock ().unlock ();
         }
     }
 
@@ -990,19 +1727,12 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                 buildStorageChannelTree ();
                 final CalculatingStorageChannel[] storageChannels = this.storageChannels;
                 logger.info ( String.format ( "start processing [%s] corrupt back end fragments...", corruptBackEndFragmentInformations.size () ) );
+                final RepairScheduler repairScheduler = new RepairScheduler ( this.configuration.getId (), this.repairTask, this.repairPause, abortNotificator );
                 for ( final BackEndFragmentInformation backEndInformation : corruptBackEndFragmentInformations )
                 {
-                    // abort if abort is requested
-                    if ( abortNotificator != null && abortNotificator.getAbort () )
-                    {
-                        break;
-                    }
-
-                    // process this back end fragment
                     final long detailLevelId = backEndInformation.getDetailLevelId ();
                     final CalculationMethod calculationMethod = backEndInformation.getCalculationMethod ();
                     final long startTime = backEndInformation.getStartTime ();
-                    final long endTime = backEndInformation.getEndTime ();
 
                     // check whether the corrupt fragment is the latest of its detail level and calculation method or whether it is needed by other such corrupt fragments for input
                     final List<BackEndFragmentInformation> existingBackEndInformations = getBackEndInformations ( detailLevelId, calculationMethod, Long.MAX_VALUE - 1, Long.MAX_VALUE, false );
@@ -1016,46 +1746,12 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                             final StorageChannelMetaData metaData = outputCalculatingStorageChannel.getMetaData ();
                             if ( metaData.getDetailLevelId () == detailLevelId && metaData.getCalculationMethod () == calculationMethod )
                             {
-                                // process the data for the corrupt time span
-                                final CalculatingStorageChannel inputCalculatingStorageChannel = (CalculatingStorageChannel)outputCalculatingStorageChannel.getInputStorageChannel ();
-                                final CalculationLogicProvider outputCalculationLogicProvider = outputCalculatingStorageChannel.getCalculationLogicProvider ();
-                                final CalculationLogicProvider inputCalculationLogicProvider = inputCalculatingStorageChannel.getCalculationLogicProvider ();
-                                final ExtendedStorageChannel outputChannel = outputCalculatingStorageChannel.getBaseStorageChannel ();
-                                final ExtendedStorageChannel inputChannel = inputCalculatingStorageChannel.getBaseStorageChannel ();
-                                if ( urgentlyNeededBackEndFragment )
-                                {
-                                    if ( abortNotificator == null || !abortNotificator.getAbort () )
+                                repairScheduler.add ( backEndInformation, new RepairScheduler.RepairAction () {
+                                    public void repair ( final BackEndFragmentInformation information ) throws Exception
                                     {
-                                        logger.info ( String.format ( "processing [%s]...", backEndInformation.getFragmentName () ) );
-                                        deleteBackEnd ( backEndInformation );
-                                        HsdbHelper.processData ( inputChannel, outputChannel, inputCalculationLogicProvider, outputCalculationLogicProvider, startTime, Math.min ( now, endTime ) );
-                                        backEndInformation.setIsCorrupt ( false );
+                                        repairBackEndFragment ( outputCalculatingStorageChannel, information, now, !urgentlyNeededBackEndFragment );
                                     }
-                                }
-                                else
-                                {
-                                    this.repairTask.submit ( new Runnable () {
-                                        public void run ()
-                                        {
-                                            try
-                                            {
-                                                if ( abortNotificator == null || !abortNotificator.getAbort () )
-                                                {
-                                                    logger.info ( String.format ( "processing [%s]...", backEndInformation.getFragmentName () ) );
-                                                    deleteBackEnd ( backEndInformation );
-                                                    HsdbHelper.processData ( inputChannel, outputChannel, inputCalculationLogicProvider, outputCalculationLogicProvider, startTime, Math.min ( now, endTime ) );
-                                                    backEndInformation.setIsCorrupt ( false );
-                                                    flushConfiguration ();
-                                                }
-                                            }
-                                            catch ( final Exception e )
-                                            {
-                                                final String message = String.format ( "problem while repairing corrupt back end fragment (%s) for configuration '%s'", backEndInformation.getFragmentName (), BackEndManagerBase.this.configuration.getId () );
-                                                logger.error ( message, e );
-                                            }
-                                        }
-                                    } );
-                                }
+                                }, urgentlyNeededBackEndFragment );
                                 break;
                             }
                         }
@@ -1065,6 +1761,19 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
                         logger.error ( String.format ( "unable to access meta data for storage channel of configuration '%s'", this.configuration.getId () ) );
                     }
                 }
+
+                // repair all independent back end fragments in parallel and wait until the urgently required back end fragments are available
+                this.repairScheduler = repairScheduler;
+                repairScheduler.start ();
+                try
+                {
+                    repairScheduler.awaitUrgentRepairs ();
+                }
+                catch ( final InterruptedException e )
+                {
+                    logger.warn ( String.format ( "interrupted while waiting for the repair of corrupt back end fragments for configuration '%s'", this.configuration.getId () ) );
+                    Thread.currentThread ().interrupt ();
+                }
                 flushConfiguration ();
                 logger.info ( "end processing corrupt back end fragments!" );
             }
@@ -1073,6 +1782,190 @@ public abstract class BackEndManagerBase<B extends BackEnd> implements BackEndMa
         return !this.corruptFilesExist;
     }
 
+    /**
+     * @see org.openscada.hsdb.backend.BackEndManager#importValues(org.openscada.hsdb.ValueCursor)
+     */
+    public long importValues ( final ValueCursor<? extends BaseValueBatch> values ) throws Exception
+    {
+        final String configurationId = this.configuration.getId ();
+        final boolean storageChannelTreeExists = this.storageChannels != null;
+        final CalculatingStorageChannel rootStorageChannel = buildStorageChannelTree ();
+        final CalculatingStorageChannel[] storageChannels = this.storageChannels;
+        this.importActive = true;
+        try
+        {
+            // write the values to the native storage channel
+            logger.info ( String.format ( "importing values for configuration '%s'...", configurationId ) );
+            final ExtendedStorageChannel nativeChannel = rootStorageChannel.getBaseStorageChannel ();
+            long count = 0;
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            while ( values.hasNext () )
+            {
+                final BaseValueBatch batch = values.next ();
+                final int size = batch.getSize ();
+                if ( size == 0 )
+                {
+                    continue;
+                }
+                for ( int i = 0; i < size; i++ )
+                {
+                    final long time = batch.getTime ( i );
+                    minTime = Math.min ( minTime, time );
+                    maxTime = Math.max ( maxTime, time );
+                }
+                HsdbHelper.updateValueBatch ( nativeChannel, batch );
+                count += size;
+            }
+            logger.info ( String.format ( "[%s] values imported for configuration '%s'", count, configurationId ) );
+            if ( count == 0 )
+            {
+                return 0;
+            }
+
+            // calculate the compressed values level by level. the input of each storage channel precedes it within the tree
+            for ( int i = 1; i < storageChannels.length; i++ )
+            {
+                final CalculatingStorageChannel outputCalculatingStorageChannel = storageChannels[i];
+                final CalculatingStorageChannel inputCalculatingStorageChannel = (CalculatingStorageChannel)outputCalculatingStorageChannel.getInputStorageChannel ();
+                final CalculationLogicProvider outputCalculationLogicProvider = outputCalculatingStorageChannel.getCalculationLogicProvider ();
+                final long timespan = Math.max ( 1, outputCalculationLogicProvider.getRequiredTimespanForCalculation () );
+                final long startTime = Conversions.getFragmentStartTime ( minTime, timespan );
+                // the time span containing the newest value stays open, just like during live calculation, and will be completed as soon as newer values arrive
+                final long endTime = Conversions.getFragmentStartTime ( maxTime, timespan );
+                logger.info ( String.format ( "calculating values of storage channel (%s) for configuration '%s'...", outputCalculatingStorageChannel.getMetaData (), configurationId ) );
+                HsdbHelper.processData ( inputCalculatingStorageChannel.getBaseStorageChannel (), outputCalculatingStorageChannel.getBaseStorageChannel (), inputCalculatingStorageChannel.getCalculationLogicProvider (), outputCalculationLogicProvider, startTime, endTime );
+            }
+            return count;
+        }
+        finally
+        {
+            // register all back end fragments that have been created during the import
+            this.importActive = false;
+            this.lock.writeLock ().lock ();
+            try
+            {
+                flushConfiguration ();
+            }
+            finally
+            {
+                this.lock.writeLock ().unlock ();
+            }
+            if ( !storageChannelTreeExists )
+            {
+                releaseStorageChannelTree ();
+            }
+            else
+            {
+                // the imported values have bypassed the caches of recent values
+                for ( final CalculatingStorageChannel storageChannel : storageChannels )
+                {
+                    storageChannel.resetRecentValueCache ();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method repairs the passed corrupt back end fragment by processing the data of the input storage channel again.
+     * The values are calculated without holding the lock, since only the input storage channel is read.
+     * The corrupt back end fragment is then replaced while the write lock is held, so that inserts, queries and the deletion of expired back end fragments never see a partially written fragment.
+     * The values are written directly to the back end fragment and not via the output storage channel, since the storage channels of the tree acquire the lock themselves.
+     * @param outputCalculatingStorageChannel storage channel that is responsible for the corrupt back end fragment
+     * @param backEndInformation information of the corrupt back end fragment
+     * @param now time when the repair action has been started
+     * @param flush flag indicating whether the configuration has to be stored after the back end fragment has been repaired. The repair is always recorded if a fragment catalog is used
+     * @throws Exception in case of problems
+     */
+    private void repairBackEndFragment ( final CalculatingStorageChannel outputCalculatingStorageChannel, final BackEndFragmentInformation backEndInformation, final long now, final boolean flush ) throws Exception
+    {
+        final CalculatingStorageChannel inputCalculatingStorageChannel = (CalculatingStorageChannel)outputCalculatingStorageChannel.getInputStorageChannel ();
+        final CalculationLogicProvider outputCalculationLogicProvider = outputCalculatingStorageChannel.getCalculationLogicProvider ();
+        final CalculationLogicProvider inputCalculationLogicProvider = inputCalculatingStorageChannel.getCalculationLogicProvider ();
+        final ExtendedStorageChannel inputChannel = inputCalculatingStorageChannel.getBaseStorageChannel ();
+        final BaseValueBatch values = HsdbHelper.calculateData ( inputChannel, inputCalculationLogicProvider, outputCalculationLogicProvider, backEndInformation.getStartTime (), Math.min ( now, backEndInformation.getEndTime () ) );
+        this.lock.writeLock ().lock ();
+        try
+        {
+            this.readCache.invalidate ( backEndInformation.getFragmentName () );
+            releaseWriteBackEnds ( backEndInformation );
+            deleteBackEnd ( backEndInformation );
+            backEndInformation.setIsEmpty ( true );
+            backEndInformation.setSupposedEarliestValueTime ( null );
+            if ( !values.isEmpty () )
+            {
+                final Object user = new Object ();
+                try
+                {
+                    final B backEnd = getBackEndForInsert ( user, backEndInformation.getDetailLevelId (), backEndInformation.getCalculationMethod (), values.getTime ( 0 ) );
+                    HsdbHelper.updateValueBatch ( new ExtendedStorageChannelAdapter ( backEnd ), values );
+                }
+                finally
+                {
+                    freeRelatedResourced ( user );
+                }
+            }
+            backEndInformation.setIsCorrupt ( false );
+            if ( flush || this.fragmentCatalog != null )
+            {
+                synchronized ( this.repairLock )
+                {
+                    recordBackEndFragmentTransition ( BackEndFragmentTransition.CORRUPT_STATUS_CHANGED, Collections.singletonList ( backEndInformation ) );
+                }
+            }
+        }
+        finally
+        {
+            this.lock.writeLock ().unlock ();
+        }
+    }
+
+    /**
+     * This method removes all back end objects of the passed back end fragment that are cached for writing, so that they are not used anymore.
+     * It is assumed that the write lock is held.
+     * @param backEndFragmentInformation back end fragment whose cached back end objects have to be removed
+     */
+    private void releaseWriteBackEnds ( final BackEndFragmentInformation backEndFragmentInformation )
+    {
+        for ( final Entry<Object, WriteBackEndSnapshot<B>> entry : this.writeBackEndSnapshots.entrySet () )
+        {
+            if ( entry.getValue ().backEndFragmentInformation == backEndFragmentInformation )
+            {
+                this.writeBackEndSnapshots.remove ( entry.getKey (), entry.getValue () );
+            }
+        }
+        for ( final Map<B, BackEndFragmentInformation> cachedBackEnd : this.cachedBackEnds.values () )
+        {
+            final Iterator<Entry<B, BackEndFragmentInformation>> iterator = cachedBackEnd.entrySet ().iterator ();
+            while ( iterator.hasNext () )
+            {
+                final Entry<B, BackEndFragmentInformation> entry = iterator.next ();
+                if ( entry.getValue () == backEndFragmentInformation )
+                {
+                    iterator.remove ();
+                    try
+                    {
+                        entry.getKey ().deinitialize ();
+                    }
+                    catch ( final Exception e )
+                    {
+                        logger.error ( String.format ( "could not deinitialize back end fragment for configuration with id '%s'", this.configuration.getId () ), e );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method returns the count of corrupt back end fragments that are still waiting to be repaired.
+     * @return count of corrupt back end fragments that are still waiting to be repaired
+     */
+    public int getPendingRepairCount ()
+    {
+        final RepairScheduler repairScheduler = this.repairScheduler;
+        return repairScheduler == null ? 0 : repairScheduler.getTotalCount () - repairScheduler.getProcessedCount ();
+    }
+
     /**
      * This method checks whether the passed corrupt back end fragment should be repaired at once or whether the repair action can be performed later without disadvantage.
      * The repair action has to be performed at once if at least one back end fragment of the next highest compression level and a possibly affected time span is also corrupt.
@@ -21,15 +21,27 @@ package org.openscada.hsdb.backend;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.openscada.hsdb.BatchStorageChannel;
 import org.openscada.hsdb.StorageChannelMetaData;
+import org.openscada.hsdb.ValueCursor;
+import org.openscada.hsdb.configuration.Configuration;
+import org.openscada.hsdb.configuration.Conversions;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
 import org.openscada.hsdb.relict.RelictCleaner;
+import org.openscada.hsdb.relict.RetentionService;
+import org.openscada.hsdb.utils.HsdbHelper;
+import org.openscada.hsdb.utils.SingleBatchValueCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,7 +50,7 @@ import org.slf4j.LoggerFactory;
  * It is arranged that each such backend object is responsible for its own exclusive time span.
  * @author Ludwig Straub
  */
-public class BackEndMultiplexer implements BackEnd, RelictCleaner
+public class BackEndMultiplexer implements BackEnd, BatchStorageChannel, RelictCleaner
 {
     /** The default logger. */
     private final static Logger logger = LoggerFactory.getLogger ( BackEndMultiplexer.class );
@@ -85,32 +97,8 @@ public class BackEndMultiplexer implements BackEnd, RelictCleaner
      */
     public void cleanupRelicts () throws Exception
     {
-        logger.debug ( "deleting old data... start" );
-        try
-        {
-            // assure that at least the last two values remain
-            final long proposedDataAge = this.metaData.getProposedDataAge ();
-            final long now = System.currentTimeMillis ();
-            final LongValue[] firstValues = getLongValues ( now - 1, now );
-            if ( firstValues == null || firstValues.length == 0 )
-            {
-                return;
-            }
-            final long before = firstValues[0].getTime ();
-            final LongValue[] lastValues = getLongValues ( before - proposedDataAge - 1, before - proposedDataAge );
-            if ( lastValues == null || lastValues.length == 0 )
-            {
-                return;
-            }
-
-            // delete old back ends
-            this.backEndManager.deleteOldBackEnds ( this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), lastValues[0].getTime () - 1 );
-        }
-        catch ( final Exception e )
-        {
-            logger.error ( "unable to retrieve latest value", e );
-        }
-        logger.debug ( "deleting old data... end" );
+        // the old data of all storage channels of the manager is deleted by the retention service in small batches, so that writers are not blocked for a long time
+        RetentionService.getInstance ().requestCleanup ( this.backEndManager );
     }
 
     /**
@@ -182,127 +170,264 @@ public class BackEndMultiplexer implements BackEnd, RelictCleaner
     public synchronized void updateLongs ( final LongValue[] longValues ) throws Exception
     {
         assureInitialized ();
-        if ( longValues != null )
+        if ( longValues != null && longValues.length > 0 )
+        {
+            final LongValue[] sortedValues = longValues.clone ();
+            Arrays.sort ( sortedValues );
+            writeSortedLongValues ( LongValueBatch.fromValues ( sortedValues ) );
+        }
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#updateLongValueBatch
+     */
+    public synchronized void updateLongValueBatch ( final LongValueBatch longValues ) throws Exception
+    {
+        assureInitialized ();
+        if ( longValues != null && !longValues.isEmpty () )
         {
-            // assign all long values to the backend that is responsible for their processing
-            final Map<Long, List<LongValue>> backends = new HashMap<Long, List<LongValue>> ();
-            for ( final LongValue longValue : longValues )
+            if ( longValues.isSortedByTime () )
             {
-                long startTime = 0L;
-                try
-                {
-                    final BackEnd backEnd = this.backEndManager.getBackEndForInsert ( this, this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), longValue.getTime () );
-                    final StorageChannelMetaData metaData = backEnd.getMetaData ();
-                    startTime = metaData.getStartTime ();
-                    this.backEndManager.deinitializeBackEnd ( this, backEnd );
-                }
-                catch ( final Exception e )
-                {
-                    logger.error ( String.format ( "backend (%s): could not access sub backend (startTime: %s)", this.metaData, longValue.getTime () ), e );
-                    this.backEndManager.markBackEndAsCorrupt ( this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), longValue.getTime () );
-                }
-                List<LongValue> longValuesToProcess = backends.get ( startTime );
-                if ( longValuesToProcess == null )
-                {
-                    longValuesToProcess = new ArrayList<LongValue> ();
-                    backends.put ( startTime, longValuesToProcess );
-                }
-                longValuesToProcess.add ( longValue );
+                writeSortedLongValues ( longValues );
             }
+            else
+            {
+                final LongValue[] sortedValues = longValues.toLongValues ();
+                Arrays.sort ( sortedValues );
+                writeSortedLongValues ( LongValueBatch.fromValues ( sortedValues ) );
+            }
+        }
+    }
 
-            // process the ordered long values as bulk
-            for ( final Map.Entry<Long, List<LongValue>> entry : backends.entrySet () )
+    /**
+     * This method writes the passed values to the back end fragments that are responsible for them.
+     * Since the values are sorted by time, all values of a fragment form a contiguous range that is located via binary search.
+     * Each fragment is therefore acquired only once and receives all of its values as a single batch.
+     * If a range cannot be written, the range is reported and its fragment is marked as corrupt. Writing continues with the values after the range, so no value is written twice.
+     * @param longValues values sorted by time in ascending order
+     * @throws Exception in case of problems
+     */
+    private void writeSortedLongValues ( final LongValueBatch longValues ) throws Exception
+    {
+        final long[] times = longValues.getTimes ();
+        final int size = longValues.getSize ();
+        int fromIndex = 0;
+        while ( fromIndex < size )
+        {
+            final long time = times[fromIndex];
+
+            // the end of the configured fragment time span is used if the fragment itself is not accessible
+            long endTime = getConfiguredFragmentEndTime ( time );
+            BackEnd backEnd = null;
+            try
             {
-                try
+                backEnd = this.backEndManager.getBackEndForInsert ( this, this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), time );
+                endTime = backEnd.getMetaData ().getEndTime ();
+                HsdbHelper.updateLongValueBatch ( backEnd, extractRange ( longValues, fromIndex, getRangeEndIndex ( times, fromIndex, size, endTime ) ) );
+            }
+            catch ( final Exception e )
+            {
+                final int toIndex = getRangeEndIndex ( times, fromIndex, size, endTime );
+                logger.error ( String.format ( "backend (%s): could not write %s values to sub backend (startTime: %s, endTime: %s, lastValueTime: %s)", this.metaData, toIndex - fromIndex, time, endTime, times[toIndex - 1] ), e );
+                this.backEndManager.markBackEndAsCorrupt ( this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), time );
+            }
+            finally
+            {
+                if ( backEnd != null )
                 {
-                    final BackEnd backEnd = this.backEndManager.getBackEndForInsert ( this, this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), entry.getKey () );
-                    backEnd.updateLongs ( entry.getValue ().toArray ( EMPTY_LONGVALUE_ARRAY ) );
                     this.backEndManager.deinitializeBackEnd ( this, backEnd );
                 }
-                catch ( final Exception e )
-                {
-                    logger.error ( String.format ( "backend (%s): could not write to sub backend (startTime: %s)", this.metaData, entry.getKey () ), e );
-                    this.backEndManager.markBackEndAsCorrupt ( this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), entry.getKey () );
-                }
             }
+            fromIndex = getRangeEndIndex ( times, fromIndex, size, endTime );
+        }
+    }
+
+    /**
+     * This method returns the index after the last value of the range starting at the specified index that is located before the passed end time.
+     * The range contains at least the value at the start index.
+     * @param times time stamps sorted in ascending order
+     * @param fromIndex index of the first value of the range
+     * @param size count of valid time stamps
+     * @param endTime end time of the fragment that is responsible for the first value
+     * @return index after the last value of the range
+     */
+    private static int getRangeEndIndex ( final long[] times, final int fromIndex, final int size, final long endTime )
+    {
+        return endTime > times[fromIndex] ? HsdbHelper.findFirstIndexAfter ( times, fromIndex + 1, size, endTime - 1 ) : fromIndex + 1;
+    }
+
+    /**
+     * This method returns the end of the fragment time span that is configured for the detail level and that contains the passed time.
+     * Fragments that are created to fill gaps never end before this time, so the values up to this time always belong to the same fragment.
+     * @param time time that has to be located
+     * @return end of the configured fragment time span
+     */
+    private long getConfiguredFragmentEndTime ( final long time )
+    {
+        final Configuration configuration = this.backEndManager.getConfiguration ();
+        final Map<String, String> data = configuration == null ? null : configuration.getData ();
+        final long timespan = Math.max ( 1, Conversions.decodeTimeSpan ( data == null ? null : data.get ( Configuration.MANAGER_FRAGMENT_TIMESPAN_PER_LEVEL_PREFIX + this.metaData.getDetailLevelId () ) ) );
+        final long fragmentStartTime = Conversions.getFragmentStartTime ( time, timespan );
+        return fragmentStartTime > Long.MAX_VALUE - timespan ? Long.MAX_VALUE : fragmentStartTime + timespan;
+    }
+
+    /**
+     * This method returns a batch containing the values of the specified range.
+     * Ranges starting at the first value share the arrays of the passed batch, all other ranges are copied.
+     * @param longValues batch containing the values
+     * @param fromIndex index of the first value of the range
+     * @param toIndex index after the last value of the range
+     * @return batch containing the values of the specified range
+     */
+    private static LongValueBatch extractRange ( final LongValueBatch longValues, final int fromIndex, final int toIndex )
+    {
+        if ( fromIndex == 0 )
+        {
+            return toIndex == longValues.getSize () ? longValues : new LongValueBatch ( longValues.getTimes (), longValues.getQualityIndicators (), longValues.getManualIndicators (), longValues.getBaseValueCounts (), longValues.getValues (), toIndex );
         }
+        final LongValueBatch result = new LongValueBatch ( toIndex - fromIndex );
+        result.addAll ( longValues, fromIndex, toIndex );
+        return result;
     }
 
     /**
      * @see org.openscada.hsdb.StorageChannel#getLongValues
      */
     public synchronized LongValue[] getLongValues ( final long startTime, final long endTime ) throws Exception
+    {
+        return getLongValueBatch ( startTime, endTime ).toLongValues ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueBatch
+     */
+    public synchronized LongValueBatch getLongValueBatch ( final long startTime, final long endTime ) throws Exception
     {
         // assure that the current state is valid
         assureInitialized ();
 
         // collect result data
-        final List<LongValue> longValues = new LinkedList<LongValue> ();
         final BackEnd[] backEnds = this.backEndManager.getExistingBackEnds ( this, this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), startTime, endTime );
+        final List<FutureTask<LongValueBatch>> futures = new ArrayList<FutureTask<LongValueBatch>> ( backEnds.length );
         try
         {
-            for ( final BackEnd backEnd : backEnds )
+            // start reading all back end fragments that are affected by the request
+            // the newest back end fragment is read within the current thread after all other read operations have been started
+            final StorageChannelMetaData[] metaDatas = new StorageChannelMetaData[backEnds.length];
+            for ( int i = 0; i < backEnds.length; i++ )
             {
+                FutureTask<LongValueBatch> future = null;
                 try
                 {
-                    final StorageChannelMetaData metaData = backEnd.getMetaData ();
+                    final StorageChannelMetaData metaData = backEnds[i].getMetaData ();
                     final long metaDataStartTime = metaData.getStartTime ();
                     final long metaDataEndTime = metaData.getEndTime ();
-                    try
+                    metaDatas[i] = metaData;
+                    if ( startTime <= metaDataEndTime && endTime > metaDataStartTime || startTime >= metaDataEndTime )
                     {
-                        if ( startTime <= metaDataEndTime && endTime > metaDataStartTime )
-                        {
-                            // process values that match the time span
-                            longValues.addAll ( 0, Arrays.asList ( backEnd.getLongValues ( startTime, endTime ) ) );
-                        }
-                        if ( startTime >= metaDataEndTime )
-                        {
-                            final LongValue[] olderValues = backEnd.getLongValues ( startTime, endTime );
-                            if ( olderValues.length > 0 )
-                            {
-                                longValues.addAll ( 0, Arrays.asList ( olderValues ) );
-                            }
-                        }
-                        if ( !longValues.isEmpty () && longValues.get ( 0 ).getTime () <= startTime )
-                        {
-                            break;
-                        }
-                    }
-                    catch ( final Exception e )
-                    {
-                        final String message = String.format ( "backend (%s): could not read from sub backend (startTime: %s; endTime: %s)", metaData, startTime, endTime );
-                        if ( startTime < System.currentTimeMillis () - metaData.getProposedDataAge () )
-                        {
-                            logger.info ( message + " - backend is probably outdated", e );
-                        }
-                        else
-                        {
-                            logger.error ( message, e );
-                        }
-                        this.backEndManager.markBackEndAsCorrupt ( metaData.getDetailLevelId (), metaData.getCalculationMethod (), metaData.getStartTime () );
-                        longValues.add ( 0, new LongValue ( metaDataStartTime, 0, 0, 0, 0 ) );
-                        if ( metaDataStartTime <= startTime )
+                        future = createReadTask ( backEnds[i], startTime, endTime );
+                        if ( i > 0 )
                         {
-                            break;
+                            startReadTask ( future );
                         }
                     }
                 }
-                catch ( final Exception e1 )
+                catch ( final Exception e )
                 {
                     final String message = String.format ( "backend (%s): could not access sub backend (startTime: %s; endTime: %s)", this.metaData, startTime, endTime );
                     if ( startTime < System.currentTimeMillis () - this.metaData.getProposedDataAge () )
                     {
-                        logger.info ( message + " - backend is probably outdated", e1 );
+                        logger.info ( message + " - backend is probably outdated", e );
+                    }
+                    else
+                    {
+                        logger.error ( message, e );
+                    }
+                }
+                futures.add ( future );
+            }
+            if ( !futures.isEmpty () && futures.get ( 0 ) != null )
+            {
+                futures.get ( 0 ).run ();
+            }
+
+            // process the read data starting with the newest back end fragment
+            final List<LongValueBatch> chunks = new ArrayList<LongValueBatch> ( backEnds.length );
+            int size = 0;
+            for ( int i = 0; i < backEnds.length; i++ )
+            {
+                final StorageChannelMetaData metaData = metaDatas[i];
+                final Future<LongValueBatch> future = futures.get ( i );
+                if ( metaData == null || future == null )
+                {
+                    continue;
+                }
+                final long metaDataStartTime = metaData.getStartTime ();
+                try
+                {
+                    final LongValueBatch values = getReadResult ( future );
+                    if ( !values.isEmpty () )
+                    {
+                        chunks.add ( values );
+                        size += values.getSize ();
+                    }
+                    if ( size > 0 && chunks.get ( chunks.size () - 1 ).getTime ( 0 ) <= startTime )
+                    {
+                        break;
+                    }
+                }
+                catch ( final Exception e )
+                {
+                    final String message = String.format ( "backend (%s): could not read from sub backend (startTime: %s; endTime: %s)", metaData, startTime, endTime );
+                    if ( startTime < System.currentTimeMillis () - metaData.getProposedDataAge () )
+                    {
+                        logger.info ( message + " - backend is probably outdated", e );
                     }
                     else
                     {
-                        logger.error ( message, e1 );
+                        logger.error ( message, e );
+                    }
+                    this.backEndManager.markBackEndAsCorrupt ( metaData.getDetailLevelId (), metaData.getCalculationMethod (), metaData.getStartTime () );
+                    final LongValueBatch emptyValue = new LongValueBatch ( 1 );
+                    emptyValue.add ( metaDataStartTime, 0, 0, 0, 0 );
+                    chunks.add ( emptyValue );
+                    size++;
+                    if ( metaDataStartTime <= startTime )
+                    {
+                        break;
                     }
                 }
             }
+
+            // concatenate the collected data in ascending time order
+            if ( chunks.size () == 1 )
+            {
+                return chunks.get ( 0 );
+            }
+            final LongValueBatch result = new LongValueBatch ( size );
+            for ( int i = chunks.size () - 1; i >= 0; i-- )
+            {
+                result.addAll ( chunks.get ( i ) );
+            }
+            return result;
         }
         finally
         {
+            // assure that no read operation is still running before the back end objects are released
+            for ( final FutureTask<LongValueBatch> future : futures )
+            {
+                if ( future != null && !future.cancel ( false ) )
+                {
+                    try
+                    {
+                        future.get ();
+                    }
+                    catch ( final Exception e )
+                    {
+                        // error has already been handled or result is no longer required
+                    }
+                }
+            }
             for ( final BackEnd backEnd : backEnds )
             {
                 try
@@ -315,9 +440,330 @@ public class BackEndMultiplexer implements BackEnd, RelictCleaner
                 }
             }
         }
+    }
+
+    /**
+     * @see org.openscada.hsdb.BatchStorageChannel#getLongValueCursor
+     */
+    public synchronized ValueCursor<LongValueBatch> getLongValueCursor ( final long startTime, final long endTime ) throws Exception
+    {
+        // assure that the current state is valid
+        assureInitialized ();
+        if ( startTime >= endTime )
+        {
+            return new SingleBatchValueCursor<LongValueBatch> ( null, new LongValueBatch ( 0 ) );
+        }
+
+        // collect the back end fragments that are affected by the request
+        // the search stops at the first back end fragment that contains a value that is equal to or before the start time
+        final BackEnd[] backEnds = this.backEndManager.getExistingBackEnds ( this, this.metaData.getDetailLevelId (), this.metaData.getCalculationMethod (), startTime, endTime );
+        final List<BackEnd> fragments = new ArrayList<BackEnd> ( backEnds.length );
+        final List<StorageChannelMetaData> fragmentMetaDatas = new ArrayList<StorageChannelMetaData> ( backEnds.length );
+        for ( final BackEnd backEnd : backEnds )
+        {
+            try
+            {
+                final StorageChannelMetaData metaData = backEnd.getMetaData ();
+                final long metaDataStartTime = metaData.getStartTime ();
+                final long metaDataEndTime = metaData.getEndTime ();
+                if ( startTime <= metaDataEndTime && endTime > metaDataStartTime || startTime >= metaDataEndTime )
+                {
+                    fragments.add ( backEnd );
+                    fragmentMetaDatas.add ( metaData );
+                    if ( metaDataStartTime <= startTime && containsValueBefore ( backEnd, startTime ) )
+                    {
+                        break;
+                    }
+                }
+            }
+            catch ( final Exception e )
+            {
+                final String message = String.format ( "backend (%s): could not access sub backend (startTime: %s; endTime: %s)", this.metaData, startTime, endTime );
+                if ( startTime < System.currentTimeMillis () - this.metaData.getProposedDataAge () )
+                {
+                    logger.info ( message + " - backend is probably outdated", e );
+                }
+                else
+                {
+                    logger.error ( message, e );
+                }
+            }
+        }
+
+        // the cursor returns the values in ascending time order
+        Collections.reverse ( fragments );
+        Collections.reverse ( fragmentMetaDatas );
+        return new FragmentCursor ( backEnds, fragments, fragmentMetaDatas, startTime, endTime );
+    }
+
+    /**
+     * This method checks whether the passed back end fragment contains a value with a time stamp that is equal to or before the specified time.
+     * If the back end fragment cannot be read, then the method returns true, since the read error will be handled when reading the values.
+     * @param backEnd back end fragment that has to be checked
+     * @param time time that has to be checked
+     * @return true, if a value exists that is equal to or before the specified time, otherwise false
+     */
+    private static boolean containsValueBefore ( final BackEnd backEnd, final long time )
+    {
+        try
+        {
+            return !HsdbHelper.getLongValueBatch ( backEnd, time, time + 1 ).isEmpty ();
+        }
+        catch ( final Exception e )
+        {
+            return true;
+        }
+    }
+
+    /**
+     * This class provides sequential access to the values of several back end fragments.
+     * The values are read fragment by fragment in ascending time order so that only a limited count of values is held in memory.
+     * All back end objects that have been allocated for the cursor are released when the cursor is closed.
+     */
+    private class FragmentCursor implements ValueCursor<LongValueBatch>
+    {
+        /** All back end objects that have been allocated for the cursor. */
+        private final BackEnd[] backEnds;
+
+        /** Back end fragments that have to be read in ascending time order. */
+        private final List<BackEnd> fragments;
+
+        /** Metadata of the back end fragments that have to be read. */
+        private final List<StorageChannelMetaData> fragmentMetaDatas;
+
+        /** Start of the time span for which the values have to be retrieved. */
+        private final long startTime;
+
+        /** End of the time span for which the values have to be retrieved. */
+        private final long endTime;
+
+        /** Index of the back end fragment that is currently read. */
+        private int index;
+
+        /** Cursor of the back end fragment that is currently read or null if no cursor is open. */
+        private ValueCursor<LongValueBatch> cursor;
+
+        /** Flag indicating whether values of the back end fragment that is currently read have already been returned. */
+        private boolean fragmentStarted;
+
+        /** Value that replaces the values of a back end fragment that could not be read or null if no such value is pending. */
+        private LongValueBatch placeholder;
+
+        /** Flag indicating whether the cursor has been closed. */
+        private boolean closed;
+
+        /**
+         * Constructor.
+         * @param backEnds all back end objects that have been allocated for the cursor
+         * @param fragments back end fragments that have to be read in ascending time order
+         * @param fragmentMetaDatas metadata of the back end fragments that have to be read
+         * @param startTime start of the time span for which the values have to be retrieved
+         * @param endTime end of the time span for which the values have to be retrieved
+         */
+        public FragmentCursor ( final BackEnd[] backEnds, final List<BackEnd> fragments, final List<StorageChannelMetaData> fragmentMetaDatas, final long startTime, final long endTime )
+        {
+            this.backEnds = backEnds;
+            this.fragments = fragments;
+            this.fragmentMetaDatas = fragmentMetaDatas;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.index = 0;
+            this.cursor = null;
+            this.fragmentStarted = false;
+            this.placeholder = null;
+            this.closed = false;
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#hasNext()
+         */
+        public boolean hasNext ()
+        {
+            while ( !this.closed )
+            {
+                if ( this.placeholder != null )
+                {
+                    return true;
+                }
+                if ( this.index >= this.fragments.size () )
+                {
+                    return false;
+                }
+                try
+                {
+                    if ( this.cursor == null )
+                    {
+                        this.cursor = HsdbHelper.getLongValueCursor ( this.fragments.get ( this.index ), this.startTime, this.endTime );
+                        this.fragmentStarted = false;
+                    }
+                    if ( this.cursor.hasNext () )
+                    {
+                        return true;
+                    }
+                }
+                catch ( final Exception e )
+                {
+                    handleReadError ( e );
+                }
+                closeFragmentCursor ();
+            }
+            return false;
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#next()
+         */
+        public LongValueBatch next () throws Exception
+        {
+            if ( !hasNext () )
+            {
+                return new LongValueBatch ( 0 );
+            }
+            if ( this.placeholder != null )
+            {
+                final LongValueBatch result = this.placeholder;
+                this.placeholder = null;
+                return result;
+            }
+            try
+            {
+                final LongValueBatch result = this.cursor.next ();
+                this.fragmentStarted |= !result.isEmpty ();
+                return result;
+            }
+            catch ( final Exception e )
+            {
+                handleReadError ( e );
+                closeFragmentCursor ();
+                return next ();
+            }
+        }
+
+        /**
+         * This method handles a read error of the back end fragment that is currently read.
+         * The back end fragment is marked as corrupt.
+         * If no values of the back end fragment have been returned yet, then an empty value will be returned instead of the values.
+         * @param e exception that occurred while reading
+         */
+        private void handleReadError ( final Exception e )
+        {
+            final StorageChannelMetaData metaData = this.fragmentMetaDatas.get ( this.index );
+            final String message = String.format ( "backend (%s): could not read from sub backend (startTime: %s; endTime: %s)", metaData, this.startTime, this.endTime );
+            if ( this.startTime < System.currentTimeMillis () - metaData.getProposedDataAge () )
+            {
+                logger.info ( message + " - backend is probably outdated", e );
+            }
+            else
+            {
+                logger.error ( message, e );
+            }
+            BackEndMultiplexer.this.backEndManager.markBackEndAsCorrupt ( metaData.getDetailLevelId (), metaData.getCalculationMethod (), metaData.getStartTime () );
+            if ( !this.fragmentStarted )
+            {
+                this.placeholder = new LongValueBatch ( 1 );
+                this.placeholder.add ( metaData.getStartTime (), 0, 0, 0, 0 );
+            }
+        }
+
+        /**
+         * This method closes the cursor of the back end fragment that is currently read and proceeds with the next back end fragment.
+         */
+        private void closeFragmentCursor ()
+        {
+            if ( this.cursor != null )
+            {
+                this.cursor.close ();
+                this.cursor = null;
+            }
+            this.index++;
+        }
+
+        /**
+         * @see org.openscada.hsdb.ValueCursor#close()
+         */
+        public void close ()
+        {
+            if ( this.closed )
+            {
+                return;
+            }
+            this.closed = true;
+            this.placeholder = null;
+            if ( this.cursor != null )
+            {
+                this.cursor.close ();
+                this.cursor = null;
+            }
+            for ( final BackEnd backEnd : this.backEnds )
+            {
+                try
+                {
+                    BackEndMultiplexer.this.backEndManager.deinitializeBackEnd ( BackEndMultiplexer.this, backEnd );
+                }
+                catch ( final Exception e )
+                {
+                    logger.warn ( "could not deinitialize back end", e );
+                }
+            }
+        }
+    }
+
+    /**
+     * This method creates a task that reads the values of the specified time span from the passed back end object.
+     * @param backEnd back end object from which the values have to be read
+     * @param startTime start of the time span that has to be read
+     * @param endTime end of the time span that has to be read
+     * @return created task
+     */
+    private static FutureTask<LongValueBatch> createReadTask ( final BackEnd backEnd, final long startTime, final long endTime )
+    {
+        return new FutureTask<LongValueBatch> ( new Callable<LongValueBatch> () {
+            public LongValueBatch call () throws Exception
+            {
+                return HsdbHelper.getLongValueBatch ( backEnd, startTime, endTime );
+            }
+        } );
+    }
+
+    /**
+     * This method starts the passed read task using the read executor of the back end manager.
+     * If the back end manager provides no executor, then the task is executed within the current thread.
+     * @param task task that has to be started
+     */
+    private void startReadTask ( final FutureTask<LongValueBatch> task )
+    {
+        final Executor readExecutor = this.backEndManager.getReadExecutor ();
+        if ( readExecutor == null )
+        {
+            task.run ();
+        }
+        else
+        {
+            readExecutor.execute ( task );
+        }
+    }
 
-        // return final result
-        return longValues.toArray ( EMPTY_LONGVALUE_ARRAY );
+    /**
+     * This method waits for the passed read operation to complete and returns its result.
+     * @param future object providing access to the read values
+     * @return read values
+     * @throws Exception if the values could not be read
+     */
+    private static LongValueBatch getReadResult ( final Future<LongValueBatch> future ) throws Exception
+    {
+        try
+        {
+            return future.get ();
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause ();
+            if ( cause instanceof Exception )
+            {
+                throw (Exception)cause;
+            }
+            throw e;
+        }
     }
 
     /**
@@ -0,0 +1,351 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.internal;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openscada.hsdb.backend.BackEnd;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class provides a bounded cache of initialized back end objects that are used for reading data.
+ * The cached objects are shared between all users and are reference counted.
+ * Objects that are no longer referenced stay initialized until they are evicted in least recently used order.
+ * @param <B> type of BackEnd implementation that will be cached by this class
+ */
+public class BackEndCache<B extends BackEnd>
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( BackEndCache.class );
+
+    /**
+     * This class holds a single cached back end object and its reference count.
+     * @param <B> type of the cached back end object
+     */
+    private static class Entry<B>
+    {
+        /** Cached back end object. */
+        private final B backEnd;
+
+        /** Count of users that currently have acquired the back end object. */
+        private int referenceCount;
+
+        /** Flag indicating whether the back end object has been removed from the cache while it was still referenced. */
+        private boolean invalid;
+
+        /**
+         * Constructor.
+         * @param backEnd cached back end object
+         */
+        public Entry ( final B backEnd )
+        {
+            this.backEnd = backEnd;
+            this.referenceCount = 0;
+            this.invalid = false;
+        }
+    }
+
+    /** Maximum count of back end objects that will be kept initialized. */
+    private final int maximumSize;
+
+    /** Cached entries mapped by key in least recently used order. */
+    private final LinkedHashMap<String, Entry<B>> entries;
+
+    /** Entries that are currently referenced mapped by their back end object. */
+    private final Map<B, Entry<B>> referencedEntries;
+
+    /** Count of requests that could be served from the cache. */
+    private long hitCount;
+
+    /** Count of requests that could not be served from the cache. */
+    private long missCount;
+
+    /** Count of back end objects that have been removed from the cache due to its size limit. */
+    private long evictionCount;
+
+    /**
+     * Constructor.
+     * @param maximumSize maximum count of back end objects that will be kept initialized. If 0 is passed, then no back end objects are cached
+     */
+    public BackEndCache ( final int maximumSize )
+    {
+        this.maximumSize = Math.max ( 0, maximumSize );
+        this.entries = new LinkedHashMap<String, Entry<B>> ( 16, 0.75f, true );
+        this.referencedEntries = new IdentityHashMap<B, Entry<B>> ();
+        this.hitCount = 0;
+        this.missCount = 0;
+        this.evictionCount = 0;
+    }
+
+    /**
+     * This method returns the cached back end object with the specified key and increments its reference count.
+     * Each successful call has to be followed by exactly one call of the method {@link #release(BackEnd)}.
+     * @param key key of the requested back end object
+     * @return cached back end object or null if no back end object is cached for the passed key
+     */
+    public synchronized B acquire ( final String key )
+    {
+        final Entry<B> entry = this.entries.get ( key );
+        if ( entry == null )
+        {
+            this.missCount++;
+            return null;
+        }
+        this.hitCount++;
+        entry.referenceCount++;
+        this.referencedEntries.put ( entry.backEnd, entry );
+        return entry.backEnd;
+    }
+
+    /**
+     * This method adds the passed initialized back end object to the cache and acquires it.
+     * If another object has been added for the same key in the meantime, then that object is acquired and returned instead.
+     * In that case the caller is responsible for deinitializing the passed object.
+     * @param key key of the back end object
+     * @param backEnd initialized back end object that has to be added
+     * @return back end object that has been acquired
+     */
+    public B add ( final String key, final B backEnd )
+    {
+        final B result;
+        final List<B> evictedBackEnds;
+        synchronized ( this )
+        {
+            if ( this.maximumSize == 0 )
+            {
+                return backEnd;
+            }
+            Entry<B> entry = this.entries.get ( key );
+            if ( entry == null )
+            {
+                entry = new Entry<B> ( backEnd );
+                this.entries.put ( key, entry );
+            }
+            entry.referenceCount++;
+            this.referencedEntries.put ( entry.backEnd, entry );
+            result = entry.backEnd;
+            evictedBackEnds = evict ();
+        }
+        deinitialize ( evictedBackEnds );
+        return result;
+    }
+
+    /**
+     * This method releases the passed back end object that has previously been acquired from the cache.
+     * @param backEnd back end object that has to be released
+     * @return true, if the passed object is managed by the cache, otherwise false
+     */
+    public boolean release ( final BackEnd backEnd )
+    {
+        final List<B> evictedBackEnds;
+        synchronized ( this )
+        {
+            final Entry<B> entry = this.referencedEntries.get ( backEnd );
+            if ( entry == null )
+            {
+                return false;
+            }
+            entry.referenceCount--;
+            if ( entry.referenceCount > 0 )
+            {
+                return true;
+            }
+            this.referencedEntries.remove ( backEnd );
+            if ( entry.invalid )
+            {
+                evictedBackEnds = new ArrayList<B> ( 1 );
+                evictedBackEnds.add ( entry.backEnd );
+            }
+            else
+            {
+                evictedBackEnds = evict ();
+            }
+        }
+        deinitialize ( evictedBackEnds );
+        return true;
+    }
+
+    /**
+     * This method removes the back end object with the specified key from the cache.
+     * If the object is still referenced, then it will be deinitialized as soon as it is released.
+     * @param key key of the back end object that has to be removed
+     */
+    public void invalidate ( final String key )
+    {
+        B backEnd = null;
+        synchronized ( this )
+        {
+            final Entry<B> entry = this.entries.remove ( key );
+            if ( entry == null )
+            {
+                return;
+            }
+            if ( entry.referenceCount > 0 )
+            {
+                entry.invalid = true;
+            }
+            else
+            {
+                backEnd = entry.backEnd;
+            }
+        }
+        if ( backEnd != null )
+        {
+            deinitialize ( backEnd );
+        }
+    }
+
+    /**
+     * This method removes all back end objects from the cache.
+     * Objects that are still referenced will be deinitialized as soon as they are released.
+     */
+    public void clear ()
+    {
+        final List<B> backEnds = new ArrayList<B> ();
+        synchronized ( this )
+        {
+            for ( final Entry<B> entry : this.entries.values () )
+            {
+                if ( entry.referenceCount > 0 )
+                {
+                    entry.invalid = true;
+                }
+                else
+                {
+                    backEnds.add ( entry.backEnd );
+                }
+            }
+            this.entries.clear ();
+        }
+        deinitialize ( backEnds );
+    }
+
+    /**
+     * This method removes unreferenced entries in least recently used order until the size limit of the cache is satisfied.
+     * The method has to be called while holding the lock of the instance.
+     * @return back end objects that have been removed and that have to be deinitialized
+     */
+    private List<B> evict ()
+    {
+        final List<B> result = new ArrayList<B> ();
+        int size = this.entries.size ();
+        final Iterator<Entry<B>> iterator = this.entries.values ().iterator ();
+        while ( size > this.maximumSize && iterator.hasNext () )
+        {
+            final Entry<B> entry = iterator.next ();
+            if ( entry.referenceCount == 0 )
+            {
+                iterator.remove ();
+                result.add ( entry.backEnd );
+                this.evictionCount++;
+                size--;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method deinitializes the passed back end objects.
+     * @param backEnds back end objects that have to be deinitialized
+     */
+    private void deinitialize ( final List<B> backEnds )
+    {
+        for ( final B backEnd : backEnds )
+        {
+            deinitialize ( backEnd );
+        }
+    }
+
+    /**
+     * This method deinitializes the passed back end object.
+     * @param backEnd back end object that has to be deinitialized
+     */
+    private void deinitialize ( final B backEnd )
+    {
+        try
+        {
+            backEnd.deinitialize ();
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "could not deinitialize cached back end", e );
+        }
+    }
+
+    /**
+     * This method returns the maximum count of back end objects that will be kept initialized.
+     * @return maximum count of back end objects that will be kept initialized
+     */
+    public int getMaximumSize ()
+    {
+        return this.maximumSize;
+    }
+
+    /**
+     * This method returns the count of back end objects that are currently cached.
+     * @return count of back end objects that are currently cached
+     */
+    public synchronized int getSize ()
+    {
+        return this.entries.size ();
+    }
+
+    /**
+     * This method returns the count of requests that could be served from the cache.
+     * @return count of requests that could be served from the cache
+     */
+    public synchronized long getHitCount ()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * This method returns the count of requests that could not be served from the cache.
+     * @return count of requests that could not be served from the cache
+     */
+    public synchronized long getMissCount ()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * This method returns the count of back end objects that have been removed from the cache due to its size limit.
+     * @return count of back end objects that have been removed from the cache due to its size limit
+     */
+    public synchronized long getEvictionCount ()
+    {
+        return this.evictionCount;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString ()
+    {
+        return String.format ( "size: %s/%s; hits: %s; misses: %s; evictions: %s", this.entries.size (), this.maximumSize, this.hitCount, this.missCount, this.evictionCount );
+    }
+}
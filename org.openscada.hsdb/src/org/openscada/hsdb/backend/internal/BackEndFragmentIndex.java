@@ -0,0 +1,172 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.openscada.hsdb.backend.BackEndFragmentInformation;
+
+/**
+ * This class provides a sorted index of the back end fragments of one detail level and calculation method.
+ * The fragments are ordered by their start time with the newest fragment first, so that all fragments starting before a given time can be located in logarithmic time.
+ * Fragments with identical start time are ordered by their name.
+ * The class is not thread safe. Access has to be synchronized by the caller.
+ */
+public class BackEndFragmentIndex
+{
+    /** Comparator that orders the fragments by descending start time and ascending name. */
+    private final static Comparator<BackEndFragmentInformation> NEWEST_FIRST_COMPARATOR = new Comparator<BackEndFragmentInformation> () {
+        public int compare ( final BackEndFragmentInformation o1, final BackEndFragmentInformation o2 )
+        {
+            final int result = o1.compareTo ( o2 );
+            if ( result != 0 )
+            {
+                return result;
+            }
+            final String name1 = o1.getFragmentName ();
+            final String name2 = o2.getFragmentName ();
+            if ( name1 == null )
+            {
+                return name2 == null ? 0 : -1;
+            }
+            return name2 == null ? 1 : name1.compareTo ( name2 );
+        }
+    };
+
+    /** Fragments ordered by descending start time. */
+    private final TreeSet<BackEndFragmentInformation> fragments;
+
+    /** Fragments mapped by their name. */
+    private final Map<String, BackEndFragmentInformation> fragmentsByName;
+
+    /**
+     * Constructor.
+     */
+    public BackEndFragmentIndex ()
+    {
+        this.fragments = new TreeSet<BackEndFragmentInformation> ( NEWEST_FIRST_COMPARATOR );
+        this.fragmentsByName = new HashMap<String, BackEndFragmentInformation> ();
+    }
+
+    /**
+     * This method returns the fragment with the specified name.
+     * @param fragmentName name of the fragment
+     * @return fragment with the specified name or null if no such fragment exists
+     */
+    public BackEndFragmentInformation get ( final String fragmentName )
+    {
+        return this.fragmentsByName.get ( fragmentName );
+    }
+
+    /**
+     * This method adds the passed fragment to the index.
+     * The start time and name of the fragment must not be modified while the fragment is part of the index.
+     * @param backEndFragmentInformation fragment that has to be added
+     * @return true, if the fragment has been added, false if a fragment with the same name already exists
+     */
+    public boolean add ( final BackEndFragmentInformation backEndFragmentInformation )
+    {
+        final String fragmentName = backEndFragmentInformation.getFragmentName ();
+        if ( this.fragmentsByName.containsKey ( fragmentName ) )
+        {
+            return false;
+        }
+        this.fragmentsByName.put ( fragmentName, backEndFragmentInformation );
+        this.fragments.add ( backEndFragmentInformation );
+        return true;
+    }
+
+    /**
+     * This method removes the passed fragments from the index.
+     * @param backEndFragmentInformations fragments that have to be removed
+     */
+    public void removeAll ( final Collection<BackEndFragmentInformation> backEndFragmentInformations )
+    {
+        for ( final BackEndFragmentInformation backEndFragmentInformation : backEndFragmentInformations )
+        {
+            if ( this.fragmentsByName.get ( backEndFragmentInformation.getFragmentName () ) == backEndFragmentInformation )
+            {
+                this.fragmentsByName.remove ( backEndFragmentInformation.getFragmentName () );
+                this.fragments.remove ( backEndFragmentInformation );
+            }
+        }
+    }
+
+    /**
+     * This method returns all fragments of the index with the newest fragment first.
+     * @return all fragments of the index
+     */
+    public Collection<BackEndFragmentInformation> getAll ()
+    {
+        return this.fragments;
+    }
+
+    /**
+     * This method returns all fragments that start before the specified time with the newest fragment first.
+     * The returned collection is a view of the index and must not be used after the index has been modified.
+     * @param time time before which the fragments have to start
+     * @return fragments that start before the specified time
+     */
+    public Collection<BackEndFragmentInformation> getStartingBefore ( final long time )
+    {
+        if ( time == Long.MIN_VALUE || this.fragments.isEmpty () )
+        {
+            return new ArrayList<BackEndFragmentInformation> ( 0 );
+        }
+        return this.fragments.tailSet ( createProbe ( time - 1 ), true );
+    }
+
+    /**
+     * This method returns the newest fragment that starts at or before the specified time.
+     * @param time time at or before which the fragment has to start
+     * @return newest fragment that starts at or before the specified time or null if no such fragment exists
+     */
+    public BackEndFragmentInformation getLatestStartingAtOrBefore ( final long time )
+    {
+        return this.fragments.ceiling ( createProbe ( time ) );
+    }
+
+    /**
+     * This method returns the count of fragments in the index.
+     * @return count of fragments in the index
+     */
+    public int size ()
+    {
+        return this.fragments.size ();
+    }
+
+    /**
+     * This method creates an object that is ordered before all fragments of the index that start at the specified time.
+     * @param startTime start time of the object
+     * @return created object
+     */
+    private static BackEndFragmentInformation createProbe ( final long startTime )
+    {
+        final BackEndFragmentInformation probe = new BackEndFragmentInformation ();
+        probe.setStartTime ( startTime );
+        return probe;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.backend.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.openscada.hsdb.backend.AbortNotificator;
+import org.openscada.hsdb.backend.BackEndFragmentInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class repairs corrupt back end fragments in parallel while respecting the dependencies between them.
+ * A back end fragment depends on all corrupt back end fragments of the next lower detail level with the same calculation method and an overlapping time span, since these provide its input data.
+ * Each back end fragment is repaired as soon as all back end fragments it depends on have been processed.
+ * After each back end fragment that is not urgently required the processing thread pauses for the configured time, so that other tasks are not starved.
+ */
+public class RepairScheduler
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( RepairScheduler.class );
+
+    /**
+     * This interface has to be implemented by the action that repairs a single back end fragment.
+     */
+    public static interface RepairAction
+    {
+        /**
+         * This method repairs the passed back end fragment.
+         * @param backEndInformation information of the back end fragment that has to be repaired
+         * @throws Exception in case of problems
+         */
+        public abstract void repair ( final BackEndFragmentInformation backEndInformation ) throws Exception;
+    }
+
+    /**
+     * This class holds the state of a single back end fragment that has to be repaired.
+     */
+    private class RepairUnit implements Runnable
+    {
+        /** Information of the back end fragment that has to be repaired. */
+        private final BackEndFragmentInformation backEndInformation;
+
+        /** Action that repairs the back end fragment. */
+        private final RepairAction repairAction;
+
+        /** Flag indicating whether the caller waits until the back end fragment has been repaired. */
+        private final boolean urgent;
+
+        /** Repair units that depend on this repair unit. */
+        private final List<RepairUnit> dependentUnits;
+
+        /** Count of repair units that have to be processed before this repair unit can be processed. */
+        private int pendingDependencyCount;
+
+        /**
+         * Constructor.
+         * @param backEndInformation information of the back end fragment that has to be repaired
+         * @param repairAction action that repairs the back end fragment
+         * @param urgent flag indicating whether the caller waits until the back end fragment has been repaired
+         */
+        public RepairUnit ( final BackEndFragmentInformation backEndInformation, final RepairAction repairAction, final boolean urgent )
+        {
+            this.backEndInformation = backEndInformation;
+            this.repairAction = repairAction;
+            this.urgent = urgent;
+            this.dependentUnits = new ArrayList<RepairUnit> ();
+            this.pendingDependencyCount = 0;
+        }
+
+        /**
+         * This method returns whether this repair unit requires the data of the passed repair unit as input.
+         * @param unit repair unit that has to be checked
+         * @return true, if this repair unit depends on the passed repair unit, otherwise false
+         */
+        public boolean dependsOn ( final RepairUnit unit )
+        {
+            final BackEndFragmentInformation other = unit.backEndInformation;
+            return other.getDetailLevelId () == this.backEndInformation.getDetailLevelId () - 1 && other.getCalculationMethod () == this.backEndInformation.getCalculationMethod () && other.getStartTime () < this.backEndInformation.getEndTime () && this.backEndInformation.getStartTime () < other.getEndTime ();
+        }
+
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        public void run ()
+        {
+            boolean success = false;
+            boolean skipped = true;
+            try
+            {
+                if ( RepairScheduler.this.abortNotificator == null || !RepairScheduler.this.abortNotificator.getAbort () )
+                {
+                    skipped = false;
+                    logger.info ( String.format ( "processing [%s]...", this.backEndInformation.getFragmentName () ) );
+                    this.repairAction.repair ( this.backEndInformation );
+                    success = true;
+                }
+            }
+            catch ( final Exception e )
+            {
+                logger.error ( String.format ( "problem while repairing corrupt back end fragment (%s) for configuration '%s'", this.backEndInformation.getFragmentName (), RepairScheduler.this.configurationId ), e );
+            }
+            finally
+            {
+                completed ( this, success, skipped );
+            }
+            if ( !skipped && !this.urgent && RepairScheduler.this.pause > 0 )
+            {
+                try
+                {
+                    Thread.sleep ( RepairScheduler.this.pause );
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread ().interrupt ();
+                }
+            }
+        }
+    }
+
+    /** Id of the configuration whose back end fragments are repaired. */
+    private final String configurationId;
+
+    /** Executor that is used to repair the back end fragments. */
+    private final Executor executor;
+
+    /** Time in milliseconds that a processing thread pauses after a back end fragment has been repaired. */
+    private final long pause;
+
+    /** Object that is used to check whether the repair should be aborted. */
+    private final AbortNotificator abortNotificator;
+
+    /** Repair units that have been added. */
+    private final List<RepairUnit> units;
+
+    /** Count of urgent repair units that have not been processed yet. */
+    private int pendingUrgentCount;
+
+    /** Count of repair units that have been processed. */
+    private int processedCount;
+
+    /** Count of repair units whose back end fragment could not be repaired. */
+    private int failedCount;
+
+    /** Count of repair units that have been skipped, since the repair has been aborted. */
+    private int skippedCount;
+
+    /** Time when the repair has been started. */
+    private long startTime;
+
+    /**
+     * Constructor.
+     * @param configurationId id of the configuration whose back end fragments are repaired
+     * @param executor executor that is used to repair the back end fragments
+     * @param pause time in milliseconds that a processing thread pauses after a back end fragment has been repaired
+     * @param abortNotificator object that is used to check whether the repair should be aborted or null if the repair cannot be aborted
+     */
+    public RepairScheduler ( final String configurationId, final Executor executor, final long pause, final AbortNotificator abortNotificator )
+    {
+        this.configurationId = configurationId;
+        this.executor = executor;
+        this.pause = Math.max ( 0, pause );
+        this.abortNotificator = abortNotificator;
+        this.units = new ArrayList<RepairUnit> ();
+        this.pendingUrgentCount = 0;
+        this.processedCount = 0;
+        this.failedCount = 0;
+        this.skippedCount = 0;
+    }
+
+    /**
+     * This method adds a back end fragment that has to be repaired.
+     * All back end fragments have to be added before the repair is started.
+     * @param backEndInformation information of the back end fragment that has to be repaired
+     * @param repairAction action that repairs the back end fragment
+     * @param urgent flag indicating whether the method {@link #awaitUrgentRepairs()} waits until the back end fragment has been repaired
+     */
+    public synchronized void add ( final BackEndFragmentInformation backEndInformation, final RepairAction repairAction, final boolean urgent )
+    {
+        this.units.add ( new RepairUnit ( backEndInformation, repairAction, urgent ) );
+        if ( urgent )
+        {
+            this.pendingUrgentCount++;
+        }
+    }
+
+    /**
+     * This method resolves the dependencies between the added back end fragments and starts the repair of all back end fragments that do not depend on others.
+     */
+    public void start ()
+    {
+        final List<RepairUnit> readyUnits = new ArrayList<RepairUnit> ();
+        synchronized ( this )
+        {
+            this.startTime = System.currentTimeMillis ();
+            for ( final RepairUnit unit : this.units )
+            {
+                for ( final RepairUnit other : this.units )
+                {
+                    if ( unit.dependsOn ( other ) )
+                    {
+                        other.dependentUnits.add ( unit );
+                        unit.pendingDependencyCount++;
+                    }
+                }
+            }
+            for ( final RepairUnit unit : this.units )
+            {
+                if ( unit.pendingDependencyCount == 0 )
+                {
+                    readyUnits.add ( unit );
+                }
+            }
+        }
+        submit ( readyUnits );
+    }
+
+    /**
+     * This method blocks until all urgent back end fragments have been processed.
+     * @throws InterruptedException if the thread has been interrupted while waiting
+     */
+    public synchronized void awaitUrgentRepairs () throws InterruptedException
+    {
+        while ( this.pendingUrgentCount > 0 )
+        {
+            wait ();
+        }
+    }
+
+    /**
+     * This method blocks until all back end fragments have been processed.
+     * @throws InterruptedException if the thread has been interrupted while waiting
+     */
+    public synchronized void awaitRepairs () throws InterruptedException
+    {
+        while ( this.processedCount < this.units.size () )
+        {
+            wait ();
+        }
+    }
+
+    /**
+     * This method submits the passed repair units to the executor.
+     * @param readyUnits repair units whose dependencies have all been processed
+     */
+    private void submit ( final List<RepairUnit> readyUnits )
+    {
+        for ( final RepairUnit unit : readyUnits )
+        {
+            this.executor.execute ( unit );
+        }
+    }
+
+    /**
+     * This method updates the progress after the passed repair unit has been processed and starts the repair of all dependent units that became ready.
+     * @param unit repair unit that has been processed
+     * @param success flag indicating whether the back end fragment has been repaired successfully
+     * @param skipped flag indicating whether the repair has been skipped, since it has been aborted
+     */
+    private void completed ( final RepairUnit unit, final boolean success, final boolean skipped )
+    {
+        final List<RepairUnit> readyUnits = new ArrayList<RepairUnit> ();
+        synchronized ( this )
+        {
+            this.processedCount++;
+            if ( skipped )
+            {
+                this.skippedCount++;
+            }
+            else if ( !success )
+            {
+                this.failedCount++;
+            }
+            if ( unit.urgent )
+            {
+                this.pendingUrgentCount--;
+            }
+            for ( final RepairUnit dependentUnit : unit.dependentUnits )
+            {
+                dependentUnit.pendingDependencyCount--;
+                if ( dependentUnit.pendingDependencyCount == 0 )
+                {
+                    readyUnits.add ( dependentUnit );
+                }
+            }
+            if ( !skipped )
+            {
+                final long elapsedTime = System.currentTimeMillis () - this.startTime;
+                final int total = this.units.size ();
+                final long remainingTime = elapsedTime * ( total - this.processedCount ) / this.processedCount;
+                logger.info ( String.format ( "repair progress of configuration '%s': [%s/%s] corrupt back end fragments processed, [%s] failed, elapsed: %sms, estimated remaining: %sms", this.configurationId, this.processedCount, total, this.failedCount, elapsedTime, remainingTime ) );
+            }
+            notifyAll ();
+        }
+        submit ( readyUnits );
+    }
+
+    /**
+     * This method returns the count of back end fragments that have been added.
+     * @return count of back end fragments that have been added
+     */
+    public synchronized int getTotalCount ()
+    {
+        return this.units.size ();
+    }
+
+    /**
+     * This method returns the count of back end fragments that have been processed.
+     * @return count of back end fragments that have been processed
+     */
+    public synchronized int getProcessedCount ()
+    {
+        return this.processedCount;
+    }
+
+    /**
+     * This method returns the count of back end fragments that could not be repaired.
+     * @return count of back end fragments that could not be repaired
+     */
+    public synchronized int getFailedCount ()
+    {
+        return this.failedCount;
+    }
+
+    /**
+     * This method returns the count of back end fragments that have been skipped, since the repair has been aborted.
+     * @return count of back end fragments that have been skipped
+     */
+    public synchronized int getSkippedCount ()
+    {
+        return this.skippedCount;
+    }
+}
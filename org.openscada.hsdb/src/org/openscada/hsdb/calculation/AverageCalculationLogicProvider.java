@@ -20,8 +20,6 @@
 package org.openscada.hsdb.calculation;
 
 import org.openscada.hsdb.datatypes.DataType;
-import org.openscada.hsdb.datatypes.DoubleValue;
-import org.openscada.hsdb.datatypes.LongValue;
 
 /**
  * This class implements the CalculationLogicProvider interface for the calculation of average values.
@@ -51,100 +49,144 @@ public class AverageCalculationLogicProvider extends CalculationLogicProviderBas
     /**
      * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
      */
-    protected long calculateLong ( final LongValue[] values )
+    protected long calculateLong ( final CalculationKernel kernel )
     {
-        if ( values.length == 1 )
-        {
-            return values[0].getValue ();
-        }
-        double timespan = 0;
-        double avgValue = 0;
-        LongValue lastValidValue = null;
-        for ( final LongValue value : values )
-        {
-            if ( lastValidValue != null )
-            {
-                final long weight = value.getTime () - lastValidValue.getTime ();
-                avgValue += lastValidValue.getValue () * weight;
-                timespan += weight;
-            }
-            lastValidValue = value.getQualityIndicator () > 0 ? value : null;
-        }
-        return Math.round ( avgValue / timespan );
+        return kernel.getLongAverage ();
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
+     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
      */
-    protected long calculateLong ( final DoubleValue[] values )
+    protected double calculateDouble ( final CalculationKernel kernel )
     {
-        if ( values.length == 1 )
-        {
-            return Math.round ( values[0].getValue () );
-        }
-        double timespan = 0;
-        double avgValue = 0;
-        DoubleValue lastValidValue = null;
-        for ( final DoubleValue value : values )
-        {
-            if ( lastValidValue != null )
-            {
-                final long weight = value.getTime () - lastValidValue.getTime ();
-                avgValue += lastValidValue.getValue () * weight;
-                timespan += weight;
-            }
-            lastValidValue = value.getQualityIndicator () > 0 ? value : null;
-        }
-        return Math.round ( avgValue / timespan );
+        return kernel.getDoubleAverage ();
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#createAccumulator()
+     */
+    public CalculationAccumulator createAccumulator ()
+    {
+        return new AverageAccumulator ( getInputType (), getOutputType () );
+    }
+
+    /**
+     * This class calculates time weighted average values incrementally.
      */
-    protected double calculateDouble ( final LongValue[] values )
+    private static class AverageAccumulator extends CalculationAccumulatorBase
     {
-        if ( values.length == 1 )
+        /** Count of entries that have been processed for the current time span. */
+        private int count;
+
+        /** Value of the first entry of the current time span if the input data type is long. */
+        private long firstLongValue;
+
+        /** Value of the first entry of the current time span if the input data type is double. */
+        private double firstDoubleValue;
+
+        /** Flag indicating whether the previous entry has a quality greater than 0. */
+        private boolean previousValid;
+
+        /** Time of the previous entry. */
+        private long previousTime;
+
+        /** Value of the previous entry if the input data type is long. */
+        private long previousLongValue;
+
+        /** Value of the previous entry if the input data type is double. */
+        private double previousDoubleValue;
+
+        /** Time weighted sum of the valid values. */
+        private double weightedSum;
+
+        /** Sum of the time spans of the valid values. */
+        private double timespan;
+
+        /**
+         * Constructor.
+         * @param inputDataType data type of the input values
+         * @param outputDataType data type of the output values
+         */
+        public AverageAccumulator ( final DataType inputDataType, final DataType outputDataType )
         {
-            return values[0].getValue ();
+            super ( inputDataType, outputDataType );
         }
-        double timespan = 0;
-        double avgValue = 0;
-        LongValue lastValidValue = null;
-        for ( final LongValue value : values )
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#resetValues()
+         */
+        protected void resetValues ()
         {
-            if ( lastValidValue != null )
+            this.count = 0;
+            this.previousValid = false;
+            this.weightedSum = 0;
+            this.timespan = 0;
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addLongValue(long, boolean, long)
+         */
+        protected void addLongValue ( final long time, final boolean valid, final long value )
+        {
+            if ( this.count == 0 )
+            {
+                this.firstLongValue = value;
+            }
+            else if ( this.previousValid )
             {
-                final long weight = value.getTime () - lastValidValue.getTime ();
-                avgValue += lastValidValue.getValue () * weight;
-                timespan += weight;
+                final long weight = time - this.previousTime;
+                this.weightedSum += this.previousLongValue * weight;
+                this.timespan += weight;
             }
-            lastValidValue = value.getQualityIndicator () > 0 ? value : null;
+            this.count++;
+            this.previousValid = valid;
+            this.previousTime = time;
+            this.previousLongValue = value;
         }
-        return avgValue / timespan;
-    }
 
-    /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
-     */
-    protected double calculateDouble ( final DoubleValue[] values )
-    {
-        if ( values.length == 1 )
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addDoubleValue(long, boolean, double)
+         */
+        protected void addDoubleValue ( final long time, final boolean valid, final double value )
+        {
+            if ( this.count == 0 )
+            {
+                this.firstDoubleValue = value;
+            }
+            else if ( this.previousValid )
+            {
+                final long weight = time - this.previousTime;
+                this.weightedSum += this.previousDoubleValue * weight;
+                this.timespan += weight;
+            }
+            this.count++;
+            this.previousValid = valid;
+            this.previousTime = time;
+            this.previousDoubleValue = value;
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateLong()
+         */
+        protected long calculateLong ()
         {
-            return values[0].getValue ();
+            if ( this.count == 1 )
+            {
+                return isLongInput () ? this.firstLongValue : Math.round ( this.firstDoubleValue );
+            }
+            return Math.round ( this.weightedSum / this.timespan );
         }
-        double timespan = 0;
-        double avgValue = 0;
-        DoubleValue lastValidValue = null;
-        for ( final DoubleValue value : values )
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateDouble()
+         */
+        protected double calculateDouble ()
         {
-            if ( lastValidValue != null )
+            if ( this.count == 1 )
             {
-                final long weight = value.getTime () - lastValidValue.getTime ();
-                avgValue += lastValidValue.getValue () * weight;
-                timespan += weight;
+                return isLongInput () ? this.firstLongValue : this.firstDoubleValue;
             }
-            lastValidValue = value.getQualityIndicator () > 0 ? value : null;
+            return this.weightedSum / this.timespan;
         }
-        return avgValue / timespan;
     }
 }
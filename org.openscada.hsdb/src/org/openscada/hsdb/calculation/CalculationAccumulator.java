@@ -0,0 +1,65 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.calculation;
+
+import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+
+/**
+ * This interface provides methods for calculating the value of a time span incrementally while the values of the time span arrive.
+ * The calculated value is the same as the value that is calculated by {@link CalculationLogicProvider#generateValue(BaseValueBatch)} for the values of the complete time span.
+ * The last value that has been added is kept when a new time span is started, so that it can be used as value at the start of the new time span.
+ */
+public interface CalculationAccumulator
+{
+    /**
+     * This method discards the state of the current time span and starts a new time span.
+     * @param startTime start time of the new time span
+     */
+    public abstract void reset ( final long startTime );
+
+    /**
+     * This method returns the start time of the current time span.
+     * @return start time of the current time span
+     */
+    public abstract long getStartTime ();
+
+    /**
+     * This method returns the time of the last value that has been added.
+     * @return time of the last value that has been added or Long.MIN_VALUE if no value has been added yet
+     */
+    public abstract long getLastTime ();
+
+    /**
+     * This method adds the specified value to the current time span.
+     * Values have to be added in ascending order of time and must not be before the start time of the current time span.
+     * @param values batch containing the value that has to be added
+     * @param index index of the value within the batch
+     */
+    public abstract void add ( final BaseValueBatch values, final int index );
+
+    /**
+     * This method completes the current time span and calculates its value.
+     * The method {@link #reset(long)} has to be called before further values can be added.
+     * @param endTime end time of the current time span
+     * @return calculated value
+     */
+    public abstract BaseValue generateValue ( final long endTime );
+}
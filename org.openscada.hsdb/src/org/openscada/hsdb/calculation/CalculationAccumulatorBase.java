@@ -0,0 +1,312 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.calculation;
+
+import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.DataType;
+import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This class provides the base implementation for CalculationAccumulator implementations.
+ * It keeps the time weighted integrals of the quality and manual indicators, the count of base values and the validity of the current time span.
+ * The values of the time span are treated the same way as by method {@link org.openscada.hsdb.utils.HsdbHelper#extractSubBatch(BaseValueBatch, long, long, int)}:
+ * the last value before the time span is used as value at the start of the time span and the last value of the time span is repeated at its end.
+ * Implementation specific state has to be kept by the subclasses.
+ */
+public abstract class CalculationAccumulatorBase implements CalculationAccumulator
+{
+    /** Data type of the input values. */
+    private final DataType inputDataType;
+
+    /** Data type of the output values. */
+    private final DataType outputDataType;
+
+    /** Start time of the current time span. */
+    private long startTime;
+
+    /** Flag indicating whether the value at the start of the current time span has not yet been processed. */
+    private boolean startPending;
+
+    /** Count of entries that have been processed for the current time span. */
+    private int entryCount;
+
+    /** Time weighted integral of the quality indicator. */
+    private double qualityIntegral;
+
+    /** Time weighted integral of the manual indicator. */
+    private double manualIntegral;
+
+    /** Sum of the base value counts. */
+    private long baseValueCount;
+
+    /** Flag indicating whether at least one entry with a quality greater than 0 has been processed. */
+    private boolean validValue;
+
+    /** Quality indicator of the first entry of the current time span. */
+    private double firstQualityIndicator;
+
+    /** Manual indicator of the first entry of the current time span. */
+    private double firstManualIndicator;
+
+    /** Time of the last entry of the current time span. */
+    private long entryTime;
+
+    /** Quality indicator of the last entry of the current time span. */
+    private double entryQualityIndicator;
+
+    /** Manual indicator of the last entry of the current time span. */
+    private double entryManualIndicator;
+
+    /** Value of the last entry of the current time span if the input data type is long. */
+    private long entryLongValue;
+
+    /** Value of the last entry of the current time span if the input data type is double. */
+    private double entryDoubleValue;
+
+    /** Flag indicating whether a value has been added. */
+    private boolean lastValueAvailable;
+
+    /** Time of the last value that has been added. */
+    private long lastTime;
+
+    /** Quality indicator of the last value that has been added. */
+    private double lastQualityIndicator;
+
+    /** Manual indicator of the last value that has been added. */
+    private double lastManualIndicator;
+
+    /** Base value count of the last value that has been added. */
+    private long lastBaseValueCount;
+
+    /** Last value that has been added if the input data type is long. */
+    private long lastLongValue;
+
+    /** Last value that has been added if the input data type is double. */
+    private double lastDoubleValue;
+
+    /**
+     * Constructor.
+     * @param inputDataType data type of the input values
+     * @param outputDataType data type of the output values
+     */
+    public CalculationAccumulatorBase ( final DataType inputDataType, final DataType outputDataType )
+    {
+        this.inputDataType = inputDataType;
+        this.outputDataType = outputDataType;
+        this.lastValueAvailable = false;
+        this.lastTime = Long.MIN_VALUE;
+        reset ( Long.MIN_VALUE );
+    }
+
+    /**
+     * This method discards the implementation specific state of the current time span.
+     */
+    protected abstract void resetValues ();
+
+    /**
+     * This method processes the value of an entry of the current time span if the input data type is long.
+     * @param time time of the entry
+     * @param valid true, if the quality of the entry is greater than 0, otherwise false
+     * @param value value of the entry
+     */
+    protected abstract void addLongValue ( final long time, final boolean valid, final long value );
+
+    /**
+     * This method processes the value of an entry of the current time span if the input data type is double.
+     * @param time time of the entry
+     * @param valid true, if the quality of the entry is greater than 0, otherwise false
+     * @param value value of the entry
+     */
+    protected abstract void addDoubleValue ( final long time, final boolean valid, final double value );
+
+    /**
+     * This method calculates the value of the current time span if the output data type is long.
+     * @return calculated value
+     */
+    protected abstract long calculateLong ();
+
+    /**
+     * This method calculates the value of the current time span if the output data type is double.
+     * @return calculated value
+     */
+    protected abstract double calculateDouble ();
+
+    /**
+     * This method returns whether the input data type is long.
+     * @return true, if the input data type is long, otherwise false
+     */
+    protected boolean isLongInput ()
+    {
+        return this.inputDataType == DataType.LONG_VALUE;
+    }
+
+    /**
+     * @see org.openscada.hsdb.calculation.CalculationAccumulator#reset(long)
+     */
+    public void reset ( final long startTime )
+    {
+        this.startTime = startTime;
+        this.startPending = true;
+        this.entryCount = 0;
+        this.qualityIntegral = 0;
+        this.manualIntegral = 0;
+        this.baseValueCount = 0;
+        this.validValue = false;
+        resetValues ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.calculation.CalculationAccumulator#getStartTime()
+     */
+    public long getStartTime ()
+    {
+        return this.startTime;
+    }
+
+    /**
+     * @see org.openscada.hsdb.calculation.CalculationAccumulator#getLastTime()
+     */
+    public long getLastTime ()
+    {
+        return this.lastTime;
+    }
+
+    /**
+     * @see org.openscada.hsdb.calculation.CalculationAccumulator#add(BaseValueBatch, int)
+     */
+    public void add ( final BaseValueBatch values, final int index )
+    {
+        final long time = values.getTime ( index );
+        if ( this.startPending && time != this.startTime )
+        {
+            addStartEntry ();
+        }
+        this.startPending = false;
+        this.lastValueAvailable = true;
+        this.lastTime = time;
+        this.lastQualityIndicator = values.getQualityIndicator ( index );
+        this.lastManualIndicator = values.getManualIndicator ( index );
+        this.lastBaseValueCount = values.getBaseValueCount ( index );
+        this.lastLongValue = values instanceof LongValueBatch ? ( (LongValueBatch)values ).getValue ( index ) : 0;
+        this.lastDoubleValue = values instanceof DoubleValueBatch ? ( (DoubleValueBatch)values ).getValue ( index ) : 0;
+        addEntry ( time, this.lastQualityIndicator, this.lastManualIndicator, this.lastBaseValueCount, this.lastLongValue, this.lastDoubleValue );
+    }
+
+    /**
+     * @see org.openscada.hsdb.calculation.CalculationAccumulator#generateValue(long)
+     */
+    public BaseValue generateValue ( final long endTime )
+    {
+        // complete time span
+        if ( this.startPending )
+        {
+            addStartEntry ();
+            this.startPending = false;
+        }
+        if ( this.entryTime != endTime )
+        {
+            addEntry ( endTime, this.entryQualityIndicator, this.entryManualIndicator, 0, this.entryLongValue, this.entryDoubleValue );
+        }
+
+        // calculate base values
+        double quality;
+        double manual;
+        if ( this.entryCount == 1 )
+        {
+            quality = this.firstQualityIndicator;
+            manual = this.firstManualIndicator;
+        }
+        else
+        {
+            final long timeSpanSize = this.entryTime - this.startTime;
+            quality = this.qualityIntegral / timeSpanSize;
+            manual = this.manualIntegral / timeSpanSize;
+        }
+        quality = Math.min ( quality, 1.0 );
+        manual = Math.min ( manual, 1.0 );
+
+        // process values
+        if ( this.outputDataType == DataType.LONG_VALUE )
+        {
+            return new LongValue ( this.startTime, quality, manual, this.baseValueCount, this.validValue ? calculateLong () : 0 );
+        }
+        return new DoubleValue ( this.startTime, quality, manual, this.baseValueCount, this.validValue ? calculateDouble () : 0 );
+    }
+
+    /**
+     * This method processes the entry at the start of the current time span.
+     * The last value that has been added before is used if available. Otherwise an empty entry is processed.
+     */
+    private void addStartEntry ()
+    {
+        if ( this.lastValueAvailable )
+        {
+            addEntry ( this.startTime, this.lastQualityIndicator, this.lastManualIndicator, this.lastBaseValueCount, this.lastLongValue, this.lastDoubleValue );
+        }
+        else
+        {
+            addEntry ( this.startTime, 0, 0, 0, 0, 0 );
+        }
+    }
+
+    /**
+     * This method processes an entry of the current time span.
+     * @param time time of the entry
+     * @param qualityIndicator quality indicator of the entry
+     * @param manualIndicator manual indicator of the entry
+     * @param baseValueCount base value count of the entry
+     * @param longValue value of the entry if the input data type is long
+     * @param doubleValue value of the entry if the input data type is double
+     */
+    private void addEntry ( final long time, final double qualityIndicator, final double manualIndicator, final long baseValueCount, final long longValue, final double doubleValue )
+    {
+        if ( this.entryCount == 0 )
+        {
+            this.firstQualityIndicator = qualityIndicator;
+            this.firstManualIndicator = manualIndicator;
+        }
+        else
+        {
+            final long timeSpan = time - this.entryTime;
+            this.qualityIntegral += this.entryQualityIndicator * timeSpan;
+            this.manualIntegral += this.entryManualIndicator * timeSpan;
+        }
+        this.entryCount++;
+        this.baseValueCount += baseValueCount;
+        this.validValue |= qualityIndicator > 0;
+        this.entryTime = time;
+        this.entryQualityIndicator = qualityIndicator;
+        this.entryManualIndicator = manualIndicator;
+        this.entryLongValue = longValue;
+        this.entryDoubleValue = doubleValue;
+        if ( isLongInput () )
+        {
+            addLongValue ( time, qualityIndicator > 0, longValue );
+        }
+        else
+        {
+            addDoubleValue ( time, qualityIndicator > 0, doubleValue );
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.calculation;
+
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
+import org.openscada.hsdb.datatypes.LongValueBatch;
+
+/**
+ * This class calculates the quality, the manual indicator, the base value count and all supported aggregates of a batch of values in a single pass.
+ * The calculation works directly on the primitive arrays of the batch and therefore neither creates objects nor performs virtual calls per value.
+ * Views of batches are processed including their virtual entries without copying the values.
+ * The semantics of the results are identical to the calculations that have been performed separately by the calculation logic providers before.
+ */
+public final class CalculationKernel
+{
+    /** Count of values that have been processed. */
+    private int size;
+
+    /** Flag indicating whether the processed values have the data type long. */
+    private boolean longInput;
+
+    /** Time weighted quality indicator of the processed values. */
+    private double quality;
+
+    /** Time weighted manual indicator of the processed values. */
+    private double manual;
+
+    /** Sum of the base value counts of the processed values. */
+    private long baseValueCount;
+
+    /** Flag indicating whether at least one processed value has a quality greater than 0. */
+    private boolean validValue;
+
+    /** First processed value if the processed values have the data type long. */
+    private long firstLongValue;
+
+    /** First processed value if the processed values have the data type double. */
+    private double firstDoubleValue;
+
+    /** Time weighted sum of the valid values. */
+    private double weightedSum;
+
+    /** Sum of the time spans of the valid values. */
+    private double weightedTimeSpan;
+
+    /** Minimum of the valid values if the processed values have the data type long. */
+    private long longMinimum;
+
+    /** Maximum of the valid values if the processed values have the data type long. */
+    private long longMaximum;
+
+    /** Minimum of the valid values if the processed values have the data type double. */
+    private double doubleMinimum;
+
+    /** Maximum of the valid values if the processed values have the data type double. */
+    private double doubleMaximum;
+
+    /**
+     * This method processes all values of the passed batch.
+     * @param values batch with at least one value
+     */
+    public void calculate ( final BaseValueBatch values )
+    {
+        calculate ( new BaseValueBatchRange ( values ) );
+    }
+
+    /**
+     * This method processes all entries of the passed view including its virtual entries.
+     * @param range view with at least one entry
+     */
+    public void calculate ( final BaseValueBatchRange range )
+    {
+        final BaseValueBatch values = range.getValues ();
+        if ( values instanceof LongValueBatch )
+        {
+            calculate ( range, ( (LongValueBatch)values ).getValues () );
+        }
+        else
+        {
+            calculate ( range, ( (DoubleValueBatch)values ).getValues () );
+        }
+    }
+
+    /**
+     * This method processes all entries of the passed view of long values.
+     * @param range view with at least one entry
+     * @param values internal array of the values of the batch underlying the view
+     */
+    private void calculate ( final BaseValueBatchRange range, final long[] values )
+    {
+        final BaseValueBatch batch = range.getValues ();
+        final long[] times = batch.getTimes ();
+        final double[] qualityIndicators = batch.getQualityIndicators ();
+        final double[] manualIndicators = batch.getManualIndicators ();
+        final long[] baseValueCounts = batch.getBaseValueCounts ();
+        final int toIndex = range.getToIndex ();
+        int index = range.getFromIndex ();
+
+        // process the first entry
+        long firstTime;
+        double lastQuality;
+        double lastManual;
+        long lastValue;
+        long baseValueCount;
+        if ( range.hasStartEntry () )
+        {
+            final int sourceIndex = range.getStartSourceIndex ();
+            firstTime = range.getStartTime ();
+            lastQuality = sourceIndex >= 0 ? qualityIndicators[sourceIndex] : 0;
+            lastManual = sourceIndex >= 0 ? manualIndicators[sourceIndex] : 0;
+            lastValue = sourceIndex >= 0 ? values[sourceIndex] : 0;
+            baseValueCount = sourceIndex >= 0 ? baseValueCounts[sourceIndex] : 0;
+        }
+        else
+        {
+            firstTime = times[index];
+            lastQuality = qualityIndicators[index];
+            lastManual = manualIndicators[index];
+            lastValue = values[index];
+            baseValueCount = baseValueCounts[index];
+            index++;
+        }
+        final long firstValue = lastValue;
+        final double firstQuality = lastQuality;
+        final double firstManual = lastManual;
+        boolean validValue = lastQuality > 0;
+        long minimum = validValue ? lastValue : Long.MAX_VALUE;
+        long maximum = validValue ? lastValue : Long.MIN_VALUE;
+        long lastTime = firstTime;
+        double quality = 0;
+        double manual = 0;
+        double weightedSum = 0;
+        double weightedTimeSpan = 0;
+
+        // process the values of the batch
+        for ( ; index < toIndex; index++ )
+        {
+            final long time = times[index];
+            final double qualityIndicator = qualityIndicators[index];
+            final long value = values[index];
+            final long timeSpan = time - lastTime;
+            quality += lastQuality * timeSpan;
+            manual += lastManual * timeSpan;
+            if ( lastQuality > 0 )
+            {
+                weightedSum += lastValue * timeSpan;
+                weightedTimeSpan += timeSpan;
+            }
+            if ( qualityIndicator > 0 )
+            {
+                validValue = true;
+                minimum = Math.min ( minimum, value );
+                maximum = Math.max ( maximum, value );
+            }
+            baseValueCount += baseValueCounts[index];
+            lastTime = time;
+            lastQuality = qualityIndicator;
+            lastManual = manualIndicators[index];
+            lastValue = value;
+        }
+
+        // process the end entry that repeats the previous entry
+        if ( range.hasEndEntry () )
+        {
+            final long timeSpan = range.getEndTime () - lastTime;
+            quality += lastQuality * timeSpan;
+            manual += lastManual * timeSpan;
+            if ( lastQuality > 0 )
+            {
+                weightedSum += lastValue * timeSpan;
+                weightedTimeSpan += timeSpan;
+            }
+            lastTime = range.getEndTime ();
+        }
+        this.longInput = true;
+        this.firstLongValue = firstValue;
+        this.firstDoubleValue = firstValue;
+        this.longMinimum = minimum;
+        this.longMaximum = maximum;
+        this.doubleMinimum = minimum;
+        this.doubleMaximum = maximum;
+        finish ( range.getSize (), lastTime - firstTime, firstQuality, firstManual, quality, manual, baseValueCount, validValue, weightedSum, weightedTimeSpan );
+    }
+
+    /**
+     * This method processes all entries of the passed view of double values.
+     * @param range view with at least one entry
+     * @param values internal array of the values of the batch underlying the view
+     */
+    private void calculate ( final BaseValueBatchRange range, final double[] values )
+    {
+        final BaseValueBatch batch = range.getValues ();
+        final long[] times = batch.getTimes ();
+        final double[] qualityIndicators = batch.getQualityIndicators ();
+        final double[] manualIndicators = batch.getManualIndicators ();
+        final long[] baseValueCounts = batch.getBaseValueCounts ();
+        final int toIndex = range.getToIndex ();
+        int index = range.getFromIndex ();
+
+        // process the first entry
+        long firstTime;
+        double lastQuality;
+        double lastManual;
+        double lastValue;
+        long baseValueCount;
+        if ( range.hasStartEntry () )
+        {
+            final int sourceIndex = range.getStartSourceIndex ();
+            firstTime = range.getStartTime ();
+            lastQuality = sourceIndex >= 0 ? qualityIndicators[sourceIndex] : 0;
+            lastManual = sourceIndex >= 0 ? manualIndicators[sourceIndex] : 0;
+            lastValue = sourceIndex >= 0 ? values[sourceIndex] : 0;
+            baseValueCount = sourceIndex >= 0 ? baseValueCounts[sourceIndex] : 0;
+        }
+        else
+        {
+            firstTime = times[index];
+            lastQuality = qualityIndicators[index];
+            lastManual = manualIndicators[index];
+            lastValue = values[index];
+            baseValueCount = baseValueCounts[index];
+            index++;
+        }
+        final double firstValue = lastValue;
+        final double firstQuality = lastQuality;
+        final double firstManual = lastManual;
+        boolean validValue = lastQuality > 0;
+        double minimum = validValue ? lastValue : Double.POSITIVE_INFINITY;
+        double maximum = validValue ? lastValue : Double.NEGATIVE_INFINITY;
+        long lastTime = firstTime;
+        double quality = 0;
+        double manual = 0;
+        double weightedSum = 0;
+        double weightedTimeSpan = 0;
+
+        // process the values of the batch
+        for ( ; index < toIndex; index++ )
+        {
+            final long time = times[index];
+            final double qualityIndicator = qualityIndicators[index];
+            final double value = values[index];
+            final long timeSpan = time - lastTime;
+            quality += lastQuality * timeSpan;
+            manual += lastManual * timeSpan;
+            if ( lastQuality > 0 )
+            {
+                weightedSum += lastValue * timeSpan;
+                weightedTimeSpan += timeSpan;
+            }
+            if ( qualityIndicator > 0 )
+            {
+                validValue = true;
+                minimum = Math.min ( minimum, value );
+                maximum = Math.max ( maximum, value );
+            }
+            baseValueCount += baseValueCounts[index];
+            lastTime = time;
+            lastQuality = qualityIndicator;
+            lastManual = manualIndicators[index];
+            lastValue = value;
+        }
+
+        // process the end entry that repeats the previous entry
+        if ( range.hasEndEntry () )
+        {
+            final long timeSpan = range.getEndTime () - lastTime;
+            quality += lastQuality * timeSpan;
+            manual += lastManual * timeSpan;
+            if ( lastQuality > 0 )
+            {
+                weightedSum += lastValue * timeSpan;
+                weightedTimeSpan += timeSpan;
+            }
+            lastTime = range.getEndTime ();
+        }
+        this.longInput = false;
+        this.firstLongValue = Math.round ( firstValue );
+        this.firstDoubleValue = firstValue;
+        this.longMinimum = Math.round ( minimum );
+        this.longMaximum = Math.round ( maximum );
+        this.doubleMinimum = minimum;
+        this.doubleMaximum = maximum;
+        finish ( range.getSize (), lastTime - firstTime, firstQuality, firstManual, quality, manual, baseValueCount, validValue, weightedSum, weightedTimeSpan );
+    }
+
+    /**
+     * This method stores the results that are independent of the data type of the processed values.
+     * @param size count of entries that have been processed
+     * @param timeSpanSize time span between the first and the last entry
+     * @param firstQuality quality indicator of the first entry
+     * @param firstManual manual indicator of the first entry
+     * @param quality integral of the quality indicators over time
+     * @param manual integral of the manual indicators over time
+     * @param baseValueCount sum of the base value counts
+     * @param validValue flag indicating whether at least one entry has a quality greater than 0
+     * @param weightedSum time weighted sum of the valid values
+     * @param weightedTimeSpan sum of the time spans of the valid values
+     */
+    private void finish ( final int size, final long timeSpanSize, final double firstQuality, final double firstManual, final double quality, final double manual, final long baseValueCount, final boolean validValue, final double weightedSum, final double weightedTimeSpan )
+    {
+        this.size = size;
+        if ( size == 1 )
+        {
+            this.quality = Math.min ( firstQuality, 1.0 );
+            this.manual = Math.min ( firstManual, 1.0 );
+        }
+        else
+        {
+            this.quality = Math.min ( quality / timeSpanSize, 1.0 );
+            this.manual = Math.min ( manual / timeSpanSize, 1.0 );
+        }
+        this.baseValueCount = baseValueCount;
+        this.validValue = validValue;
+        this.weightedSum = weightedSum;
+        this.weightedTimeSpan = weightedTimeSpan;
+    }
+
+    /**
+     * This method returns the count of values that have been processed.
+     * @return count of values that have been processed
+     */
+    public int getSize ()
+    {
+        return this.size;
+    }
+
+    /**
+     * This method returns the time weighted quality indicator of the processed values.
+     * @return time weighted quality indicator of the processed values
+     */
+    public double getQuality ()
+    {
+        return this.quality;
+    }
+
+    /**
+     * This method returns the time weighted manual indicator of the processed values.
+     * @return time weighted manual indicator of the processed values
+     */
+    public double getManual ()
+    {
+        return this.manual;
+    }
+
+    /**
+     * This method returns the sum of the base value counts of the processed values.
+     * @return sum of the base value counts of the processed values
+     */
+    public long getBaseValueCount ()
+    {
+        return this.baseValueCount;
+    }
+
+    /**
+     * This method returns whether at least one processed value has a quality greater than 0.
+     * @return true, if at least one processed value has a quality greater than 0, otherwise false
+     */
+    public boolean isValidValue ()
+    {
+        return this.validValue;
+    }
+
+    /**
+     * This method returns the time weighted average of the valid values as long value.
+     * @return time weighted average of the valid values as long value
+     */
+    public long getLongAverage ()
+    {
+        if ( this.size == 1 )
+        {
+            return this.firstLongValue;
+        }
+        return Math.round ( this.weightedSum / this.weightedTimeSpan );
+    }
+
+    /**
+     * This method returns the time weighted average of the valid values as double value.
+     * @return time weighted average of the valid values as double value
+     */
+    public double getDoubleAverage ()
+    {
+        if ( this.size == 1 )
+        {
+            return this.firstDoubleValue;
+        }
+        return this.weightedSum / this.weightedTimeSpan;
+    }
+
+    /**
+     * This method returns the minimum of the valid values as long value.
+     * @return minimum of the valid values as long value
+     */
+    public long getLongMinimum ()
+    {
+        return this.longMinimum;
+    }
+
+    /**
+     * This method returns the minimum of the valid values as double value.
+     * @return minimum of the valid values as double value
+     */
+    public double getDoubleMinimum ()
+    {
+        return this.doubleMinimum;
+    }
+
+    /**
+     * This method returns the maximum of the valid values as long value.
+     * @return maximum of the valid values as long value
+     */
+    public long getLongMaximum ()
+    {
+        return this.longMaximum;
+    }
+
+    /**
+     * This method returns the maximum of the valid values as double value.
+     * @return maximum of the valid values as double value
+     */
+    public double getDoubleMaximum ()
+    {
+        return this.doubleMaximum;
+    }
+
+    /**
+     * This method returns whether the processed values have the data type long.
+     * @return true, if the processed values have the data type long, otherwise false
+     */
+    public boolean isLongInput ()
+    {
+        return this.longInput;
+    }
+}
@@ -20,6 +20,8 @@
 package org.openscada.hsdb.calculation;
 
 import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
 import org.openscada.hsdb.datatypes.DataType;
 
 /**
@@ -59,4 +61,25 @@ public interface CalculationLogicProvider
      * @return calculated value
      */
     public abstract BaseValue generateValue ( final BaseValue[] values );
+
+    /**
+     * This method generates a value for the time span starting with the first element in the batch and ending after {@link #getRequiredTimespanForCalculation()}.
+     * @param values values that were processed during the time span
+     * @return calculated value
+     */
+    public abstract BaseValue generateValue ( final BaseValueBatch values );
+
+    /**
+     * This method generates a value for the time span starting with the first entry of the view and ending after {@link #getRequiredTimespanForCalculation()}.
+     * The virtual entries of the view are processed without copying the values of the underlying batch.
+     * @param values view of the values that were processed during the time span
+     * @return calculated value
+     */
+    public abstract BaseValue generateValue ( final BaseValueBatchRange values );
+
+    /**
+     * This method creates an accumulator that calculates the values of consecutive time spans incrementally.
+     * @return new accumulator
+     */
+    public abstract CalculationAccumulator createAccumulator ();
 }
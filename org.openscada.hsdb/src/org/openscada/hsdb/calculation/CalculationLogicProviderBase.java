@@ -20,6 +20,8 @@
 package org.openscada.hsdb.calculation;
 
 import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
 import org.openscada.hsdb.datatypes.DataType;
 import org.openscada.hsdb.datatypes.DoubleValue;
 import org.openscada.hsdb.datatypes.LongValue;
@@ -107,123 +109,75 @@ public abstract class CalculationLogicProviderBase implements CalculationLogicPr
     }
 
     /**
-     * This method calculates a value applying the implementation specific calculation logic using the passed values as input.
-     * @param values input values with at least one element
+     * This method calculates a value applying the implementation specific calculation logic using the results of the passed kernel.
+     * @param kernel kernel that has processed the input values
      * @return calculated value
      */
-    protected abstract long calculateLong ( final LongValue[] values );
+    protected abstract long calculateLong ( final CalculationKernel kernel );
 
     /**
-     * This method calculates a value applying the implementation specific calculation logic using the passed values as input.
-     * @param values input values with at least one element
+     * This method calculates a value applying the implementation specific calculation logic using the results of the passed kernel.
+     * @param kernel kernel that has processed the input values
      * @return calculated value
      */
-    protected abstract long calculateLong ( final DoubleValue[] values );
+    protected abstract double calculateDouble ( final CalculationKernel kernel );
 
     /**
-     * This method calculates a value applying the implementation specific calculation logic using the passed values as input.
-     * @param values input values with at least one element
-     * @return calculated value
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#generateValue(BaseValue[])
      */
-    protected abstract double calculateDouble ( final LongValue[] values );
+    public BaseValue generateValue ( final BaseValue[] values )
+    {
+        // check input
+        if ( values == null || values.length == 0 )
+        {
+            return null;
+        }
+        return generateValue ( BaseValueBatch.fromValues ( values ) );
+    }
 
     /**
-     * This method calculates a value applying the implementation specific calculation logic using the passed values as input.
-     * @param values input values with at least one element
-     * @return calculated value
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#generateValue(BaseValueBatch)
      */
-    protected abstract double calculateDouble ( final DoubleValue[] values );
+    public BaseValue generateValue ( final BaseValueBatch values )
+    {
+        // check input
+        if ( values == null || values.isEmpty () )
+        {
+            return null;
+        }
+        return generateValue ( new BaseValueBatchRange ( values ) );
+    }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#generateValue
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#generateValue(BaseValueBatchRange)
      */
-    public BaseValue generateValue ( final BaseValue[] values )
+    public BaseValue generateValue ( final BaseValueBatchRange values )
     {
         // check input
-        if ( values == null || values.length == 0 )
+        if ( values == null || values.isEmpty () )
         {
             return null;
         }
 
-        // calculate base values
-        final BaseValue firstValue = values[0];
-        final long time = firstValue.getTime ();
-        double quality = 0;
-        double manual = 0;
-        long baseValueCount = 0;
-        boolean validValue = false;
-        if ( values.length == 1 )
+        // process all values in a single pass
+        final long time = values.getFirstTime ();
+        final CalculationKernel kernel = new CalculationKernel ();
+        kernel.calculate ( values );
+        final boolean validValue = kernel.isValidValue ();
+        switch ( getOutputType () )
         {
-            quality = firstValue.getQualityIndicator ();
-            manual = firstValue.getManualIndicator ();
-            baseValueCount = firstValue.getBaseValueCount ();
-            validValue = quality > 0;
-        }
-        else
+        case LONG_VALUE:
         {
-            long lastTimeStamp = firstValue.getTime ();
-            double lastQuality = firstValue.getQualityIndicator ();
-            double lastManual = firstValue.getManualIndicator ();
-            baseValueCount = firstValue.getBaseValueCount ();
-            validValue = lastQuality > 0.0;
-            for ( int i = 1; i < values.length; i++ )
-            {
-                final BaseValue value = values[i];
-                baseValueCount += value.getBaseValueCount ();
-                final long currentTime = value.getTime ();
-                final long timeSpan = currentTime - lastTimeStamp;
-                final double qualityIndicator = value.getQualityIndicator ();
-                validValue |= qualityIndicator > 0;
-                final double manualIndicator = value.getManualIndicator ();
-                quality += lastQuality * timeSpan;
-                manual += lastManual * timeSpan;
-                lastTimeStamp = currentTime;
-                lastQuality = qualityIndicator;
-                lastManual = manualIndicator;
-            }
-            final long timeSpanSize = values[values.length - 1].getTime () - time;
-            quality /= timeSpanSize;
-            manual /= timeSpanSize;
+            return new LongValue ( time, kernel.getQuality (), kernel.getManual (), kernel.getBaseValueCount (), validValue ? calculateLong ( kernel ) : 0 );
         }
-        quality = Math.min ( quality, 1.0 );
-        manual = Math.min ( manual, 1.0 );
-
-        // process values
-        if ( values instanceof LongValue[] )
+        case DOUBLE_VALUE:
         {
-            switch ( getOutputType () )
-            {
-            case LONG_VALUE:
-            {
-                return new LongValue ( time, quality, manual, baseValueCount, validValue ? calculateLong ( (LongValue[])values ) : 0 );
-            }
-            case DOUBLE_VALUE:
-            {
-                return new DoubleValue ( time, quality, manual, baseValueCount, validValue ? calculateDouble ( (LongValue[])values ) : 0 );
-            }
-            default:
-            {
-                logger.error ( "invalid output data type specified within CalculationLogicProvider!" );
-            }
-            }
+            return new DoubleValue ( time, kernel.getQuality (), kernel.getManual (), kernel.getBaseValueCount (), validValue ? calculateDouble ( kernel ) : 0 );
         }
-        else
+        default:
         {
-            switch ( getOutputType () )
-            {
-            case LONG_VALUE:
-            {
-                return new LongValue ( time, quality, manual, baseValueCount, validValue ? calculateLong ( (DoubleValue[])values ) : 0 );
-            }
-            case DOUBLE_VALUE:
-            {
-                return new DoubleValue ( time, quality, manual, baseValueCount, validValue ? calculateDouble ( (DoubleValue[])values ) : 0 );
-            }
-            default:
-            {
-                logger.error ( "invalid output data type specified within CalculationLogicProvider!" );
-            }
-            }
+            logger.error ( "invalid output data type specified within CalculationLogicProvider!" );
+        }
         }
         return null;
     }
@@ -20,8 +20,6 @@
 package org.openscada.hsdb.calculation;
 
 import org.openscada.hsdb.datatypes.DataType;
-import org.openscada.hsdb.datatypes.DoubleValue;
-import org.openscada.hsdb.datatypes.LongValue;
 
 /**
  * This class implements the CalculationLogicProvider interface for the calculation of maximum values.
@@ -51,64 +49,93 @@ public class MaximumCalculationLogicProvider extends CalculationLogicProviderBas
     /**
      * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
      */
-    protected long calculateLong ( final LongValue[] values )
+    protected long calculateLong ( final CalculationKernel kernel )
     {
-        long maxValue = Long.MIN_VALUE;
-        for ( final LongValue value : values )
-        {
-            if ( value.getQualityIndicator () > 0 )
-            {
-                maxValue = Math.max ( maxValue, value.getValue () );
-            }
-        }
-        return maxValue;
+        return kernel.getLongMaximum ();
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
+     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
      */
-    protected long calculateLong ( final DoubleValue[] values )
+    protected double calculateDouble ( final CalculationKernel kernel )
     {
-        double maxValue = Double.NEGATIVE_INFINITY;
-        for ( final DoubleValue value : values )
-        {
-            if ( value.getQualityIndicator () > 0 )
-            {
-                maxValue = Math.max ( maxValue, value.getValue () );
-            }
-        }
-        return Math.round ( maxValue );
+        return kernel.getDoubleMaximum ();
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#createAccumulator()
      */
-    protected double calculateDouble ( final LongValue[] values )
+    public CalculationAccumulator createAccumulator ()
     {
-        double maxValue = Long.MIN_VALUE;
-        for ( final LongValue value : values )
-        {
-            if ( value.getQualityIndicator () > 0 )
-            {
-                maxValue = Math.max ( maxValue, value.getValue () );
-            }
-        }
-        return maxValue;
+        return new MaximumAccumulator ( getInputType (), getOutputType () );
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * This class calculates maximum values incrementally.
      */
-    protected double calculateDouble ( final DoubleValue[] values )
+    private static class MaximumAccumulator extends CalculationAccumulatorBase
     {
-        double maxValue = Double.NEGATIVE_INFINITY;
-        for ( final DoubleValue value : values )
+        /** Maximum of the valid values if the input data type is long. */
+        private long longValue;
+
+        /** Maximum of the valid values if the input data type is double. */
+        private double doubleValue;
+
+        /**
+         * Constructor.
+         * @param inputDataType data type of the input values
+         * @param outputDataType data type of the output values
+         */
+        public MaximumAccumulator ( final DataType inputDataType, final DataType outputDataType )
         {
-            if ( value.getQualityIndicator () > 0 )
+            super ( inputDataType, outputDataType );
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#resetValues()
+         */
+        protected void resetValues ()
+        {
+            this.longValue = Long.MIN_VALUE;
+            this.doubleValue = Double.NEGATIVE_INFINITY;
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addLongValue(long, boolean, long)
+         */
+        protected void addLongValue ( final long time, final boolean valid, final long value )
+        {
+            if ( valid )
             {
-                maxValue = Math.max ( maxValue, value.getValue () );
+                this.longValue = Math.max ( this.longValue, value );
             }
         }
-        return maxValue;
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addDoubleValue(long, boolean, double)
+         */
+        protected void addDoubleValue ( final long time, final boolean valid, final double value )
+        {
+            if ( valid )
+            {
+                this.doubleValue = Math.max ( this.doubleValue, value );
+            }
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateLong()
+         */
+        protected long calculateLong ()
+        {
+            return isLongInput () ? this.longValue : Math.round ( this.doubleValue );
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateDouble()
+         */
+        protected double calculateDouble ()
+        {
+            return isLongInput () ? this.longValue : this.doubleValue;
+        }
     }
 }
@@ -20,8 +20,6 @@
 package org.openscada.hsdb.calculation;
 
 import org.openscada.hsdb.datatypes.DataType;
-import org.openscada.hsdb.datatypes.DoubleValue;
-import org.openscada.hsdb.datatypes.LongValue;
 
 /**
  * This class implements the CalculationLogicProvider interface for the calculation of minimum values.
@@ -51,64 +49,93 @@ public class MinimumCalculationLogicProvider extends CalculationLogicProviderBas
     /**
      * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
      */
-    protected long calculateLong ( final LongValue[] values )
+    protected long calculateLong ( final CalculationKernel kernel )
     {
-        long minValue = Long.MAX_VALUE;
-        for ( final LongValue value : values )
-        {
-            if ( value.getQualityIndicator () > 0 )
-            {
-                minValue = Math.min ( minValue, value.getValue () );
-            }
-        }
-        return minValue;
+        return kernel.getLongMinimum ();
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
+     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
      */
-    protected long calculateLong ( final DoubleValue[] values )
+    protected double calculateDouble ( final CalculationKernel kernel )
     {
-        double minValue = Double.POSITIVE_INFINITY;
-        for ( final DoubleValue value : values )
-        {
-            if ( value.getQualityIndicator () > 0 )
-            {
-                minValue = Math.min ( minValue, value.getValue () );
-            }
-        }
-        return Math.round ( minValue );
+        return kernel.getDoubleMinimum ();
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#createAccumulator()
      */
-    protected double calculateDouble ( final LongValue[] values )
+    public CalculationAccumulator createAccumulator ()
     {
-        double minValue = Long.MAX_VALUE;
-        for ( final LongValue value : values )
-        {
-            if ( value.getQualityIndicator () > 0 )
-            {
-                minValue = Math.min ( minValue, value.getValue () );
-            }
-        }
-        return minValue;
+        return new MinimumAccumulator ( getInputType (), getOutputType () );
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * This class calculates minimum values incrementally.
      */
-    protected double calculateDouble ( final DoubleValue[] values )
+    private static class MinimumAccumulator extends CalculationAccumulatorBase
     {
-        double minValue = Double.POSITIVE_INFINITY;
-        for ( final DoubleValue value : values )
+        /** Minimum of the valid values if the input data type is long. */
+        private long longValue;
+
+        /** Minimum of the valid values if the input data type is double. */
+        private double doubleValue;
+
+        /**
+         * Constructor.
+         * @param inputDataType data type of the input values
+         * @param outputDataType data type of the output values
+         */
+        public MinimumAccumulator ( final DataType inputDataType, final DataType outputDataType )
         {
-            if ( value.getQualityIndicator () > 0 )
+            super ( inputDataType, outputDataType );
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#resetValues()
+         */
+        protected void resetValues ()
+        {
+            this.longValue = Long.MAX_VALUE;
+            this.doubleValue = Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addLongValue(long, boolean, long)
+         */
+        protected void addLongValue ( final long time, final boolean valid, final long value )
+        {
+            if ( valid )
             {
-                minValue = Math.min ( minValue, value.getValue () );
+                this.longValue = Math.min ( this.longValue, value );
             }
         }
-        return minValue;
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addDoubleValue(long, boolean, double)
+         */
+        protected void addDoubleValue ( final long time, final boolean valid, final double value )
+        {
+            if ( valid )
+            {
+                this.doubleValue = Math.min ( this.doubleValue, value );
+            }
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateLong()
+         */
+        protected long calculateLong ()
+        {
+            return isLongInput () ? this.longValue : Math.round ( this.doubleValue );
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateDouble()
+         */
+        protected double calculateDouble ()
+        {
+            return isLongInput () ? this.longValue : this.doubleValue;
+        }
     }
 }
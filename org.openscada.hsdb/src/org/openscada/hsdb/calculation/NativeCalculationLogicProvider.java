@@ -20,8 +20,6 @@
 package org.openscada.hsdb.calculation;
 
 import org.openscada.hsdb.datatypes.DataType;
-import org.openscada.hsdb.datatypes.DoubleValue;
-import org.openscada.hsdb.datatypes.LongValue;
 
 /**
  * This class implements the CalculationLogicProvider interface for the processing of native values.
@@ -51,32 +49,77 @@ public class NativeCalculationLogicProvider extends CalculationLogicProviderBase
     /**
      * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
      */
-    protected long calculateLong ( final LongValue[] values )
+    protected long calculateLong ( final CalculationKernel kernel )
     {
         return 0;
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateLong
+     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
      */
-    protected long calculateLong ( final DoubleValue[] values )
+    protected double calculateDouble ( final CalculationKernel kernel )
     {
-        return 0;
+        return Double.NaN;
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * @see org.openscada.hsdb.calculation.CalculationLogicProvider#createAccumulator()
      */
-    protected double calculateDouble ( final LongValue[] values )
+    public CalculationAccumulator createAccumulator ()
     {
-        return Double.NaN;
+        return new NativeAccumulator ( getInputType (), getOutputType () );
     }
 
     /**
-     * @see org.openscada.hsdb.calculation.CalculationLogicProviderBase#calculateDouble
+     * This class provides the same results as the native calculation logic.
      */
-    protected double calculateDouble ( final DoubleValue[] values )
+    private static class NativeAccumulator extends CalculationAccumulatorBase
     {
-        return Double.NaN;
+        /**
+         * Constructor.
+         * @param inputDataType data type of the input values
+         * @param outputDataType data type of the output values
+         */
+        public NativeAccumulator ( final DataType inputDataType, final DataType outputDataType )
+        {
+            super ( inputDataType, outputDataType );
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#resetValues()
+         */
+        protected void resetValues ()
+        {
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addLongValue(long, boolean, long)
+         */
+        protected void addLongValue ( final long time, final boolean valid, final long value )
+        {
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#addDoubleValue(long, boolean, double)
+         */
+        protected void addDoubleValue ( final long time, final boolean valid, final double value )
+        {
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateLong()
+         */
+        protected long calculateLong ()
+        {
+            return 0;
+        }
+
+        /**
+         * @see org.openscada.hsdb.calculation.CalculationAccumulatorBase#calculateDouble()
+         */
+        protected double calculateDouble ()
+        {
+            return Double.NaN;
+        }
     }
 }
@@ -0,0 +1,290 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.concurrent;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class executes tasks one after another in the order they have been submitted using a shared executor.
+ * The count of pending tasks is limited. Submitting threads are blocked until free capacity is available.
+ * Threads that are currently processing tasks of another instance of this class are only blocked while the tasks of the target instance are processed by another thread.
+ * Otherwise they process pending tasks of the target instance themselves until free capacity is available, so that the shared executor cannot be exhausted by blocked threads.
+ * This way the bound applies to all instances of a chain in which tasks of one instance submit tasks to the next one. Such chains must not contain cycles.
+ * After a limited count of tasks the processing is resubmitted to the shared executor, so that other instances get their share of the threads.
+ */
+public class BoundedSerialExecutor
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( BoundedSerialExecutor.class );
+
+    /** Maximum count of tasks that are processed before the processing is resubmitted to the shared executor. */
+    private final static int MAX_TASKS_PER_RUN = 64;
+
+    /** Flag indicating whether the current thread is processing tasks of an instance of this class. */
+    private final static ThreadLocal<Boolean> processing = new ThreadLocal<Boolean> ();
+
+    /** Shared executor that is used to process the tasks. */
+    private final Executor executor;
+
+    /** Maximum count of pending tasks. */
+    private final int capacity;
+
+    /** Tasks that are pending. */
+    private final LinkedList<Runnable> tasks;
+
+    /** Lock object that protects the pending tasks. */
+    private final ReentrantLock lock;
+
+    /** Condition that is signaled when a pending task has been removed from the queue or when the processing of tasks has been stopped. */
+    private final Condition notFull;
+
+    /** Condition that is signaled when all pending tasks have been processed. */
+    private final Condition idle;
+
+    /** Flag indicating whether the processing of the tasks has been submitted to the shared executor and has not been started yet. */
+    private boolean scheduled;
+
+    /** Flag indicating whether a thread is currently processing tasks. */
+    private boolean running;
+
+    /** Runnable that processes the pending tasks. */
+    private final Runnable processor;
+
+    /**
+     * Constructor.
+     * @param executor shared executor that is used to process the tasks
+     * @param capacity maximum count of pending tasks
+     */
+    public BoundedSerialExecutor ( final Executor executor, final int capacity )
+    {
+        this.executor = executor;
+        this.capacity = Math.max ( 1, capacity );
+        this.tasks = new LinkedList<Runnable> ();
+        this.lock = new ReentrantLock ();
+        this.notFull = this.lock.newCondition ();
+        this.idle = this.lock.newCondition ();
+        this.scheduled = false;
+        this.running = false;
+        this.processor = new Runnable ()
+        {
+            public void run ()
+            {
+                processTasks ();
+            }
+        };
+    }
+
+    /**
+     * This method adds the passed task to the queue of pending tasks.
+     * If the maximum count of pending tasks is reached, the method blocks until free capacity is available.
+     * If the method is called while processing a task of another instance and no other thread is processing the tasks of this instance, pending tasks are processed within the calling thread until free capacity is available.
+     * @param task task that has to be executed
+     * @throws InterruptedException if the thread has been interrupted while waiting for free capacity
+     */
+    public void submit ( final Runnable task ) throws InterruptedException
+    {
+        boolean schedule = false;
+        this.lock.lock ();
+        try
+        {
+            final boolean processingThread = processing.get () != null;
+            while ( this.tasks.size () >= this.capacity )
+            {
+                if ( processingThread && !this.running )
+                {
+                    processTask ();
+                }
+                else
+                {
+                    this.notFull.await ();
+                }
+            }
+            this.tasks.add ( task );
+            if ( !this.scheduled && !this.running )
+            {
+                this.scheduled = true;
+                schedule = true;
+            }
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+        if ( schedule )
+        {
+            this.executor.execute ( this.processor );
+        }
+    }
+
+    /**
+     * This method blocks until all tasks that have been submitted before have been processed.
+     * The method must not be called while processing a task of the same instance.
+     * @throws InterruptedException if the thread has been interrupted while waiting
+     */
+    public void flush () throws InterruptedException
+    {
+        this.lock.lock ();
+        try
+        {
+            while ( this.scheduled || this.running || !this.tasks.isEmpty () )
+            {
+                this.idle.await ();
+            }
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method returns the count of pending tasks.
+     * @return count of pending tasks
+     */
+    public int getQueueSize ()
+    {
+        this.lock.lock ();
+        try
+        {
+            return this.tasks.size ();
+        }
+        finally
+        {
+            this.lock.unlock ();
+        }
+    }
+
+    /**
+     * This method processes the first pending task within the calling thread.
+     * It is assumed that the lock is held, that at least one task is pending and that no other thread is processing tasks. The lock is released while the task is processed.
+     */
+    private void processTask ()
+    {
+        final Runnable task = this.tasks.poll ();
+        this.running = true;
+        this.notFull.signalAll ();
+        this.lock.unlock ();
+        try
+        {
+            runTask ( task );
+        }
+        finally
+        {
+            this.lock.lock ();
+            this.running = false;
+            this.notFull.signalAll ();
+            if ( this.tasks.isEmpty () && !this.scheduled )
+            {
+                this.idle.signalAll ();
+            }
+        }
+    }
+
+    /**
+     * This method executes the passed task and logs errors that occur while executing it.
+     * @param task task that has to be executed
+     */
+    private static void runTask ( final Runnable task )
+    {
+        try
+        {
+            task.run ();
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( "error while processing task", e );
+        }
+    }
+
+    /**
+     * This method processes pending tasks in the order they have been submitted.
+     * If another thread is processing tasks when the processing is started, nothing is done since that thread assures that the remaining tasks are processed.
+     * If more tasks are pending after a limited count of tasks has been processed, the processing is resubmitted to the shared executor.
+     */
+    private void processTasks ()
+    {
+        final Boolean previousProcessing = processing.get ();
+        processing.set ( Boolean.TRUE );
+        boolean reschedule = false;
+        this.lock.lock ();
+        try
+        {
+            this.scheduled = false;
+            if ( this.running )
+            {
+                return;
+            }
+            this.running = true;
+            try
+            {
+                for ( int i = 0; i < MAX_TASKS_PER_RUN; i++ )
+                {
+                    final Runnable task = this.tasks.poll ();
+                    if ( task == null )
+                    {
+                        break;
+                    }
+                    this.notFull.signalAll ();
+                    this.lock.unlock ();
+                    try
+                    {
+                        runTask ( task );
+                    }
+                    finally
+                    {
+                        this.lock.lock ();
+                    }
+                }
+            }
+            finally
+            {
+                this.running = false;
+                this.notFull.signalAll ();
+                if ( this.tasks.isEmpty () )
+                {
+                    this.idle.signalAll ();
+                }
+                else
+                {
+                    this.scheduled = true;
+                    reschedule = true;
+                }
+            }
+        }
+        finally
+        {
+            this.lock.unlock ();
+            if ( previousProcessing == null )
+            {
+                processing.remove ();
+            }
+        }
+        if ( reschedule )
+        {
+            this.executor.execute ( this.processor );
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This thread factory assigns a fixed priority to all threads that are created by another thread factory.
+ */
+public class PriorityThreadFactory implements ThreadFactory
+{
+    /** Thread factory that is used to create the threads. */
+    private final ThreadFactory threadFactory;
+
+    /** Priority that is assigned to the created threads. */
+    private final int priority;
+
+    /**
+     * Constructor.
+     * @param threadFactory thread factory that is used to create the threads
+     * @param priority priority that is assigned to the created threads
+     */
+    public PriorityThreadFactory ( final ThreadFactory threadFactory, final int priority )
+    {
+        this.threadFactory = threadFactory;
+        this.priority = Math.max ( Thread.MIN_PRIORITY, Math.min ( Thread.MAX_PRIORITY, priority ) );
+    }
+
+    /**
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    public Thread newThread ( final Runnable runnable )
+    {
+        final Thread thread = this.threadFactory.newThread ( runnable );
+        thread.setPriority ( this.priority );
+        return thread;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openscada.utils.concurrent.NamedThreadFactory;
+
+/**
+ * This class provides a thread pool with a bounded queue that is shared by several users.
+ * The pool is created when the first user acquires it and is shut down when the last user releases it.
+ * Tasks that cannot be queued, because the queue is full or because the pool is not running, are executed within the calling thread.
+ * This way the callers are slowed down under heavy load instead of queuing an unlimited count of tasks.
+ */
+public class SharedThreadPool implements Executor
+{
+    /** Id of the threads of the pool. */
+    private final String threadId;
+
+    /** Count of threads of the pool. */
+    private final int threadCount;
+
+    /** Maximum count of tasks that are waiting for a free thread. */
+    private final int queueSize;
+
+    /** Thread pool that is currently running or null if the pool is not acquired. */
+    private volatile ThreadPoolExecutor executor;
+
+    /** Count of users that currently have acquired the pool. */
+    private int referenceCount;
+
+    /** Count of tasks that have been executed within the calling thread. */
+    private final AtomicLong callerRunsCount;
+
+    /**
+     * Constructor.
+     * @param threadId id of the threads of the pool
+     * @param threadCount count of threads of the pool
+     * @param queueSize maximum count of tasks that are waiting for a free thread
+     */
+    public SharedThreadPool ( final String threadId, final int threadCount, final int queueSize )
+    {
+        this.threadId = threadId;
+        this.threadCount = Math.max ( 1, threadCount );
+        this.queueSize = Math.max ( 1, queueSize );
+        this.executor = null;
+        this.referenceCount = 0;
+        this.callerRunsCount = new AtomicLong ();
+    }
+
+    /**
+     * This method registers a user of the pool. The pool is started if it is not yet running.
+     * Each call has to be followed by exactly one call of the method {@link #release()}.
+     */
+    public synchronized void acquire ()
+    {
+        if ( this.referenceCount == 0 )
+        {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor ( this.threadCount, this.threadCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable> ( this.queueSize ), new NamedThreadFactory ( this.threadId, true ) );
+            executor.allowCoreThreadTimeOut ( true );
+            this.executor = executor;
+        }
+        this.referenceCount++;
+    }
+
+    /**
+     * This method unregisters a user of the pool. The pool is shut down if no user is left.
+     * Tasks that already have been queued are still executed.
+     */
+    public synchronized void release ()
+    {
+        if ( this.referenceCount == 0 )
+        {
+            return;
+        }
+        this.referenceCount--;
+        if ( this.referenceCount == 0 )
+        {
+            this.executor.shutdown ();
+            this.executor = null;
+        }
+    }
+
+    /**
+     * This method returns whether the pool is currently running.
+     * @return true, if at least one user has acquired the pool, otherwise false
+     */
+    public boolean isRunning ()
+    {
+        return this.executor != null;
+    }
+
+    /**
+     * This method returns the count of tasks that have been executed within the calling thread.
+     * @return count of tasks that have been executed within the calling thread
+     */
+    public long getCallerRunsCount ()
+    {
+        return this.callerRunsCount.get ();
+    }
+
+    /**
+     * This method executes the passed task using a thread of the pool.
+     * If the queue of the pool is full or if the pool is not running, then the task is executed within the calling thread.
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    public void execute ( final Runnable task )
+    {
+        final ThreadPoolExecutor executor = this.executor;
+        if ( executor != null )
+        {
+            try
+            {
+                executor.execute ( task );
+                return;
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                // the queue is full or the pool has been shut down in the meantime
+            }
+        }
+        this.callerRunsCount.incrementAndGet ();
+        task.run ();
+    }
+}
@@ -55,6 +55,30 @@ public class Configuration
     /** Prefix of key in configuration for the end time of a known fragment. */
     public final static String MANAGER_KNOWN_FRAGMENT_END_TIME_PREFIX = "hsdb.manager.knownFragment.endTime.";
 
+    /** Key in configuration for the maximum count of back end fragments that are kept initialized for reading. */
+    public final static String MANAGER_FRAGMENT_READ_CACHE_SIZE = "hsdb.manager.fragment.readCacheSize";
+
+    /** Key in configuration for enabling the incremental calculation of compressed values while new values arrive. */
+    public final static String MANAGER_INCREMENTAL_CALCULATION = "hsdb.manager.incrementalCalculation";
+
+    /** Key in configuration for the maximum count of pending updates per calculating storage channel. If 0 is configured, then the updates are processed synchronously. */
+    public final static String MANAGER_CALCULATION_QUEUE_SIZE = "hsdb.manager.calculation.queueSize";
+
+    /** Key in configuration for the count of threads that are used to repair corrupt back end fragments. */
+    public final static String MANAGER_REPAIR_THREAD_COUNT = "hsdb.manager.repair.threadCount";
+
+    /** Key in configuration for the time in milliseconds that a repair thread pauses after a back end fragment that is not urgently required has been repaired. */
+    public final static String MANAGER_REPAIR_PAUSE = "hsdb.manager.repair.pause";
+
+    /** Key in configuration for the flag indicating whether the back end fragments are recorded in a separate fragment catalog instead of the configuration. */
+    public final static String MANAGER_FRAGMENT_CATALOG = "hsdb.manager.fragmentCatalog";
+
+    /** Key in configuration for the memory in bytes that is used outside of the java heap to cache the most recent values of all storage channels. If 0 is configured, then no values are cached. */
+    public final static String MANAGER_RECENT_VALUE_CACHE_SIZE = "hsdb.manager.recentValueCache.size";
+
+    /** Key in configuration for the flag indicating whether updates are passed to the sub storage channels of a storage channel concurrently. */
+    public final static String MANAGER_PARALLEL_FAN_OUT = "hsdb.manager.parallelFanOut";
+
     /** Prefix of key in configuration for the proposed data age setting. */
     public final static String PROPOSED_DATA_AGE_KEY_PREFIX = "hsdb.proposedDataAge.level.";
 
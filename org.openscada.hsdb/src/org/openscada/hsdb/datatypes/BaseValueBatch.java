@@ -0,0 +1,455 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.datatypes;
+
+/**
+ * Base class for batches of values that can be handled via the storage channel api.
+ * In contrast to arrays of BaseValue objects, the attributes of the values are stored column by column within arrays of primitive types.
+ * This avoids the creation of one object per value when large amounts of data are read, copied or processed.
+ * The values within a batch are expected to be sorted by time.
+ */
+public abstract class BaseValueBatch
+{
+    /** Default capacity of a batch if no capacity is specified. */
+    protected final static int DEFAULT_CAPACITY = 16;
+
+    /** Time stamps of the values. */
+    private long[] times;
+
+    /** Quality information of the values. */
+    private double[] qualityIndicators;
+
+    /** Percentage of manually set values during the value times. */
+    private double[] manualIndicators;
+
+    /** Count of values that have been combined to get the values. */
+    private long[] baseValueCounts;
+
+    /** Count of values that are currently stored within the batch. */
+    private int size;
+
+    /** Count of values that can be stored within the internal arrays. The value is 0 if the arrays have been passed by the caller, since they may be shared with other objects. */
+    private int writableCapacity;
+
+    /**
+     * Constructor.
+     * @param capacity initial count of values that can be stored within the batch without resizing the internal arrays
+     */
+    protected BaseValueBatch ( final int capacity )
+    {
+        final int initialCapacity = Math.max ( capacity, 0 );
+        this.times = new long[initialCapacity];
+        this.qualityIndicators = new double[initialCapacity];
+        this.manualIndicators = new double[initialCapacity];
+        this.baseValueCounts = new long[initialCapacity];
+        this.size = 0;
+        this.writableCapacity = initialCapacity;
+    }
+
+    /**
+     * Constructor that wraps the passed arrays without copying them.
+     * All arrays must at least contain the specified count of elements.
+     * The passed arrays are never modified by the batch. They are copied as soon as values are added.
+     * @param times time stamps of the values
+     * @param qualityIndicators quality information of the values
+     * @param manualIndicators percentage of manually set values during the value times
+     * @param baseValueCounts count of values that have been combined to get the values
+     * @param size count of valid values within the passed arrays
+     */
+    protected BaseValueBatch ( final long[] times, final double[] qualityIndicators, final double[] manualIndicators, final long[] baseValueCounts, final int size )
+    {
+        this.times = times;
+        this.qualityIndicators = qualityIndicators;
+        this.manualIndicators = manualIndicators;
+        this.baseValueCounts = baseValueCounts;
+        this.size = size;
+        this.writableCapacity = 0;
+    }
+
+    /**
+     * This method returns the data type of the values that are stored within the batch.
+     * @return data type of the values that are stored within the batch
+     */
+    public abstract DataType getDataType ();
+
+    /**
+     * This method creates a new empty batch of the same type as the current batch.
+     * @param capacity initial capacity of the new batch
+     * @return new empty batch
+     */
+    public abstract BaseValueBatch createEmptyBatch ( final int capacity );
+
+    /**
+     * This method creates a value object for the value at the specified index.
+     * @param index index of the value
+     * @return created value object
+     */
+    public abstract BaseValue createValue ( final int index );
+
+    /**
+     * This method creates an array of value objects containing all values of the batch.
+     * @return array of value objects
+     */
+    public abstract BaseValue[] toValues ();
+
+    /**
+     * This method resizes the value specific arrays of the batch.
+     * @param capacity new capacity of the arrays
+     */
+    protected abstract void resizeValues ( final int capacity );
+
+    /**
+     * This method copies the value specific data from the passed batch to the current batch.
+     * @param source batch from which the data has to be copied. The batch is of the same type as the current batch
+     * @param sourceIndex index of the value within the source batch
+     * @param targetIndex index of the value within the current batch
+     */
+    protected abstract void copyValue ( final BaseValueBatch source, final int sourceIndex, final int targetIndex );
+
+    /**
+     * This method copies the value specific data from the passed value object to the current batch.
+     * @param value value object from which the data has to be copied
+     * @param targetIndex index of the value within the current batch
+     */
+    protected abstract void copyValue ( final BaseValue value, final int targetIndex );
+
+    /**
+     * This method copies a range of value specific data from the passed batch to the current batch.
+     * @param source batch of the same type as the current batch from which the data has to be copied
+     * @param sourceIndex index of the first value within the source batch
+     * @param targetIndex index of the first value within the current batch
+     * @param count count of values that have to be copied
+     */
+    protected abstract void copyValues ( final BaseValueBatch source, final int sourceIndex, final int targetIndex, final int count );
+
+    /**
+     * This method resets the value specific data at the specified index.
+     * @param targetIndex index of the value within the current batch
+     */
+    protected abstract void clearValue ( final int targetIndex );
+
+    /**
+     * This method returns the count of values that are currently stored within the batch.
+     * @return count of values that are currently stored within the batch
+     */
+    public int getSize ()
+    {
+        return this.size;
+    }
+
+    /**
+     * This method returns whether the batch contains values or not.
+     * @return true, if the batch does not contain any value, otherwise false
+     */
+    public boolean isEmpty ()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * This method removes all values from the batch.
+     * The internal arrays are kept so that they can be reused.
+     */
+    public void clear ()
+    {
+        this.size = 0;
+    }
+
+    /**
+     * This method returns the time stamp of the value at the specified index.
+     * @param index index of the value
+     * @return time stamp of the value
+     */
+    public long getTime ( final int index )
+    {
+        return this.times[index];
+    }
+
+    /**
+     * This method returns the quality information of the value at the specified index.
+     * @param index index of the value
+     * @return quality information of the value
+     */
+    public double getQualityIndicator ( final int index )
+    {
+        return this.qualityIndicators[index];
+    }
+
+    /**
+     * This method returns the percentage of manually set values of the value at the specified index.
+     * @param index index of the value
+     * @return percentage of manually set values of the value
+     */
+    public double getManualIndicator ( final int index )
+    {
+        return this.manualIndicators[index];
+    }
+
+    /**
+     * This method returns the count of values that have been combined to get the value at the specified index.
+     * @param index index of the value
+     * @return count of values that have been combined to get the value
+     */
+    public long getBaseValueCount ( final int index )
+    {
+        return this.baseValueCounts[index];
+    }
+
+    /**
+     * This method returns the internal array containing the time stamps of the values.
+     * Only the first {@link #getSize()} elements of the array are valid.
+     * @return internal array containing the time stamps of the values
+     */
+    public long[] getTimes ()
+    {
+        return this.times;
+    }
+
+    /**
+     * This method returns the internal array containing the quality information of the values.
+     * Only the first {@link #getSize()} elements of the array are valid.
+     * @return internal array containing the quality information of the values
+     */
+    public double[] getQualityIndicators ()
+    {
+        return this.qualityIndicators;
+    }
+
+    /**
+     * This method returns the internal array containing the percentage of manually set values.
+     * Only the first {@link #getSize()} elements of the array are valid.
+     * @return internal array containing the percentage of manually set values
+     */
+    public double[] getManualIndicators ()
+    {
+        return this.manualIndicators;
+    }
+
+    /**
+     * This method returns the internal array containing the count of values that have been combined to get the values.
+     * Only the first {@link #getSize()} elements of the array are valid.
+     * @return internal array containing the count of values that have been combined to get the values
+     */
+    public long[] getBaseValueCounts ()
+    {
+        return this.baseValueCounts;
+    }
+
+    /**
+     * This method returns a copy of the time stamps of all values of the batch.
+     * @return copy of the time stamps of all values of the batch
+     */
+    public long[] toTimeArray ()
+    {
+        final long[] result = new long[this.size];
+        System.arraycopy ( this.times, 0, result, 0, this.size );
+        return result;
+    }
+
+    /**
+     * This method returns whether the values of the batch are sorted by time in ascending order.
+     * @return true, if the values are sorted by time, otherwise false
+     */
+    public boolean isSortedByTime ()
+    {
+        for ( int i = 1; i < this.size; i++ )
+        {
+            if ( this.times[i - 1] > this.times[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method assures that the batch is able to store the specified count of values without resizing the internal arrays.
+     * @param capacity count of values that has to be supported
+     */
+    public void ensureCapacity ( final int capacity )
+    {
+        if ( capacity <= this.writableCapacity )
+        {
+            return;
+        }
+        final int newCapacity = Math.max ( capacity, Math.max ( DEFAULT_CAPACITY, this.writableCapacity + ( this.writableCapacity >> 1 ) ) );
+        final long[] newTimes = new long[newCapacity];
+        final double[] newQualityIndicators = new double[newCapacity];
+        final double[] newManualIndicators = new double[newCapacity];
+        final long[] newBaseValueCounts = new long[newCapacity];
+        System.arraycopy ( this.times, 0, newTimes, 0, this.size );
+        System.arraycopy ( this.qualityIndicators, 0, newQualityIndicators, 0, this.size );
+        System.arraycopy ( this.manualIndicators, 0, newManualIndicators, 0, this.size );
+        System.arraycopy ( this.baseValueCounts, 0, newBaseValueCounts, 0, this.size );
+        this.times = newTimes;
+        this.qualityIndicators = newQualityIndicators;
+        this.manualIndicators = newManualIndicators;
+        this.baseValueCounts = newBaseValueCounts;
+        this.writableCapacity = newCapacity;
+        resizeValues ( newCapacity );
+    }
+
+    /**
+     * This method appends the common attributes of a new value to the batch and returns the index of the new value.
+     * The value specific data has to be set by the caller.
+     * @param time time stamp of the value
+     * @param qualityIndicator quality information of the value
+     * @param manualIndicator percentage of manually set values of the value
+     * @param baseValueCount count of values that have been combined to get the value
+     * @return index of the new value
+     */
+    protected int append ( final long time, final double qualityIndicator, final double manualIndicator, final long baseValueCount )
+    {
+        ensureCapacity ( this.size + 1 );
+        final int index = this.size;
+        this.times[index] = time;
+        this.qualityIndicators[index] = qualityIndicator;
+        this.manualIndicators[index] = manualIndicator;
+        this.baseValueCounts[index] = baseValueCount;
+        this.size++;
+        return index;
+    }
+
+    /**
+     * This method appends a copy of the passed value object to the batch.
+     * @param value value object that has to be appended
+     */
+    public void add ( final BaseValue value )
+    {
+        copyValue ( value, append ( value.getTime (), value.getQualityIndicator (), value.getManualIndicator (), value.getBaseValueCount () ) );
+    }
+
+    /**
+     * This method appends a copy of the specified value of the passed batch to the current batch.
+     * @param source batch of the same type as the current batch from which the value has to be copied
+     * @param index index of the value within the source batch
+     */
+    public void add ( final BaseValueBatch source, final int index )
+    {
+        copyValue ( source, index, append ( source.times[index], source.qualityIndicators[index], source.manualIndicators[index], source.baseValueCounts[index] ) );
+    }
+
+    /**
+     * This method appends a value to the batch that is derived from the specified value of the passed batch.
+     * The time stamp and the base value count of the new value are replaced by the passed values.
+     * @param time time stamp of the new value
+     * @param source batch of the same type as the current batch from which the value has to be derived
+     * @param index index of the value within the source batch
+     * @param baseValueCount count of values that have been combined to get the new value
+     */
+    public void addDerived ( final long time, final BaseValueBatch source, final int index, final long baseValueCount )
+    {
+        copyValue ( source, index, append ( time, source.qualityIndicators[index], source.manualIndicators[index], baseValueCount ) );
+    }
+
+    /**
+     * This method appends a value with the passed time stamp to the batch that has no quality, no manual percentage, no base values and a value of 0.
+     * @param time time stamp of the new value
+     */
+    public void addEmpty ( final long time )
+    {
+        clearValue ( append ( time, 0, 0, 0 ) );
+    }
+
+    /**
+     * This method appends copies of the specified values of the passed batch to the current batch.
+     * @param source batch of the same type as the current batch from which the values have to be copied
+     * @param fromIndex index of the first value within the source batch that has to be copied
+     * @param toIndex index after the last value within the source batch that has to be copied
+     */
+    public void addAll ( final BaseValueBatch source, final int fromIndex, final int toIndex )
+    {
+        final int count = toIndex - fromIndex;
+        if ( count <= 0 )
+        {
+            return;
+        }
+        ensureCapacity ( this.size + count );
+        System.arraycopy ( source.times, fromIndex, this.times, this.size, count );
+        System.arraycopy ( source.qualityIndicators, fromIndex, this.qualityIndicators, this.size, count );
+        System.arraycopy ( source.manualIndicators, fromIndex, this.manualIndicators, this.size, count );
+        System.arraycopy ( source.baseValueCounts, fromIndex, this.baseValueCounts, this.size, count );
+        copyValues ( source, fromIndex, this.size, count );
+        this.size += count;
+    }
+
+    /**
+     * This method appends copies of all values of the passed batch to the current batch.
+     * @param source batch of the same type as the current batch from which the values have to be copied
+     */
+    public void addAll ( final BaseValueBatch source )
+    {
+        addAll ( source, 0, source.size );
+    }
+
+    /**
+     * This method creates a batch containing copies of the passed value objects.
+     * The type of the batch is determined by the type of the passed array.
+     * @param values value objects that have to be copied
+     * @return created batch or null if the type of the passed array is not supported
+     */
+    public static BaseValueBatch fromValues ( final BaseValue[] values )
+    {
+        if ( values instanceof LongValue[] )
+        {
+            return LongValueBatch.fromValues ( (LongValue[])values );
+        }
+        if ( values instanceof DoubleValue[] )
+        {
+            return DoubleValueBatch.fromValues ( (DoubleValue[])values );
+        }
+        return null;
+    }
+
+    /**
+     * This method creates an empty batch for values of the passed data type.
+     * @param dataType data type of the values
+     * @param capacity initial capacity of the batch
+     * @return created batch or null if the passed data type is not supported
+     */
+    public static BaseValueBatch createBatch ( final DataType dataType, final int capacity )
+    {
+        switch ( dataType )
+        {
+        case LONG_VALUE:
+        {
+            return new LongValueBatch ( capacity );
+        }
+        case DOUBLE_VALUE:
+        {
+            return new DoubleValueBatch ( capacity );
+        }
+        }
+        return null;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString ()
+    {
+        if ( this.size == 0 )
+        {
+            return String.format ( "%s: empty", getDataType () );
+        }
+        return String.format ( "%s: %s values (t: %s..%s)", getDataType (), this.size, this.times[0], this.times[this.size - 1] );
+    }
+}
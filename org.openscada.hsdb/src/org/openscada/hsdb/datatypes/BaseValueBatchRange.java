@@ -0,0 +1,224 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.datatypes;
+
+/**
+ * This class provides a view of a range of values within a batch without copying them.
+ * The view may be framed by a virtual start entry and a virtual end entry that are derived from the values of the batch.
+ * The virtual start entry either repeats the attributes of a value of the batch at the start time of the view or it is empty if no such value exists.
+ * The virtual end entry repeats the attributes of the previous entry of the view at the end time of the view without base values.
+ * The view is only valid as long as the underlying batch is not modified.
+ */
+public final class BaseValueBatchRange
+{
+    /** Batch containing the values of the view. */
+    private final BaseValueBatch values;
+
+    /** Index of the first value of the batch that is part of the view. */
+    private final int fromIndex;
+
+    /** Index after the last value of the batch that is part of the view. */
+    private final int toIndex;
+
+    /** Flag indicating whether the view starts with a virtual entry. */
+    private final boolean startEntry;
+
+    /** Time stamp of the virtual start entry. */
+    private final long startTime;
+
+    /** Index of the value of the batch from which the virtual start entry is derived or -1 if the virtual start entry is empty. */
+    private final int startSourceIndex;
+
+    /** Flag indicating whether the view ends with a virtual entry. */
+    private final boolean endEntry;
+
+    /** Time stamp of the virtual end entry. */
+    private final long endTime;
+
+    /**
+     * Constructor for a view containing all values of the passed batch without virtual entries.
+     * @param values batch containing the values of the view
+     */
+    public BaseValueBatchRange ( final BaseValueBatch values )
+    {
+        this ( values, 0, values.getSize (), false, 0, -1, false, 0 );
+    }
+
+    /**
+     * Fully initializing constructor.
+     * @param values batch containing the values of the view
+     * @param fromIndex index of the first value of the batch that is part of the view
+     * @param toIndex index after the last value of the batch that is part of the view
+     * @param startEntry flag indicating whether the view starts with a virtual entry
+     * @param startTime time stamp of the virtual start entry
+     * @param startSourceIndex index of the value of the batch from which the virtual start entry is derived or -1 if the virtual start entry is empty
+     * @param endEntry flag indicating whether the view ends with a virtual entry
+     * @param endTime time stamp of the virtual end entry
+     */
+    public BaseValueBatchRange ( final BaseValueBatch values, final int fromIndex, final int toIndex, final boolean startEntry, final long startTime, final int startSourceIndex, final boolean endEntry, final long endTime )
+    {
+        this.values = values;
+        this.fromIndex = fromIndex;
+        this.toIndex = Math.max ( fromIndex, toIndex );
+        this.startEntry = startEntry;
+        this.startTime = startTime;
+        this.startSourceIndex = startSourceIndex;
+        this.endEntry = endEntry;
+        this.endTime = endTime;
+    }
+
+    /**
+     * This method returns the batch containing the values of the view.
+     * @return batch containing the values of the view
+     */
+    public BaseValueBatch getValues ()
+    {
+        return this.values;
+    }
+
+    /**
+     * This method returns the index of the first value of the batch that is part of the view.
+     * @return index of the first value of the batch that is part of the view
+     */
+    public int getFromIndex ()
+    {
+        return this.fromIndex;
+    }
+
+    /**
+     * This method returns the index after the last value of the batch that is part of the view.
+     * @return index after the last value of the batch that is part of the view
+     */
+    public int getToIndex ()
+    {
+        return this.toIndex;
+    }
+
+    /**
+     * This method returns whether the view starts with a virtual entry.
+     * @return true, if the view starts with a virtual entry, otherwise false
+     */
+    public boolean hasStartEntry ()
+    {
+        return this.startEntry;
+    }
+
+    /**
+     * This method returns the time stamp of the virtual start entry.
+     * @return time stamp of the virtual start entry
+     */
+    public long getStartTime ()
+    {
+        return this.startTime;
+    }
+
+    /**
+     * This method returns the index of the value of the batch from which the virtual start entry is derived.
+     * @return index of the value of the batch from which the virtual start entry is derived or -1 if the virtual start entry is empty
+     */
+    public int getStartSourceIndex ()
+    {
+        return this.startSourceIndex;
+    }
+
+    /**
+     * This method returns whether the view ends with a virtual entry.
+     * @return true, if the view ends with a virtual entry, otherwise false
+     */
+    public boolean hasEndEntry ()
+    {
+        return this.endEntry;
+    }
+
+    /**
+     * This method returns the time stamp of the virtual end entry.
+     * @return time stamp of the virtual end entry
+     */
+    public long getEndTime ()
+    {
+        return this.endTime;
+    }
+
+    /**
+     * This method returns the count of entries of the view including the virtual entries.
+     * @return count of entries of the view including the virtual entries
+     */
+    public int getSize ()
+    {
+        return ( this.startEntry ? 1 : 0 ) + this.toIndex - this.fromIndex + ( this.endEntry ? 1 : 0 );
+    }
+
+    /**
+     * This method returns whether the view contains no entries.
+     * @return true, if the view contains no entries, otherwise false
+     */
+    public boolean isEmpty ()
+    {
+        return getSize () == 0;
+    }
+
+    /**
+     * This method returns the time stamp of the first entry of the view.
+     * @return time stamp of the first entry of the view
+     */
+    public long getFirstTime ()
+    {
+        if ( this.startEntry )
+        {
+            return this.startTime;
+        }
+        return this.fromIndex < this.toIndex ? this.values.getTime ( this.fromIndex ) : this.endTime;
+    }
+
+    /**
+     * This method creates a new batch containing copies of all entries of the view including the virtual entries.
+     * @return new batch of the same type as the underlying batch
+     */
+    public BaseValueBatch toBatch ()
+    {
+        final BaseValueBatch result = this.values.createEmptyBatch ( getSize () );
+        if ( this.startEntry )
+        {
+            if ( this.startSourceIndex >= 0 )
+            {
+                result.addDerived ( this.startTime, this.values, this.startSourceIndex, this.values.getBaseValueCount ( this.startSourceIndex ) );
+            }
+            else
+            {
+                result.addEmpty ( this.startTime );
+            }
+        }
+        result.addAll ( this.values, this.fromIndex, this.toIndex );
+        if ( this.endEntry && !result.isEmpty () )
+        {
+            result.addDerived ( this.endTime, result, result.getSize () - 1, 0 );
+        }
+        return result;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString ()
+    {
+        return String.format ( "range [%s, %s) of %s (start entry: %s at %s from %s; end entry: %s at %s)", this.fromIndex, this.toIndex, this.values, this.startEntry, this.startTime, this.startSourceIndex, this.endEntry, this.endTime );
+    }
+}
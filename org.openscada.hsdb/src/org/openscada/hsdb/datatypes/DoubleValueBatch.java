@@ -0,0 +1,198 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.datatypes;
+
+/**
+ * This class handles a batch of double values for being stored in or retrieved from a storage channel.
+ */
+public class DoubleValueBatch extends BaseValueBatch
+{
+    /** Empty array of double values. */
+    private final static double[] EMPTY_VALUE_ARRAY = new double[0];
+
+    /** Values to be handled. */
+    private double[] values;
+
+    /**
+     * Constructor.
+     * @param capacity initial count of values that can be stored within the batch without resizing the internal arrays
+     */
+    public DoubleValueBatch ( final int capacity )
+    {
+        super ( capacity );
+        this.values = capacity > 0 ? new double[capacity] : EMPTY_VALUE_ARRAY;
+    }
+
+    /**
+     * Constructor that wraps the passed arrays without copying them.
+     * All arrays must at least contain the specified count of elements.
+     * @param times time stamps of the values
+     * @param qualityIndicators quality information of the values
+     * @param manualIndicators percentage of manually set values during the value times
+     * @param baseValueCounts count of values that have been combined to get the values
+     * @param values values to be handled
+     * @param size count of valid values within the passed arrays
+     */
+    public DoubleValueBatch ( final long[] times, final double[] qualityIndicators, final double[] manualIndicators, final long[] baseValueCounts, final double[] values, final int size )
+    {
+        super ( times, qualityIndicators, manualIndicators, baseValueCounts, size );
+        this.values = values;
+    }
+
+    /**
+     * This method returns the value at the specified index.
+     * @param index index of the value
+     * @return value at the specified index
+     */
+    public double getValue ( final int index )
+    {
+        return this.values[index];
+    }
+
+    /**
+     * This method returns the internal array containing the values.
+     * Only the first {@link #getSize()} elements of the array are valid.
+     * @return internal array containing the values
+     */
+    public double[] getValues ()
+    {
+        return this.values;
+    }
+
+    /**
+     * This method appends a new value to the batch.
+     * @param time time stamp of the value
+     * @param qualityIndicator quality information of the value
+     * @param manualIndicator percentage of manually set values during the value time
+     * @param baseValueCount count of values that have been combined to get the value
+     * @param value value to be handled
+     */
+    public void add ( final long time, final double qualityIndicator, final double manualIndicator, final long baseValueCount, final double value )
+    {
+        final int index = append ( time, qualityIndicator, manualIndicator, baseValueCount );
+        this.values[index] = value;
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#getDataType()
+     */
+    public DataType getDataType ()
+    {
+        return DataType.DOUBLE_VALUE;
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#createEmptyBatch(int)
+     */
+    public DoubleValueBatch createEmptyBatch ( final int capacity )
+    {
+        return new DoubleValueBatch ( capacity );
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#createValue(int)
+     */
+    public DoubleValue createValue ( final int index )
+    {
+        return new DoubleValue ( getTime ( index ), getQualityIndicator ( index ), getManualIndicator ( index ), getBaseValueCount ( index ), this.values[index] );
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#toValues()
+     */
+    public DoubleValue[] toValues ()
+    {
+        return toDoubleValues ();
+    }
+
+    /**
+     * This method creates an array of value objects containing all values of the batch.
+     * @return array of value objects
+     */
+    public DoubleValue[] toDoubleValues ()
+    {
+        final int size = getSize ();
+        final DoubleValue[] result = new DoubleValue[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            result[i] = createValue ( i );
+        }
+        return result;
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#resizeValues(int)
+     */
+    protected void resizeValues ( final int capacity )
+    {
+        final double[] newValues = new double[capacity];
+        System.arraycopy ( this.values, 0, newValues, 0, Math.min ( this.values.length, capacity ) );
+        this.values = newValues;
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#copyValue(org.openscada.hsdb.datatypes.BaseValueBatch, int, int)
+     */
+    protected void copyValue ( final BaseValueBatch source, final int sourceIndex, final int targetIndex )
+    {
+        this.values[targetIndex] = ( (DoubleValueBatch)source ).values[sourceIndex];
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#copyValue(org.openscada.hsdb.datatypes.BaseValue, int)
+     */
+    protected void copyValue ( final BaseValue value, final int targetIndex )
+    {
+        this.values[targetIndex] = ( (DoubleValue)value ).getValue ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#copyValues(org.openscada.hsdb.datatypes.BaseValueBatch, int, int, int)
+     */
+    protected void copyValues ( final BaseValueBatch source, final int sourceIndex, final int targetIndex, final int count )
+    {
+        System.arraycopy ( ( (DoubleValueBatch)source ).values, sourceIndex, this.values, targetIndex, count );
+    }
+
+    /**
+     * @see org.openscada.hsdb.datatypes.BaseValueBatch#clearValue(int)
+     */
+    protected void clearValue ( final int targetIndex )
+    {
+        this.values[targetIndex] = 0;
+    }
+
+    /**
+     * This method creates a batch containing copies of the passed value objects.
+     * @param values value objects that have to be copied
+     * @return created batch
+     */
+    public static DoubleValueBatch fromValues ( final DoubleValue[] values )
+    {
+        final int size = values == null ? 0 : values.length;
+        final DoubleValueBatch result = new DoubleValueBatch ( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            final DoubleValue value = values[i];
+            result.add ( value.getTime (), value.getQualityIndicator (), value.getManualIndicator (), value.getBaseValueCount (), value.getValue () );
+        }
+        return result;
+    }
+}
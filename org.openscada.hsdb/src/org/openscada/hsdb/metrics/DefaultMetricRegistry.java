@@ -0,0 +1,173 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class is the default implementation of the MetricRegistry interface.
+ * The metrics are kept in memory and can be accessed via JMX using class {@link MetricRegistryMBean}.
+ * Counters and timers are striped, so updating them from many threads concurrently does not serialize the threads.
+ */
+public class DefaultMetricRegistry implements MetricRegistry
+{
+    /** Available metrics mapped by name. */
+    private final ConcurrentMap<String, Metric> metrics;
+
+    /**
+     * Constructor.
+     */
+    public DefaultMetricRegistry ()
+    {
+        this.metrics = new ConcurrentHashMap<String, Metric> ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.metrics.MetricRegistry#counter(java.lang.String)
+     */
+    public Counter counter ( final String name )
+    {
+        Metric metric = this.metrics.get ( name );
+        if ( metric == null )
+        {
+            final Metric newMetric = new StripedCounter ();
+            metric = this.metrics.putIfAbsent ( name, newMetric );
+            if ( metric == null )
+            {
+                metric = newMetric;
+            }
+        }
+        if ( ! ( metric instanceof Counter ) )
+        {
+            throw new IllegalArgumentException ( String.format ( "metric '%s' is not a counter", name ) );
+        }
+        return (Counter)metric;
+    }
+
+    /**
+     * @see org.openscada.hsdb.metrics.MetricRegistry#timer(java.lang.String)
+     */
+    public Timer timer ( final String name )
+    {
+        Metric metric = this.metrics.get ( name );
+        if ( metric == null )
+        {
+            final Metric newMetric = new StripedTimer ();
+            metric = this.metrics.putIfAbsent ( name, newMetric );
+            if ( metric == null )
+            {
+                metric = newMetric;
+            }
+        }
+        if ( ! ( metric instanceof Timer ) )
+        {
+            throw new IllegalArgumentException ( String.format ( "metric '%s' is not a timer", name ) );
+        }
+        return (Timer)metric;
+    }
+
+    /**
+     * @see org.openscada.hsdb.metrics.MetricRegistry#register(java.lang.String, org.openscada.hsdb.metrics.Gauge)
+     */
+    public void register ( final String name, final Gauge gauge )
+    {
+        this.metrics.put ( name, gauge );
+    }
+
+    /**
+     * @see org.openscada.hsdb.metrics.MetricRegistry#unregister(java.lang.String, org.openscada.hsdb.metrics.Gauge)
+     */
+    public void unregister ( final String name, final Gauge gauge )
+    {
+        this.metrics.remove ( name, gauge );
+    }
+
+    /**
+     * @see org.openscada.hsdb.metrics.MetricRegistry#getMetrics()
+     */
+    public Map<String, Metric> getMetrics ()
+    {
+        return Collections.unmodifiableMap ( new TreeMap<String, Metric> ( this.metrics ) );
+    }
+
+    /**
+     * This class implements the Counter interface using striped cells, so that concurrent threads do not contend for one memory location.
+     */
+    private static class StripedCounter extends StripedMetric implements Counter
+    {
+        /**
+         * @see org.openscada.hsdb.metrics.Counter#add(long)
+         */
+        public void add ( final long delta )
+        {
+            record ( delta, 0, Long.MIN_VALUE );
+        }
+
+        /**
+         * @see org.openscada.hsdb.metrics.Counter#getCount()
+         */
+        public long getCount ()
+        {
+            return getCountSum ();
+        }
+    }
+
+    /**
+     * This class implements the Timer interface using striped cells, so that concurrent threads do not contend for one memory location.
+     */
+    private static class StripedTimer extends StripedMetric implements Timer
+    {
+        /**
+         * @see org.openscada.hsdb.metrics.Timer#update(long)
+         */
+        public void update ( final long duration )
+        {
+            record ( 1, duration, duration );
+        }
+
+        /**
+         * @see org.openscada.hsdb.metrics.Timer#getCount()
+         */
+        public long getCount ()
+        {
+            return getCountSum ();
+        }
+
+        /**
+         * @see org.openscada.hsdb.metrics.Timer#getTotalTime()
+         */
+        public long getTotalTime ()
+        {
+            return getTotalSum ();
+        }
+
+        /**
+         * @see org.openscada.hsdb.metrics.Timer#getMaximumTime()
+         */
+        public long getMaximumTime ()
+        {
+            return getMaximum ();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+import java.util.Map;
+
+/**
+ * This interface provides methods for creating and accessing the metrics of the hsdb engine.
+ * Implementations can be used to pass the metrics to arbitrary monitoring systems.
+ * All methods have to be thread safe.
+ */
+public interface MetricRegistry
+{
+    /**
+     * This method returns the counter with the passed name.
+     * If no counter with the passed name exists, a new counter is created.
+     * @param name name of the counter
+     * @return counter with the passed name
+     */
+    public abstract Counter counter ( String name );
+
+    /**
+     * This method returns the timer with the passed name.
+     * If no timer with the passed name exists, a new timer is created.
+     * @param name name of the timer
+     * @return timer with the passed name
+     */
+    public abstract Timer timer ( String name );
+
+    /**
+     * This method registers the passed gauge.
+     * An existing gauge with the same name is replaced.
+     * @param name name of the gauge
+     * @param gauge gauge that has to be registered
+     */
+    public abstract void register ( String name, Gauge gauge );
+
+    /**
+     * This method removes the passed gauge.
+     * Nothing is done if the gauge has already been replaced by a different gauge with the same name.
+     * @param name name of the gauge
+     * @param gauge gauge that has to be removed
+     */
+    public abstract void unregister ( String name, Gauge gauge );
+
+    /**
+     * This method returns all currently available metrics.
+     * @return currently available metrics mapped by name
+     */
+    public abstract Map<String, Metric> getMetrics ();
+}
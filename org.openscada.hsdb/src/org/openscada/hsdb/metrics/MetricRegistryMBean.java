@@ -0,0 +1,150 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * This class provides the metrics of the registry that is currently used as read only attributes of an MBean.
+ * Counters and gauges are provided as one attribute with the name of the metric.
+ * Timers are provided as three attributes with the suffixes {@value #COUNT_SUFFIX}, {@value #TOTAL_TIME_SUFFIX} and {@value #MAXIMUM_TIME_SUFFIX}.
+ */
+public class MetricRegistryMBean implements DynamicMBean
+{
+    /** Suffix of the attribute providing the count of a timer. */
+    public final static String COUNT_SUFFIX = ".count";
+
+    /** Suffix of the attribute providing the total time of a timer in nanoseconds. */
+    public final static String TOTAL_TIME_SUFFIX = ".totalTimeNanos";
+
+    /** Suffix of the attribute providing the maximum time of a timer in nanoseconds. */
+    public final static String MAXIMUM_TIME_SUFFIX = ".maximumTimeNanos";
+
+    /**
+     * This method returns the current values of all metrics mapped by attribute name.
+     * @return current values of all metrics mapped by attribute name
+     */
+    private Map<String, Long> getValues ()
+    {
+        final Map<String, Long> values = new LinkedHashMap<String, Long> ();
+        for ( final Entry<String, Metric> entry : Metrics.getRegistry ().getMetrics ().entrySet () )
+        {
+            final String name = entry.getKey ();
+            final Metric metric = entry.getValue ();
+            if ( metric instanceof Counter )
+            {
+                values.put ( name, ( (Counter)metric ).getCount () );
+            }
+            else if ( metric instanceof Gauge )
+            {
+                values.put ( name, ( (Gauge)metric ).getValue () );
+            }
+            else if ( metric instanceof Timer )
+            {
+                final Timer timer = (Timer)metric;
+                values.put ( name + COUNT_SUFFIX, timer.getCount () );
+                values.put ( name + TOTAL_TIME_SUFFIX, timer.getTotalTime () );
+                values.put ( name + MAXIMUM_TIME_SUFFIX, timer.getMaximumTime () );
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+     */
+    public Object getAttribute ( final String attribute ) throws AttributeNotFoundException
+    {
+        final Long value = getValues ().get ( attribute );
+        if ( value == null )
+        {
+            throw new AttributeNotFoundException ( attribute );
+        }
+        return value;
+    }
+
+    /**
+     * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+     */
+    public AttributeList getAttributes ( final String[] attributes )
+    {
+        final Map<String, Long> values = getValues ();
+        final AttributeList result = new AttributeList ();
+        for ( final String attribute : attributes )
+        {
+            final Long value = values.get ( attribute );
+            if ( value != null )
+            {
+                result.add ( new Attribute ( attribute, value ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+     */
+    public void setAttribute ( final Attribute attribute ) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException ( String.format ( "attribute '%s' is read only", attribute.getName () ) );
+    }
+
+    /**
+     * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+     */
+    public AttributeList setAttributes ( final AttributeList attributes )
+    {
+        return new AttributeList ();
+    }
+
+    /**
+     * @see javax.management.DynamicMBean#invoke(java.lang.String, java.lang.Object[], java.lang.String[])
+     */
+    public Object invoke ( final String actionName, final Object[] params, final String[] signature ) throws ReflectionException
+    {
+        throw new ReflectionException ( new NoSuchMethodException ( actionName ) );
+    }
+
+    /**
+     * @see javax.management.DynamicMBean#getMBeanInfo()
+     */
+    public MBeanInfo getMBeanInfo ()
+    {
+        final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo> ();
+        for ( final String name : getValues ().keySet () )
+        {
+            attributes.add ( new MBeanAttributeInfo ( name, Long.class.getName (), name, true, false, false ) );
+        }
+        return new MBeanInfo ( getClass ().getName (), "metrics of the hsdb engine", attributes.toArray ( new MBeanAttributeInfo[attributes.size ()] ), null, new MBeanOperationInfo[0], null );
+    }
+}
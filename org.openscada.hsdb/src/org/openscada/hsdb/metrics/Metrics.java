@@ -0,0 +1,170 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class provides access to the metric registry that is used by all components of the hsdb engine.
+ * The components request their metrics from the registry when they are created, so a different registry has to be set before the components are created.
+ * The metrics of the registry are provided via JMX unless this is disabled via system property.
+ * Recording the time that is spent waiting for locks can be disabled via system property, too.
+ */
+public class Metrics
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( Metrics.class );
+
+    /** Name of the system property that specifies whether the metrics are provided via JMX. */
+    public final static String JMX_ENABLED_PROPERTY = "org.openscada.hsdb.metrics.jmx";
+
+    /** Name of the system property that specifies whether the time that is spent waiting for locks is recorded. */
+    public final static String LOCK_TIMING_ENABLED_PROPERTY = "org.openscada.hsdb.metrics.lockTiming";
+
+    /** Name of the MBean providing the metrics. */
+    public final static String OBJECT_NAME = "org.openscada.hsdb:type=Metrics";
+
+    /** Prefix of the names of all metrics. */
+    private final static String NAME_PREFIX = "hsdb";
+
+    /** Registry that is currently used. */
+    private static volatile MetricRegistry registry = new DefaultMetricRegistry ();
+
+    /** Flag indicating whether locks that are created afterwards record the time that is spent waiting for them. */
+    private static volatile boolean lockTimingEnabled = Boolean.parseBoolean ( System.getProperty ( LOCK_TIMING_ENABLED_PROPERTY, "true" ) );
+
+    static
+    {
+        if ( Boolean.parseBoolean ( System.getProperty ( JMX_ENABLED_PROPERTY, "true" ) ) )
+        {
+            registerMBean ();
+        }
+    }
+
+    /**
+     * This method returns the registry that is currently used.
+     * @return registry that is currently used
+     */
+    public static MetricRegistry getRegistry ()
+    {
+        return registry;
+    }
+
+    /**
+     * This method sets the registry that has to be used by components that are created afterwards.
+     * @param metricRegistry registry that has to be used
+     */
+    public static void setRegistry ( final MetricRegistry metricRegistry )
+    {
+        if ( metricRegistry == null )
+        {
+            throw new IllegalArgumentException ( "'metricRegistry' must not be null" );
+        }
+        registry = metricRegistry;
+    }
+
+    /**
+     * This method returns whether locks that are created afterwards record the time that is spent waiting for them.
+     * @return true, if the time that is spent waiting for locks is recorded, otherwise false
+     */
+    public static boolean isLockTimingEnabled ()
+    {
+        return lockTimingEnabled;
+    }
+
+    /**
+     * This method specifies whether locks that are created afterwards record the time that is spent waiting for them.
+     * @param enabled true, if the time that is spent waiting for locks has to be recorded, otherwise false
+     */
+    public static void setLockTimingEnabled ( final boolean enabled )
+    {
+        lockTimingEnabled = enabled;
+    }
+
+    /**
+     * This method creates the name of a metric by joining the common prefix and the passed parts.
+     * @param parts parts of the name
+     * @return name of the metric
+     */
+    public static String name ( final Object... parts )
+    {
+        final StringBuilder name = new StringBuilder ( NAME_PREFIX );
+        for ( final Object part : parts )
+        {
+            name.append ( '.' );
+            name.append ( part );
+        }
+        return name.toString ();
+    }
+
+    /**
+     * This method registers an MBean providing the metrics of the registry that is currently used at the platform MBean server.
+     * An already registered MBean with the same name is replaced.
+     */
+    public static void registerMBean ()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer ();
+            final ObjectName objectName = new ObjectName ( OBJECT_NAME );
+            try
+            {
+                server.registerMBean ( new MetricRegistryMBean (), objectName );
+            }
+            catch ( final InstanceAlreadyExistsException e )
+            {
+                // the MBean has been registered by an older instance of the class
+                server.unregisterMBean ( objectName );
+                server.registerMBean ( new MetricRegistryMBean (), objectName );
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "could not register metrics MBean", e );
+        }
+    }
+
+    /**
+     * This method unregisters the MBean providing the metrics from the platform MBean server.
+     */
+    public static void unregisterMBean ()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer ();
+            final ObjectName objectName = new ObjectName ( OBJECT_NAME );
+            if ( server.isRegistered ( objectName ) )
+            {
+                server.unregisterMBean ( objectName );
+            }
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "could not unregister metrics MBean", e );
+        }
+    }
+}
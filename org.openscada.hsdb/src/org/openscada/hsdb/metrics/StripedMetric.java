@@ -0,0 +1,214 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * This class is the base class of metrics that are updated by many threads concurrently.
+ * As long as the metric is not updated concurrently, all updates are recorded by one base cell.
+ * When an update of the base cell fails due to a concurrent update, several stripes are created and each thread continues with the stripe that is selected via its id.
+ * That way concurrent threads do not update the same memory location and the stripes only have to be created for metrics that are really contended.
+ */
+abstract class StripedMetric
+{
+    /** Maximum count of stripes per metric. */
+    private final static int MAXIMUM_STRIPE_COUNT = 64;
+
+    /** Count of stripes that are created when the base cell is contended. The count is a power of two. */
+    private final static int STRIPE_COUNT = getStripeCount ();
+
+    /** Cell that records all updates as long as the metric is not contended. */
+    private final Cell base;
+
+    /** Stripes that are used after the base cell has been contended or null if the base cell has not been contended yet. */
+    private volatile Cell[] stripes;
+
+    /**
+     * Constructor.
+     */
+    protected StripedMetric ()
+    {
+        this.base = new Cell ();
+        this.stripes = null;
+    }
+
+    /**
+     * This method returns the count of stripes that are created when the base cell is contended.
+     * @return smallest power of two that is not less than the count of available processors limited to the maximum count of stripes
+     */
+    private static int getStripeCount ()
+    {
+        final int processorCount = Math.min ( Runtime.getRuntime ().availableProcessors (), MAXIMUM_STRIPE_COUNT );
+        int stripeCount = 1;
+        while ( stripeCount < processorCount )
+        {
+            stripeCount <<= 1;
+        }
+        return stripeCount;
+    }
+
+    /**
+     * This method adds the passed delta to the count and to the total of the cell of the current thread and raises its maximum to the passed value if required.
+     * @param countDelta delta that has to be added to the count
+     * @param totalDelta delta that has to be added to the total
+     * @param maximum value that is recorded as maximum if it is greater than the current maximum
+     */
+    protected void record ( final long countDelta, final long totalDelta, final long maximum )
+    {
+        final Cell[] stripes = this.stripes;
+        Cell cell = stripes == null ? this.base : stripes[getStripeIndex ()];
+        final long count = cell.count;
+        if ( !Cell.COUNT.compareAndSet ( cell, count, count + countDelta ) )
+        {
+            cell = getContendedCell ();
+            Cell.COUNT.addAndGet ( cell, countDelta );
+        }
+        if ( totalDelta != 0 )
+        {
+            Cell.TOTAL.addAndGet ( cell, totalDelta );
+        }
+        long currentMaximum = cell.maximum;
+        while ( maximum > currentMaximum && !Cell.MAXIMUM.compareAndSet ( cell, currentMaximum, maximum ) )
+        {
+            currentMaximum = cell.maximum;
+        }
+    }
+
+    /**
+     * This method returns the cell of the current thread after an update failed due to a concurrent update.
+     * The stripes are created if they do not exist yet.
+     * @return cell of the current thread
+     */
+    private Cell getContendedCell ()
+    {
+        Cell[] stripes = this.stripes;
+        if ( stripes == null )
+        {
+            synchronized ( this )
+            {
+                stripes = this.stripes;
+                if ( stripes == null )
+                {
+                    stripes = new Cell[STRIPE_COUNT];
+                    for ( int i = 0; i < stripes.length; i++ )
+                    {
+                        stripes[i] = new Cell ();
+                    }
+                    this.stripes = stripes;
+                }
+            }
+        }
+        return stripes[getStripeIndex ()];
+    }
+
+    /**
+     * This method returns the index of the stripe of the current thread.
+     * @return index of the stripe of the current thread
+     */
+    private static int getStripeIndex ()
+    {
+        final long threadId = Thread.currentThread ().getId ();
+        return (int) ( threadId ^ threadId >>> 32 ) & ( STRIPE_COUNT - 1 );
+    }
+
+    /**
+     * This method returns the sum of the counts of all cells.
+     * @return sum of the counts of all cells
+     */
+    protected long getCountSum ()
+    {
+        long sum = this.base.count;
+        final Cell[] stripes = this.stripes;
+        if ( stripes != null )
+        {
+            for ( final Cell cell : stripes )
+            {
+                sum += cell.count;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * This method returns the sum of the totals of all cells.
+     * @return sum of the totals of all cells
+     */
+    protected long getTotalSum ()
+    {
+        long sum = this.base.total;
+        final Cell[] stripes = this.stripes;
+        if ( stripes != null )
+        {
+            for ( final Cell cell : stripes )
+            {
+                sum += cell.total;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * This method returns the maximum of the maximums of all cells.
+     * @return maximum of the maximums of all cells
+     */
+    protected long getMaximum ()
+    {
+        long maximum = this.base.maximum;
+        final Cell[] stripes = this.stripes;
+        if ( stripes != null )
+        {
+            for ( final Cell cell : stripes )
+            {
+                maximum = Math.max ( maximum, cell.maximum );
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * This class holds the values of one stripe.
+     * The padding fields prevent that the values of different stripes are located within the same cache line.
+     */
+    private static class Cell
+    {
+        /** Updater of the count. */
+        private final static AtomicLongFieldUpdater<Cell> COUNT = AtomicLongFieldUpdater.newUpdater ( Cell.class, "count" );
+
+        /** Updater of the total. */
+        private final static AtomicLongFieldUpdater<Cell> TOTAL = AtomicLongFieldUpdater.newUpdater ( Cell.class, "total" );
+
+        /** Updater of the maximum. */
+        private final static AtomicLongFieldUpdater<Cell> MAXIMUM = AtomicLongFieldUpdater.newUpdater ( Cell.class, "maximum" );
+
+        /** Count of recorded events. */
+        private volatile long count;
+
+        /** Sum of the recorded quantities. */
+        private volatile long total;
+
+        /** Maximum recorded quantity. */
+        private volatile long maximum;
+
+        /** Padding. */
+        @SuppressWarnings ( "unused" )
+        private long p1, p2, p3, p4, p5, p6, p7, p8;
+    }
+}
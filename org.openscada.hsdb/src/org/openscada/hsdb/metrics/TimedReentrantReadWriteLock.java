@@ -0,0 +1,156 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class extends ReentrantReadWriteLock by recording the time that is spent waiting for the read lock and the write lock.
+ * Only calls of method lock are measured. Calls of the methods tryLock and lockInterruptibly are not recorded.
+ * A lock that can be acquired immediately is not recorded either, so the timers only count the acquisitions that had to wait and uncontended acquisitions neither read the clock nor update a timer.
+ * The lock is not fair, so trying to acquire the lock before waiting for it does not change its behaviour.
+ */
+public class TimedReentrantReadWriteLock extends ReentrantReadWriteLock
+{
+    /** Serial version uid. */
+    private static final long serialVersionUID = 1L;
+
+    /** Read lock recording its waiting time. */
+    private final TimedReadLock readLock;
+
+    /** Write lock recording its waiting time. */
+    private final TimedWriteLock writeLock;
+
+    /**
+     * Constructor.
+     * @param readWaitTimer timer recording the time that is spent waiting for the read lock
+     * @param writeWaitTimer timer recording the time that is spent waiting for the write lock
+     */
+    public TimedReentrantReadWriteLock ( final Timer readWaitTimer, final Timer writeWaitTimer )
+    {
+        this.readLock = new TimedReadLock ( this, readWaitTimer );
+        this.writeLock = new TimedWriteLock ( this, writeWaitTimer );
+    }
+
+    /**
+     * This method creates a lock that records the time that is spent waiting for it if this is enabled via class {@link Metrics}.
+     * @param readWaitTimer timer recording the time that is spent waiting for the read lock
+     * @param writeWaitTimer timer recording the time that is spent waiting for the write lock
+     * @return timed lock if recording the time that is spent waiting for locks is enabled, otherwise a plain ReentrantReadWriteLock
+     */
+    public static ReentrantReadWriteLock create ( final Timer readWaitTimer, final Timer writeWaitTimer )
+    {
+        return Metrics.isLockTimingEnabled () ? new TimedReentrantReadWriteLock ( readWaitTimer, writeWaitTimer ) : new ReentrantReadWriteLock ();
+    }
+
+    /**
+     * @see java.util.concurrent.locks.ReentrantReadWriteLock#readLock()
+     */
+    @Override
+    public ReentrantReadWriteLock.ReadLock readLock ()
+    {
+        return this.readLock;
+    }
+
+    /**
+     * @see java.util.concurrent.locks.ReentrantReadWriteLock#writeLock()
+     */
+    @Override
+    public ReentrantReadWriteLock.WriteLock writeLock ()
+    {
+        return this.writeLock;
+    }
+
+    /**
+     * This class records the time that is spent waiting for the read lock.
+     */
+    private static class TimedReadLock extends ReentrantReadWriteLock.ReadLock
+    {
+        /** Serial version uid. */
+        private static final long serialVersionUID = 1L;
+
+        /** Timer recording the time that is spent waiting for the lock. */
+        private final Timer waitTimer;
+
+        /**
+         * Constructor.
+         * @param lock lock providing the synchronization
+         * @param waitTimer timer recording the time that is spent waiting for the lock
+         */
+        public TimedReadLock ( final ReentrantReadWriteLock lock, final Timer waitTimer )
+        {
+            super ( lock );
+            this.waitTimer = waitTimer;
+        }
+
+        /**
+         * @see java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock#lock()
+         */
+        @Override
+        public void lock ()
+        {
+            if ( super.tryLock () )
+            {
+                return;
+            }
+            final long startTime = System.nanoTime ();
+            super.lock ();
+            this.waitTimer.update ( System.nanoTime () - startTime );
+        }
+    }
+
+    /**
+     * This class records the time that is spent waiting for the write lock.
+     */
+    private static class TimedWriteLock extends ReentrantReadWriteLock.WriteLock
+    {
+        /** Serial version uid. */
+        private static final long serialVersionUID = 1L;
+
+        /** Timer recording the time that is spent waiting for the lock. */
+        private final Timer waitTimer;
+
+        /**
+         * Constructor.
+         * @param lock lock providing the synchronization
+         * @param waitTimer timer recording the time that is spent waiting for the lock
+         */
+        public TimedWriteLock ( final ReentrantReadWriteLock lock, final Timer waitTimer )
+        {
+            super ( lock );
+            this.waitTimer = waitTimer;
+        }
+
+        /**
+         * @see java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock#lock()
+         */
+        @Override
+        public void lock ()
+        {
+            if ( super.tryLock () )
+            {
+                return;
+            }
+            final long startTime = System.nanoTime ();
+            super.lock ();
+            this.waitTimer.update ( System.nanoTime () - startTime );
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.metrics;
+
+/**
+ * This interface provides methods for recording durations.
+ * Rates and average durations can be derived by sampling the count and the total time periodically.
+ */
+public interface Timer extends Metric
+{
+    /**
+     * This method records a duration.
+     * @param duration duration in nanoseconds
+     */
+    public abstract void update ( long duration );
+
+    /**
+     * This method returns the count of recorded durations.
+     * @return count of recorded durations
+     */
+    public abstract long getCount ();
+
+    /**
+     * This method returns the sum of all recorded durations.
+     * @return sum of all recorded durations in nanoseconds
+     */
+    public abstract long getTotalTime ();
+
+    /**
+     * This method returns the maximum recorded duration.
+     * @return maximum recorded duration in nanoseconds
+     */
+    public abstract long getMaximumTime ();
+}
@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This task is used to periodically delete old data.
+ * Storage channels that are provided by back end managers only request the cleanup, which is then performed by the {@link RetentionService}.
  * @author Ludwig Straub
  */
 public class RelictCleanerCallerTask implements Runnable
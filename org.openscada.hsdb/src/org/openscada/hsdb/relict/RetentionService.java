@@ -0,0 +1,278 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.relict;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openscada.hsdb.backend.BackEndManager;
+import org.openscada.utils.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class periodically deletes old data of back end managers.
+ * Old data is deleted in small batches, so that the back end managers are only locked for a short time.
+ * The cleanup of the different back end managers is started with a random delay and performed sequentially by one thread, so that the cleanup does not cause load peaks.
+ * The storage channels of the back end managers request the cleanup via the shared instance when their relicts have to be cleaned, see {@link #requestCleanup(BackEndManager)}.
+ */
+public class RetentionService
+{
+    /** The default logger. */
+    private final static Logger logger = LoggerFactory.getLogger ( RetentionService.class );
+
+    /** Id of the thread that deletes old data. */
+    private final static String RETENTION_THREAD_ID = "hsdb.RetentionThread";
+
+    /** Name of the system property that specifies the time span in milliseconds between two cleanup runs of a back end manager of the shared instance. */
+    public final static String PERIOD_PROPERTY = "org.openscada.hsdb.retention.period";
+
+    /** Name of the system property that specifies the maximum count of back end fragments that are deleted in one batch by the shared instance. */
+    public final static String BATCH_SIZE_PROPERTY = "org.openscada.hsdb.retention.batchSize";
+
+    /** Name of the system property that specifies the time span in milliseconds between two batches of one cleanup run of the shared instance. */
+    public final static String BATCH_PAUSE_PROPERTY = "org.openscada.hsdb.retention.batchPause";
+
+    /** Default time span in milliseconds between two cleanup runs of a back end manager. */
+    private final static long DEFAULT_PERIOD = 10 * 60 * 1000;
+
+    /** Default maximum count of back end fragments that are deleted in one batch. */
+    private final static int DEFAULT_BATCH_SIZE = 16;
+
+    /** Default time span in milliseconds between two batches of one cleanup run. */
+    private final static long DEFAULT_BATCH_PAUSE = 100;
+
+    /** Instance that is shared by all back end managers of the process. */
+    private final static RetentionService instance = new RetentionService ( Long.getLong ( PERIOD_PROPERTY, DEFAULT_PERIOD ), Integer.getInteger ( BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE ), Long.getLong ( BATCH_PAUSE_PROPERTY, DEFAULT_BATCH_PAUSE ) );
+
+    /** Executor that is used to delete old data. */
+    private final ScheduledExecutorService executor;
+
+    /** Tasks of the registered back end managers. */
+    private final Map<BackEndManager<?>, RetentionTask> tasks;
+
+    /** Random generator that is used to distribute the cleanup of the back end managers. */
+    private final Random random;
+
+    /** Time span in milliseconds between two cleanup runs of a back end manager. */
+    private final long period;
+
+    /** Maximum count of back end fragments that are deleted in one batch. */
+    private final int batchSize;
+
+    /** Time span in milliseconds between two batches of one cleanup run. */
+    private final long batchPause;
+
+    /**
+     * Constructor.
+     * @param period time span in milliseconds between two cleanup runs of a back end manager
+     * @param batchSize maximum count of back end fragments that are deleted in one batch
+     * @param batchPause time span in milliseconds between two batches of one cleanup run
+     */
+    public RetentionService ( final long period, final int batchSize, final long batchPause )
+    {
+        if ( period < 1 || batchSize < 1 || batchPause < 0 )
+        {
+            throw new IllegalArgumentException ( String.format ( "invalid retention configuration (period: %s, batch size: %s, batch pause: %s)", period, batchSize, batchPause ) );
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor ( new NamedThreadFactory ( RETENTION_THREAD_ID, true ) );
+        this.tasks = new HashMap<BackEndManager<?>, RetentionTask> ();
+        this.random = new Random ();
+        this.period = period;
+        this.batchSize = batchSize;
+        this.batchPause = batchPause;
+    }
+
+    /**
+     * This method returns the instance that is shared by all back end managers of the process.
+     * @return instance that is shared by all back end managers of the process
+     */
+    public static RetentionService getInstance ()
+    {
+        return instance;
+    }
+
+    /**
+     * This method registers a back end manager whose old data has to be deleted periodically.
+     * The first cleanup run is started after a random delay within the period.
+     * @param backEndManager back end manager whose old data has to be deleted
+     */
+    public synchronized void addBackEndManager ( final BackEndManager<?> backEndManager )
+    {
+        if ( backEndManager == null || this.tasks.containsKey ( backEndManager ) )
+        {
+            return;
+        }
+        final RetentionTask task = new RetentionTask ( backEndManager );
+        this.tasks.put ( backEndManager, task );
+        task.schedule ( ( this.random.nextLong () & Long.MAX_VALUE ) % this.period );
+    }
+
+    /**
+     * This method requests the deletion of old data of the passed back end manager.
+     * The back end manager is registered if it is not yet known. The deletion is started within the batch pause, unless it is already scheduled earlier.
+     * Since all requests are processed by one thread, requests for several back end managers at the same time are processed one batch after the other.
+     * @param backEndManager back end manager whose old data has to be deleted
+     */
+    public synchronized void requestCleanup ( final BackEndManager<?> backEndManager )
+    {
+        if ( backEndManager == null )
+        {
+            return;
+        }
+        RetentionTask task = this.tasks.get ( backEndManager );
+        if ( task == null )
+        {
+            task = new RetentionTask ( backEndManager );
+            this.tasks.put ( backEndManager, task );
+        }
+        else if ( task.getDelay () <= this.batchPause )
+        {
+            return;
+        }
+        task.schedule ( ( this.random.nextLong () & Long.MAX_VALUE ) % ( this.batchPause + 1 ) );
+    }
+
+    /**
+     * This method unregisters a back end manager.
+     * A batch that is currently being processed is completed.
+     * @param backEndManager back end manager that has to be unregistered
+     */
+    public synchronized void removeBackEndManager ( final BackEndManager<?> backEndManager )
+    {
+        final RetentionTask task = this.tasks.remove ( backEndManager );
+        if ( task != null )
+        {
+            task.cancel ();
+        }
+    }
+
+    /**
+     * This method stops the deletion of old data for all registered back end managers.
+     */
+    public synchronized void shutdown ()
+    {
+        for ( final RetentionTask task : this.tasks.values () )
+        {
+            task.cancel ();
+        }
+        this.tasks.clear ();
+        this.executor.shutdown ();
+    }
+
+    /**
+     * This class deletes the old data of one back end manager.
+     * After each batch, the task reschedules itself either after the batch pause if further data might be expired or after the period.
+     */
+    private class RetentionTask implements Runnable
+    {
+        /** Back end manager whose old data has to be deleted. */
+        private final BackEndManager<?> backEndManager;
+
+        /** Currently scheduled execution of the task. */
+        private ScheduledFuture<?> future;
+
+        /** Flag indicating whether the task has been cancelled or not. */
+        private boolean cancelled;
+
+        /**
+         * Constructor.
+         * @param backEndManager back end manager whose old data has to be deleted
+         */
+        public RetentionTask ( final BackEndManager<?> backEndManager )
+        {
+            this.backEndManager = backEndManager;
+            this.cancelled = false;
+        }
+
+        /**
+         * This method schedules the next execution of the task.
+         * An execution that is scheduled but not yet started is replaced, so that at most one execution is pending.
+         * @param delay delay in milliseconds after which the task has to be executed
+         */
+        public void schedule ( final long delay )
+        {
+            synchronized ( RetentionService.this )
+            {
+                if ( !this.cancelled )
+                {
+                    if ( this.future != null )
+                    {
+                        this.future.cancel ( false );
+                    }
+                    this.future = RetentionService.this.executor.schedule ( this, delay, TimeUnit.MILLISECONDS );
+                }
+            }
+        }
+
+        /**
+         * This method returns the delay in milliseconds until the next execution of the task.
+         * @return delay in milliseconds until the next execution of the task or Long.MAX_VALUE if no execution is scheduled
+         */
+        public long getDelay ()
+        {
+            synchronized ( RetentionService.this )
+            {
+                return this.future == null || this.future.isDone () ? Long.MAX_VALUE : this.future.getDelay ( TimeUnit.MILLISECONDS );
+            }
+        }
+
+        /**
+         * This method cancels the task.
+         */
+        public void cancel ()
+        {
+            synchronized ( RetentionService.this )
+            {
+                this.cancelled = true;
+                if ( this.future != null )
+                {
+                    this.future.cancel ( false );
+                }
+            }
+        }
+
+        /**
+         * This method deletes one batch of old data.
+         */
+        public void run ()
+        {
+            int deletedCount = 0;
+            try
+            {
+                deletedCount = this.backEndManager.deleteExpiredBackEnds ( System.currentTimeMillis (), RetentionService.this.batchSize );
+                if ( deletedCount > 0 )
+                {
+                    logger.debug ( String.format ( "%s old back end fragments of configuration with id '%s' deleted", deletedCount, this.backEndManager.getConfiguration ().getId () ) );
+                }
+            }
+            catch ( final Exception e )
+            {
+                logger.warn ( "error while cleaning relicts", e );
+            }
+            schedule ( deletedCount >= RetentionService.this.batchSize ? RetentionService.this.batchPause : RetentionService.this.period );
+        }
+    }
+}
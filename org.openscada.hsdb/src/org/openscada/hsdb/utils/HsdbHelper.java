@@ -22,12 +22,20 @@ package org.openscada.hsdb.utils;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.openscada.hsdb.BatchStorageChannel;
+import org.openscada.hsdb.ExtendedBatchStorageChannel;
 import org.openscada.hsdb.ExtendedStorageChannel;
+import org.openscada.hsdb.StorageChannel;
+import org.openscada.hsdb.ValueCursor;
 import org.openscada.hsdb.calculation.CalculationLogicProvider;
 import org.openscada.hsdb.datatypes.BaseValue;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+import org.openscada.hsdb.datatypes.BaseValueBatchRange;
 import org.openscada.hsdb.datatypes.DataType;
 import org.openscada.hsdb.datatypes.DoubleValue;
+import org.openscada.hsdb.datatypes.DoubleValueBatch;
 import org.openscada.hsdb.datatypes.LongValue;
+import org.openscada.hsdb.datatypes.LongValueBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,20 +81,8 @@ public class HsdbHelper
             }
         }
         final List<BaseValue> blockValues = new ArrayList<BaseValue> ();
-        int firstRelevantEntryIndex = startIndex;
-        int lastRelevantEntryIndex = values.length;
-        for ( int i = firstRelevantEntryIndex; i < values.length; i++ )
-        {
-            if ( values[i].getTime () <= startTime )
-            {
-                firstRelevantEntryIndex = i;
-            }
-            if ( values[i].getTime () >= endTime )
-            {
-                lastRelevantEntryIndex = i;
-                break;
-            }
-        }
+        final int firstRelevantEntryIndex = Math.max ( startIndex, findFirstIndexAfter ( values, startIndex, startTime ) - 1 );
+        final int lastRelevantEntryIndex = findFirstIndexAfter ( values, startIndex, endTime - 1 );
         final BaseValue firstValue = values[firstRelevantEntryIndex];
         final long firstStartTime = firstValue.getTime ();
         if ( firstStartTime != startTime )
@@ -139,6 +135,288 @@ public class HsdbHelper
         return blockValues.toArray ( emptyResultArray );
     }
 
+    /**
+     * This method extracts a sub batch out of the passed batch of values matching the specified criteria.
+     * The method works like the method {@link #extractSubArray(BaseValue[], long, long, int, BaseValue[])}.
+     * The resulting batch is of the same type as the passed batch.
+     * @param values values to be processed
+     * @param startTime start time for extracting
+     * @param endTime end time for extracting
+     * @param startIndex index where to start the search for valid batch entries. the index has to be set before the first value that lies within the requested time span or it has to be set to 0, if the search should start at the beginning of the batch
+     * @return normalized batch
+     */
+    public static BaseValueBatch extractSubBatch ( final BaseValueBatch values, final long startTime, final long endTime, final int startIndex )
+    {
+        return sliceBatch ( values, startTime, endTime, startIndex ).toBatch ();
+    }
+
+    /**
+     * This method returns a view of the passed batch of values matching the specified criteria without copying the values.
+     * The view contains the same entries as the batch that is returned by the method {@link #extractSubBatch(BaseValueBatch, long, long, int)}.
+     * The relevant values are located via binary search.
+     * @param values values to be processed
+     * @param startTime start time for extracting
+     * @param endTime end time for extracting
+     * @param startIndex index where to start the search for valid batch entries. the index has to be set before the first value that lies within the requested time span or it has to be set to 0, if the search should start at the beginning of the batch
+     * @return view of the normalized values
+     */
+    public static BaseValueBatchRange sliceBatch ( final BaseValueBatch values, final long startTime, final long endTime, final int startIndex )
+    {
+        if ( startTime >= endTime )
+        {
+            return new BaseValueBatchRange ( values, 0, 0, false, startTime, -1, false, endTime );
+        }
+        final int size = values.getSize ();
+        if ( size == 0 || startIndex >= size )
+        {
+            return new BaseValueBatchRange ( values, size, size, true, startTime, -1, true, endTime );
+        }
+        final long[] times = values.getTimes ();
+        final int firstRelevantEntryIndex = Math.max ( startIndex, findFirstIndexAfter ( times, startIndex, size, startTime ) - 1 );
+        final int lastRelevantEntryIndex = findFirstIndexAfter ( times, startIndex, size, endTime - 1 );
+        final long firstStartTime = times[firstRelevantEntryIndex];
+        if ( firstStartTime == startTime )
+        {
+            return new BaseValueBatchRange ( values, firstRelevantEntryIndex, lastRelevantEntryIndex, false, startTime, -1, true, endTime );
+        }
+        if ( firstStartTime < startTime )
+        {
+            return new BaseValueBatchRange ( values, firstRelevantEntryIndex + 1, lastRelevantEntryIndex, true, startTime, firstRelevantEntryIndex, true, endTime );
+        }
+        return new BaseValueBatchRange ( values, firstRelevantEntryIndex, lastRelevantEntryIndex, true, startTime, -1, true, endTime );
+    }
+
+    /**
+     * This method searches the index of the first time stamp that is greater than the passed time using binary search.
+     * @param times time stamps sorted in ascending order
+     * @param fromIndex index of the first time stamp that will be searched
+     * @param toIndex index after the last time stamp that will be searched
+     * @param time time stamp to be searched
+     * @return index of the first time stamp that is greater than the passed time or toIndex if no such time stamp exists
+     */
+    public static int findFirstIndexAfter ( final long[] times, final int fromIndex, final int toIndex, final long time )
+    {
+        int low = fromIndex;
+        int high = toIndex;
+        while ( low < high )
+        {
+            final int mid = ( low + high ) >>> 1;
+            if ( times[mid] <= time )
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This method searches the index of the first value with a time stamp that is greater than the passed time using binary search.
+     * @param values values sorted by time in ascending order
+     * @param fromIndex index of the first value that will be searched
+     * @param time time stamp to be searched
+     * @return index of the first value with a time stamp that is greater than the passed time or the length of the array if no such value exists
+     */
+    private static int findFirstIndexAfter ( final BaseValue[] values, final int fromIndex, final long time )
+    {
+        int low = fromIndex;
+        int high = values.length;
+        while ( low < high )
+        {
+            final int mid = ( low + high ) >>> 1;
+            if ( values[mid].getTime () <= time )
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This method retrieves the long values of the specified time span from the passed storage channel as batch.
+     * If the storage channel does not support batches, the values are retrieved as objects and converted.
+     * @param storageChannel storage channel from which the values have to be retrieved
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return long values that match the specified time span
+     * @throws Exception in case of problems while retrieving the values
+     */
+    public static LongValueBatch getLongValueBatch ( final StorageChannel storageChannel, final long startTime, final long endTime ) throws Exception
+    {
+        if ( storageChannel instanceof BatchStorageChannel )
+        {
+            return ( (BatchStorageChannel)storageChannel ).getLongValueBatch ( startTime, endTime );
+        }
+        return LongValueBatch.fromValues ( storageChannel.getLongValues ( startTime, endTime ) );
+    }
+
+    /**
+     * This method retrieves the double values of the specified time span from the passed storage channel as batch.
+     * If the storage channel does not support batches, the values are retrieved as objects and converted.
+     * @param storageChannel storage channel from which the values have to be retrieved
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return double values that match the specified time span
+     * @throws Exception in case of problems while retrieving the values
+     */
+    public static DoubleValueBatch getDoubleValueBatch ( final ExtendedStorageChannel storageChannel, final long startTime, final long endTime ) throws Exception
+    {
+        if ( storageChannel instanceof ExtendedBatchStorageChannel )
+        {
+            return ( (ExtendedBatchStorageChannel)storageChannel ).getDoubleValueBatch ( startTime, endTime );
+        }
+        return DoubleValueBatch.fromValues ( storageChannel.getDoubleValues ( startTime, endTime ) );
+    }
+
+    /**
+     * This method retrieves the values of the specified data type and time span from the passed storage channel as batch.
+     * @param storageChannel storage channel from which the values have to be retrieved
+     * @param dataType data type of the values that have to be retrieved
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return values that match the specified time span or null if the data type is not supported
+     * @throws Exception in case of problems while retrieving the values
+     */
+    public static BaseValueBatch getValueBatch ( final ExtendedStorageChannel storageChannel, final DataType dataType, final long startTime, final long endTime ) throws Exception
+    {
+        switch ( dataType )
+        {
+        case LONG_VALUE:
+        {
+            return getLongValueBatch ( storageChannel, startTime, endTime );
+        }
+        case DOUBLE_VALUE:
+        {
+            return getDoubleValueBatch ( storageChannel, startTime, endTime );
+        }
+        }
+        return null;
+    }
+
+    /**
+     * This method opens a cursor for the long values of the specified time span of the passed storage channel.
+     * If the storage channel does not support cursors, all values are retrieved at once and returned as one batch.
+     * @param storageChannel storage channel from which the values have to be retrieved
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return cursor providing the long values that match the specified time span
+     * @throws Exception in case of problems while retrieving the values
+     */
+    public static ValueCursor<LongValueBatch> getLongValueCursor ( final StorageChannel storageChannel, final long startTime, final long endTime ) throws Exception
+    {
+        if ( storageChannel instanceof BatchStorageChannel )
+        {
+            return ( (BatchStorageChannel)storageChannel ).getLongValueCursor ( startTime, endTime );
+        }
+        return new SingleBatchValueCursor<LongValueBatch> ( getLongValueBatch ( storageChannel, startTime, endTime ), new LongValueBatch ( 0 ) );
+    }
+
+    /**
+     * This method opens a cursor for the double values of the specified time span of the passed storage channel.
+     * If the storage channel does not support cursors, all values are retrieved at once and returned as one batch.
+     * @param storageChannel storage channel from which the values have to be retrieved
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return cursor providing the double values that match the specified time span
+     * @throws Exception in case of problems while retrieving the values
+     */
+    public static ValueCursor<DoubleValueBatch> getDoubleValueCursor ( final ExtendedStorageChannel storageChannel, final long startTime, final long endTime ) throws Exception
+    {
+        if ( storageChannel instanceof ExtendedBatchStorageChannel )
+        {
+            return ( (ExtendedBatchStorageChannel)storageChannel ).getDoubleValueCursor ( startTime, endTime );
+        }
+        return new SingleBatchValueCursor<DoubleValueBatch> ( getDoubleValueBatch ( storageChannel, startTime, endTime ), new DoubleValueBatch ( 0 ) );
+    }
+
+    /**
+     * This method opens a cursor for the values of the specified data type and time span of the passed storage channel.
+     * @param storageChannel storage channel from which the values have to be retrieved
+     * @param dataType data type of the values that have to be retrieved
+     * @param startTime start of the time span for which the values have to be retrieved
+     * @param endTime end of the time span for which the values have to be retrieved
+     * @return cursor providing the values that match the specified time span or null if the data type is not supported
+     * @throws Exception in case of problems while retrieving the values
+     */
+    public static ValueCursor<? extends BaseValueBatch> getValueCursor ( final ExtendedStorageChannel storageChannel, final DataType dataType, final long startTime, final long endTime ) throws Exception
+    {
+        switch ( dataType )
+        {
+        case LONG_VALUE:
+        {
+            return getLongValueCursor ( storageChannel, startTime, endTime );
+        }
+        case DOUBLE_VALUE:
+        {
+            return getDoubleValueCursor ( storageChannel, startTime, endTime );
+        }
+        }
+        return null;
+    }
+
+    /**
+     * This method updates the passed batch of long values in the passed storage channel.
+     * If the storage channel does not support batches, the values are converted to objects.
+     * @param storageChannel storage channel that has to be updated
+     * @param longValues values that have to be updated
+     * @throws Exception in case of problems while updating the values
+     */
+    public static void updateLongValueBatch ( final StorageChannel storageChannel, final LongValueBatch longValues ) throws Exception
+    {
+        if ( storageChannel instanceof BatchStorageChannel )
+        {
+            ( (BatchStorageChannel)storageChannel ).updateLongValueBatch ( longValues );
+        }
+        else
+        {
+            storageChannel.updateLongs ( longValues.toLongValues () );
+        }
+    }
+
+    /**
+     * This method updates the passed batch of double values in the passed storage channel.
+     * If the storage channel does not support batches, the values are converted to objects.
+     * @param storageChannel storage channel that has to be updated
+     * @param doubleValues values that have to be updated
+     * @throws Exception in case of problems while updating the values
+     */
+    public static void updateDoubleValueBatch ( final ExtendedStorageChannel storageChannel, final DoubleValueBatch doubleValues ) throws Exception
+    {
+        if ( storageChannel instanceof ExtendedBatchStorageChannel )
+        {
+            ( (ExtendedBatchStorageChannel)storageChannel ).updateDoubleValueBatch ( doubleValues );
+        }
+        else
+        {
+            storageChannel.updateDoubles ( doubleValues.toDoubleValues () );
+        }
+    }
+
+    /**
+     * This method updates the passed batch of values in the passed storage channel.
+     * @param storageChannel storage channel that has to be updated
+     * @param values values that have to be updated
+     * @throws Exception in case of problems while updating the values
+     */
+    public static void updateValueBatch ( final ExtendedStorageChannel storageChannel, final BaseValueBatch values ) throws Exception
+    {
+        if ( values instanceof LongValueBatch )
+        {
+            updateLongValueBatch ( storageChannel, (LongValueBatch)values );
+        }
+        else if ( values instanceof DoubleValueBatch )
+        {
+            updateDoubleValueBatch ( storageChannel, (DoubleValueBatch)values );
+        }
+    }
+
     /**
      * This method reads data from the input channel and creates values for the output channel.
      * @param inputChannel storage channel from which data has to be extracted
@@ -150,13 +428,59 @@ public class HsdbHelper
      * @throws Exception in case of read or write problems during the data processing
      */
     public static void processData ( final ExtendedStorageChannel inputChannel, final ExtendedStorageChannel outputChannel, final CalculationLogicProvider inputCalculationLogicProvider, final CalculationLogicProvider outputCalculationLogicProvider, final long startTime, final long endTime ) throws Exception
+    {
+        if ( outputChannel == null )
+        {
+            final String message = "insufficient input data: parameters must not be null";
+            logger.error ( message );
+            throw new IllegalArgumentException ( message );
+        }
+        processData ( inputChannel, outputChannel, null, inputCalculationLogicProvider, outputCalculationLogicProvider, startTime, endTime );
+    }
+
+    /**
+     * This method reads data from the input channel and creates values for an output channel without writing them.
+     * All created values are kept in memory, so the specified time span should not exceed the time span of a single back end fragment.
+     * @param inputChannel storage channel from which data has to be extracted
+     * @param inputCalculationLogicProvider calculation logic provider containing information for the input channel
+     * @param outputCalculationLogicProvider calculation logic provider containing information for the output channel
+     * @param startTime time stamp where to begin the data processing
+     * @param endTime time stamp where to end the data processing
+     * @return batch containing the created values
+     * @throws Exception in case of read problems during the data processing
+     */
+    public static BaseValueBatch calculateData ( final ExtendedStorageChannel inputChannel, final CalculationLogicProvider inputCalculationLogicProvider, final CalculationLogicProvider outputCalculationLogicProvider, final long startTime, final long endTime ) throws Exception
+    {
+        if ( outputCalculationLogicProvider == null )
+        {
+            final String message = "insufficient input data: parameters must not be null";
+            logger.error ( message );
+            throw new IllegalArgumentException ( message );
+        }
+        final BaseValueBatch result = BaseValueBatch.createBatch ( outputCalculationLogicProvider.getOutputType (), 16 );
+        processData ( inputChannel, null, result, inputCalculationLogicProvider, outputCalculationLogicProvider, startTime, endTime );
+        return result;
+    }
+
+    /**
+     * This method reads data from the input channel and creates values that are either written to the output channel or added to the passed batch.
+     * @param inputChannel storage channel from which data has to be extracted
+     * @param outputChannel storage channel to which data has to be written or null if the data has to be added to the passed batch
+     * @param result batch to which the created values are added if no output channel is passed
+     * @param inputCalculationLogicProvider calculation logic provider containing information for the input channel
+     * @param outputCalculationLogicProvider calculation logic provider containing information for the output channel
+     * @param startTime time stamp where to begin the data processing
+     * @param endTime time stamp where to end the data processing
+     * @throws Exception in case of read or write problems during the data processing
+     */
+    private static void processData ( final ExtendedStorageChannel inputChannel, final ExtendedStorageChannel outputChannel, final BaseValueBatch result, final CalculationLogicProvider inputCalculationLogicProvider, final CalculationLogicProvider outputCalculationLogicProvider, final long startTime, final long endTime ) throws Exception
     {
         // prepare data that is required for processing
         if ( endTime <= startTime )
         {
             return;
         }
-        if ( inputChannel == null || outputChannel == null || inputCalculationLogicProvider == null || outputCalculationLogicProvider == null )
+        if ( inputChannel == null || inputCalculationLogicProvider == null || outputCalculationLogicProvider == null )
         {
             final String message = "insufficient input data: parameters must not be null";
             logger.error ( message );
@@ -179,36 +503,19 @@ public class HsdbHelper
         final long fetchTimeSpan = gapCount * outputTimespan;
 
         // process data
-        final BaseValue[] emptyInputArray = inputDataType == DataType.LONG_VALUE ? ExtendedStorageChannel.EMPTY_LONGVALUE_ARRAY : ExtendedStorageChannel.EMPTY_DOUBLEVALUE_ARRAY;
-        final BaseValue[] emptyOutputArray = outputDataType == DataType.LONG_VALUE ? ExtendedStorageChannel.EMPTY_LONGVALUE_ARRAY : ExtendedStorageChannel.EMPTY_DOUBLEVALUE_ARRAY;
         long currentStart = startTime;
-        final List<BaseValue> newValues = new ArrayList<BaseValue> ();
         BaseValue oldValue = null;
         do
         {
             final long currentEnd = Math.min ( currentStart + fetchTimeSpan, endTime );
-            final BaseValue[] inputValues = inputDataType == DataType.LONG_VALUE ? inputChannel.getLongValues ( currentStart, currentEnd ) : inputChannel.getDoubleValues ( currentStart, currentEnd );
+            final BaseValueBatch inputValues = getValueBatch ( inputChannel, inputDataType, currentStart, currentEnd );
+            final BaseValueBatch newValues = BaseValueBatch.createBatch ( outputDataType, (int)Math.min ( gapCount, MAX_GAP_COUNT ) );
             int startIndex = 0;
             while ( currentStart < currentEnd )
             {
                 final long gapEnd = currentStart + outputTimespan;
-                final BaseValue[] normalizedValues = HsdbHelper.extractSubArray ( inputValues, currentStart, gapEnd, 0, emptyInputArray );
-                // maximum 2 entries are completely virtual due to the algorithm
-                // it is possible that one value will be processed with a time span before the interval start time
-                // therefore the index can be increased by length-3 to optimize performance of this method
-                if ( inputValues.length > 1 )
-                {
-                    if ( normalizedValues.length > 3 )
-                    {
-                        startIndex += normalizedValues.length - 3;
-                    }
-                    final long lastFilledValueTime = inputValues[inputValues.length - 1].getTime ();
-                    final long size = inputValues.length;
-                    while ( startIndex + 1 < size && inputValues[startIndex + 1].getTime () < lastFilledValueTime )
-                    {
-                        startIndex++;
-                    }
-                }
+                final BaseValueBatchRange normalizedValues = HsdbHelper.sliceBatch ( inputValues, currentStart, gapEnd, startIndex );
+                startIndex = Math.max ( 0, normalizedValues.getToIndex () - 1 );
                 final BaseValue newValue = outputCalculationLogicProvider.generateValue ( normalizedValues );
                 if ( valueChanged ( oldValue, newValue ) )
                 {
@@ -219,15 +526,14 @@ public class HsdbHelper
             }
             if ( !newValues.isEmpty () )
             {
-                if ( outputDataType == DataType.LONG_VALUE )
+                if ( outputChannel != null )
                 {
-                    outputChannel.updateLongs ( (LongValue[])newValues.toArray ( emptyOutputArray ) );
+                    updateValueBatch ( outputChannel, newValues );
                 }
                 else
                 {
-                    outputChannel.updateDoubles ( (DoubleValue[])newValues.toArray ( emptyOutputArray ) );
+                    result.addAll ( newValues );
                 }
-                newValues.clear ();
             }
         } while ( currentStart < endTime );
     }
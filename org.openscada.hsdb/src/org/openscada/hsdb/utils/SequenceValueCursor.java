@@ -0,0 +1,92 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.utils;
+
+import java.util.List;
+
+import org.openscada.hsdb.ValueCursor;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+
+/**
+ * This class provides a cursor that returns the values of several other cursors one after another.
+ * A cursor of the sequence is closed as soon as all of its values have been returned.
+ * @param <B> type of the returned batches
+ */
+public class SequenceValueCursor<B extends BaseValueBatch> implements ValueCursor<B>
+{
+    /** Cursors whose values will be returned in the specified order. */
+    private final List<ValueCursor<B>> cursors;
+
+    /** Empty batch that will be returned if no more values are available. */
+    private final B emptyValues;
+
+    /** Index of the cursor that currently provides the values. */
+    private int index;
+
+    /**
+     * Constructor.
+     * @param cursors cursors whose values will be returned in the specified order
+     * @param emptyValues empty batch that will be returned if no more values are available
+     */
+    public SequenceValueCursor ( final List<ValueCursor<B>> cursors, final B emptyValues )
+    {
+        this.cursors = cursors;
+        this.emptyValues = emptyValues;
+        this.index = 0;
+    }
+
+    /**
+     * @see org.openscada.hsdb.ValueCursor#hasNext()
+     */
+    public boolean hasNext () throws Exception
+    {
+        while ( this.index < this.cursors.size () )
+        {
+            final ValueCursor<B> cursor = this.cursors.get ( this.index );
+            if ( cursor.hasNext () )
+            {
+                return true;
+            }
+            cursor.close ();
+            this.index++;
+        }
+        return false;
+    }
+
+    /**
+     * @see org.openscada.hsdb.ValueCursor#next()
+     */
+    public B next () throws Exception
+    {
+        return hasNext () ? this.cursors.get ( this.index ).next () : this.emptyValues;
+    }
+
+    /**
+     * @see org.openscada.hsdb.ValueCursor#close()
+     */
+    public void close ()
+    {
+        while ( this.index < this.cursors.size () )
+        {
+            this.cursors.get ( this.index ).close ();
+            this.index++;
+        }
+    }
+}
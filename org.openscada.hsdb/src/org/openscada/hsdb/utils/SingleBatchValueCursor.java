@@ -0,0 +1,78 @@
+/*
+ * This file is part of the OpenSCADA project
+ * Copyright (C) 2006-2010 TH4 SYSTEMS GmbH (http://th4-systems.com)
+ *
+ * OpenSCADA is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 3
+ * only, as published by the Free Software Foundation.
+ *
+ * OpenSCADA is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License version 3 for more details
+ * (a copy is included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * version 3 along with OpenSCADA. If not, see
+ * <http://opensource.org/licenses/lgpl-3.0.html> for a copy of the LGPLv3 License.
+ */
+
+package org.openscada.hsdb.utils;
+
+import org.openscada.hsdb.ValueCursor;
+import org.openscada.hsdb.datatypes.BaseValueBatch;
+
+/**
+ * This class provides a cursor for values that are already available within one batch.
+ * It is used for storage channels that are not able to provide their values in smaller parts.
+ * @param <B> type of the returned batch
+ */
+public class SingleBatchValueCursor<B extends BaseValueBatch> implements ValueCursor<B>
+{
+    /** Batch that will be returned by the cursor or null if the batch has already been returned. */
+    private B values;
+
+    /** Empty batch that will be returned after the values have been returned. */
+    private final B emptyValues;
+
+    /**
+     * Constructor.
+     * @param values batch that will be returned by the cursor
+     * @param emptyValues empty batch that will be returned after the values have been returned
+     */
+    public SingleBatchValueCursor ( final B values, final B emptyValues )
+    {
+        this.values = values;
+        this.emptyValues = emptyValues;
+    }
+
+    /**
+     * @see org.openscada.hsdb.ValueCursor#hasNext()
+     */
+    public boolean hasNext ()
+    {
+        return this.values != null && !this.values.isEmpty ();
+    }
+
+    /**
+     * @see org.openscada.hsdb.ValueCursor#next()
+     */
+    public B next ()
+    {
+        if ( !hasNext () )
+        {
+            return this.emptyValues;
+        }
+        final B result = this.values;
+        this.values = null;
+        return result;
+    }
+
+    /**
+     * @see org.openscada.hsdb.ValueCursor#close()
+     */
+    public void close ()
+    {
+        this.values = null;
+    }
+}